@@ -46,6 +46,17 @@ public interface HighAvailability
     @Description( "The latest transaction id present in this instance's store" )
     long getLastCommittedTxId();
 
+    @Description( "(If this is a slave) The number of lock requests sent to the master" )
+    long getMasterLockRoundTrips();
+
+    @Description( "(If this is a slave) The average number of lock requests a transaction taking locks "
+                  + "on the master sends to it" )
+    double getMasterLockRoundTripsPerTransaction();
+
+    @Description( "(If this is a slave) The number of locks asked for again by a transaction and served "
+                  + "without a request to the master, which already granted them" )
+    long getMasterLocksServedLocally();
+
     @Description( "Information about all instances in this cluster" )
     ClusterMemberInfo[] getInstancesInCluster();
 
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.management;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = IndexSearchers.NAME )
+@Description( "Information about how the searchers of the indexes are refreshed to see committed changes, "
+              + "and how often queries are answered from the query result cache" )
+public interface IndexSearchers
+{
+    final String NAME = "Index Searchers";
+
+    @Description( "How stale, in milliseconds, searchers may get before a background thread refreshes them, "
+                  + "0 if they are refreshed when they are queried" )
+    long getRefreshInterval();
+
+    @Description( "The number of times a stale searcher was reopened" )
+    long getReopenCount();
+
+    @Description( "The number of times a stale searcher was reopened by the background thread" )
+    long getBackgroundReopenCount();
+
+    @Description( "The total time, in milliseconds, spent reopening searchers" )
+    long getReopenTime();
+
+    @Description( "The longest time, in milliseconds, a single reopening of a searcher took" )
+    long getMaxReopenTime();
+
+    @Description( "The maximum number of query results cached, 0 if the query result cache is disabled" )
+    int getQueryCacheSize();
+
+    @Description( "The number of queries answered from the query result cache" )
+    long getQueryCacheHits();
+
+    @Description( "The number of cacheable queries which weren't found in the query result cache" )
+    long getQueryCacheMisses();
+
+    @Description( "The ratio of cacheable queries answered from the query result cache" )
+    double getQueryCacheHitRatio();
+}
@@ -35,6 +35,18 @@ public interface LockManager
                   + "Neo4j has detected and averted (by throwing DeadlockDetectedException)." )
     long getNumberOfAvertedDeadlocks();
 
+    @Description( "The number of times a transaction about to wait for a lock has checked whether "
+                  + "that wait would lead to a deadlock." )
+    long getNumberOfDeadlockChecks();
+
+    @Description( "The average time, in microseconds, a transaction has spent checking for deadlocks "
+                  + "before waiting for a lock." )
+    double getAverageDeadlockCheckTime();
+
+    @Description( "The longest time, in microseconds, a transaction has spent checking for deadlocks "
+                  + "before waiting for a lock." )
+    long getMaxDeadlockCheckTime();
+
     @Description( "Information about all locks held by Neo4j" )
     List<LockInfo> getLocks();
 
@@ -19,6 +19,10 @@
  */
 package org.neo4j.management;
 
+import java.io.IOException;
+
+import javax.management.MBeanOperationInfo;
+
 import org.neo4j.jmx.Description;
 import org.neo4j.jmx.ManagementInterface;
 
@@ -31,4 +35,9 @@ public interface MemoryMapping
     @Description( "Get information about each pool of memory mapped regions from store files with "
                   + "memory mapping enabled" )
     WindowPoolInfo[] getMemoryPools();
+
+    @Description( value = "Write the access statistics of each store file to a heatmap file in the store directory, "
+                          + "and get the paths of those files. Requires mapped_memory_access_statistics to be enabled",
+                  impact = MBeanOperationInfo.ACTION )
+    String[] dumpAccessHeatmaps() throws IOException;
 }
@@ -238,6 +238,16 @@ public final class Neo4jManager extends KernelProxy implements Kernel
         return getBean( LockManager.class );
     }
 
+    public QueryCache getQueryCacheBean()
+    {
+        return getBean( QueryCache.class );
+    }
+
+    public IndexSearchers getIndexSearchersBean()
+    {
+        return getBean( IndexSearchers.class );
+    }
+
     public MemoryMapping getMemoryMappingBean()
     {
         return getBean( MemoryMapping.class );
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.management;
+
+import org.neo4j.jmx.Description;
+import org.neo4j.jmx.ManagementInterface;
+
+@ManagementInterface( name = QueryCache.NAME )
+@Description( "Information about the Cypher execution plan caches" )
+public interface QueryCache
+{
+    final String NAME = "Query Cache";
+
+    @Description( "The number of execution plans each Cypher execution engine caches" )
+    int getCacheSize();
+
+    @Description( "The number of queries whose execution plan was found in the cache" )
+    long getHitCount();
+
+    @Description( "The number of queries that had to be parsed and planned because their execution plan was not "
+                  + "in the cache" )
+    long getMissCount();
+
+    @Description( "The number of execution plans evicted from the caches to make room for other plans" )
+    long getEvictionCount();
+
+    @Description( "The number of queries whose literals were replaced with parameters before the cache lookup" )
+    long getParameterizedQueryCount();
+
+    @Description( "The total time, in milliseconds, spent parsing queries that were not in the cache" )
+    long getParseTime();
+
+    @Description( "The total time, in milliseconds, spent planning queries that were not in the cache" )
+    long getPlanTime();
+}
@@ -33,13 +33,28 @@ public final class WindowPoolInfo implements Serializable
     private final int hitCount;
     private final int missCount;
     private final int oomCount;
+    private final long pageFaultCount;
+    private final long pageEvictionCount;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long medianPageFaultMicros;
+    private final long highPageFaultMicros;
+
+    public WindowPoolInfo( String name, long memAvail, long memUsed,
+            int windowCount, int windowSize, int hitCount, int missCount,
+            int oomCount )
+    {
+        this( name, memAvail, memUsed, windowCount, windowSize, hitCount, missCount, oomCount, 0, 0, 0, 0, 0, 0 );
+    }
 
     @ConstructorProperties( { "windowPoolName", "availableMemory",
             "usedMemory", "numberOfWindows", "windowSize", "windowHitCount",
-            "windowMissCount", "numberOfOutOfMemory" } )
+            "windowMissCount", "numberOfOutOfMemory", "pageFaultCount", "pageEvictionCount", "bytesRead",
+            "bytesWritten", "medianPageFaultMicros", "highPageFaultMicros" } )
     public WindowPoolInfo( String name, long memAvail, long memUsed,
             int windowCount, int windowSize, int hitCount, int missCount,
-            int oomCount )
+            int oomCount, long pageFaultCount, long pageEvictionCount, long bytesRead, long bytesWritten,
+            long medianPageFaultMicros, long highPageFaultMicros )
     {
         this.name = name;
         this.memAvail = memAvail;
@@ -49,6 +64,12 @@ public final class WindowPoolInfo implements Serializable
         this.hitCount = hitCount;
         this.missCount = missCount;
         this.oomCount = oomCount;
+        this.pageFaultCount = pageFaultCount;
+        this.pageEvictionCount = pageEvictionCount;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.medianPageFaultMicros = medianPageFaultMicros;
+        this.highPageFaultMicros = highPageFaultMicros;
     }
 
     public String getWindowPoolName()
@@ -90,4 +111,44 @@ public final class WindowPoolInfo implements Serializable
     {
         return oomCount;
     }
+
+    /*
+     * The following are only counted with mapped_memory_access_statistics enabled.
+     */
+
+    public long getPageFaultCount()
+    {
+        return pageFaultCount;
+    }
+
+    public long getPageEvictionCount()
+    {
+        return pageEvictionCount;
+    }
+
+    public long getBytesRead()
+    {
+        return bytesRead;
+    }
+
+    public long getBytesWritten()
+    {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the number of microseconds that half of the page faults took less than.
+     */
+    public long getMedianPageFaultMicros()
+    {
+        return medianPageFaultMicros;
+    }
+
+    /**
+     * @return the number of microseconds that 99% of the page faults took less than.
+     */
+    public long getHighPageFaultMicros()
+    {
+        return highPageFaultMicros;
+    }
 }
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.management.impl;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.impl.ManagementBeanProvider;
+import org.neo4j.jmx.impl.ManagementData;
+import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.impl.index.IndexSearcherStatistics;
+import org.neo4j.management.IndexSearchers;
+
+@Service.Implementation( ManagementBeanProvider.class )
+public final class IndexSearchersBean extends ManagementBeanProvider
+{
+    public IndexSearchersBean()
+    {
+        super( IndexSearchers.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        return new IndexSearchersImpl( management );
+    }
+
+    @Override
+    protected Neo4jMBean createMXBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        return new IndexSearchersImpl( management, true );
+    }
+
+    private static class IndexSearchersImpl extends Neo4jMBean implements IndexSearchers
+    {
+        private final GraphDatabaseAPI graphDatabase;
+        private final IndexSearcherStatistics statistics;
+
+        IndexSearchersImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            this.graphDatabase = management.getKernelData().graphDatabase();
+            this.statistics = statistics( graphDatabase );
+        }
+
+        IndexSearchersImpl( ManagementData management, boolean mxBean )
+        {
+            super( management, mxBean );
+            this.graphDatabase = management.getKernelData().graphDatabase();
+            this.statistics = statistics( graphDatabase );
+        }
+
+        private static IndexSearcherStatistics statistics( GraphDatabaseAPI graphDatabase )
+        {
+            return graphDatabase.getDependencyResolver().resolveDependency( IndexSearcherStatistics.class );
+        }
+
+        @Override
+        public long getRefreshInterval()
+        {
+            Config config = graphDatabase.getDependencyResolver().resolveDependency( Config.class );
+            return config.get( GraphDatabaseSettings.lucene_searcher_refresh_interval );
+        }
+
+        @Override
+        public long getReopenCount()
+        {
+            return statistics.getReopenCount();
+        }
+
+        @Override
+        public long getBackgroundReopenCount()
+        {
+            return statistics.getBackgroundReopenCount();
+        }
+
+        @Override
+        public long getReopenTime()
+        {
+            return MILLISECONDS.convert( statistics.getReopenTime(), NANOSECONDS );
+        }
+
+        @Override
+        public long getMaxReopenTime()
+        {
+            return MILLISECONDS.convert( statistics.getMaxReopenTime(), NANOSECONDS );
+        }
+
+        @Override
+        public int getQueryCacheSize()
+        {
+            Config config = graphDatabase.getDependencyResolver().resolveDependency( Config.class );
+            return config.get( GraphDatabaseSettings.lucene_query_cache_size );
+        }
+
+        @Override
+        public long getQueryCacheHits()
+        {
+            return statistics.getQueryCacheHits();
+        }
+
+        @Override
+        public long getQueryCacheMisses()
+        {
+            return statistics.getQueryCacheMisses();
+        }
+
+        @Override
+        public double getQueryCacheHitRatio()
+        {
+            long hits = statistics.getQueryCacheHits();
+            long total = hits + statistics.getQueryCacheMisses();
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+}
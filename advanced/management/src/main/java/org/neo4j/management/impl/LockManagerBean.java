@@ -19,6 +19,9 @@
  */
 package org.neo4j.management.impl;
 
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
 import java.util.List;
 
 import javax.management.NotCompliantMBeanException;
@@ -71,6 +74,25 @@ public final class LockManagerBean extends ManagementBeanProvider
             return lockManager.getDetectedDeadlockCount();
         }
 
+        @Override
+        public long getNumberOfDeadlockChecks()
+        {
+            return lockManager.getDeadlockCheckCount();
+        }
+
+        @Override
+        public double getAverageDeadlockCheckTime()
+        {
+            long checks = lockManager.getDeadlockCheckCount();
+            return checks == 0 ? 0 : lockManager.getDeadlockCheckTimeNanos() / 1000.0 / checks;
+        }
+
+        @Override
+        public long getMaxDeadlockCheckTime()
+        {
+            return MICROSECONDS.convert( lockManager.getMaxDeadlockCheckTimeNanos(), NANOSECONDS );
+        }
+
         @Override
         public List<LockInfo> getLocks()
         {
@@ -19,13 +19,17 @@
  */
 package org.neo4j.management.impl;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import javax.management.NotCompliantMBeanException;
 import org.neo4j.helpers.Service;
 import org.neo4j.jmx.impl.ManagementBeanProvider;
 import org.neo4j.jmx.impl.ManagementData;
 import org.neo4j.jmx.impl.Neo4jMBean;
+import org.neo4j.kernel.impl.nioneo.store.PageAccessStatistics;
 import org.neo4j.kernel.impl.nioneo.store.WindowPoolStats;
 import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
 import org.neo4j.management.MemoryMapping;
@@ -72,6 +76,17 @@ public final class MemoryMappingBean extends ManagementBeanProvider
             return getMemoryPoolsImpl( datasource );
         }
 
+        public String[] dumpAccessHeatmaps() throws IOException
+        {
+            List<File> files = datasource.dumpPageAccessHeatmaps();
+            String[] paths = new String[files.size()];
+            for ( int i = 0; i < paths.length; i++ )
+            {
+                paths[i] = files.get( i ).getAbsolutePath();
+            }
+            return paths;
+        }
+
         public static WindowPoolInfo[] getMemoryPoolsImpl( NeoStoreXaDataSource datasource )
         {
             Collection<WindowPoolStats> stats = datasource.getWindowPoolStats();
@@ -86,9 +101,12 @@ public final class MemoryMappingBean extends ManagementBeanProvider
 
         private static WindowPoolInfo createWindowPoolInfo( WindowPoolStats stats )
         {
+            PageAccessStatistics access = stats.getAccessStatistics();
             return new WindowPoolInfo( stats.getName(), stats.getMemAvail(), stats.getMemUsed(),
                     stats.getWindowCount(), stats.getWindowSize(), stats.getHitCount(),
-                    stats.getMissCount(), stats.getOomCount() );
+                    stats.getMissCount(), stats.getOomCount(), access.getFaultCount(), access.getEvictionCount(),
+                    access.getBytesRead(), access.getBytesWritten(), access.getFaultLatencyPercentile( 50 ),
+                    access.getFaultLatencyPercentile( 99 ) );
         }
     }
 }
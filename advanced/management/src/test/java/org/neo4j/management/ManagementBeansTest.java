@@ -116,6 +116,18 @@ public class ManagementBeansTest
         assertNotNull( getManager().getLockManagerBean() );
     }
 
+    @Test
+    public void canGetQueryCacheBean() throws Exception
+    {
+        assertNotNull( getManager().getQueryCacheBean() );
+    }
+
+    @Test
+    public void canGetIndexSearchersBean() throws Exception
+    {
+        assertNotNull( getManager().getIndexSearchersBean() );
+    }
+
     @Test
     public void canGetMemoryMappingBean() throws Exception
     {
@@ -152,6 +164,12 @@ public class ManagementBeansTest
         assertNotNull( "MemoryPools is null", getManager().getMemoryMappingBean().getMemoryPools() );
     }
 
+    @Test
+    public void canDumpAccessHeatmaps() throws Exception
+    {
+        assertNotNull( "Heatmaps is null", getManager().getMemoryMappingBean().dumpAccessHeatmaps() );
+    }
+
     @Test
     public void canAccessXaManagerCompositData() throws Exception
     {
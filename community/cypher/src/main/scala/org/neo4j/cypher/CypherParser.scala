@@ -33,10 +33,7 @@ class CypherParser(version: String) {
   @throws(classOf[SyntaxException])
   def parse(queryText: String): Query = {
 
-    val (v, q) = queryText match {
-      case hasVersionDefined(v1, q1) => (v1, q1)
-      case _ => (version, queryText)
-    }
+    val (v, q) = versionAndQuery(queryText)
 
     v match {
       case "1.7" => v17.parse(q)
@@ -45,4 +42,11 @@ class CypherParser(version: String) {
       case _ => throw new SyntaxException("Versions supported are 1.7, 1.8 and 1.9")
     }
   }
+
+  def versionOf(queryText: String): String = versionAndQuery(queryText)._1
+
+  private def versionAndQuery(queryText: String): (String, String) = queryText match {
+    case hasVersionDefined(v1, q1) => (v1, q1)
+    case _ => (version, queryText)
+  }
 }
@@ -21,12 +21,14 @@ package org.neo4j.cypher
 
 import internal.commands._
 import internal.executionplan.ExecutionPlanImpl
-import internal.LRUCache
+import internal.{LiteralParameterizer, LRUCache}
+import internal.LiteralParameterizer.ParameterizedQuery
 import scala.collection.JavaConverters._
 import java.lang.Error
 import java.util.{Map => JavaMap}
 import scala.{Int, deprecated}
 import org.neo4j.kernel.InternalAbstractGraphDatabase
+import org.neo4j.kernel.impl.cache.QueryCacheStatistics
 import org.neo4j.graphdb.GraphDatabaseService
 import org.neo4j.graphdb.factory.GraphDatabaseSettings
 import org.neo4j.kernel.impl.util.StringLogger
@@ -76,11 +78,55 @@ class ExecutionEngine(graph: GraphDatabaseService, logger: StringLogger = String
   def execute(query: String, params: JavaMap[String, Any]): ExecutionResult = execute(query, params.asScala.toMap)
 
   @throws(classOf[SyntaxException])
-  def prepare(query: String): ExecutionPlan =
-    executionPlanCache.getOrElseUpdate(query, new ExecutionPlanImpl(parser.parse(query), graph))
+  def prepare(query: String): ExecutionPlan = parameterize(query) match {
+    case Some(ParameterizedQuery(parameterizedQuery, literals)) =>
+      statistics.parameterized()
+      cachedPlan(parameterizedQuery, fallible = true) match {
+        case NotParameterizable => cachedPlan(query)
+        case plan               => new ParameterizedExecutionPlan(plan, literals)
+      }
+
+    case None => cachedPlan(query)
+  }
+
+  def isPrepared(query : String) : Boolean = parameterize(query) match {
+    case Some(ParameterizedQuery(parameterizedQuery, _)) if executionPlanCache.containsKey(parameterizedQuery) =>
+      executionPlanCache.get(parameterizedQuery) != Some(NotParameterizable) || executionPlanCache.containsKey(query)
 
-  def isPrepared(query : String) : Boolean =
-    executionPlanCache.containsKey(query)
+    case _ => executionPlanCache.containsKey(query)
+  }
+
+  private def parameterize(query: String): Option[ParameterizedQuery] =
+    if (parameterizeLiterals && parser.versionOf(query) == "1.9")
+      LiteralParameterizer(query)
+    else
+      None
+
+  private def cachedPlan(query: String, fallible: Boolean = false): ExecutionPlan = {
+    var missed = false
+    val plan = executionPlanCache.getOrElseUpdate(query, {
+      missed = true
+      createPlan(query, fallible)
+    })
+    if (!missed) statistics.hit()
+    plan
+  }
+
+  private def createPlan(query: String, fallible: Boolean): ExecutionPlan = {
+    statistics.miss()
+    try {
+      val parseStart = System.nanoTime()
+      val parsedQuery = parser.parse(query)
+      val planStart = System.nanoTime()
+      statistics.parsed(planStart - parseStart)
+      val plan = new ExecutionPlanImpl(parsedQuery, graph)
+      statistics.planned(System.nanoTime() - planStart)
+      plan
+    } catch {
+      // Literals replaced where the parser or planner did not expect parameters; the original query will do
+      case _: CypherException if fallible => NotParameterizable
+    }
+  }
 
   @throws(classOf[SyntaxException])
   @deprecated(message = "You should not parse queries manually any more. Use the execute(String) instead")
@@ -101,7 +147,23 @@ class ExecutionEngine(graph: GraphDatabaseService, logger: StringLogger = String
     }
   }
 
-  private val executionPlanCache = new LRUCache[String, ExecutionPlan]( getQueryCacheSize() ) {}
+  private val statistics: QueryCacheStatistics = graph match {
+    case database: InternalAbstractGraphDatabase =>
+      database.getDependencyResolver.resolveDependency(classOf[QueryCacheStatistics])
+    case _                                       => new QueryCacheStatistics
+  }
+
+  private val executionPlanCache =
+    new LRUCache[String, ExecutionPlan](getQueryCacheSize(), (query: String) => statistics.eviction())
+
+  private val parameterizeLiterals: Boolean = graph match {
+    case database: InternalAbstractGraphDatabase =>
+      database.getConfig.get(GraphDatabaseSettings.cypher_parameterize_literals) match {
+        case v: java.lang.Boolean => v
+        case _                    => false
+      }
+    case _                                       => false
+  }
 
   private def getQueryCacheSize() : Int = if (graph.isInstanceOf[InternalAbstractGraphDatabase]) {
     val database = graph.asInstanceOf[InternalAbstractGraphDatabase]
@@ -114,4 +176,21 @@ class ExecutionEngine(graph: GraphDatabaseService, logger: StringLogger = String
   }
 }
 
+/*
+ * A plan made for a query with its literals replaced by parameters, run with the literals of the actual query.
+ */
+private class ParameterizedExecutionPlan(plan: ExecutionPlan, literals: Map[String, Any]) extends ExecutionPlan {
+  def execute(params: Map[String, Any]): ExecutionResult = plan.execute(params ++ literals)
 
+  def profile(params: Map[String, Any]): ExecutionResult = plan.profile(params ++ literals)
+}
+
+/*
+ * Cached in place of the plan for a parameterized query that could not be planned, so that we go straight to the
+ * original query next time.
+ */
+private object NotParameterizable extends ExecutionPlan {
+  def execute(params: Map[String, Any]): ExecutionResult = throw new IllegalStateException("Not a plan")
+
+  def profile(params: Map[String, Any]): ExecutionResult = throw new IllegalStateException("Not a plan")
+}
@@ -20,15 +20,17 @@
 package org.neo4j.cypher.internal
 
 import spi.QueryContext
+import pipes.QueryResources
 import org.neo4j.graphdb.{TransactionFailureException, Transaction}
 import org.neo4j.kernel.impl.nioneo.store.ConstraintViolationException
 import org.neo4j.cypher.NodeStillHasRelationshipsException
 
 /**
- * An iterator that decorates an inner iterator, and calls close() on the QueryContext once
- * the inner iterator is empty.
+ * An iterator that decorates an inner iterator, and calls close() on the QueryContext and the
+ * resources of the query once the inner iterator is empty.
  */
-class ClosingIterator[+T](inner: Iterator[T], queryContext: QueryContext, tx: Transaction) extends Iterator[T] {
+class ClosingIterator[+T](inner: Iterator[T], queryContext: QueryContext, tx: Transaction,
+                          resources: QueryResources = new QueryResources) extends Iterator[T] {
   private var closed: Boolean = false
   lazy val still_has_relationships = "Node record Node\\[(\\d),.*] still has relationships".r
 
@@ -52,7 +54,11 @@ class ClosingIterator[+T](inner: Iterator[T], queryContext: QueryContext, tx: Tr
     translateException {
       if (!closed) {
         closed = true
-        queryContext.close()
+        try {
+          resources.close()
+        } finally {
+          queryContext.close()
+        }
       }
       tx.success()
       tx.finish()
@@ -86,8 +92,12 @@ class ClosingIterator[+T](inner: Iterator[T], queryContext: QueryContext, tx: Tr
     f
   } catch {
     case t: Throwable if !closed =>
-      tx.failure()
-      tx.finish()
+      try {
+        resources.close()
+      } finally {
+        tx.failure()
+        tx.finish()
+      }
       throw t
   }
 }
\ No newline at end of file
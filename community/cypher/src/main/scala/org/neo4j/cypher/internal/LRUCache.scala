@@ -19,9 +19,9 @@
  */
 package org.neo4j.cypher.internal
 
-import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap
+import com.googlecode.concurrentlinkedhashmap.{EvictionListener, ConcurrentLinkedHashMap}
 
-class LRUCache[K, V](cacheSize: Int) {
+class LRUCache[K, V](cacheSize: Int, onEviction: K => Unit = (key: K) => ()) {
 
   class LazyValue(f: => V) {
     lazy val value = f
@@ -29,21 +29,26 @@ class LRUCache[K, V](cacheSize: Int) {
 
   val inner = new ConcurrentLinkedHashMap.Builder[K, LazyValue]
     .maximumWeightedCapacity(cacheSize)
+    .listener(new EvictionListener[K, LazyValue] {
+      def onEviction(key: K, value: LazyValue) {
+        LRUCache.this.onEviction(key)
+      }
+    })
     .build()
 
   def getOrElseUpdate(key: K, f: => V): V = {
-    val oldValue = inner.putIfAbsent(key, new LazyValue(f))
+    val newValue = new LazyValue(f)
+    val oldValue = inner.putIfAbsent(key, newValue)
     if (oldValue == null) {
-      f
+      newValue.value
     } else {
       oldValue.value
     }
   }
 
-  def get(key: K): Option[V] = Option(inner.get(key).value)
+  def get(key: K): Option[V] = Option(inner.get(key)).map(_.value)
 
   def put(key: K, value: V) = inner.put(key, new LazyValue(value))
 
   def containsKey(key: K) = inner.containsKey(key)
 }
-
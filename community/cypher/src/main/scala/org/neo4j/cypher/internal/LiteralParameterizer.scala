@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal
+
+import collection.mutable
+
+/*
+ * Replaces the literals of a query with parameters, so that queries differing only in their literals can share
+ * one execution plan. It works on the query text, so that it can run before the query is parsed, and only touches
+ * literals in places where the parser takes a parameter just as well:
+ *
+ *   - id lists and index lookups in START
+ *   - string and number literals in WHERE, except regular expressions and variable length bounds
+ *   - SKIP and LIMIT
+ *
+ * Literals anywhere else, e.g. in RETURN where they name the result columns, are left alone. The parameters get names
+ * no query can use, and values of the types the parser would have given the literals.
+ */
+object LiteralParameterizer {
+  case class ParameterizedQuery(query: String, parameters: Map[String, Any])
+
+  private val ParameterPrefix = "  AUTO"
+
+  private val clauses = Set("START", "MATCH", "WHERE", "RETURN", "WITH", "CREATE", "RELATE", "SET", "DELETE",
+    "FOREACH", "ORDER", "SKIP", "LIMIT", "UNION")
+
+  private val idList = """^(\s*)\(\s*(\d+(?:\s*,\s*\d+)*)\s*\)""".r
+
+  /*
+   * The query with its literals replaced, or None if it has no literals that can be replaced.
+   */
+  def apply(query: String): Option[ParameterizedQuery] = new Parameterizer(query).parameterize()
+
+  private class Parameterizer(query: String) {
+    private val out = new StringBuilder(query.length)
+    private val parameters = mutable.LinkedHashMap[String, Any]()
+    private var pos = 0
+    private var brackets: List[Char] = Nil
+    private var clause = ""
+    private var last = ' '
+    private var secondLast = ' '
+
+    def parameterize(): Option[ParameterizedQuery] = {
+      while (pos < query.length) {
+        val c = query.charAt(pos)
+        val parsed =
+          if (Character.isWhitespace(c)) {
+            out.append(c)
+            pos += 1
+            true
+          }
+          else if (c == '"' || c == '\'') string(c)
+          else if (c == '`') escapedIdentifier()
+          else if (c == '/' && last == '~') regularExpression()
+          else if (Character.isLetter(c) || c == '_') word()
+          else if (Character.isDigit(c) || (c == '-' && startsNegativeNumber)) number()
+          else symbol(c)
+
+        // Let the parser report whatever we could not make sense of
+        if (!parsed) return None
+      }
+
+      if (parameters.isEmpty) None else Some(ParameterizedQuery(out.toString(), parameters.toMap))
+    }
+
+    private def string(quote: Char): Boolean = {
+      var end = pos + 1
+      var escaped = false
+      while (end < query.length && query.charAt(end) != quote) {
+        if (query.charAt(end) == '\\') {
+          escaped = true
+          end += 1
+        }
+        end += 1
+      }
+      if (end >= query.length) return false
+
+      if (!escaped && !afterRegularExpressionOperator && (clause == "START" || clause == "WHERE") && !inCurlyBrackets)
+        emitParameter(query.substring(pos + 1, end))
+      else
+        emit(query.substring(pos, end + 1))
+      pos = end + 1
+      true
+    }
+
+    private def escapedIdentifier(): Boolean = {
+      var end = query.indexOf('`', pos + 1)
+      while (end >= 0 && end + 1 < query.length && query.charAt(end + 1) == '`')
+        end = query.indexOf('`', end + 2)
+      if (end < 0) return false
+
+      emit(query.substring(pos, end + 1))
+      pos = end + 1
+      true
+    }
+
+    private def regularExpression(): Boolean = {
+      var end = pos + 1
+      while (end < query.length && query.charAt(end) != '/') {
+        if (query.charAt(end) == '\\') end += 1
+        end += 1
+      }
+      if (end >= query.length) return false
+
+      emit(query.substring(pos, end + 1))
+      pos = end + 1
+      true
+    }
+
+    private def word(): Boolean = {
+      var end = pos
+      while (end < query.length && (Character.isLetterOrDigit(query.charAt(end)) || query.charAt(end) == '_'))
+        end += 1
+      val word = query.substring(pos, end)
+      val keyword = word.toUpperCase
+      val property = last == '.'
+      emit(word)
+      pos = end
+
+      if (brackets.isEmpty && !property && clauses.contains(keyword))
+        clause = keyword
+
+      if (clause == "START" && (keyword == "NODE" || keyword == "REL" || keyword == "RELATIONSHIP"))
+        ids()
+      true
+    }
+
+    private def ids() {
+      idList.findFirstMatchIn(query.substring(pos)) match {
+        case Some(m) =>
+          out.append(m.group(1))
+          emit("(")
+          emitParameter(m.group(2).split(",").map(_.trim.toLong).toList)
+          emit(")")
+          pos += m.end
+        case None    =>
+      }
+    }
+
+    private def number(): Boolean = {
+      var end = if (query.charAt(pos) == '-') pos + 1 else pos
+      while (end < query.length && Character.isDigit(query.charAt(end))) end += 1
+      val decimal = end + 1 < query.length && query.charAt(end) == '.' && Character.isDigit(query.charAt(end + 1))
+      if (decimal) {
+        end += 1
+        while (end < query.length && Character.isDigit(query.charAt(end))) end += 1
+      }
+      val text = query.substring(pos, end)
+      pos = end
+
+      val rangeBound = last == '*' || (last == '.' && secondLast == '.') || query.startsWith("..", end)
+      val partOfWord = end < query.length && (Character.isLetter(query.charAt(end)) || query.charAt(end) == '_')
+
+      if (rangeBound || partOfWord || inCurlyBrackets || afterRegularExpressionOperator)
+        emit(text)
+      else clause match {
+        case "WHERE"                                            => emitParameter(if (decimal) text.toDouble else text.toLong)
+        case "SKIP" | "LIMIT" if !decimal && text.head != '-' => emitParameter(text.toInt)
+        case _                                                  => emit(text)
+      }
+      true
+    }
+
+    private def symbol(c: Char): Boolean = {
+      c match {
+        case '(' | '[' | '{'                      => brackets = c :: brackets
+        case ')' | ']' | '}' if !brackets.isEmpty => brackets = brackets.tail
+        case _                                    =>
+      }
+      emit(c.toString)
+      pos += 1
+      true
+    }
+
+    // A minus sign belongs to a number where the number cannot be the right hand side of a subtraction
+    private def startsNegativeNumber =
+      pos + 1 < query.length && Character.isDigit(query.charAt(pos + 1)) && "=<>(,[+*/%".indexOf(last) >= 0
+
+    // The planner checks that regular expression literals are strings, and compiles them only once
+    private def afterRegularExpressionOperator = last == '~' && secondLast == '='
+
+    // Curly brackets hold parameter names and maps, neither of which we want to touch
+    private def inCurlyBrackets = brackets.headOption == Some('{')
+
+    private def emitParameter(value: Any) {
+      val name = ParameterPrefix + parameters.size
+      parameters(name) = value
+      emit("{`" + name + "`}")
+    }
+
+    private def emit(text: String) {
+      out.append(text)
+      secondLast = if (text.length > 1) text.charAt(text.length - 2) else last
+      last = text.last
+    }
+  }
+}
@@ -19,16 +19,40 @@
  */
 package org.neo4j.cypher.internal.commands.expressions
 
-import org.neo4j.graphdb.Path
+import org.neo4j.graphdb.{Direction, Node, Path}
 import org.neo4j.cypher.internal.symbols._
 import org.neo4j.cypher.internal.helpers.CollectionSupport
 import org.neo4j.cypher.internal.ExecutionContext
 import org.neo4j.cypher.internal.pipes.QueryState
+import org.neo4j.cypher.internal.commands.{True, RelatedTo, PathExpression}
+import Identifier.{isNamed, notNamed}
 
 case class LengthFunction(inner: Expression)
   extends NullInNullOutExpression(inner)
   with CollectionSupport
 with ExpressionWInnerExpression {
+
+  /*
+  Counting the paths of a single, unnamed relationship hanging off a bound node is the same as asking for the
+  degree of that node, which the kernel can answer without loading the relationships.
+   */
+  private lazy val degreeOf: Option[(String, Direction, Seq[String])] = inner match {
+    case PathExpression(Seq(RelatedTo(left, right, rel, types, dir, false, True())))
+      if notNamed(rel) && left != right =>
+      if (isNamed(left) && notNamed(right)) Some((left, dir, types))
+      else if (notNamed(left) && isNamed(right)) Some((right, dir.reverse(), types))
+      else None
+    case _ => None
+  }
+
+  override def apply(ctx: ExecutionContext)(implicit state: QueryState): Any = degreeOf match {
+    case Some((name, dir, types)) => ctx(name) match {
+      case null    => null
+      case n: Node => state.query.getDegree(n, dir, types).toLong
+    }
+    case None => super.apply(ctx)
+  }
+
   def compute(value: Any, m: ExecutionContext)(implicit state: QueryState) = value match {
     case path: Path => path.length()
     case s: String  => s.length()
@@ -30,6 +30,7 @@ import internal.spi.gdsimpl.GDSBackedQueryContext
 import internal.symbols.{NodeType, RelationshipType, SymbolTable}
 import org.neo4j.kernel.InternalAbstractGraphDatabase
 import org.neo4j.graphdb.GraphDatabaseService
+import org.neo4j.graphdb.factory.GraphDatabaseSettings
 import javacompat.{PlanDescription => JPlanDescription}
 
 class ExecutionPlanImpl(inputQuery: Query, graph: GraphDatabaseService) extends ExecutionPlan with PatternGraphBuilder {
@@ -41,6 +42,24 @@ class ExecutionPlanImpl(inputQuery: Query, graph: GraphDatabaseService) extends
 
   lazy val lockManager = graph.asInstanceOf[InternalAbstractGraphDatabase].getLockManager
 
+  private def sortBufferRows: Int = graph match {
+    case database: InternalAbstractGraphDatabase =>
+      database.getConfig.get(GraphDatabaseSettings.cypher_sort_buffer_rows) match {
+        case v: java.lang.Integer => v
+        case _                    => 0
+      }
+    case _                                       => 0
+  }
+
+  private def slottedRows: Boolean = graph match {
+    case database: InternalAbstractGraphDatabase =>
+      database.getConfig.get(GraphDatabaseSettings.cypher_slotted_rows) match {
+        case v: java.lang.Boolean => v
+        case _                    => false
+      }
+    case _                                       => false
+  }
+
   private def prepareExecutionPlan(): (Boolean, Map[String, Any]) => ExecutionResult = {
     var continue = true
     var planInProgress = ExecutionPlanInProgress(PartiallySolvedQuery(inputQuery), new ParameterPipe(), containsTransaction = false)
@@ -75,10 +94,12 @@ class ExecutionPlanImpl(inputQuery: Query, graph: GraphDatabaseService) extends
 
     val pipe = planInProgress.pipe
 
+    val slots = if (slottedRows) Slots.forPipe(pipe) else Slots.empty
+
     if (planInProgress.containsTransaction) {
-      getEagerReadWriteQuery(pipe, columns)
+      getEagerReadWriteQuery(pipe, columns, slots)
     } else {
-      getLazyReadonlyQuery(planInProgress.pipe, columns)
+      getLazyReadonlyQuery(planInProgress.pipe, columns, slots)
     }
   }
 
@@ -126,16 +147,16 @@ class ExecutionPlanImpl(inputQuery: Query, graph: GraphDatabaseService) extends
     columns
   }
 
-  private def getLazyReadonlyQuery(pipe: Pipe, columns: List[String]): (Boolean, Map[String, Any]) => ExecutionResult =
+  private def getLazyReadonlyQuery(pipe: Pipe, columns: List[String], slots: Slots): (Boolean, Map[String, Any]) => ExecutionResult =
     (profile: Boolean, params: Map[String, Any]) => {
-      val (state, results, planDescriptor) = prepareStateAndResult(params, pipe, profile)
+      val (state, results, planDescriptor) = prepareStateAndResult(params, pipe, profile, slots)
 
       new PipeExecutionResult(results, columns, state, planDescriptor)
   }
 
-  private def getEagerReadWriteQuery(pipe: Pipe, columns: List[String]): (Boolean, Map[String, Any]) => ExecutionResult = {
+  private def getEagerReadWriteQuery(pipe: Pipe, columns: List[String], slots: Slots): (Boolean, Map[String, Any]) => ExecutionResult = {
     val func = (profile: Boolean, params: Map[String, Any]) => {
-      val (state, results, planDescriptor) = prepareStateAndResult(params, pipe, profile)
+      val (state, results, planDescriptor) = prepareStateAndResult(params, pipe, profile, slots)
 
       new EagerPipeExecutionResult(results, columns, state, graph, planDescriptor)
     }
@@ -143,7 +164,7 @@ class ExecutionPlanImpl(inputQuery: Query, graph: GraphDatabaseService) extends
     func
   }
 
-  private def prepareStateAndResult(params: Map[String, Any], pipe: Pipe, profile: Boolean):
+  private def prepareStateAndResult(params: Map[String, Any], pipe: Pipe, profile: Boolean, slots: Slots):
   (QueryState, ClosingIterator[ExecutionContext], () => PlanDescription) = {
     val tx = graph.beginTx()
 
@@ -152,9 +173,9 @@ class ExecutionPlanImpl(inputQuery: Query, graph: GraphDatabaseService) extends
       val gdsContext = new GDSBackedQueryContext(graph)
 
       val decorator: PipeDecorator = if (profile) new Profiler() else NullDecorator
-      val state = new QueryState(graph, gdsContext, params, decorator)
+      val state = new QueryState(graph, gdsContext, params, decorator, slots = slots)
       val results = pipe.createResults(state)
-      val closingIterator = new ClosingIterator[ExecutionContext](results, state.query, tx)
+      val closingIterator = new ClosingIterator[ExecutionContext](results, state.query, tx, state.resources)
       val descriptor = () => decorator.decorate(pipe.executionPlanDescription, closingIterator.isEmpty)
 
       (state, closingIterator, descriptor)
@@ -196,7 +217,7 @@ The Neo4j Team""")
     new NamedPathBuilder,
     new ExtractBuilder,
     new MatchBuilder,
-    new SortBuilder,
+    new SortBuilder(sortBufferRows),
     new ColumnFilterBuilder,
     new SliceBuilder,
     new AggregationBuilder,
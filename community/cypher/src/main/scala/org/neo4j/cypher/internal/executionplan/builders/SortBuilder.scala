@@ -19,18 +19,26 @@
  */
 package org.neo4j.cypher.internal.executionplan.builders
 
-import org.neo4j.cypher.internal.pipes.SortPipe
+import org.neo4j.cypher.internal.pipes.{ExternalSortPipe, SortPipe}
 import org.neo4j.cypher.internal.executionplan.{ExecutionPlanInProgress, PlanBuilder}
 import org.neo4j.cypher.internal.commands.expressions.{Identifier, CachedExpression, Expression}
 import org.neo4j.cypher.CypherTypeException
 
-class SortBuilder extends PlanBuilder with SortingPreparations {
+/*
+ * When sortBufferRows is positive, at most that many rows are kept on the heap while sorting. Cypher doesn't estimate
+ * the size of the input, so the external sort is planned whenever a buffer size is set, and only spills to disk once
+ * the input turns out to be larger than the buffer.
+ */
+class SortBuilder(sortBufferRows: Int = 0) extends PlanBuilder with SortingPreparations {
   def apply(plan: ExecutionPlanInProgress) = {
     val newPlan = extractBeforeSort(plan)
 
     val q = newPlan.query
     val sortItems = q.sort.map(_.token)
-    val resultPipe = new SortPipe(newPlan.pipe, sortItems.toList)
+    val resultPipe = if (sortBufferRows > 0)
+      new ExternalSortPipe(newPlan.pipe, sortItems.toList, sortBufferRows)
+    else
+      new SortPipe(newPlan.pipe, sortItems.toList)
 
     val resultQ = q.copy(sort = q.sort.map(_.solve))
 
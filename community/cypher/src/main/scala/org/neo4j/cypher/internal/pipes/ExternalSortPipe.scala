@@ -0,0 +1,321 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.neo4j.cypher.internal.commands.SortItem
+import org.neo4j.cypher.internal.ExecutionContext
+import org.neo4j.cypher.internal.symbols.SymbolTable
+import org.neo4j.cypher.internal.data.{PrimVal, SimpleVal}
+import org.neo4j.cypher.internal.mutation.UpdateAction
+import org.neo4j.cypher.{InternalException, PathImpl}
+import org.neo4j.graphdb.{PropertyContainer, Path, Relationship, Node}
+import collection.mutable
+import collection.JavaConverters._
+import java.io._
+
+/*
+ * ExternalSortPipe is used instead of SortPipe when a sort buffer size has been configured. It keeps at most
+ * runSize rows on the heap: when the input is larger than that, it is sorted in runs of runSize rows that are
+ * spilled to temporary files, and the runs are then merged lazily as the result is consumed. Inputs that fit in
+ * a single run are sorted in memory, just like SortPipe does. The files of the runs are registered with the
+ * resources of the query, so they are deleted when the result is closed before it has been read to its end.
+ */
+class ExternalSortPipe(source: Pipe, sortDescription: List[SortItem], runSize: Int)
+  extends PipeWithSource(source) with ExecutionContextComparer {
+
+  require(runSize > 0, "The run size of an external sort must be positive")
+
+  // Spill counts of the most recent execution of this pipe
+  @volatile private var spilledRuns = 0L
+  @volatile private var spilledRows = 0L
+
+  def symbols = source.symbols
+
+  protected def internalCreateResults(input: Iterator[ExecutionContext], state: QueryState): Iterator[ExecutionContext] = {
+    spilledRuns = 0
+    spilledRows = 0
+
+    val firstRun = nextRun(input)
+    if (input.hasNext)
+      spillAndMerge(firstRun, input, state)
+    else
+      firstRun.iterator
+  }
+
+  private def spillAndMerge(firstRun: Seq[ExecutionContext], input: Iterator[ExecutionContext],
+                            state: QueryState): Iterator[ExecutionContext] = {
+    val mutationCommands = firstRun.head.mutationCommands
+    val runs = new mutable.ArrayBuffer[Iterator[ExecutionContext]]()
+    var run = firstRun
+    try {
+      while (input.hasNext) {
+        runs += spill(run, state, mutationCommands)
+        run = nextRun(input)
+      }
+    } catch {
+      case e: Throwable =>
+        runs.foreach {
+          case spilled: SpilledRun => spilled.close()
+          case _                   =>
+        }
+        throw e
+    }
+    // The last run is kept on the heap
+    runs += run.iterator
+
+    merge(runs)
+  }
+
+  private def nextRun(input: Iterator[ExecutionContext]): Seq[ExecutionContext] = {
+    val run = new mutable.ArrayBuffer[ExecutionContext](runSize)
+    while (run.size < runSize && input.hasNext) {
+      run += input.next()
+    }
+    run.sortWith((a, b) => compareBy(a, b, sortDescription))
+  }
+
+  private def spill(run: Seq[ExecutionContext], state: QueryState, mutationCommands: mutable.Queue[UpdateAction]): SpilledRun = {
+    val file = File.createTempFile("cypher-sort", ".run")
+    val out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))
+    try {
+      run.foreach(row => SpilledRowFormat.writeRow(out, row))
+    } catch {
+      case e: Throwable =>
+        out.close()
+        file.delete()
+        throw e
+    }
+    out.close()
+
+    spilledRuns += 1
+    spilledRows += run.size
+    val spilled = new SpilledRun(file, run.size, state, mutationCommands)
+    state.resources.register(spilled)
+    spilled
+  }
+
+  private def merge(runs: Seq[Iterator[ExecutionContext]]): Iterator[ExecutionContext] = {
+    // Rows that compare equal are taken from the earliest run first, to keep the sort stable
+    case class RunHead(row: ExecutionContext, run: Int)
+
+    val ordering = new Ordering[RunHead] {
+      def compare(a: RunHead, b: RunHead): Int =
+        if (compareBy(a.row, b.row, sortDescription)) 1
+        else if (compareBy(b.row, a.row, sortDescription)) -1
+        else b.run - a.run
+    }
+
+    val heads = new mutable.PriorityQueue[RunHead]()(ordering)
+    runs.zipWithIndex.foreach {
+      case (run, i) => if (run.hasNext) heads += RunHead(run.next(), i)
+    }
+
+    new Iterator[ExecutionContext] {
+      def hasNext = heads.nonEmpty
+
+      def next() = {
+        val head = heads.dequeue()
+        val run = runs(head.run)
+        if (run.hasNext)
+          heads += RunHead(run.next(), head.run)
+        head.row
+      }
+    }
+  }
+
+  def throwIfSymbolsMissing(symbols: SymbolTable) {
+    sortDescription.foreach {
+      case SortItem(e,_) => e.throwIfSymbolsMissing(source.symbols)
+    }
+  }
+
+  override def executionPlanDescription = source.executionPlanDescription.andThen(this, "ExternalSort",
+    "descr" -> SimpleVal.fromIterable(sortDescription),
+    "runSize" -> PrimVal(runSize),
+    "spilledRuns" -> PrimVal(spilledRuns),
+    "spilledRows" -> PrimVal(spilledRows))
+}
+
+/*
+ * Reads back the rows of a spilled run, deleting the file once the last row has been read or it is closed
+ */
+class SpilledRun(file: File, rows: Int, state: QueryState, mutationCommands: mutable.Queue[UpdateAction])
+  extends Iterator[ExecutionContext] with Closeable {
+
+  private var remaining = rows
+  private var in: DataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))
+
+  def hasNext = remaining > 0
+
+  def next() = {
+    if (!hasNext)
+      Iterator.empty.next()
+
+    val row = ExecutionContext(SpilledRowFormat.readRow(in, state), mutationCommands)
+    remaining -= 1
+    if (remaining == 0)
+      close()
+    row
+  }
+
+  def close() {
+    remaining = 0
+    if (in != null) {
+      try {
+        in.close()
+      } finally {
+        in = null
+        file.delete()
+      }
+    }
+  }
+}
+
+/*
+ * Compact binary format of spilled rows. Nodes and relationships are stored as their ids and looked up again when
+ * read back, collections and maps are stored element by element and anything else that is Serializable, like
+ * property arrays, is stored using Java serialization.
+ */
+object SpilledRowFormat {
+  private val NULL: Byte = 0
+  private val NODE: Byte = 1
+  private val RELATIONSHIP: Byte = 2
+  private val PATH: Byte = 3
+  private val STRING: Byte = 4
+  private val BOOLEAN: Byte = 5
+  private val BYTE: Byte = 6
+  private val SHORT: Byte = 7
+  private val INT: Byte = 8
+  private val LONG: Byte = 9
+  private val FLOAT: Byte = 10
+  private val DOUBLE: Byte = 11
+  private val CHAR: Byte = 12
+  private val MAP: Byte = 13
+  private val COLLECTION: Byte = 14
+  private val SERIALIZED: Byte = 15
+
+  def writeRow(out: DataOutputStream, row: ExecutionContext) {
+    out.writeInt(row.size)
+    row.foreach {
+      case (key, value) =>
+        writeString(out, key)
+        writeValue(out, value)
+    }
+  }
+
+  def readRow(in: DataInputStream, state: QueryState): mutable.Map[String, Any] = {
+    val size = in.readInt()
+    val row = MutableMaps.create(size)
+    (0 until size).foreach {
+      _ => row.put(readString(in), readValue(in, state))
+    }
+    row
+  }
+
+  private def writeValue(out: DataOutputStream, value: Any) {
+    value match {
+      case null               => out.writeByte(NULL)
+      case n: Node            => out.writeByte(NODE); out.writeLong(n.getId)
+      case r: Relationship    => out.writeByte(RELATIONSHIP); out.writeLong(r.getId)
+      case p: Path            =>
+        val entities = p.iterator().asScala.toSeq
+        out.writeByte(PATH)
+        out.writeInt(entities.size)
+        entities.foreach(writeValue(out, _))
+      case s: String          => out.writeByte(STRING); writeString(out, s)
+      case b: Boolean         => out.writeByte(BOOLEAN); out.writeBoolean(b)
+      case b: Byte            => out.writeByte(BYTE); out.writeByte(b)
+      case s: Short           => out.writeByte(SHORT); out.writeShort(s)
+      case i: Int             => out.writeByte(INT); out.writeInt(i)
+      case l: Long            => out.writeByte(LONG); out.writeLong(l)
+      case f: Float           => out.writeByte(FLOAT); out.writeFloat(f)
+      case d: Double          => out.writeByte(DOUBLE); out.writeDouble(d)
+      case c: Char            => out.writeByte(CHAR); out.writeChar(c)
+      case m: collection.Map[_, _] =>
+        out.writeByte(MAP)
+        out.writeInt(m.size)
+        m.foreach {
+          case (k, v) =>
+            writeString(out, k.toString)
+            writeValue(out, v)
+        }
+      case t: Traversable[_]  =>
+        out.writeByte(COLLECTION)
+        out.writeInt(t.size)
+        t.foreach(writeValue(out, _))
+      case s: Serializable    =>
+        val bytes = new ByteArrayOutputStream()
+        val objects = new ObjectOutputStream(bytes)
+        objects.writeObject(s)
+        objects.close()
+        out.writeByte(SERIALIZED)
+        out.writeInt(bytes.size())
+        bytes.writeTo(out)
+      case x                  =>
+        throw new InternalException("Can't spill a value of type " + x.getClass.getName + " to disk while sorting")
+    }
+  }
+
+  private def readValue(in: DataInputStream, state: QueryState): Any = in.readByte() match {
+    case NULL         => null
+    case NODE         => state.query.nodeOps.getById(in.readLong())
+    case RELATIONSHIP => state.query.relationshipOps.getById(in.readLong())
+    case PATH         =>
+      val size = in.readInt()
+      PathImpl((0 until size).map(_ => readValue(in, state).asInstanceOf[PropertyContainer]): _*)
+    case STRING       => readString(in)
+    case BOOLEAN      => in.readBoolean()
+    case BYTE         => in.readByte()
+    case SHORT        => in.readShort()
+    case INT          => in.readInt()
+    case LONG         => in.readLong()
+    case FLOAT        => in.readFloat()
+    case DOUBLE       => in.readDouble()
+    case CHAR         => in.readChar()
+    case MAP          =>
+      val size = in.readInt()
+      (0 until size).map(_ => readString(in) -> readValue(in, state)).toMap
+    case COLLECTION   =>
+      val size = in.readInt()
+      (0 until size).map(_ => readValue(in, state)).toList
+    case SERIALIZED   =>
+      val bytes = new Array[Byte](in.readInt())
+      in.readFully(bytes)
+      new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject()
+    case tag          =>
+      throw new InternalException("Unknown value type " + tag + " in spilled sort run")
+  }
+
+  // writeUTF is limited to 64k, which property values are not
+  private def writeString(out: DataOutputStream, s: String) {
+    out.writeInt(s.length)
+    out.writeChars(s)
+  }
+
+  private def readString(in: DataInputStream): String = {
+    val chars = new Array[Char](in.readInt())
+    var i = 0
+    while (i < chars.length) {
+      chars(i) = in.readChar()
+      i += 1
+    }
+    new String(chars)
+  }
+}
@@ -25,7 +25,18 @@ object MutableMaps {
 
   def empty : collection.mutable.Map[String, Any] = create(16)
 
-  def create(input: scala.collection.Map[String, Any]) : collection.mutable.Map[String, Any] = {
+  def create(input: scala.collection.Map[String, Any]) : collection.mutable.Map[String, Any] = input match {
+    case slotted: SlottedMap => slotted.clone()
+    case _                   => copy(input)
+  }
+
+  // An empty map of the same kind as template, so that rows made from slotted rows keep their slots
+  def emptyLike(template: scala.collection.Map[String, Any]) : collection.mutable.Map[String, Any] = template match {
+    case slotted: SlottedMap => slotted.empty
+    case _                   => empty
+  }
+
+  private def copy(input: scala.collection.Map[String, Any]) : collection.mutable.Map[String, Any] = {
     val m = create(input.size)
     input.foreach( (kv) => m.put(kv._1,kv._2))
     m
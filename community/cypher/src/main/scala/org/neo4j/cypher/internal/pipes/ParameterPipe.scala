@@ -24,7 +24,11 @@ import org.neo4j.cypher.internal.ExecutionContext
 import org.neo4j.cypher.PlanDescription
 
 class ParameterPipe() extends Pipe {
-  protected def internalCreateResults(state: QueryState) = Iterator.single(ExecutionContext())
+  protected def internalCreateResults(state: QueryState) =
+    if (state.slots.size == 0)
+      Iterator.single(ExecutionContext())
+    else
+      Iterator.single(ExecutionContext(m = state.slots.newRow()))
 
   val symbols = SymbolTable()
 
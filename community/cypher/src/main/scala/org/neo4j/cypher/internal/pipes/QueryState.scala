@@ -25,6 +25,8 @@ import org.neo4j.kernel.GraphDatabaseAPI
 import java.util.concurrent.atomic.AtomicInteger
 import org.neo4j.cypher.ParameterNotFoundException
 import org.neo4j.cypher.internal.spi.gdsimpl.GDSBackedQueryContext
+import java.io.Closeable
+import collection.mutable
 
 
 object QueryState {
@@ -41,7 +43,9 @@ case class QueryState(db: GraphDatabaseService,
                       params: Map[String, Any],
                       decorator: PipeDecorator,
                       var transaction: Option[Transaction] = None,
-                      timeReader: TimeReader = new TimeReader) {
+                      timeReader: TimeReader = new TimeReader,
+                      slots: Slots = Slots.empty,
+                      resources: QueryResources = new QueryResources) {
   def readTimeStamp(): Long = timeReader.getTime
 
 
@@ -72,4 +76,37 @@ class Counter {
 
 class TimeReader {
   lazy val getTime = System.currentTimeMillis()
-}
\ No newline at end of file
+}
+
+/*
+ * Resources, like temporary files, that pipes keep open while the result of a query is consumed. They are closed
+ * when the result is exhausted or closed, or its iteration fails, also when not all rows have been read.
+ */
+class QueryResources {
+  private val resources = new mutable.ArrayBuffer[Closeable]
+
+  def register(resource: Closeable) {
+    synchronized {
+      resources += resource
+    }
+  }
+
+  def close() {
+    val toClose = synchronized {
+      val registered = resources.toList
+      resources.clear()
+      registered
+    }
+    var failure: Throwable = null
+    toClose.foreach {
+      resource =>
+        try {
+          resource.close()
+        } catch {
+          case e: Throwable => if (failure == null) failure = e
+        }
+    }
+    if (failure != null)
+      throw failure
+  }
+}
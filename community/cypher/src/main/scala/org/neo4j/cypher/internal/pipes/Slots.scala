@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import collection.mutable
+import java.util.concurrent.ConcurrentHashMap
+
+/*
+ * Slots assigns each identifier of a query a fixed position in the rows flowing through its pipes. The slots are
+ * worked out from the symbol tables of the pipes when the query is planned, so that rows can be backed by arrays
+ * that are copied, rather than by hash maps that are rebuilt, as each pipe adds identifiers to them.
+ *
+ * Identifiers that pipes add without them being in any symbol table get slots appended to the end, and the
+ * extended Slots are cached so that all rows of a query end up sharing them.
+ */
+final class Slots private(val names: Array[String]) {
+  private val index = new java.util.HashMap[String, Integer](names.length * 2)
+  names.zipWithIndex.foreach {
+    case (name, i) => index.put(name, i)
+  }
+  private val extensions = new ConcurrentHashMap[String, Slots]()
+
+  def size: Int = names.length
+
+  def slotFor(name: String): Int = {
+    // Identifiers are mostly looked up with the very strings the slots were made from, which a short scan finds
+    // faster than hashing
+    if (names.length <= Slots.ScanLimit) {
+      var slot = 0
+      while (slot < names.length) {
+        if (names(slot) eq name) return slot
+        slot += 1
+      }
+    }
+    val slot = index.get(name)
+    if (slot == null) -1 else slot.intValue()
+  }
+
+  def extendedWith(name: String): Slots = {
+    val cached = extensions.get(name)
+    if (cached != null)
+      cached
+    else {
+      val extended = new Slots(names :+ name)
+      val existing = extensions.putIfAbsent(name, extended)
+      if (existing != null) existing else extended
+    }
+  }
+
+  def newRow(): mutable.Map[String, Any] = new SlottedMap(this)
+
+  override def toString = names.mkString("Slots(", ", ", ")")
+}
+
+object Slots {
+  private val ScanLimit = 16
+
+  val empty = new Slots(Array())
+
+  /*
+   * Slots are laid out in the order a hash map row iterates its identifiers, so that queries without ORDER BY keep
+   * returning their rows in the order they did when rows were hash maps.
+   */
+  def apply(names: Seq[String]): Slots = {
+    val row = MutableMaps.create(names.size)
+    names.foreach(name => row.put(name, null))
+    new Slots(row.keys.toArray)
+  }
+
+  /*
+   * The slots of all identifiers known by pipe or any of its sources.
+   */
+  def forPipe(pipe: Pipe): Slots = {
+    def identifiers(p: Pipe): Seq[String] = p match {
+      case withSource: PipeWithSource => identifiers(withSource.source) ++ p.symbols.keys
+      case _                          => p.symbols.keys
+    }
+
+    apply(identifiers(pipe))
+  }
+}
+
+/*
+ * A row that keeps its values in an array indexed by Slots. Copying it, which is what most pipes do with the rows
+ * going through them, is an array copy.
+ */
+final class SlottedMap private(private var slots: Slots, private var slotValues: Array[Any], private var entries: Int)
+  extends mutable.Map[String, Any]
+  with mutable.MapLike[String, Any, SlottedMap] {
+
+  def this(slots: Slots) = this(slots, SlottedMap.absentValues(slots.size), 0)
+
+  def get(key: String): Option[Any] = {
+    val slot = slots.slotFor(key)
+    if (slot < 0 || slot >= slotValues.length)
+      None
+    else {
+      val value = slotValues(slot)
+      if (isAbsent(value)) None else Some(value)
+    }
+  }
+
+  def +=(kv: (String, Any)): this.type = {
+    var slot = slots.slotFor(kv._1)
+    if (slot < 0) {
+      slots = slots.extendedWith(kv._1)
+      slot = slots.slotFor(kv._1)
+    }
+    if (slot >= slotValues.length) {
+      slotValues = SlottedMap.grow(slotValues, slots.size)
+    }
+    if (isAbsent(slotValues(slot)))
+      entries += 1
+    slotValues(slot) = kv._2
+    this
+  }
+
+  def -=(key: String): this.type = {
+    val slot = slots.slotFor(key)
+    if (slot >= 0 && slot < slotValues.length && !isAbsent(slotValues(slot))) {
+      slotValues(slot) = SlottedMap.Absent
+      entries -= 1
+    }
+    this
+  }
+
+  def iterator: Iterator[(String, Any)] = new Iterator[(String, Any)] {
+    private var slot = nextPresent(0)
+
+    def hasNext = slot < slotValues.length
+
+    def next() = {
+      if (!hasNext) throw new NoSuchElementException
+      val entry = slots.names(slot) -> slotValues(slot)
+      slot = nextPresent(slot + 1)
+      entry
+    }
+  }
+
+  override def foreach[U](f: ((String, Any)) => U) {
+    var slot = 0
+    while (slot < slotValues.length) {
+      val value = slotValues(slot)
+      if (!isAbsent(value))
+        f(slots.names(slot) -> value)
+      slot += 1
+    }
+  }
+
+  override def size: Int = entries
+
+  // Rows sharing slots are compared value by value, without looking up any identifiers
+  override def equals(that: Any): Boolean = that match {
+    case other: SlottedMap if other.slots eq slots =>
+      if (entries != other.entries) return false
+      var slot = 0
+      while (slot < slotValues.length) {
+        if (slotValues(slot) != other.slotValues(slot)) return false
+        slot += 1
+      }
+      true
+    case _                                         => super.equals(that)
+  }
+
+  override def hashCode(): Int = super.hashCode()
+
+  override def empty: SlottedMap = new SlottedMap(slots)
+
+  override def clone(): SlottedMap = new SlottedMap(slots, slotValues.clone(), entries)
+
+  private def nextPresent(from: Int): Int = {
+    var slot = from
+    while (slot < slotValues.length && isAbsent(slotValues(slot)))
+      slot += 1
+    slot
+  }
+
+  private def isAbsent(value: Any) = value.asInstanceOf[AnyRef] eq SlottedMap.Absent
+}
+
+object SlottedMap {
+  private object Absent
+
+  private def absentValues(size: Int): Array[Any] = {
+    val values = new Array[Any](size)
+    java.util.Arrays.fill(values.asInstanceOf[Array[AnyRef]], Absent)
+    values
+  }
+
+  private def grow(values: Array[Any], size: Int): Array[Any] = {
+    val grown = absentValues(size)
+    System.arraycopy(values, 0, grown, 0, values.length)
+    grown
+  }
+}
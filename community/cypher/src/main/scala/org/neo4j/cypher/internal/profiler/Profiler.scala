@@ -154,6 +154,11 @@ class ProfilingQueryContext(val inner: QueryContext, val p: Pipe) extends Delega
     }
   }
 
+  override def getDegree(node: Node, dir: Direction, types: Seq[String]): Int = {
+    increment()
+    inner.getDegree(node, dir, types)
+  }
+
   override def nodeOps: Operations[Node] = new ProfilerOperations(inner.nodeOps)
 
   override def relationshipOps: Operations[Relationship] = new ProfilerOperations(inner.relationshipOps)
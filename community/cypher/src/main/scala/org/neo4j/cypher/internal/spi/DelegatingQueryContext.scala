@@ -34,6 +34,8 @@ class DelegatingQueryContext(inner: QueryContext) extends QueryContext {
 
   def getRelationshipsFor(node: Node, dir: Direction, types: Seq[String]) = inner.getRelationshipsFor(node, dir, types)
 
+  def getDegree(node: Node, dir: Direction, types: Seq[String]) = inner.getDegree(node, dir, types)
+
   def nodeOps = inner.nodeOps
 
   def relationshipOps = inner.relationshipOps
@@ -33,6 +33,8 @@ trait QueryContext {
 
   def getRelationshipsFor(node: Node, dir: Direction, types: Seq[String]): Iterable[Relationship]
 
+  def getDegree(node: Node, dir: Direction, types: Seq[String]): Int
+
   def close()
 }
 
@@ -43,6 +43,11 @@ class RepeatableReadQueryContext(inner: QueryContext, locker: Locker) extends De
     }
   }
 
+  override def getDegree(node: Node, dir: Direction, types: Seq[String]): Int = {
+    locker.readLock(node)
+    inner.getDegree(node, dir, types)
+  }
+
   val nodeOpsValue = new RepeatableReadOperations[Node](inner.nodeOps)
   val relationshipOpsValue = new RepeatableReadOperations[Relationship](inner.relationshipOps)
 
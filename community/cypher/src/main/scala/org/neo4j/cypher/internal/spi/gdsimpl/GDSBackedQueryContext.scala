@@ -26,6 +26,7 @@ import collection.JavaConverters._
 import java.lang.{Iterable=>JIterable}
 import org.neo4j.tooling.GlobalGraphOperations
 import org.neo4j.cypher.EntityNotFoundException
+import org.neo4j.kernel.impl.core.NodeDegrees
 
 class GDSBackedQueryContext(graph: GraphDatabaseService) extends QueryContext {
 
@@ -43,6 +44,12 @@ class GDSBackedQueryContext(graph: GraphDatabaseService) extends QueryContext {
       node.getRelationships(dir, types.map(withName): _*).asScala
     }
 
+  def getDegree(node: Node, dir: Direction, types: Seq[String]): Int = node match {
+    case n: NodeDegrees if types.isEmpty => n.getDegree(dir)
+    case n: NodeDegrees                  => types.distinct.map(t => n.getDegree(withName(t), dir)).sum
+    case _                               => getRelationshipsFor(node, dir, types).size
+  }
+
 
   def nodeOps: Operations[Node] = {
     new Operations[Node] {
@@ -41,14 +41,14 @@ class ConfigureQueryCacheTest extends GraphDatabaseTestBase with Assertions
     val engine = new ExecutionEngine(graph);
 
     // When
-    engine.prepare("START n=node(1) RETURN n")
-    engine.prepare("START n=node(2) RETURN n")
-    engine.prepare("START n=node(3) RETURN n")
+    engine.prepare("START a=node(1) RETURN a")
+    engine.prepare("START b=node(1) RETURN b")
+    engine.prepare("START c=node(1) RETURN c")
 
     // Then
-    assertTrue("Should have cached last query", engine.isPrepared("START n=node(3) RETURN n"))
-    assertTrue("Should have cached second query", engine.isPrepared("START n=node(2) RETURN n"))
-    assertFalse("Should not have cached first query", engine.isPrepared("START n=node(1) RETURN n"))
+    assertTrue("Should have cached last query", engine.isPrepared("START c=node(1) RETURN c"))
+    assertTrue("Should have cached second query", engine.isPrepared("START b=node(1) RETURN b"))
+    assertFalse("Should not have cached first query", engine.isPrepared("START a=node(1) RETURN a"))
   }
 
 }
\ No newline at end of file
@@ -1891,6 +1891,20 @@ RETURN x0.name?
     assert(executeScalar[Long](q) === 0)
   }
 
+  @Test def length_of_single_relationship_pattern_is_degree_of_node() {
+    val a = createNode()
+    val b = createNode()
+    relate(a, b, "X")
+    relate(a, createNode(), "Y")
+    relate(createNode(), a, "X")
+    relate(a, a, "X")
+
+    val q = "start a=node(%d), b=node(%d) return length(a-->()) as out, length(a<-[:X]-()) as in, length(()-->a) as rev, length(a--()) as all, length(b-->()) as none"
+    val result = parseAndExecute(q.format(a.getId, b.getId)).toList
+
+    assert(result === List(Map("out" -> 3, "in" -> 2, "rev" -> 2, "all" -> 4, "none" -> 0)))
+  }
+
   @Test def long_or_double() {
     val result = parseAndExecute("start n=node(0) return 1, 1.5").toList.head
 
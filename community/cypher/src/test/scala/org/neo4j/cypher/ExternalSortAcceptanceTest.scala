@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher
+
+import org.scalatest.Assertions
+import org.junit.Test
+import org.junit.Assert._
+import org.neo4j.graphdb.factory.GraphDatabaseSettings
+import org.neo4j.graphdb.Node
+import org.neo4j.test.ImpermanentGraphDatabase
+import scala.collection.JavaConverters._
+
+class ExternalSortAcceptanceTest extends GraphDatabaseTestBase with Assertions {
+
+  @Test
+  def shouldSpillLargeOrderByToDiskAndReturnGraphEntities() {
+    // Given
+    // Changing the configuration of a running database restarts it in the background, so start one configured
+    graph.shutdown()
+    graph = new ImpermanentGraphDatabase(Map(GraphDatabaseSettings.cypher_sort_buffer_rows.name() -> "3").asJava) with Snitch
+
+    val names = List("E", "B", "H", "A", "G", "C", "J", "D", "I", "F")
+    val hub = createNode("hub")
+    names.foreach(name => relate(hub, createNode(name)))
+
+    val engine = new ExecutionEngine(graph)
+
+    // When
+    val result = engine.execute("START hub=node(" + hub.getId + ") MATCH p=hub-[r]->n RETURN n, r, p ORDER BY n.name DESC")
+    val rows = result.toList
+
+    // Then
+    assertEquals(names.sorted.reverse, rows.map(_("n").asInstanceOf[Node].getProperty("name")))
+    rows.foreach(row => assertEquals(row("n"), row("p").asInstanceOf[PathImpl].endNode()))
+
+    val sort = result.executionPlanDescription().find("ExternalSort").get
+    assertEquals(3L, sort.argsMap.v("spilledRuns").asJava)
+  }
+}
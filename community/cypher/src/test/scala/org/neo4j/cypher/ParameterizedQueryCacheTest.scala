@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher
+
+import org.scalatest.Assertions
+import org.junit.Test
+import org.junit.Assert._
+import org.neo4j.kernel.impl.cache.QueryCacheStatistics
+
+class ParameterizedQueryCacheTest extends GraphDatabaseTestBase with Assertions {
+  @Test
+  def queriesDifferingOnlyInLiteralsShareAPlan() {
+    // Given
+    val statistics = graph.getDependencyResolver.resolveDependency(classOf[QueryCacheStatistics])
+    val a = createNode("name" -> "Andres", "age" -> 36)
+    val b = createNode("name" -> "Tobias", "age" -> 25)
+    val engine = new ExecutionEngine(graph)
+
+    // When
+    val andres = engine.execute("START n=node(" + a.getId + ", " + b.getId + ") WHERE n.name = 'Andres' RETURN n").toList
+    val tobias = engine.execute("START n=node(" + a.getId + ", " + b.getId + ") WHERE n.age < 30 RETURN n").toList
+    val young = engine.execute("START n=node(" + a.getId + ", " + b.getId + ") WHERE n.age < 40 RETURN n LIMIT 1").toList
+    val old = engine.execute("START n=node(" + b.getId + ") WHERE n.age < 20 RETURN n LIMIT 3").toList
+
+    // Then
+    assert(andres === List(Map("n" -> a)))
+    assert(tobias === List(Map("n" -> b)))
+    assert(young === List(Map("n" -> a)))
+    assert(old === List())
+    assertTrue(engine.isPrepared("START n=node(42) WHERE n.age < 99 RETURN n LIMIT 7"))
+    assertEquals(3, statistics.getMissCount)
+    assertEquals(1, statistics.getHitCount)
+    assertEquals(4, statistics.getParameterizedQueryCount)
+  }
+
+  @Test
+  def queriesThatCannotBeParameterizedAreCachedAsTheyAre() {
+    // Given
+    val statistics = graph.getDependencyResolver.resolveDependency(classOf[QueryCacheStatistics])
+    val engine = new ExecutionEngine(graph)
+    val query = "START n=node(*) RETURN n, 'literal' AS text"
+
+    // When
+    val result = engine.execute(query).toList
+    engine.execute(query).toList
+
+    // Then
+    assert(result === List(Map("n" -> refNode, "text" -> "literal")))
+    assertTrue(engine.isPrepared(query))
+    assertEquals(1, statistics.getMissCount)
+    assertEquals(1, statistics.getHitCount)
+    assertEquals(0, statistics.getParameterizedQueryCount)
+  }
+
+  @Test(expected = classOf[SyntaxException])
+  def syntaxErrorsAreReportedForTheOriginalQuery() {
+    new ExecutionEngine(graph).execute("START n=node(1) WHERE n.name = 'x' RETURN")
+  }
+}
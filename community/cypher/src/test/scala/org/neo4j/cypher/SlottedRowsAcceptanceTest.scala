@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher
+
+import org.scalatest.Assertions
+import org.junit.Test
+import org.junit.Assert._
+import org.neo4j.graphdb.factory.GraphDatabaseSettings
+import org.neo4j.test.ImpermanentGraphDatabase
+import scala.collection.JavaConverters._
+
+class SlottedRowsAcceptanceTest extends GraphDatabaseTestBase with Assertions {
+  val queries = Seq(
+    "START a=node(1) MATCH a-->b RETURN a, b ORDER BY b.name",
+    "START a=node(1) MATCH p=a-->b-->c WHERE c.name <> 'A' RETURN p, c.name ORDER BY c.name",
+    "START a=node(1) MATCH a-->b-->c RETURN b.name, count(*) ORDER BY b.name",
+    "START a=node(1) MATCH a-->b WITH b MATCH b-->c RETURN b.name, collect(c.name) ORDER BY b.name",
+    "START a=node(1) MATCH a-->b RETURN DISTINCT a ORDER BY a.name SKIP 0 LIMIT 1")
+
+  @Test
+  def slottedRowsGiveTheSameResultsAsHashMapRows() {
+    // Given
+    val mapResults = runQueries()
+
+    // Changing the configuration of a running database restarts it in the background, so start one configured
+    graph.shutdown()
+    graph = new ImpermanentGraphDatabase(Map(GraphDatabaseSettings.cypher_slotted_rows.name() -> "true").asJava) with Snitch
+
+    // When
+    val slottedResults = runQueries()
+
+    // Then
+    queries.foreach(query => assertEquals(query, mapResults(query), slottedResults(query)))
+  }
+
+  private def runQueries(): Map[String, List[Map[String, Any]]] = {
+    val hub = createNode("hub")
+    Seq("C", "A", "B").foreach(name => {
+      val b = createNode(name)
+      relate(hub, b)
+      Seq("A", "B").foreach(other => relate(b, createNode(name + other)))
+    })
+    assertEquals(1L, hub.getId)
+
+    val engine = new ExecutionEngine(graph)
+    queries.map(query => query -> engine.execute(query).toList).toMap
+  }
+}
@@ -26,6 +26,8 @@ import org.mockito.Mockito.mock
 import org.mockito.Mockito.when
 import org.mockito.Mockito.verify
 import spi.QueryContext
+import pipes.QueryResources
+import java.io.Closeable
 import org.neo4j.graphdb.Transaction
 import org.scalatest.Assertions
 
@@ -118,4 +120,23 @@ class ClosingIteratorTest extends Assertions {
     //Then
     verify(tx).failure()
   }
-}
\ No newline at end of file
+
+  @Test
+  def should_close_query_resources_when_closed_before_the_end() {
+    //Given
+    val queryContext = mock(classOf[QueryContext])
+    val tx = mock(classOf[Transaction])
+    val resources = new QueryResources
+    val resource = mock(classOf[Closeable])
+    resources.register(resource)
+    val iterator = new ClosingIterator(Iterator(1, 2, 3), queryContext, tx, resources)
+
+    //When
+    iterator.next()
+    iterator.close()
+
+    //Then
+    verify(resource).close()
+    verify(queryContext).close()
+  }
+}
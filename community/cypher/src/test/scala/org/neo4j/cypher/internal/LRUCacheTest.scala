@@ -62,4 +62,24 @@ class LRUCacheTest extends Assertions {
     assertFalse(cache.containsKey("2"));
   }
 
-}
\ No newline at end of file
+  @Test def shouldComputeNewValueOnlyOnce() {
+    val cache = new LRUCache[String, String](5)
+    var computed = 0
+
+    cache.getOrElseUpdate("1", {computed += 1; "1"})
+    cache.getOrElseUpdate("1", {computed += 1; "1"})
+
+    assert(computed === 1)
+    assert(cache.get("2") === None)
+  }
+
+  @Test def shouldReportEvictedKeys() {
+    var evicted = List[String]()
+    val cache = new LRUCache[String, String](5, (key: String) => evicted = key :: evicted)
+    fillWithOneToFive(cache)
+
+    cache.put("6", "6")
+
+    assert(evicted === List("1"))
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal
+
+import org.scalatest.Assertions
+import org.junit.Test
+import LiteralParameterizer.ParameterizedQuery
+
+class LiteralParameterizerTest extends Assertions {
+  @Test def replacesLiteralsInWhere() {
+    assert(LiteralParameterizer("start n=node(*) where n.name = 'Andres' and n.age > 36 return n") ===
+      Some(ParameterizedQuery("start n=node(*) where n.name = {`  AUTO0`} and n.age > {`  AUTO1`} return n",
+        Map("  AUTO0" -> "Andres", "  AUTO1" -> 36L))))
+  }
+
+  @Test def replacesIdListsAndIndexLookupsInStart() {
+    assert(LiteralParameterizer("start a=node(1, 2), b=node:people(name=\"Tobias\") return a, b") ===
+      Some(ParameterizedQuery("start a=node({`  AUTO0`}), b=node:people(name={`  AUTO1`}) return a, b",
+        Map("  AUTO0" -> List(1L, 2L), "  AUTO1" -> "Tobias"))))
+  }
+
+  @Test def replacesSkipAndLimit() {
+    assert(LiteralParameterizer("start n=node(*) return n skip 10 limit 5") ===
+      Some(ParameterizedQuery("start n=node(*) return n skip {`  AUTO0`} limit {`  AUTO1`}",
+        Map("  AUTO0" -> 10, "  AUTO1" -> 5))))
+  }
+
+  @Test def keepsTypesOfNumbers() {
+    assert(LiteralParameterizer("start n=node(*) where n.x = 1.5 or n.x = -2 return n").map(_.parameters) ===
+      Some(Map("  AUTO0" -> 1.5, "  AUTO1" -> -2L)))
+  }
+
+  @Test def leavesLiteralsOutsideOfStartAndWhereAlone() {
+    assert(LiteralParameterizer("start n=node(*) return n.name, 1, 'where', count(*)") === None)
+  }
+
+  @Test def leavesKeywordsInStringsPropertiesAndNestedExpressionsAlone() {
+    assert(LiteralParameterizer("start n=node(*) where n.limit = 'x' return all(x in [1] where x = 1)") ===
+      Some(ParameterizedQuery("start n=node(*) where n.limit = {`  AUTO0`} return all(x in [1] where x = 1)",
+        Map("  AUTO0" -> "x"))))
+  }
+
+  @Test def leavesRegularExpressionsAndVariableLengthBoundsAlone() {
+    val query = "start a=node(*) match a-[*1..3]->b where b.name =~ 'A.*' and b.x =~ 1 and a-[*2]->b return b"
+
+    assert(LiteralParameterizer(query) === None)
+  }
+
+  @Test def leavesParametersAndEscapedStringsAlone() {
+    assert(LiteralParameterizer("start n=node({0}) where n.name = {name} or n.name = 'a\\'b' return n") === None)
+  }
+
+  @Test def leavesNumbersInIdentifiersAlone() {
+    assert(LiteralParameterizer("start n1=node(*) where n1.x2 = 3 return n1").map(_.query) ===
+      Some("start n1=node(*) where n1.x2 = {`  AUTO0`} return n1"))
+  }
+}
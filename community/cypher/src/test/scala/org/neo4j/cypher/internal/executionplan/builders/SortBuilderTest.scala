@@ -25,6 +25,7 @@ import org.neo4j.cypher.internal.commands.SortItem
 import org.neo4j.cypher.internal.executionplan.PartiallySolvedQuery
 import org.neo4j.cypher.internal.commands.expressions.{CountStar, Identifier, CachedExpression, Property}
 import org.neo4j.cypher.internal.symbols.AnyType
+import org.neo4j.cypher.internal.pipes.{SortPipe, ExternalSortPipe}
 
 class SortBuilderTest extends BuilderTest {
 
@@ -72,4 +73,16 @@ class SortBuilderTest extends BuilderTest {
 
     assertFalse("Builder should not accept this", builder.canWorkWith(plan(p, q)))
   }
+
+  @Test def should_sort_in_memory_unless_a_sort_buffer_size_is_set() {
+    val q = PartiallySolvedQuery().copy(
+      sort = Seq(Unsolved(SortItem(Property(Identifier("x"), "foo"), ascending = true))),
+      extracted = true
+    )
+
+    val p = createPipe(nodes = Seq("x"))
+
+    assertTrue(builder(plan(p, q)).pipe.isInstanceOf[SortPipe])
+    assertTrue(new SortBuilder(sortBufferRows = 1000)(plan(p, q)).pipe.isInstanceOf[ExternalSortPipe])
+  }
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.JUnitSuite
+import collection.mutable.{Map=>MutableMap}
+import org.neo4j.cypher.internal.commands.expressions.Identifier
+import org.neo4j.cypher.internal.symbols.{AnyType, NumberType, StringType}
+import org.neo4j.cypher.internal.commands.SortItem
+import java.io.File
+
+class ExternalSortPipeTest extends JUnitSuite {
+  @Test def inputFittingInOneRunIsSortedWithoutSpilling() {
+    val list: Seq[MutableMap[String, Any]] = List(MutableMap("x" -> "B"), MutableMap("x" -> "A"))
+    val source = new FakePipe(list, "x" -> StringType())
+    val sortPipe = new ExternalSortPipe(source, List(SortItem(Identifier("x"), true)), 10)
+
+    assertEquals(List(MutableMap("x" -> "A"), MutableMap("x" -> "B")), sortPipe.createResults(QueryState()).toList)
+    assertEquals(0L, sortPipe.executionPlanDescription.args.toMap.apply("spilledRuns").asJava)
+  }
+
+  @Test def largerInputIsSpilledInRunsAndMerged() {
+    val values = List(7, 3, 9, 1, 8, 2, 6, 4, 5, 0)
+    val source = new FakePipe(values.map(v => MutableMap[String, Any]("x" -> v)), "x" -> NumberType())
+    val sortPipe = new ExternalSortPipe(source, List(SortItem(Identifier("x"), false)), 3)
+
+    assertEquals(values.sorted.reverse, sortPipe.createResults(QueryState()).map(_("x")).toList)
+
+    val args = sortPipe.executionPlanDescription.args.toMap
+    assertEquals(3L, args("spilledRuns").asJava)
+    assertEquals(9L, args("spilledRows").asJava)
+  }
+
+  @Test def sortIsStableAcrossRuns() {
+    val list: Seq[MutableMap[String, Any]] = (0 until 10).map(i => MutableMap[String, Any]("x" -> i % 2, "y" -> i))
+    val source = new FakePipe(list, "x" -> NumberType(), "y" -> NumberType())
+    val sortPipe = new ExternalSortPipe(source, List(SortItem(Identifier("x"), true)), 2)
+
+    assertEquals(List(0, 2, 4, 6, 8, 1, 3, 5, 7, 9), sortPipe.createResults(QueryState()).map(_("y")).toList)
+  }
+
+  @Test def spilledRowsKeepTheirValues() {
+    val list: Seq[MutableMap[String, Any]] = List(
+      MutableMap("x" -> 3, "v" -> null),
+      MutableMap("x" -> 2, "v" -> List("a", 1L, 2.5, true)),
+      MutableMap("x" -> 1, "v" -> Map("name" -> "Andres", "age" -> 36.toShort)),
+      MutableMap("x" -> 0, "v" -> "x" * 70000))
+    val source = new FakePipe(list, "x" -> NumberType(), "v" -> AnyType())
+    val sortPipe = new ExternalSortPipe(source, List(SortItem(Identifier("x"), true)), 1)
+
+    assertEquals(list.reverse, sortPipe.createResults(QueryState()).toList)
+  }
+
+  @Test def shouldHandleSortingWithNullValues() {
+    val list: Seq[MutableMap[String, Any]] = List(
+      MutableMap("y" -> 1),
+      MutableMap("y" -> null),
+      MutableMap("y" -> 2))
+    val source = new FakePipe(list, "y" -> NumberType())
+
+    val sortPipe = new ExternalSortPipe(source, List(SortItem(Identifier("y"), true)), 1)
+
+    assertEquals(List(
+      MutableMap("y" -> 1),
+      MutableMap("y" -> 2),
+      MutableMap("y" -> null)), sortPipe.createResults(QueryState()).toList)
+  }
+
+  @Test def spilledRunsAreDeletedWhenTheResourcesOfTheQueryAreClosedBeforeTheEnd() {
+    val before = spilledRunFiles
+    val source = new FakePipe((0 until 13).map(v => MutableMap[String, Any]("x" -> v)), "x" -> NumberType())
+    val sortPipe = new ExternalSortPipe(source, List(SortItem(Identifier("x"), true)), 4)
+    val state = QueryState()
+
+    val result = sortPipe.createResults(state)
+    assertEquals(List(0, 1), result.take(2).map(_("x")).toList)
+    assertEquals(3, (spilledRunFiles -- before).size)
+
+    state.resources.close()
+    assertEquals(Set.empty, spilledRunFiles -- before)
+  }
+
+  private def spilledRunFiles: Set[String] =
+    new File(System.getProperty("java.io.tmpdir")).list().filter(n => n.startsWith("cypher-sort") && n.endsWith(".run")).toSet
+}
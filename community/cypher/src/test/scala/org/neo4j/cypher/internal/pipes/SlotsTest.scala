@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.internal.pipes
+
+import org.junit.Test
+import org.junit.Assert._
+import org.scalatest.junit.JUnitSuite
+import org.neo4j.cypher.internal.ExecutionContext
+import org.neo4j.cypher.internal.symbols.{NumberType, StringType}
+
+class SlotsTest extends JUnitSuite {
+  @Test def slotsCoverTheSymbolsOfThePipeAndItsSources() {
+    val slots = Slots.forPipe(new SlicePipe(new FakePipe(Seq.empty[Map[String, Any]], "a" -> StringType(), "b" -> NumberType()), None, None))
+
+    assertEquals(Set(0, 1), Set(slots.slotFor("a"), slots.slotFor("b")))
+    assertEquals(-1, slots.slotFor("c"))
+  }
+
+  @Test def slottedRowBehavesLikeAMap() {
+    val row = Slots(Seq("a", "b")).newRow()
+
+    row += "b" -> 2
+    row += "a" -> null
+
+    assertEquals(2, row.size)
+    assertEquals(Some(null), row.get("a"))
+    assertEquals(Some(2), row.get("b"))
+    assertEquals(Map("a" -> null, "b" -> 2), row.toMap)
+
+    row -= "a"
+
+    assertEquals(None, row.get("a"))
+    assertEquals(Map("b" -> 2), row.toMap)
+  }
+
+  @Test def identifiersWithoutSlotsAreAppended() {
+    val slots = Slots(Seq("a"))
+    val row = slots.newRow()
+
+    row += "a" -> 1
+    row += "x" -> 2
+
+    assertEquals(Map("a" -> 1, "x" -> 2), row.toMap)
+    assertSame(slots.extendedWith("x"), slots.extendedWith("x"))
+  }
+
+  @Test def copiedRowsAreIndependentAndKeepTheirSlots() {
+    val ctx = ExecutionContext(m = Slots(Seq("a", "b")).newRow()).newWith("a" -> 1)
+
+    val copy = ctx.newWith("b" -> 2)
+    val fresh = ctx.newFrom(Seq("b" -> 3))
+
+    assertEquals(Map("a" -> 1), ctx.toMap)
+    assertEquals(Map("a" -> 1, "b" -> 2), copy.toMap)
+    assertEquals(Map("b" -> 3), fresh.toMap)
+    assertTrue(copy.m.isInstanceOf[SlottedMap])
+    assertTrue(fresh.m.isInstanceOf[SlottedMap])
+  }
+
+  @Test def slottedRowsEqualOtherMapsWithTheSameEntries() {
+    val row = Slots(Seq("a", "b")).newRow()
+    row += "a" -> 1
+
+    assertEquals(MutableMaps.create("a" -> 1), row)
+    assertEquals(row, MutableMaps.create("a" -> 1))
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.cypher.performance
+
+import org.neo4j.cypher.ExecutionEngine
+import org.scalatest.Assertions
+import org.junit.{Ignore, Test}
+import org.neo4j.graphdb.{GraphDatabaseService, DynamicRelationshipType, Node}
+import org.neo4j.graphdb.factory.GraphDatabaseSettings
+import org.neo4j.test.ImpermanentGraphDatabase
+import scala.collection.JavaConverters._
+
+/*
+ * Compares typical MATCH/RETURN queries with rows kept in hash maps and in slots (cypher_slotted_rows).
+ */
+@Ignore
+class SlottedRowsPerformanceTest extends Assertions {
+  val queries = Seq(
+    "start a=node({roots}) match a-->b return a, b",
+    "start a=node({roots}) match a-->b-->c return a, b, c",
+    "start a=node({roots}) match a-[r1]->b-[r2]->c where c.value > 10 return a, b.value, c.value",
+    "start a=node({roots}) match a-->b-->c return a, count(*)",
+    "start a=node({roots}) match p=a-->b-->c return p order by length(p) limit 100")
+  val rounds = 20
+
+  @Test
+  def compareHashMapAndSlottedRows() {
+    // Warm up the JVM with both kinds of rows before measuring either
+    timeQueries(slotted = false)
+    timeQueries(slotted = true)
+
+    val mapTimes = timeQueries(slotted = false)
+    val slottedTimes = timeQueries(slotted = true)
+
+    queries.foreach(query => {
+      println("%-90s maps: %8.1f ms  slots: %8.1f ms".format(query, mapTimes(query), slottedTimes(query)))
+    })
+  }
+
+  private def timeQueries(slotted: Boolean): Map[String, Double] = {
+    val db = new ImpermanentGraphDatabase(Map(GraphDatabaseSettings.cypher_slotted_rows.name() -> slotted.toString).asJava)
+    try {
+      val roots = createGraph(db)
+      val engine = new ExecutionEngine(db)
+
+      queries.foreach(query => (0 until rounds).foreach(_ => run(engine, query, roots)))
+
+      queries.map(query => {
+        val t0 = System.nanoTime
+        (0 until rounds).foreach(_ => run(engine, query, roots))
+        query -> (System.nanoTime - t0) / 1000000.0 / rounds
+      }).toMap
+    } finally {
+      db.shutdown()
+    }
+  }
+
+  private def run(engine: ExecutionEngine, query: String, roots: Seq[Node]) =
+    engine.execute(query, Map("roots" -> roots)).size
+
+  private def createGraph(db: GraphDatabaseService): Seq[Node] = {
+    val tx = db.beginTx()
+    try {
+      val roots = (0 until 10).map(_ => {
+        val a = createNode(db, 0)
+        (0 until 10).foreach(y => {
+          val b = createNode(db, y)
+          relate(a, b)
+          (0 until 50).foreach(z => relate(b, createNode(db, z)))
+        })
+        a
+      })
+      tx.success()
+      roots
+    } finally {
+      tx.finish()
+    }
+  }
+
+  private def createNode(db: GraphDatabaseService, value: Int) = {
+    val node = db.createNode()
+    node.setProperty("value", value)
+    node
+  }
+
+  private def relate(a: Node, b: Node) {
+    a.createRelationshipTo(b, DynamicRelationshipType.withName("REL"))
+  }
+}
@@ -22,6 +22,7 @@ package org.neo4j.graphdb.factory;
 import static org.neo4j.helpers.Settings.ANY;
 import static org.neo4j.helpers.Settings.BOOLEAN;
 import static org.neo4j.helpers.Settings.BYTES;
+import static org.neo4j.helpers.Settings.DURATION;
 import static org.neo4j.helpers.Settings.DURATION_FORMAT;
 import static org.neo4j.helpers.Settings.FALSE;
 import static org.neo4j.helpers.Settings.FLOAT;
@@ -100,6 +101,27 @@ public abstract class GraphDatabaseSettings
             "logical log and are applied to the store.")
     public static final BooleanSetting intercept_deserialized_transactions = new BooleanSetting( setting("intercept_deserialized_transactions", BOOLEAN, FALSE) );
 
+    @Description("The number of stripes to partition the lock manager's table of locked resources into. " +
+            "Each stripe is guarded separately, so concurrent transactions locking different nodes and " +
+            "relationships only contend when their resources map to the same stripe. " +
+            "The value is rounded up to the nearest power of two, and 1 gives a single, globally guarded table.")
+    public static final IntegerSetting lock_table_stripes = new IntegerSetting( setting("lock_table_stripes", INTEGER, "1", range( 1, 1 << 16 ) ) );
+
+    @Description("How often a background thread looks for deadlocks among all transactions waiting for locks. " +
+            "Every transaction already checks for deadlocks before it starts to wait, this is an additional safety " +
+            "net that wakes up one transaction in each deadlock it finds. 0 disables the background check.")
+    public static final GraphDatabaseSetting<Long> deadlock_detection_interval = new GraphDatabaseSetting.TimeSpanSetting( setting("deadlock_detection_interval", DURATION, "0" ) );
+
+    @Description("Let concurrently committing transactions share forces of the logical logs and the transaction " +
+            "manager log. Each committer writes its entries and waits for a dedicated thread to force the log, " +
+            "so that a single disk force makes a whole batch of transactions durable.")
+    public static final BooleanSetting group_commit = new BooleanSetting( setting("group_commit", BOOLEAN, FALSE) );
+
+    @Description("Let transactions serialize their commands for the logical logs concurrently, into buffers of " +
+            "their own, and only order the reservation of room in the log buffer. When disabled, commands are " +
+            "serialized into the log buffer one at a time.")
+    public static final BooleanSetting concurrent_logical_log_writes = new BooleanSetting( setting("concurrent_logical_log_writes", BOOLEAN, FALSE) );
+
     // Cypher settings
     // TODO: These should live with cypher
     @Description("Enable this to specify a parser other than the default one.")
@@ -108,6 +130,18 @@ public abstract class GraphDatabaseSettings
     @Description("Used to set the number of Cypher query execution plans that are cached.")
     public static GraphDatabaseSetting<Integer> query_cache_size = new IntegerSetting( setting("query_cache_size", INTEGER, "100", min( 0 ) ));
 
+    @Description("Replace the literals of Cypher queries with parameters before looking them up in the query cache, " +
+            "so that queries differing only in their literals share one execution plan.")
+    public static final BooleanSetting cypher_parameterize_literals = new BooleanSetting( setting("cypher_parameterize_literals", BOOLEAN, TRUE ));
+
+    @Description("The maximum number of rows a Cypher ORDER BY keeps on the heap. Larger results are sorted in runs " +
+            "of this many rows that are spilled to temporary files and merged. 0 sorts all rows on the heap.")
+    public static final GraphDatabaseSetting<Integer> cypher_sort_buffer_rows = new IntegerSetting( setting("cypher_sort_buffer_rows", INTEGER, "0", min( 0 ) ));
+
+    @Description("Store the identifiers of Cypher result rows in slots that are assigned when the query is planned, " +
+            "rather than in a hash map per row. Off by default until it has seen wider use.")
+    public static final BooleanSetting cypher_slotted_rows = new BooleanSetting( setting("cypher_slotted_rows", BOOLEAN, FALSE ));
+
     // Store files
     @Description("The directory where the database files are located.")
     public static final GraphDatabaseSetting.DirectorySetting store_dir = new GraphDatabaseSetting.DirectorySetting(setting("store_dir", PATH, NO_DEFAULT ));
@@ -159,6 +193,26 @@ public abstract class GraphDatabaseSettings
     public static IntegerSetting lucene_searcher_cache_size =
             new IntegerSetting( setting("lucene_searcher_cache_size",INTEGER, Integer.toString( Integer.MAX_VALUE ), min( 1 )));
 
+    @Description("How stale lucene index searchers may get before a background thread reopens them to see newly " +
+            "committed changes. Queries are then never held up by reopening searchers, but may not see changes " +
+            "committed by other transactions until the next refresh. 0 reopens stale searchers when they are " +
+            "queried instead, so that queries always see all committed changes.")
+    public static final GraphDatabaseSetting<Long> lucene_searcher_refresh_interval = new GraphDatabaseSetting.TimeSpanSetting( setting("lucene_searcher_refresh_interval", DURATION, "0" ) );
+
+    @Description("The number of lucene index query results to cache, for the queries and exact lookups of all " +
+            "indexes. A cached result is dropped when a committed transaction changes any of the keys its query " +
+            "mentions. Cached results keep the scores they had when they were cached. 0 disables the cache.")
+    public static final IntegerSetting lucene_query_cache_size = new IntegerSetting( setting("lucene_query_cache_size", INTEGER, "0", min( 0 ) ));
+
+    @Description("The number of threads applying the changes of a transaction to different lucene indexes in " +
+            "parallel. 1 applies them one index at a time on the committing thread.")
+    public static final IntegerSetting lucene_commit_threads = new IntegerSetting( setting("lucene_commit_threads", INTEGER, "" + Math.min( 4, Runtime.getRuntime().availableProcessors() ), min( 1 ) ));
+
+    @Description("The number of transactions, replayed by recovery or pulled from an HA master, that are applied " +
+            "to a lucene index before its searcher is reopened. Until then documents written by earlier " +
+            "transactions of the batch are looked up in memory. 1 reopens the searcher for every transaction.")
+    public static final IntegerSetting lucene_apply_batch_size = new IntegerSetting( setting("lucene_apply_batch_size", INTEGER, "1000", min( 1 ) ));
+
     @Description("NOTE: This no longer has any effect. Integer value that sets the maximum number of open lucene " +
             "index writers.")
     @Deprecated
@@ -185,6 +239,17 @@ public abstract class GraphDatabaseSettings
     @Description("Tell Neo4j to use memory mapped buffers for accessing the native storage layer.")
     public static final UseMemoryMappedBuffers use_memory_mapped_buffers = new UseMemoryMappedBuffers(setting( "use_memory_mapped_buffers", BOOLEAN, NO_DEFAULT ));
 
+    @Description("How the store files are accessed. 'bricks' memory maps the most used parts of each store file, " +
+            "sized by its mapped_memory setting, and reads the rest one record at a time. 'paged' keeps " +
+            "window_pool_page_size sized pages of each store file in memory, up to its mapped_memory setting, and " +
+            "evicts pages that have not been used recently. 'paged' is experimental, it is still slower than " +
+            "'bricks' at reading records and should not be used in production.")
+    public static final StringSetting window_pool_type = new StringSetting( setting( "window_pool_type",
+            options( "bricks", "paged" ), "bricks" ) );
+
+    @Description("Size of the pages of the 'paged' window pool.")
+    public static final GraphDatabaseSetting<Long> window_pool_page_size = new NumberOfBytesSetting(setting("window_pool_page_size", BYTES, "8k" ));
+
     @Description("Target size for pages of mapped memory.")
     public static final GraphDatabaseSetting<Long> mapped_memory_page_size = new NumberOfBytesSetting(setting("mapped_memory_page_size", BYTES, "1M" ));
 
@@ -201,6 +266,14 @@ public abstract class GraphDatabaseSettings
     @Description("The number of records to be loaded between regular logging of memory mapping statistics.")
     public static final GraphDatabaseSetting<Integer> log_mapped_memory_stats_interval = new IntegerSetting(setting("log_mapped_memory_stats_interval", INTEGER, "1000000"));
 
+    @Description("Tell Neo4j to count hits, faults, evictions and bytes read and written for each region of the " +
+            "store files, along with how long faults take. They are exposed by the Memory Mapping management bean, " +
+            "which can also dump them as heatmap files.")
+    public static final GraphDatabaseSetting<Boolean> mapped_memory_access_statistics = new BooleanSetting(setting("mapped_memory_access_statistics", BOOLEAN, FALSE ));
+
+    @Description("The size of the store file regions that access statistics are counted for.")
+    public static final GraphDatabaseSetting<Long> mapped_memory_access_statistics_region_size = new NumberOfBytesSetting(setting("mapped_memory_access_statistics_region_size", BYTES, "1M" ));
+
     @Description("The size to allocate for memory mapping the node store.")
     public static final GraphDatabaseSetting<Long> nodestore_mapped_memory_size =
             new NumberOfBytesSetting( setting("neostore.nodestore.db.mapped_memory", BYTES, "20M" ));
@@ -270,6 +343,27 @@ public abstract class GraphDatabaseSettings
     public static final IntegerSetting relationship_grab_size =
             new IntegerSetting( setting("relationship_grab_size", INTEGER, "100", min( 1 )));
 
+    @Description("Number of relationships a node can have before its relationships are grouped by type and " +
+            "direction, so that reading the relationships of one type doesn't have to go through all the others. " +
+            "The groups also keep the number of relationships of each type and direction, which is what the degree " +
+            "of a node is read from; below the threshold the degree is counted by going through the relationship " +
+            "chain. A lower threshold makes degrees cheaper for more nodes, at the cost of a group record per type " +
+            "and an extra record to update when relationships of a grouped node are added or removed. " +
+            "0 disables the grouping.")
+    public static final IntegerSetting dense_node_threshold =
+            new IntegerSetting( setting("dense_node_threshold", INTEGER, "0", min( 0 )));
+
+    @Description("Number of threads reading the next batch of relationships of a node ahead of time, while the " +
+            "current batch is being iterated over. 0 disables the read-ahead.")
+    public static final IntegerSetting relationship_read_ahead_threads =
+            new IntegerSetting( setting("relationship_read_ahead_threads", INTEGER, "0", min( 0 )));
+
+    @Description("Number of changed node, relationship and property records a transaction keeps in memory. When " +
+            "a transaction changes more records than this they are moved to a file in the store directory until it " +
+            "commits, so that large transactions fit in the heap. 0 keeps all of them in memory.")
+    public static final IntegerSetting transaction_state_spill_threshold =
+            new IntegerSetting( setting("transaction_state_spill_threshold", INTEGER, "0", min( 0 )));
+
     @Description("Whether to grab locks on files or not.")
     @Deprecated
     public static final BooleanSetting grab_file_lock = new BooleanSetting( setting("grab_file_lock", BOOLEAN, TRUE ));
@@ -383,6 +477,15 @@ public abstract class GraphDatabaseSettings
         @Description("Use strong references.")
         public static final String strong = "strong";
 
+        @Description("Segmented clock cache. Keeps a configurable number of entities and evicts the least recently " +
+                "used ones, approximately. \n" +
+                "Lookups don't lock, which makes it suitable for read heavy, highly concurrent workloads.")
+        public static final String clock = "clock";
+
+        @Description("Off heap cache. Keeps recently used objects in a small part of the JVM heap and everything \n" +
+                "else serialized in direct memory of a configurable size, out of reach of the garbage collector.")
+        public static final String offheap = "offheap";
+
         @Description("GC resistant cache. Gets assigned a configurable amount of space in the JVM heap \n" +
                 "and will evict objects whenever it grows bigger than that, instead of relying on GC for eviction. \n" +
                 "It has got the fastest insert/lookup times and should be optimal for most use cases. \n" +
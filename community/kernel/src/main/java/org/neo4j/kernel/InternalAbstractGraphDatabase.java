@@ -66,6 +66,7 @@ import org.neo4j.kernel.guard.Guard;
 import org.neo4j.kernel.impl.cache.Cache;
 import org.neo4j.kernel.impl.cache.CacheProvider;
 import org.neo4j.kernel.impl.cache.MonitorGc;
+import org.neo4j.kernel.impl.cache.QueryCacheStatistics;
 import org.neo4j.kernel.impl.core.Caches;
 import org.neo4j.kernel.impl.core.DefaultCaches;
 import org.neo4j.kernel.impl.core.DefaultRelationshipTypeCreator;
@@ -81,16 +82,20 @@ import org.neo4j.kernel.impl.core.RelationshipTypeCreator;
 import org.neo4j.kernel.impl.core.RelationshipTypeHolder;
 import org.neo4j.kernel.impl.core.TransactionEventsSyncHook;
 import org.neo4j.kernel.impl.core.TxEventSyncHookFactory;
+import org.neo4j.kernel.impl.index.IndexSearcherStatistics;
 import org.neo4j.kernel.impl.index.IndexStore;
 import org.neo4j.kernel.impl.nioneo.store.DefaultWindowPoolFactory;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.nioneo.store.StoreFactory;
 import org.neo4j.kernel.impl.nioneo.store.StoreId;
+import org.neo4j.kernel.impl.nioneo.store.windowpool.PagedWindowPoolFactory;
+import org.neo4j.kernel.impl.nioneo.store.windowpool.WindowPoolFactory;
 import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
 import org.neo4j.kernel.impl.nioneo.xa.NioNeoDbPersistenceSource;
 import org.neo4j.kernel.impl.persistence.PersistenceManager;
 import org.neo4j.kernel.impl.persistence.PersistenceSource;
 import org.neo4j.kernel.impl.transaction.AbstractTransactionManager;
+import org.neo4j.kernel.impl.transaction.DeadlockDetector;
 import org.neo4j.kernel.impl.transaction.LockManager;
 import org.neo4j.kernel.impl.transaction.LockManagerImpl;
 import org.neo4j.kernel.impl.transaction.LockType;
@@ -101,8 +106,10 @@ import org.neo4j.kernel.impl.transaction.TransactionStateFactory;
 import org.neo4j.kernel.impl.transaction.TxHook;
 import org.neo4j.kernel.impl.transaction.TxManager;
 import org.neo4j.kernel.impl.transaction.XaDataSourceManager;
+import org.neo4j.kernel.impl.transaction.xaframework.ConcurrentLogBufferFactory;
 import org.neo4j.kernel.impl.transaction.xaframework.DefaultLogBufferFactory;
 import org.neo4j.kernel.impl.transaction.xaframework.ForceMode;
+import org.neo4j.kernel.impl.transaction.xaframework.GroupCommit;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBufferFactory;
 import org.neo4j.kernel.impl.transaction.xaframework.LogPruneStrategies;
 import org.neo4j.kernel.impl.transaction.xaframework.RecoveryVerifier;
@@ -140,6 +147,7 @@ public abstract class InternalAbstractGraphDatabase
         public static final Setting<Boolean> execution_guard_enabled = GraphDatabaseSettings.execution_guard_enabled;
         public static final GraphDatabaseSettings.CacheTypeSetting cache_type = GraphDatabaseSettings.cache_type;
         public static final Setting<Boolean> load_kernel_extensions = GraphDatabaseSettings.load_kernel_extensions;
+        public static final Setting<String> window_pool_type = GraphDatabaseSettings.window_pool_type;
         public static final Setting<Boolean> ephemeral = new GraphDatabaseSetting.BooleanSetting(
                 Settings.setting("ephemeral", Settings.BOOLEAN, Settings.FALSE ) );
 
@@ -186,6 +194,9 @@ public abstract class InternalAbstractGraphDatabase
     protected TxIdGenerator txIdGenerator;
     protected StoreFactory storeFactory;
     protected XaFactory xaFactory;
+    protected GroupCommit groupCommit;
+    protected final QueryCacheStatistics queryCacheStatistics = new QueryCacheStatistics();
+    protected final IndexSearcherStatistics indexSearcherStatistics = new IndexSearcherStatistics();
     protected DiagnosticsManager diagnosticsManager;
     protected NeoStoreXaDataSource neoDataSource;
     protected RecoveryVerifier recoveryVerifier;
@@ -372,6 +383,9 @@ public abstract class InternalAbstractGraphDatabase
 
         stateFactory = createTransactionStateFactory();
 
+        // Added before the transaction manager and data sources so that it's stopped after them
+        groupCommit = config.get( GraphDatabaseSettings.group_commit ) && !readOnly ? life.add( new GroupCommit() ) : null;
+
         if ( readOnly )
         {
             txManager = new ReadOnlyTxManager( xaDataSourceManager, logging.getMessagesLog( ReadOnlyTxManager.class ) );
@@ -382,7 +396,7 @@ public abstract class InternalAbstractGraphDatabase
             if ( GraphDatabaseSettings.tx_manager_impl.getDefaultValue().equals( serviceName ) )
             {
                 txManager = new TxManager( this.storeDir, xaDataSourceManager, kernelPanicEventGenerator,
-                        logging.getMessagesLog( TxManager.class ), fileSystem, stateFactory );
+                        logging.getMessagesLog( TxManager.class ), fileSystem, stateFactory, groupCommit );
             }
             else
             {
@@ -445,7 +459,8 @@ public abstract class InternalAbstractGraphDatabase
          *  user supplied configurations are consolidated
          */
 
-        logBufferFactory = new DefaultLogBufferFactory();
+        logBufferFactory = config.get( GraphDatabaseSettings.concurrent_logical_log_writes ) ?
+                new ConcurrentLogBufferFactory() : new DefaultLogBufferFactory();
 
         extensions = life.add( createKernelData() );
 
@@ -470,7 +485,7 @@ public abstract class InternalAbstractGraphDatabase
         String keepLogicalLogsConfig = config.get( GraphDatabaseSettings.keep_logical_logs );
         xaFactory = new XaFactory( config, txIdGenerator, txManager, logBufferFactory, fileSystem,
                 logging, recoveryVerifier, LogPruneStrategies.fromConfigValue(
-                fileSystem, keepLogicalLogsConfig ) );
+                fileSystem, keepLogicalLogsConfig ), groupCommit );
 
         createNeoDataSource();
 
@@ -642,10 +657,20 @@ public abstract class InternalAbstractGraphDatabase
 
     protected StoreFactory createStoreFactory()
     {
-        return new StoreFactory( config, idGeneratorFactory, new DefaultWindowPoolFactory(), fileSystem,
+        return new StoreFactory( config, idGeneratorFactory, createWindowPoolFactory(), fileSystem,
                 logging.getMessagesLog( StoreFactory.class ), txHook );
     }
 
+    protected WindowPoolFactory createWindowPoolFactory()
+    {
+        if ( config.get( Configuration.window_pool_type ).equals( "paged" ) )
+        {
+            msgLog.warn( "Using the experimental 'paged' window pool, it is slower than 'bricks'" );
+            return new PagedWindowPoolFactory();
+        }
+        return new DefaultWindowPoolFactory();
+    }
+
     protected RecoveryVerifier createRecoveryVerifier()
     {
         return RecoveryVerifier.ALWAYS_VALID;
@@ -760,7 +785,10 @@ public abstract class InternalAbstractGraphDatabase
 
     protected LockManager createLockManager()
     {
-        return new LockManagerImpl( new RagManager( txManager ) );
+        RagManager ragManager = new RagManager( txManager );
+        life.add( new DeadlockDetector( ragManager, config.get( GraphDatabaseSettings.deadlock_detection_interval ),
+                logging.getMessagesLog( DeadlockDetector.class ) ) );
+        return new LockManagerImpl( ragManager, config.get( GraphDatabaseSettings.lock_table_stripes ) );
     }
 
     protected Logging createLogging()
@@ -1317,6 +1345,10 @@ public abstract class InternalAbstractGraphDatabase
             {
                 return (T) txIdGenerator;
             }
+            else if ( GroupCommit.class.isAssignableFrom( type ) )
+            {
+                return (T) groupCommit;
+            }
             else if ( DiagnosticsManager.class.isAssignableFrom( type ) )
             {
                 return (T) diagnosticsManager;
@@ -1325,6 +1357,14 @@ public abstract class InternalAbstractGraphDatabase
             {
                 return (T) storeLocker;
             }
+            else if ( QueryCacheStatistics.class.isAssignableFrom( type ) )
+            {
+                return (T) queryCacheStatistics;
+            }
+            else if ( IndexSearcherStatistics.class.isAssignableFrom( type ) )
+            {
+                return (T) indexSearcherStatistics;
+            }
             else if ( DependencyResolver.class.isAssignableFrom( type ) )
             {
                 return (T) DependencyResolverImpl.this;
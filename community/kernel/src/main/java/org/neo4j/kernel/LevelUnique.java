@@ -20,16 +20,15 @@
 package org.neo4j.kernel;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 import org.neo4j.graphdb.Path;
 import org.neo4j.graphdb.traversal.TraversalBranch;
+import org.neo4j.kernel.impl.util.PrimitiveLongSet;
 
 class LevelUnique extends AbstractUniquenessFilter
 {
-    private final Map<Integer, Set<Long>> idsPerLevel = new HashMap<Integer, Set<Long>>();
+    private final Map<Integer, PrimitiveLongSet> idsPerLevel = new HashMap<Integer, PrimitiveLongSet>();
     
     LevelUnique( PrimitiveTypeFetcher type )
     {
@@ -40,10 +39,10 @@ class LevelUnique extends AbstractUniquenessFilter
     public boolean check( TraversalBranch branch )
     {
         Integer level = branch.length();
-        Set<Long> levelIds = idsPerLevel.get( level );
+        PrimitiveLongSet levelIds = idsPerLevel.get( level );
         if ( levelIds == null )
         {
-            levelIds = new HashSet<Long>();
+            levelIds = new PrimitiveLongSet();
             idsPerLevel.put( level, levelIds );
         }
         return levelIds.add( type.getId( branch ) );
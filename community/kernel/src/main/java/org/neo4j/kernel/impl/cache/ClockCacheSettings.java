@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import static org.neo4j.helpers.Settings.INTEGER;
+import static org.neo4j.helpers.Settings.LONG;
+import static org.neo4j.helpers.Settings.min;
+import static org.neo4j.helpers.Settings.setting;
+
+import org.neo4j.graphdb.config.Setting;
+
+/**
+ * Settings for the segmented clock cache
+ */
+public class ClockCacheSettings
+{
+    @SuppressWarnings("unchecked")
+    public static Setting<Long> node_cache_max_entries =
+            setting( "node_cache_max_entries", LONG, "1000000", min( 1L ) );
+
+    @SuppressWarnings("unchecked")
+    public static Setting<Long> relationship_cache_max_entries =
+            setting( "relationship_cache_max_entries", LONG, "1000000", min( 1L ) );
+
+    @SuppressWarnings("unchecked")
+    public static Setting<Integer> clock_cache_concurrency_level =
+            setting( "clock_cache_concurrency_level", INTEGER, "64", min( 1 ) );
+}
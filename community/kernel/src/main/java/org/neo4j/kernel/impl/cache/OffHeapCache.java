@@ -0,0 +1,653 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * A cache keeping recently used entities on the heap and everything else
+ * serialized in direct memory, outside of what the garbage collector has to
+ * look at. Entities are materialized again by a {@link Codec} when looked up.
+ * <p>
+ * The heap part is bounded by the {@link SizeOfObject} sizes registered for the
+ * entities. Entities evicted from it are encoded into fixed size pages that are
+ * filled in order and recycled oldest first, dropping whatever entities are
+ * still stored in them. An entity is never both on heap and off heap, a lookup
+ * moves it back to the heap.
+ * <p>
+ * Cached entities are mutated in place, so a serialized copy can go stale.
+ * {@link #updateSize(EntityWithSizeObject, int)}, which is called after every
+ * change, therefore drops any copy other than the changed instance itself.
+ */
+public class OffHeapCache<E extends EntityWithSizeObject> implements Cache<E>
+{
+    /**
+     * Converts entities to and from their off heap representation.
+     */
+    public interface Codec<E>
+    {
+        /**
+         * Writes {@code entity} to {@code target}, may throw
+         * {@link BufferOverflowException} if it doesn't fit.
+         */
+        void encode( E entity, ByteBuffer target );
+
+        E decode( long id, ByteBuffer source );
+    }
+
+    static final int MAX_PAGE_SIZE = 1024 * 1024;
+    static final int MIN_PAGE_SIZE = 4 * 1024;
+    private static final int RECORD_HEADER_SIZE = 8/*id*/ + 4/*length*/;
+
+    private final String name;
+    private final Codec<E> codec;
+    private final StringLogger logger;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    public OffHeapCache( String name, Codec<E> codec, long heapSize, long offHeapSize, int concurrencyLevel,
+            StringLogger logger )
+    {
+        if ( heapSize <= 0 )
+        {
+            throw new IllegalArgumentException( "Heap size " + heapSize + " is not > 0" );
+        }
+        if ( offHeapSize <= 0 )
+        {
+            throw new IllegalArgumentException( "Off heap size " + offHeapSize + " is not > 0" );
+        }
+        this.name = name;
+        this.codec = codec;
+        this.logger = logger;
+        int segmentCount = 1;
+        while ( segmentCount < concurrencyLevel && offHeapSize / (segmentCount * 2) >= 2 * MIN_PAGE_SIZE )
+        {
+            segmentCount <<= 1;
+        }
+        this.segmentMask = segmentCount - 1;
+        this.segments = new OffHeapCache.Segment[segmentCount];
+        long segmentOffHeapSize = offHeapSize / segmentCount;
+        int pageSize = (int) Math.max( MIN_PAGE_SIZE, Math.min( MAX_PAGE_SIZE, segmentOffHeapSize / 8 ) );
+        int pageCount = (int) Math.max( 2, Math.min( Integer.MAX_VALUE, segmentOffHeapSize / pageSize ) );
+        for ( int i = 0; i < segmentCount; i++ )
+        {
+            segments[i] = new Segment( Math.max( 1, heapSize / segmentCount ), pageSize, pageCount );
+        }
+    }
+
+    private Segment segmentFor( long id )
+    {
+        int hash = (int) (id ^ (id >>> 32));
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return segments[hash & segmentMask];
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public E get( long key )
+    {
+        return segmentFor( key ).get( key );
+    }
+
+    @Override
+    public void put( E value )
+    {
+        segmentFor( value.getId() ).put( value );
+    }
+
+    @Override
+    public void putAll( Collection<E> values )
+    {
+        for ( E entity : values )
+        {
+            put( entity );
+        }
+    }
+
+    @Override
+    public E remove( long key )
+    {
+        return segmentFor( key ).remove( key );
+    }
+
+    @Override
+    public void clear()
+    {
+        for ( Segment segment : segments )
+        {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public long size()
+    {
+        long size = 0;
+        for ( Segment segment : segments )
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void updateSize( E entity, int newSize )
+    {
+        segmentFor( entity.getId() ).updateSize( entity, newSize );
+    }
+
+    @Override
+    public long hitCount()
+    {
+        long hits = 0;
+        for ( Segment segment : segments )
+        {
+            hits += segment.counter.getHitsCount();
+        }
+        return hits;
+    }
+
+    @Override
+    public long missCount()
+    {
+        long misses = 0;
+        for ( Segment segment : segments )
+        {
+            misses += segment.counter.getMissCount();
+        }
+        return misses;
+    }
+
+    /**
+     * @return the number of bytes of the entities currently kept on the heap.
+     */
+    public long heapSize()
+    {
+        long size = 0;
+        for ( Segment segment : segments )
+        {
+            size += segment.heapSize();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of bytes of the entities currently stored off heap,
+     * not counting space held by entities dropped from pages that haven't been
+     * recycled yet.
+     */
+    public long offHeapSize()
+    {
+        long size = 0;
+        for ( Segment segment : segments )
+        {
+            size += segment.offHeapSize();
+        }
+        return size;
+    }
+
+    @Override
+    public void printStatistics()
+    {
+        logger.logMessage( String.format( "%s: entities=%d heap=%dB off-heap=%dB hits=%d misses=%d",
+                name, size(), heapSize(), offHeapSize(), hitCount(), missCount() ), true );
+    }
+
+    private final class Segment extends ReentrantLock
+    {
+        private final LinkedHashMap<Long, E> heap = new LinkedHashMap<Long, E>( 16, 0.75f, true );
+        private final long maxHeapSize;
+        private long heapSize;
+
+        private final HitCounter counter = new HitCounter();
+
+        // the off heap records, addressed as page << 32 | offset
+        private final LongLongMap offHeap = new LongLongMap();
+        private final ByteBuffer[] pages;
+        private final int pageSize;
+        private int currentPage;
+        private long offHeapSize;
+        private ByteBuffer scratch = ByteBuffer.allocate( 256 );
+
+        Segment( long maxHeapSize, int pageSize, int pageCount )
+        {
+            this.maxHeapSize = maxHeapSize;
+            this.pageSize = pageSize;
+            this.pages = new ByteBuffer[pageCount];
+        }
+
+        E get( long key )
+        {
+            lock();
+            try
+            {
+                E entity = heap.get( key );
+                if ( entity == null )
+                {
+                    entity = materialize( key );
+                    if ( entity != null )
+                    {
+                        putOnHeap( entity );
+                    }
+                }
+                return counter.count( entity );
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        void put( E entity )
+        {
+            lock();
+            try
+            {
+                drop( entity.getId() );
+                putOnHeap( entity );
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        E remove( long key )
+        {
+            lock();
+            try
+            {
+                dropOffHeap( key );
+                E removed = heap.remove( key );
+                if ( removed != null )
+                {
+                    heapSize -= removed.getRegisteredSize();
+                }
+                return removed;
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        void updateSize( E entity, int newSize )
+        {
+            lock();
+            try
+            {
+                long key = entity.getId();
+                dropOffHeap( key );
+                E cached = heap.get( key );
+                if ( cached == entity )
+                {
+                    heapSize += newSize - entity.getRegisteredSize();
+                    entity.setRegisteredSize( newSize );
+                    evictToSize();
+                }
+                else if ( cached != null )
+                {
+                    // a copy of a changed entity, it can't be trusted anymore
+                    heap.remove( key );
+                    heapSize -= cached.getRegisteredSize();
+                }
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        void clear()
+        {
+            lock();
+            try
+            {
+                heap.clear();
+                heapSize = 0;
+                offHeap.clear();
+                offHeapSize = 0;
+                // let the direct memory go, pages are allocated again on demand
+                for ( int i = 0; i < pages.length; i++ )
+                {
+                    pages[i] = null;
+                }
+                currentPage = 0;
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        int size()
+        {
+            lock();
+            try
+            {
+                return heap.size() + offHeap.size();
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        long heapSize()
+        {
+            lock();
+            try
+            {
+                return heapSize;
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        long offHeapSize()
+        {
+            lock();
+            try
+            {
+                return offHeapSize;
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        private void drop( long key )
+        {
+            dropOffHeap( key );
+            E previous = heap.remove( key );
+            if ( previous != null )
+            {
+                heapSize -= previous.getRegisteredSize();
+            }
+        }
+
+        private void putOnHeap( E entity )
+        {
+            int size = entity.sizeOfObjectInBytesIncludingOverhead();
+            entity.setRegisteredSize( size );
+            heap.put( entity.getId(), entity );
+            heapSize += size;
+            evictToSize();
+        }
+
+        private void evictToSize()
+        {
+            Iterator<E> eldest = heap.values().iterator();
+            while ( heapSize > maxHeapSize && eldest.hasNext() )
+            {
+                E entity = eldest.next();
+                eldest.remove();
+                heapSize -= entity.getRegisteredSize();
+                store( entity );
+            }
+        }
+
+        private E materialize( long key )
+        {
+            long address = offHeap.remove( key );
+            if ( address == LongLongMap.NO_VALUE )
+            {
+                return null;
+            }
+            ByteBuffer page = pages[(int) (address >>> 32)];
+            int offset = (int) address;
+            int length = page.getInt( offset + 8 );
+            offHeapSize -= RECORD_HEADER_SIZE + length;
+            ByteBuffer record = page.duplicate();
+            record.limit( offset + RECORD_HEADER_SIZE + length ).position( offset + RECORD_HEADER_SIZE );
+            return codec.decode( key, record.slice() );
+        }
+
+        private void store( E entity )
+        {
+            ByteBuffer encoded = encode( entity );
+            if ( encoded == null )
+            {
+                return;
+            }
+            int recordSize = RECORD_HEADER_SIZE + encoded.remaining();
+            ByteBuffer page = pageFor( recordSize );
+            int offset = page.position();
+            page.putLong( entity.getId() );
+            page.putInt( encoded.remaining() );
+            page.put( encoded );
+            offHeap.put( entity.getId(), ((long) currentPage << 32) | offset );
+            offHeapSize += recordSize;
+        }
+
+        /**
+         * @return the encoded entity ready to be read, or {@code null} if it
+         * couldn't be encoded, in which case it's simply not cached.
+         */
+        private ByteBuffer encode( E entity )
+        {
+            while ( true )
+            {
+                scratch.clear();
+                try
+                {
+                    codec.encode( entity, scratch );
+                    scratch.flip();
+                    return scratch;
+                }
+                catch ( BufferOverflowException e )
+                {
+                    if ( scratch.capacity() * 2 > pageSize - RECORD_HEADER_SIZE )
+                    {
+                        return null;
+                    }
+                    scratch = ByteBuffer.allocate( scratch.capacity() * 2 );
+                }
+                catch ( RuntimeException e )
+                {
+                    // changed while being encoded, the update will drop it anyway
+                    return null;
+                }
+            }
+        }
+
+        private ByteBuffer pageFor( int recordSize )
+        {
+            ByteBuffer page = pages[currentPage];
+            if ( page == null )
+            {
+                page = pages[currentPage] = ByteBuffer.allocateDirect( pageSize );
+            }
+            if ( page.remaining() >= recordSize )
+            {
+                return page;
+            }
+            currentPage = (currentPage + 1) % pages.length;
+            page = pages[currentPage];
+            if ( page == null )
+            {
+                return pages[currentPage] = ByteBuffer.allocateDirect( pageSize );
+            }
+            recycle( page );
+            return page;
+        }
+
+        private void recycle( ByteBuffer page )
+        {
+            int end = page.position();
+            int offset = 0;
+            while ( offset < end )
+            {
+                long key = page.getLong( offset );
+                int recordSize = RECORD_HEADER_SIZE + page.getInt( offset + 8 );
+                if ( offHeap.get( key ) == (((long) currentPage << 32) | offset) )
+                {
+                    offHeap.remove( key );
+                    offHeapSize -= recordSize;
+                }
+                offset += recordSize;
+            }
+            page.clear();
+        }
+
+        private void dropOffHeap( long key )
+        {
+            long address = offHeap.remove( key );
+            if ( address != LongLongMap.NO_VALUE )
+            {
+                offHeapSize -= RECORD_HEADER_SIZE + pages[(int) (address >>> 32)].getInt( (int) address + 8 );
+            }
+        }
+    }
+
+    /**
+     * Open addressing map from entity id to record address, to avoid keeping
+     * an object per off heap entity on the heap.
+     */
+    static final class LongLongMap
+    {
+        static final long NO_VALUE = -1;
+        private static final long FREE = -1;
+
+        private long[] keys = newKeys( 16 );
+        private long[] values = new long[16];
+        private int size;
+
+        private static long[] newKeys( int capacity )
+        {
+            long[] keys = new long[capacity];
+            java.util.Arrays.fill( keys, FREE );
+            return keys;
+        }
+
+        private int slot( long key )
+        {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & (keys.length - 1);
+        }
+
+        long get( long key )
+        {
+            for ( int i = slot( key ); ; i = (i + 1) & (keys.length - 1) )
+            {
+                if ( keys[i] == key )
+                {
+                    return values[i];
+                }
+                if ( keys[i] == FREE )
+                {
+                    return NO_VALUE;
+                }
+            }
+        }
+
+        void put( long key, long value )
+        {
+            if ( (size + 1) * 4 > keys.length * 3 )
+            {
+                rehash( keys.length * 2 );
+            }
+            int i = slot( key );
+            while ( keys[i] != FREE && keys[i] != key )
+            {
+                i = (i + 1) & (keys.length - 1);
+            }
+            if ( keys[i] == FREE )
+            {
+                size++;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        long remove( long key )
+        {
+            int i = slot( key );
+            while ( keys[i] != key )
+            {
+                if ( keys[i] == FREE )
+                {
+                    return NO_VALUE;
+                }
+                i = (i + 1) & (keys.length - 1);
+            }
+            long removed = values[i];
+            size--;
+            // shift following entries back so that no probe sequence gets broken
+            int hole = i;
+            for ( int j = (i + 1) & (keys.length - 1); keys[j] != FREE; j = (j + 1) & (keys.length - 1) )
+            {
+                int home = slot( keys[j] );
+                if ( ((j - home) & (keys.length - 1)) >= ((j - hole) & (keys.length - 1)) )
+                {
+                    keys[hole] = keys[j];
+                    values[hole] = values[j];
+                    hole = j;
+                }
+            }
+            keys[hole] = FREE;
+            return removed;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        void clear()
+        {
+            keys = newKeys( 16 );
+            values = new long[16];
+            size = 0;
+        }
+
+        private void rehash( int capacity )
+        {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = newKeys( capacity );
+            values = new long[capacity];
+            size = 0;
+            for ( int i = 0; i < oldKeys.length; i++ )
+            {
+                if ( oldKeys[i] != FREE )
+                {
+                    put( oldKeys[i], oldValues[i] );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import static org.neo4j.helpers.Settings.BYTES;
+import static org.neo4j.helpers.Settings.min;
+import static org.neo4j.helpers.Settings.setting;
+
+import org.neo4j.graphdb.config.Setting;
+
+/**
+ * Settings for the off heap cache
+ */
+public class OffHeapCacheSettings
+{
+    @SuppressWarnings("unchecked")
+    public static Setting<Long> node_cache_off_heap_size =
+            setting( "node_cache_off_heap_size", BYTES, "256M", min( 2L * OffHeapCache.MIN_PAGE_SIZE ) );
+
+    @SuppressWarnings("unchecked")
+    public static Setting<Long> relationship_cache_off_heap_size =
+            setting( "relationship_cache_off_heap_size", BYTES, "256M", min( 2L * OffHeapCache.MIN_PAGE_SIZE ) );
+
+    @SuppressWarnings("unchecked")
+    public static Setting<Long> node_cache_heap_size =
+            setting( "off_heap_cache_node_heap_size", BYTES, "16M", min( 1L ) );
+
+    @SuppressWarnings("unchecked")
+    public static Setting<Long> relationship_cache_heap_size =
+            setting( "off_heap_cache_relationship_heap_size", BYTES, "16M", min( 1L ) );
+}
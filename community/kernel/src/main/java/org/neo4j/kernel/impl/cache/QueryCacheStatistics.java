@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how the execution plan caches of the query engines running against a database are doing, so that the
+ * caches can be monitored and sized. There is one instance per database, shared by all engines using it.
+ */
+public class QueryCacheStatistics
+{
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong parameterizedQueries = new AtomicLong();
+    private final AtomicLong parseTime = new AtomicLong();
+    private final AtomicLong planTime = new AtomicLong();
+
+    /**
+     * A query was found in the cache.
+     */
+    public void hit()
+    {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * A query was not found in the cache, and had to be parsed and planned.
+     */
+    public void miss()
+    {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * A plan was evicted from the cache to make room for another one.
+     */
+    public void eviction()
+    {
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * The literals of a query were turned into parameters before looking it up in the cache.
+     */
+    public void parameterized()
+    {
+        parameterizedQueries.incrementAndGet();
+    }
+
+    public void parsed( long nanos )
+    {
+        parseTime.addAndGet( nanos );
+    }
+
+    public void planned( long nanos )
+    {
+        planTime.addAndGet( nanos );
+    }
+
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    public long getParameterizedQueryCount()
+    {
+        return parameterizedQueries.get();
+    }
+
+    /**
+     * @return the total time, in nanoseconds, spent parsing queries that were not in the cache.
+     */
+    public long getParseTime()
+    {
+        return parseTime.get();
+    }
+
+    /**
+     * @return the total time, in nanoseconds, spent planning queries that were not in the cache.
+     */
+    public long getPlanTime()
+    {
+        return planTime.get();
+    }
+}
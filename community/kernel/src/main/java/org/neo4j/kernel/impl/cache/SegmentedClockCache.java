@@ -0,0 +1,390 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded cache approximating LRU with a clock per segment. Entities are
+ * spread over segments by id, lookups never lock and only mark the entry as
+ * referenced, while inserts, removals and eviction lock just the segment they
+ * touch. This avoids the single monitor that {@link LruCache} funnels all
+ * readers through.
+ */
+public class SegmentedClockCache<E extends EntityWithSizeObject> implements Cache<E>
+{
+    private final String name;
+    private final Segment<E>[] segments;
+    private final int segmentMask;
+    private volatile long maxSize;
+
+    @SuppressWarnings( "unchecked" )
+    public SegmentedClockCache( String name, long maxSize, int concurrencyLevel )
+    {
+        if ( name == null )
+        {
+            throw new IllegalArgumentException( "name cannot be null" );
+        }
+        if ( maxSize <= 0 )
+        {
+            throw new IllegalArgumentException( maxSize + " is not > 0" );
+        }
+        if ( concurrencyLevel <= 0 )
+        {
+            throw new IllegalArgumentException( concurrencyLevel + " is not > 0" );
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        int segmentCount = 1;
+        while ( segmentCount < concurrencyLevel && segmentCount < maxSize )
+        {
+            segmentCount <<= 1;
+        }
+        this.segmentMask = segmentCount - 1;
+        this.segments = new Segment[segmentCount];
+        for ( int i = 0; i < segmentCount; i++ )
+        {
+            segments[i] = new Segment<E>( segmentCapacity( i, maxSize ) );
+        }
+    }
+
+    private int segmentCapacity( int segment, long totalSize )
+    {
+        long capacity = totalSize / segments.length + (segment < totalSize % segments.length ? 1 : 0);
+        return (int) Math.max( 1, Math.min( Integer.MAX_VALUE - 8, capacity ) );
+    }
+
+    private Segment<E> segmentFor( long id )
+    {
+        // spread the bits so that sequential ids don't cluster in one segment
+        int hash = (int) (id ^ (id >>> 32));
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return segments[hash & segmentMask];
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public E get( long key )
+    {
+        return segmentFor( key ).get( key );
+    }
+
+    @Override
+    public void put( E value )
+    {
+        segmentFor( value.getId() ).put( value );
+    }
+
+    @Override
+    public void putAll( Collection<E> values )
+    {
+        for ( E entity : values )
+        {
+            put( entity );
+        }
+    }
+
+    @Override
+    public E remove( long key )
+    {
+        return segmentFor( key ).remove( key );
+    }
+
+    @Override
+    public void clear()
+    {
+        for ( Segment<E> segment : segments )
+        {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public long size()
+    {
+        long size = 0;
+        for ( Segment<E> segment : segments )
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long maxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Changes the maximum number of entities kept in this cache. Shrinking
+     * evicts entities from every segment, unreferenced ones first.
+     */
+    public void resize( long newMaxSize )
+    {
+        if ( newMaxSize <= 0 )
+        {
+            throw new IllegalArgumentException( newMaxSize + " is not > 0" );
+        }
+        synchronized ( segments )
+        {
+            this.maxSize = newMaxSize;
+            for ( int i = 0; i < segments.length; i++ )
+            {
+                segments[i].resize( segmentCapacity( i, newMaxSize ) );
+            }
+        }
+    }
+
+    @Override
+    public long hitCount()
+    {
+        long hits = 0;
+        for ( Segment<E> segment : segments )
+        {
+            hits += segment.counter.getHitsCount();
+        }
+        return hits;
+    }
+
+    @Override
+    public long missCount()
+    {
+        long misses = 0;
+        for ( Segment<E> segment : segments )
+        {
+            misses += segment.counter.getMissCount();
+        }
+        return misses;
+    }
+
+    @Override
+    public void updateSize( E entity, int newSize )
+    {
+        // do nothing, this cache is bounded by number of entities
+    }
+
+    @Override
+    public void printStatistics()
+    {
+        // do nothing
+    }
+
+    private static final class Entry<E>
+    {
+        final long key;
+        final int slot;
+        volatile E value;
+        volatile boolean referenced;
+
+        Entry( long key, int slot, E value )
+        {
+            this.key = key;
+            this.slot = slot;
+            this.value = value;
+        }
+    }
+
+    private static final class Segment<E extends EntityWithSizeObject> extends ReentrantLock
+    {
+        private final Map<Long, Entry<E>> entries = new ConcurrentHashMap<Long, Entry<E>>();
+        private final HitCounter counter = new HitCounter();
+        // guarded by the lock
+        private Entry<E>[] clock;
+        private int[] freeSlots;
+        private int freeCount;
+        private int used;
+        private int hand;
+
+        Segment( int capacity )
+        {
+            reset( capacity );
+        }
+
+        @SuppressWarnings( "unchecked" )
+        private void reset( int capacity )
+        {
+            clock = new Entry[capacity];
+            freeSlots = new int[capacity];
+            freeCount = 0;
+            used = 0;
+            hand = 0;
+        }
+
+        E get( long key )
+        {
+            Entry<E> entry = entries.get( key );
+            if ( entry == null )
+            {
+                return counter.count( null );
+            }
+            if ( !entry.referenced )
+            {
+                // only write when needed, to keep hot entries' cache lines shared
+                entry.referenced = true;
+            }
+            return counter.count( entry.value );
+        }
+
+        void put( E value )
+        {
+            long key = value.getId();
+            lock();
+            try
+            {
+                Entry<E> existing = entries.get( key );
+                if ( existing != null )
+                {
+                    existing.value = value;
+                    existing.referenced = true;
+                    return;
+                }
+                int slot = claimSlot();
+                Entry<E> entry = new Entry<E>( key, slot, value );
+                clock[slot] = entry;
+                entries.put( key, entry );
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        E remove( long key )
+        {
+            lock();
+            try
+            {
+                Entry<E> entry = entries.remove( key );
+                if ( entry == null )
+                {
+                    return null;
+                }
+                clock[entry.slot] = null;
+                freeSlots[freeCount++] = entry.slot;
+                return entry.value;
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        private int claimSlot()
+        {
+            if ( freeCount > 0 )
+            {
+                return freeSlots[--freeCount];
+            }
+            if ( used < clock.length )
+            {
+                return used++;
+            }
+            // every slot is taken, sweep the hand giving referenced entries a second chance
+            while ( true )
+            {
+                int slot = hand;
+                hand = (hand + 1) % clock.length;
+                Entry<E> entry = clock[slot];
+                if ( entry.referenced )
+                {
+                    entry.referenced = false;
+                }
+                else
+                {
+                    entries.remove( entry.key );
+                    clock[slot] = null;
+                    return slot;
+                }
+            }
+        }
+
+        void clear()
+        {
+            lock();
+            try
+            {
+                entries.clear();
+                reset( clock.length );
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+
+        int size()
+        {
+            return entries.size();
+        }
+
+        void resize( int capacity )
+        {
+            lock();
+            try
+            {
+                Entry<E>[] old = clock;
+                int oldHand = hand;
+                boolean[] referenced = new boolean[old.length];
+                for ( int i = 0; i < old.length; i++ )
+                {
+                    referenced[i] = old[i] != null && old[i].referenced;
+                }
+                reset( capacity );
+                // keep referenced entries first, then the rest in clock order
+                for ( int pass = 0; pass < 2; pass++ )
+                {
+                    for ( int i = 0; i < old.length; i++ )
+                    {
+                        int slot = (oldHand + i) % old.length;
+                        Entry<E> entry = old[slot];
+                        if ( entry == null || referenced[slot] != (pass == 0) )
+                        {
+                            continue;
+                        }
+                        if ( used < capacity )
+                        {
+                            Entry<E> moved = new Entry<E>( entry.key, used, entry.value );
+                            moved.referenced = referenced[slot];
+                            clock[used++] = moved;
+                            entries.put( entry.key, moved );
+                        }
+                        else
+                        {
+                            entries.remove( entry.key );
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                unlock();
+            }
+        }
+    }
+}
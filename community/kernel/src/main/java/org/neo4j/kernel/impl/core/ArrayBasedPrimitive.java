@@ -133,6 +133,15 @@ abstract class ArrayBasedPrimitive extends Primitive implements EntityWithSizeOb
         updateSize( nodeManager );
     }
 
+    /**
+     * Sets already sorted properties, as read back from a cache. Unlike
+     * {@link #setProperties(ArrayMap, NodeManager)} the cache isn't told.
+     */
+    void restoreProperties( PropertyData[] properties )
+    {
+        this.properties = properties;
+    }
+
     @Override
     protected PropertyData[] allProperties()
     {
@@ -31,6 +31,7 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyData;
 import org.neo4j.kernel.impl.transaction.TxHook;
 import org.neo4j.kernel.impl.transaction.xaframework.TxIdGenerator;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.PrimitiveLongSet;
 import org.neo4j.kernel.impl.util.RelIdArray;
 
 public class NoTransactionState implements TransactionState
@@ -50,13 +51,13 @@ public class NoTransactionState implements TransactionState
     }
     
     @Override
-    public ArrayMap<Integer, Collection<Long>> getCowRelationshipRemoveMap( NodeImpl node )
+    public ArrayMap<Integer, PrimitiveLongSet> getCowRelationshipRemoveMap( NodeImpl node )
     {
         return null;
     }
 
     @Override
-    public Collection<Long> getOrCreateCowRelationshipRemoveMap( NodeImpl node, int type )
+    public PrimitiveLongSet getOrCreateCowRelationshipRemoveMap( NodeImpl node, int type )
     {
         throw new NotInTransactionException();
     }
@@ -166,6 +167,11 @@ public class NoTransactionState implements TransactionState
     {
     }
 
+    @Override
+    public void invalidateDenseNode( long nodeId, Collection<Integer> changedTypes )
+    {
+    }
+
     @Override
     public void removeRelationshipTypeFromCache( int id )
     {
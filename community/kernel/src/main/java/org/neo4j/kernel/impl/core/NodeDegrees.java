@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+
+/**
+ * The number of relationships of a node, counted without loading the relationships. Implemented by the nodes of
+ * an embedded database, other {@link Node} implementations have to be counted by iterating their relationships.
+ */
+public interface NodeDegrees
+{
+    /**
+     * @return the number of relationships returned by {@link Node#getRelationships()}.
+     */
+    public int getDegree();
+
+    /**
+     * @return the number of relationships returned by {@link Node#getRelationships(Direction)}.
+     */
+    public int getDegree( Direction direction );
+
+    /**
+     * @return the number of relationships returned by {@link Node#getRelationships(RelationshipType, Direction)}.
+     */
+    public int getDegree( RelationshipType type, Direction direction );
+}
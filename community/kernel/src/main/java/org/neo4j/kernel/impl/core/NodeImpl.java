@@ -25,7 +25,6 @@ import static org.neo4j.kernel.impl.util.RelIdArray.empty;
 import static org.neo4j.kernel.impl.util.RelIdArray.wrap;
 
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -37,6 +36,7 @@ import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.Triplet;
 import org.neo4j.kernel.impl.cache.SizeOfs;
 import org.neo4j.kernel.impl.core.WritableTransactionState.CowEntityElement;
@@ -46,6 +46,7 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyData;
 import org.neo4j.kernel.impl.nioneo.store.Record;
 import org.neo4j.kernel.impl.util.ArrayMap;
 import org.neo4j.kernel.impl.util.CombinedRelIdIterator;
+import org.neo4j.kernel.impl.util.PrimitiveLongSet;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 import org.neo4j.kernel.impl.util.RelIdIterator;
@@ -60,6 +61,11 @@ public class NodeImpl extends ArrayBasedPrimitive
      * This is the id of the next relationship to load from disk.
      */
     private volatile long relChainPosition = Record.NO_NEXT_RELATIONSHIP.intValue();
+    /*
+     * The types whose relationships have all been loaded ahead of the chain position,
+     * only dense nodes have their relationships of each type in chains of their own.
+     */
+    private volatile int[] fullyLoadedTypes;
     private final long id;
 
     NodeImpl( long id )
@@ -91,7 +97,12 @@ public class NodeImpl extends ArrayBasedPrimitive
     public int sizeOfObjectInBytesIncludingOverhead()
     {
         int size = super.sizeOfObjectInBytesIncludingOverhead() + SizeOfs.REFERENCE_SIZE/*relationships reference*/ +
-                8/*relChainPosition*/ + 8/*id*/;
+                8/*relChainPosition*/ + 8/*id*/ + SizeOfs.REFERENCE_SIZE/*fullyLoadedTypes reference*/;
+        int[] loadedTypes = fullyLoadedTypes;
+        if ( loadedTypes != null )
+        {
+            size += SizeOfs.sizeOfArray( loadedTypes );
+        }
         if ( relationships != null )
         {
             size = withArrayOverheadIncludingReferences( size, relationships.length );
@@ -158,7 +169,7 @@ public class NodeImpl extends ArrayBasedPrimitive
         RelIdIterator[] result = new RelIdIterator[localRelationships.length];
         TransactionState tx = nodeManager.getTransactionState();
         ArrayMap<Integer, RelIdArray> addMap = null;
-        ArrayMap<Integer, Collection<Long>> skipMap = null;
+        ArrayMap<Integer, PrimitiveLongSet> skipMap = null;
         if ( tx.hasChanges() )
         {
             addMap = tx.getCowRelationshipAddMap( this );
@@ -215,52 +226,53 @@ public class NodeImpl extends ArrayBasedPrimitive
     {
         ensureRelationshipMapNotNull( nodeManager );
 
+        int[] typeIds = new int[types.length];
+        int actualLength = 0;
+        for ( RelationshipType type : types )
+        {
+            Integer typeId = nodeManager.getRelationshipTypeIdFor( type );
+            if ( typeId == null )
+            // This relationship type doesn't even exist in this database
+            {
+                continue;
+            }
+            typeIds[actualLength++] = typeId;
+        }
+
         // We need to check if there are more relationships to load before grabbing
         // the references to the RelIdArrays. Otherwise there could be
         // another concurrent thread exhausting the chain position in between the point
         // where we got an empty iterator for a type that the other thread loaded and
         // the point where we check if there are more relationships to load.
-        boolean hasMore = hasMoreRelationshipsToLoad();
+        boolean hasMore = hasMoreRelationshipsToLoad() && !loadRelationshipsOfTypes( nodeManager, typeIds,
+                actualLength );
 
-        RelIdIterator[] result = new RelIdIterator[types.length];
+        RelIdIterator[] result = new RelIdIterator[actualLength];
         TransactionState tx = nodeManager.getTransactionState();
         ArrayMap<Integer, RelIdArray> addMap = null;
-        ArrayMap<Integer, Collection<Long>> skipMap = null;
+        ArrayMap<Integer, PrimitiveLongSet> skipMap = null;
         if ( tx.hasChanges() )
         {
             addMap = tx.getCowRelationshipAddMap( this );
             skipMap = tx.getCowRelationshipRemoveMap( this );
         }
-        int actualLength = 0;
-        for ( RelationshipType type : types )
+        for ( int i = 0; i < actualLength; i++ )
         {
-            Integer typeId = nodeManager.getRelationshipTypeIdFor( type );
-            if ( typeId == null )
-            // This relationship type doesn't even exist in this database
-            {
-                continue;
-            }
-
-                result[actualLength++] = getRelationshipsIterator( direction,
-                        addMap != null ? addMap.get( typeId ) : null,
-                        skipMap != null ? skipMap.get( typeId ) : null, typeId );
-            }
+            int typeId = typeIds[i];
+            result[i] = getRelationshipsIterator( direction,
+                    addMap != null ? addMap.get( typeId ) : null,
+                    skipMap != null ? skipMap.get( typeId ) : null, typeId );
+        }
 
-            if ( actualLength < result.length )
-            {
-                RelIdIterator[] compacted = new RelIdIterator[actualLength];
-                arraycopy( result, 0, compacted, 0, actualLength );
-                result = compacted;
-            }
-            if ( result.length == 0 )
-            {
-                return Collections.emptyList();
-            }
-            return new RelationshipIterator( result, this, direction, nodeManager, hasMore, false );
+        if ( result.length == 0 )
+        {
+            return Collections.emptyList();
         }
+        return new RelationshipIterator( result, this, direction, nodeManager, hasMore, false );
+    }
 
     private RelIdIterator getRelationshipsIterator( DirectionWrapper direction,
-                                                    RelIdArray add, Collection<Long> remove, int type )
+                                                    RelIdArray add, PrimitiveLongSet remove, int type )
     {
         RelIdArray src = getRelIdArray( type );
         RelIdIterator iterator;
@@ -496,6 +508,83 @@ public class NodeImpl extends ArrayBasedPrimitive
         return rels;
     }
 
+    /*
+     * Loads all the relationships of the given types of a dense node, so that
+     * getting them doesn't involve loading the relationships of all other types.
+     * Returns whether or not all of the given types are fully loaded afterwards.
+     */
+    private boolean loadRelationshipsOfTypes( NodeManager nodeManager, int[] typeIds, int count )
+    {
+        List<RelationshipImpl> loadedRelationships = null;
+        boolean allLoaded = true;
+        synchronized ( this )
+        {
+            for ( int i = 0; i < count && hasMoreRelationshipsToLoad(); i++ )
+            {
+                if ( isFullyLoaded( typeIds[i] ) )
+                {
+                    continue;
+                }
+                Pair<RelIdArray, List<RelationshipImpl>> rels;
+                try
+                {
+                    rels = nodeManager.getRelationshipsOfType( this, typeIds[i] );
+                }
+                catch ( InvalidRecordException e )
+                {
+                    throw new NotFoundException( "Unable to load relationships from " + asProxy( nodeManager ) +
+                            ". This usually happens when relationships are deleted by someone else just as we are " +
+                            "about to load them. Please try again.", e );
+                }
+                if ( rels == null )
+                {
+                    // not a dense node, its relationships are all in the same chain
+                    allLoaded = false;
+                    break;
+                }
+                putRelIdArray( rels.first() );
+                int[] loadedTypes = fullyLoadedTypes;
+                loadedTypes = loadedTypes == null ? new int[1] : Arrays.copyOf( loadedTypes, loadedTypes.length + 1 );
+                loadedTypes[loadedTypes.length - 1] = typeIds[i];
+                fullyLoadedTypes = loadedTypes;
+                if ( loadedRelationships == null )
+                {
+                    loadedRelationships = rels.other();
+                }
+                else
+                {
+                    loadedRelationships.addAll( rels.other() );
+                }
+            }
+            updateSize( nodeManager );
+        }
+        if ( loadedRelationships != null )
+        {
+            nodeManager.putAllInRelCache( loadedRelationships );
+        }
+        return allLoaded;
+    }
+
+    boolean isFullyLoaded( int type )
+    {
+        if ( !hasMoreRelationshipsToLoad() )
+        {
+            return true;
+        }
+        int[] loadedTypes = fullyLoadedTypes;
+        if ( loadedTypes != null )
+        {
+            for ( int loadedType : loadedTypes )
+            {
+                if ( loadedType == type )
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     boolean hasMoreRelationshipsToLoad()
     {
         return getRelChainPosition() != Record.NO_NEXT_RELATIONSHIP.intValue();
@@ -549,6 +638,11 @@ public class NodeImpl extends ArrayBasedPrimitive
             }
             for ( int type : addMap.keySet() )
             {
+                if ( isFullyLoaded( type ) )
+                {
+                    // already loaded along with the rest of its type
+                    continue;
+                }
                 RelIdArray addRels = addMap.get( type );
                 RelIdArray srcRels = getRelIdArray( type );
                 if ( srcRels == null )
@@ -654,9 +748,64 @@ public class NodeImpl extends ArrayBasedPrimitive
         return getRelationships( nodeManager, type, dir ).iterator().hasNext();
     }
 
+    /**
+     * Counts the relationships of this node without loading them, if possible.
+     * Fully loaded nodes count what's in the cache, other nodes get the count
+     * from the store. Only nodes with relationships added or removed in this
+     * transaction have their relationships loaded and counted one by one.
+     *
+     * @param type the type to count relationships of, or {@code null} for all types.
+     */
+    public int getDegree( NodeManager nodeManager, RelationshipType type, Direction dir )
+    {
+        TransactionState tx = nodeManager.getTransactionState();
+        if ( tx.hasChanges() &&
+             (tx.getCowRelationshipAddMap( this ) != null || tx.getCowRelationshipRemoveMap( this ) != null) )
+        {
+            Iterable<Relationship> rels = type != null ? getRelationships( nodeManager, type, dir ) :
+                    getRelationships( nodeManager, dir );
+            int degree = 0;
+            for ( Iterator<Relationship> iterator = rels.iterator(); iterator.hasNext(); iterator.next() )
+            {
+                degree++;
+            }
+            return degree;
+        }
+
+        int typeId = -1;
+        if ( type != null )
+        {
+            Integer id = nodeManager.getRelationshipTypeIdFor( type );
+            if ( id == null )
+            {
+                // This relationship type doesn't even exist in this database
+                return 0;
+            }
+            typeId = id;
+        }
+        DirectionWrapper direction = wrap( dir );
+        RelIdArray[] localRelationships = relationships;
+        if ( localRelationships == null || hasMoreRelationshipsToLoad() )
+        {
+            return nodeManager.getDegree( this, typeId, direction );
+        }
+        int degree = 0;
+        for ( RelIdArray ids : localRelationships )
+        {
+            if ( typeId == -1 || ids.getType() == typeId )
+            {
+                for ( RelIdIterator iterator = ids.iterator( direction ); iterator.hasNext(); iterator.next() )
+                {
+                    degree++;
+                }
+            }
+        }
+        return degree;
+    }
+
     protected void commitRelationshipMaps(
             ArrayMap<Integer, RelIdArray> cowRelationshipAddMap,
-            ArrayMap<Integer, Collection<Long>> cowRelationshipRemoveMap, NodeManager nodeManager )
+            ArrayMap<Integer, PrimitiveLongSet> cowRelationshipRemoveMap, NodeManager nodeManager )
     {
         if ( relationships == null )
         {
@@ -671,7 +820,7 @@ public class NodeImpl extends ArrayBasedPrimitive
                 for ( int type : cowRelationshipAddMap.keySet() )
                 {
                     RelIdArray add = cowRelationshipAddMap.get( type );
-                    Collection<Long> remove = null;
+                    PrimitiveLongSet remove = null;
                     if ( cowRelationshipRemoveMap != null )
                     {
                         remove = cowRelationshipRemoveMap.get( type );
@@ -692,7 +841,7 @@ public class NodeImpl extends ArrayBasedPrimitive
                     RelIdArray src = getRelIdArray( type );
                     if ( src != null )
                     {
-                        Collection<Long> remove = cowRelationshipRemoveMap.get( type );
+                        PrimitiveLongSet remove = cowRelationshipRemoveMap.get( type );
                         putRelIdArray( RelIdArray.from( src, null, remove ) );
                     }
                 }
@@ -711,6 +860,10 @@ public class NodeImpl extends ArrayBasedPrimitive
         relChainPosition = position;
         // use local reference to avoid multiple read barriers
         RelIdArray[] array = relationships;
+        if ( !hasMoreRelationshipsToLoad() )
+        {
+            fullyLoadedTypes = null;
+        }
         if ( !hasMoreRelationshipsToLoad() && array != null )
         {
             // Done loading - Shrink arrays
@@ -721,6 +874,18 @@ public class NodeImpl extends ArrayBasedPrimitive
         }
     }
 
+    void restoreRelationships( RelIdArray[] relationships, long relChainPosition, int[] fullyLoadedTypes )
+    {
+        this.relationships = relationships;
+        this.relChainPosition = relChainPosition;
+        this.fullyLoadedTypes = fullyLoadedTypes;
+    }
+
+    int[] getFullyLoadedTypes()
+    {
+        return fullyLoadedTypes;
+    }
+
     RelIdArray getRelationshipIds( int type )
     {
         return getRelIdArray( type );
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.nio.ByteBuffer;
+
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.util.RelIdArray;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+import org.neo4j.kernel.impl.util.RelIdArrayWithLoops;
+import org.neo4j.kernel.impl.util.RelIdIterator;
+
+/**
+ * Encodes a {@link NodeImpl} with its cached properties and relationship ids.
+ * The ids of each type and direction are written as deltas from the previous id.
+ * Types that a dense node has loaded ahead of its chain position are written
+ * along with the position.
+ */
+public class NodeImplCodec extends PrimitiveCodec<NodeImpl>
+{
+    private static final DirectionWrapper[] DIRECTIONS = DirectionWrapper.values();
+
+    @Override
+    public void encode( NodeImpl node, ByteBuffer target )
+    {
+        // read the relationship state before the chain position, which is set last when loading more
+        RelIdArray[] relationships = node.getRelationshipIds();
+        int[] fullyLoadedTypes = node.getFullyLoadedTypes();
+        long relChainPosition = node.getRelChainPosition();
+        writeProperties( node.allProperties(), target );
+        if ( relationships == null )
+        {
+            writeVarLong( target, 0 );
+            return;
+        }
+        writeVarLong( target, relationships.length + 1 );
+        writeVarLong( target, zigZag( relChainPosition ) );
+        writeVarLong( target, fullyLoadedTypes != null ? fullyLoadedTypes.length : 0 );
+        if ( fullyLoadedTypes != null )
+        {
+            for ( int type : fullyLoadedTypes )
+            {
+                writeVarLong( target, type );
+            }
+        }
+        for ( RelIdArray ids : relationships )
+        {
+            writeVarLong( target, ids.getType() );
+            target.put( (byte) (ids instanceof RelIdArrayWithLoops ? 1 : 0) );
+            for ( DirectionWrapper direction : DIRECTIONS )
+            {
+                writeIds( ids.exactIterator( direction ), target );
+            }
+        }
+    }
+
+    private static void writeIds( RelIdIterator ids, ByteBuffer target )
+    {
+        long previous = 0;
+        while ( ids.hasNext() )
+        {
+            long id = ids.next();
+            writeVarLong( target, zigZag( id - previous ) + 1 );
+            previous = id;
+        }
+        writeVarLong( target, 0 );
+    }
+
+    @Override
+    public NodeImpl decode( long id, ByteBuffer source )
+    {
+        NodeImpl node = new NodeImpl( id );
+        node.restoreProperties( readProperties( source ) );
+        int count = (int) readVarLong( source ) - 1;
+        if ( count < 0 )
+        {
+            return node;
+        }
+        long relChainPosition = unZigZag( readVarLong( source ) );
+        boolean fullyLoaded = relChainPosition == Record.NO_NEXT_RELATIONSHIP.intValue();
+        int[] fullyLoadedTypes = null;
+        int loadedTypeCount = (int) readVarLong( source );
+        if ( loadedTypeCount > 0 )
+        {
+            fullyLoadedTypes = new int[loadedTypeCount];
+            for ( int i = 0; i < loadedTypeCount; i++ )
+            {
+                fullyLoadedTypes[i] = (int) readVarLong( source );
+            }
+        }
+        RelIdArray[] relationships = new RelIdArray[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            int type = (int) readVarLong( source );
+            RelIdArray ids = source.get() != 0 ? new RelIdArrayWithLoops( type ) : new RelIdArray( type );
+            for ( DirectionWrapper direction : DIRECTIONS )
+            {
+                readIds( ids, direction, source );
+            }
+            relationships[i] = fullyLoaded ? ids.shrink() : ids;
+        }
+        node.restoreRelationships( relationships, relChainPosition, fullyLoadedTypes );
+        return node;
+    }
+
+    private static void readIds( RelIdArray ids, DirectionWrapper direction, ByteBuffer source )
+    {
+        long previous = 0;
+        for ( long delta = readVarLong( source ); delta != 0; delta = readVarLong( source ) )
+        {
+            previous += unZigZag( delta - 1 );
+            ids.add( previous, direction );
+        }
+    }
+}
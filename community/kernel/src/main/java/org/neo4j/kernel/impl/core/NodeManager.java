@@ -25,12 +25,10 @@ import static java.util.Arrays.asList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -45,7 +43,6 @@ import org.neo4j.helpers.Predicate;
 import org.neo4j.helpers.Triplet;
 import org.neo4j.helpers.collection.CombiningIterator;
 import org.neo4j.helpers.collection.FilteringIterator;
-import org.neo4j.helpers.collection.IteratorWrapper;
 import org.neo4j.helpers.collection.PrefetchingIterator;
 import org.neo4j.kernel.PropertyTracker;
 import org.neo4j.kernel.configuration.Config;
@@ -54,6 +51,7 @@ import org.neo4j.kernel.impl.cache.CacheProvider;
 import org.neo4j.kernel.impl.nioneo.store.NameData;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyData;
+import org.neo4j.kernel.impl.nioneo.store.Record;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.persistence.EntityIdGenerator;
 import org.neo4j.kernel.impl.persistence.PersistenceManager;
@@ -62,6 +60,8 @@ import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.transaction.XaDataSourceManager;
 import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.PrimitiveLongIterator;
+import org.neo4j.kernel.impl.util.PrimitiveLongSet;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 import org.neo4j.kernel.impl.util.RelIdArrayWithLoops;
@@ -400,7 +400,7 @@ public class NodeManager
          * this transaction. The thing with the cache is that stuff can be evicted at any point in time
          * so we can't rely on created nodes to be there during the whole life time of this iterator.
          * That's why we filter them out from the "committed/cache" iterator and add them at the end instead.*/
-        final Set<Long> createdNodes = asSet( getCreatedNodes().iterator( DirectionWrapper.OUTGOING ) );
+        final PrimitiveLongSet createdNodes = asSet( getCreatedNodes().iterator( DirectionWrapper.OUTGOING ) );
         if ( !createdNodes.isEmpty() )
         {
             committedNodes = new FilteringIterator<Node>( committedNodes, new Predicate<Node>()
@@ -425,12 +425,14 @@ public class NodeManager
 
         // Append nodes created in this transaction
         return new CombiningIterator<Node>( asList( filteredRemovedNodes,
-                new IteratorWrapper<Node, Long>( createdNodes.iterator() )
+                new PrefetchingIterator<Node>()
                 {
+                    private final PrimitiveLongIterator ids = createdNodes.iterator();
+
                     @Override
-                    protected Node underlyingObjectToObject( Long id )
+                    protected Node fetchNextOrNull()
                     {
-                        return getNodeById( id );
+                        return ids.hasNext() ? getNodeById( ids.next() ) : null;
                     }
                 } ) );
     }
@@ -598,7 +600,8 @@ public class NodeManager
          * this transaction. The thing with the cache is that stuff can be evicted at any point in time
          * so we can't rely on created relationships to be there during the whole life time of this iterator.
          * That's why we filter them out from the "committed/cache" iterator and add them at the end instead.*/
-        final Set<Long> createdRelationships = asSet( getCreatedRelationships().iterator( DirectionWrapper.OUTGOING ) );
+        final PrimitiveLongSet createdRelationships =
+                asSet( getCreatedRelationships().iterator( DirectionWrapper.OUTGOING ) );
         if ( !createdRelationships.isEmpty() )
         {
             committedRelationships = new FilteringIterator<Relationship>( committedRelationships,
@@ -625,19 +628,21 @@ public class NodeManager
 
         // Append relationships created in this transaction
         return new CombiningIterator<Relationship>( asList( filteredRemovedRelationships,
-                new IteratorWrapper<Relationship, Long>( createdRelationships.iterator() )
+                new PrefetchingIterator<Relationship>()
                 {
+                    private final PrimitiveLongIterator ids = createdRelationships.iterator();
+
                     @Override
-                    protected Relationship underlyingObjectToObject( Long id )
+                    protected Relationship fetchNextOrNull()
                     {
-                        return getRelationshipById( id );
+                        return ids.hasNext() ? getRelationshipById( ids.next() ) : null;
                     }
                 } ) );
     }
 
-    private Set<Long> asSet( RelIdIterator ids )
+    private PrimitiveLongSet asSet( RelIdIterator ids )
     {
-        Set<Long> set = new HashSet<Long>();
+        PrimitiveLongSet set = new PrimitiveLongSet();
         while ( ids.hasNext() )
         {
             set.add( ids.next() );
@@ -718,6 +723,30 @@ public class NodeManager
         if ( node != null && node.getRelChainPosition() == relIdDeleted )
         {
             node.setRelChainPosition( nextRelId );
+            if ( nextRelId == Record.NO_NEXT_RELATIONSHIP.intValue() )
+            {
+                // The end of one chain of a dense node isn't the end of its relationships,
+                // so have it loaded again for anyone not already iterating over it
+                nodeCache.remove( nodeId );
+                return;
+            }
+            updateCacheSize( node, node.sizeOfObjectInBytesIncludingOverhead() );
+        }
+    }
+
+    public void invalidateDenseNode( long nodeId, Collection<Integer> changedTypes )
+    {
+        NodeImpl node = nodeCache.get( nodeId );
+        if ( node != null && node.hasMoreRelationshipsToLoad() )
+        {
+            for ( int type : changedTypes )
+            {
+                if ( !node.isFullyLoaded( type ) )
+                {
+                    nodeCache.remove( nodeId );
+                    return;
+                }
+            }
         }
     }
 
@@ -741,23 +770,56 @@ public class NodeManager
                 new ArrayMap<Integer, RelIdArray>();
 
         List<RelationshipImpl> relsList = new ArrayList<RelationshipImpl>( 150 );
+        populateLoadedRelationships( rels.first(), relsList, newRelationshipMap );
+
+        return Triplet.of( newRelationshipMap, relsList, rels.other() );
+    }
+
+    int getDegree( NodeImpl node, int type, DirectionWrapper direction )
+    {
+        return persistenceManager.getDegree( node.getId(), type, direction );
+    }
+
+    /**
+     * Loads all relationships of the given type of a dense node.
+     *
+     * @return the ids of the relationships together with the ones that weren't
+     * cached already, or {@code null} if the node isn't dense.
+     */
+    Pair<RelIdArray, List<RelationshipImpl>> getRelationshipsOfType( NodeImpl node, int type )
+    {
+        Map<DirectionWrapper, Iterable<RelationshipRecord>> rels =
+                persistenceManager.getRelationshipsOfType( node.getId(), type );
+        if ( rels == null )
+        {
+            return null;
+        }
+        ArrayMap<Integer, RelIdArray> newRelationshipMap = new ArrayMap<Integer, RelIdArray>();
+        List<RelationshipImpl> relsList = new ArrayList<RelationshipImpl>();
+        populateLoadedRelationships( rels, relsList, newRelationshipMap );
+        RelIdArray ids = newRelationshipMap.get( type );
+        return Pair.of( ids != null ? ids : new RelIdArray( type ), relsList );
+    }
 
-        Iterable<RelationshipRecord> loops = rels.first().get( DirectionWrapper.BOTH );
+    private void populateLoadedRelationships( Map<DirectionWrapper, Iterable<RelationshipRecord>> rels,
+                                              List<RelationshipImpl> relsList,
+                                              ArrayMap<Integer, RelIdArray> loadedRelationshipsOutputParameter )
+    {
+        Iterable<RelationshipRecord> loops = rels.get( DirectionWrapper.BOTH );
         boolean hasLoops = loops != null;
         if ( hasLoops )
         {
-            populateLoadedRelationships( loops, relsList, DirectionWrapper.BOTH, true, newRelationshipMap );
+            populateLoadedRelationships( loops, relsList, DirectionWrapper.BOTH, true,
+                    loadedRelationshipsOutputParameter );
         }
-        populateLoadedRelationships( rels.first().get( DirectionWrapper.OUTGOING ), relsList,
+        populateLoadedRelationships( rels.get( DirectionWrapper.OUTGOING ), relsList,
                 DirectionWrapper.OUTGOING, hasLoops,
-                newRelationshipMap
+                loadedRelationshipsOutputParameter
         );
-        populateLoadedRelationships( rels.first().get( DirectionWrapper.INCOMING ), relsList,
+        populateLoadedRelationships( rels.get( DirectionWrapper.INCOMING ), relsList,
                 DirectionWrapper.INCOMING, hasLoops,
-                newRelationshipMap
+                loadedRelationshipsOutputParameter
         );
-
-        return Triplet.of( newRelationshipMap, relsList, rels.other() );
     }
 
     /**
@@ -32,7 +32,7 @@ import org.neo4j.graphdb.Traverser.Order;
 import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.traversal.OldTraverserWrapper;
 
-public class NodeProxy implements Node
+public class NodeProxy implements Node, NodeDegrees
 {
     public interface NodeLookup
     {
@@ -119,6 +119,21 @@ public class NodeProxy implements Node
         return nodeLookup.lookup(nodeId).hasRelationship( nodeLookup.getNodeManager(), type, dir );
     }
 
+    public int getDegree()
+    {
+        return nodeLookup.lookup(nodeId).getDegree( nodeLookup.getNodeManager(), null, Direction.BOTH );
+    }
+
+    public int getDegree( Direction direction )
+    {
+        return nodeLookup.lookup(nodeId).getDegree( nodeLookup.getNodeManager(), null, direction );
+    }
+
+    public int getDegree( RelationshipType type, Direction direction )
+    {
+        return nodeLookup.lookup(nodeId).getDegree( nodeLookup.getNodeManager(), type, direction );
+    }
+
     public Relationship getSingleRelationship( RelationshipType type,
         Direction dir )
     {
@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.nio.ByteBuffer;
+
+import org.neo4j.kernel.impl.cache.OffHeapCache;
+import org.neo4j.kernel.impl.nioneo.store.PropertyData;
+import org.neo4j.kernel.impl.nioneo.store.PropertyDatas;
+
+/**
+ * Shared parts of the compact encoding of cached entities: variable length
+ * numbers and the cached properties. Property values that can't be encoded
+ * are written as not loaded, they will be loaded from the store when needed.
+ */
+abstract class PrimitiveCodec<E extends ArrayBasedPrimitive> implements OffHeapCache.Codec<E>
+{
+    private static final byte NOT_LOADED = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte BYTE = 2;
+    private static final byte SHORT = 3;
+    private static final byte CHAR = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte STRING = 9;
+
+    protected static void writeProperties( PropertyData[] properties, ByteBuffer target )
+    {
+        if ( properties == null )
+        {
+            writeVarLong( target, 0 );
+            return;
+        }
+        writeVarLong( target, properties.length + 1 );
+        for ( PropertyData property : properties )
+        {
+            writeVarLong( target, property.getIndex() );
+            writeVarLong( target, property.getId() );
+            writeValue( property.getValue(), target );
+        }
+    }
+
+    protected static PropertyData[] readProperties( ByteBuffer source )
+    {
+        int count = (int) readVarLong( source ) - 1;
+        if ( count < 0 )
+        {
+            return null;
+        }
+        if ( count == 0 )
+        {
+            return Primitive.NO_PROPERTIES;
+        }
+        PropertyData[] properties = new PropertyData[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            int index = (int) readVarLong( source );
+            long id = readVarLong( source );
+            properties[i] = readProperty( index, id, source );
+        }
+        return properties;
+    }
+
+    private static void writeValue( Object value, ByteBuffer target )
+    {
+        if ( value instanceof String )
+        {
+            String string = (String) value;
+            target.put( STRING );
+            writeVarLong( target, string.length() );
+            for ( int i = 0; i < string.length(); i++ )
+            {
+                writeVarLong( target, string.charAt( i ) );
+            }
+        }
+        else if ( value instanceof Integer )
+        {
+            target.put( INT );
+            writeVarLong( target, zigZag( (Integer) value ) );
+        }
+        else if ( value instanceof Long )
+        {
+            target.put( LONG );
+            writeVarLong( target, zigZag( (Long) value ) );
+        }
+        else if ( value instanceof Boolean )
+        {
+            target.put( BOOLEAN ).put( (byte) (((Boolean) value) ? 1 : 0) );
+        }
+        else if ( value instanceof Double )
+        {
+            target.put( DOUBLE ).putDouble( (Double) value );
+        }
+        else if ( value instanceof Float )
+        {
+            target.put( FLOAT ).putFloat( (Float) value );
+        }
+        else if ( value instanceof Byte )
+        {
+            target.put( BYTE ).put( (Byte) value );
+        }
+        else if ( value instanceof Short )
+        {
+            target.put( SHORT ).putShort( (Short) value );
+        }
+        else if ( value instanceof Character )
+        {
+            target.put( CHAR ).putChar( (Character) value );
+        }
+        else
+        {
+            target.put( NOT_LOADED );
+        }
+    }
+
+    private static PropertyData readProperty( int index, long id, ByteBuffer source )
+    {
+        byte type = source.get();
+        switch ( type )
+        {
+        case STRING:
+            char[] chars = new char[(int) readVarLong( source )];
+            for ( int i = 0; i < chars.length; i++ )
+            {
+                chars[i] = (char) readVarLong( source );
+            }
+            return PropertyDatas.forStringOrArray( index, id, new String( chars ) );
+        case INT:
+            return PropertyDatas.forInt( index, id, (int) unZigZag( readVarLong( source ) ) );
+        case LONG:
+            return PropertyDatas.forLong( index, id, unZigZag( readVarLong( source ) ) );
+        case BOOLEAN:
+            return PropertyDatas.forBoolean( index, id, source.get() != 0 );
+        case DOUBLE:
+            return PropertyDatas.forDouble( index, id, source.getDouble() );
+        case FLOAT:
+            return PropertyDatas.forFloat( index, id, source.getFloat() );
+        case BYTE:
+            return PropertyDatas.forByte( index, id, source.get() );
+        case SHORT:
+            return PropertyDatas.forShort( index, id, source.getShort() );
+        case CHAR:
+            return PropertyDatas.forChar( index, id, source.getChar() );
+        case NOT_LOADED:
+            return PropertyDatas.forStringOrArray( index, id, null );
+        default:
+            throw new IllegalStateException( "Unknown property value type " + type );
+        }
+    }
+
+    protected static long zigZag( long value )
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    protected static long unZigZag( long value )
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    protected static void writeVarLong( ByteBuffer target, long value )
+    {
+        while ( (value & ~0x7FL) != 0 )
+        {
+            target.put( (byte) ((value & 0x7F) | 0x80) );
+            value >>>= 7;
+        }
+        target.put( (byte) value );
+    }
+
+    protected static long readVarLong( ByteBuffer source )
+    {
+        long value = 0;
+        for ( int shift = 0; ; shift += 7 )
+        {
+            byte b = source.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ( (b & 0x80) == 0 )
+            {
+                return value;
+            }
+        }
+    }
+}
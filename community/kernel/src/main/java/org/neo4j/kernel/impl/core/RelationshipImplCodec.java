@@ -0,0 +1,48 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes a {@link RelationshipImpl} with its cached properties.
+ */
+public class RelationshipImplCodec extends PrimitiveCodec<RelationshipImpl>
+{
+    @Override
+    public void encode( RelationshipImpl relationship, ByteBuffer target )
+    {
+        writeVarLong( target, relationship.getStartNodeId() );
+        writeVarLong( target, relationship.getEndNodeId() );
+        writeVarLong( target, relationship.getTypeId() );
+        writeProperties( relationship.allProperties(), target );
+    }
+
+    @Override
+    public RelationshipImpl decode( long id, ByteBuffer source )
+    {
+        long startNode = readVarLong( source );
+        long endNode = readVarLong( source );
+        int typeId = (int) readVarLong( source );
+        RelationshipImpl relationship = new RelationshipImpl( id, startNode, endNode, typeId, false );
+        relationship.restoreProperties( readProperties( source ) );
+        return relationship;
+    }
+}
@@ -19,7 +19,6 @@
  */
 package org.neo4j.kernel.impl.core;
 
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -29,6 +28,7 @@ import org.neo4j.graphdb.Relationship;
 import org.neo4j.helpers.collection.PrefetchingIterator;
 import org.neo4j.kernel.impl.core.NodeImpl.LoadStatus;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.PrimitiveLongSet;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 import org.neo4j.kernel.impl.util.RelIdIterator;
@@ -118,7 +118,7 @@ class RelationshipIterator extends PrefetchingIterator<Relationship> implements
                     // initiate iterators for them
                     if ( allTypes )
                     {
-                        ArrayMap<Integer, Collection<Long>> skipMap = nodeManager.getTransactionState().
+                        ArrayMap<Integer, PrimitiveLongSet> skipMap = nodeManager.getTransactionState().
                                 getCowRelationshipRemoveMap( fromNode );
                         for ( RelIdArray ids : fromNode.getRelationshipIds() )
                         {
@@ -126,7 +126,7 @@ class RelationshipIterator extends PrefetchingIterator<Relationship> implements
                             RelIdIterator itr = newRels.get( type );
                             if ( itr == null )
                             {
-                                Collection<Long> remove = skipMap != null ? skipMap.get( type ) : null;
+                                PrimitiveLongSet remove = skipMap != null ? skipMap.get( type ) : null;
                                 itr = remove == null ? ids.iterator( direction ) :
                                         RelIdArray.from( ids, null, remove ).iterator( direction );
                                 newRels.put( type, itr );
@@ -30,6 +30,7 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyData;
 import org.neo4j.kernel.impl.transaction.TxHook;
 import org.neo4j.kernel.impl.transaction.xaframework.TxIdGenerator;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.PrimitiveLongSet;
 import org.neo4j.kernel.impl.util.RelIdArray;
 
 /**
@@ -53,9 +54,9 @@ public interface TransactionState
     
     RelIdArray getOrCreateCowRelationshipAddMap( NodeImpl node, int type );
     
-    ArrayMap<Integer, Collection<Long>> getCowRelationshipRemoveMap( NodeImpl node );
+    ArrayMap<Integer, PrimitiveLongSet> getCowRelationshipRemoveMap( NodeImpl node );
 
-    Collection<Long> getOrCreateCowRelationshipRemoveMap( NodeImpl node, int type );
+    PrimitiveLongSet getOrCreateCowRelationshipRemoveMap( NodeImpl node, int type );
 
     void setFirstIds( long nodeId, long firstRel, long firstProp );
     
@@ -107,6 +108,16 @@ public interface TransactionState
     void patchDeletedRelationshipNodes( long relId, long firstNodeId, long firstNodeNextRelId, long secondNodeId,
                                       long secondNodeNextRelId );
 
+    /**
+     * Removes a dense node from the cache if the relationships it has loaded so far can't be kept up to date
+     * after changes to its relationship chains of the given types. Chains of dense nodes are loaded one after the
+     * other, so a relationship added to a chain that hasn't been reached yet would otherwise be loaded twice.
+     *
+     * @param nodeId The id of the dense node
+     * @param changedTypes The relationship types whose chains were changed
+     */
+    void invalidateDenseNode( long nodeId, Collection<Integer> changedTypes );
+
     void removeRelationshipTypeFromCache( int id );
 
     void removeGraphPropertiesFromCache();
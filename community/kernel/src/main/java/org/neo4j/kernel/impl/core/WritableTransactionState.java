@@ -22,11 +22,8 @@ package org.neo4j.kernel.impl.core;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
 
 import javax.transaction.Status;
 import javax.transaction.Synchronization;
@@ -44,6 +41,9 @@ import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.transaction.TxHook;
 import org.neo4j.kernel.impl.transaction.xaframework.TxIdGenerator;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.PrimitiveLongIterator;
+import org.neo4j.kernel.impl.util.PrimitiveLongObjectMap;
+import org.neo4j.kernel.impl.util.PrimitiveLongSet;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 import org.neo4j.kernel.impl.util.RelIdArrayWithLoops;
@@ -74,10 +74,10 @@ public class WritableTransactionState implements TransactionState
         {
         }
 
-        private final ArrayMap<Long, CowNodeElement> nodes =
-                new ArrayMap<Long, CowNodeElement>();
-        private final ArrayMap<Long, CowRelElement> relationships =
-                new ArrayMap<Long, CowRelElement>();
+        private final PrimitiveLongObjectMap<CowNodeElement> nodes =
+                new PrimitiveLongObjectMap<CowNodeElement>();
+        private final PrimitiveLongObjectMap<CowRelElement> relationships =
+                new PrimitiveLongObjectMap<CowRelElement>();
         private CowGraphElement graph;
 
         public CowNodeElement nodeElement( long id, boolean create )
@@ -163,7 +163,7 @@ public class WritableTransactionState implements TransactionState
         private long firstProp = Record.NO_NEXT_PROPERTY.intValue();
 
         private ArrayMap<Integer, RelIdArray> relationshipAddMap;
-        private ArrayMap<Integer, Collection<Long>> relationshipRemoveMap;
+        private ArrayMap<Integer, PrimitiveLongSet> relationshipRemoveMap;
 
         public ArrayMap<Integer, RelIdArray> getRelationshipAddMap( boolean create )
         {
@@ -190,26 +190,26 @@ public class WritableTransactionState implements TransactionState
             return result;
         }
 
-        public ArrayMap<Integer, Collection<Long>> getRelationshipRemoveMap( boolean create )
+        public ArrayMap<Integer, PrimitiveLongSet> getRelationshipRemoveMap( boolean create )
         {
             if ( relationshipRemoveMap == null && create )
             {
-                relationshipRemoveMap = new ArrayMap<Integer, Collection<Long>>();
+                relationshipRemoveMap = new ArrayMap<Integer, PrimitiveLongSet>();
             }
             return relationshipRemoveMap;
         }
 
-        public Collection<Long> getRelationshipRemoveMap( int type, boolean create )
+        public PrimitiveLongSet getRelationshipRemoveMap( int type, boolean create )
         {
-            ArrayMap<Integer, Collection<Long>> map = getRelationshipRemoveMap( create );
+            ArrayMap<Integer, PrimitiveLongSet> map = getRelationshipRemoveMap( create );
             if ( map == null )
             {
                 return null;
             }
-            Collection<Long> result = map.get( type );
+            PrimitiveLongSet result = map.get( type );
             if ( result == null && create )
             {
-                result = new HashSet<Long>();
+                result = new PrimitiveLongSet();
                 map.put( type, result );
             }
             return result;
@@ -306,11 +306,11 @@ public class WritableTransactionState implements TransactionState
     }
 
     @Override
-    public ArrayMap<Integer, Collection<Long>> getCowRelationshipRemoveMap( NodeImpl node )
+    public ArrayMap<Integer, PrimitiveLongSet> getCowRelationshipRemoveMap( NodeImpl node )
     {
         if ( primitiveElement != null )
         {
-            ArrayMap<Long, CowNodeElement> cowElements =
+            PrimitiveLongObjectMap<CowNodeElement> cowElements =
                     primitiveElement.nodes;
             CowNodeElement element = cowElements.get( node.getId() );
             if ( element != null )
@@ -322,7 +322,7 @@ public class WritableTransactionState implements TransactionState
     }
 
     @Override
-    public Collection<Long> getOrCreateCowRelationshipRemoveMap( NodeImpl node, int type )
+    public PrimitiveLongSet getOrCreateCowRelationshipRemoveMap( NodeImpl node, int type )
     {
         return getPrimitiveElement( true ).nodeElement( node.getId(), true ).getRelationshipRemoveMap( type, true );
     }
@@ -427,15 +427,14 @@ public class WritableTransactionState implements TransactionState
         {
             return;
         }
-        ArrayMap<Long, CowNodeElement> cowNodeElements = primitiveElement.nodes;
-        Set<Entry<Long, CowNodeElement>> nodeEntrySet =
-                cowNodeElements.entrySet();
-        for ( Entry<Long, CowNodeElement> entry : nodeEntrySet )
+        PrimitiveLongObjectMap<CowNodeElement> cowNodeElements = primitiveElement.nodes;
+        for ( PrimitiveLongIterator nodeIds = cowNodeElements.keyIterator(); nodeIds.hasNext(); )
         {
-            NodeImpl node = nodeManager.getNodeIfCached( entry.getKey() );
+            long nodeId = nodeIds.next();
+            NodeImpl node = nodeManager.getNodeIfCached( nodeId );
             if ( node != null )
             {
-                CowNodeElement nodeElement = entry.getValue();
+                CowNodeElement nodeElement = cowNodeElements.get( nodeId );
                 if ( param == Status.STATUS_COMMITTED )
                 {
                     node.commitRelationshipMaps( nodeElement.relationshipAddMap,
@@ -452,15 +451,14 @@ public class WritableTransactionState implements TransactionState
                 nodeManager.updateCacheSize( node, sizeAfter );
             }
         }
-        ArrayMap<Long, CowRelElement> cowRelElements = primitiveElement.relationships;
-        Set<Entry<Long, CowRelElement>> relEntrySet =
-                cowRelElements.entrySet();
-        for ( Entry<Long, CowRelElement> entry : relEntrySet )
+        PrimitiveLongObjectMap<CowRelElement> cowRelElements = primitiveElement.relationships;
+        for ( PrimitiveLongIterator relIds = cowRelElements.keyIterator(); relIds.hasNext(); )
         {
-            RelationshipImpl rel = nodeManager.getRelIfCached( entry.getKey() );
+            long relId = relIds.next();
+            RelationshipImpl rel = nodeManager.getRelIfCached( relId );
             if ( rel != null )
             {
-                CowRelElement relElement = entry.getValue();
+                CowRelElement relElement = cowRelElements.get( relId );
                 if ( param == Status.STATUS_COMMITTED )
                 {
                     rel.commitPropertyMaps( relElement.propertyAddMap,
@@ -591,6 +589,12 @@ public class WritableTransactionState implements TransactionState
                 secondNodeNextRelId );
     }
 
+    @Override
+    public void invalidateDenseNode( long nodeId, Collection<Integer> changedTypes )
+    {
+        nodeManager.invalidateDenseNode( nodeId, changedTypes );
+    }
+
     @Override
     public void removeRelationshipTypeFromCache( int id )
     {
@@ -632,8 +636,9 @@ public class WritableTransactionState implements TransactionState
     private void populateRelationshipPropertyEvents( PrimitiveElement element,
                                                      TransactionDataImpl result )
     {
-        for ( long relId : element.relationships.keySet() )
+        for ( PrimitiveLongIterator relIds = element.relationships.keyIterator(); relIds.hasNext(); )
         {
+            long relId = relIds.next();
             CowRelElement relElement = element.relationships.get( relId );
             RelationshipProxy rel = nodeManager.newRelationshipProxyById( relId );
             RelationshipImpl relImpl = nodeManager.getRelationshipForProxy( relId, null );
@@ -675,8 +680,9 @@ public class WritableTransactionState implements TransactionState
     private void populateNodeRelEvent( PrimitiveElement element,
                                        TransactionDataImpl result )
     {
-        for ( long nodeId : element.nodes.keySet() )
+        for ( PrimitiveLongIterator nodeIds = element.nodes.keyIterator(); nodeIds.hasNext(); )
         {
+            long nodeId = nodeIds.next();
             CowNodeElement nodeElement = element.nodes.get( nodeId );
             NodeProxy node = nodeManager.newNodeProxyById( nodeId );
             NodeImpl nodeImpl = nodeManager.getNodeForProxy( nodeId, null );
@@ -700,9 +706,10 @@ public class WritableTransactionState implements TransactionState
             {
                 for ( Integer type : nodeElement.relationshipRemoveMap.keySet() )
                 {
-                    Collection<Long> deletedRels = nodeElement.relationshipRemoveMap.get( type );
-                    for ( long relId : deletedRels )
+                    PrimitiveLongSet deletedRels = nodeElement.relationshipRemoveMap.get( type );
+                    for ( PrimitiveLongIterator relIds = deletedRels.iterator(); relIds.hasNext(); )
                     {
+                        long relId = relIds.next();
                         if ( nodeManager.relCreated( relId ) )
                         {
                             continue;
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.index;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how often the searchers of the index providers of a database are reopened to see newly committed changes,
+ * and how long that takes, so that the refreshing can be monitored and tuned. Also counts how often queries are
+ * answered from the query result caches of the index providers. There is one instance per database, shared by all
+ * index providers.
+ */
+public class IndexSearcherStatistics
+{
+    private final AtomicLong reopens = new AtomicLong();
+    private final AtomicLong backgroundReopens = new AtomicLong();
+    private final AtomicLong reopenTime = new AtomicLong();
+    private final AtomicLong maxReopenTime = new AtomicLong();
+    private final AtomicLong queryCacheHits = new AtomicLong();
+    private final AtomicLong queryCacheMisses = new AtomicLong();
+
+    /**
+     * A stale searcher was reopened.
+     *
+     * @param nanos the time the reopening took.
+     * @param inBackground whether it was reopened by a background thread, rather than by a thread about to use it.
+     */
+    public void reopened( long nanos, boolean inBackground )
+    {
+        reopens.incrementAndGet();
+        if ( inBackground )
+        {
+            backgroundReopens.incrementAndGet();
+        }
+        reopenTime.addAndGet( nanos );
+        for ( long max = maxReopenTime.get(); nanos > max; max = maxReopenTime.get() )
+        {
+            if ( maxReopenTime.compareAndSet( max, nanos ) )
+            {
+                break;
+            }
+        }
+    }
+
+    public long getReopenCount()
+    {
+        return reopens.get();
+    }
+
+    public long getBackgroundReopenCount()
+    {
+        return backgroundReopens.get();
+    }
+
+    /**
+     * @return the total time, in nanoseconds, spent reopening searchers.
+     */
+    public long getReopenTime()
+    {
+        return reopenTime.get();
+    }
+
+    /**
+     * @return the longest time, in nanoseconds, a single reopening of a searcher took.
+     */
+    public long getMaxReopenTime()
+    {
+        return maxReopenTime.get();
+    }
+
+    /**
+     * A cacheable query was answered from the query result cache.
+     */
+    public void queryCacheHit()
+    {
+        queryCacheHits.incrementAndGet();
+    }
+
+    /**
+     * A cacheable query wasn't found in the query result cache, or was found but had been invalidated.
+     */
+    public void queryCacheMiss()
+    {
+        queryCacheMisses.incrementAndGet();
+    }
+
+    public long getQueryCacheHits()
+    {
+        return queryCacheHits.get();
+    }
+
+    public long getQueryCacheMisses()
+    {
+        return queryCacheMisses.get();
+    }
+}
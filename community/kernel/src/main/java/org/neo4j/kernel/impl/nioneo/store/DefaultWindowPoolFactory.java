@@ -43,7 +43,8 @@ public class DefaultWindowPoolFactory implements WindowPoolFactory
                 calculateMappedMemory( configuration, storageFileName ),
                 GraphDatabaseSettings.UseMemoryMappedBuffers.shouldMemoryMap( configuration.get( CommonAbstractStore
                         .Configuration.use_memory_mapped_buffers )),
-                        isReadOnly( configuration ) && !isBackupSlave( configuration ), log );
+                        isReadOnly( configuration ) && !isBackupSlave( configuration ),
+                accessStatistics( configuration ), log );
     }
 
     private boolean isBackupSlave( Config configuration )
@@ -75,6 +76,15 @@ public class DefaultWindowPoolFactory implements WindowPoolFactory
         return mem;
     }
 
+    public static PageAccessStatistics accessStatistics( Config config )
+    {
+        if ( !config.get( GraphDatabaseSettings.mapped_memory_access_statistics ) )
+        {
+            return PageAccessStatistics.NONE;
+        }
+        return new PageAccessStatistics( config.get( GraphDatabaseSettings.mapped_memory_access_statistics_region_size ) );
+    }
+
     public static Setting<Long> memoryMappingSetting( String fileName )
     {
         return setting( fileName + ".mapped_memory", Settings.BYTES, Settings.NO_DEFAULT );
@@ -50,8 +50,8 @@ public class DynamicArrayStore extends AbstractDynamicStore
     }
     
     // store version, each store ends with this string (byte encoded)
-    public static final String VERSION = "ArrayPropertyStore v0.A.0";
     public static final String TYPE_DESCRIPTOR = "ArrayPropertyStore";
+    public static final String VERSION = TYPE_DESCRIPTOR + " " + ALL_STORES_VERSION;
 
     public DynamicArrayStore(File fileName, Config configuration, IdType idType,
                              IdGeneratorFactory idGeneratorFactory, WindowPoolFactory windowPoolFactory,
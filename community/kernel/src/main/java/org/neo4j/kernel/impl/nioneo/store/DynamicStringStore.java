@@ -39,8 +39,8 @@ public class DynamicStringStore extends AbstractDynamicStore
     }
 
     // store version, each store ends with this string (byte encoded)
-    public static final String VERSION = "StringPropertyStore v0.A.0";
     public static final String TYPE_DESCRIPTOR = "StringPropertyStore";
+    public static final String VERSION = TYPE_DESCRIPTOR + " " + ALL_STORES_VERSION;
 
     public DynamicStringStore( File fileName, Config configuration, IdType idType,
                                IdGeneratorFactory idGeneratorFactory, WindowPoolFactory windowPoolFactory,
@@ -26,7 +26,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -58,6 +60,11 @@ import java.util.concurrent.atomic.AtomicLong;
  * same file. There can only be one id generator instance per id generator file.
  * <p>
  * In case of disk/file I/O failure an <CODE>IOException</CODE> is thrown.
+ * <p>
+ * Ids are handed out and freed without locking: new ids are taken from the
+ * high id with compare-and-set and reusable ids are kept in concurrent queues.
+ * Only reading and writing batches of reusable ids from and to the file is
+ * done under the lock of the generator.
  */
 public class IdGeneratorImpl implements IdGenerator
 {
@@ -75,19 +82,25 @@ public class IdGeneratorImpl implements IdGenerator
     private int grabSize = -1;
     private final AtomicLong highId = new AtomicLong( -1 );
     // total bytes read from file, used in writeIdBatch() and close()
-    private long readPosition;
+    private volatile long readPosition;
     // marks how much this session is allowed to read from previously released id batches.
-    private long maxReadPosition = HEADER_SIZE;
+    private volatile long maxReadPosition = HEADER_SIZE;
     // used to calculate number of ids actually in use
-    private long defraggedIdCount = -1;
+    private final AtomicLong defraggedIdCount = new AtomicLong( -1 );
 
     private final File fileName;
     private final FileSystemAbstraction fs;
-    private FileChannel fileChannel = null;
+    private volatile FileChannel fileChannel = null;
+    // set by close() before it writes the freed ids, see freeId()
+    private volatile boolean closing;
     // defragged ids read from file (freed in a previous session).
-    private final LinkedList<Long> idsReadFromFile = new LinkedList<Long>();
+    private final Queue<Long> idsReadFromFile = new ConcurrentLinkedQueue<Long>();
     // ids freed in this session that havn't been flushed to disk yet
-    private final LinkedList<Long> releasedIdList = new LinkedList<Long>();
+    private final Queue<Long> releasedIdList = new ConcurrentLinkedQueue<Long>();
+    // size of releasedIdList, which is expensive to count
+    private final AtomicInteger releasedIdCount = new AtomicInteger();
+    // reused for writing batches of freed ids, under the lock of this generator
+    private ByteBuffer writeBuffer;
     
     private final long max;
     private final boolean aggressiveReuse;
@@ -145,22 +158,28 @@ public class IdGeneratorImpl implements IdGenerator
      *             If the capacity is exceeded
      * @throws IllegalStateException if this id generator has been closed
      */
-    public synchronized long nextId()
+    public long nextId()
     {
         assertStillOpen();
         long nextDefragId = nextIdFromDefragList();
         if ( nextDefragId != -1 ) return nextDefragId;
 
-        long id = highId.get();
-        if ( id == INTEGER_MINUS_ONE )
+        while ( true )
         {
-            // Skip the integer -1 (0xFFFFFFFF) because it represents
-            // special values, f.ex. the end of a relationships/property chain.
-            id = highId.incrementAndGet();
+            long id = highId.get();
+            if ( id == INTEGER_MINUS_ONE )
+            {
+                // Skip the integer -1 (0xFFFFFFFF) because it represents
+                // special values, f.ex. the end of a relationships/property chain.
+                highId.compareAndSet( id, id + 1 );
+                continue;
+            }
+            assertIdWithinCapacity( id );
+            if ( highId.compareAndSet( id, id + 1 ) )
+            {
+                return id;
+            }
         }
-        assertIdWithinCapacity( id );
-        highId.incrementAndGet();
-        return id;
     }
 
     private void assertIdWithinCapacity( long id )
@@ -183,24 +202,36 @@ public class IdGeneratorImpl implements IdGenerator
             Long id = releasedIdList.poll();
             if ( id != null )
             {
-                defraggedIdCount--;
+                releasedIdCount.decrementAndGet();
+                defraggedIdCount.decrementAndGet();
                 return id.longValue();
             }
         }
 
-        if ( !idsReadFromFile.isEmpty() || canReadMoreIdBatches() )
+        Long id = idsReadFromFile.poll();
+        if ( id == null && canReadMoreIdBatches() )
         {
-            if ( idsReadFromFile.isEmpty() )
-            {
-                readIdBatch();
-            }
-            long id = idsReadFromFile.removeFirst();
-            defraggedIdCount--;
-            return id;
+            id = pollIdsReadFromFile();
+        }
+        if ( id != null )
+        {
+            defraggedIdCount.decrementAndGet();
+            return id.longValue();
         }
         return -1;
     }
 
+    private synchronized Long pollIdsReadFromFile()
+    {
+        Long id = idsReadFromFile.poll();
+        while ( id == null && canReadMoreIdBatches() )
+        {
+            readIdBatch();
+            id = idsReadFromFile.poll();
+        }
+        return id;
+    }
+
     private void assertStillOpen()
     {
         if ( fileChannel == null )
@@ -209,7 +240,7 @@ public class IdGeneratorImpl implements IdGenerator
         }
     }
 
-    public synchronized IdRange nextIdBatch( int size )
+    public IdRange nextIdBatch( int size )
     {
         assertStillOpen();
 
@@ -232,11 +263,16 @@ public class IdGeneratorImpl implements IdGenerator
         System.arraycopy( tmpArray, 0, defragIds, 0, count );
 
         int sizeLeftForRange = size-count;
-        long start = highId.get();
-        long newHighId = start + sizeLeftForRange;
-        assertIdWithinCapacity( newHighId );
-        highId.set( newHighId );
-        return new IdRange( defragIds, start, sizeLeftForRange );
+        while ( true )
+        {
+            long start = highId.get();
+            long newHighId = start + sizeLeftForRange;
+            assertIdWithinCapacity( newHighId );
+            if ( highId.compareAndSet( start, newHighId ) )
+            {
+                return new IdRange( defragIds, start, sizeLeftForRange );
+            }
+        }
     }
 
     /**
@@ -278,7 +314,7 @@ public class IdGeneratorImpl implements IdGenerator
      * @throws IOException
      *             If id is negative or greater than the highest returned id
      */
-    public synchronized void freeId( long id )
+    public void freeId( long id )
     {
         if ( id == INTEGER_MINUS_ONE )
         {
@@ -294,11 +330,48 @@ public class IdGeneratorImpl implements IdGenerator
             throw new IllegalArgumentException( "Illegal id[" + id + "]" );
         }
         releasedIdList.add( id );
-        defraggedIdCount++;
-        if ( releasedIdList.size() >= grabSize )
+        defraggedIdCount.incrementAndGet();
+        if ( releasedIdCount.incrementAndGet() >= grabSize )
+        {
+            writeFullIdBatch();
+        }
+        if ( closing )
+        {
+            checkWrittenByClose( id );
+        }
+    }
+
+    /*
+     * The id was added as the generator was being closed, which may have been
+     * too late for close() to write it. Once close() is done it is either
+     * written or still in the list, in which case it's lost.
+     */
+    private synchronized void checkWrittenByClose( long id )
+    {
+        if ( fileChannel == null && releasedIdList.remove( id ) )
+        {
+            releasedIdCount.decrementAndGet();
+            defraggedIdCount.decrementAndGet();
+            throw new IllegalStateException( "Generator closed " + fileName );
+        }
+    }
+
+    private synchronized void writeFullIdBatch()
+    {
+        // another thread may have written the batch while this one waited for the lock
+        if ( fileChannel != null && releasedIdCount.get() >= grabSize )
+        {
+            writeIdBatch( writeBuffer() );
+        }
+    }
+
+    private ByteBuffer writeBuffer()
+    {
+        if ( writeBuffer == null )
         {
-            writeIdBatch( ByteBuffer.allocate( grabSize*8 ) );
+            writeBuffer = ByteBuffer.allocate( grabSize*8 );
         }
+        return writeBuffer;
     }
 
     /**
@@ -319,18 +392,20 @@ public class IdGeneratorImpl implements IdGenerator
         {
             return;
         }
+        closing = true;
 
         // write out lists
-        ByteBuffer writeBuffer = ByteBuffer.allocate( grabSize*8 );
+        ByteBuffer writeBuffer = writeBuffer();
         if ( !releasedIdList.isEmpty() )
         {
             writeIdBatch( writeBuffer );
         }
         if ( !idsReadFromFile.isEmpty() )
         {
-            while ( !idsReadFromFile.isEmpty() )
+            for ( Long id = idsReadFromFile.poll(); id != null; id = idsReadFromFile.poll() )
             {
-                releasedIdList.add( idsReadFromFile.removeFirst() );
+                releasedIdList.add( id );
+                releasedIdCount.incrementAndGet();
             }
             writeIdBatch( writeBuffer );
         }
@@ -459,7 +534,7 @@ public class IdGeneratorImpl implements IdGenerator
             
             fileChannel.position( HEADER_SIZE );
             maxReadPosition = fileChannel.size();
-            defraggedIdCount = (int) (maxReadPosition - HEADER_SIZE) / 8;
+            defraggedIdCount.set( (int) (maxReadPosition - HEADER_SIZE) / 8 );
             readIdBatch();
         }
         catch ( IOException e )
@@ -514,7 +589,7 @@ public class IdGeneratorImpl implements IdGenerator
             readBuffer.flip();
             assert (bytesRead % 8) == 0;
             int idsRead = bytesRead / 8;
-            defraggedIdCount -= idsRead;
+            defraggedIdCount.addAndGet( -idsRead );
             for ( int i = 0; i < idsRead; i++ )
             {
                 long id = readBuffer.getLong();
@@ -539,9 +614,10 @@ public class IdGeneratorImpl implements IdGenerator
         {
             fileChannel.position( fileChannel.size() );
             writeBuffer.clear();
-            while ( !releasedIdList.isEmpty() )
+            for ( Long releasedId = releasedIdList.poll(); releasedId != null; releasedId = releasedIdList.poll() )
             {
-                long id = releasedIdList.removeFirst();
+                releasedIdCount.decrementAndGet();
+                long id = releasedId.longValue();
                 if ( id == INTEGER_MINUS_ONE )
                 {
                     continue;
@@ -598,21 +674,22 @@ public class IdGeneratorImpl implements IdGenerator
         close();
     }
 
-    public synchronized long getNumberOfIdsInUse()
+    public long getNumberOfIdsInUse()
     {
-        return highId.get() - defraggedIdCount;
+        return highId.get() - defraggedIdCount.get();
     }
 
     public long getDefragCount()
     {
-        return defraggedIdCount;
+        return defraggedIdCount.get();
     }
 
-    public void clearFreeIds()
+    public synchronized void clearFreeIds()
     {
         releasedIdList.clear();
+        releasedIdCount.set( 0 );
         idsReadFromFile.clear();
-        defraggedIdCount = -1;
+        defraggedIdCount.set( -1 );
         try
         {
             truncateFile( fileChannel, HEADER_SIZE );
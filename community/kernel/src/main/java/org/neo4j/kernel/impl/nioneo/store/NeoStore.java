@@ -48,6 +48,7 @@ public class NeoStore extends AbstractStore
         extends AbstractStore.Configuration
     {
         public static final Setting<Integer> relationship_grab_size = GraphDatabaseSettings.relationship_grab_size;
+        public static final Setting<Integer> dense_node_threshold = GraphDatabaseSettings.dense_node_threshold;
     }
 
     public static final String TYPE_DESCRIPTOR = "NeoStore";
@@ -69,11 +70,13 @@ public class NeoStore extends AbstractStore
     private PropertyStore propStore;
     private RelationshipStore relStore;
     private RelationshipTypeStore relTypeStore;
+    private RelationshipGroupStore relGroupStore;
     private final TxHook txHook;
     private boolean isStarted;
     private long lastCommittedTx = -1;
 
     private final int REL_GRAB_SIZE;
+    private final int DENSE_NODE_THRESHOLD;
     private final File fileName;
     private final Config conf;
 
@@ -82,6 +85,17 @@ public class NeoStore extends AbstractStore
                     FileSystemAbstraction fileSystemAbstraction,
                     StringLogger stringLogger, TxHook txHook,
                     RelationshipTypeStore relTypeStore, PropertyStore propStore, RelationshipStore relStore, NodeStore nodeStore)
+    {
+        this( fileName, conf, idGeneratorFactory, windowPoolFactory, fileSystemAbstraction, stringLogger, txHook,
+                relTypeStore, propStore, relStore, nodeStore, null );
+    }
+
+    public NeoStore(File fileName, Config conf,
+                    IdGeneratorFactory idGeneratorFactory, WindowPoolFactory windowPoolFactory,
+                    FileSystemAbstraction fileSystemAbstraction,
+                    StringLogger stringLogger, TxHook txHook,
+                    RelationshipTypeStore relTypeStore, PropertyStore propStore, RelationshipStore relStore,
+                    NodeStore nodeStore, RelationshipGroupStore relGroupStore)
     {
         super( fileName, conf, IdType.NEOSTORE_BLOCK, idGeneratorFactory, windowPoolFactory,
                 fileSystemAbstraction, stringLogger);
@@ -91,7 +105,9 @@ public class NeoStore extends AbstractStore
         this.propStore = propStore;
         this.relStore = relStore;
         this.nodeStore = nodeStore;
+        this.relGroupStore = relGroupStore;
         REL_GRAB_SIZE = conf.get( Configuration.relationship_grab_size );
+        DENSE_NODE_THRESHOLD = relGroupStore != null ? conf.get( Configuration.dense_node_threshold ) : 0;
         this.txHook = txHook;
 
         /* [MP:2012-01-03] Fix for the problem in 1.5.M02 where store version got upgraded but
@@ -214,7 +230,8 @@ public class NeoStore extends AbstractStore
     }
 
     /**
-     * Closes the node,relationship,property and relationship type stores.
+     * Closes the node,relationship,property,relationship type and relationship
+     * group stores.
      */
     @Override
     protected void closeStorage()
@@ -239,6 +256,11 @@ public class NeoStore extends AbstractStore
             nodeStore.close();
             nodeStore = null;
         }
+        if ( relGroupStore != null )
+        {
+            relGroupStore.close();
+            relGroupStore = null;
+        }
     }
 
     @Override
@@ -254,6 +276,10 @@ public class NeoStore extends AbstractStore
         propStore.flushAll();
         relStore.flushAll();
         nodeStore.flushAll();
+        if ( relGroupStore != null )
+        {
+            relGroupStore.flushAll();
+        }
     }
 
     @Override
@@ -280,19 +306,33 @@ public class NeoStore extends AbstractStore
      * @return the previous version before writing.
      */
     public static long setVersion( FileSystemAbstraction fileSystem, File storeDir, long version )
+    {
+        return setRecord( fileSystem, new File( storeDir, NeoStore.DEFAULT_NAME ), 2, version );
+    }
+
+    /**
+     * Sets the store version record of the given neostore file, whether or not it was cleanly shut down.
+     * @return the previous store version before writing.
+     */
+    public static long setStoreVersion( FileSystemAbstraction fileSystem, File neoStore, long storeVersion )
+    {
+        return setRecord( fileSystem, neoStore, 4, storeVersion );
+    }
+
+    private static long setRecord( FileSystemAbstraction fileSystem, File neoStore, long recordPosition, long value )
     {
         FileChannel channel = null;
         try
         {
-            channel = fileSystem.open( new File( storeDir, NeoStore.DEFAULT_NAME ), "rw" );
-            channel.position( RECORD_SIZE*2+1/*inUse*/ );
+            channel = fileSystem.open( neoStore, "rw" );
+            channel.position( RECORD_SIZE*recordPosition+1/*inUse*/ );
             ByteBuffer buffer = ByteBuffer.allocate( 8 );
             channel.read( buffer );
             buffer.flip();
             long previous = buffer.getLong();
-            channel.position( RECORD_SIZE*2+1/*inUse*/ );
+            channel.position( RECORD_SIZE*recordPosition+1/*inUse*/ );
             buffer.clear();
-            buffer.putLong( version ).flip();
+            buffer.putLong( value ).flip();
             channel.write( buffer );
             return previous;
         }
@@ -509,6 +549,17 @@ public class NeoStore extends AbstractStore
         return relStore;
     }
 
+    /**
+     * Returns the store holding the relationship groups of dense nodes. Can be
+     * {@code null} for a read only store that was created without one.
+     *
+     * @return The relationship group store
+     */
+    public RelationshipGroupStore getRelationshipGroupStore()
+    {
+        return relGroupStore;
+    }
+
     /**
      * Returns the relationship type store.
      *
@@ -536,6 +587,10 @@ public class NeoStore extends AbstractStore
         propStore.makeStoreOk();
         relStore.makeStoreOk();
         nodeStore.makeStoreOk();
+        if ( relGroupStore != null )
+        {
+            relGroupStore.makeStoreOk();
+        }
         super.makeStoreOk();
         isStarted = true;
     }
@@ -547,6 +602,10 @@ public class NeoStore extends AbstractStore
         propStore.rebuildIdGenerators();
         relStore.rebuildIdGenerators();
         nodeStore.rebuildIdGenerators();
+        if ( relGroupStore != null )
+        {
+            relGroupStore.rebuildIdGenerators();
+        }
         super.rebuildIdGenerators();
     }
 
@@ -557,6 +616,10 @@ public class NeoStore extends AbstractStore
         propStore.updateIdGenerators();
         relStore.updateHighId();
         nodeStore.updateHighId();
+        if ( relGroupStore != null )
+        {
+            relGroupStore.updateHighId();
+        }
     }
 
     public int getRelationshipGrabSize()
@@ -564,6 +627,15 @@ public class NeoStore extends AbstractStore
         return REL_GRAB_SIZE;
     }
 
+    /**
+     * @return the number of relationships a node can have before they get
+     * grouped by type and direction, or 0 if they never are.
+     */
+    public int getDenseNodeThreshold()
+    {
+        return DENSE_NODE_THRESHOLD;
+    }
+
     @Override
     public List<WindowPoolStats> getAllWindowPoolStats()
     {
@@ -572,6 +644,10 @@ public class NeoStore extends AbstractStore
         list.addAll( propStore.getAllWindowPoolStats() );
         list.addAll( relStore.getAllWindowPoolStats() );
         list.addAll( relTypeStore.getAllWindowPoolStats() );
+        if ( relGroupStore != null )
+        {
+            list.addAll( relGroupStore.getAllWindowPoolStats() );
+        }
         return list;
     }
 
@@ -583,12 +659,17 @@ public class NeoStore extends AbstractStore
         relStore.logAllWindowPoolStats( logger );
         relTypeStore.logAllWindowPoolStats( logger );
         propStore.logAllWindowPoolStats( logger );
+        if ( relGroupStore != null )
+        {
+            relGroupStore.logAllWindowPoolStats( logger );
+        }
     }
 
     public boolean isStoreOk()
     {
         return getStoreOk() && relTypeStore.getStoreOk() &&
-            propStore.getStoreOk() && relStore.getStoreOk() && nodeStore.getStoreOk();
+            propStore.getStoreOk() && relStore.getStoreOk() && nodeStore.getStoreOk() &&
+            (relGroupStore == null || relGroupStore.getStoreOk());
     }
 
     @Override
@@ -601,6 +682,10 @@ public class NeoStore extends AbstractStore
         relStore.logVersions( msgLog );
         relTypeStore.logVersions( msgLog );
         propStore.logVersions(msgLog  );
+        if ( relGroupStore != null )
+        {
+            relGroupStore.logVersions( msgLog );
+        }
 
         stringLogger.flush();
     }
@@ -613,6 +698,10 @@ public class NeoStore extends AbstractStore
         relStore.logIdUsage(msgLog );
         relTypeStore.logIdUsage( msgLog);
         propStore.logIdUsage( msgLog );
+        if ( relGroupStore != null )
+        {
+            relGroupStore.logIdUsage( msgLog );
+        }
         stringLogger.flush();
     }
 
@@ -627,7 +716,7 @@ public class NeoStore extends AbstractStore
      * The following two methods encode and decode a string that is presumably
      * the store version into a long via Latin1 encoding. This leaves room for
      * 7 characters and 1 byte for the length. Current string is
-     * 0.A.0 which is 5 chars, so we have room for expansion. When that
+     * 0.A.1 which is 5 chars, so we have room for expansion. When that
      * becomes a problem we will be in a yacht, sipping alcoholic
      * beverages of our choice. Or taking turns crashing golden
      * helicopters. Anyway, it should suffice for some time and by then
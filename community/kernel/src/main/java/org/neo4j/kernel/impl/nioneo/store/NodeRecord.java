@@ -23,6 +23,7 @@ public class NodeRecord extends PrimitiveRecord
 {
     private final long committedNextRel;
     private long nextRel;
+    private long firstGroup = Record.NO_NEXT_RELATIONSHIP.intValue();
 
     public NodeRecord( long id, long nextRel, long nextProp )
     {
@@ -45,11 +46,32 @@ public class NodeRecord extends PrimitiveRecord
         return isCreated() ? Record.NO_NEXT_RELATIONSHIP.intValue() : committedNextRel;
     }
 
+    /**
+     * Dense nodes keep their relationships in chains per type and direction,
+     * reachable through their {@link RelationshipGroupRecord groups} rather
+     * than through {@link #getNextRel()}.
+     */
+    public boolean isDense()
+    {
+        return firstGroup != Record.NO_NEXT_RELATIONSHIP.intValue();
+    }
+
+    public long getFirstGroup()
+    {
+        return firstGroup;
+    }
+
+    public void setFirstGroup( long firstGroup )
+    {
+        this.firstGroup = firstGroup;
+    }
+
     @Override
     public String toString()
     {
         return new StringBuilder( "Node[" ).append( getId() ).append( ",used=" ).append( inUse() ).append( ",rel=" ).append(
-                nextRel ).append( ",prop=" ).append( getNextProp() ).append( "]" ).toString();
+                nextRel ).append( ",prop=" ).append( getNextProp() ).append(
+                isDense() ? ",group=" + firstGroup : "" ).append( "]" ).toString();
     }
 
     @Override
@@ -41,8 +41,11 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
 
     public static final String TYPE_DESCRIPTOR = "NodeStore";
 
-    // in_use(byte)+next_rel_id(int)+next_prop_id(int)
-    public static final int RECORD_SIZE = 9;
+    // in_use(byte)+next_rel_id(int)+next_prop_id(int)+extra(byte)
+    public static final int RECORD_SIZE = 10;
+
+    // set in the extra byte if the next_rel_id field holds the first relationship group of a dense node
+    private static final byte DENSE = 0x1;
 
     public NodeStore(File fileName, Config config,
                      IdGeneratorFactory idGeneratorFactory, WindowPoolFactory windowPoolFactory,
@@ -218,12 +221,19 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
 
         long nextRel = buffer.getUnsignedInt();
         long nextProp = buffer.getUnsignedInt();
+        boolean dense = (buffer.get() & DENSE) != 0;
 
         long relModifier = (inUseByte & 0xEL) << 31;
         long propModifier = (inUseByte & 0xF0L) << 28;
 
-        NodeRecord nodeRecord = new NodeRecord( id, longFromIntAndMod( nextRel, relModifier ), longFromIntAndMod( nextProp, propModifier ) );
+        nextRel = longFromIntAndMod( nextRel, relModifier );
+        NodeRecord nodeRecord = new NodeRecord( id, dense ? Record.NO_NEXT_RELATIONSHIP.intValue() : nextRel,
+                longFromIntAndMod( nextProp, propModifier ) );
         nodeRecord.setInUse( inUse );
+        if ( dense )
+        {
+            nodeRecord.setFirstGroup( nextRel );
+        }
         return nodeRecord;
     }
 
@@ -233,7 +243,7 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
         Buffer buffer = window.getOffsettedBuffer( id );
         if ( record.inUse() || force )
         {
-            long nextRel = record.getNextRel();
+            long nextRel = record.isDense() ? record.getFirstGroup() : record.getNextRel();
             long nextProp = record.getNextProp();
 
             short relModifier = nextRel == Record.NO_NEXT_RELATIONSHIP.intValue() ? 0 : (short)((nextRel & 0x700000000L) >> 31);
@@ -244,7 +254,8 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
             // [xxxx,    ] higher bits for prop id
             short inUseUnsignedByte = ( record.inUse() ? Record.IN_USE : Record.NOT_IN_USE ).byteValue();
             inUseUnsignedByte = (short) ( inUseUnsignedByte | relModifier | propModifier );
-            buffer.put( (byte) inUseUnsignedByte ).putInt( (int) nextRel ).putInt( (int) nextProp );
+            buffer.put( (byte) inUseUnsignedByte ).putInt( (int) nextRel ).putInt( (int) nextProp )
+                    .put( record.isDense() ? DENSE : 0 );
         }
         else
         {
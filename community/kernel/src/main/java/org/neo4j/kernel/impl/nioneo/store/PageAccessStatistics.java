@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how the regions of a store file are accessed through its window pool:
+ * hits on windows already in memory, faults that had to go to the file, and
+ * evictions, along with the number of bytes read and written. The time of
+ * each fault is kept in a histogram, for percentiles of the fault latency.
+ * <p>
+ * The counters are updated without locking, and when the file grows past what
+ * the counters cover, increments made while they are being grown may get lost.
+ * That's fine for statistics.
+ */
+public class PageAccessStatistics
+{
+    public static final PageAccessStatistics NONE = new PageAccessStatistics( false, 1 );
+
+    private static final int HITS = 0;
+    private static final int FAULTS = 1;
+    private static final int EVICTIONS = 2;
+    private static final int BYTES_READ = 3;
+    private static final int BYTES_WRITTEN = 4;
+    private static final int COUNTERS = 5;
+
+    private final boolean enabled;
+    private final long regionSize;
+    private volatile AtomicLongArray regions = new AtomicLongArray( 0 );
+    // bucket i holds faults that took less than 2^i microseconds, but at least half of that
+    private final AtomicLongArray faultLatencies = new AtomicLongArray( Long.SIZE + 1 );
+
+    public PageAccessStatistics( long regionSize )
+    {
+        this( true, regionSize );
+    }
+
+    private PageAccessStatistics( boolean enabled, long regionSize )
+    {
+        if ( regionSize <= 0 )
+        {
+            throw new IllegalArgumentException( "Region size must be positive, was " + regionSize );
+        }
+        this.enabled = enabled;
+        this.regionSize = regionSize;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public long getRegionSize()
+    {
+        return regionSize;
+    }
+
+    public void hit( long offset )
+    {
+        if ( enabled )
+        {
+            increment( offset, HITS, 1 );
+        }
+    }
+
+    /**
+     * @return the time to pass to {@link #fault(long, int, long)} when the fault has been served.
+     */
+    public long startFault()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void fault( long offset, int bytesRead, long startTime )
+    {
+        if ( enabled )
+        {
+            increment( offset, FAULTS, 1 );
+            increment( offset, BYTES_READ, bytesRead );
+            long micros = TimeUnit.NANOSECONDS.toMicros( System.nanoTime() - startTime );
+            faultLatencies.incrementAndGet( Long.SIZE - Long.numberOfLeadingZeros( Math.max( 0, micros ) ) );
+        }
+    }
+
+    public void evicted( long offset )
+    {
+        if ( enabled )
+        {
+            increment( offset, EVICTIONS, 1 );
+        }
+    }
+
+    public void written( long offset, int bytesWritten )
+    {
+        if ( enabled )
+        {
+            increment( offset, BYTES_WRITTEN, bytesWritten );
+        }
+    }
+
+    private void increment( long offset, int counter, long delta )
+    {
+        long region = offset / regionSize;
+        AtomicLongArray counters = regions;
+        if ( region * COUNTERS >= counters.length() )
+        {
+            counters = grow( region );
+        }
+        counters.addAndGet( (int) (region * COUNTERS + counter), delta );
+    }
+
+    private synchronized AtomicLongArray grow( long region )
+    {
+        AtomicLongArray counters = regions;
+        if ( region * COUNTERS < counters.length() )
+        {
+            return counters;
+        }
+        long length = Math.max( (region + 1) * COUNTERS, counters.length() * 2L );
+        if ( length > Integer.MAX_VALUE )
+        {
+            throw new IllegalStateException( "Region size " + regionSize + " is too small for a file this large" );
+        }
+        AtomicLongArray grown = new AtomicLongArray( (int) length );
+        for ( int i = 0; i < counters.length(); i++ )
+        {
+            grown.set( i, counters.get( i ) );
+        }
+        regions = grown;
+        return grown;
+    }
+
+    public long getHitCount()
+    {
+        return total( HITS );
+    }
+
+    public long getFaultCount()
+    {
+        return total( FAULTS );
+    }
+
+    public long getEvictionCount()
+    {
+        return total( EVICTIONS );
+    }
+
+    public long getBytesRead()
+    {
+        return total( BYTES_READ );
+    }
+
+    public long getBytesWritten()
+    {
+        return total( BYTES_WRITTEN );
+    }
+
+    private long total( int counter )
+    {
+        AtomicLongArray counters = regions;
+        long total = 0;
+        for ( int i = counter; i < counters.length(); i += COUNTERS )
+        {
+            total += counters.get( i );
+        }
+        return total;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the number of microseconds that the given percentile of the faults
+     * took less than, rounded up to a power of two, or 0 if there have been no faults.
+     */
+    public long getFaultLatencyPercentile( double percentile )
+    {
+        long faults = 0;
+        for ( int i = 0; i < faultLatencies.length(); i++ )
+        {
+            faults += faultLatencies.get( i );
+        }
+        if ( faults == 0 )
+        {
+            return 0;
+        }
+        long wanted = (long) Math.ceil( faults * percentile / 100 );
+        long seen = 0;
+        for ( int i = 0; i < faultLatencies.length(); i++ )
+        {
+            seen += faultLatencies.get( i );
+            if ( seen >= wanted && seen > 0 )
+            {
+                return i < Long.SIZE - 1 ? 1L << i : Long.MAX_VALUE;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Writes one tab separated line per region, up to the last region that has
+     * been accessed, followed by the fault latency percentiles.
+     */
+    public void writeHeatmap( String storeName, PrintWriter out )
+    {
+        out.println( "# " + storeName + ", regions of " + regionSize + " bytes" );
+        out.println( "offset\thits\tfaults\tevictions\tbytesRead\tbytesWritten" );
+        AtomicLongArray counters = regions;
+        int regionCount = counters.length() / COUNTERS;
+        while ( regionCount > 0 && isUntouched( counters, regionCount - 1 ) )
+        {
+            regionCount--;
+        }
+        for ( int region = 0; region < regionCount; region++ )
+        {
+            int index = region * COUNTERS;
+            out.println( region * regionSize + "\t" + counters.get( index + HITS ) + "\t" +
+                    counters.get( index + FAULTS ) + "\t" + counters.get( index + EVICTIONS ) + "\t" +
+                    counters.get( index + BYTES_READ ) + "\t" + counters.get( index + BYTES_WRITTEN ) );
+        }
+        out.println( "# fault latency in microseconds, 50%<" + getFaultLatencyPercentile( 50 ) +
+                " 90%<" + getFaultLatencyPercentile( 90 ) + " 99%<" + getFaultLatencyPercentile( 99 ) +
+                " 99.9%<" + getFaultLatencyPercentile( 99.9 ) );
+    }
+
+    private static boolean isUntouched( AtomicLongArray counters, int region )
+    {
+        for ( int i = region * COUNTERS; i < (region + 1) * COUNTERS; i++ )
+        {
+            if ( counters.get( i ) != 0 )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -35,8 +35,14 @@ class PersistenceRow extends LockableWindow
     private int recordSize = -1;
     private final long position;
     private final Buffer buffer;
+    private final PageAccessStatistics accessStatistics;
 
     PersistenceRow( long position, int recordSize, FileChannel channel )
+    {
+        this( position, recordSize, channel, PageAccessStatistics.NONE );
+    }
+
+    PersistenceRow( long position, int recordSize, FileChannel channel, PageAccessStatistics accessStatistics )
     {
         super( channel );
         assert position >= 0 : "Illegal position[" + position + "]";
@@ -46,6 +52,7 @@ class PersistenceRow extends LockableWindow
         this.position = position;
         this.recordSize = recordSize;
         this.buffer = new Buffer( this, ByteBuffer.allocate( recordSize ) );
+        this.accessStatistics = accessStatistics;
         markAsInUse();
     }
 
@@ -153,10 +160,12 @@ class PersistenceRow extends LockableWindow
     {
         try
         {
+            long faultStart = accessStatistics.startFault();
             ByteBuffer byteBuffer = buffer.getBuffer();
             byteBuffer.clear();
             getFileChannel().read( byteBuffer, position * recordSize );
             byteBuffer.clear();
+            accessStatistics.fault( position * recordSize, recordSize, faultStart );
         }
         catch ( IOException e )
         {
@@ -186,6 +195,7 @@ class PersistenceRow extends LockableWindow
 
                     written += writtenThisTime;
                 }
+                accessStatistics.written( position * recordSize, written );
             }
             catch ( IOException e )
             {
@@ -78,6 +78,7 @@ public class PersistenceWindowPool implements WindowPool
     private final AtomicLong refreshTime = new AtomicLong();
     private final AtomicInteger refreshes = new AtomicInteger();
     private StringLogger log;
+    private final PageAccessStatistics accessStatistics;
 
     /**
      * Create new pool for a store.
@@ -96,6 +97,15 @@ public class PersistenceWindowPool implements WindowPool
     public PersistenceWindowPool( File storeName, int blockSize,
         FileChannel fileChannel, long mappedMem,
         boolean useMemoryMappedBuffers, boolean readOnly, StringLogger log )
+    {
+        this( storeName, blockSize, fileChannel, mappedMem, useMemoryMappedBuffers, readOnly,
+                PageAccessStatistics.NONE, log );
+    }
+
+    public PersistenceWindowPool( File storeName, int blockSize,
+        FileChannel fileChannel, long mappedMem,
+        boolean useMemoryMappedBuffers, boolean readOnly, PageAccessStatistics accessStatistics,
+        StringLogger log )
     {
         this.storeName = storeName;
         this.blockSize = blockSize;
@@ -105,6 +115,7 @@ public class PersistenceWindowPool implements WindowPool
         this.readOnly = readOnly;
         this.mapMode = readOnly ? MapMode.READ_ONLY : MapMode.READ_WRITE;
         this.log = log;
+        this.accessStatistics = accessStatistics;
         setupBricks();
         dumpStatus();
     }
@@ -171,7 +182,7 @@ public class PersistenceWindowPool implements WindowPool
                 // Either there was no active window for this position or it got
                 // closed right before we managed to mark it as in use.
                 // Either way instantiate a new active window for this position
-                dpw = new PersistenceRow( position, blockSize, fileChannel );
+                dpw = new PersistenceRow( position, blockSize, fileChannel, accessStatistics );
                 PersistenceRow existing = activeRowWindows.putIfAbsent( position, dpw );
                 if ( existing == null )
                 {
@@ -190,6 +201,7 @@ public class PersistenceWindowPool implements WindowPool
             else
             {
                 hit++;
+                accessStatistics.hit( position * blockSize );
             }
         }
 
@@ -446,6 +458,7 @@ public class PersistenceWindowPool implements WindowPool
             {
                 mappedBrick.setWindow( null );
                 memUsed -= brickSize;
+                accessStatistics.evicted( brickIndexToPosition( mappedBrick.index() ) * blockSize );
             }
         }
     }
@@ -524,6 +537,7 @@ public class PersistenceWindowPool implements WindowPool
             {
                 mappedBrick.setWindow( null );
                 memUsed -= brickSize;
+                accessStatistics.evicted( brickIndexToPosition( mappedBrick.index() ) * blockSize );
                 if ( allocateNewWindow( unmappedBrick ) )
                     switches++;
             }
@@ -600,6 +614,7 @@ public class PersistenceWindowPool implements WindowPool
      */
     private boolean allocateNewWindow( BrickElement brick )
     {
+        long faultStart = accessStatistics.startFault();
         try
         {
             LockableWindow window = null;
@@ -618,6 +633,9 @@ public class PersistenceWindowPool implements WindowPool
                 dpw.readFullWindow();
                 window = dpw;
             }
+            // mapped windows are read as they're accessed, so only reading a plain window counts as bytes read
+            accessStatistics.fault( brickIndexToPosition( brick.index() ) * blockSize,
+                    useMemoryMapped ? 0 : brickSize, faultStart );
             brick.setWindow( window );
             memUsed += brickSize;
             return true;
@@ -665,7 +683,8 @@ public class PersistenceWindowPool implements WindowPool
     {
         int avgRefreshTime = refreshes.get() == 0 ? 0 : (int)(refreshTime.get()/refreshes.get());
         return new WindowPoolStats( storeName, availableMem, memUsed, brickCount,
-                brickSize, hit, miss, ooe, switches, avgRefreshTime, refreshes.get(), avertedRefreshes.get() );
+                brickSize, hit, miss, ooe, switches, avgRefreshTime, refreshes.get(), avertedRefreshes.get() )
+                .withAccessStatistics( accessStatistics );
     }
 
     private static class BrickElement
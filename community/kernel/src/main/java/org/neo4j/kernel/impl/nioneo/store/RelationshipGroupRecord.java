@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+
+/**
+ * The head of the relationship chains of one type of a dense node. A dense node
+ * doesn't link its relationships in a single chain starting at
+ * {@link NodeRecord#getNextRel()}, but keeps one chain per type and direction,
+ * each starting in the group record for that type. The groups of a node form a
+ * chain of their own, starting at the group marked as first. The group also
+ * keeps the number of relationships in each of its chains, so that the degree
+ * of a dense node can be read without going through the chains.
+ */
+public class RelationshipGroupRecord extends Abstract64BitRecord
+{
+    private final int type;
+    private final long owningNode;
+    private boolean first;
+    private long next = Record.NO_NEXT_RELATIONSHIP.intValue();
+    private long firstOut = Record.NO_NEXT_RELATIONSHIP.intValue();
+    private long firstIn = Record.NO_NEXT_RELATIONSHIP.intValue();
+    private long firstLoop = Record.NO_NEXT_RELATIONSHIP.intValue();
+    private int outCount;
+    private int inCount;
+    private int loopCount;
+
+    public RelationshipGroupRecord( long id, int type, long owningNode )
+    {
+        super( id );
+        this.type = type;
+        this.owningNode = owningNode;
+    }
+
+    public int getType()
+    {
+        return type;
+    }
+
+    public long getOwningNode()
+    {
+        return owningNode;
+    }
+
+    public boolean isFirst()
+    {
+        return first;
+    }
+
+    public void setFirst( boolean first )
+    {
+        this.first = first;
+    }
+
+    public long getNext()
+    {
+        return next;
+    }
+
+    public void setNext( long next )
+    {
+        this.next = next;
+    }
+
+    public long getFirstOut()
+    {
+        return firstOut;
+    }
+
+    public void setFirstOut( long firstOut )
+    {
+        this.firstOut = firstOut;
+    }
+
+    public long getFirstIn()
+    {
+        return firstIn;
+    }
+
+    public void setFirstIn( long firstIn )
+    {
+        this.firstIn = firstIn;
+    }
+
+    public long getFirstLoop()
+    {
+        return firstLoop;
+    }
+
+    public void setFirstLoop( long firstLoop )
+    {
+        this.firstLoop = firstLoop;
+    }
+
+    /**
+     * @param direction {@link DirectionWrapper#BOTH} for the chain of loops.
+     * @return the first relationship in the chain of the given direction.
+     */
+    public long getFirst( DirectionWrapper direction )
+    {
+        switch ( direction )
+        {
+        case OUTGOING:
+            return firstOut;
+        case INCOMING:
+            return firstIn;
+        default:
+            return firstLoop;
+        }
+    }
+
+    public void setFirst( DirectionWrapper direction, long relId )
+    {
+        switch ( direction )
+        {
+        case OUTGOING:
+            firstOut = relId;
+            break;
+        case INCOMING:
+            firstIn = relId;
+            break;
+        default:
+            firstLoop = relId;
+        }
+    }
+
+    /**
+     * @param direction {@link DirectionWrapper#BOTH} for the chain of loops.
+     * @return the number of relationships in the chain of the given direction.
+     */
+    public int getCount( DirectionWrapper direction )
+    {
+        switch ( direction )
+        {
+        case OUTGOING:
+            return outCount;
+        case INCOMING:
+            return inCount;
+        default:
+            return loopCount;
+        }
+    }
+
+    public void setCount( DirectionWrapper direction, int count )
+    {
+        switch ( direction )
+        {
+        case OUTGOING:
+            outCount = count;
+            break;
+        case INCOMING:
+            inCount = count;
+            break;
+        default:
+            loopCount = count;
+        }
+    }
+
+    public boolean isEmpty()
+    {
+        return firstOut == Record.NO_NEXT_RELATIONSHIP.intValue() &&
+               firstIn == Record.NO_NEXT_RELATIONSHIP.intValue() &&
+               firstLoop == Record.NO_NEXT_RELATIONSHIP.intValue();
+    }
+
+    @Override
+    public String toString()
+    {
+        return new StringBuilder( "RelationshipGroup[" ).append( getId() ).append( ",used=" ).append( inUse() )
+                .append( ",type=" ).append( type ).append( ",node=" ).append( owningNode ).append( ",first=" )
+                .append( first ).append( ",next=" ).append( next ).append( ",out=" ).append( firstOut )
+                .append( ",in=" ).append( firstIn ).append( ",loop=" ).append( firstLoop )
+                .append( ",counts=" ).append( outCount ).append( '/' ).append( inCount ).append( '/' )
+                .append( loopCount ).append( "]" ).toString();
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.IdType;
+import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.impl.nioneo.store.windowpool.WindowPoolFactory;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Implementation of the relationship group store, holding the heads of the
+ * per type and direction relationship chains of dense nodes. The node record
+ * of a dense node points to its first group, the groups of a node are linked
+ * in type order.
+ */
+public class RelationshipGroupStore extends AbstractStore implements Store, RecordStore<RelationshipGroupRecord>
+{
+    public static abstract class Configuration
+        extends AbstractStore.Configuration
+    {
+    }
+
+    public static final String TYPE_DESCRIPTOR = "RelationshipGroupStore";
+
+    // in_use|first(byte)+type(int)+next(int)+first_out(int)+first_in(int)+
+    // first_loop(int)+owning_node(int)+out_count(int)+in_count(int)+loop_count(int)
+    public static final int RECORD_SIZE = 37;
+
+    public RelationshipGroupStore( File fileName, Config config, IdGeneratorFactory idGeneratorFactory,
+                                   WindowPoolFactory windowPoolFactory, FileSystemAbstraction fileSystemAbstraction,
+                                   StringLogger stringLogger )
+    {
+        super( fileName, config, IdType.RELATIONSHIP_GROUP, idGeneratorFactory, windowPoolFactory,
+                fileSystemAbstraction, stringLogger );
+    }
+
+    @Override
+    public void accept( RecordStore.Processor processor, RelationshipGroupRecord record )
+    {
+        processor.processRelationshipGroup( this, record );
+    }
+
+    @Override
+    public String getTypeDescriptor()
+    {
+        return TYPE_DESCRIPTOR;
+    }
+
+    @Override
+    public int getRecordSize()
+    {
+        return RECORD_SIZE;
+    }
+
+    @Override
+    public int getRecordHeaderSize()
+    {
+        return getRecordSize();
+    }
+
+    @Override
+    public RelationshipGroupRecord getRecord( long id )
+    {
+        PersistenceWindow window = acquireWindow( id, OperationType.READ );
+        try
+        {
+            return getRecord( id, window, RecordLoad.NORMAL );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    @Override
+    public RelationshipGroupRecord forceGetRecord( long id )
+    {
+        PersistenceWindow window = null;
+        try
+        {
+            window = acquireWindow( id, OperationType.READ );
+        }
+        catch ( InvalidRecordException e )
+        {
+            return new RelationshipGroupRecord( id, -1, -1 );
+        }
+
+        try
+        {
+            return getRecord( id, window, RecordLoad.FORCE );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    @Override
+    public RelationshipGroupRecord forceGetRaw( RelationshipGroupRecord record )
+    {
+        return record;
+    }
+
+    @Override
+    public RelationshipGroupRecord forceGetRaw( long id )
+    {
+        return forceGetRecord( id );
+    }
+
+    public void updateRecord( RelationshipGroupRecord record, boolean recovered )
+    {
+        assert recovered;
+        setRecovered();
+        try
+        {
+            updateRecord( record );
+            registerIdFromUpdateRecord( record.getId() );
+        }
+        finally
+        {
+            unsetRecovered();
+        }
+    }
+
+    @Override
+    public void updateRecord( RelationshipGroupRecord record )
+    {
+        PersistenceWindow window = acquireWindow( record.getId(), OperationType.WRITE );
+        try
+        {
+            updateRecord( record, window, false );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    @Override
+    public void forceUpdateRecord( RelationshipGroupRecord record )
+    {
+        PersistenceWindow window = acquireWindow( record.getId(), OperationType.WRITE );
+        try
+        {
+            updateRecord( record, window, true );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    private RelationshipGroupRecord getRecord( long id, PersistenceWindow window, RecordLoad load )
+    {
+        Buffer buffer = window.getOffsettedBuffer( id );
+
+        // [    ,   x] in use flag
+        // [    ,  x ] first in the group chain of the node
+        // [   x,xx  ] next group high order bits
+        long header = buffer.get();
+        boolean inUse = (header & 0x1) == Record.IN_USE.intValue();
+        if ( !inUse )
+        {
+            switch ( load )
+            {
+            case NORMAL:
+                throw new InvalidRecordException( "RelationshipGroupRecord[" + id + "] not in use" );
+            case CHECK:
+                return null;
+            case FORCE:
+                break;
+            }
+        }
+
+        // [    ,xxx ][    ,    ][    ,    ][    ,    ] owning node high order bits, 0xE000000
+        // [    ,   x][xx  ,    ][    ,    ][    ,    ] first loop high order bits,  0x1C00000
+        // [    ,    ][  xx,x   ][    ,    ][    ,    ] first in high order bits,    0x380000
+        // [    ,    ][    , xxx][    ,    ][    ,    ] first out high order bits,   0x70000
+        // [    ,    ][    ,    ][xxxx,xxxx][xxxx,xxxx] type
+        long typeInt = buffer.getInt();
+        long next = buffer.getUnsignedInt();
+        long firstOut = buffer.getUnsignedInt();
+        long firstIn = buffer.getUnsignedInt();
+        long firstLoop = buffer.getUnsignedInt();
+        long owningNode = buffer.getUnsignedInt();
+        int outCount = buffer.getInt();
+        int inCount = buffer.getInt();
+        int loopCount = buffer.getInt();
+
+        RelationshipGroupRecord record = new RelationshipGroupRecord( id, (int) (typeInt & 0xFFFF),
+                longFromIntAndMod( owningNode, (typeInt & 0xE000000L) << 7 ) );
+        record.setInUse( inUse );
+        record.setFirst( (header & 0x2) != 0 );
+        record.setNext( longFromIntAndMod( next, (header & 0x1CL) << 30 ) );
+        record.setFirstOut( longFromIntAndMod( firstOut, (typeInt & 0x70000L) << 16 ) );
+        record.setFirstIn( longFromIntAndMod( firstIn, (typeInt & 0x380000L) << 13 ) );
+        record.setFirstLoop( longFromIntAndMod( firstLoop, (typeInt & 0x1C00000L) << 10 ) );
+        record.setCount( DirectionWrapper.OUTGOING, outCount );
+        record.setCount( DirectionWrapper.INCOMING, inCount );
+        record.setCount( DirectionWrapper.BOTH, loopCount );
+        return record;
+    }
+
+    private void updateRecord( RelationshipGroupRecord record, PersistenceWindow window, boolean force )
+    {
+        long id = record.getId();
+        Buffer buffer = window.getOffsettedBuffer( id );
+        if ( record.inUse() || force )
+        {
+            long next = record.getNext();
+            long nextMod = next == Record.NO_NEXT_RELATIONSHIP.intValue() ? 0 : (next & 0x700000000L) >> 30;
+
+            long firstOut = record.getFirstOut();
+            long firstOutMod = firstOut == Record.NO_NEXT_RELATIONSHIP.intValue() ? 0 : (firstOut & 0x700000000L) >> 16;
+
+            long firstIn = record.getFirstIn();
+            long firstInMod = firstIn == Record.NO_NEXT_RELATIONSHIP.intValue() ? 0 : (firstIn & 0x700000000L) >> 13;
+
+            long firstLoop = record.getFirstLoop();
+            long firstLoopMod = firstLoop == Record.NO_NEXT_RELATIONSHIP.intValue() ? 0 : (firstLoop & 0x700000000L) >> 10;
+
+            long owningNode = record.getOwningNode();
+            long owningNodeMod = (owningNode & 0x700000000L) >> 7;
+
+            byte header = (byte) ((record.inUse() ? Record.IN_USE : Record.NOT_IN_USE).byteValue() |
+                    (record.isFirst() ? 0x2 : 0) | nextMod);
+            int typeInt = (int) (record.getType() | firstOutMod | firstInMod | firstLoopMod | owningNodeMod);
+
+            buffer.put( header ).putInt( typeInt ).putInt( (int) next ).putInt( (int) firstOut )
+                    .putInt( (int) firstIn ).putInt( (int) firstLoop ).putInt( (int) owningNode )
+                    .putInt( record.getCount( DirectionWrapper.OUTGOING ) )
+                    .putInt( record.getCount( DirectionWrapper.INCOMING ) )
+                    .putInt( record.getCount( DirectionWrapper.BOTH ) );
+        }
+        else
+        {
+            buffer.put( Record.NOT_IN_USE.byteValue() );
+            if ( !isInRecoveryMode() )
+            {
+                freeId( id );
+            }
+        }
+    }
+
+    @Override
+    public List<WindowPoolStats> getAllWindowPoolStats()
+    {
+        List<WindowPoolStats> list = new ArrayList<WindowPoolStats>();
+        list.add( getWindowPoolStats() );
+        return list;
+    }
+}
@@ -22,6 +22,7 @@ package org.neo4j.kernel.impl.nioneo.store;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.neo4j.kernel.IdGeneratorFactory;
 import org.neo4j.kernel.IdType;
@@ -47,6 +48,9 @@ public class RelationshipStore extends AbstractStore implements Store, RecordSto
     // second_next_rel_id+next_prop_id(int)
     public static final int RECORD_SIZE = 33;
 
+    private final AtomicInteger readAheadHits = new AtomicInteger();
+    private final AtomicInteger readAheadWaste = new AtomicInteger();
+
     public RelationshipStore(File fileName, Config configuration, IdGeneratorFactory idGeneratorFactory,
                              WindowPoolFactory windowPoolFactory, FileSystemAbstraction fileSystemAbstraction, StringLogger stringLogger)
     {
@@ -367,4 +371,21 @@ public class RelationshipStore extends AbstractStore implements Store, RecordSto
         return list;
     }
 
+    @Override
+    public WindowPoolStats getWindowPoolStats()
+    {
+        return super.getWindowPoolStats().withReadAhead( readAheadHits.get(), readAheadWaste.get() );
+    }
+
+    /**
+     * Records the outcome of a batch of relationship records that were read
+     * ahead of time, see {@link WindowPoolStats#getReadAheadHitCount()}.
+     *
+     * @param used whether the batch was asked for or thrown away.
+     */
+    public void countReadAhead( boolean used )
+    {
+        ( used ? readAheadHits : readAheadWaste ).incrementAndGet();
+    }
+
 }
\ No newline at end of file
@@ -43,6 +43,7 @@ public class StoreAccess
     // Top level stores
     private final RecordStore<NodeRecord> nodeStore;
     private final RecordStore<RelationshipRecord> relStore;
+    private final RecordStore<RelationshipGroupRecord> relGroupStore;
     private final RecordStore<RelationshipTypeRecord> relTypeStore;
     private final RecordStore<PropertyRecord> propStore;
     // Transitive stores
@@ -66,16 +67,26 @@ public class StoreAccess
 
     public StoreAccess( NeoStore store )
     {
-        this( store.getNodeStore(), store.getRelationshipStore(), store.getPropertyStore(),
-                store.getRelationshipTypeStore() );
+        this( store.getNodeStore(), store.getRelationshipStore(), store.getRelationshipGroupStore(),
+                store.getPropertyStore(), store.getRelationshipTypeStore() );
         this.neoStore = store;
     }
 
     public StoreAccess( NodeStore nodeStore, RelationshipStore relStore, PropertyStore propStore,
                         RelationshipTypeStore typeStore )
+    {
+        this( nodeStore, relStore, null, propStore, typeStore );
+    }
+
+    /**
+     * @param relGroupStore {@code null} for a store without relationship groups.
+     */
+    public StoreAccess( NodeStore nodeStore, RelationshipStore relStore, RelationshipGroupStore relGroupStore,
+                        PropertyStore propStore, RelationshipTypeStore typeStore )
     {
         this.nodeStore = wrapStore( nodeStore );
         this.relStore = wrapStore( relStore );
+        this.relGroupStore = relGroupStore != null ? wrapStore( relGroupStore ) : null;
         this.propStore = wrapStore( propStore );
         this.stringStore = wrapStore( propStore.getStringStore() );
         this.arrayStore = wrapStore( propStore.getArrayStore() );
@@ -132,6 +143,14 @@ public class StoreAccess
         return relStore;
     }
 
+    /**
+     * @return the relationship group store, or {@code null} if the store has none.
+     */
+    public RecordStore<RelationshipGroupRecord> getRelationshipGroupStore()
+    {
+        return relGroupStore;
+    }
+
     public RecordStore<PropertyRecord> getPropertyStore()
     {
         return propStore;
@@ -178,16 +197,28 @@ public class StoreAccess
 
     protected RecordStore<?>[] allStores()
     {
+        RecordStore<?>[] stores;
         if ( propStore == null )
         {
-            return new RecordStore<?>[]{ // no property stores
+            stores = new RecordStore<?>[]{ // no property stores
                     nodeStore, relStore, relTypeStore, typeNameStore
             };
         }
-        return new RecordStore<?>[]{
-                nodeStore, relStore, propStore, stringStore, arrayStore, // basic
-                relTypeStore, propIndexStore, typeNameStore, propKeyStore, // internal
-        };
+        else
+        {
+            stores = new RecordStore<?>[]{
+                    nodeStore, relStore, propStore, stringStore, arrayStore, // basic
+                    relTypeStore, propIndexStore, typeNameStore, propKeyStore, // internal
+            };
+        }
+        if ( relGroupStore != null )
+        {
+            RecordStore<?>[] withGroups = new RecordStore<?>[stores.length + 1];
+            System.arraycopy( stores, 0, withGroups, 0, stores.length );
+            withGroups[stores.length] = relGroupStore;
+            stores = withGroups;
+        }
+        return stores;
     }
 
     protected <R extends AbstractBaseRecord> RecordStore<R> wrapStore( RecordStore<R> store )
@@ -33,6 +33,7 @@ import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.impl.nioneo.store.windowpool.WindowPoolFactory;
 import org.neo4j.kernel.impl.storemigration.ConfigMapUpgradeConfiguration;
 import org.neo4j.kernel.impl.storemigration.DatabaseFiles;
+import org.neo4j.kernel.impl.storemigration.DenseNodeUpgrader;
 import org.neo4j.kernel.impl.storemigration.StoreMigrator;
 import org.neo4j.kernel.impl.storemigration.StoreUpgrader;
 import org.neo4j.kernel.impl.storemigration.UpgradableDatabase;
@@ -69,6 +70,11 @@ public class StoreFactory
         this.txHook = txHook;
     }
 
+    public FileSystemAbstraction getFileSystemAbstraction()
+    {
+        return fileSystemAbstraction;
+    }
+
     public boolean ensureStoreExists() throws IOException
     {
         boolean readOnly = config.get( GraphDatabaseSettings.read_only );
@@ -87,6 +93,7 @@ public class StoreFactory
 
     public NeoStore newNeoStore(File fileName)
     {
+        upgradeDenseNodesIfNeeded( fileName );
         try
         {
             return attemptNewNeoStore( fileName );
@@ -100,12 +107,37 @@ public class StoreFactory
 
     NeoStore attemptNewNeoStore( File fileName )
     {
+        RelationshipGroupStore relGroupStore = newRelationshipGroupStore(
+                new File( fileName.getPath() + ".relationshipgroupstore.db" ) );
         return new NeoStore( fileName, config, idGeneratorFactory, windowPoolFactory, fileSystemAbstraction,
                 stringLogger, txHook,
                 newRelationshipTypeStore(new File(fileName.getPath() + ".relationshiptypestore.db")),
                 newPropertyStore(new File( fileName.getPath() + ".propertystore.db")),
                 newRelationshipStore(new File( fileName.getPath() + ".relationshipstore.db")),
-                newNodeStore(new File( fileName.getPath() + ".nodestore.db")));
+                newNodeStore(new File( fileName.getPath() + ".nodestore.db")), relGroupStore );
+    }
+
+    private void upgradeDenseNodesIfNeeded( File fileName )
+    {
+        DenseNodeUpgrader upgrader = new DenseNodeUpgrader( fileSystemAbstraction, stringLogger );
+        try
+        {
+            if ( !upgrader.needsUpgrade( fileName ) )
+            {
+                return;
+            }
+            if ( config.get( GraphDatabaseSettings.read_only ) )
+            {
+                throw new NotCurrentStoreVersionException( CommonAbstractStore.ALL_STORES_VERSION,
+                        DenseNodeUpgrader.FROM_VERSION, "", true );
+            }
+            new ConfigMapUpgradeConfiguration( config ).checkConfigurationAllowsAutomaticUpgrade();
+            upgrader.upgrade( fileName );
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( "Unable to upgrade store " + fileName, e );
+        }
     }
 
     private void tryToUpgradeStores( File fileName )
@@ -163,6 +195,21 @@ public class StoreFactory
         return new NodeStore( baseFileName, config, idGeneratorFactory, windowPoolFactory, fileSystemAbstraction, stringLogger );
     }
 
+    private RelationshipGroupStore newRelationshipGroupStore(File baseFileName)
+    {
+        if ( !fileSystemAbstraction.fileExists( baseFileName ) )
+        {
+            // Stores created before relationship groups existed don't have this file
+            if ( config.get( GraphDatabaseSettings.read_only ) )
+            {
+                return null;
+            }
+            createRelationshipGroupStore( baseFileName );
+        }
+        return new RelationshipGroupStore( baseFileName, config, idGeneratorFactory, windowPoolFactory,
+                fileSystemAbstraction, stringLogger );
+    }
+
     public NeoStore createNeoStore(File fileName)
     {
         return createNeoStore( fileName, new StoreId() );
@@ -173,6 +220,7 @@ public class StoreFactory
         createEmptyStore( fileName, buildTypeDescriptorAndVersion( NeoStore.TYPE_DESCRIPTOR ) );
         createNodeStore(new File( fileName.getPath() + ".nodestore.db"));
         createRelationshipStore(new File( fileName.getPath() + ".relationshipstore.db"));
+        createRelationshipGroupStore( new File( fileName.getPath() + ".relationshipgroupstore.db" ) );
         createPropertyStore(new File( fileName.getPath() + ".propertystore.db"));
         createRelationshipTypeStore(new File( fileName.getPath() + ".relationshiptypestore.db"));
 /*
@@ -231,6 +279,17 @@ public class StoreFactory
         createEmptyStore( fileName, buildTypeDescriptorAndVersion( RelationshipStore.TYPE_DESCRIPTOR )  );
     }
 
+    /**
+     * Creates a new relationship group store contained in <CODE>fileName</CODE>.
+     *
+     * @param fileName
+     *            File name of the new relationship group store
+     */
+    private void createRelationshipGroupStore( File fileName )
+    {
+        createEmptyStore( fileName, buildTypeDescriptorAndVersion( RelationshipGroupStore.TYPE_DESCRIPTOR ) );
+    }
+
     /**
      * Creates a new property store contained in <CODE>fileName</CODE> If
      * filename is <CODE>null</CODE> or the file already exists an
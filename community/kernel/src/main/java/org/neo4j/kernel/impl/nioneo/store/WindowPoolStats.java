@@ -39,12 +39,26 @@ public class WindowPoolStats
     private final int avgRefreshTime;
     private final int refreshCount;
     private final int avertedRefreshCount;
+
+    private final int readAheadHitCount;
+    private final int readAheadWasteCount;
+
+    private final PageAccessStatistics accessStatistics;
     
     public WindowPoolStats( File file, long memAvail, long memUsed, int windowCount,
             int windowSize, int hitCount, int missCount, int oomCount, int switchCount, int avgRefreshTime,
             int refreshCount, int avertedRefreshCount )
     {
-        this.name = file.getName();
+        this( file.getName(), memAvail, memUsed, windowCount, windowSize, hitCount, missCount, oomCount,
+                switchCount, avgRefreshTime, refreshCount, avertedRefreshCount, 0, 0, PageAccessStatistics.NONE );
+    }
+
+    private WindowPoolStats( String name, long memAvail, long memUsed, int windowCount,
+            int windowSize, int hitCount, int missCount, int oomCount, int switchCount, int avgRefreshTime,
+            int refreshCount, int avertedRefreshCount, int readAheadHitCount, int readAheadWasteCount,
+            PageAccessStatistics accessStatistics )
+    {
+        this.name = name;
         this.memAvail = memAvail;
         this.memUsed = memUsed;
         this.windowCount = windowCount;
@@ -56,6 +70,29 @@ public class WindowPoolStats
         this.avgRefreshTime = avgRefreshTime;
         this.refreshCount = refreshCount;
         this.avertedRefreshCount = avertedRefreshCount;
+        this.readAheadHitCount = readAheadHitCount;
+        this.readAheadWasteCount = readAheadWasteCount;
+        this.accessStatistics = accessStatistics;
+    }
+
+    /**
+     * @return a copy of these stats with the given read-ahead counts.
+     */
+    public WindowPoolStats withReadAhead( int readAheadHitCount, int readAheadWasteCount )
+    {
+        return new WindowPoolStats( name, memAvail, memUsed, windowCount, windowSize, hitCount, missCount,
+                oomCount, switchCount, avgRefreshTime, refreshCount, avertedRefreshCount, readAheadHitCount,
+                readAheadWasteCount, accessStatistics );
+    }
+
+    /**
+     * @return a copy of these stats with the given access statistics.
+     */
+    public WindowPoolStats withAccessStatistics( PageAccessStatistics accessStatistics )
+    {
+        return new WindowPoolStats( name, memAvail, memUsed, windowCount, windowSize, hitCount, missCount,
+                oomCount, switchCount, avgRefreshTime, refreshCount, avertedRefreshCount, readAheadHitCount,
+                readAheadWasteCount, accessStatistics );
     }
     
     public String getName()
@@ -117,6 +154,30 @@ public class WindowPoolStats
     {
         return avertedRefreshCount;
     }
+
+    /**
+     * @return the number of batches of records read ahead of time that were later asked for.
+     */
+    public int getReadAheadHitCount()
+    {
+        return readAheadHitCount;
+    }
+
+    /**
+     * @return the number of batches of records read ahead of time that were never used.
+     */
+    public int getReadAheadWasteCount()
+    {
+        return readAheadWasteCount;
+    }
+
+    /**
+     * @return the live access statistics of the store, {@link PageAccessStatistics#NONE} if not collected.
+     */
+    public PageAccessStatistics getAccessStatistics()
+    {
+        return accessStatistics;
+    }
     
     @Override
     public String toString()
@@ -132,7 +193,9 @@ public class WindowPoolStats
                 "switchCount:" + switchCount + ", " +
                 "avgRefreshTime:" + avgRefreshTime + ", " +
                 "refreshCount:" + refreshCount + ", " +
-                "avertedRefreshCount:" + avertedRefreshCount +
+                "avertedRefreshCount:" + avertedRefreshCount + ", " +
+                "readAheadHitCount:" + readAheadHitCount + ", " +
+                "readAheadWasteCount:" + readAheadWasteCount +
                 "]";
     }
 }
@@ -0,0 +1,711 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store.windowpool;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import org.neo4j.kernel.impl.nioneo.store.Buffer;
+import org.neo4j.kernel.impl.nioneo.store.OperationType;
+import org.neo4j.kernel.impl.nioneo.store.PageAccessStatistics;
+import org.neo4j.kernel.impl.nioneo.store.PersistenceWindow;
+import org.neo4j.kernel.impl.nioneo.store.UnderlyingStorageException;
+import org.neo4j.kernel.impl.nioneo.store.WindowPoolStats;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * A {@link WindowPool} that keeps equally sized pages of a store file in a
+ * fixed number of in-memory frames.
+ * <p>
+ * Pages are looked up by page id without any locking, and loading or evicting
+ * a page only changes the page table with compare-and-set. A page in use is
+ * pinned, which keeps it from being evicted. When all frames are taken, the
+ * frame of an unpinned page is reused. Pages are picked with the clock
+ * algorithm: a page used since the clock hand last passed it gets a second
+ * chance. Dirty pages are written back when evicted or flushed.
+ * <p>
+ * Each frame is the window of the page it holds, so acquiring a page doesn't
+ * allocate anything. Like the windows of the other pools, a page is used by one
+ * thread at a time. Its lock is reentrant, a thread may acquire a page it
+ * already holds, and threads waiting for it are parked.
+ */
+public class PagedWindowPool implements WindowPool
+{
+    // keeps a pool with little or no memory assigned to it usable by concurrent threads
+    private static final int MIN_PAGE_COUNT = 32;
+    private static final long NO_PAGE = -1;
+    // pin count of a frame that is being loaded or evicted
+    private static final int CLAIMED = -1;
+    // the page table is split into segments that, once added, are never replaced
+    private static final int SEGMENT_SHIFT = 10;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    // the state of a frame is kept in fields of its own, a page hit touches as few objects as possible
+    private static final AtomicIntegerFieldUpdater<Frame> PINS =
+            AtomicIntegerFieldUpdater.newUpdater( Frame.class, "pins" );
+    private static final AtomicIntegerFieldUpdater<Frame> WAITING =
+            AtomicIntegerFieldUpdater.newUpdater( Frame.class, "waiting" );
+    private static final AtomicReferenceFieldUpdater<Frame, Thread> OWNER =
+            AtomicReferenceFieldUpdater.newUpdater( Frame.class, Thread.class, "owner" );
+
+    private final File storeName;
+    private final int recordSize;
+    private final int recordsPerPage;
+    private final int pageSize;
+    private final FileChannel fileChannel;
+    private final boolean readOnly;
+    private final PageAccessStatistics accessStatistics;
+    private final StringLogger log;
+
+    // segments of frames indexed by page id, read and changed without locking, only adding a segment is locked
+    private volatile AtomicReferenceArray<AtomicReferenceArray<Frame>> pageTable =
+            new AtomicReferenceArray<AtomicReferenceArray<Frame>>( 0 );
+    private final Object segmentLock = new Object();
+    private final AtomicReferenceArray<Frame> frames;
+    private final AtomicInteger allocatedFrames = new AtomicInteger();
+    private final AtomicInteger clockHand = new AtomicInteger();
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger evictions = new AtomicInteger();
+
+    /**
+     * @param storeName name of the store using this pool.
+     * @param recordSize size of each record/block in the store.
+     * @param targetPageSize size in bytes of each page, rounded down to a
+     * whole number of records.
+     * @param availableMemory number of bytes that pages may occupy.
+     * @param fileChannel channel to the store file.
+     * @param readOnly whether to never write pages back to the store file.
+     * @param log where to log statistics when the pool is closed.
+     */
+    public PagedWindowPool( File storeName, int recordSize, int targetPageSize, long availableMemory,
+            FileChannel fileChannel, boolean readOnly, StringLogger log )
+    {
+        this( storeName, recordSize, targetPageSize, availableMemory, fileChannel, readOnly,
+                PageAccessStatistics.NONE, log );
+    }
+
+    public PagedWindowPool( File storeName, int recordSize, int targetPageSize, long availableMemory,
+            FileChannel fileChannel, boolean readOnly, PageAccessStatistics accessStatistics, StringLogger log )
+    {
+        if ( recordSize <= 0 || recordSize > targetPageSize )
+        {
+            throw new IllegalArgumentException( format( "number of bytes per record [%d] " +
+                    "is not in the valid range [1-%d]", recordSize, targetPageSize ) );
+        }
+        this.storeName = storeName;
+        this.recordSize = recordSize;
+        this.recordsPerPage = targetPageSize / recordSize;
+        this.pageSize = recordsPerPage * recordSize;
+        this.fileChannel = fileChannel;
+        this.readOnly = readOnly;
+        this.accessStatistics = accessStatistics;
+        this.log = log;
+        this.frames = new AtomicReferenceArray<Frame>(
+                (int) Math.min( Integer.MAX_VALUE, Math.max( MIN_PAGE_COUNT, availableMemory / pageSize ) ) );
+    }
+
+    @Override
+    public PersistenceWindow acquire( long position, OperationType operationType )
+    {
+        Frame frame = pin( position / recordsPerPage );
+        frame.lock( operationType );
+        return frame;
+    }
+
+    @Override
+    public void release( PersistenceWindow window )
+    {
+        Frame frame = (Frame) window;
+        try
+        {
+            frame.unlock();
+        }
+        finally
+        {
+            frame.unpin();
+        }
+    }
+
+    private Frame pin( long pageId )
+    {
+        while ( true )
+        {
+            Frame frame = lookup( pageId );
+            if ( frame == null )
+            {
+                frame = load( pageId );
+                if ( frame != null )
+                {
+                    misses.incrementAndGet();
+                    return frame;
+                }
+            }
+            else if ( frame.pin( pageId ) )
+            {
+                hits.incrementAndGet();
+                accessStatistics.hit( pageId * pageSize );
+                return frame;
+            }
+            else if ( frame.pageId == pageId )
+            {   // The page is being loaded or evicted by another thread
+                frame.awaitUnclaimed();
+            }
+        }
+    }
+
+    /**
+     * @return the frame now holding the page, pinned, or {@code null} if
+     * another thread got to load it first.
+     */
+    private Frame load( long pageId )
+    {
+        // The frame stays locked while it is loaded, threads wanting the page wait for that lock
+        Frame frame = claimFrame();
+        frame.pageId = pageId;
+        // Published while still claimed so that nobody else loads the page in the meantime
+        if ( !publish( pageId, frame ) )
+        {
+            frame.free();
+            return null;
+        }
+        long faultStart = accessStatistics.startFault();
+        try
+        {
+            frame.read( pageId * pageSize );
+        }
+        catch ( RuntimeException e )
+        {
+            unpublish( pageId, frame );
+            frame.free();
+            throw e;
+        }
+        accessStatistics.fault( pageId * pageSize, pageSize, faultStart );
+        frame.loaded();
+        return frame;
+    }
+
+    private Frame lookup( long pageId )
+    {
+        AtomicReferenceArray<Frame> segment = segment( pageId );
+        return segment != null ? segment.get( (int) (pageId & SEGMENT_MASK) ) : null;
+    }
+
+    private AtomicReferenceArray<Frame> segment( long pageId )
+    {
+        AtomicReferenceArray<AtomicReferenceArray<Frame>> table = pageTable;
+        long segment = pageId >>> SEGMENT_SHIFT;
+        return segment < table.length() ? table.get( (int) segment ) : null;
+    }
+
+    private boolean publish( long pageId, Frame frame )
+    {
+        AtomicReferenceArray<Frame> segment = segment( pageId );
+        if ( segment == null )
+        {
+            segment = addSegment( pageId );
+        }
+        return segment.compareAndSet( (int) (pageId & SEGMENT_MASK), null, frame );
+    }
+
+    private AtomicReferenceArray<Frame> addSegment( long pageId )
+    {
+        long segmentIndex = pageId >>> SEGMENT_SHIFT;
+        if ( segmentIndex >= Integer.MAX_VALUE )
+        {
+            throw new UnderlyingStorageException( "Page " + pageId + " of " + storeName +
+                    " is beyond what a page table can hold, configure a larger page size" );
+        }
+        // Segments are added once per SEGMENT_SIZE pages, only the table of segments is ever copied
+        synchronized ( segmentLock )
+        {
+            AtomicReferenceArray<AtomicReferenceArray<Frame>> table = pageTable;
+            if ( segmentIndex >= table.length() )
+            {
+                AtomicReferenceArray<AtomicReferenceArray<Frame>> grown =
+                        new AtomicReferenceArray<AtomicReferenceArray<Frame>>( (int) Math.min( Integer.MAX_VALUE,
+                                Math.max( segmentIndex + 1, table.length() * 2L ) ) );
+                for ( int i = 0; i < table.length(); i++ )
+                {
+                    grown.set( i, table.get( i ) );
+                }
+                pageTable = table = grown;
+            }
+            AtomicReferenceArray<Frame> segment = table.get( (int) segmentIndex );
+            if ( segment == null )
+            {
+                segment = new AtomicReferenceArray<Frame>( SEGMENT_SIZE );
+                table.set( (int) segmentIndex, segment );
+            }
+            return segment;
+        }
+    }
+
+    private void unpublish( long pageId, Frame frame )
+    {
+        segment( pageId ).compareAndSet( (int) (pageId & SEGMENT_MASK), frame, null );
+    }
+
+    /**
+     * @return a frame that is claimed and locked by the calling thread, with
+     * the page it held evicted.
+     */
+    private Frame claimFrame()
+    {
+        for ( int allocated = allocatedFrames.get(); allocated < frames.length(); allocated = allocatedFrames.get() )
+        {
+            if ( allocatedFrames.compareAndSet( allocated, allocated + 1 ) )
+            {
+                Frame frame = new Frame();
+                frame.lockPage();
+                frames.set( allocated, frame );
+                return frame;
+            }
+        }
+        for ( int attempt = 1; ; attempt++ )
+        {
+            Frame frame = frames.get( (clockHand.getAndIncrement() & Integer.MAX_VALUE) % frames.length() );
+            if ( frame != null && !frame.secondChance() && frame.claim() )
+            {
+                evict( frame );
+                return frame;
+            }
+            if ( attempt % frames.length() == 0 )
+            {   // Every page is in use, give the threads using them a chance to finish
+                Thread.yield();
+            }
+        }
+    }
+
+    private void evict( Frame frame )
+    {
+        long pageId = frame.pageId;
+        if ( pageId == NO_PAGE )
+        {
+            return;
+        }
+        try
+        {
+            if ( !readOnly && frame.write( pageId * pageSize ) )
+            {
+                accessStatistics.written( pageId * pageSize, pageSize );
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            frame.unclaim();
+            throw e;
+        }
+        unpublish( pageId, frame );
+        frame.pageId = NO_PAGE;
+        evictions.incrementAndGet();
+        accessStatistics.evicted( pageId * pageSize );
+    }
+
+    @Override
+    public void flushAll()
+    {
+        if ( readOnly )
+        {
+            return;
+        }
+        AtomicReferenceArray<AtomicReferenceArray<Frame>> table = pageTable;
+        for ( int segmentIndex = 0; segmentIndex < table.length(); segmentIndex++ )
+        {
+            AtomicReferenceArray<Frame> segment = table.get( segmentIndex );
+            for ( int i = 0; segment != null && i < SEGMENT_SIZE; i++ )
+            {
+                long pageId = ((long) segmentIndex << SEGMENT_SHIFT) + i;
+                Frame frame = segment.get( i );
+                if ( frame != null && frame.pin( pageId ) )
+                {
+                    frame.lockPage();
+                    try
+                    {
+                        if ( frame.write( pageId * pageSize ) )
+                        {
+                            accessStatistics.written( pageId * pageSize, pageSize );
+                        }
+                    }
+                    finally
+                    {
+                        frame.unlockPage();
+                        frame.unpin();
+                    }
+                }
+            }
+        }
+        try
+        {
+            fileChannel.force( false );
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( "Failed to flush file channel " + storeName, e );
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        flushAll();
+        synchronized ( segmentLock )
+        {
+            pageTable = new AtomicReferenceArray<AtomicReferenceArray<Frame>>( 0 );
+        }
+        for ( int i = 0; i < frames.length(); i++ )
+        {
+            frames.set( i, null );
+        }
+        log.logMessage( storeName + " hit=" + hits.get() + " miss=" + misses.get() + " evictions=" + evictions.get() );
+    }
+
+    @Override
+    public WindowPoolStats getStats()
+    {
+        int allocated = Math.min( allocatedFrames.get(), frames.length() );
+        return new WindowPoolStats( storeName, (long) frames.length() * pageSize, (long) allocated * pageSize,
+                allocated, pageSize, hits.get(), misses.get(), 0, evictions.get(), 0, 0, 0 )
+                .withAccessStatistics( accessStatistics );
+    }
+
+    /**
+     * A frame holding a page, which is also the window of that page handed out
+     * to the thread that has acquired it.
+     */
+    private class Frame implements PersistenceWindow
+    {
+        private final ByteBuffer byteBuffer;
+        private final Buffer buffer;
+        // number of threads using the page, or CLAIMED, changed through PINS
+        volatile int pins = CLAIMED;
+        // the thread holding the page lock: the thread using the page, or loading or evicting it
+        volatile Thread owner;
+        // number of times the owner has locked the page, only touched by the owner
+        private int holds;
+        // number of threads parked waiting for the page lock, changed through WAITING
+        volatile int waiting;
+        private final Queue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+        // whether the owner has acquired the page for writing
+        private boolean writing;
+        private volatile long pageId = NO_PAGE;
+        private volatile boolean referenced;
+        private volatile boolean dirty;
+
+        Frame()
+        {
+            this.byteBuffer = ByteBuffer.allocateDirect( pageSize );
+            this.buffer = new Buffer( this, byteBuffer );
+        }
+
+        boolean pin( long pageId )
+        {
+            for ( int pinned = pins; pinned != CLAIMED; pinned = pins )
+            {
+                if ( PINS.compareAndSet( this, pinned, pinned + 1 ) )
+                {
+                    if ( this.pageId == pageId )
+                    {
+                        if ( !referenced )
+                        {
+                            referenced = true;
+                        }
+                        return true;
+                    }
+                    // Evicted and reused for another page since it was looked up
+                    unpin();
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        void unpin()
+        {
+            PINS.decrementAndGet( this );
+        }
+
+        boolean secondChance()
+        {
+            if ( referenced )
+            {
+                referenced = false;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Claims an unpinned frame for eviction, it is locked until it has been
+         * loaded with another page or freed.
+         */
+        boolean claim()
+        {
+            if ( PINS.compareAndSet( this, 0, CLAIMED ) )
+            {
+                lockPage();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Parks the calling thread until a thread loading or evicting the page
+         * of this frame is done with it.
+         */
+        void awaitUnclaimed()
+        {
+            lockPage();
+            unlockPage();
+            if ( pins == CLAIMED )
+            {   // claimed but not locked yet
+                Thread.yield();
+            }
+        }
+
+        void unclaim()
+        {
+            pins = 0;
+            unlockPage();
+        }
+
+        void loaded()
+        {
+            referenced = true;
+            pins = 1;
+            unlockPage();
+        }
+
+        void free()
+        {
+            pageId = NO_PAGE;
+            pins = 0;
+            unlockPage();
+        }
+
+        void lock( OperationType operationType )
+        {
+            lockPage();
+            if ( operationType == OperationType.WRITE )
+            {
+                writing = true;
+                dirty = true;
+            }
+        }
+
+        void unlock()
+        {
+            if ( writing )
+            {
+                // marked again, a force() while writing may have cleared it
+                dirty = true;
+                if ( holds == 1 )
+                {
+                    writing = false;
+                }
+            }
+            unlockPage();
+        }
+
+        /*
+         * A reentrant lock made of the owner and its hold count. Threads that
+         * find the page locked by another thread park until it is unlocked.
+         */
+        private void lockPage()
+        {
+            Thread current = Thread.currentThread();
+            if ( owner == current )
+            {
+                holds++;
+                return;
+            }
+            if ( !OWNER.compareAndSet( this, null, current ) )
+            {
+                awaitPage( current );
+            }
+            holds = 1;
+        }
+
+        private void awaitPage( Thread current )
+        {
+            boolean interrupted = false;
+            // Registered as waiting before trying again, so that an owner unlocking after a failed try sees it
+            WAITING.incrementAndGet( this );
+            waiters.add( current );
+            try
+            {
+                while ( !OWNER.compareAndSet( this, null, current ) )
+                {
+                    LockSupport.park( this );
+                    if ( Thread.interrupted() )
+                    {
+                        interrupted = true;
+                    }
+                }
+            }
+            finally
+            {
+                waiters.remove( current );
+                WAITING.decrementAndGet( this );
+            }
+            if ( interrupted )
+            {
+                current.interrupt();
+            }
+        }
+
+        private void unlockPage()
+        {
+            if ( owner != Thread.currentThread() )
+            {
+                throw new IllegalStateException( Thread.currentThread() + " doesn't hold " + this );
+            }
+            if ( --holds == 0 )
+            {
+                owner = null;
+                if ( waiting > 0 )
+                {
+                    Thread next = waiters.peek();
+                    if ( next != null )
+                    {
+                        LockSupport.unpark( next );
+                    }
+                }
+            }
+        }
+
+        void read( long offset )
+        {
+            byteBuffer.clear();
+            try
+            {
+                while ( byteBuffer.hasRemaining() &&
+                        fileChannel.read( byteBuffer, offset + byteBuffer.position() ) > 0 )
+                {
+                    // keep reading until the page is full or the end of the file is reached
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new UnderlyingStorageException( "Unable to load page @[" + offset + "]", e );
+            }
+            while ( byteBuffer.hasRemaining() )
+            {   // past the end of the file, clear what a previous page may have left in this frame
+                byteBuffer.put( (byte) 0 );
+            }
+            dirty = false;
+        }
+
+        /**
+         * Writes the page, for a thread that holds its lock.
+         *
+         * @return whether the page was dirty and got written.
+         */
+        boolean write( long offset )
+        {
+            if ( !dirty )
+            {
+                return false;
+            }
+            dirty = false;
+            byteBuffer.clear();
+            try
+            {
+                while ( byteBuffer.hasRemaining() )
+                {
+                    if ( fileChannel.write( byteBuffer, offset + byteBuffer.position() ) == 0 )
+                    {
+                        throw new IOException( "Unable to write to disk, reported bytes written was 0" );
+                    }
+                }
+                return true;
+            }
+            catch ( IOException e )
+            {
+                dirty = true;
+                throw new UnderlyingStorageException( "Unable to write page @[" + offset + "]", e );
+            }
+        }
+
+        @Override
+        public Buffer getBuffer()
+        {
+            return buffer;
+        }
+
+        @Override
+        public Buffer getOffsettedBuffer( long id )
+        {
+            buffer.setOffset( (int) (id - position()) * recordSize );
+            return buffer;
+        }
+
+        @Override
+        public int getRecordSize()
+        {
+            return recordSize;
+        }
+
+        @Override
+        public long position()
+        {
+            return pageId * recordsPerPage;
+        }
+
+        @Override
+        public int size()
+        {
+            return recordsPerPage;
+        }
+
+        @Override
+        public void force()
+        {
+            if ( !readOnly && write( pageId * pageSize ) )
+            {
+                accessStatistics.written( pageId * pageSize, pageSize );
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            // the page stays in its frame until evicted
+        }
+
+        @Override
+        public String toString()
+        {
+            return "PageWindow[" + storeName.getName() + ",page=" + pageId + "]";
+        }
+    }
+}
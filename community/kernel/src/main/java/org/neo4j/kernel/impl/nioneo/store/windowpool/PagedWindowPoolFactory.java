@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store.windowpool;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
+import org.neo4j.kernel.impl.nioneo.store.DefaultWindowPoolFactory;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+public class PagedWindowPoolFactory implements WindowPoolFactory
+{
+    @Override
+    public WindowPool create( File storageFileName, int recordSize, FileChannel fileChannel, Config configuration,
+                              StringLogger log )
+    {
+        Long mappedMemory = configuration.get( DefaultWindowPoolFactory.memoryMappingSetting(
+                storageFileName.getName() ) );
+        long pageSize = configuration.get( GraphDatabaseSettings.window_pool_page_size );
+        return new PagedWindowPool( storageFileName, recordSize, (int) Math.max( recordSize,
+                Math.min( Integer.MAX_VALUE, pageSize ) ), mappedMemory == null ? 0 : mappedMemory, fileChannel,
+                configuration.get( CommonAbstractStore.Configuration.read_only ) &&
+                        !configuration.get( CommonAbstractStore.Configuration.backup_slave ),
+                DefaultWindowPoolFactory.accessStatistics( configuration ), log );
+    }
+}
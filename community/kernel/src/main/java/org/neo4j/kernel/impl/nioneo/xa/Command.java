@@ -37,12 +37,15 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeStore;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
 import org.neo4j.kernel.impl.transaction.xaframework.XaCommand;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 
 /**
  * Command implementations for all the commands that can be performed on a Neo
@@ -284,11 +287,15 @@ public abstract class Command extends XaCommand
     private static final byte REL_TYPE_COMMAND = (byte) 4;
     private static final byte PROP_INDEX_COMMAND = (byte) 5;
     private static final byte NEOSTORE_COMMAND = (byte) 6;
+    private static final byte REL_GROUP_COMMAND = (byte) 7;
 
     abstract void removeFromCache( TransactionState state );
 
     static class NodeCommand extends Command
     {
+        // set in the in use flag of dense nodes, which are followed by their first relationship group
+        private static final byte DENSE_NODE = (byte) 2;
+
         private final NodeRecord record;
         private final NodeStore store;
 
@@ -347,13 +354,18 @@ public abstract class Command extends XaCommand
         {
             byte inUse = record.inUse() ? Record.IN_USE.byteValue()
                 : Record.NOT_IN_USE.byteValue();
+            boolean dense = record.inUse() && record.isDense();
             buffer.put( NODE_COMMAND );
             buffer.putLong( record.getId() );
-            buffer.put( inUse );
+            buffer.put( dense ? (byte) (inUse | DENSE_NODE) : inUse );
             if ( record.inUse() )
             {
                 buffer.putLong( record.getNextRel() ).putLong(
                     record.getNextProp() );
+                if ( dense )
+                {
+                    buffer.putLong( record.getFirstGroup() );
+                }
             }
         }
 
@@ -371,7 +383,8 @@ public abstract class Command extends XaCommand
             long id = buffer.getLong();
             byte inUseFlag = buffer.get();
             boolean inUse = false;
-            if ( inUseFlag == Record.IN_USE.byteValue() )
+            boolean dense = inUseFlag == (Record.IN_USE.byteValue() | DENSE_NODE);
+            if ( inUseFlag == Record.IN_USE.byteValue() || dense )
             {
                 inUse = true;
             }
@@ -383,13 +396,17 @@ public abstract class Command extends XaCommand
             if ( inUse )
             {
                 buffer.clear();
-                buffer.limit( 16 );
+                buffer.limit( dense ? 24 : 16 );
                 if ( byteChannel.read( buffer ) != buffer.limit() )
                 {
                     return null;
                 }
                 buffer.flip();
                 record = new NodeRecord( id, buffer.getLong(), buffer.getLong() );
+                if ( dense )
+                {
+                    record.setFirstGroup( buffer.getLong() );
+                }
             }
             else record = new NodeRecord( id, Record.NO_NEXT_RELATIONSHIP.intValue(), Record.NO_NEXT_PROPERTY.intValue() );
             record.setInUse( inUse );
@@ -454,6 +471,15 @@ public abstract class Command extends XaCommand
             }
         }
 
+        void invalidateReadAhead( RelationshipReadAhead readAhead )
+        {
+            // same reasoning as in removeFromCache() about which of the records has the nodes
+            readAhead.invalidate( beforeUpdate.getFirstNode() );
+            readAhead.invalidate( beforeUpdate.getSecondNode() );
+            readAhead.invalidate( record.getFirstNode() );
+            readAhead.invalidate( record.getSecondNode() );
+        }
+
         @Override
         boolean isCreated()
         {
@@ -580,6 +606,141 @@ public abstract class Command extends XaCommand
         }
     }
     
+    static class RelationshipGroupCommand extends Command
+    {
+        private final RelationshipGroupRecord record;
+        private final RelationshipGroupStore store;
+
+        RelationshipGroupCommand( RelationshipGroupStore store, RelationshipGroupRecord record )
+        {
+            super( record.getId() );
+            this.record = record;
+            this.store = store;
+        }
+
+        @Override
+        public void accept( CommandRecordVisitor visitor )
+        {
+            visitor.visitRelationshipGroup( record );
+        }
+
+        @Override
+        void removeFromCache( TransactionState state )
+        {
+            state.removeNodeFromCache( record.getOwningNode() );
+        }
+
+        void invalidateReadAhead( RelationshipReadAhead readAhead )
+        {
+            readAhead.invalidate( record.getOwningNode() );
+        }
+
+        @Override
+        boolean isCreated()
+        {
+            return record.isCreated();
+        }
+
+        @Override
+        boolean isDeleted()
+        {
+            return !record.inUse();
+        }
+
+        @Override
+        public void execute()
+        {
+            if ( isRecovered() )
+            {
+                store.updateRecord( record, true );
+            }
+            else
+            {
+                store.updateRecord( record );
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return record.toString();
+        }
+
+        @Override
+        public void writeToFile( LogBuffer buffer ) throws IOException
+        {
+            // the whole record is written for deleted groups too, the owning node is
+            // needed to keep track of the first group of each dense node
+            byte inUse = record.inUse() ? Record.IN_USE.byteValue()
+                : Record.NOT_IN_USE.byteValue();
+            buffer.put( REL_GROUP_COMMAND );
+            buffer.putLong( record.getId() );
+            buffer.put( inUse );
+            buffer.put( (byte) (record.isFirst() ? 1 : 0) )
+                    .putInt( record.getType() )
+                    .putLong( record.getNext() )
+                    .putLong( record.getFirstOut() )
+                    .putLong( record.getFirstIn() )
+                    .putLong( record.getFirstLoop() )
+                    .putLong( record.getOwningNode() )
+                    .putInt( record.getCount( DirectionWrapper.OUTGOING ) )
+                    .putInt( record.getCount( DirectionWrapper.INCOMING ) )
+                    .putInt( record.getCount( DirectionWrapper.BOTH ) );
+        }
+
+        public static Command readCommand( NeoStore neoStore,
+            ReadableByteChannel byteChannel, ByteBuffer buffer )
+            throws IOException
+        {
+            buffer.clear();
+            buffer.limit( 66 );
+            if ( byteChannel.read( buffer ) != buffer.limit() )
+            {
+                return null;
+            }
+            buffer.flip();
+            long id = buffer.getLong();
+            byte inUseFlag = buffer.get();
+            boolean inUse = false;
+            if ( inUseFlag == Record.IN_USE.byteValue() )
+            {
+                inUse = true;
+            }
+            else if ( inUseFlag != Record.NOT_IN_USE.byteValue() )
+            {
+                throw new IOException( "Illegal in use flag: " + inUseFlag );
+            }
+            boolean first = buffer.get() != 0;
+            int type = buffer.getInt();
+            long next = buffer.getLong();
+            long firstOut = buffer.getLong();
+            long firstIn = buffer.getLong();
+            long firstLoop = buffer.getLong();
+            RelationshipGroupRecord record = new RelationshipGroupRecord( id, type, buffer.getLong() );
+            record.setInUse( inUse );
+            record.setFirst( first );
+            record.setNext( next );
+            record.setFirstOut( firstOut );
+            record.setFirstIn( firstIn );
+            record.setFirstLoop( firstLoop );
+            record.setCount( DirectionWrapper.OUTGOING, buffer.getInt() );
+            record.setCount( DirectionWrapper.INCOMING, buffer.getInt() );
+            record.setCount( DirectionWrapper.BOTH, buffer.getInt() );
+            return new RelationshipGroupCommand( neoStore == null ? null : neoStore.getRelationshipGroupStore(),
+                    record );
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( !(o instanceof RelationshipGroupCommand) )
+            {
+                return false;
+            }
+            return getKey() == ((Command) o).getKey();
+        }
+    }
+
     static class NeoStoreCommand extends Command
     {
         private final NeoStoreRecord record;
@@ -1160,6 +1321,8 @@ public abstract class Command extends XaCommand
                     byteChannel, buffer );
             case NEOSTORE_COMMAND:
                 return NeoStoreCommand.readCommand( neoStore, byteChannel, buffer );
+            case REL_GROUP_COMMAND:
+                return RelationshipGroupCommand.readCommand( neoStore, byteChannel, buffer );
             case NONE: return null;
             default:
                 throw new IOException( "Unknown command type[" + commandType
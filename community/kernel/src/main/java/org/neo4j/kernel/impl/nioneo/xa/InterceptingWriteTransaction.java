@@ -33,9 +33,10 @@ public class InterceptingWriteTransaction extends WriteTransaction
 
     InterceptingWriteTransaction( int identifier, XaLogicalLog log,
             NeoStore neoStore, TransactionState state,
-            LockManager lockManager, TransactionInterceptor interceptor )
+            LockManager lockManager, TransactionInterceptor interceptor, RelationshipReadAhead readAhead )
     {
-        super( identifier, log, state, neoStore );
+        // never spills, the interceptors get all commands at once
+        super( identifier, log, state, neoStore, readAhead, 0, null );
         this.interceptor = interceptor;
     }
 
@@ -20,7 +20,10 @@
 package org.neo4j.kernel.impl.nioneo.xa;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
@@ -46,6 +49,7 @@ import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.impl.core.PropertyIndex;
 import org.neo4j.kernel.impl.core.TransactionState;
 import org.neo4j.kernel.impl.index.IndexStore;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.Store;
@@ -91,10 +95,15 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         public static final Setting<File> store_dir = InternalAbstractGraphDatabase.Configuration.store_dir;
         public static final Setting<File> neo_store = InternalAbstractGraphDatabase.Configuration.neo_store;
         public static final Setting<File> logical_log = InternalAbstractGraphDatabase.Configuration.logical_log;
+        public static final Setting<Integer> relationship_read_ahead_threads =
+                GraphDatabaseSettings.relationship_read_ahead_threads;
+        public static final Setting<Integer> transaction_state_spill_threshold =
+                GraphDatabaseSettings.transaction_state_spill_threshold;
     }
 
     public static final byte BRANCH_ID[] = UTF8.encode( "414141" );
     public static final String LOGICAL_LOG_DEFAULT_NAME = "nioneo_logical.log";
+    public static final String HEATMAP_DIRECTORY_NAME = "heatmaps";
 
     private StoreFactory storeFactory;
     private XaFactory xaFactory;
@@ -102,6 +111,8 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
     private Config config;
     private NeoStore neoStore;
     private XaContainer xaContainer;
+    private RelationshipReadAhead readAhead;
+    private int spillThreshold;
     private ArrayMap<Class<?>,Store> idGenerators;
 
     private final LockManager lockManager;
@@ -238,6 +249,13 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
             tf = new TransactionFactory();
         }
         neoStore = storeFactory.newNeoStore( store );
+        int readAheadThreads = config.get( Configuration.relationship_read_ahead_threads );
+        readAhead = readAheadThreads > 0 ? new RelationshipReadAhead( neoStore, readAheadThreads ) : null;
+        spillThreshold = config.get( Configuration.transaction_state_spill_threshold );
+        if ( !readOnly )
+        {
+            deleteSpilledTransactionState();
+        }
 
         xaContainer = xaFactory.newXaContainer(this, config.get( Configuration.logical_log ), new CommandFactory( neoStore ), tf, stateFactory, providers  );
 
@@ -280,6 +298,10 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         {   // Something unexpected happened during startup
             try
             {   // Close the neostore, so that locks are released properly
+                if ( readAhead != null )
+                {
+                    readAhead.close();
+                }
                 neoStore.close();
             }
             catch ( Exception closeException )
@@ -295,6 +317,27 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         return neoStore;
     }
 
+    /**
+     * Deletes the records spilled by transactions that were still running
+     * when the database was last shut down.
+     */
+    private void deleteSpilledTransactionState()
+    {
+        FileSystemAbstraction fileSystem = storeFactory.getFileSystemAbstraction();
+        File[] files = fileSystem.listFiles( storeDir );
+        if ( files == null )
+        {
+            return;
+        }
+        for ( File file : files )
+        {
+            if ( file.getName().startsWith( SpilledRecords.FILE_NAME_PREFIX ) )
+            {
+                fileSystem.deleteFile( file );
+            }
+        }
+    }
+
     @Override
     public void stop()
     {
@@ -304,6 +347,11 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
             neoStore.flushAll();
         }
         xaContainer.close();
+        if ( readAhead != null )
+        {
+            readAhead.close();
+            readAhead = null;
+        }
         if ( logApplied )
         {
             neoStore.rebuildIdGenerators();
@@ -359,7 +407,7 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         {
             TransactionInterceptor first = providers.resolveChain( NeoStoreXaDataSource.this );
             return new InterceptingWriteTransaction( identifier, getLogicalLog(), neoStore, state, lockManager,
-                    first );
+                    first, readAhead );
         }
     }
 
@@ -369,7 +417,7 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         public XaTransaction create( int identifier, TransactionState state )
         {
             return new WriteTransaction( identifier, getLogicalLog(), state,
-                neoStore );
+                neoStore, readAhead, spillThreshold, storeFactory.getFileSystemAbstraction() );
         }
 
         @Override
@@ -512,7 +560,7 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
 
     ReadTransaction getReadOnlyTransaction()
     {
-        return new ReadTransaction( neoStore );
+        return new ReadTransaction( neoStore, readAhead );
     }
 
     public boolean isReadOnly()
@@ -525,6 +573,45 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         return neoStore.getAllWindowPoolStats();
     }
 
+    /**
+     * Writes the access statistics of each store file that has them to a heatmap file,
+     * in a directory of its own so that they aren't taken for store files.
+     *
+     * @return the written files.
+     */
+    public List<File> dumpPageAccessHeatmaps() throws IOException
+    {
+        File directory = new File( storeDir, HEATMAP_DIRECTORY_NAME );
+        if ( !directory.exists() && !directory.mkdirs() )
+        {
+            throw new IOException( "Unable to create directory " + directory );
+        }
+        List<File> files = new ArrayList<File>();
+        for ( WindowPoolStats stats : getWindowPoolStats() )
+        {
+            if ( !stats.getAccessStatistics().isEnabled() )
+            {
+                continue;
+            }
+            File file = new File( directory, stats.getName() + ".heatmap" );
+            PrintWriter out = new PrintWriter( new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" ) );
+            try
+            {
+                stats.getAccessStatistics().writeHeatmap( stats.getName(), out );
+                if ( out.checkError() )
+                {
+                    throw new IOException( "Unable to write " + file );
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            files.add( file );
+        }
+        return files;
+    }
+
     @Override
     public long getLastCommittedTxId()
     {
@@ -93,7 +93,7 @@ public class NioNeoDbPersistenceSource implements PersistenceSource, EntityIdGen
 
     public NeoStoreTransaction createReadOnlyResourceConnection()
     {
-        return new ReadTransaction( xaDataSourceManager.getNeoStoreDataSource().getNeoStore() );
+        return xaDataSourceManager.getNeoStoreDataSource().getReadOnlyTransaction();
     }
 
     public String toString()
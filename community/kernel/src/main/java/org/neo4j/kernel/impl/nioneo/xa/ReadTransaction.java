@@ -20,7 +20,9 @@
 package org.neo4j.kernel.impl.nioneo.xa;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -43,6 +45,8 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyIndexStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.persistence.NeoStoreTransaction;
@@ -54,10 +58,12 @@ import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 class ReadTransaction implements NeoStoreTransaction
 {
     private final NeoStore neoStore;
+    private final RelationshipReadAhead readAhead;
 
-    public ReadTransaction( NeoStore neoStore )
+    public ReadTransaction( NeoStore neoStore, RelationshipReadAhead readAhead )
     {
         this.neoStore = neoStore;
+        this.readAhead = readAhead;
     }
 
     private NodeStore getNodeStore()
@@ -75,6 +81,11 @@ class ReadTransaction implements NeoStoreTransaction
         return neoStore.getRelationshipStore();
     }
 
+    private RelationshipGroupStore getRelationshipGroupStore()
+    {
+        return neoStore.getRelationshipGroupStore();
+    }
+
     private PropertyStore getPropertyStore()
     {
         return neoStore.getPropertyStore();
@@ -95,18 +106,202 @@ class ReadTransaction implements NeoStoreTransaction
     @Override
     public long getRelationshipChainPosition( long nodeId )
     {
-        return getNodeStore().getRecord( nodeId ).getNextRel();
+        return getRelationshipChainPosition( getNodeStore().getRecord( nodeId ), getRelationshipGroupStore() );
     }
 
     @Override
     public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
             long nodeId, long position )
     {
-        return getMoreRelationships( nodeId, position, getRelGrabSize(), getRelationshipStore() );
+        if ( readAhead != null )
+        {
+            return readAhead.getMoreRelationships( nodeId, position );
+        }
+        return getMoreRelationships( nodeId, position, getRelGrabSize(), getNodeStore(), getRelationshipStore(),
+                getRelationshipGroupStore() );
+    }
+
+    @Override
+    public Map<DirectionWrapper, Iterable<RelationshipRecord>> getRelationshipsOfType( long nodeId, int type )
+    {
+        return getRelationshipsOfType( nodeId, type, getNodeStore(), getRelationshipStore(),
+                getRelationshipGroupStore() );
+    }
+
+    @Override
+    public int getDegree( long nodeId, int type, DirectionWrapper direction )
+    {
+        return getDegree( getNodeStore().getRecord( nodeId ), type, direction, getRelationshipStore(),
+                getRelationshipGroupStore() );
+    }
+
+    /*
+     * The relationships of a dense node are kept in one chain per type and
+     * direction. Those chains are loaded one after the other, in the order of
+     * this array within each group and in the order the groups are linked.
+     */
+    private static final DirectionWrapper[] GROUP_CHAIN_ORDER = new DirectionWrapper[] {
+            DirectionWrapper.OUTGOING, DirectionWrapper.INCOMING, DirectionWrapper.BOTH };
+
+    static long getRelationshipChainPosition( NodeRecord node, RelationshipGroupStore groupStore )
+    {
+        if ( node.isDense() )
+        {
+            return getFirstRelationshipOfGroups( groupStore, node.getFirstGroup(), 0 );
+        }
+        return node.getNextRel();
+    }
+
+    private static long getFirstRelationshipOfGroups( RelationshipGroupStore groupStore, long groupId,
+            int startChain )
+    {
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = groupStore.getRecord( groupId );
+            for ( int i = startChain; i < GROUP_CHAIN_ORDER.length; i++ )
+            {
+                long first = group.getFirst( GROUP_CHAIN_ORDER[i] );
+                if ( first != Record.NO_NEXT_RELATIONSHIP.intValue() )
+                {
+                    return first;
+                }
+            }
+            startChain = 0;
+            groupId = group.getNext();
+        }
+        return Record.NO_NEXT_RELATIONSHIP.intValue();
+    }
+
+    /*
+     * Returns the first relationship of the chain following the one that ended
+     * with the given relationship, or NO_NEXT_RELATIONSHIP if the node isn't dense
+     * or that was the last chain.
+     */
+    private static long getNextChainPosition( long nodeId, RelationshipRecord last, NodeStore nodeStore,
+            RelationshipGroupStore groupStore )
+    {
+        long groupId = nodeStore.getRecord( nodeId ).getFirstGroup();
+        DirectionWrapper direction = last.getFirstNode() == last.getSecondNode() ? DirectionWrapper.BOTH :
+                last.getFirstNode() == nodeId ? DirectionWrapper.OUTGOING : DirectionWrapper.INCOMING;
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = groupStore.getRecord( groupId );
+            if ( group.getType() == last.getType() )
+            {
+                return getFirstRelationshipOfGroups( groupStore, groupId,
+                        Arrays.asList( GROUP_CHAIN_ORDER ).indexOf( direction ) + 1 );
+            }
+            groupId = group.getNext();
+        }
+        return Record.NO_NEXT_RELATIONSHIP.intValue();
+    }
+
+    static Map<DirectionWrapper, Iterable<RelationshipRecord>> getRelationshipsOfType( long nodeId, int type,
+            NodeStore nodeStore, RelationshipStore relStore, RelationshipGroupStore groupStore )
+    {
+        long groupId = groupStore != null ? nodeStore.getRecord( nodeId ).getFirstGroup() :
+                Record.NO_NEXT_RELATIONSHIP.intValue();
+        if ( groupId == Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            return null;
+        }
+        Map<DirectionWrapper, Iterable<RelationshipRecord>> result =
+            new EnumMap<DirectionWrapper, Iterable<RelationshipRecord>>( DirectionWrapper.class );
+        result.put( DirectionWrapper.OUTGOING, Collections.<RelationshipRecord>emptyList() );
+        result.put( DirectionWrapper.INCOMING, Collections.<RelationshipRecord>emptyList() );
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = groupStore.getRecord( groupId );
+            if ( group.getType() == type )
+            {
+                result.put( DirectionWrapper.OUTGOING, getRelationshipChain( nodeId, group.getFirstOut(), relStore ) );
+                result.put( DirectionWrapper.INCOMING, getRelationshipChain( nodeId, group.getFirstIn(), relStore ) );
+                if ( group.getFirstLoop() != Record.NO_NEXT_RELATIONSHIP.intValue() )
+                {
+                    result.put( DirectionWrapper.BOTH, getRelationshipChain( nodeId, group.getFirstLoop(), relStore ) );
+                }
+                break;
+            }
+            groupId = group.getNext();
+        }
+        return result;
+    }
+
+    static int getDegree( NodeRecord node, int type, DirectionWrapper direction, RelationshipStore relStore,
+            RelationshipGroupStore groupStore )
+    {
+        int degree = 0;
+        if ( node.isDense() )
+        {
+            long groupId = node.getFirstGroup();
+            while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+            {
+                RelationshipGroupRecord group = groupStore.getRecord( groupId );
+                if ( type != -1 && group.getType() > type )
+                {
+                    break; // the groups are in type order
+                }
+                if ( type == -1 || group.getType() == type )
+                {
+                    if ( direction != DirectionWrapper.INCOMING )
+                    {
+                        degree += group.getCount( DirectionWrapper.OUTGOING );
+                    }
+                    if ( direction != DirectionWrapper.OUTGOING )
+                    {
+                        degree += group.getCount( DirectionWrapper.INCOMING );
+                    }
+                    degree += group.getCount( DirectionWrapper.BOTH );
+                }
+                groupId = group.getNext();
+            }
+            return degree;
+        }
+        long nodeId = node.getId();
+        long position = node.getNextRel();
+        while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipRecord relRecord = relStore.getChainRecord( position );
+            if ( relRecord == null )
+            {
+                break;
+            }
+            if ( relRecord.inUse() && (type == -1 || relRecord.getType() == type) &&
+                 (direction != DirectionWrapper.OUTGOING || relRecord.getFirstNode() == nodeId) &&
+                 (direction != DirectionWrapper.INCOMING || relRecord.getSecondNode() == nodeId) )
+            {
+                degree++;
+            }
+            position = relRecord.getFirstNode() == nodeId ? relRecord.getFirstNextRel() :
+                    relRecord.getSecondNextRel();
+        }
+        return degree;
+    }
+
+    private static List<RelationshipRecord> getRelationshipChain( long nodeId, long position,
+            RelationshipStore relStore )
+    {
+        List<RelationshipRecord> chain = new ArrayList<RelationshipRecord>();
+        while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipRecord relRecord = relStore.getChainRecord( position );
+            if ( relRecord == null )
+            {
+                break;
+            }
+            if ( relRecord.inUse() )
+            {
+                chain.add( relRecord );
+            }
+            position = relRecord.getFirstNode() == nodeId ? relRecord.getFirstNextRel() :
+                    relRecord.getSecondNextRel();
+        }
+        return chain;
     }
 
     static Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
-            long nodeId, long position, int grabSize, RelationshipStore relStore )
+            long nodeId, long position, int grabSize, NodeStore nodeStore, RelationshipStore relStore,
+            RelationshipGroupStore groupStore )
     {
         // initialCapacity=grabSize saves the lists the trouble of resizing
         List<RelationshipRecord> out = new ArrayList<RelationshipRecord>();
@@ -168,6 +363,10 @@ class ReadTransaction implements NeoStoreTransaction
                     "] is neither firstNode[" + firstNode +
                     "] nor secondNode[" + secondNode + "] for Relationship[" + relRecord.getId() + "]" );
             }
+            if ( position == Record.NO_NEXT_RELATIONSHIP.intValue() && groupStore != null )
+            {
+                position = getNextChainPosition( nodeId, relRecord, nodeStore, groupStore );
+            }
         }
         return Pair.of( result, position );
     }
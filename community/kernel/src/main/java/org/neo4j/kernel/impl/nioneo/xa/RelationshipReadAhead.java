@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.xa;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.helpers.DaemonThreadFactory;
+import org.neo4j.helpers.Pair;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+
+/**
+ * Reads the next batch of relationships of a node in the background while the
+ * batch before it is being iterated over, so that going through the
+ * relationships of a node with many of them doesn't have to wait for one
+ * record read after the other. The other nodes of the relationships read ahead
+ * are read as well, since a traversal is likely to move on to them.
+ * <p>
+ * At most one batch per node is kept. Batches are thrown away when a
+ * transaction changes the relationships of their node, or when too many of
+ * them pile up without being asked for. How many batches were used and thrown
+ * away is kept by the {@link org.neo4j.kernel.impl.nioneo.store.RelationshipStore}
+ * and shows in its {@link org.neo4j.kernel.impl.nioneo.store.WindowPoolStats}.
+ */
+class RelationshipReadAhead
+{
+    private static final int MAX_PENDING_BATCHES = 1000;
+
+    private final NeoStore neoStore;
+    private final ThreadPoolExecutor executor;
+    private final Map<Long, Batch> pending = new LinkedHashMap<Long, Batch>()
+    {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Long, Batch> eldest )
+        {
+            if ( size() > MAX_PENDING_BATCHES )
+            {
+                neoStore.getRelationshipStore().countReadAhead( false );
+                return true;
+            }
+            return false;
+        }
+    };
+
+    RelationshipReadAhead( NeoStore neoStore, int threads )
+    {
+        this.neoStore = neoStore;
+        this.executor = new ThreadPoolExecutor( threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>( MAX_PENDING_BATCHES ),
+                new DaemonThreadFactory( "Relationship read-ahead" ) );
+    }
+
+    Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships( long nodeId,
+            long position )
+    {
+        Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> result = takeBatch( nodeId, position );
+        if ( result == null )
+        {
+            result = load( nodeId, position );
+        }
+        if ( result.other() != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            readAhead( nodeId, result.other() );
+        }
+        return result;
+    }
+
+    /**
+     * Throws away the batch read ahead for the given node, if any. Must be
+     * called after a transaction has written changes to its relationship
+     * chain.
+     */
+    void invalidate( long nodeId )
+    {
+        Batch batch;
+        synchronized ( pending )
+        {
+            batch = pending.remove( nodeId );
+        }
+        if ( batch != null )
+        {
+            neoStore.getRelationshipStore().countReadAhead( false );
+        }
+    }
+
+    void close()
+    {
+        executor.shutdownNow();
+        synchronized ( pending )
+        {
+            pending.clear();
+        }
+    }
+
+    private Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> takeBatch( long nodeId,
+            long position )
+    {
+        Batch batch;
+        synchronized ( pending )
+        {
+            batch = pending.remove( nodeId );
+        }
+        if ( batch == null )
+        {
+            return null;
+        }
+        // A batch still waiting in the queue is cheaper to read right away than to wait for
+        if ( batch.position != position || executor.remove( batch.task ) )
+        {
+            neoStore.getRelationshipStore().countReadAhead( false );
+            return null;
+        }
+        try
+        {
+            Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> result = batch.task.get();
+            neoStore.getRelationshipStore().countReadAhead( true );
+            return result;
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch ( ExecutionException e )
+        {   // The chain changed under our feet, read it again in the calling thread
+        }
+        neoStore.getRelationshipStore().countReadAhead( false );
+        return null;
+    }
+
+    private void readAhead( final long nodeId, final long position )
+    {
+        Batch batch = new Batch( position,
+                new FutureTask<Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long>>(
+                        new Callable<Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long>>()
+                        {
+                            @Override
+                            public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> call()
+                            {
+                                Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> result =
+                                        load( nodeId, position );
+                                readOtherNodes( nodeId, result.first() );
+                                return result;
+                            }
+                        } ) );
+        Batch previous;
+        synchronized ( pending )
+        {
+            previous = pending.put( nodeId, batch );
+        }
+        if ( previous != null )
+        {
+            neoStore.getRelationshipStore().countReadAhead( false );
+        }
+        try
+        {
+            executor.execute( batch.task );
+        }
+        catch ( RejectedExecutionException e )
+        {   // Too much going on already, or shutting down
+            synchronized ( pending )
+            {
+                if ( pending.get( nodeId ) == batch )
+                {
+                    pending.remove( nodeId );
+                }
+            }
+        }
+    }
+
+    private Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> load( long nodeId, long position )
+    {
+        return ReadTransaction.getMoreRelationships( nodeId, position, neoStore.getRelationshipGrabSize(),
+                neoStore.getNodeStore(), neoStore.getRelationshipStore(), neoStore.getRelationshipGroupStore() );
+    }
+
+    private void readOtherNodes( long nodeId, Map<DirectionWrapper, Iterable<RelationshipRecord>> batch )
+    {
+        for ( Iterable<RelationshipRecord> records : batch.values() )
+        {
+            for ( RelationshipRecord record : records )
+            {
+                long otherNode = record.getFirstNode() == nodeId ? record.getSecondNode() : record.getFirstNode();
+                if ( otherNode != nodeId )
+                {
+                    neoStore.getNodeStore().loadLightNode( otherNode );
+                }
+            }
+        }
+    }
+
+    private static class Batch
+    {
+        private final long position;
+        private final FutureTask<Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long>> task;
+
+        Batch( long position, FutureTask<Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long>> task )
+        {
+            this.position = position;
+            this.task = task;
+        }
+    }
+}
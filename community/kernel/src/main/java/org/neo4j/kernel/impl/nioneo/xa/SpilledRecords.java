@@ -0,0 +1,652 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.xa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+import javax.transaction.xa.Xid;
+
+import org.neo4j.helpers.collection.Visitor;
+import org.neo4j.kernel.impl.nioneo.store.AbstractBaseRecord;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+import org.neo4j.kernel.impl.nioneo.store.NeoStoreRecord;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.PrimitiveRecord;
+import org.neo4j.kernel.impl.nioneo.store.PropertyBlock;
+import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
+import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
+import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
+import org.neo4j.kernel.impl.nioneo.store.UnderlyingStorageException;
+import org.neo4j.kernel.impl.transaction.xaframework.InMemoryLogBuffer;
+import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
+import org.neo4j.kernel.impl.util.PrimitiveLongLongMap;
+
+/**
+ * Record changes of a large {@link WriteTransaction}, moved out of the heap
+ * into a file in the store directory. Each record is written as the command
+ * the logical log gets for it, see {@link Command#writeToFile(LogBuffer)},
+ * preceded by the few fields of the record that the log format leaves out but
+ * the transaction still needs, like whether it was created in the transaction.
+ * <p>
+ * A record is either in the transaction or in here. {@link #take(long)} reads
+ * a record back and forgets about it, spilling it again appends a new entry to
+ * the file rather than overwriting the old one.
+ */
+abstract class SpilledRecords<R extends AbstractBaseRecord>
+{
+    static final String FILE_NAME_PREFIX = "nioneo_spilled_tx.";
+
+    // length of what follows the id, and the id
+    private static final int ENTRY_HEADER_SIZE = 4 + 8;
+    private static final int BUFFER_SIZE = 1 << 15;
+    // flag of the transient state of all records
+    private static final int CREATED = 1;
+
+    private final FileSystemAbstraction fileSystem;
+    private final File file;
+    // offset in the file of the live entry of each spilled record
+    private final PrimitiveLongLongMap offsets = new PrimitiveLongLongMap();
+    private final InMemoryLogBuffer entry = new InMemoryLogBuffer();
+    private ByteBuffer writeBuffer = ByteBuffer.allocate( BUFFER_SIZE );
+    private ByteBuffer readBuffer = ByteBuffer.allocate( BUFFER_SIZE );
+    private final ByteBuffer commandBuffer =
+            ByteBuffer.allocate( 9 + Xid.MAXGTRIDSIZE + Xid.MAXBQUALSIZE * 10 );
+    private final ByteBufferChannel commandChannel = new ByteBufferChannel();
+    private final RecordCapture capture = new RecordCapture();
+    private FileChannel channel;
+    // size of the file, not counting what is still in the write buffer
+    private long end;
+
+    SpilledRecords( FileSystemAbstraction fileSystem, File file )
+    {
+        this.fileSystem = fileSystem;
+        this.file = file;
+    }
+
+    static File file( File storeDir, int identifier, String records )
+    {
+        return new File( storeDir, FILE_NAME_PREFIX + identifier + "." + records );
+    }
+
+    abstract Command command( R record );
+
+    abstract void writeTransientState( R record, LogBuffer buffer ) throws IOException;
+
+    /**
+     * Reads the record back from its entry, positioned after the entry
+     * header, from the state written by
+     * {@link #writeTransientState(AbstractBaseRecord, LogBuffer)} and the
+     * command following it.
+     */
+    abstract R read( long id, ByteBuffer entry ) throws IOException;
+
+    int size()
+    {
+        return offsets.size();
+    }
+
+    boolean contains( long id )
+    {
+        return offsets.containsKey( id );
+    }
+
+    void spill( R record )
+    {
+        try
+        {
+            entry.reset();
+            writeTransientState( record, entry );
+            command( record ).writeToFile( entry );
+            int length = entry.size();
+            if ( writeBuffer.remaining() < ENTRY_HEADER_SIZE + length )
+            {
+                flush();
+                if ( writeBuffer.capacity() < ENTRY_HEADER_SIZE + length )
+                {
+                    writeBuffer = ByteBuffer.allocate( ENTRY_HEADER_SIZE + length );
+                }
+            }
+            offsets.put( record.getLongId(), end + writeBuffer.position() );
+            writeBuffer.putInt( length ).putLong( record.getLongId() );
+            // the in memory buffer reads up to the limit, not the remaining bytes
+            writeBuffer.limit( writeBuffer.position() + length );
+            entry.read( writeBuffer );
+            writeBuffer.limit( writeBuffer.capacity() );
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( e );
+        }
+    }
+
+    /**
+     * @return the spilled record with the given id, or {@code null} if it
+     * isn't spilled. It stays spilled, so changes to it are lost.
+     */
+    R get( long id )
+    {
+        long offset = offsets.get( id );
+        if ( offset == PrimitiveLongLongMap.NO_VALUE )
+        {
+            return null;
+        }
+        try
+        {
+            flush();
+            readBuffer.clear();
+            readBuffer.limit( 0 );
+            fill( offset, ENTRY_HEADER_SIZE, false );
+            int length = readBuffer.getInt();
+            readBuffer.getLong();
+            fill( offset + ENTRY_HEADER_SIZE, length, false );
+            return read( id, length );
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( e );
+        }
+    }
+
+    /**
+     * @return the spilled record with the given id, or {@code null} if it
+     * isn't spilled. It is no longer spilled after this call.
+     */
+    R take( long id )
+    {
+        R record = get( id );
+        if ( record != null )
+        {
+            offsets.remove( id );
+        }
+        return record;
+    }
+
+    /**
+     * Visits the spilled records in the order they were spilled in. The
+     * visitor must not spill or take records from this while visiting.
+     *
+     * @return {@code true} if the visitor terminated the visit.
+     */
+    boolean accept( Visitor<R> visitor )
+    {
+        if ( offsets.isEmpty() )
+        {
+            return false;
+        }
+        try
+        {
+            flush();
+            readBuffer.clear();
+            readBuffer.limit( 0 );
+            for ( long position = 0; position < end; )
+            {
+                fill( position, ENTRY_HEADER_SIZE, true );
+                int length = readBuffer.getInt();
+                long id = readBuffer.getLong();
+                fill( position + ENTRY_HEADER_SIZE, length, true );
+                if ( offsets.get( id ) == position )
+                {
+                    if ( visitor.visit( read( id, length ) ) )
+                    {
+                        return true;
+                    }
+                }
+                else
+                {
+                    // an old entry of a record that was taken, and maybe spilled again
+                    readBuffer.position( readBuffer.position() + length );
+                }
+                position += ENTRY_HEADER_SIZE + length;
+            }
+            return false;
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( e );
+        }
+    }
+
+    /**
+     * Forgets all spilled records and deletes the file.
+     */
+    void close()
+    {
+        offsets.clear();
+        writeBuffer.clear();
+        end = 0;
+        if ( channel == null )
+        {
+            return;
+        }
+        try
+        {
+            channel.close();
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( e );
+        }
+        finally
+        {
+            channel = null;
+            fileSystem.deleteFile( file );
+        }
+    }
+
+    private void flush() throws IOException
+    {
+        if ( writeBuffer.position() == 0 )
+        {
+            return;
+        }
+        if ( channel == null )
+        {
+            channel = fileSystem.open( file, "rw" );
+        }
+        writeBuffer.flip();
+        while ( writeBuffer.hasRemaining() )
+        {
+            end += channel.write( writeBuffer, end );
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * Makes sure at least {@code count} bytes are remaining in the read
+     * buffer, its position being at {@code position} in the file. Reads as
+     * much as fits in the buffer if {@code readAhead}, for visiting all
+     * records, otherwise only what is asked for.
+     */
+    private void fill( long position, int count, boolean readAhead ) throws IOException
+    {
+        if ( readBuffer.remaining() >= count )
+        {
+            return;
+        }
+        if ( readBuffer.capacity() < count )
+        {
+            ByteBuffer larger = ByteBuffer.allocate( count );
+            larger.put( readBuffer );
+            readBuffer = larger;
+        }
+        else
+        {
+            readBuffer.compact();
+        }
+        readBuffer.limit( readAhead ? readBuffer.capacity() : count );
+        long filePosition = position + readBuffer.position();
+        while ( readBuffer.position() < count )
+        {
+            int read = channel.read( readBuffer, filePosition );
+            if ( read == -1 )
+            {
+                throw new UnderlyingStorageException( "Unexpected end of " + file + " at " + filePosition );
+            }
+            filePosition += read;
+        }
+        readBuffer.flip();
+    }
+
+    private R read( long id, int length ) throws IOException
+    {
+        int limit = readBuffer.limit();
+        int entryEnd = readBuffer.position() + length;
+        readBuffer.limit( entryEnd );
+        try
+        {
+            return read( id, readBuffer );
+        }
+        finally
+        {
+            readBuffer.limit( limit );
+            readBuffer.position( entryEnd );
+        }
+    }
+
+    /**
+     * Reads the record of the command that follows the transient state in the
+     * entry.
+     */
+    <T extends AbstractBaseRecord> T readCommandRecord( ByteBuffer entry, Class<T> type ) throws IOException
+    {
+        commandChannel.source = entry;
+        Command command = Command.readCommand( null, commandChannel, commandBuffer );
+        if ( command == null )
+        {
+            throw new UnderlyingStorageException( "Incomplete command in " + file );
+        }
+        command.accept( capture );
+        return type.cast( capture.record );
+    }
+
+    static byte flag( boolean value, int flag )
+    {
+        return (byte) (value ? flag : 0);
+    }
+
+    static boolean isSet( byte flags, int flag )
+    {
+        return (flags & flag) != 0;
+    }
+
+    static class Nodes extends SpilledRecords<NodeRecord>
+    {
+        private final NodeStore store;
+
+        Nodes( FileSystemAbstraction fileSystem, File file, NodeStore store )
+        {
+            super( fileSystem, file );
+            this.store = store;
+        }
+
+        @Override
+        Command command( NodeRecord record )
+        {
+            return new Command.NodeCommand( store, record );
+        }
+
+        @Override
+        void writeTransientState( NodeRecord record, LogBuffer buffer ) throws IOException
+        {
+            // the command of a deleted node has no pointers, they are checked in prepare
+            buffer.put( flag( record.isCreated(), CREATED ) )
+                    .putLong( record.getCommittedNextRel() )
+                    .putLong( record.getCommittedNextProp() )
+                    .putLong( record.getNextRel() )
+                    .putLong( record.getNextProp() )
+                    .putLong( record.getFirstGroup() );
+        }
+
+        @Override
+        NodeRecord read( long id, ByteBuffer entry ) throws IOException
+        {
+            byte flags = entry.get();
+            NodeRecord record = new NodeRecord( id, entry.getLong(), entry.getLong() );
+            record.setNextRel( entry.getLong() );
+            record.setNextProp( entry.getLong() );
+            record.setFirstGroup( entry.getLong() );
+            record.setInUse( readCommandRecord( entry, NodeRecord.class ).inUse() );
+            if ( isSet( flags, CREATED ) )
+            {
+                record.setCreated();
+            }
+            return record;
+        }
+    }
+
+    static class Relationships extends SpilledRecords<RelationshipRecord>
+    {
+        private static final int DELETED = 2;
+
+        private final RelationshipStore store;
+
+        Relationships( FileSystemAbstraction fileSystem, File file, RelationshipStore store )
+        {
+            super( fileSystem, file );
+            this.store = store;
+        }
+
+        @Override
+        Command command( RelationshipRecord record )
+        {
+            return new Command.RelationshipCommand( store, record );
+        }
+
+        @Override
+        void writeTransientState( RelationshipRecord record, LogBuffer buffer ) throws IOException
+        {
+            buffer.put( (byte) (flag( record.isCreated(), CREATED ) | flag( !record.inUse(), DELETED )) );
+            if ( !record.inUse() )
+            {
+                // the command of a deleted relationship has no fields, but rollback and
+                // the cache need the nodes and chains it was in
+                buffer.putLong( record.getFirstNode() )
+                        .putLong( record.getSecondNode() )
+                        .putInt( record.getType() )
+                        .putLong( record.getFirstPrevRel() )
+                        .putLong( record.getFirstNextRel() )
+                        .putLong( record.getSecondPrevRel() )
+                        .putLong( record.getSecondNextRel() )
+                        .putLong( record.getNextProp() );
+            }
+        }
+
+        @Override
+        RelationshipRecord read( long id, ByteBuffer entry ) throws IOException
+        {
+            byte flags = entry.get();
+            RelationshipRecord record;
+            if ( isSet( flags, DELETED ) )
+            {
+                record = new RelationshipRecord( id, entry.getLong(), entry.getLong(), entry.getInt() );
+                record.setFirstPrevRel( entry.getLong() );
+                record.setFirstNextRel( entry.getLong() );
+                record.setSecondPrevRel( entry.getLong() );
+                record.setSecondNextRel( entry.getLong() );
+                record.setNextProp( entry.getLong() );
+                record.setInUse( false );
+            }
+            else
+            {
+                record = readCommandRecord( entry, RelationshipRecord.class );
+            }
+            if ( isSet( flags, CREATED ) )
+            {
+                record.setCreated();
+            }
+            return record;
+        }
+    }
+
+    static class RelationshipGroups extends SpilledRecords<RelationshipGroupRecord>
+    {
+        private final RelationshipGroupStore store;
+
+        RelationshipGroups( FileSystemAbstraction fileSystem, File file, RelationshipGroupStore store )
+        {
+            super( fileSystem, file );
+            this.store = store;
+        }
+
+        @Override
+        Command command( RelationshipGroupRecord record )
+        {
+            return new Command.RelationshipGroupCommand( store, record );
+        }
+
+        @Override
+        void writeTransientState( RelationshipGroupRecord record, LogBuffer buffer ) throws IOException
+        {
+            buffer.put( flag( record.isCreated(), CREATED ) );
+        }
+
+        @Override
+        RelationshipGroupRecord read( long id, ByteBuffer entry ) throws IOException
+        {
+            byte flags = entry.get();
+            RelationshipGroupRecord record = readCommandRecord( entry, RelationshipGroupRecord.class );
+            if ( isSet( flags, CREATED ) )
+            {
+                record.setCreated();
+            }
+            return record;
+        }
+    }
+
+    static class Properties extends SpilledRecords<PropertyRecord>
+    {
+        private static final int CHANGED = 2;
+
+        private final PropertyStore store;
+
+        Properties( FileSystemAbstraction fileSystem, File file, PropertyStore store )
+        {
+            super( fileSystem, file );
+            this.store = store;
+        }
+
+        @Override
+        Command command( PropertyRecord record )
+        {
+            return new Command.PropertyCommand( store, record );
+        }
+
+        @Override
+        void writeTransientState( PropertyRecord record, LogBuffer buffer ) throws IOException
+        {
+            buffer.put( (byte) (flag( record.isCreated(), CREATED ) | flag( record.isChanged(), CHANGED )) );
+            List<PropertyBlock> blocks = record.getPropertyBlocks();
+            buffer.put( (byte) blocks.size() );
+            for ( PropertyBlock block : blocks )
+            {
+                buffer.put( flag( block.isCreated(), CREATED ) );
+            }
+        }
+
+        @Override
+        PropertyRecord read( long id, ByteBuffer entry ) throws IOException
+        {
+            byte flags = entry.get();
+            byte[] blockFlags = new byte[entry.get()];
+            entry.get( blockFlags );
+            PropertyRecord record = readCommandRecord( entry, PropertyRecord.class );
+            List<PropertyBlock> blocks = record.getPropertyBlocks();
+            for ( int i = 0; i < blockFlags.length; i++ )
+            {
+                if ( isSet( blockFlags[i], CREATED ) )
+                {
+                    blocks.get( i ).setCreated();
+                }
+            }
+            if ( isSet( flags, CREATED ) )
+            {
+                record.setCreated();
+            }
+            if ( isSet( flags, CHANGED ) )
+            {
+                // the owner id came with the command, only the flag needs restoring
+                record.setChanged( owner( record ) );
+            }
+            return record;
+        }
+
+        private static PrimitiveRecord owner( PropertyRecord record )
+        {
+            if ( record.getNodeId() != -1 )
+            {
+                return new NodeRecord( record.getNodeId(), -1, -1 );
+            }
+            if ( record.getRelId() != -1 )
+            {
+                return new RelationshipRecord( record.getRelId(), -1, -1, -1 );
+            }
+            return new NeoStoreRecord();
+        }
+    }
+
+    private static class ByteBufferChannel implements ReadableByteChannel
+    {
+        private ByteBuffer source;
+
+        @Override
+        public int read( ByteBuffer destination )
+        {
+            if ( !source.hasRemaining() )
+            {
+                return -1;
+            }
+            int count = Math.min( destination.remaining(), source.remaining() );
+            ByteBuffer slice = source.duplicate();
+            slice.limit( slice.position() + count );
+            destination.put( slice );
+            source.position( source.position() + count );
+            return count;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return true;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    private static class RecordCapture implements CommandRecordVisitor
+    {
+        private AbstractBaseRecord record;
+
+        @Override
+        public void visitNode( NodeRecord record )
+        {
+            this.record = record;
+        }
+
+        @Override
+        public void visitRelationship( RelationshipRecord record )
+        {
+            this.record = record;
+        }
+
+        @Override
+        public void visitRelationshipGroup( RelationshipGroupRecord record )
+        {
+            this.record = record;
+        }
+
+        @Override
+        public void visitProperty( PropertyRecord record )
+        {
+            this.record = record;
+        }
+
+        @Override
+        public void visitRelationshipType( RelationshipTypeRecord record )
+        {
+            this.record = record;
+        }
+
+        @Override
+        public void visitPropertyIndex( PropertyIndexRecord record )
+        {
+            this.record = record;
+        }
+
+        @Override
+        public void visitNeoStore( NeoStoreRecord record )
+        {
+            this.record = record;
+        }
+    }
+}
@@ -32,6 +32,7 @@ import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.transaction.XidImpl;
@@ -176,6 +177,11 @@ public class TransactionWriter
         write( new Command.RelationshipCommand( null, relationship ) );
     }
 
+    public void add( RelationshipGroupRecord group ) throws IOException
+    {
+        write( new Command.RelationshipGroupCommand( null, group ) );
+    }
+
     public void add( PropertyRecord property ) throws IOException
     {
         write( new Command.PropertyCommand( null, property ) );
@@ -21,15 +21,18 @@ package org.neo4j.kernel.impl.nioneo.xa;
 
 import static org.neo4j.kernel.impl.nioneo.store.PropertyStore.encodeString;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
@@ -41,10 +44,13 @@ import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.helpers.Exceptions;
 import org.neo4j.helpers.Pair;
+import org.neo4j.helpers.collection.Visitor;
 import org.neo4j.kernel.impl.core.PropertyIndex;
 import org.neo4j.kernel.impl.core.TransactionState;
+import org.neo4j.kernel.impl.nioneo.store.AbstractBaseRecord;
 import org.neo4j.kernel.impl.nioneo.store.ConstraintViolationException;
 import org.neo4j.kernel.impl.nioneo.store.DynamicRecord;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.nioneo.store.InvalidRecordException;
 import org.neo4j.kernel.impl.nioneo.store.NameData;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
@@ -60,6 +66,8 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
@@ -70,6 +78,7 @@ import org.neo4j.kernel.impl.transaction.xaframework.XaConnection;
 import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
 import org.neo4j.kernel.impl.transaction.xaframework.XaTransaction;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.PrimitiveLongLongMap;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 
@@ -82,6 +91,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     private final Map<Long,NodeRecord> nodeRecords = new HashMap<Long,NodeRecord>();
     private final Map<Long,PropertyRecord> propertyRecords = new HashMap<Long,PropertyRecord>();
     private final Map<Long,RelationshipRecord> relRecords = new HashMap<Long,RelationshipRecord>();
+    private final Map<Long,RelationshipGroupRecord> relGroupRecords = new HashMap<Long,RelationshipGroupRecord>();
     private Map<Integer,RelationshipTypeRecord> relTypeRecords;
     private Map<Integer,PropertyIndexRecord> propIndexRecords;
     private NeoStoreRecord neoStoreRecord;
@@ -89,22 +99,43 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     private final ArrayList<Command.NodeCommand> nodeCommands = new ArrayList<Command.NodeCommand>();
     private final ArrayList<Command.PropertyCommand> propCommands = new ArrayList<Command.PropertyCommand>();
     private final ArrayList<Command.RelationshipCommand> relCommands = new ArrayList<Command.RelationshipCommand>();
+    private final ArrayList<Command.RelationshipGroupCommand> relGroupCommands =
+            new ArrayList<Command.RelationshipGroupCommand>();
     private ArrayList<Command.RelationshipTypeCommand> relTypeCommands;
     private ArrayList<Command.PropertyIndexCommand> propIndexCommands;
     private Command.NeoStoreCommand neoStoreCommand;
 
+    // degrees of the sparse nodes touched, counted up to the dense node threshold
+    private final PrimitiveLongLongMap sparseNodeDegrees = new PrimitiveLongLongMap();
+    // types of the relationship chains of dense nodes changed in this transaction
+    private final Map<Long,Set<Integer>> changedDenseNodes = new HashMap<Long,Set<Integer>>();
+
+    // records are moved out of the heap when there are more than this many, 0 keeps them all in the heap
+    private final int spillThreshold;
+    private final FileSystemAbstraction fileSystem;
+    // all null until records are first spilled
+    private SpilledRecords<NodeRecord> spilledNodes;
+    private SpilledRecords<PropertyRecord> spilledProperties;
+    private SpilledRecords<RelationshipRecord> spilledRels;
+    private SpilledRecords<RelationshipGroupRecord> spilledRelGroups;
+
     private final NeoStore neoStore;
+    private final RelationshipReadAhead readAhead;
     private boolean committed = false;
     private boolean prepared = false;
 
     private final TransactionState state;
     private XaConnection xaConnection;
 
-    WriteTransaction( int identifier, XaLogicalLog log, TransactionState state, NeoStore neoStore )
+    WriteTransaction( int identifier, XaLogicalLog log, TransactionState state, NeoStore neoStore,
+            RelationshipReadAhead readAhead, int spillThreshold, FileSystemAbstraction fileSystem )
     {
         super( identifier, log, state );
         this.neoStore = neoStore;
+        this.readAhead = readAhead;
         this.state = state;
+        this.spillThreshold = spillThreshold;
+        this.fileSystem = fileSystem;
     }
 
     @Override
@@ -113,12 +144,12 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         if ( isRecovered() )
         {
             return nodeCommands.size() == 0 && propCommands.size() == 0 &&
-                relCommands.size() == 0 && relTypeCommands == null &&
-                propIndexCommands == null;
+                relCommands.size() == 0 && relGroupCommands.size() == 0 &&
+                relTypeCommands == null && propIndexCommands == null;
         }
         return nodeRecords.size() == 0 && relRecords.size() == 0 &&
-            propertyRecords.size() == 0 && relTypeRecords == null &&
-            propIndexRecords == null;
+            relGroupRecords.size() == 0 && propertyRecords.size() == 0 &&
+            spilledSize() == 0 && relTypeRecords == null && propIndexRecords == null;
     }
 
     @Override
@@ -132,6 +163,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     {
         int noOfCommands = nodeRecords.size() +
                            relRecords.size() +
+                           relGroupRecords.size() +
                            propertyRecords.size() +
                            (propIndexRecords != null ? propIndexRecords.size() : 0) +
                            (relTypeRecords != null ? relTypeRecords.size() : 0);
@@ -165,8 +197,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         }
         for ( NodeRecord record : nodeRecords.values() )
         {
-            if ( !record.inUse() && record.getNextRel() !=
-                Record.NO_NEXT_RELATIONSHIP.intValue() )
+            if ( stillHasRelationships( record ) )
             {
                 throw Exceptions.withCause( new XAException( XAException.XA_RBINTEGRITY ),
                         new ConstraintViolationException("Node record " + record + " still has relationships"));
@@ -176,6 +207,28 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             nodeCommands.add( command );
             commands.add( command );
         }
+        if ( spilledNodes != null )
+        {
+            final NodeRecord[] violating = new NodeRecord[1];
+            spilledNodes.accept( new Visitor<NodeRecord>()
+            {
+                @Override
+                public boolean visit( NodeRecord record )
+                {
+                    if ( stillHasRelationships( record ) )
+                    {
+                        violating[0] = record;
+                        return true;
+                    }
+                    return false;
+                }
+            } );
+            if ( violating[0] != null )
+            {
+                throw Exceptions.withCause( new XAException( XAException.XA_RBINTEGRITY ),
+                        new ConstraintViolationException("Node record " + violating[0] + " still has relationships"));
+            }
+        }
         for ( RelationshipRecord record : relRecords.values() )
         {
             Command.RelationshipCommand command =
@@ -184,6 +237,14 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             relCommands.add( command );
             commands.add( command );
         }
+        for ( RelationshipGroupRecord record : relGroupRecords.values() )
+        {
+            Command.RelationshipGroupCommand command =
+                new Command.RelationshipGroupCommand(
+                    neoStore.getRelationshipGroupStore(), record );
+            relGroupCommands.add( command );
+            commands.add( command );
+        }
         if ( neoStoreRecord != null )
         {
             neoStoreCommand = new Command.NeoStoreCommand( neoStore, neoStoreRecord );
@@ -217,6 +278,33 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         {
             addCommand(command);
         }
+        // spilled records go straight from their file to the logical log, and are read again at commit
+        if ( spilledNodes != null )
+        {
+            addSpilledCommands( spilledNodes );
+            addSpilledCommands( spilledRels );
+            addSpilledCommands( spilledRelGroups );
+            addSpilledCommands( spilledProperties );
+        }
+    }
+
+    private static boolean stillHasRelationships( NodeRecord record )
+    {
+        return !record.inUse() && (record.getNextRel() !=
+            Record.NO_NEXT_RELATIONSHIP.intValue() || record.isDense());
+    }
+
+    private <R extends AbstractBaseRecord> void addSpilledCommands( final SpilledRecords<R> spilled )
+    {
+        spilled.accept( new Visitor<R>()
+        {
+            @Override
+            public boolean visit( R record )
+            {
+                addCommand( spilled.command( record ) );
+                return false;
+            }
+        } );
     }
 
     protected void intercept( List<Command> commands )
@@ -235,6 +323,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         {
             relCommands.add( (Command.RelationshipCommand) xaCommand );
         }
+        else if ( xaCommand instanceof Command.RelationshipGroupCommand )
+        {
+            relGroupCommands.add( (Command.RelationshipGroupCommand) xaCommand );
+        }
         else if ( xaCommand instanceof Command.PropertyCommand )
         {
             propCommands.add( (Command.PropertyCommand) xaCommand );
@@ -290,21 +382,15 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             }
             for ( NodeRecord record : nodeRecords.values() )
             {
-                if ( freeIds && record.isCreated() )
-                {
-                    getNodeStore().freeId( record.getId() );
-                }
-                removeNodeFromCache( record.getId() );
+                rollbackNode( record, freeIds );
             }
             for ( RelationshipRecord record : relRecords.values() )
             {
-                if ( freeIds && record.isCreated() )
-                {
-                    getRelationshipStore().freeId( record.getId() );
-                }
-                removeRelationshipFromCache( record.getId() );
-                patchDeletedRelationshipNodes( record.getId(), record.getFirstNode(), record.getFirstNextRel(),
-                        record.getSecondNode(), record.getSecondNextRel() );
+                rollbackRelationship( record, freeIds );
+            }
+            for ( RelationshipGroupRecord record : relGroupRecords.values() )
+            {
+                rollbackRelationshipGroup( record, freeIds );
             }
             if ( neoStoreRecord != null )
             {
@@ -327,48 +413,126 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             }
             for ( PropertyRecord record : propertyRecords.values() )
             {
-                if ( record.getNodeId() != -1 )
-                {
-                    removeNodeFromCache( record.getNodeId() );
-                }
-                else if ( record.getRelId() != -1 )
-                {
-                    removeRelationshipFromCache( record.getRelId() );
-                }
-                if ( record.isCreated() )
+                rollbackProperty( record, freeIds );
+            }
+            if ( spilledNodes != null )
+            {
+                rollbackSpilled( freeIds );
+            }
+        }
+        finally
+        {
+            clear();
+        }
+    }
+
+    private void rollbackNode( NodeRecord record, boolean freeIds )
+    {
+        if ( freeIds && record.isCreated() )
+        {
+            getNodeStore().freeId( record.getId() );
+        }
+        removeNodeFromCache( record.getId() );
+    }
+
+    private void rollbackRelationship( RelationshipRecord record, boolean freeIds )
+    {
+        if ( freeIds && record.isCreated() )
+        {
+            getRelationshipStore().freeId( record.getId() );
+        }
+        removeRelationshipFromCache( record.getId() );
+        patchDeletedRelationshipNodes( record.getId(), record.getFirstNode(), record.getFirstNextRel(),
+                record.getSecondNode(), record.getSecondNextRel() );
+    }
+
+    private void rollbackRelationshipGroup( RelationshipGroupRecord record, boolean freeIds )
+    {
+        if ( freeIds && record.isCreated() )
+        {
+            getRelationshipGroupStore().freeId( record.getId() );
+        }
+        removeNodeFromCache( record.getOwningNode() );
+    }
+
+    private void rollbackProperty( PropertyRecord record, boolean freeIds )
+    {
+        if ( record.getNodeId() != -1 )
+        {
+            removeNodeFromCache( record.getNodeId() );
+        }
+        else if ( record.getRelId() != -1 )
+        {
+            removeRelationshipFromCache( record.getRelId() );
+        }
+        if ( record.isCreated() )
+        {
+            if ( freeIds ) getPropertyStore().freeId( record.getId() );
+            for ( PropertyBlock block : record.getPropertyBlocks() )
+            {
+                for ( DynamicRecord dynamicRecord : block.getValueRecords() )
                 {
-                    if ( freeIds ) getPropertyStore().freeId( record.getId() );
-                    for ( PropertyBlock block : record.getPropertyBlocks() )
+                    if ( dynamicRecord.isCreated() )
                     {
-                        for ( DynamicRecord dynamicRecord : block.getValueRecords() )
+                        if ( dynamicRecord.getType() == PropertyType.STRING.intValue() )
+                        {
+                            getPropertyStore().freeStringBlockId(
+                                    dynamicRecord.getId() );
+                        }
+                        else if ( dynamicRecord.getType() == PropertyType.ARRAY.intValue() )
+                        {
+                            getPropertyStore().freeArrayBlockId(
+                                    dynamicRecord.getId() );
+                        }
+                        else
                         {
-                            if ( dynamicRecord.isCreated() )
-                            {
-                                if ( dynamicRecord.getType() == PropertyType.STRING.intValue() )
-                                {
-                                    getPropertyStore().freeStringBlockId(
-                                            dynamicRecord.getId() );
-                                }
-                                else if ( dynamicRecord.getType() == PropertyType.ARRAY.intValue() )
-                                {
-                                    getPropertyStore().freeArrayBlockId(
-                                            dynamicRecord.getId() );
-                                }
-                                else
-                                {
-                                    throw new InvalidRecordException(
-                                            "Unknown type on " + dynamicRecord );
-                                }
-                            }
+                            throw new InvalidRecordException(
+                                    "Unknown type on " + dynamicRecord );
                         }
                     }
                 }
             }
         }
-        finally
+    }
+
+    private void rollbackSpilled( final boolean freeIds )
+    {
+        spilledNodes.accept( new Visitor<NodeRecord>()
         {
-            clear();
-        }
+            @Override
+            public boolean visit( NodeRecord record )
+            {
+                rollbackNode( record, freeIds );
+                return false;
+            }
+        } );
+        spilledRels.accept( new Visitor<RelationshipRecord>()
+        {
+            @Override
+            public boolean visit( RelationshipRecord record )
+            {
+                rollbackRelationship( record, freeIds );
+                return false;
+            }
+        } );
+        spilledRelGroups.accept( new Visitor<RelationshipGroupRecord>()
+        {
+            @Override
+            public boolean visit( RelationshipGroupRecord record )
+            {
+                rollbackRelationshipGroup( record, freeIds );
+                return false;
+            }
+        } );
+        spilledProperties.accept( new Visitor<PropertyRecord>()
+        {
+            @Override
+            public boolean visit( PropertyRecord record )
+            {
+                rollbackProperty( record, freeIds );
+                return false;
+            }
+        } );
     }
 
     private void removeRelationshipTypeFromCache( int id )
@@ -470,10 +634,15 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             // primitives
             java.util.Collections.sort( nodeCommands, sorter );
             java.util.Collections.sort( relCommands, sorter );
+            java.util.Collections.sort( relGroupCommands, sorter );
             java.util.Collections.sort( propCommands, sorter );
-            executeCreated( isRecovered, propCommands, relCommands, nodeCommands );
-            executeModified( isRecovered, propCommands, relCommands, nodeCommands );
-            executeDeleted( propCommands, relCommands, nodeCommands );
+            executeCreated( isRecovered, propCommands, relCommands, relGroupCommands, nodeCommands );
+            executeSpilled( SpilledPhase.CREATED );
+            executeModified( isRecovered, propCommands, relCommands, relGroupCommands, nodeCommands );
+            executeSpilled( SpilledPhase.MODIFIED );
+            executeDeleted( propCommands, relCommands, relGroupCommands, nodeCommands );
+            executeSpilled( SpilledPhase.DELETED );
+            invalidateReadAhead();
             if ( isRecovered )
                 neoStore.setRecoveredStatus( true );
             try
@@ -488,6 +657,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 {
                     updateFirstRelationships();
                     state.commitCows(); // updates the cached primitives
+                    invalidateDenseNodes();
                 }
                 neoStore.setLastCommittedTx( getCommitTxId() );
             }
@@ -511,10 +681,46 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         return xaConnection.delistResource( tx, tmsuccess );
     }
 
+    private void invalidateDenseNodes()
+    {
+        for ( Map.Entry<Long,Set<Integer>> entry : changedDenseNodes.entrySet() )
+        {
+            state.invalidateDenseNode( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    private void invalidateReadAhead()
+    {
+        if ( readAhead == null )
+        {
+            return;
+        }
+        for ( Command.RelationshipCommand command : relCommands )
+        {
+            command.invalidateReadAhead( readAhead );
+        }
+        for ( Command.RelationshipGroupCommand command : relGroupCommands )
+        {
+            command.invalidateReadAhead( readAhead );
+        }
+    }
+
     private void updateFirstRelationships()
     {
         for ( NodeRecord record : nodeRecords.values() )
             state.setFirstIds( record.getId(), record.getNextRel(), record.getNextProp() );
+        if ( spilledNodes != null )
+        {
+            spilledNodes.accept( new Visitor<NodeRecord>()
+            {
+                @Override
+                public boolean visit( NodeRecord record )
+                {
+                    state.setFirstIds( record.getId(), record.getNextRel(), record.getNextProp() );
+                    return false;
+                }
+            } );
+        }
     }
 
     private void executeCreated( boolean removeFromCache, List<? extends Command>... commands )
@@ -564,11 +770,89 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         }
     }
 
+    /**
+     * Executes the commands of the spilled records of one phase of the commit,
+     * in the same order of record types as for the records kept in the heap.
+     * Recovered transactions never have spilled records.
+     */
+    private void executeSpilled( SpilledPhase phase )
+    {
+        if ( spilledNodes == null )
+        {
+            return;
+        }
+        executeSpilled( spilledProperties, phase );
+        executeSpilled( spilledRels, phase );
+        executeSpilled( spilledRelGroups, phase );
+        executeSpilled( spilledNodes, phase );
+    }
+
+    private <R extends AbstractBaseRecord> void executeSpilled( final SpilledRecords<R> spilled,
+            final SpilledPhase phase )
+    {
+        spilled.accept( new Visitor<R>()
+        {
+            @Override
+            public boolean visit( R record )
+            {
+                Command command = spilled.command( record );
+                if ( phase.includes( command ) )
+                {
+                    command.execute();
+                    if ( phase == SpilledPhase.DELETED )
+                    {
+                        command.removeFromCache( state );
+                    }
+                    if ( readAhead != null && command instanceof Command.RelationshipCommand )
+                    {
+                        ((Command.RelationshipCommand) command).invalidateReadAhead( readAhead );
+                    }
+                    else if ( readAhead != null && command instanceof Command.RelationshipGroupCommand )
+                    {
+                        ((Command.RelationshipGroupCommand) command).invalidateReadAhead( readAhead );
+                    }
+                }
+                return false;
+            }
+        } );
+    }
+
+    private static enum SpilledPhase
+    {
+        CREATED
+        {
+            @Override
+            boolean includes( Command command )
+            {
+                return command.isCreated() && !command.isDeleted();
+            }
+        },
+        MODIFIED
+        {
+            @Override
+            boolean includes( Command command )
+            {
+                return !command.isCreated() && !command.isDeleted();
+            }
+        },
+        DELETED
+        {
+            @Override
+            boolean includes( Command command )
+            {
+                return command.isDeleted();
+            }
+        };
+
+        abstract boolean includes( Command command );
+    }
+
     private void clear()
     {
         nodeRecords.clear();
         propertyRecords.clear();
         relRecords.clear();
+        relGroupRecords.clear();
         relTypeRecords = null;
         propIndexRecords = null;
         neoStoreRecord = null;
@@ -577,8 +861,95 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         propCommands.clear();
         propIndexCommands = null;
         relCommands.clear();
+        relGroupCommands.clear();
         relTypeCommands = null;
         neoStoreCommand = null;
+
+        sparseNodeDegrees.clear();
+        changedDenseNodes.clear();
+
+        if ( spilledNodes != null )
+        {
+            spilledNodes.close();
+            spilledProperties.close();
+            spilledRels.close();
+            spilledRelGroups.close();
+            spilledNodes = null;
+            spilledProperties = null;
+            spilledRels = null;
+            spilledRelGroups = null;
+        }
+    }
+
+    /**
+     * Moves all node, relationship, relationship group and property records
+     * out of the heap if there are more than {@link #spillThreshold} of them.
+     * Called first thing in the operations changing records, when no record
+     * is being referenced by the operation itself.
+     */
+    private void spillIfNeeded()
+    {
+        if ( spillThreshold == 0 || nodeRecords.size() + relRecords.size() + relGroupRecords.size() +
+                propertyRecords.size() <= spillThreshold )
+        {
+            return;
+        }
+        spill();
+    }
+
+    private void spill()
+    {
+        if ( spilledNodes == null )
+        {
+            File storeDir = neoStore.getStorageFileName().getParentFile();
+            int identifier = getIdentifier();
+            spilledNodes = new SpilledRecords.Nodes( fileSystem,
+                    SpilledRecords.file( storeDir, identifier, "nodes" ), getNodeStore() );
+            spilledProperties = new SpilledRecords.Properties( fileSystem,
+                    SpilledRecords.file( storeDir, identifier, "properties" ), getPropertyStore() );
+            spilledRels = new SpilledRecords.Relationships( fileSystem,
+                    SpilledRecords.file( storeDir, identifier, "relationships" ), getRelationshipStore() );
+            spilledRelGroups = new SpilledRecords.RelationshipGroups( fileSystem,
+                    SpilledRecords.file( storeDir, identifier, "groups" ), getRelationshipGroupStore() );
+        }
+        spill( nodeRecords, spilledNodes );
+        spill( propertyRecords, spilledProperties );
+        spill( relRecords, spilledRels );
+        spill( relGroupRecords, spilledRelGroups );
+    }
+
+    private static <R extends AbstractBaseRecord> void spill( Map<Long,R> records, SpilledRecords<R> spilled )
+    {
+        for ( R record : records.values() )
+        {
+            spilled.spill( record );
+        }
+        records.clear();
+    }
+
+    private int spilledSize()
+    {
+        if ( spilledNodes == null )
+        {
+            return 0;
+        }
+        return spilledNodes.size() + spilledProperties.size() + spilledRels.size() + spilledRelGroups.size();
+    }
+
+    private static <R extends AbstractBaseRecord> R unspill( SpilledRecords<R> spilled, Map<Long,R> records,
+            long id )
+    {
+        R record = spilled != null ? spilled.take( id ) : null;
+        if ( record != null )
+        {
+            records.put( id, record );
+        }
+        return record;
+    }
+
+    private static <R extends AbstractBaseRecord> R spilled( SpilledRecords<R> spilled, long id )
+    {
+        return spilled != null ? spilled.get( id ) : null;
     }
 
     private RelationshipTypeStore getRelationshipTypeStore()
@@ -601,6 +972,11 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         return neoStore.getRelationshipStore();
     }
 
+    private RelationshipGroupStore getRelationshipGroupStore()
+    {
+        return neoStore.getRelationshipGroupStore();
+    }
+
     private PropertyStore getPropertyStore()
     {
         return neoStore.getPropertyStore();
@@ -638,6 +1014,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public ArrayMap<Integer,PropertyData> nodeDelete( long nodeId )
     {
+        spillIfNeeded();
         NodeRecord nodeRecord = getNodeRecord( nodeId );
         if ( nodeRecord == null )
         {
@@ -657,6 +1034,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public ArrayMap<Integer,PropertyData> relDelete( long id )
     {
+        spillIfNeeded();
         RelationshipRecord record = getRelationshipRecord( id );
         if ( record == null )
         {
@@ -861,18 +1239,44 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         {
             return Record.NO_NEXT_RELATIONSHIP.intValue();
         }
-        return getNodeStore().getRecord( nodeId ).getNextRel();
+        return ReadTransaction.getRelationshipChainPosition( getNodeStore().getRecord( nodeId ),
+                getRelationshipGroupStore() );
     }
 
     @Override
     public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships( long nodeId,
         long position )
     {
-        return ReadTransaction.getMoreRelationships( nodeId, position, getRelGrabSize(), getRelationshipStore() );
+        if ( readAhead != null )
+        {
+            return readAhead.getMoreRelationships( nodeId, position );
+        }
+        return ReadTransaction.getMoreRelationships( nodeId, position, getRelGrabSize(), getNodeStore(),
+                getRelationshipStore(), getRelationshipGroupStore() );
+    }
+
+    @Override
+    public Map<DirectionWrapper, Iterable<RelationshipRecord>> getRelationshipsOfType( long nodeId, int type )
+    {
+        return ReadTransaction.getRelationshipsOfType( nodeId, type, getNodeStore(), getRelationshipStore(),
+                getRelationshipGroupStore() );
+    }
+
+    @Override
+    public int getDegree( long nodeId, int type, DirectionWrapper direction )
+    {
+        return ReadTransaction.getDegree( getNodeStore().getRecord( nodeId ), type, direction,
+                getRelationshipStore(), getRelationshipGroupStore() );
     }
 
     private void updateNodes( RelationshipRecord rel )
     {
+        boolean loop = rel.getFirstNode() == rel.getSecondNode();
+        decrementCount( rel.getFirstNode(), rel, loop ? DirectionWrapper.BOTH : DirectionWrapper.OUTGOING );
+        if ( !loop )
+        {
+            decrementCount( rel.getSecondNode(), rel, DirectionWrapper.INCOMING );
+        }
         if ( rel.getFirstPrevRel() == Record.NO_PREV_RELATIONSHIP.intValue() )
         {
             NodeRecord firstNode = getNodeRecord( rel.getFirstNode() );
@@ -881,9 +1285,11 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 firstNode = getNodeStore().getRecord( rel.getFirstNode() );
                 addNodeRecord( firstNode );
             }
-            firstNode.setNextRel( rel.getFirstNextRel() );
+            updateChainHead( firstNode, rel, loop ? DirectionWrapper.BOTH : DirectionWrapper.OUTGOING,
+                    rel.getFirstNextRel() );
         }
-        if ( rel.getSecondPrevRel() == Record.NO_PREV_RELATIONSHIP.intValue() )
+        // the second pointers of a loop are the same as the first ones
+        if ( rel.getSecondPrevRel() == Record.NO_PREV_RELATIONSHIP.intValue() && !loop )
         {
             NodeRecord secondNode = getNodeRecord( rel.getSecondNode() );
             if ( secondNode == null )
@@ -891,13 +1297,275 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 secondNode = getNodeStore().getRecord( rel.getSecondNode() );
                 addNodeRecord( secondNode );
             }
-            secondNode.setNextRel( rel.getSecondNextRel() );
+            updateChainHead( secondNode, rel, DirectionWrapper.INCOMING, rel.getSecondNextRel() );
+        }
+        decrementDegree( rel.getFirstNode() );
+        if ( !loop )
+        {
+            decrementDegree( rel.getSecondNode() );
+        }
+    }
+
+    /*
+     * Keeps the relationship count of the group of a dense node up to date as
+     * rel is deleted. Sparse nodes don't keep any count.
+     */
+    private void decrementCount( long nodeId, RelationshipRecord rel, DirectionWrapper direction )
+    {
+        NodeRecord node = getNodeRecord( nodeId );
+        if ( node == null )
+        {
+            node = getNodeStore().getRecord( nodeId );
+            if ( !node.isDense() )
+            {
+                return;
+            }
+            addNodeRecord( node );
+        }
+        if ( !node.isDense() )
+        {
+            return;
+        }
+        RelationshipGroupRecord group = getRelationshipGroup( node, rel.getType() );
+        if ( group == null )
+        {
+            throw new InvalidRecordException( "No relationship group of type " + rel.getType() +
+                    " for " + node + " with " + rel );
+        }
+        group.setCount( direction, group.getCount( direction ) - 1 );
+    }
+
+    /*
+     * Sets the first relationship of the chain that the deleted rel was first in.
+     * For dense nodes that is the chain of the type and direction of rel and a
+     * group that runs out of relationships is removed.
+     */
+    private void updateChainHead( NodeRecord node, RelationshipRecord rel, DirectionWrapper direction, long first )
+    {
+        if ( !node.isDense() )
+        {
+            node.setNextRel( first );
+            return;
+        }
+        RelationshipGroupRecord group = getRelationshipGroup( node, rel.getType() );
+        if ( group == null )
+        {
+            throw new InvalidRecordException( "No relationship group of type " + rel.getType() +
+                    " for " + node + " with " + rel );
+        }
+        group.setFirst( direction, first );
+        if ( group.isEmpty() )
+        {
+            deleteRelationshipGroup( node, group );
+        }
+        denseNodeChanged( node.getId(), rel.getType() );
+    }
+
+    private void deleteRelationshipGroup( NodeRecord node, RelationshipGroupRecord group )
+    {
+        group.setInUse( false );
+        if ( group.isFirst() )
+        {
+            node.setFirstGroup( group.getNext() );
+            if ( group.getNext() != Record.NO_NEXT_RELATIONSHIP.intValue() )
+            {
+                getRelationshipGroupRecordForUpdate( group.getNext() ).setFirst( true );
+            }
+            return;
+        }
+        long groupId = node.getFirstGroup();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord previous = getRelationshipGroupRecord( groupId );
+            if ( previous.getNext() == group.getId() )
+            {
+                getRelationshipGroupRecordForUpdate( groupId ).setNext( group.getNext() );
+                return;
+            }
+            groupId = previous.getNext();
+        }
+        throw new InvalidRecordException( group + " not in the group chain of " + node );
+    }
+
+    /*
+     * Returns the group of the given type of a dense node, ready for update,
+     * or null if the node doesn't have one.
+     */
+    private RelationshipGroupRecord getRelationshipGroup( NodeRecord node, int type )
+    {
+        long groupId = node.getFirstGroup();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = getRelationshipGroupRecord( groupId );
+            if ( group.getType() == type )
+            {
+                return getRelationshipGroupRecordForUpdate( groupId );
+            }
+            groupId = group.getNext();
+        }
+        return null;
+    }
+
+    /*
+     * The groups of a node are kept in type order, a new group is linked in
+     * after the last group of a lower type.
+     */
+    private RelationshipGroupRecord getOrCreateRelationshipGroup( NodeRecord node, int type )
+    {
+        RelationshipGroupRecord previous = null;
+        long groupId = node.getFirstGroup();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = getRelationshipGroupRecord( groupId );
+            if ( group.getType() == type )
+            {
+                return getRelationshipGroupRecordForUpdate( groupId );
+            }
+            if ( group.getType() > type )
+            {
+                break;
+            }
+            previous = group;
+            groupId = group.getNext();
+        }
+        RelationshipGroupRecord group =
+                new RelationshipGroupRecord( getRelationshipGroupStore().nextId(), type, node.getId() );
+        group.setInUse( true );
+        group.setCreated();
+        group.setNext( groupId );
+        if ( previous == null )
+        {
+            group.setFirst( true );
+            if ( node.isDense() )
+            {
+                getRelationshipGroupRecordForUpdate( node.getFirstGroup() ).setFirst( false );
+            }
+            node.setFirstGroup( group.getId() );
+        }
+        else
+        {
+            getRelationshipGroupRecordForUpdate( previous.getId() ).setNext( group.getId() );
+        }
+        addRelationshipGroupRecord( group );
+        return group;
+    }
+
+    private void denseNodeChanged( long nodeId, int type )
+    {
+        Set<Integer> types = changedDenseNodes.get( nodeId );
+        if ( types == null )
+        {
+            types = new HashSet<Integer>();
+            changedDenseNodes.put( nodeId, types );
+        }
+        types.add( type );
+    }
+
+    private void incrementDegree( NodeRecord node )
+    {
+        int threshold = neoStore.getDenseNodeThreshold();
+        if ( threshold == 0 || node.isDense() )
+        {
+            return;
+        }
+        long degree = sparseNodeDegrees.get( node.getId() );
+        if ( degree == PrimitiveLongLongMap.NO_VALUE )
+        {
+            degree = node.isCreated() ? 0 : countRelationships( node, threshold );
+        }
+        if ( degree >= threshold )
+        {
+            sparseNodeDegrees.remove( node.getId() );
+            convertToDense( node );
+        }
+        else
+        {
+            sparseNodeDegrees.put( node.getId(), degree + 1 );
+        }
+    }
+
+    private void decrementDegree( long nodeId )
+    {
+        long degree = sparseNodeDegrees.get( nodeId );
+        if ( degree != PrimitiveLongLongMap.NO_VALUE )
+        {
+            sparseNodeDegrees.put( nodeId, degree - 1 );
+        }
+    }
+
+    /*
+     * Counts the relationships of a sparse node, but no more than limit of them
+     * since all that matters is whether or not it has reached the threshold.
+     */
+    private int countRelationships( NodeRecord node, int limit )
+    {
+        int count = 0;
+        long relId = node.getNextRel();
+        while ( relId != Record.NO_NEXT_RELATIONSHIP.intValue() && count < limit )
+        {
+            RelationshipRecord rel = getRelationshipRecord( relId );
+            if ( rel == null )
+            {
+                rel = getRelationshipStore().getRecord( relId );
+            }
+            count++;
+            relId = rel.getFirstNode() == node.getId() ? rel.getFirstNextRel() : rel.getSecondNextRel();
+        }
+        return count;
+    }
+
+    /*
+     * Moves the relationships of a node from its single chain to one chain per
+     * type and direction. Only the pointers of this node's side of each
+     * relationship change, the chains of the other nodes stay as they are.
+     * The node is write locked by the transaction adding relationships to it,
+     * which keeps others off its chain, so the relationships aren't locked.
+     */
+    private void convertToDense( NodeRecord node )
+    {
+        List<RelationshipRecord> chain = new ArrayList<RelationshipRecord>();
+        long relId = node.getNextRel();
+        while ( relId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipRecord rel = getRelationshipRecord( relId );
+            if ( rel == null )
+            {
+                rel = getRelationshipStore().getRecord( relId );
+                addRelationshipRecord( rel );
+            }
+            chain.add( rel );
+            relId = rel.getFirstNode() == node.getId() ? rel.getFirstNextRel() : rel.getSecondNextRel();
+        }
+        node.setNextRel( Record.NO_NEXT_RELATIONSHIP.intValue() );
+        // relationships are inserted first in their new chains, going backwards keeps them in order
+        for ( int i = chain.size() - 1; i >= 0; i-- )
+        {
+            RelationshipRecord rel = chain.get( i );
+            RelationshipGroupRecord group = getOrCreateRelationshipGroup( node, rel.getType() );
+            DirectionWrapper direction = rel.getFirstNode() == rel.getSecondNode() ? DirectionWrapper.BOTH :
+                    rel.getFirstNode() == node.getId() ? DirectionWrapper.OUTGOING : DirectionWrapper.INCOMING;
+            long first = group.getFirst( direction );
+            if ( rel.getFirstNode() == node.getId() )
+            {
+                rel.setFirstPrevRel( Record.NO_PREV_RELATIONSHIP.intValue() );
+                rel.setFirstNextRel( first );
+            }
+            if ( rel.getSecondNode() == node.getId() )
+            {
+                rel.setSecondPrevRel( Record.NO_PREV_RELATIONSHIP.intValue() );
+                rel.setSecondNextRel( first );
+            }
+            connect( node, first, rel );
+            group.setFirst( direction, rel.getId() );
+            group.setCount( direction, group.getCount( direction ) + 1 );
+            denseNodeChanged( node.getId(), rel.getType() );
         }
     }
 
     @Override
     public void relRemoveProperty( long relId, PropertyData propertyData )
     {
+        spillIfNeeded();
         RelationshipRecord relRecord = getRelationshipRecord( relId );
         if ( relRecord == null )
         {
@@ -971,6 +1639,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     {
         PropertyRecord propertyRecord = propertyRecords.get( propertyData.getId() );
         if ( propertyRecord == null )
+        {
+            propertyRecord = spilled( spilledProperties, propertyData.getId() );
+        }
+        if ( propertyRecord == null )
         {
             propertyRecord = getPropertyStore().getRecord( propertyData.getId() );
         }
@@ -992,6 +1664,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public void nodeRemoveProperty( long nodeId, PropertyData propertyData )
     {
+        spillIfNeeded();
         NodeRecord nodeRecord = getNodeRecord( nodeId );
         if ( nodeRecord == null )
         {
@@ -1106,6 +1779,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     public PropertyData relChangeProperty( long relId,
             PropertyData propertyData, Object value )
     {
+        spillIfNeeded();
         RelationshipRecord relRecord = getRelationshipRecord( relId );
         if ( relRecord == null )
         {
@@ -1123,6 +1797,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     public PropertyData nodeChangeProperty( long nodeId,
             PropertyData propertyData, Object value )
     {
+        spillIfNeeded();
         NodeRecord nodeRecord = getNodeRecord( nodeId );
         if ( nodeRecord == null )
         {
@@ -1193,6 +1868,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     public PropertyData relAddProperty( long relId,
             PropertyIndex index, Object value )
     {
+        spillIfNeeded();
         RelationshipRecord relRecord = getRelationshipRecord( relId );
         if ( relRecord == null )
         {
@@ -1217,6 +1893,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     public PropertyData nodeAddProperty( long nodeId, PropertyIndex index,
         Object value )
     {
+        spillIfNeeded();
         NodeRecord nodeRecord = getNodeRecord( nodeId );
         if ( nodeRecord == null )
         {
@@ -1300,6 +1977,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public void relationshipCreate( long id, int type, long firstNodeId, long secondNodeId )
     {
+        spillIfNeeded();
         NodeRecord firstNode = getNodeRecord( firstNodeId );
         if ( firstNode == null )
         {
@@ -1335,24 +2013,60 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     {
         assert firstNode.getNextRel() != rel.getId();
         assert secondNode.getNextRel() != rel.getId();
-        rel.setFirstNextRel( firstNode.getNextRel() );
-        rel.setSecondNextRel( secondNode.getNextRel() );
-        connect( firstNode, rel );
-        connect( secondNode, rel );
-        firstNode.setNextRel( rel.getId() );
-        secondNode.setNextRel( rel.getId() );
+        boolean loop = firstNode == secondNode;
+        incrementDegree( firstNode );
+        if ( !loop )
+        {
+            incrementDegree( secondNode );
+        }
+        RelationshipGroupRecord firstGroup = firstNode.isDense() ?
+                getOrCreateRelationshipGroup( firstNode, rel.getType() ) : null;
+        RelationshipGroupRecord secondGroup = loop ? firstGroup : secondNode.isDense() ?
+                getOrCreateRelationshipGroup( secondNode, rel.getType() ) : null;
+        DirectionWrapper firstDirection = loop ? DirectionWrapper.BOTH : DirectionWrapper.OUTGOING;
+        DirectionWrapper secondDirection = loop ? DirectionWrapper.BOTH : DirectionWrapper.INCOMING;
+        long firstNext = firstGroup != null ? firstGroup.getFirst( firstDirection ) : firstNode.getNextRel();
+        long secondNext = secondGroup != null ? secondGroup.getFirst( secondDirection ) : secondNode.getNextRel();
+        rel.setFirstNextRel( firstNext );
+        rel.setSecondNextRel( secondNext );
+        connect( firstNode, firstNext, rel );
+        connect( secondNode, secondNext, rel );
+        if ( firstGroup != null )
+        {
+            firstGroup.setCount( firstDirection, firstGroup.getCount( firstDirection ) + 1 );
+        }
+        if ( secondGroup != null && !loop )
+        {
+            secondGroup.setCount( secondDirection, secondGroup.getCount( secondDirection ) + 1 );
+        }
+        setChainHead( firstNode, firstGroup, firstDirection, rel );
+        setChainHead( secondNode, secondGroup, secondDirection, rel );
     }
 
-    private void connect( NodeRecord node, RelationshipRecord rel )
+    private void setChainHead( NodeRecord node, RelationshipGroupRecord group, DirectionWrapper direction,
+            RelationshipRecord rel )
     {
-        if ( node.getNextRel() != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        if ( group == null )
         {
-            Relationship lockableRel = new LockableRelationship( node.getNextRel() );
+            node.setNextRel( rel.getId() );
+        }
+        else
+        {
+            group.setFirst( direction, rel.getId() );
+            denseNodeChanged( node.getId(), rel.getType() );
+        }
+    }
+
+    private void connect( NodeRecord node, long next, RelationshipRecord rel )
+    {
+        if ( next != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            Relationship lockableRel = new LockableRelationship( next );
             getWriteLock( lockableRel );
-            RelationshipRecord nextRel = getRelationshipRecord( node.getNextRel() );
+            RelationshipRecord nextRel = getRelationshipRecord( next );
             if ( nextRel == null )
             {
-                nextRel = getRelationshipStore().getRecord( node.getNextRel() );
+                nextRel = getRelationshipStore().getRecord( next );
                 addRelationshipRecord( nextRel );
             }
             boolean changed = false;
@@ -1376,6 +2090,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public void nodeCreate( long nodeId )
     {
+        spillIfNeeded();
         NodeRecord nodeRecord = new NodeRecord( nodeId, Record.NO_NEXT_RELATIONSHIP.intValue(), Record.NO_NEXT_PROPERTY.intValue() );
         nodeRecord.setInUse( true );
         nodeRecord.setCreated();
@@ -1489,7 +2204,8 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
 
     NodeRecord getNodeRecord( long nodeId )
     {
-        return nodeRecords.get( nodeId );
+        NodeRecord record = nodeRecords.get( nodeId );
+        return record != null ? record : unspill( spilledNodes, nodeRecords, nodeId );
     }
 
     void addRelationshipRecord( RelationshipRecord record )
@@ -1499,7 +2215,38 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
 
     RelationshipRecord getRelationshipRecord( long relId )
     {
-        return relRecords.get( relId );
+        RelationshipRecord record = relRecords.get( relId );
+        return record != null ? record : unspill( spilledRels, relRecords, relId );
+    }
+
+    void addRelationshipGroupRecord( RelationshipGroupRecord record )
+    {
+        relGroupRecords.put( record.getId(), record );
+    }
+
+    RelationshipGroupRecord getRelationshipGroupRecord( long groupId )
+    {
+        RelationshipGroupRecord record = relGroupRecords.get( groupId );
+        if ( record == null )
+        {
+            record = unspill( spilledRelGroups, relGroupRecords, groupId );
+        }
+        return record != null ? record : getRelationshipGroupStore().getRecord( groupId );
+    }
+
+    RelationshipGroupRecord getRelationshipGroupRecordForUpdate( long groupId )
+    {
+        RelationshipGroupRecord record = relGroupRecords.get( groupId );
+        if ( record == null )
+        {
+            record = unspill( spilledRelGroups, relGroupRecords, groupId );
+        }
+        if ( record == null )
+        {
+            record = getRelationshipGroupStore().getRecord( groupId );
+            addRelationshipGroupRecord( record );
+        }
+        return record;
     }
 
     void addPropertyRecord( PropertyRecord record )
@@ -1512,6 +2259,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     {
         PropertyRecord result = propertyRecords.get( propertyId );
         if ( result == null )
+        {
+            result = unspill( spilledProperties, propertyRecords, propertyId );
+        }
+        if ( result == null )
         {
             if ( light )
             {
@@ -1677,7 +2428,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public RelIdArray getCreatedNodes()
     {
-        RelIdArray createdNodes = new RelIdArray( 0 );
+        final RelIdArray createdNodes = new RelIdArray( 0 );
         for ( NodeRecord record : nodeRecords.values() )
         {
             if ( record.isCreated() )
@@ -1686,13 +2437,28 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 createdNodes.add( record.getId(), DirectionWrapper.OUTGOING );
             }
         }
+        if ( spilledNodes != null )
+        {
+            spilledNodes.accept( new Visitor<NodeRecord>()
+            {
+                @Override
+                public boolean visit( NodeRecord record )
+                {
+                    if ( record.isCreated() )
+                    {
+                        createdNodes.add( record.getId(), DirectionWrapper.OUTGOING );
+                    }
+                    return false;
+                }
+            } );
+        }
         return createdNodes;
     }
 
     @Override
     public RelIdArray getCreatedRelationships()
     {
-        RelIdArray createdRelationships = new RelIdArray( 0 );
+        final RelIdArray createdRelationships = new RelIdArray( 0 );
         for ( RelationshipRecord record : relRecords.values() )
         {
             if ( record.isCreated() )
@@ -1701,6 +2467,21 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 createdRelationships.add( record.getId(), DirectionWrapper.OUTGOING );
             }
         }
+        if ( spilledRels != null )
+        {
+            spilledRels.accept( new Visitor<RelationshipRecord>()
+            {
+                @Override
+                public boolean visit( RelationshipRecord record )
+                {
+                    if ( record.isCreated() )
+                    {
+                        createdRelationships.add( record.getId(), DirectionWrapper.OUTGOING );
+                    }
+                    return false;
+                }
+            } );
+        }
         return createdRelationships;
     }
     
@@ -1708,6 +2489,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     public boolean isNodeCreated( long nodeId )
     {
         NodeRecord record = nodeRecords.get( nodeId );
+        if ( record == null )
+        {
+            record = spilled( spilledNodes, nodeId );
+        }
         if ( record != null )
         {
             return record.isCreated();
@@ -1719,6 +2504,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     public boolean isRelationshipCreated( long relId )
     {
         RelationshipRecord record = relRecords.get( relId );
+        if ( record == null )
+        {
+            record = spilled( spilledRels, relId );
+        }
         if ( record != null )
         {
             return record.isCreated();
@@ -1810,6 +2599,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public PropertyData graphAddProperty( PropertyIndex index, Object value )
     {
+        spillIfNeeded();
         PropertyBlock block = new PropertyBlock();
         block.setCreated();
         /*
@@ -1827,12 +2617,14 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     public PropertyData graphChangeProperty( PropertyData propertyData, Object value )
     {
+        spillIfNeeded();
         return primitiveChangeProperty( getOrLoadNeoStoreRecord(), propertyData, value, RecordAdded.GRAPH );
     }
 
     @Override
     public void graphRemoveProperty( PropertyData propertyData )
     {
+        spillIfNeeded();
         removeProperty( getOrLoadNeoStoreRecord(), propertyData, RecordAdded.GRAPH );
     }
 
@@ -299,6 +299,31 @@ public interface NeoStoreTransaction
     public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
             long nodeId, long position );
 
+    /**
+     * Loads all relationships of the given type of a dense node, where they
+     * are kept in chains of their own.
+     *
+     * @param nodeId the node to load relationships for.
+     * @param type the type of the relationships to load.
+     * @return the relationships per direction, or {@code null} if the node
+     * isn't dense.
+     */
+    public Map<DirectionWrapper, Iterable<RelationshipRecord>> getRelationshipsOfType( long nodeId, int type );
+
+    /**
+     * Counts the committed relationships of a node. Dense nodes keep the count
+     * in their relationship groups, for other nodes the chain is walked without
+     * loading anything but the relationship records.
+     *
+     * @param nodeId the node to count relationships for.
+     * @param type the type of the relationships to count, or -1 to count
+     * relationships of all types.
+     * @param direction the direction of the relationships to count, loops are
+     * counted once in any direction.
+     * @return the number of matching relationships of the node.
+     */
+    public int getDegree( long nodeId, int type, DirectionWrapper direction );
+
     /**
      * Returns an array view of the ids of the nodes that have been created in
      * this transaction.
@@ -106,6 +106,16 @@ public class PersistenceManager
         return getReadOnlyResource().getMoreRelationships( nodeId, position );
     }
 
+    public Map<DirectionWrapper, Iterable<RelationshipRecord>> getRelationshipsOfType( long nodeId, int type )
+    {
+        return getReadOnlyResource().getRelationshipsOfType( nodeId, type );
+    }
+
+    public int getDegree( long nodeId, int type, DirectionWrapper direction )
+    {
+        return getReadOnlyResource().getDegree( nodeId, type, direction );
+    }
+
     public ArrayMap<Integer,PropertyData> loadNodeProperties( long nodeId, boolean light )
     {
         return getReadOnlyResourceIfPossible().nodeLoadProperties( nodeId, light );
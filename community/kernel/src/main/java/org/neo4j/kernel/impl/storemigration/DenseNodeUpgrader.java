@@ -0,0 +1,292 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.storemigration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.neo4j.helpers.UTF8;
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
+import org.neo4j.kernel.impl.nioneo.store.DynamicArrayStore;
+import org.neo4j.kernel.impl.nioneo.store.DynamicStringStore;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.PropertyIndexStore;
+import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeStore;
+import org.neo4j.kernel.impl.util.PrimitiveLongLongMap;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Upgrades a store of the previous version, v0.A.0, in place. Node records of that version have no room to tell
+ * that the relationship field of a dense node holds its first relationship group, so the node store is rewritten
+ * with an extra byte per record and the version of every store is bumped, nothing else changes.
+ * <p>
+ * Unlike {@link StoreUpgrader} the store doesn't have to be cleanly shut down, the logical logs are left as they
+ * are and recovered once the store is upgraded, since node commands of the previous version read the same. The
+ * node store is written next to the old one and replaces it last, an interrupted upgrade is done again from the
+ * start the next time the store is opened.
+ */
+public class DenseNodeUpgrader
+{
+    public static final String FROM_VERSION = "v0.A.0";
+
+    private static final int FROM_NODE_RECORD_SIZE = 9;
+
+    /*
+     * Initialized by the static block below.
+     */
+    private static final Map<String, String> fileSuffixesToTypeDescriptors;
+
+    static
+    {
+        Map<String, String> types = new HashMap<String, String>();
+        types.put( "", NeoStore.TYPE_DESCRIPTOR );
+        types.put( ".propertystore.db", PropertyStore.TYPE_DESCRIPTOR );
+        types.put( ".propertystore.db.arrays", DynamicArrayStore.TYPE_DESCRIPTOR );
+        types.put( ".propertystore.db.index", PropertyIndexStore.TYPE_DESCRIPTOR );
+        types.put( ".propertystore.db.index.keys", DynamicStringStore.TYPE_DESCRIPTOR );
+        types.put( ".propertystore.db.strings", DynamicStringStore.TYPE_DESCRIPTOR );
+        types.put( ".relationshipstore.db", RelationshipStore.TYPE_DESCRIPTOR );
+        types.put( ".relationshipgroupstore.db", RelationshipGroupStore.TYPE_DESCRIPTOR );
+        types.put( ".relationshiptypestore.db", RelationshipTypeStore.TYPE_DESCRIPTOR );
+        types.put( ".relationshiptypestore.db.names", DynamicStringStore.TYPE_DESCRIPTOR );
+        fileSuffixesToTypeDescriptors = Collections.unmodifiableMap( types );
+    }
+
+    private final FileSystemAbstraction fs;
+    private final StringLogger msgLog;
+
+    public DenseNodeUpgrader( FileSystemAbstraction fs, StringLogger msgLog )
+    {
+        this.fs = fs;
+        this.msgLog = msgLog;
+    }
+
+    /**
+     * @return whether the store is of the previous version, or an upgrade of it was interrupted.
+     */
+    public boolean needsUpgrade( File neoStoreFile ) throws IOException
+    {
+        if ( !fs.fileExists( neoStoreFile ) )
+        {
+            return false;
+        }
+        return fs.fileExists( upgradedNodeStore( neoStoreFile ) )
+               || NeoStore.getStoreVersion( fs, neoStoreFile ) == NeoStore.versionStringToLong( FROM_VERSION )
+               || hasTrailer( neoStoreFile, NeoStore.TYPE_DESCRIPTOR + " " + FROM_VERSION );
+    }
+
+    public void upgrade( File neoStoreFile ) throws IOException
+    {
+        File nodeStore = nodeStore( neoStoreFile );
+        File upgradedNodeStore = upgradedNodeStore( neoStoreFile );
+        if ( fs.fileExists( upgradedNodeStore ) )
+        {
+            if ( !fs.fileExists( nodeStore ) )
+            {
+                // interrupted as the upgraded node store was about to replace the old one
+                fs.renameFile( upgradedNodeStore, nodeStore );
+                return;
+            }
+            fs.deleteFile( upgradedNodeStore );
+        }
+        msgLog.logMessage( "Upgrading store " + neoStoreFile.getParentFile() + " from " + FROM_VERSION + " to " +
+                CommonAbstractStore.ALL_STORES_VERSION, true );
+
+        writeNodeStore( nodeStore, upgradedNodeStore, readFirstGroups( neoStoreFile ) );
+        for ( Map.Entry<String, String> file : fileSuffixesToTypeDescriptors.entrySet() )
+        {
+            File storeFile = new File( neoStoreFile.getPath() + file.getKey() );
+            if ( fs.fileExists( storeFile ) )
+            {
+                bumpTrailer( storeFile, file.getValue() );
+            }
+        }
+        // the store version record of stores from 1.5.M02 may be missing, it is added when the store is opened
+        if ( NeoStore.getStoreVersion( fs, neoStoreFile ) == NeoStore.versionStringToLong( FROM_VERSION ) )
+        {
+            NeoStore.setStoreVersion( fs, neoStoreFile,
+                    NeoStore.versionStringToLong( CommonAbstractStore.ALL_STORES_VERSION ) );
+        }
+        fs.deleteFile( nodeStore );
+        fs.renameFile( upgradedNodeStore, nodeStore );
+        msgLog.logMessage( "Upgraded store " + neoStoreFile.getParentFile(), true );
+    }
+
+    /*
+     * Stores of the previous version may have relationship groups already, dense
+     * nodes are told by the group that is the first one of the node.
+     */
+    private PrimitiveLongLongMap readFirstGroups( File neoStoreFile ) throws IOException
+    {
+        PrimitiveLongLongMap firstGroups = new PrimitiveLongLongMap();
+        File groupStore = new File( neoStoreFile.getPath() + ".relationshipgroupstore.db" );
+        if ( !fs.fileExists( groupStore ) )
+        {
+            return firstGroups;
+        }
+        FileChannel channel = fs.open( groupStore, "r" );
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.allocate( RelationshipGroupStore.RECORD_SIZE );
+            long records = channel.size() / RelationshipGroupStore.RECORD_SIZE;
+            for ( long id = 0; id < records; id++ )
+            {
+                buffer.clear();
+                channel.read( buffer, id * RelationshipGroupStore.RECORD_SIZE );
+                buffer.flip();
+                // in use and first in the group chain of the node, see RelationshipGroupStore
+                byte header = buffer.get();
+                if ( (header & 0x3) != 0x3 )
+                {
+                    continue;
+                }
+                long typeInt = buffer.getInt();
+                buffer.position( buffer.position() + 16 );
+                long owningNode = (buffer.getInt() & 0xFFFFFFFFL) | ((typeInt & 0xE000000L) << 7);
+                firstGroups.put( owningNode, id );
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+        return firstGroups;
+    }
+
+    private void writeNodeStore( File from, File to, PrimitiveLongLongMap firstGroups ) throws IOException
+    {
+        String fromTrailer = NodeStore.TYPE_DESCRIPTOR + " " + FROM_VERSION;
+        boolean clean = hasTrailer( from, fromTrailer );
+        FileChannel source = fs.open( from, "r" );
+        FileChannel target = fs.create( to );
+        try
+        {
+            long size = source.size() - (clean ? UTF8.encode( fromTrailer ).length : 0);
+            long records = size / FROM_NODE_RECORD_SIZE;
+            ByteBuffer record = ByteBuffer.allocate( FROM_NODE_RECORD_SIZE );
+            ByteBuffer out = ByteBuffer.allocate( NodeStore.RECORD_SIZE * 1024 );
+            for ( long id = 0; id < records; id++ )
+            {
+                record.clear();
+                source.read( record, id * FROM_NODE_RECORD_SIZE );
+                record.flip();
+                long firstGroup = firstGroups.get( id );
+                boolean dense = firstGroup != PrimitiveLongLongMap.NO_VALUE && (record.get( 0 ) & 0x1) != 0;
+                if ( dense )
+                {
+                    // [    ,xxx ] higher bits of the first group, in place of those of the first relationship
+                    record.put( 0, (byte) ((record.get( 0 ) & ~0xE) | ((firstGroup & 0x700000000L) >> 31)) );
+                    record.putInt( 1, (int) firstGroup );
+                }
+                out.put( record ).put( dense ? (byte) 1 : 0 );
+                if ( !out.hasRemaining() )
+                {
+                    write( target, out );
+                }
+            }
+            if ( clean )
+            {
+                write( target, out );
+                out.put( UTF8.encode( NodeStore.TYPE_DESCRIPTOR + " " + CommonAbstractStore.ALL_STORES_VERSION ) );
+            }
+            write( target, out );
+            target.force( false );
+        }
+        finally
+        {
+            source.close();
+            target.close();
+        }
+    }
+
+    private static void write( FileChannel channel, ByteBuffer buffer ) throws IOException
+    {
+        buffer.flip();
+        while ( buffer.hasRemaining() )
+        {
+            channel.write( buffer );
+        }
+        buffer.clear();
+    }
+
+    /*
+     * Stores that weren't cleanly shut down have no trailer, they get one when
+     * they are recovered.
+     */
+    private void bumpTrailer( File storeFile, String typeDescriptor ) throws IOException
+    {
+        if ( !hasTrailer( storeFile, typeDescriptor + " " + FROM_VERSION ) )
+        {
+            return;
+        }
+        byte[] version = UTF8.encode( CommonAbstractStore.ALL_STORES_VERSION );
+        FileChannel channel = fs.open( storeFile, "rw" );
+        try
+        {
+            channel.position( channel.size() - version.length );
+            channel.write( ByteBuffer.wrap( version ) );
+            channel.force( false );
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    private boolean hasTrailer( File storeFile, String trailer ) throws IOException
+    {
+        byte[] expected = UTF8.encode( trailer );
+        FileChannel channel = fs.open( storeFile, "r" );
+        try
+        {
+            if ( channel.size() < expected.length )
+            {
+                return false;
+            }
+            ByteBuffer found = ByteBuffer.allocate( expected.length );
+            channel.read( found, channel.size() - expected.length );
+            return trailer.equals( UTF8.decode( found.array() ) );
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    private static File nodeStore( File neoStoreFile )
+    {
+        return new File( neoStoreFile.getPath() + ".nodestore.db" );
+    }
+
+    private static File upgradedNodeStore( File neoStoreFile )
+    {
+        return new File( nodeStore( neoStoreFile ).getPath() + ".upgrade" );
+    }
+}
@@ -40,6 +40,13 @@ public class StoreFiles
             "neostore.relationshiptypestore.db.names",
     };
 
+    /**
+     * Store files that stores created by older versions don't have.
+     */
+    public static final String[] optionalFileNames = {
+            "neostore.relationshipgroupstore.db",
+    };
+
     /**
      * Moves a database's store files from one directory
      * to another. Since it just renames files (the standard way of moving with
@@ -58,6 +65,14 @@ public class StoreFiles
             moveFile( fs, fileName, fromDirectory, toDirectory );
             moveFile( fs, fileName + ".id", fromDirectory, toDirectory );
         }
+        for ( String fileName : optionalFileNames )
+        {
+            if ( fs.fileExists( new File( fromDirectory, fileName ) ) )
+            {
+                moveFile( fs, fileName, fromDirectory, toDirectory );
+                moveFile( fs, fileName + ".id", fromDirectory, toDirectory );
+            }
+        }
     }
 
     /**
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction;
+
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+
+/**
+ * Periodically looks for deadlocks among the transactions waiting in a
+ * {@link RagManager}, see {@link RagManager#detectDeadlocks()}. Transactions
+ * check for deadlocks themselves before they start to wait, so this is only a
+ * safety net and is disabled unless an interval is configured.
+ */
+public class DeadlockDetector extends LifecycleAdapter
+{
+    private final RagManager ragManager;
+    private final long intervalMillis;
+    private final StringLogger logger;
+    private volatile DetectorThread detector;
+
+    public DeadlockDetector( RagManager ragManager, long intervalMillis, StringLogger logger )
+    {
+        this.ragManager = ragManager;
+        this.intervalMillis = intervalMillis;
+        this.logger = logger;
+    }
+
+    @Override
+    public void start() throws Throwable
+    {
+        if ( intervalMillis > 0 )
+        {
+            detector = new DetectorThread();
+            detector.start();
+        }
+    }
+
+    @Override
+    public void stop() throws Throwable
+    {
+        if ( detector != null )
+        {
+            detector.stopDetecting();
+            detector = null;
+        }
+    }
+
+    private class DetectorThread extends Thread
+    {
+        private volatile boolean detect = true;
+
+        DetectorThread()
+        {
+            super( "Deadlock detector" );
+            setDaemon( true );
+        }
+
+        @Override
+        public synchronized void run()
+        {
+            while ( detect )
+            {
+                try
+                {
+                    this.wait( intervalMillis );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.interrupted();
+                }
+                if ( !detect )
+                {
+                    break;
+                }
+                try
+                {
+                    int woken = ragManager.detectDeadlocks();
+                    if ( woken > 0 )
+                    {
+                        logger.logMessage( "Deadlock detector woke up " + woken +
+                                " deadlocked transaction(s) so they can be rolled back" );
+                    }
+                }
+                catch ( RuntimeException e )
+                {
+                    logger.logMessage( "Deadlock detection failed", e );
+                }
+            }
+        }
+
+        synchronized void stopDetecting()
+        {
+            detect = false;
+            this.notifyAll();
+        }
+    }
+}
@@ -49,6 +49,22 @@ public interface LockManager
 
     long getDetectedDeadlockCount();
 
+    /**
+     * @return the number of times a transaction about to wait for a lock has
+     *         checked whether that wait would lead to a deadlock.
+     */
+    long getDeadlockCheckCount();
+
+    /**
+     * @return the total time, in nanoseconds, spent checking for deadlocks.
+     */
+    long getDeadlockCheckTimeNanos();
+
+    /**
+     * @return the longest time, in nanoseconds, a single deadlock check has taken.
+     */
+    long getMaxDeadlockCheckTimeNanos();
+
     void dumpLocksOnResource( Object resource, Logging logging );
 
     List<LockInfo> getAllLocks();
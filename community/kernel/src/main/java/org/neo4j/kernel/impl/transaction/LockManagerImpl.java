@@ -50,24 +50,107 @@ import org.neo4j.kernel.logging.Logging;
  * <p>
  * LockManager just maps locks to resources and they do all the hard work
  * together with a resource allocation graph.
+ * <p>
+ * The resource to lock mapping is partitioned into a number of stripes, each
+ * one a separate map guarded by its own monitor. A resource always hashes to
+ * the same stripe, so creating, marking and removing the {@link RWLock} of a
+ * resource is serialized exactly as with a single table, while transactions
+ * locking resources in different stripes don't contend with each other. The
+ * mark count of each {@link RWLock} is what keeps an entry in its stripe
+ * while a transaction is on its way to acquire it.
  */
 public class LockManagerImpl implements LockManager
 {
-    private final Map<Object,RWLock> resourceLockMap =
-        new HashMap<Object,RWLock>();
+    private final Map<Object,RWLock>[] lockStripes;
+    private final int stripeMask;
 
     private final RagManager ragManager;
 
     public LockManagerImpl( RagManager ragManager )
     {
+        this( ragManager, 1 );
+    }
+
+    /**
+     * @param ragManager the resource allocation graph used for deadlock detection.
+     * @param stripes the number of stripes to partition the lock table into,
+     *            rounded up to the nearest power of two.
+     */
+    @SuppressWarnings( "unchecked" )
+    public LockManagerImpl( RagManager ragManager, int stripes )
+    {
+        if ( stripes < 1 )
+        {
+            throw new IllegalArgumentException( "Number of lock stripes must be positive, was " + stripes );
+        }
+        int size = Integer.highestOneBit( stripes );
+        if ( size < stripes )
+        {
+            size <<= 1;
+        }
+        this.lockStripes = new Map[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            lockStripes[i] = new HashMap<Object,RWLock>();
+        }
+        this.stripeMask = size - 1;
         this.ragManager = ragManager;
     }
 
+    public int getNumberOfStripes()
+    {
+        return lockStripes.length;
+    }
+
+    private Map<Object,RWLock> stripeFor( Object resource )
+    {
+        // spread the hash code so that resources with sequential ids,
+        // i.e. nodes and relationships, end up in different stripes
+        int hash = resource.hashCode();
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return lockStripes[hash & stripeMask];
+    }
+
+    private RWLock getMarkedLock( Object resource )
+    {
+        Map<Object,RWLock> resourceLockMap = stripeFor( resource );
+        synchronized ( resourceLockMap )
+        {
+            RWLock lock = resourceLockMap.get( resource );
+            if ( lock == null )
+            {
+                lock = new RWLock( resource, ragManager );
+                resourceLockMap.put( resource, lock );
+            }
+            lock.mark();
+            return lock;
+        }
+    }
+
     public long getDetectedDeadlockCount()
     {
         return ragManager.getDeadlockCount();
     }
 
+    @Override
+    public long getDeadlockCheckCount()
+    {
+        return ragManager.getDeadlockCheckCount();
+    }
+
+    @Override
+    public long getDeadlockCheckTimeNanos()
+    {
+        return ragManager.getDeadlockCheckTimeNanos();
+    }
+
+    @Override
+    public long getMaxDeadlockCheckTimeNanos()
+    {
+        return ragManager.getMaxDeadlockCheckTimeNanos();
+    }
+
     /**
      * Calls {{@link #getReadLock(Object, Transaction)} with parameters
      * that will make the call try to get the read lock for the transaction
@@ -105,17 +188,7 @@ public class LockManagerImpl implements LockManager
             throw new IllegalResourceException( "Null parameter" );
         }
 
-        RWLock lock = null;
-        synchronized ( resourceLockMap )
-        {
-            lock = resourceLockMap.get( resource );
-            if ( lock == null )
-            {
-                lock = new RWLock( resource, ragManager );
-                resourceLockMap.put( resource, lock );
-            }
-            lock.mark();
-        }
+        RWLock lock = getMarkedLock( resource );
         lock.acquireReadLock(tx);
     }
 
@@ -156,17 +229,7 @@ public class LockManagerImpl implements LockManager
             throw new IllegalResourceException( "Null parameter" );
         }
 
-        RWLock lock = null;
-        synchronized ( resourceLockMap )
-        {
-            lock = resourceLockMap.get( resource );
-            if ( lock == null )
-            {
-                lock = new RWLock( resource, ragManager );
-                resourceLockMap.put( resource, lock );
-            }
-            lock.mark();
-        }
+        RWLock lock = getMarkedLock( resource );
         lock.acquireWriteLock(tx);
     }
 
@@ -189,10 +252,10 @@ public class LockManagerImpl implements LockManager
             throw new IllegalResourceException( "Null parameter" );
         }
 
-        RWLock lock = null;
+        Map<Object,RWLock> resourceLockMap = stripeFor( resource );
         synchronized ( resourceLockMap )
         {
-            lock = resourceLockMap.get( resource );
+            RWLock lock = resourceLockMap.get( resource );
             if ( lock == null )
             {
                 throw new LockNotFoundException( "Lock not found for: "
@@ -227,10 +290,10 @@ public class LockManagerImpl implements LockManager
             throw new IllegalResourceException( "Null parameter" );
         }
 
-        RWLock lock = null;
+        Map<Object,RWLock> resourceLockMap = stripeFor( resource );
         synchronized ( resourceLockMap )
         {
-            lock = resourceLockMap.get( resource );
+            RWLock lock = resourceLockMap.get( resource );
             if ( lock == null )
             {
                 throw new LockNotFoundException( "Lock not found for: "
@@ -256,6 +319,7 @@ public class LockManagerImpl implements LockManager
     public void dumpLocksOnResource( Object resource, Logging logging )
     {
         StringLogger logger = logging.getMessagesLog( LockManager.class );
+        Map<Object,RWLock> resourceLockMap = stripeFor( resource );
         RWLock lock = null;
         synchronized ( resourceLockMap )
         {
@@ -280,7 +344,8 @@ public class LockManagerImpl implements LockManager
     }
 
     /**
-     * Visit all locks.
+     * Visit all locks. Stripes are visited one at a time, so the visited
+     * locks are not a consistent snapshot of the whole lock table.
      * 
      * The supplied visitor may not block.
      * 
@@ -288,11 +353,14 @@ public class LockManagerImpl implements LockManager
      */
     private <V extends Visitor<LockInfo>> V eachLock( V visitor )
     {
-        synchronized ( resourceLockMap )
+        for ( Map<Object,RWLock> resourceLockMap : lockStripes )
         {
-            for ( RWLock lock : resourceLockMap.values() )
+            synchronized ( resourceLockMap )
             {
-                if ( visitor.visit( lock.info() ) ) break;
+                for ( RWLock lock : resourceLockMap.values() )
+                {
+                    if ( visitor.visit( lock.info() ) ) return visitor;
+                }
             }
         }
         return visitor;
@@ -312,11 +380,14 @@ public class LockManagerImpl implements LockManager
     private <V extends Visitor<LockInfo>> V eachAwaitedLock( V visitor, long minWaitTime )
     {
         long waitStart = System.currentTimeMillis() - minWaitTime;
-        synchronized ( resourceLockMap )
+        for ( Map<Object,RWLock> resourceLockMap : lockStripes )
         {
-            for ( RWLock lock : resourceLockMap.values() )
+            synchronized ( resourceLockMap )
             {
-                if ( lock.acceptVisitorIfWaitedSinceBefore( visitor, waitStart ) ) break;
+                for ( RWLock lock : resourceLockMap.values() )
+                {
+                    if ( lock.acceptVisitorIfWaitedSinceBefore( visitor, waitStart ) ) return visitor;
+                }
             }
         }
         return visitor;
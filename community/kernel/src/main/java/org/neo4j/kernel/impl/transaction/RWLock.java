@@ -169,8 +169,8 @@ class RWLock implements Visitor<LineLogger>
             while ( writeCount > tle.writeCount )
             {
                 ragManager.checkWaitOn( this, tx );
-                waitingThreadList.addFirst( new WaitElement( tle,
-                    LockType.READ, Thread.currentThread() ) );
+                WaitElement waitElement = new WaitElement( tle, LockType.READ, Thread.currentThread() );
+                waitingThreadList.addFirst( waitElement );
                 try
                 {
                     wait();
@@ -179,6 +179,12 @@ class RWLock implements Visitor<LineLogger>
                 {
                     Thread.interrupted();
                 }
+                finally
+                {
+                    // a releasing transaction removes the element before it wakes
+                    // this thread up, any other wake up leaves it in the list
+                    waitingThreadList.remove( waitElement );
+                }
                 ragManager.stopWaitOn( this, tx );
             }
 
@@ -349,8 +355,8 @@ class RWLock implements Visitor<LineLogger>
             while ( writeCount > tle.writeCount || readCount > tle.readCount )
             {
                 ragManager.checkWaitOn( this, tx );
-                waitingThreadList.addFirst( new WaitElement( tle,
-                    LockType.WRITE, Thread.currentThread() ) );
+                WaitElement waitElement = new WaitElement( tle, LockType.WRITE, Thread.currentThread() );
+                waitingThreadList.addFirst( waitElement );
                 try
                 {
                     wait();
@@ -359,6 +365,12 @@ class RWLock implements Visitor<LineLogger>
                 {
                     Thread.interrupted();
                 }
+                finally
+                {
+                    // a releasing transaction removes the element before it wakes
+                    // this thread up, any other wake up leaves it in the list
+                    waitingThreadList.remove( waitElement );
+                }
                 ragManager.stopWaitOn( this, tx );
             }
 
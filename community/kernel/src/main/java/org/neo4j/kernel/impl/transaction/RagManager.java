@@ -19,13 +19,16 @@
  */
 package org.neo4j.kernel.impl.transaction;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
@@ -34,7 +37,6 @@ import javax.transaction.TransactionManager;
 import org.neo4j.graphdb.TransactionFailureException;
 import org.neo4j.helpers.collection.Visitor;
 import org.neo4j.kernel.DeadlockDetectedException;
-import org.neo4j.kernel.impl.util.ArrayMap;
 import org.neo4j.kernel.impl.util.StringLogger.LineLogger;
 
 /**
@@ -58,6 +60,19 @@ import org.neo4j.kernel.impl.util.StringLogger.LineLogger;
  * traverse node nodespace starting on the resource and see if we can get back
  * to the tx ( T1 wants to wait on R1 and R1->T2->R2->T3->R8->T1 <==>
  * deadlock!).
+ * <p>
+ * The graph is kept in concurrent maps and there is no global monitor. The
+ * waiting thread publishes its own T->R relationship before traversing the
+ * graph, so when two transactions start waiting on each other at the same
+ * time at least one of them sees the relationship of the other and detects
+ * the deadlock. A cycle found during traversal is validated again before it
+ * is reported, so that waits that ended while the graph was traversed don't
+ * cause deadlocks to be reported for transactions that are no longer stuck.
+ * <p>
+ * As a safety net {@link #detectDeadlocks()} can be invoked periodically, see
+ * {@link DeadlockDetector}, to look for cycles among all waiting transactions
+ * and wake up one waiting transaction in each cycle, which makes it check its
+ * wait again and fail with a {@link DeadlockDetectedException}.
  */
 public class RagManager implements Visitor<LineLogger>
 {
@@ -74,62 +89,92 @@ public class RagManager implements Visitor<LineLogger>
     // in a DeadlockDetectedException the transaction must wait
     // o When the transaction wakes up from waiting on a resource the
     // stopWaitOn( resource ) method must be invoked
+    // o All of the above are invoked while holding the monitor of the
+    // resource (the RWLock), which is what keeps the set of transactions
+    // holding one resource consistent without a global monitor
 
-    private final Map<Object,List<Transaction>> resourceMap =
-        new HashMap<Object,List<Transaction>>();
+    private final ConcurrentMap<Object,Set<Transaction>> resourceMap =
+        new ConcurrentHashMap<Object,Set<Transaction>>();
 
-    private final ArrayMap<Transaction,Object> waitingTxMap =
-        new ArrayMap<Transaction,Object>( (byte)5, false, true );
+    private final ConcurrentMap<Transaction,WaitEdge> waitingTxMap =
+        new ConcurrentHashMap<Transaction,WaitEdge>();
 
     private final TransactionManager tm;
 
     private final AtomicInteger deadlockCount = new AtomicInteger();
+    private final AtomicLong checkCount = new AtomicLong();
+    private final AtomicLong checkTimeNanos = new AtomicLong();
+    private final AtomicLong maxCheckTimeNanos = new AtomicLong();
 
     public RagManager( TransactionManager tm )
     {
         this.tm = tm;
     }
 
+    // the T->R relationship of a waiting transaction
+    private static class WaitEdge
+    {
+        final Object resource;
+        final Thread waitingThread;
+
+        WaitEdge( Object resource, Thread waitingThread )
+        {
+            this.resource = resource;
+            this.waitingThread = waitingThread;
+        }
+    }
+
     long getDeadlockCount()
     {
         return deadlockCount.longValue();
     }
 
-    synchronized void lockAcquired( Object resource, Transaction tx )
+    long getDeadlockCheckCount()
     {
-        List<Transaction> lockingTxList = resourceMap.get( resource );
-        if ( lockingTxList != null )
-        {
-            assert !lockingTxList.contains( tx );
-            lockingTxList.add( tx );
-        }
-        else
+        return checkCount.get();
+    }
+
+    long getDeadlockCheckTimeNanos()
+    {
+        return checkTimeNanos.get();
+    }
+
+    long getMaxDeadlockCheckTimeNanos()
+    {
+        return maxCheckTimeNanos.get();
+    }
+
+    void lockAcquired( Object resource, Transaction tx )
+    {
+        Set<Transaction> lockingTxs = resourceMap.get( resource );
+        if ( lockingTxs == null )
         {
-            lockingTxList = new LinkedList<Transaction>();
-            lockingTxList.add( tx );
-            resourceMap.put( resource, lockingTxList );
+            lockingTxs = Collections.newSetFromMap( new ConcurrentHashMap<Transaction,Boolean>( 4 ) );
+            resourceMap.put( resource, lockingTxs );
         }
+        boolean added = lockingTxs.add( tx );
+        assert added;
     }
 
-    synchronized void lockReleased( Object resource, Transaction tx )
+    void lockReleased( Object resource, Transaction tx )
     {
-        List<Transaction> lockingTxList = resourceMap.get( resource );
-        if ( lockingTxList == null )
+        Set<Transaction> lockingTxs = resourceMap.get( resource );
+        if ( lockingTxs == null )
         {
             throw new LockException( resource + " not found in resource map" );
         }
 
-        if ( !lockingTxList.remove( tx ) )
+        if ( !lockingTxs.remove( tx ) )
         {
             throw new LockException( tx + "not found in locking tx list" );
         }
-        if ( lockingTxList.size() == 0 )
+        if ( lockingTxs.isEmpty() )
         {
             resourceMap.remove( resource );
         }
     }
 
-    synchronized void stopWaitOn( Object resource, Transaction tx )
+    void stopWaitOn( Object resource, Transaction tx )
     {
         if ( waitingTxMap.remove( tx ) == null )
         {
@@ -138,29 +183,104 @@ public class RagManager implements Visitor<LineLogger>
     }
 
     // after invoke the transaction must wait on the resource
-    synchronized void checkWaitOn( Object resource, Transaction tx )
+    void checkWaitOn( Object resource, Transaction tx )
         throws DeadlockDetectedException
     {
-        List<Transaction> lockingTxList = resourceMap.get( resource );
-        if ( lockingTxList == null )
+        Set<Transaction> lockingTxs = resourceMap.get( resource );
+        if ( lockingTxs == null )
         {
             throw new LockException( "Illegal resource[" + resource
                 + "], not found in map" );
         }
 
-        if ( waitingTxMap.get( tx ) != null )
+        WaitEdge edge = new WaitEdge( resource, Thread.currentThread() );
+        if ( waitingTxMap.putIfAbsent( tx, edge ) != null )
         {
             throw new LockException( tx + " already waiting for resource" );
         }
 
-        Iterator<Transaction> itr = lockingTxList.iterator();
-        List<Transaction> checkedTransactions = new LinkedList<Transaction>();
+        long startTime = System.nanoTime();
+        try
+        {
+            Stack<Object> cycle = findCycle( resource, lockingTxs, tx );
+            if ( cycle != null )
+            {
+                waitingTxMap.remove( tx );
+                deadlockCount.incrementAndGet();
+                throw deadlockException( tx, cycle );
+            }
+        }
+        finally
+        {
+            recordCheckTime( System.nanoTime() - startTime );
+        }
+        // ok no deadlock, we can wait on resource
+    }
+
+    /**
+     * Looks for cycles among all waiting transactions and wakes up the waiting
+     * thread of one transaction in each cycle found. The woken transaction will
+     * check its wait again from {@link RWLock} and detect the deadlock itself.
+     *
+     * @return the number of waiting transactions that were woken up.
+     */
+    int detectDeadlocks()
+    {
+        int woken = 0;
+        Set<Transaction> inCycle = new HashSet<Transaction>();
+        for ( Map.Entry<Transaction,WaitEdge> waiting : waitingTxMap.entrySet() )
+        {
+            Transaction tx = waiting.getKey();
+            WaitEdge edge = waiting.getValue();
+            if ( inCycle.contains( tx ) )
+            {
+                continue;
+            }
+            Set<Transaction> lockingTxs = resourceMap.get( edge.resource );
+            if ( lockingTxs == null )
+            {
+                continue;
+            }
+            Stack<Object> cycle = findCycle( edge.resource, lockingTxs, tx );
+            if ( cycle == null )
+            {
+                continue;
+            }
+            for ( Object element : cycle )
+            {
+                if ( element instanceof Transaction )
+                {
+                    inCycle.add( (Transaction) element );
+                }
+            }
+            // holding the monitor of the resource guarantees that the thread
+            // is still inside RWLock waiting for it, and not somewhere else
+            // where an interrupt could do harm
+            synchronized ( edge.resource )
+            {
+                if ( waitingTxMap.get( tx ) == edge )
+                {
+                    edge.waitingThread.interrupt();
+                    woken++;
+                }
+            }
+        }
+        return woken;
+    }
+
+    /**
+     * @return the stack of interleaved resources and transactions making up
+     * the cycle if <CODE>tx</CODE> waiting on <CODE>resource</CODE> is a
+     * deadlock, otherwise <CODE>null</CODE>.
+     */
+    private Stack<Object> findCycle( Object resource, Set<Transaction> lockingTxs, Transaction tx )
+    {
+        Set<Transaction> checkedTransactions = new HashSet<Transaction>();
         Stack<Object> graphStack = new Stack<Object>();
         // has resource,transaction interleaved
         graphStack.push( resource );
-        while ( itr.hasNext() )
+        for ( Transaction lockingTx : lockingTxs )
         {
-            Transaction lockingTx = itr.next();
             // the if statement bellow is valid because:
             // t1 -> r1 -> t1 (can happened with RW locks) is ok but,
             // t1 -> r1 -> t1&t2 where t2 -> r1 is a deadlock
@@ -185,47 +305,29 @@ public class RagManager implements Visitor<LineLogger>
                 continue;
             }
             graphStack.push( lockingTx );
-            checkWaitOnRecursive( lockingTx, tx, checkedTransactions,
-                graphStack );
+            if ( findCycleRecursive( lockingTx, tx, checkedTransactions, graphStack )
+                 && isStillCycle( graphStack ) )
+            {
+                return graphStack;
+            }
             graphStack.pop();
         }
-
-        // ok no deadlock, we can wait on resource
-        waitingTxMap.put( tx, resource );
+        return null;
     }
 
-    private synchronized void checkWaitOnRecursive( Transaction lockingTx,
-        Transaction waitingTx, List<Transaction> checkedTransactions,
-        Stack<Object> graphStack ) throws DeadlockDetectedException
+    private boolean findCycleRecursive( Transaction lockingTx,
+        Transaction waitingTx, Set<Transaction> checkedTransactions,
+        Stack<Object> graphStack )
     {
         if ( lockingTx.equals( waitingTx ) )
         {
-            StringBuffer circle = null;
-            Object resource = null;
-            do
-            {
-                lockingTx = (Transaction) graphStack.pop();
-                resource = graphStack.pop();
-                if ( circle == null )
-                {
-                    circle = new StringBuffer();
-                    circle.append( lockingTx + " <-[:HELD_BY]- " + resource );
-                }
-                else
-                {
-                    circle.append( " <-[:WAITING_FOR]- " + lockingTx + " <-[:HELD_BY]- " + resource );
-                }
-            }
-            while ( !graphStack.isEmpty() );
-            deadlockCount.incrementAndGet();
-            throw new DeadlockDetectedException( waitingTx +
-                " can't wait on resource " + resource + " since => " + circle );
+            return true;
         }
         checkedTransactions.add( lockingTx );
-        Object resource = waitingTxMap.get( lockingTx );
-        if ( resource != null )
+        WaitEdge edge = waitingTxMap.get( lockingTx );
+        if ( edge != null )
         {
-            graphStack.push( resource );
+            graphStack.push( edge.resource );
             // if the resource doesn't exist in resorceMap that means all the
             // locks on the resource has been released
             // it is possible when this tx was in RWLock.acquire and
@@ -235,32 +337,98 @@ public class RagManager implements Visitor<LineLogger>
             // this is ok since current tx or any other tx will wake
             // in the synchronized block and will be forced to do the deadlock
             // check once more if lock cannot be acquired
-            List<Transaction> lockingTxList = resourceMap.get( resource );
-            if ( lockingTxList != null )
+            Set<Transaction> lockingTxs = resourceMap.get( edge.resource );
+            if ( lockingTxs != null )
             {
-                Iterator<Transaction> itr = lockingTxList.iterator();
-                while ( itr.hasNext() )
+                for ( Transaction tx : lockingTxs )
                 {
-                    lockingTx = itr.next();
                     // so we don't
-                    if ( !checkedTransactions.contains( lockingTx ) )
+                    if ( !checkedTransactions.contains( tx ) )
                     {
-                        graphStack.push( lockingTx );
-                        checkWaitOnRecursive( lockingTx, waitingTx,
-                            checkedTransactions, graphStack );
+                        graphStack.push( tx );
+                        if ( findCycleRecursive( tx, waitingTx, checkedTransactions, graphStack ) )
+                        {
+                            return true;
+                        }
                         graphStack.pop();
                     }
                 }
             }
             graphStack.pop();
         }
+        return false;
+    }
+
+    /*
+     * The graph may have changed while it was traversed, check that every
+     * transaction in the cycle still waits for the resource after it and that
+     * every resource is still held by the transaction after it.
+     */
+    private boolean isStillCycle( Stack<Object> graphStack )
+    {
+        for ( int i = 0; i + 1 < graphStack.size(); i += 2 )
+        {
+            Object resource = graphStack.get( i );
+            Transaction lockingTx = (Transaction) graphStack.get( i + 1 );
+            Set<Transaction> lockingTxs = resourceMap.get( resource );
+            if ( lockingTxs == null || !lockingTxs.contains( lockingTx ) )
+            {
+                return false;
+            }
+            if ( i + 2 < graphStack.size() )
+            {
+                WaitEdge edge = waitingTxMap.get( lockingTx );
+                if ( edge == null || edge.resource != graphStack.get( i + 2 ) )
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private DeadlockDetectedException deadlockException( Transaction waitingTx, Stack<Object> graphStack )
+    {
+        StringBuffer circle = null;
+        Object resource = null;
+        do
+        {
+            Transaction lockingTx = (Transaction) graphStack.pop();
+            resource = graphStack.pop();
+            if ( circle == null )
+            {
+                circle = new StringBuffer();
+                circle.append( lockingTx + " <-[:HELD_BY]- " + resource );
+            }
+            else
+            {
+                circle.append( " <-[:WAITING_FOR]- " + lockingTx + " <-[:HELD_BY]- " + resource );
+            }
+        }
+        while ( !graphStack.isEmpty() );
+        return new DeadlockDetectedException( waitingTx +
+            " can't wait on resource " + resource + " since => " + circle );
+    }
+
+    private void recordCheckTime( long nanos )
+    {
+        checkCount.incrementAndGet();
+        checkTimeNanos.addAndGet( nanos );
+        long max;
+        while ( nanos > (max = maxCheckTimeNanos.get()) )
+        {
+            if ( maxCheckTimeNanos.compareAndSet( max, nanos ) )
+            {
+                break;
+            }
+        }
     }
 
     @Override
-    public synchronized boolean visit( LineLogger logger )
+    public boolean visit( LineLogger logger )
     {
         logger.logLine( "Waiting list: " );
-        Iterator<Transaction> transactions = waitingTxMap.keySet().iterator();
+        Iterator<Map.Entry<Transaction,WaitEdge>> transactions = waitingTxMap.entrySet().iterator();
         if ( !transactions.hasNext() )
         {
             logger.logLine( "No transactions waiting on resources" );
@@ -271,11 +439,11 @@ public class RagManager implements Visitor<LineLogger>
         }
         while ( transactions.hasNext() )
         {
-            Transaction tx = transactions.next();
-            logger.logLine( "" + tx + "->" + waitingTxMap.get( tx ) );
+            Map.Entry<Transaction,WaitEdge> waiting = transactions.next();
+            logger.logLine( "" + waiting.getKey() + "->" + waiting.getValue().resource );
         }
         logger.logLine( "Resource lock list: " );
-        Iterator<?> resources = resourceMap.keySet().iterator();
+        Iterator<Map.Entry<Object,Set<Transaction>>> resources = resourceMap.entrySet().iterator();
         if ( !resources.hasNext() )
         {
             logger.logLine( "No locked resources found" );
@@ -286,9 +454,9 @@ public class RagManager implements Visitor<LineLogger>
         }
         while ( resources.hasNext() )
         {
-            Object resource = resources.next();
-            logger.logLine( "" + resource + "->" );
-            Iterator<Transaction> itr = resourceMap.get( resource ).iterator();
+            Map.Entry<Object,Set<Transaction>> resource = resources.next();
+            logger.logLine( "" + resource.getKey() + "->" );
+            Iterator<Transaction> itr = resource.getValue().iterator();
             if ( !itr.hasNext() )
             {
                 logger.logLine( " Error empty list found" );
@@ -321,4 +489,4 @@ public class RagManager implements Visitor<LineLogger>
                 "Could not get current transaction.", e );
         }
     }
-}
\ No newline at end of file
+}
@@ -41,11 +41,11 @@ import org.neo4j.helpers.UTF8;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.transaction.xaframework.DirectMappedLogBuffer;
 import org.neo4j.kernel.impl.transaction.xaframework.ForceMode;
+import org.neo4j.kernel.impl.transaction.xaframework.GroupCommit;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
 
 // TODO: fixed sized logs (pre-initialize them)
 // keep dangling records in memory for log switch
-// batch disk forces
 /**
  * This class is made public for testing purposes only, do not use.
  * <p>
@@ -65,6 +65,7 @@ public class TxLog
     public static final byte MARK_COMMIT = 3;
     public static final byte TX_DONE = 4;
     private final FileSystemAbstraction fileSystem;
+    private final GroupCommit groupCommit;
     
     private static final class ByteArrayKey
     {
@@ -100,12 +101,24 @@ public class TxLog
      *             If unable to open file
      */
     public TxLog( File fileName, FileSystemAbstraction fileSystem ) throws IOException
+    {
+        this( fileName, fileSystem, null );
+    }
+
+    /**
+     * Initializes a transaction log like {@link #TxLog(File, FileSystemAbstraction)}
+     * where the forces of {@link #markAsCommitting(byte[], ForceMode)} are
+     * shared between concurrently committing transactions by
+     * <CODE>groupCommit</CODE>, if not <CODE>null</CODE>.
+     */
+    public TxLog( File fileName, FileSystemAbstraction fileSystem, GroupCommit groupCommit ) throws IOException
     {
         if ( fileName == null )
         {
             throw new IllegalArgumentException( "Null filename" );
         }
         this.fileSystem = fileSystem;
+        this.groupCommit = groupCommit;
         FileChannel fileChannel = fileSystem.open( fileName, "rw" );
         fileChannel.position( fileChannel.size() );
         logBuffer = new DirectMappedLogBuffer( fileChannel );
@@ -234,15 +247,31 @@ public class TxLog
      */
     // mark_committing(byte)|gid_length(byte)|globalId
     // forces
-    public synchronized void markAsCommitting( byte globalId[], ForceMode forceMode )
+    public void markAsCommitting( byte globalId[], ForceMode forceMode )
         throws IOException
     {
-        assertNotNull( globalId, "global id" );
-        assertActive( globalId );
-        
-        logBuffer.put( MARK_COMMIT ).put( (byte) globalId.length ).put( globalId );
-        forceMode.force( logBuffer );
-        recordCount++;
+        FileChannel channelToForce = null;
+        synchronized ( this )
+        {
+            assertNotNull( globalId, "global id" );
+            assertActive( globalId );
+
+            logBuffer.put( MARK_COMMIT ).put( (byte) globalId.length ).put( globalId );
+            if ( groupCommit != null && forceMode == ForceMode.forced )
+            {
+                logBuffer.writeOut();
+                channelToForce = logBuffer.getFileChannel();
+            }
+            else
+            {
+                forceMode.force( logBuffer );
+            }
+            recordCount++;
+        }
+        if ( channelToForce != null )
+        {
+            groupCommit.force( channelToForce );
+        }
     }
 
     /**
@@ -47,6 +47,7 @@ import org.neo4j.kernel.impl.core.KernelPanicEventGenerator;
 import org.neo4j.kernel.impl.core.TransactionState;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.transaction.xaframework.ForceMode;
+import org.neo4j.kernel.impl.transaction.xaframework.GroupCommit;
 import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
 import org.neo4j.kernel.impl.transaction.xaframework.XaResource;
 import org.neo4j.kernel.impl.util.ExceptionCauseSetter;
@@ -88,6 +89,7 @@ public class TxManager extends AbstractTransactionManager implements Lifecycle
 
     private Throwable recoveryError;
     private final TransactionStateFactory stateFactory;
+    private final GroupCommit groupCommit;
 
     public TxManager( File txLogDir,
                       XaDataSourceManager xaDataSourceManager,
@@ -96,6 +98,18 @@ public class TxManager extends AbstractTransactionManager implements Lifecycle
                       FileSystemAbstraction fileSystem,
                       TransactionStateFactory stateFactory
     )
+    {
+        this( txLogDir, xaDataSourceManager, kpe, log, fileSystem, stateFactory, null );
+    }
+
+    public TxManager( File txLogDir,
+                      XaDataSourceManager xaDataSourceManager,
+                      KernelPanicEventGenerator kpe,
+                      StringLogger log,
+                      FileSystemAbstraction fileSystem,
+                      TransactionStateFactory stateFactory,
+                      GroupCommit groupCommit
+    )
     {
         this.txLogDir = txLogDir;
         this.xaDataSourceManager = xaDataSourceManager;
@@ -103,6 +117,7 @@ public class TxManager extends AbstractTransactionManager implements Lifecycle
         this.log = log;
         this.kpe = kpe;
         this.stateFactory = stateFactory;
+        this.groupCommit = groupCommit;
     }
 
     synchronized int getNextEventIdentifier()
@@ -372,7 +387,9 @@ public class TxManager extends AbstractTransactionManager implements Lifecycle
         // mark as commit in log done TxImpl.doCommit()
         Throwable commitFailureCause = null;
         int xaErrorCode = -1;
-        synchronized (this)
+        // With group commit the resource managers let committers wait for their log forces concurrently, which
+        // a commit monitor shared by all transactions would defeat, so then only the transaction itself is locked
+        synchronized ( groupCommit != null ? tx : this )
         {
            /*
             * The attempt to commit and the corresponding rollback in case of failure happens under the same lock.
@@ -739,7 +756,7 @@ public class TxManager extends AbstractTransactionManager implements Lifecycle
                                     "Unable to start TM, " + "active tx log file[" +
                                             currentTxLog + "] not found." ) );
                 }
-                txLog = new TxLog( currentTxLog, fileSystem );
+                txLog = new TxLog( currentTxLog, fileSystem, groupCommit );
                 log.logMessage( "TM opening log: " + currentTxLog, true );
             }
             else
@@ -759,7 +776,7 @@ public class TxManager extends AbstractTransactionManager implements Lifecycle
                         .getBytes( "UTF-8" ) );
                 FileChannel fc = fileSystem.open( logSwitcherFileName, "rw" );
                 fc.write( buf );
-                txLog = new TxLog( new File( txLogDir, txLog1FileName), fileSystem );
+                txLog = new TxLog( new File( txLogDir, txLog1FileName), fileSystem, groupCommit );
                 log.logMessage( "TM new log: " + txLog1FileName, true );
                 fc.force( true );
                 fc.close();
@@ -0,0 +1,346 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A LogBuffer that, like {@link DirectMappedLogBuffer}, buffers content in a
+ * direct byte buffer and writes it out to a file channel when full or forced,
+ * but where concurrent writers can fill different parts of the buffer at the
+ * same time.
+ * <p>
+ * A writer first {@link #reserve(int) reserves} a contiguous region of the
+ * buffer, which is a compare-and-set of the reservation offset, and then
+ * {@link #fill(int, InMemoryLogBuffer) fills} it with content serialized up
+ * front, without holding any lock. Regions are laid out in the log in the
+ * order they were reserved, and writing the buffer out waits, parked, for all
+ * reserved regions to be filled, so readers of the channel never see holes.
+ * <p>
+ * The regular <CODE>put</CODE> methods reserve and fill a region per call, so
+ * a sequence of puts only ends up contiguous in the log if the caller keeps
+ * other writers from reserving in between, like {@link XaLogicalLog} does by
+ * reserving under its monitor.
+ */
+public class ConcurrentLogBuffer implements LogBuffer
+{
+    // 500k
+    static final int BUFFER_SIZE = 1024 * 512;
+    private static final int SEALED = BUFFER_SIZE + 1;
+
+    private final FileChannel fileChannel;
+    private final ByteBuffer byteBuffer;
+    private final AtomicInteger reserved = new AtomicInteger();
+    private final AtomicInteger filled = new AtomicInteger();
+    // The thread writing the buffer out while it waits for regions to be filled
+    private volatile Thread awaitingFill;
+    private volatile long bufferStartPosition;
+
+    public ConcurrentLogBuffer( FileChannel fileChannel ) throws IOException
+    {
+        this.fileChannel = fileChannel;
+        bufferStartPosition = fileChannel.position();
+        byteBuffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+    }
+
+    /**
+     * Reserves a region of <CODE>size</CODE> bytes at the end of the buffer,
+     * writing the buffer out first if there isn't room for it.
+     *
+     * @param size the number of bytes to reserve.
+     * @return the offset of the reserved region in the buffer, to be passed to
+     * {@link #fill(int, InMemoryLogBuffer)}, or <CODE>-1</CODE> if
+     * <CODE>size</CODE> is larger than the buffer itself, in which case the
+     * content has to be written through {@link #put(InMemoryLogBuffer)}.
+     * @throws IOException if the buffer had to be written out and that failed.
+     */
+    public int reserve( int size ) throws IOException
+    {
+        if ( size > BUFFER_SIZE )
+        {
+            return -1;
+        }
+        while ( true )
+        {
+            int offset = reserved.get();
+            if ( offset + size <= BUFFER_SIZE )
+            {
+                if ( reserved.compareAndSet( offset, offset + size ) )
+                {
+                    return offset;
+                }
+            }
+            else
+            {
+                writeOutIfStillAt( offset );
+            }
+        }
+    }
+
+    /**
+     * Copies everything written to <CODE>source</CODE> into the region at
+     * <CODE>offset</CODE>, which must have been reserved with the size of it.
+     */
+    public void fill( int offset, InMemoryLogBuffer source ) throws IOException
+    {
+        int size = source.size();
+        try
+        {
+            ByteBuffer region = byteBuffer.duplicate();
+            region.limit( offset + size );
+            region.position( offset );
+            while ( region.hasRemaining() && source.read( region ) > 0 )
+            {
+                // keep reading
+            }
+        }
+        finally
+        {
+            markFilled( size );
+        }
+    }
+
+    /**
+     * Writes everything written to <CODE>source</CODE> to this buffer, in
+     * buffer sized chunks if it doesn't fit in one.
+     */
+    public LogBuffer put( InMemoryLogBuffer source ) throws IOException
+    {
+        byte[] chunk = new byte[Math.min( source.size(), BUFFER_SIZE )];
+        ByteBuffer chunkBuffer = ByteBuffer.wrap( chunk );
+        while ( source.size() > 0 )
+        {
+            chunkBuffer.clear();
+            int read = source.read( chunkBuffer );
+            put( chunk, 0, read );
+        }
+        return this;
+    }
+
+    public LogBuffer put( byte b ) throws IOException
+    {
+        int offset = reserve( 1 );
+        byteBuffer.put( offset, b );
+        markFilled( 1 );
+        return this;
+    }
+
+    public LogBuffer putShort( short s ) throws IOException
+    {
+        int offset = reserve( 2 );
+        byteBuffer.putShort( offset, s );
+        markFilled( 2 );
+        return this;
+    }
+
+    public LogBuffer putInt( int i ) throws IOException
+    {
+        int offset = reserve( 4 );
+        byteBuffer.putInt( offset, i );
+        markFilled( 4 );
+        return this;
+    }
+
+    public LogBuffer putLong( long l ) throws IOException
+    {
+        int offset = reserve( 8 );
+        byteBuffer.putLong( offset, l );
+        markFilled( 8 );
+        return this;
+    }
+
+    public LogBuffer putFloat( float f ) throws IOException
+    {
+        int offset = reserve( 4 );
+        byteBuffer.putFloat( offset, f );
+        markFilled( 4 );
+        return this;
+    }
+
+    public LogBuffer putDouble( double d ) throws IOException
+    {
+        int offset = reserve( 8 );
+        byteBuffer.putDouble( offset, d );
+        markFilled( 8 );
+        return this;
+    }
+
+    public LogBuffer put( byte[] bytes ) throws IOException
+    {
+        put( bytes, 0, bytes.length );
+        return this;
+    }
+
+    private void put( byte[] bytes, int offset, int length ) throws IOException
+    {
+        while ( length > 0 )
+        {
+            int bytesToWrite = Math.min( length, BUFFER_SIZE );
+            int position = reserve( bytesToWrite );
+            try
+            {
+                ByteBuffer region = byteBuffer.duplicate();
+                region.position( position );
+                region.put( bytes, offset, bytesToWrite );
+            }
+            finally
+            {
+                markFilled( bytesToWrite );
+            }
+            offset += bytesToWrite;
+            length -= bytesToWrite;
+        }
+    }
+
+    public LogBuffer put( char[] chars ) throws IOException
+    {
+        int offset = 0;
+        while ( offset < chars.length )
+        {
+            int charsToWrite = Math.min( chars.length - offset, BUFFER_SIZE / 2 );
+            int position = reserve( charsToWrite * 2 );
+            try
+            {
+                ByteBuffer region = byteBuffer.duplicate();
+                region.position( position );
+                region.asCharBuffer().put( chars, offset, charsToWrite );
+            }
+            finally
+            {
+                markFilled( charsToWrite * 2 );
+            }
+            offset += charsToWrite;
+        }
+        return this;
+    }
+
+    private void markFilled( int size )
+    {
+        filled.addAndGet( size );
+        Thread waiter = awaitingFill;
+        if ( waiter != null )
+        {
+            LockSupport.unpark( waiter );
+        }
+    }
+
+    private synchronized void writeOutIfStillAt( int offset ) throws IOException
+    {
+        // Someone else may have written the buffer out while we waited for the monitor
+        if ( reserved.get() == offset )
+        {
+            writeOut();
+        }
+    }
+
+    @Override
+    public synchronized void writeOut() throws IOException
+    {
+        // Seal the buffer so that no more regions can be reserved, then wait for
+        // the writers of regions already reserved to finish filling them
+        int end = reserved.getAndSet( SEALED );
+        boolean written = false;
+        try
+        {
+            awaitFilled( end );
+
+            ByteBuffer content = byteBuffer.duplicate();
+            content.position( 0 );
+            content.limit( end );
+            long position = bufferStartPosition;
+            while ( content.hasRemaining() )
+            {
+                int bytesWritten = fileChannel.write( content, position );
+                if ( bytesWritten <= 0 )
+                {
+                    throw new IOException( "Unable to write to disk, reported bytes written was " + bytesWritten );
+                }
+                position += bytesWritten;
+            }
+            bufferStartPosition = position;
+            filled.set( 0 );
+            written = true;
+        }
+        finally
+        {
+            reserved.set( written ? 0 : end );
+        }
+    }
+
+    /**
+     * Parks until the regions up to <CODE>end</CODE> have been filled, each
+     * writer unparks this thread after filling its region.
+     */
+    private void awaitFilled( int end )
+    {
+        if ( filled.get() >= end )
+        {
+            return;
+        }
+        Thread current = Thread.currentThread();
+        boolean interrupted = false;
+        // Published before checking again, so a writer filling its region after
+        // the check sees it and unparks this thread
+        awaitingFill = current;
+        try
+        {
+            while ( filled.get() < end )
+            {
+                LockSupport.park( this );
+                if ( Thread.interrupted() )
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        finally
+        {
+            awaitingFill = null;
+            if ( interrupted )
+            {
+                current.interrupt();
+            }
+        }
+    }
+
+    public void force() throws IOException
+    {
+        writeOut();
+        fileChannel.force( false );
+    }
+
+    /**
+     * @return the position in the file that the next reserved region will end
+     * up at.
+     */
+    public synchronized long getFileChannelPosition()
+    {
+        return bufferStartPosition + reserved.get();
+    }
+
+    public FileChannel getFileChannel()
+    {
+        return fileChannel;
+    }
+}
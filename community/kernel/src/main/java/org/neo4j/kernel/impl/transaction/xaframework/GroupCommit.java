@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+
+/**
+ * Lets many committing transactions share one force of a log file. A
+ * committer writes its entries out to the file channel, outside of any force,
+ * and then calls {@link #force(FileChannel)} which parks it until a dedicated
+ * force thread has completed a <CODE>force</CODE> of that channel which
+ * started after the call was made. All committers that arrive while one force
+ * is in progress are served by the next one, so under concurrent load a
+ * single fsync makes many transactions durable.
+ * <p>
+ * When not started, or after it has been stopped, the calling thread forces
+ * the channel itself, just as {@link ForceMode#forced} would.
+ */
+public class GroupCommit extends LifecycleAdapter
+{
+    private List<Ticket> pending = new ArrayList<Ticket>();
+    private ForceThread forceThread;
+    private long forceCount;
+    private long commitCount;
+
+    private static class Ticket
+    {
+        final FileChannel channel;
+        boolean done;
+        IOException failure;
+
+        Ticket( FileChannel channel )
+        {
+            this.channel = channel;
+        }
+    }
+
+    @Override
+    public synchronized void start() throws Throwable
+    {
+        forceThread = new ForceThread();
+        forceThread.start();
+    }
+
+    @Override
+    public void stop() throws Throwable
+    {
+        ForceThread thread;
+        synchronized ( this )
+        {
+            thread = forceThread;
+            forceThread = null;
+            notifyAll();
+        }
+        if ( thread != null )
+        {
+            thread.join();
+        }
+    }
+
+    /**
+     * Makes sure that everything written to <CODE>channel</CODE> before this
+     * call is forced to disk before it returns.
+     *
+     * @param channel the channel of a log buffer that has been written out.
+     * @throws IOException if the channel couldn't be forced.
+     */
+    public void force( FileChannel channel ) throws IOException
+    {
+        Ticket ticket = new Ticket( channel );
+        boolean interrupted = false;
+        synchronized ( this )
+        {
+            commitCount++;
+            if ( forceThread == null )
+            {
+                forceCount++;
+            }
+            else
+            {
+                pending.add( ticket );
+                notifyAll();
+                while ( !ticket.done )
+                {
+                    try
+                    {
+                        wait();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        if ( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+        if ( !ticket.done )
+        {
+            channel.force( false );
+        }
+        else if ( ticket.failure != null )
+        {
+            throw ticket.failure;
+        }
+    }
+
+    /**
+     * @return the number of times a log channel has been forced.
+     */
+    public synchronized long getForceCount()
+    {
+        return forceCount;
+    }
+
+    /**
+     * @return the number of commits that have asked for a force.
+     */
+    public synchronized long getCommitCount()
+    {
+        return commitCount;
+    }
+
+    private class ForceThread extends Thread
+    {
+        ForceThread()
+        {
+            super( "Group commit log forcer" );
+            setDaemon( true );
+        }
+
+        @Override
+        public void run()
+        {
+            while ( true )
+            {
+                List<Ticket> batch;
+                synchronized ( GroupCommit.this )
+                {
+                    while ( forceThread == this && pending.isEmpty() )
+                    {
+                        try
+                        {
+                            GroupCommit.this.wait();
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            Thread.interrupted();
+                        }
+                    }
+                    if ( pending.isEmpty() )
+                    {
+                        return;
+                    }
+                    batch = pending;
+                    pending = new ArrayList<Ticket>();
+                }
+
+                Map<FileChannel, IOException> forced = new IdentityHashMap<FileChannel, IOException>();
+                for ( Ticket ticket : batch )
+                {
+                    if ( !forced.containsKey( ticket.channel ) )
+                    {
+                        forced.put( ticket.channel, forceChannel( ticket.channel ) );
+                    }
+                }
+
+                synchronized ( GroupCommit.this )
+                {
+                    forceCount += forced.size();
+                    for ( Ticket ticket : batch )
+                    {
+                        ticket.failure = forced.get( ticket.channel );
+                        ticket.done = true;
+                    }
+                    GroupCommit.this.notifyAll();
+                }
+            }
+        }
+
+        private IOException forceChannel( FileChannel channel )
+        {
+            try
+            {
+                channel.force( false );
+                return null;
+            }
+            catch ( ClosedChannelException e )
+            {
+                // Logs are forced before their channels are closed, on rotation
+                // or shutdown, so whatever was written to it is already on disk
+                return null;
+            }
+            catch ( IOException e )
+            {
+                return e;
+            }
+        }
+    }
+}
@@ -39,6 +39,14 @@ public class InMemoryLogBuffer implements LogBuffer, ReadableByteChannel
     {
         writeIndex = readIndex = 0;
     }
+
+    /**
+     * @return the number of bytes written to this buffer that haven't been read yet.
+     */
+    public int size()
+    {
+        return writeIndex - readIndex;
+    }
     
     private void ensureArrayCapacityPlus( int plus )
     {
@@ -41,10 +41,20 @@ public class XaFactory
     private final Logging logging;
     private final RecoveryVerifier recoveryVerifier;
     private final LogPruneStrategy pruneStrategy;
+    private final GroupCommit groupCommit;
 
     public XaFactory( Config config, TxIdGenerator txIdGenerator, AbstractTransactionManager txManager,
             LogBufferFactory logBufferFactory, FileSystemAbstraction fileSystemAbstraction,
             Logging logging, RecoveryVerifier recoveryVerifier, LogPruneStrategy pruneStrategy )
+    {
+        this( config, txIdGenerator, txManager, logBufferFactory, fileSystemAbstraction, logging, recoveryVerifier,
+                pruneStrategy, null );
+    }
+
+    public XaFactory( Config config, TxIdGenerator txIdGenerator, AbstractTransactionManager txManager,
+            LogBufferFactory logBufferFactory, FileSystemAbstraction fileSystemAbstraction,
+            Logging logging, RecoveryVerifier recoveryVerifier, LogPruneStrategy pruneStrategy,
+            GroupCommit groupCommit )
     {
         this.config = config;
         this.txIdGenerator = txIdGenerator;
@@ -54,6 +64,7 @@ public class XaFactory
         this.logging = logging;
         this.recoveryVerifier = recoveryVerifier;
         this.pruneStrategy = pruneStrategy;
+        this.groupCommit = groupCommit;
     }
 
     public XaContainer newXaContainer( XaDataSource xaDataSource, File logicalLog, XaCommandFactory cf,
@@ -73,11 +84,11 @@ public class XaFactory
         if ( providers.shouldInterceptDeserialized() && providers.hasAnyInterceptorConfigured() )
         {
             log = new InterceptingXaLogicalLog( logicalLog, rm, cf, tf, providers, logBufferFactory,
-                    fileSystemAbstraction, logging, pruneStrategy, stateFactory );
+                    fileSystemAbstraction, logging, pruneStrategy, stateFactory, groupCommit );
         }
         else
         {
-            log = new XaLogicalLog( logicalLog, rm, cf, tf, logBufferFactory, fileSystemAbstraction, logging, pruneStrategy, stateFactory );
+            log = new XaLogicalLog( logicalLog, rm, cf, tf, logBufferFactory, fileSystemAbstraction, logging, pruneStrategy, stateFactory, groupCommit );
         }
 
         // TODO These setters should be removed somehow
@@ -111,19 +111,39 @@ public class XaLogicalLog implements LogLoader
     private final PartialTransactionCopier partialTransactionCopier;
 
     private final TransactionStateFactory stateFactory;
+    private final GroupCommit groupCommit;
+    private final boolean concurrentWriteBuffer;
+    private final ThreadLocal<InMemoryLogBuffer> serializedCommand = new ThreadLocal<InMemoryLogBuffer>()
+    {
+        @Override
+        protected InMemoryLogBuffer initialValue()
+        {
+            return new InMemoryLogBuffer();
+        }
+    };
 
     public XaLogicalLog( File fileName, XaResourceManager xaRm, XaCommandFactory cf,
                          XaTransactionFactory xaTf, LogBufferFactory logBufferFactory, FileSystemAbstraction fileSystem,
                          Logging logging, LogPruneStrategy pruneStrategy, TransactionStateFactory stateFactory )
+    {
+        this( fileName, xaRm, cf, xaTf, logBufferFactory, fileSystem, logging, pruneStrategy, stateFactory, null );
+    }
+
+    public XaLogicalLog( File fileName, XaResourceManager xaRm, XaCommandFactory cf,
+                         XaTransactionFactory xaTf, LogBufferFactory logBufferFactory, FileSystemAbstraction fileSystem,
+                         Logging logging, LogPruneStrategy pruneStrategy, TransactionStateFactory stateFactory,
+                         GroupCommit groupCommit )
     {
         this.fileName = fileName;
         this.xaRm = xaRm;
         this.cf = cf;
         this.xaTf = xaTf;
         this.logBufferFactory = logBufferFactory;
+        this.concurrentWriteBuffer = logBufferFactory instanceof ConcurrentLogBufferFactory;
         this.fileSystem = fileSystem;
         this.pruneStrategy = pruneStrategy;
         this.stateFactory = stateFactory;
+        this.groupCommit = groupCommit;
         this.logFiles = new XaLogicalLogFiles( fileName, fileSystem );
 
         sharedBuffer = ByteBuffer.allocateDirect( 9 + Xid.MAXGTRIDSIZE
@@ -330,22 +350,76 @@ public class XaLogicalLog implements LogLoader
     }
 
     // [TX_1P_COMMIT][identifier]
-    public synchronized void commitOnePhase( int identifier, long txId, ForceMode forceMode )
+    public void commitOnePhase( int identifier, long txId, ForceMode forceMode )
+            throws XAException
+    {
+        forceCommit( writeCommit( false, identifier, txId, forceMode ) );
+    }
+
+    /**
+     * @return whether committers using <CODE>forceMode</CODE> have their commit
+     *         entries forced by group commit, so that they can
+     *         {@link #writeCommit(boolean, int, long, ForceMode) write} them and
+     *         {@link #forceCommit(FileChannel) wait for the force} separately.
+     */
+    boolean groupsCommits( ForceMode forceMode )
+    {
+        return groupCommit != null && forceMode == ForceMode.forced;
+    }
+
+    /**
+     * Writes the commit entry of a transaction. With group commit the buffer
+     * is only written out and the channel is returned, to be forced by
+     * {@link #forceCommit(FileChannel)} once the caller has released its
+     * monitors, so that other committers can write their entries in the mean
+     * time. Otherwise the entry is made durable according to
+     * <CODE>forceMode</CODE> before returning <CODE>null</CODE>.
+     */
+    FileChannel writeCommit( boolean twoPhase, int identifier, long txId, ForceMode forceMode )
             throws XAException
     {
-        LogEntry.Start startEntry = xidIdentMap.get( identifier );
-        assert startEntry != null;
-        assert txId != -1;
         try
         {
-            positionCache.cacheStartPosition( txId, startEntry, logVersion );
-            LogIoUtils.writeCommit( false, writeBuffer, identifier, txId, System.currentTimeMillis() );
-            forceMode.force( writeBuffer );
+            synchronized ( this )
+            {
+                LogEntry.Start startEntry = xidIdentMap.get( identifier );
+                assert startEntry != null;
+                assert txId != -1;
+                positionCache.cacheStartPosition( txId, startEntry, logVersion );
+                LogIoUtils.writeCommit( twoPhase, writeBuffer, identifier, txId, System.currentTimeMillis() );
+                if ( groupsCommits( forceMode ) )
+                {
+                    writeBuffer.writeOut();
+                    return writeBuffer.getFileChannel();
+                }
+                forceMode.force( writeBuffer );
+                return null;
+            }
+        }
+        catch ( IOException e )
+        {
+            throw Exceptions.withCause( new XAException( "Logical log unable to mark " +
+                    (twoPhase ? "2PC" : "1P-commit") + " [" + identifier + "] " ), e );
+        }
+    }
+
+    /**
+     * Waits for a group commit force of <CODE>channelToForce</CODE>, as
+     * returned by {@link #writeCommit(boolean, int, long, ForceMode)}.
+     */
+    void forceCommit( FileChannel channelToForce ) throws XAException
+    {
+        if ( channelToForce == null )
+        {
+            return;
+        }
+        try
+        {
+            groupCommit.force( channelToForce );
         }
         catch ( IOException e )
         {
-            throw Exceptions.withCause(
-                    new XAException( "Logical log unable to mark 1P-commit [" + identifier + "] " ), e );
+            throw Exceptions.withCause( new XAException( "Logical log unable to force commit" ), e );
         }
     }
 
@@ -387,31 +461,54 @@ public class XaLogicalLog implements LogLoader
     }
 
     // [TX_2P_COMMIT][identifier]
-    public synchronized void commitTwoPhase( int identifier, long txId, ForceMode forceMode )
+    public void commitTwoPhase( int identifier, long txId, ForceMode forceMode )
             throws XAException
     {
-        LogEntry.Start startEntry = xidIdentMap.get( identifier );
-        assert startEntry != null;
-        assert txId != -1;
-        try
-        {
-            positionCache.cacheStartPosition( txId, startEntry, logVersion );
-            LogIoUtils.writeCommit( true, writeBuffer, identifier, txId, System.currentTimeMillis() );
-            forceMode.force( writeBuffer );
-        }
-        catch ( IOException e )
-        {
-            throw Exceptions.withCause( new XAException( "Logical log unable to mark 2PC [" + identifier + "] " ), e );
-        }
+        forceCommit( writeCommit( true, identifier, txId, forceMode ) );
     }
 
     // [COMMAND][identifier][COMMAND_DATA]
-    public synchronized void writeCommand( XaCommand command, int identifier )
+    public void writeCommand( XaCommand command, int identifier )
             throws IOException
     {
-        checkLogRotation();
-        assert xidIdentMap.get( identifier ) != null;
-        LogIoUtils.writeCommand( writeBuffer, identifier, command );
+        if ( !concurrentWriteBuffer )
+        {
+            synchronized ( this )
+            {
+                checkLogRotation();
+                assert xidIdentMap.get( identifier ) != null;
+                LogIoUtils.writeCommand( writeBuffer, identifier, command );
+            }
+            return;
+        }
+
+        // Serialize the command without holding the monitor, then only reserve
+        // room for it under the monitor and copy it in after having released it
+        InMemoryLogBuffer serialized = serializedCommand.get();
+        serialized.reset();
+        LogIoUtils.writeCommand( serialized, identifier, command );
+        ConcurrentLogBuffer buffer;
+        int offset;
+        synchronized ( this )
+        {
+            checkLogRotation();
+            assert xidIdentMap.get( identifier ) != null;
+            buffer = (ConcurrentLogBuffer) writeBuffer;
+            offset = buffer.reserve( serialized.size() );
+            if ( offset == -1 )
+            {
+                buffer.put( serialized );
+            }
+        }
+        if ( offset != -1 )
+        {
+            buffer.fill( offset, serialized );
+        }
+        else
+        {
+            // Don't keep a buffer this size around for the next command
+            serializedCommand.remove();
+        }
     }
 
     private void applyEntry( LogEntry entry ) throws IOException
@@ -20,6 +20,7 @@
 package org.neo4j.kernel.impl.transaction.xaframework;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -36,6 +37,7 @@ import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
 import javax.transaction.xa.Xid;
 
+import org.neo4j.helpers.Exceptions;
 import org.neo4j.kernel.impl.transaction.AbstractTransactionManager;
 import org.neo4j.kernel.impl.transaction.xaframework.LogEntry.Start;
 import org.neo4j.kernel.impl.util.ArrayMap;
@@ -60,6 +62,17 @@ public class XaResourceManager
     private final AbstractTransactionManager transactionManager;
     private final RecoveryVerifier recoveryVerifier;
 
+    // Group committed transactions which have written their commit entries
+    // but not yet been applied, guarded by this
+    private int commitsInFlight;
+    private long lastTxIdInFlight;
+    private long nextCommitTicket;
+    private long appliedCommitTickets;
+    // Set when forcing a commit entry failed. The entry may or may not have
+    // reached the disk and transactions after it have been handed the ids
+    // following it, so no further transaction is applied until recovery.
+    private Throwable logForceFailure;
+
     public XaResourceManager( XaDataSource dataSource, XaTransactionFactory tf,
             TxIdGenerator txIdGenerator, AbstractTransactionManager transactionManager,
             RecoveryVerifier recoveryVerifier, String name )
@@ -314,34 +327,41 @@ public class XaResourceManager
         }
     }
 
-    synchronized int prepare( Xid xid ) throws XAException
+    int prepare( Xid xid ) throws XAException
     {
-        XidStatus status = xidMap.get( xid );
-        if ( status == null )
-        {
-            throw new XAException( "Unknown xid[" + xid + "]" );
-        }
-        TransactionStatus txStatus = status.getTransactionStatus();
-        XaTransaction xaTransaction = txStatus.getTransaction();
-        checkStartWritten( txStatus, xaTransaction );
-        if ( xaTransaction.isReadOnly() )
+        TransactionStatus txStatus;
+        XaTransaction xaTransaction;
+        synchronized ( this )
         {
-            log.done( xaTransaction.getIdentifier() );
-            xidMap.remove( xid );
-            if ( xaTransaction.isRecovered() )
+            XidStatus status = xidMap.get( xid );
+            if ( status == null )
             {
-                recoveredTxCount--;
-                checkIfRecoveryComplete();
+                throw new XAException( "Unknown xid[" + xid + "]" );
+            }
+            txStatus = status.getTransactionStatus();
+            xaTransaction = txStatus.getTransaction();
+            checkStartWritten( txStatus, xaTransaction );
+            if ( xaTransaction.isReadOnly() )
+            {
+                log.done( xaTransaction.getIdentifier() );
+                xidMap.remove( xid );
+                if ( xaTransaction.isRecovered() )
+                {
+                    recoveredTxCount--;
+                    checkIfRecoveryComplete();
+                }
+                return XAResource.XA_RDONLY;
             }
-            return XAResource.XA_RDONLY;
         }
-        else
+        // The commands are serialized to the log, and the prepare entry forced,
+        // without holding the monitor so that transactions can do that concurrently
+        xaTransaction.prepare();
+        log.prepare( xaTransaction.getIdentifier() );
+        synchronized ( this )
         {
-            xaTransaction.prepare();
-            log.prepare( xaTransaction.getIdentifier() );
             txStatus.markAsPrepared();
-            return XAResource.XA_OK;
         }
+        return XAResource.XA_OK;
     }
 
     // called from XaResource internal recovery
@@ -424,7 +444,11 @@ public class XaResourceManager
         throws XAException
     {
         XaTransaction xaTransaction;
+        TxIdGenerator txIdGenerator;
         boolean isReadOnly;
+        TransactionStatus txStatus;
+        FileChannel channelToForce;
+        long commitTicket;
 
         synchronized ( this )
         {
@@ -433,77 +457,115 @@ public class XaResourceManager
             {
                 throw new XAException( "Unknown xid[" + xid + "]" );
             }
-            TransactionStatus txStatus = status.getTransactionStatus();
+            txStatus = status.getTransactionStatus();
             xaTransaction = txStatus.getTransaction();
-            TxIdGenerator txIdGenerator = xaTransaction.getTxIdGenerator();
+            txIdGenerator = xaTransaction.getTxIdGenerator();
             checkStartWritten( txStatus, xaTransaction );
             isReadOnly = xaTransaction.isReadOnly();
+        }
+
+        if ( onePhase && !isReadOnly && !xaTransaction.isRecovered() )
+        {
+            // Serialize the commands to the log outside of the monitor, see prepare
+            xaTransaction.prepare();
+        }
+
+        synchronized ( this )
+        {
+            if ( logForceFailure != null && !isReadOnly )
+            {
+                throw logForceFailed();
+            }
+            boolean pipelined = !isReadOnly && !xaTransaction.isRecovered() &&
+                    txIdGenerator == TxIdGenerator.DEFAULT && log.groupsCommits( getForceMode() );
+            if ( !isReadOnly && !pipelined )
+            {
+                awaitCommitsInFlight();
+            }
             if ( onePhase )
             {
                 txStatus.markAsPrepared();
-                if ( !isReadOnly )
-                {
-                    if ( !xaTransaction.isRecovered() )
-                    {
-                        xaTransaction.prepare();
-
-                        long txId = txIdGenerator.generate( dataSource,
-                                xaTransaction.getIdentifier() );
-                        xaTransaction.setCommitTxId( txId );
-                        log.commitOnePhase( xaTransaction.getIdentifier(),
-                                xaTransaction.getCommitTxId(), getForceMode() );
-                    }
-                }
             }
             if ( !txStatus.prepared() || txStatus.rollback() )
             {
                 throw new XAException( "Transaction not prepared or "
                     + "(marked as) rolledbacked" );
             }
-            if ( !isReadOnly )
+            if ( !pipelined )
             {
-                if ( !xaTransaction.isRecovered() )
+                if ( !isReadOnly && !xaTransaction.isRecovered() )
                 {
-                    if ( !onePhase )
+                    long txId = txIdGenerator.generate( dataSource,
+                            xaTransaction.getIdentifier() );
+                    xaTransaction.setCommitTxId( txId );
+                    if ( onePhase )
                     {
-                        long txId = txIdGenerator.generate( dataSource,
-                                xaTransaction.getIdentifier() );
-                        xaTransaction.setCommitTxId( txId );
-                        log.commitTwoPhase( xaTransaction.getIdentifier(),
+                        log.commitOnePhase( xaTransaction.getIdentifier(),
                                 xaTransaction.getCommitTxId(), getForceMode() );
                     }
-                }
-                txStatus.markCommitStarted();
-                if ( xaTransaction.isRecovered() && xaTransaction.getCommitTxId() == -1 )
-                {
-                    boolean previousRecoveredValue = dataSource.setRecovered( true );
-                    try
+                    else
                     {
-                        xaTransaction.setCommitTxId( dataSource.getLastCommittedTxId() + 1 );
-                    }
-                    finally
-                    {
-                        dataSource.setRecovered( previousRecoveredValue );
+                        log.commitTwoPhase( xaTransaction.getIdentifier(),
+                                xaTransaction.getCommitTxId(), getForceMode() );
                     }
                 }
-                xaTransaction.commit();
+                completeCommit( xid, txStatus, xaTransaction, onePhase );
+                channelToForce = null;
+                commitTicket = -1;
             }
-            if ( !xaTransaction.isRecovered() )
+            else
             {
-                log.done( xaTransaction.getIdentifier() );
+                // The transactions before this one may not be applied yet, so the
+                // default generator, which hands out the id after the last applied
+                // transaction, is only asked when no commit is in flight
+                long txId = commitsInFlight == 0 ? txIdGenerator.generate( dataSource,
+                        xaTransaction.getIdentifier() ) : lastTxIdInFlight + 1;
+                xaTransaction.setCommitTxId( txId );
+                channelToForce = log.writeCommit( !onePhase, xaTransaction.getIdentifier(), txId, getForceMode() );
+                lastTxIdInFlight = txId;
+                commitsInFlight++;
+                commitTicket = nextCommitTicket++;
             }
-            else if ( !log.scanIsComplete() || recoveredTxCount > 0 )
+        }
+
+        if ( commitTicket != -1 )
+        {
+            // Wait for the force without holding the monitor so that the commit
+            // entries of other transactions can be written and forced along with
+            // this one, then apply the transactions in the order of their ids
+            XAException forceFailure = null;
+            try
             {
-                int identifier = xaTransaction.getIdentifier();
-                Start startEntry = log.getStartEntry( identifier );
-                recoveredTransactions.add( new TransactionInfo( identifier, onePhase,
-                        xaTransaction.getCommitTxId(), startEntry.getMasterId(), startEntry.getChecksum() ) );
+                log.forceCommit( channelToForce );
             }
-            xidMap.remove( xid );
-            if ( xaTransaction.isRecovered() )
+            catch ( XAException e )
             {
-                recoveredTxCount--;
-                checkIfRecoveryComplete();
+                forceFailure = e;
+            }
+            synchronized ( this )
+            {
+                if ( forceFailure != null && logForceFailure == null )
+                {
+                    logForceFailure = forceFailure;
+                    msgLog.logMessage( "Forcing the logical log of " + name + " failed, failing every commit " +
+                            "in flight, recovery is needed", forceFailure, true );
+                    notifyAll();
+                }
+                awaitTurnToApply( commitTicket );
+                try
+                {
+                    if ( logForceFailure != null )
+                    {
+                        throw logForceFailed();
+                    }
+                    completeCommit( xid, txStatus, xaTransaction, onePhase );
+                }
+                finally
+                {
+                    appliedCommitTickets++;
+                    commitsInFlight--;
+                    notifyAll();
+                }
             }
         }
 
@@ -512,6 +574,107 @@ public class XaResourceManager
         return xaTransaction;
     }
 
+    /**
+     * Applies a transaction whose commit entry has been made durable, or a
+     * read only or recovered transaction, and marks it as done.
+     */
+    private void completeCommit( Xid xid, TransactionStatus txStatus, XaTransaction xaTransaction,
+            boolean onePhase ) throws XAException
+    {
+        if ( !xaTransaction.isReadOnly() )
+        {
+            txStatus.markCommitStarted();
+            if ( xaTransaction.isRecovered() && xaTransaction.getCommitTxId() == -1 )
+            {
+                boolean previousRecoveredValue = dataSource.setRecovered( true );
+                try
+                {
+                    xaTransaction.setCommitTxId( dataSource.getLastCommittedTxId() + 1 );
+                }
+                finally
+                {
+                    dataSource.setRecovered( previousRecoveredValue );
+                }
+            }
+            xaTransaction.commit();
+        }
+        if ( !xaTransaction.isRecovered() )
+        {
+            log.done( xaTransaction.getIdentifier() );
+        }
+        else if ( !log.scanIsComplete() || recoveredTxCount > 0 )
+        {
+            int identifier = xaTransaction.getIdentifier();
+            Start startEntry = log.getStartEntry( identifier );
+            recoveredTransactions.add( new TransactionInfo( identifier, onePhase,
+                    xaTransaction.getCommitTxId(), startEntry.getMasterId(), startEntry.getChecksum() ) );
+        }
+        xidMap.remove( xid );
+        if ( xaTransaction.isRecovered() )
+        {
+            recoveredTxCount--;
+            checkIfRecoveryComplete();
+        }
+    }
+
+    /**
+     * Waits, releasing the monitor, until the transactions that have written
+     * their commit entries and wait for group commit have been applied.
+     * Called before a transaction that isn't group committed gets its id, and
+     * before transactions are applied from elsewhere.
+     */
+    private void awaitCommitsInFlight()
+    {
+        boolean interrupted = false;
+        while ( commitsInFlight > 0 )
+        {
+            try
+            {
+                wait();
+            }
+            catch ( InterruptedException e )
+            {
+                interrupted = true;
+            }
+        }
+        if ( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The transaction manager sets itself not ok, a kernel panic, on this error code. The transactions whose
+     * commit entries were written are left without done entries in the log, so that recovery decides them.
+     */
+    private XAException logForceFailed()
+    {
+        XAException e = new XAException( "Logical log of " + name + " failed to force a commit entry, " +
+                "no more transactions are committed until the database is recovered" );
+        e.errorCode = XAException.XAER_RMERR;
+        return Exceptions.withCause( e, logForceFailure );
+    }
+
+    private void awaitTurnToApply( long commitTicket )
+    {
+        boolean interrupted = false;
+        while ( appliedCommitTickets != commitTicket )
+        {
+            try
+            {
+                wait();
+            }
+            catch ( InterruptedException e )
+            {
+                interrupted = true;
+            }
+        }
+        if ( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private ForceMode getForceMode()
     {
         return transactionManager.getForceMode();
@@ -760,6 +923,7 @@ public class XaResourceManager
     public synchronized void applyCommittedTransaction(
             ReadableByteChannel transaction, long txId ) throws IOException
     {
+        awaitCommitsInFlight();
         long lastCommittedTxId = dataSource.getLastCommittedTxId();
         if ( lastCommittedTxId + 1 == txId )
         {
@@ -775,6 +939,7 @@ public class XaResourceManager
     public synchronized long applyPreparedTransaction(
             ReadableByteChannel transaction ) throws IOException
     {
+        awaitCommitsInFlight();
         try
         {
             long txId = TxIdGenerator.DEFAULT.generate( dataSource, 0 );
@@ -19,7 +19,6 @@
  */
 package org.neo4j.kernel.impl.util;
 
-import java.util.Collection;
 import java.util.NoSuchElementException;
 
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
@@ -29,13 +28,13 @@ public class CombinedRelIdIterator implements RelIdIterator
     private RelIdIterator srcIterator;
     private final RelIdIterator addIterator;
     private RelIdIterator currentIterator;
-    private final Collection<Long> removed;
+    private final PrimitiveLongSet removed;
     private final int type;
     private boolean nextElementDetermined;
     private long nextElement;
     
     public CombinedRelIdIterator( int type, DirectionWrapper direction, RelIdArray src,
-            RelIdArray add, Collection<Long> remove )
+            RelIdArray add, PrimitiveLongSet remove )
     {
         this.type = type;
         this.srcIterator = src != null ? src.iterator( direction ) : RelIdArray.EMPTY.iterator( direction );
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+/**
+ * A map from primitive longs to primitive longs, see
+ * {@link PrimitiveLongTable}. Absent keys are reported as {@link #NO_VALUE}.
+ */
+public class PrimitiveLongLongMap extends PrimitiveLongTable
+{
+    public static final long NO_VALUE = -1;
+
+    private long[] values = new long[capacity() + 1];
+
+    public PrimitiveLongLongMap()
+    {
+        super();
+    }
+
+    public PrimitiveLongLongMap( int initialCapacity )
+    {
+        super( initialCapacity );
+    }
+
+    /**
+     * @return the value of the key, or {@link #NO_VALUE} if it isn't in the
+     * map.
+     */
+    public long get( long key )
+    {
+        int slot = slotOf( key );
+        return slot == -1 ? NO_VALUE : values[slot];
+    }
+
+    public boolean containsKey( long key )
+    {
+        return slotOf( key ) != -1;
+    }
+
+    /**
+     * @return the previous value of the key, or {@link #NO_VALUE} if it wasn't
+     * in the map.
+     */
+    public long put( long key, long value )
+    {
+        int slot = addKey( key );
+        if ( slot < 0 )
+        {
+            values[-slot - 1] = value;
+            return NO_VALUE;
+        }
+        long previous = values[slot];
+        values[slot] = value;
+        return previous;
+    }
+
+    /**
+     * @return the value of the removed key, or {@link #NO_VALUE} if it wasn't
+     * in the map.
+     */
+    public long remove( long key )
+    {
+        int slot = slotOf( key );
+        if ( slot == -1 )
+        {
+            return NO_VALUE;
+        }
+        long value = values[slot];
+        removeSlot( slot );
+        return value;
+    }
+
+    public PrimitiveLongIterator keyIterator()
+    {
+        return iterateKeys();
+    }
+
+    @Override
+    Object newValues( int length )
+    {
+        long[] oldValues = values;
+        values = new long[length];
+        return oldValues;
+    }
+
+    @Override
+    void copyValue( int from, int to )
+    {
+        values[to] = values[from];
+    }
+
+    @Override
+    void copyValue( Object fromValues, int from, int to )
+    {
+        values[to] = ((long[]) fromValues)[from];
+    }
+
+    @Override
+    void clearValue( int slot )
+    {
+        values[slot] = 0;
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+/**
+ * A map from primitive longs to objects, see {@link PrimitiveLongTable}.
+ * Absent keys are reported as <code>null</code>, so <code>null</code> values
+ * can't be told apart from them.
+ */
+public class PrimitiveLongObjectMap<V> extends PrimitiveLongTable
+{
+    private Object[] values = new Object[capacity() + 1];
+
+    public PrimitiveLongObjectMap()
+    {
+        super();
+    }
+
+    public PrimitiveLongObjectMap( int initialCapacity )
+    {
+        super( initialCapacity );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public V get( long key )
+    {
+        int slot = slotOf( key );
+        return slot == -1 ? null : (V) values[slot];
+    }
+
+    public boolean containsKey( long key )
+    {
+        return slotOf( key ) != -1;
+    }
+
+    /**
+     * @return the previous value of the key, or <code>null</code> if it
+     * wasn't in the map.
+     */
+    @SuppressWarnings( "unchecked" )
+    public V put( long key, V value )
+    {
+        int slot = addKey( key );
+        if ( slot < 0 )
+        {
+            values[-slot - 1] = value;
+            return null;
+        }
+        V previous = (V) values[slot];
+        values[slot] = value;
+        return previous;
+    }
+
+    /**
+     * @return the value of the removed key, or <code>null</code> if it wasn't
+     * in the map.
+     */
+    @SuppressWarnings( "unchecked" )
+    public V remove( long key )
+    {
+        int slot = slotOf( key );
+        if ( slot == -1 )
+        {
+            return null;
+        }
+        V value = (V) values[slot];
+        removeSlot( slot );
+        return value;
+    }
+
+    public PrimitiveLongIterator keyIterator()
+    {
+        return iterateKeys();
+    }
+
+    @Override
+    Object newValues( int length )
+    {
+        Object[] oldValues = values;
+        values = new Object[length];
+        return oldValues;
+    }
+
+    @Override
+    void copyValue( int from, int to )
+    {
+        values[to] = values[from];
+    }
+
+    @Override
+    void copyValue( Object fromValues, int from, int to )
+    {
+        values[to] = ((Object[]) fromValues)[from];
+    }
+
+    @Override
+    void clearValue( int slot )
+    {
+        values[slot] = null;
+    }
+}
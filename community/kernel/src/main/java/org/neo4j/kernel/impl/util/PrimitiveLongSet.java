@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+/**
+ * A set of primitive longs, for when a {@link java.util.HashSet} of
+ * {@link Long} would box every id, see {@link PrimitiveLongTable}.
+ */
+public class PrimitiveLongSet extends PrimitiveLongTable
+{
+    public PrimitiveLongSet()
+    {
+        super();
+    }
+
+    public PrimitiveLongSet( int initialCapacity )
+    {
+        super( initialCapacity );
+    }
+
+    /**
+     * @return whether or not the value was added, i.e. wasn't in the set
+     * already.
+     */
+    public boolean add( long value )
+    {
+        return addKey( value ) < 0;
+    }
+
+    public boolean contains( long value )
+    {
+        return slotOf( value ) != -1;
+    }
+
+    /**
+     * @return whether or not the value was in the set.
+     */
+    public boolean remove( long value )
+    {
+        int slot = slotOf( value );
+        if ( slot == -1 )
+        {
+            return false;
+        }
+        removeSlot( slot );
+        return true;
+    }
+
+    public PrimitiveLongIterator iterator()
+    {
+        return iterateKeys();
+    }
+
+    @Override
+    Object newValues( int length )
+    {
+        return null;
+    }
+
+    @Override
+    void copyValue( int from, int to )
+    {
+    }
+
+    @Override
+    void copyValue( Object fromValues, int from, int to )
+    {
+    }
+
+    @Override
+    void clearValue( int slot )
+    {
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder( "[" );
+        for ( PrimitiveLongIterator iterator = iterator(); iterator.hasNext(); )
+        {
+            builder.append( iterator.next() ).append( iterator.hasNext() ? ", " : "" );
+        }
+        return builder.append( "]" ).toString();
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The keys of the primitive long collections, an open addressing hash table
+ * with linear probing. A free slot has the key 0, which makes a new table
+ * free without filling it. Since 0 is a valid key (the reference node has
+ * it), it gets the slot after the table, which is in use if
+ * {@link #hasZeroKey} is set. Removal shifts the following keys back into
+ * the gap, so there are no tombstones and lookups stay short.
+ * <p>
+ * Subclasses keep their values in arrays parallel to the keys, of length
+ * {@link #capacity()} + 1, and move them along in {@link #newValues(int)},
+ * {@link #copyValue(int, int)} and {@link #clearValue(int)}. Like the
+ * collections in java.util they aren't thread safe, and iterators over them
+ * don't support changes while iterating.
+ */
+abstract class PrimitiveLongTable
+{
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+    private boolean hasZeroKey;
+
+    PrimitiveLongTable()
+    {
+        this( DEFAULT_CAPACITY );
+    }
+
+    /**
+     * Subclasses allocate their first values in their field initializers,
+     * from {@link #capacity()}.
+     */
+    PrimitiveLongTable( int initialCapacity )
+    {
+        int capacity = DEFAULT_CAPACITY;
+        while ( capacity * 3 / 4 < initialCapacity )
+        {
+            capacity <<= 1;
+        }
+        keys = new long[capacity + 1];
+        mask = capacity - 1;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void clear()
+    {
+        if ( size > 0 )
+        {
+            keys = new long[capacity() + 1];
+            newValues( capacity() + 1 );
+            size = 0;
+            hasZeroKey = false;
+        }
+    }
+
+    final int capacity()
+    {
+        return mask + 1;
+    }
+
+    /**
+     * @return the slot of the key, or -1 if it isn't in the table.
+     */
+    final int slotOf( long key )
+    {
+        if ( key == 0 )
+        {
+            return hasZeroKey ? capacity() : -1;
+        }
+        for ( int slot = hash( key ) & mask; ; slot = (slot + 1) & mask )
+        {
+            long candidate = keys[slot];
+            if ( candidate == key )
+            {
+                return slot;
+            }
+            if ( candidate == 0 )
+            {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Adds the key, if it isn't in the table already.
+     *
+     * @return the slot of the key, as a negative number, -slot - 1, if the
+     * key was added.
+     */
+    final int addKey( long key )
+    {
+        if ( key == 0 )
+        {
+            if ( hasZeroKey )
+            {
+                return capacity();
+            }
+            hasZeroKey = true;
+            size++;
+            return -capacity() - 1;
+        }
+        int slot = probe( keys, mask, key );
+        if ( keys[slot] == key )
+        {
+            return slot;
+        }
+        if ( size + 1 > capacity() * 3 / 4 )
+        {
+            grow();
+            slot = probe( keys, mask, key );
+        }
+        keys[slot] = key;
+        size++;
+        return -slot - 1;
+    }
+
+    final void removeSlot( int slot )
+    {
+        size--;
+        if ( slot == capacity() )
+        {
+            hasZeroKey = false;
+            clearValue( slot );
+            return;
+        }
+        int gap = slot;
+        for ( int i = (slot + 1) & mask; keys[i] != 0; i = (i + 1) & mask )
+        {
+            // the key at i can fill the gap if the gap is between its home slot and i
+            int home = hash( keys[i] ) & mask;
+            if ( ((i - home) & mask) >= ((i - gap) & mask) )
+            {
+                keys[gap] = keys[i];
+                copyValue( i, gap );
+                gap = i;
+            }
+        }
+        keys[gap] = 0;
+        clearValue( gap );
+    }
+
+    final long keyAt( int slot )
+    {
+        return keys[slot];
+    }
+
+    /**
+     * @return the slots in use, in no particular order.
+     */
+    final SlotIterator slots()
+    {
+        return new SlotIterator();
+    }
+
+    final PrimitiveLongIterator iterateKeys()
+    {
+        final SlotIterator slots = slots();
+        return new PrimitiveLongIterator()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return slots.hasNext();
+            }
+
+            @Override
+            public long next()
+            {
+                return keys[slots.next()];
+            }
+        };
+    }
+
+    /**
+     * Allocates the values of a table of the given length.
+     *
+     * @return the values of the table before.
+     */
+    abstract Object newValues( int length );
+
+    abstract void copyValue( int from, int to );
+
+    /**
+     * Copies a value from the table before {@link #newValues(int)}.
+     */
+    abstract void copyValue( Object fromValues, int from, int to );
+
+    abstract void clearValue( int slot );
+
+    private void grow()
+    {
+        long[] oldKeys = keys;
+        int oldCapacity = capacity();
+        int newCapacity = oldCapacity * 2;
+        keys = new long[newCapacity + 1];
+        mask = newCapacity - 1;
+        Object oldValues = newValues( newCapacity + 1 );
+        for ( int i = 0; i < oldCapacity; i++ )
+        {
+            long key = oldKeys[i];
+            if ( key != 0 )
+            {
+                int slot = probe( keys, mask, key );
+                keys[slot] = key;
+                copyValue( oldValues, i, slot );
+            }
+        }
+        if ( hasZeroKey )
+        {
+            copyValue( oldValues, oldCapacity, newCapacity );
+        }
+    }
+
+    /*
+     * The slot of the key, or of the free slot it would go into.
+     */
+    private static int probe( long[] keys, int mask, long key )
+    {
+        int slot = hash( key ) & mask;
+        while ( keys[slot] != key && keys[slot] != 0 )
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash( long key )
+    {
+        // ids are mostly sequential, spread them over the table
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    final class SlotIterator
+    {
+        private int slot = -1;
+        private int next = findNext( 0 );
+
+        boolean hasNext()
+        {
+            return next != -1;
+        }
+
+        int next()
+        {
+            if ( next == -1 )
+            {
+                throw new NoSuchElementException();
+            }
+            slot = next;
+            next = findNext( slot + 1 );
+            return slot;
+        }
+
+        private int findNext( int from )
+        {
+            for ( int i = from; i < capacity(); i++ )
+            {
+                if ( keys[i] != 0 )
+                {
+                    return i;
+                }
+            }
+            return from <= capacity() && hasZeroKey ? capacity() : -1;
+        }
+    }
+}
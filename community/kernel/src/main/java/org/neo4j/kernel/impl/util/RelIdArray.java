@@ -270,6 +270,15 @@ public class RelIdArray implements SizeOfObject
         return direction.iterator( this );
     }
     
+    /**
+     * Unlike {@link #iterator(DirectionWrapper)} this only returns the ids added
+     * with exactly the given direction, i.e. loops only for {@link DirectionWrapper#BOTH}.
+     */
+    public RelIdIterator exactIterator( DirectionWrapper direction )
+    {
+        return new RelIdIteratorImpl( this, new DirectionWrapper[] { direction } );
+    }
+    
     public RelIdArray newSimilarInstance()
     {
         return new RelIdArray( type );
@@ -376,27 +385,69 @@ public class RelIdArray implements SizeOfObject
         }
     }
     
+    /**
+     * The ids of a block share the same high bits. A block keeps them in an
+     * int[] until it holds {@link #ENCODE_THRESHOLD} ids, which only the
+     * blocks of nodes with many relationships get to. If it then takes at
+     * most half the memory, the ids are from there on stored as
+     * the difference to the previous id. Ids of a relationship chain are often
+     * close to each other, so most differences fit in a single zig-zag encoded
+     * byte, the others take an escape byte followed by the whole difference.
+     * Unlike a variable number of bytes per id this doesn't keep the reader
+     * guessing, so reading ids that mostly fit in a byte is about as fast as
+     * reading an int[]. The encoding only allows appending and sequential
+     * reading, which is all loading and iterating needs.
+     */
     public static abstract class IdBlock implements SizeOfObject
     {
-        // First element is the actual length w/o the slack
-        private int[] ids = new int[3];
+        static final int ENCODE_THRESHOLD = 1024;
+        private static final int ESCAPE = 0xFF;
+        private static final int ESCAPED_SIZE = 5;
+        
+        // Exactly one of ids and bytes is set
+        private int[] ids = new int[2];
+        private byte[] bytes;
+        private int size;
+        private int length;
+        private int lastId;
         
         /**
          * @return a copy of itself. The copy is also shrunk so that there's no
-         * slack in the id array.
+         * slack in the id or byte array.
          */
         IdBlock copy()
         {
             IdBlock copy = copyInstance();
-            int length = length();
-            copy.ids = new int[length+1];
-            System.arraycopy( ids, 0, copy.ids, 0, length+1 );
+            copy.copyFrom( this );
+            if ( ids != null )
+            {
+                copy.ids = new int[length];
+                System.arraycopy( ids, 0, copy.ids, 0, length );
+            }
+            else
+            {
+                copy.bytes = new byte[size];
+                System.arraycopy( bytes, 0, copy.bytes, 0, size );
+            }
             return copy;
         }
         
+        /**
+         * Takes over the content of {@code block}, sharing its array.
+         */
+        void copyFrom( IdBlock block )
+        {
+            ids = block.ids;
+            bytes = block.bytes;
+            size = block.size;
+            length = block.length;
+            lastId = block.lastId;
+        }
+        
         public int sizeOfObjectInBytesIncludingOverhead()
         {
-            return withObjectOverhead( withReference( withArrayOverhead( 4*ids.length ) ) );
+            int arraySize = ids != null ? withArrayOverhead( 4*ids.length ) : withArrayOverhead( bytes.length );
+            return withObjectOverhead( withReference( arraySize ) + SizeOfs.REFERENCE_SIZE + 4*3 );
         }
         
         /**
@@ -405,7 +456,8 @@ public class RelIdArray implements SizeOfObject
          */
         IdBlock shrink()
         {
-            return length() == ids.length-1 ? this : copy();
+            boolean full = ids != null ? length == ids.length : size == bytes.length;
+            return full ? this : copy();
         }
         
         /**
@@ -415,7 +467,7 @@ public class RelIdArray implements SizeOfObject
         
         int length()
         {
-            return ids[0];
+            return length;
         }
 
         IdBlock getPrev()
@@ -430,52 +482,174 @@ public class RelIdArray implements SizeOfObject
         // Assume id has same high bits
         void add( int id )
         {
-            int length = ensureSpace( 1 );
-            ids[length+1] = id;
-            ids[0] = length+1;
+            if ( ids != null && ensureIdSpace( 1 ) )
+            {
+                ids[length] = id;
+            }
+            else
+            {
+                ensureByteSpace( ESCAPED_SIZE );
+                size = writeDelta( bytes, size, id - lastId );
+            }
+            lastId = id;
+            length++;
         }
         
-        int ensureSpace( int delta )
+        /**
+         * Makes room for {@code count} more ids in the int[], unless growing it
+         * is the moment to switch to the encoding.
+         *
+         * @return {@code true} if the ids are still kept in the int[].
+         */
+        private boolean ensureIdSpace( int count )
         {
-            int length = length();
-            int newLength = length+delta;
-            if ( newLength >= ids.length-1 )
+            int newLength = length+count;
+            if ( newLength > ids.length )
             {
+                if ( newLength >= ENCODE_THRESHOLD && encodeIfSmaller() )
+                {
+                    return false;
+                }
                 int calculatedLength = ids.length*2;
                 if ( newLength > calculatedLength )
                 {
                     calculatedLength = newLength*2;
                 }
                 int[] newIds = new int[calculatedLength];
-                System.arraycopy( ids, 0, newIds, 0, length+1 );
+                System.arraycopy( ids, 0, newIds, 0, length );
                 ids = newIds;
             }
-            return length;
+            return true;
         }
         
-        void addAll( IdBlock block )
+        /**
+         * Encodes the ids if that takes at most half of what they take in the
+         * int[]. Only asked when the int[] is full, so a block with ids too far
+         * apart for the encoding to pay off is only checked each time it doubles.
+         */
+        private boolean encodeIfSmaller()
         {
-            int otherBlockLength = block.length();
-            int length = ensureSpace( otherBlockLength+1 );
-            System.arraycopy( block.ids, 1, ids, length+1, otherBlockLength );
-            ids[0] = otherBlockLength+length;
+            int encodedSize = 0;
+            int previousId = 0;
+            for ( int i = 0; i < length; i++ )
+            {
+                encodedSize += deltaSize( ids[i] - previousId );
+                previousId = ids[i];
+            }
+            if ( encodedSize > 2*length )
+            {
+                return false;
+            }
+            byte[] encoded = new byte[encodedSize + encodedSize/2 + 5];
+            int position = 0;
+            previousId = 0;
+            for ( int i = 0; i < length; i++ )
+            {
+                position = writeDelta( encoded, position, ids[i] - previousId );
+                previousId = ids[i];
+            }
+            bytes = encoded;
+            size = position;
+            ids = null;
+            return true;
         }
         
-        long get( int index )
+        private void ensureByteSpace( int delta )
         {
-            assert index >= 0 && index < length();
-            return transform( ids[index+1] );
+            int newSize = size+delta;
+            if ( newSize > bytes.length )
+            {
+                int calculatedLength = bytes.length*2;
+                if ( newSize > calculatedLength )
+                {
+                    calculatedLength = newSize*2;
+                }
+                byte[] newBytes = new byte[calculatedLength];
+                System.arraycopy( bytes, 0, newBytes, 0, size );
+                bytes = newBytes;
+            }
+        }
+        
+        void addAll( IdBlock block )
+        {
+            if ( block.length == 0 )
+            {
+                return;
+            }
+            if ( block.ids != null && ids != null && ensureIdSpace( block.length ) )
+            {
+                System.arraycopy( block.ids, 0, ids, length, block.length );
+                lastId = block.lastId;
+                length += block.length;
+            }
+            else if ( block.bytes != null && bytes != null )
+            {
+                // Only the first id of the other block is relative to something else,
+                // the rest of its deltas can be copied as they are
+                int firstDeltaSize = readDeltaSize( block.bytes, 0 );
+                int firstId = readDelta( block.bytes, 0 );
+                ensureByteSpace( ESCAPED_SIZE + block.size - firstDeltaSize );
+                size = writeDelta( bytes, size, firstId - lastId );
+                System.arraycopy( block.bytes, firstDeltaSize, bytes, size, block.size - firstDeltaSize );
+                size += block.size - firstDeltaSize;
+                lastId = block.lastId;
+                length += block.length;
+            }
+            else
+            {
+                for ( IteratorState iterator = new IteratorState( block, 0 ); iterator.hasNext(); )
+                {
+                    add( iterator.nextLowBits() );
+                }
+            }
         }
         
         abstract long transform( int id );
         
-        void set( long id, int index )
+        abstract long getHighBits();
+        
+        private static int deltaSize( int delta )
         {
-            // Assume same high bits
-            ids[index+1] = (int) id;
+            int value = (delta << 1) ^ (delta >> 31);
+            return value >= 0 && value < ESCAPE ? 1 : ESCAPED_SIZE;
         }
         
-        abstract long getHighBits();
+        private static int writeDelta( byte[] bytes, int position, int delta )
+        {
+            int value = (delta << 1) ^ (delta >> 31);
+            if ( value >= 0 && value < ESCAPE )
+            {
+                bytes[position++] = (byte) value;
+                return position;
+            }
+            bytes[position++] = (byte) ESCAPE;
+            bytes[position++] = (byte) (delta >>> 24);
+            bytes[position++] = (byte) (delta >>> 16);
+            bytes[position++] = (byte) (delta >>> 8);
+            bytes[position++] = (byte) delta;
+            return position;
+        }
+        
+        static int readDelta( byte[] bytes, int position )
+        {
+            int value = bytes[position] & 0xFF;
+            if ( value != ESCAPE )
+            {
+                return (value >>> 1) ^ -(value & 1);
+            }
+            return readEscaped( bytes, position + 1 );
+        }
+        
+        static int readEscaped( byte[] bytes, int position )
+        {
+            return (bytes[position] << 24) | ((bytes[position+1] & 0xFF) << 16) |
+                    ((bytes[position+2] & 0xFF) << 8) | (bytes[position+3] & 0xFF);
+        }
+        
+        static int readDeltaSize( byte[] bytes, int position )
+        {
+            return (bytes[position] & 0xFF) != ESCAPE ? 1 : ESCAPED_SIZE;
+        }
     }
     
     private static class LowIdBlock extends IdBlock
@@ -490,7 +664,7 @@ public class RelIdArray implements SizeOfObject
         IdBlock upgradeIfNeeded()
         {
             IdBlock highBlock = new HighIdBlock( 0 );
-            highBlock.ids = ((IdBlock)this).ids;
+            highBlock.copyFrom( this );
             return highBlock;
         }
 
@@ -586,6 +760,10 @@ public class RelIdArray implements SizeOfObject
         private int blockIndex;
         private IdBlock block;
         private int relativePosition;
+        // Where the encoded id after the first decodedCount ones starts, and the one before it
+        private int bytePosition;
+        private int previousId;
+        private int decodedCount;
         
         public IteratorState( IdBlock block, int relativePosition )
         {
@@ -599,6 +777,9 @@ public class RelIdArray implements SizeOfObject
             {
                 block = block.getPrev();
                 relativePosition = 0;
+                bytePosition = 0;
+                previousId = 0;
+                decodedCount = 0;
                 blockIndex++;
                 return true;
             }
@@ -615,7 +796,46 @@ public class RelIdArray implements SizeOfObject
          */
         long next()
         {
-            return block.get( relativePosition++ );
+            return block.transform( nextLowBits() );
+        }
+        
+        int nextLowBits()
+        {
+            int[] ids = block.ids;
+            if ( ids != null )
+            {
+                return ids[relativePosition++];
+            }
+            if ( decodedCount != relativePosition )
+            {
+                // The block got encoded after having been read from as an int[]
+                seekEncoded();
+            }
+            byte[] bytes = block.bytes;
+            int value = bytes[bytePosition++] & 0xFF;
+            if ( value != IdBlock.ESCAPE )
+            {
+                previousId += (value >>> 1) ^ -(value & 1);
+            }
+            else
+            {
+                previousId += IdBlock.readEscaped( bytes, bytePosition );
+                bytePosition += IdBlock.ESCAPED_SIZE - 1;
+            }
+            relativePosition++;
+            decodedCount++;
+            return previousId;
+        }
+        
+        private void seekEncoded()
+        {
+            bytePosition = 0;
+            previousId = 0;
+            for ( decodedCount = 0; decodedCount < relativePosition; decodedCount++ )
+            {
+                previousId += IdBlock.readDelta( block.bytes, bytePosition );
+                bytePosition += IdBlock.readDeltaSize( block.bytes, bytePosition );
+            }
         }
 
         public void update( IdBlock lastBlock )
@@ -789,6 +1009,20 @@ public class RelIdArray implements SizeOfObject
     }
     
     public static RelIdArray from( RelIdArray src, RelIdArray add, Collection<Long> remove )
+    {
+        PrimitiveLongSet removeSet = null;
+        if ( remove != null )
+        {
+            removeSet = new PrimitiveLongSet( remove.size() );
+            for ( long id : remove )
+            {
+                removeSet.add( id );
+            }
+        }
+        return from( src, add, removeSet );
+    }
+
+    public static RelIdArray from( RelIdArray src, RelIdArray add, PrimitiveLongSet remove )
     {
         if ( remove == null )
         {
@@ -813,8 +1047,7 @@ public class RelIdArray implements SizeOfObject
             if ( src != null )
             {
                 newArray = src.newSimilarInstance();
-                newArray.addAll( src );
-                evictExcluded( newArray, remove );
+                addAllExcluding( src, newArray, remove );
             }
             else
             {
@@ -836,30 +1069,16 @@ public class RelIdArray implements SizeOfObject
         }
     }
 
-    private static void evictExcluded( RelIdArray ids, Collection<Long> excluded )
+    private static void addAllExcluding( RelIdArray source, RelIdArray target, PrimitiveLongSet excluded )
     {
-        for ( RelIdIteratorImpl iterator = (RelIdIteratorImpl) DirectionWrapper.BOTH.iterator( ids ); iterator.hasNext(); )
+        for ( DirectionWrapper direction : DirectionWrapper.values() )
         {
-            long value = iterator.next();
-            if ( excluded.contains( value ) )
+            for ( RelIdIterator iterator = source.exactIterator( direction ); iterator.hasNext(); )
             {
-                boolean swapSuccessful = false;
-                IteratorState state = iterator.currentState;
-                IdBlock block = state.block;
-                for ( int j = block.length() - 1; j >= state.relativePosition; j--)
-                {
-                    long backValue = block.get( j );
-                    block.ids[0] = block.ids[0]-1;
-                    if ( !excluded.contains( backValue) )
-                    {
-                        block.set( backValue, state.relativePosition-1 );
-                        swapSuccessful = true;
-                        break;
-                    }
-                }
-                if ( !swapSuccessful ) // all elements from pos in remove
+                long value = iterator.next();
+                if ( !excluded.contains( value ) )
                 {
-                    block.ids[0] = block.ids[0]-1;
+                    target.add( value, direction );
                 }
             }
         }
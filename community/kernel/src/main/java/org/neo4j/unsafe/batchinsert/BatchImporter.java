@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.unsafe.batchinsert;
+
+/**
+ * Imports large amounts of nodes and relationships into a store in one go,
+ * rather than one entity at a time like the {@link BatchInserter}. The input
+ * goes through a pipeline where the properties are encoded by several threads
+ * in parallel while the records are written to the store in input order by a
+ * single thread. The relationships are linked into the chains of their nodes
+ * afterwards, in sequential passes over the relationship store.
+ * <p>
+ * The imported nodes get consecutive ids, in input order, starting at the
+ * high id of the node store. Relationships refer to their nodes by position
+ * in the node input and can only connect nodes imported together with them.
+ * <p>
+ * Like the batch inserter there is no support for transactions. If the import
+ * fails, or {@link #shutdown()} isn't invoked after it, the store has to be
+ * considered inconsistent and the import has to be re-done from scratch.
+ */
+public interface BatchImporter
+{
+    /**
+     * Imports the given nodes, followed by the given relationships. Each of
+     * the inputs is iterated once.
+     *
+     * @param nodes the nodes to import.
+     * @param relationships the relationships to import, connecting the nodes
+     * by their position in <code>nodes</code>.
+     * @return the number of entities and the time spent in each stage of the
+     * import.
+     */
+    public ImportStatistics doImport( Iterable<InputNode> nodes, Iterable<InputRelationship> relationships );
+
+    /**
+     * Shuts down this importer and the store it imported into. Must be invoked
+     * and complete successfully for the store to be in consistent state.
+     */
+    public void shutdown();
+}
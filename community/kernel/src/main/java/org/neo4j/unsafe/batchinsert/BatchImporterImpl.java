@@ -0,0 +1,710 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.unsafe.batchinsert;
+
+import static org.neo4j.helpers.Exceptions.launderedException;
+import static org.neo4j.helpers.Settings.INTEGER;
+import static org.neo4j.helpers.Settings.NO_DEFAULT;
+import static org.neo4j.helpers.Settings.min;
+import static org.neo4j.helpers.Settings.setting;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.graphdb.config.Setting;
+import org.neo4j.helpers.NamedThreadFactory;
+import org.neo4j.kernel.IdType;
+import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+import org.neo4j.kernel.impl.nioneo.store.IdGeneratorImpl;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.PropertyBlock;
+import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
+import org.neo4j.kernel.impl.nioneo.store.UnderlyingStorageException;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+
+/**
+ * Runs the import of a {@link BatchImporter} on top of a
+ * {@link BatchInserterImpl}, which opens the store and keeps track of the
+ * property keys and relationship types.
+ * <p>
+ * Nodes and relationships are read, and their property keys and relationship
+ * types resolved, in input order by the thread calling
+ * {@link #doImport(Iterable, Iterable)}. Batches of them are handed to a pool
+ * of threads encoding their properties, allocating dynamic records as needed,
+ * and the encoded batches are written to the store by the calling thread, in
+ * input order again. While doing so the degree of each node is counted, which
+ * decides which nodes are dense. The relationships are then linked into the
+ * chains of their nodes by a pass over the relationship store setting the next
+ * relationship of each record, followed by a pass in the opposite direction
+ * setting the previous ones.
+ */
+class BatchImporterImpl implements BatchImporter
+{
+    public static abstract class Configuration
+    {
+        @SuppressWarnings("unchecked")
+        public static final Setting<Integer> processors =
+                setting( "batch_import.processors", INTEGER, NO_DEFAULT, min( 1 ) );
+        @SuppressWarnings("unchecked")
+        public static final Setting<Integer> batch_size =
+                setting( "batch_import.batch_size", INTEGER, "10000", min( 1 ) );
+    }
+
+    private final BatchInserterImpl inserter;
+    private final NeoStore neoStore;
+    private final int processors;
+    private final int batchSize;
+
+    BatchImporterImpl( String storeDir, FileSystemAbstraction fileSystem, Map<String, String> config )
+    {
+        this.inserter = new BatchInserterImpl( storeDir, fileSystem, config );
+        this.neoStore = inserter.getNeoStore();
+        Config importConfig = new Config( config, Configuration.class );
+        Integer configuredProcessors = importConfig.get( Configuration.processors );
+        this.processors = configuredProcessors != null ? configuredProcessors :
+                Runtime.getRuntime().availableProcessors();
+        this.batchSize = importConfig.get( Configuration.batch_size );
+    }
+
+    @Override
+    public ImportStatistics doImport( Iterable<InputNode> nodes, Iterable<InputRelationship> relationships )
+    {
+        ImportStatistics statistics = new ImportStatistics();
+        ExecutorService encoders = Executors.newFixedThreadPool( processors,
+                new NamedThreadFactory( "Batch import property encoder" ) );
+        try
+        {
+            NodeImporter nodeImporter = new NodeImporter();
+            long nodeCount = importEntities( ImportStatistics.NODES, nodes, nodeImporter, encoders, statistics );
+            RelationshipImporter relationshipImporter = new RelationshipImporter( nodeImporter, nodeCount );
+            long relationshipCount = importEntities( ImportStatistics.RELATIONSHIPS, relationships,
+                    relationshipImporter, encoders, statistics );
+            new RelationshipLinker( nodeImporter, nodeCount, relationshipImporter, relationshipCount )
+                    .link( statistics );
+        }
+        finally
+        {
+            encoders.shutdownNow();
+        }
+        inserter.getMessageLog().logMessage( "Imported into " + inserter.getStoreDir() + "\n" + statistics, true );
+        return statistics;
+    }
+
+    @Override
+    public void shutdown()
+    {
+        inserter.shutdown();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BatchImporter[" + inserter.getStoreDir() + "]";
+    }
+
+    private <T> long importEntities( String stageName, Iterable<T> input, EntityImporter<T> importer,
+                                     ExecutorService encoders, ImportStatistics statistics )
+    {
+        long startTime = System.currentTimeMillis();
+        long readNanos = 0, writeNanos = 0;
+        AtomicLong encodeNanos = new AtomicLong();
+        Deque<Future<Batch<T>>> encoding = new ArrayDeque<Future<Batch<T>>>();
+        long index = 0;
+        Iterator<T> items = input.iterator();
+        while ( items.hasNext() )
+        {
+            long readStart = System.nanoTime();
+            Batch<T> batch = new Batch<T>( index, batchSize );
+            while ( batch.items.size() < batchSize && items.hasNext() )
+            {
+                T item = items.next();
+                importer.read( index++, item );
+                Map<String, Object> properties = importer.propertiesOf( item );
+                int[] keyIds = new int[properties.size()];
+                Object[] values = new Object[properties.size()];
+                int i = 0;
+                for ( Map.Entry<String, Object> property : properties.entrySet() )
+                {
+                    keyIds[i] = inserter.getOrCreatePropertyKeyId( property.getKey() );
+                    values[i++] = property.getValue();
+                }
+                batch.add( item, keyIds, values );
+            }
+            readNanos += System.nanoTime() - readStart;
+            encoding.addLast( encoders.submit( new PropertyEncoder<T>( batch, encodeNanos ) ) );
+            // keep the encoders busy with the following batches while the oldest one is written
+            if ( encoding.size() > processors * 2 )
+            {
+                writeNanos += write( encoding.removeFirst(), importer );
+            }
+        }
+        while ( !encoding.isEmpty() )
+        {
+            writeNanos += write( encoding.removeFirst(), importer );
+        }
+        statistics.add( new ImportStatistics.Stage( stageName, index, System.currentTimeMillis() - startTime )
+                .withStep( "read", readNanos / 1000000 )
+                .withStep( "encode", encodeNanos.get() / 1000000 )
+                .withStep( "write", writeNanos / 1000000 ) );
+        return index;
+    }
+
+    private <T> long write( Future<Batch<T>> encoded, EntityImporter<T> importer )
+    {
+        Batch<T> batch;
+        try
+        {
+            batch = encoded.get();
+        }
+        catch ( InterruptedException e )
+        {
+            throw new RuntimeException( e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw launderedException( e.getCause() );
+        }
+        long start = System.nanoTime();
+        importer.reserveIds( batch.firstIndex + batch.items.size() );
+        for ( int i = 0; i < batch.items.size(); i++ )
+        {
+            long firstProperty = inserter.createPropertyChain( batch.encoded.get( i ) );
+            importer.write( batch.firstIndex + i, batch.items.get( i ), firstProperty );
+        }
+        return System.nanoTime() - start;
+    }
+
+    /*
+     * The ids handed out by the id generators skip the reserved id, so do the
+     * ids assigned to the imported entities.
+     */
+    private static long idOf( long firstId, long index )
+    {
+        long id = firstId + index;
+        return firstId <= IdGeneratorImpl.INTEGER_MINUS_ONE && id >= IdGeneratorImpl.INTEGER_MINUS_ONE ? id + 1 : id;
+    }
+
+    private static long indexOf( long firstId, long id )
+    {
+        long index = id - firstId;
+        return firstId <= IdGeneratorImpl.INTEGER_MINUS_ONE && id > IdGeneratorImpl.INTEGER_MINUS_ONE ?
+                index - 1 : index;
+    }
+
+    private static class Batch<T>
+    {
+        final long firstIndex;
+        final List<T> items;
+        final List<int[]> keyIds;
+        final List<Object[]> values;
+        final List<List<PropertyBlock>> encoded;
+
+        Batch( long firstIndex, int size )
+        {
+            this.firstIndex = firstIndex;
+            this.items = new ArrayList<T>( size );
+            this.keyIds = new ArrayList<int[]>( size );
+            this.values = new ArrayList<Object[]>( size );
+            this.encoded = new ArrayList<List<PropertyBlock>>( size );
+        }
+
+        void add( T item, int[] itemKeyIds, Object[] itemValues )
+        {
+            items.add( item );
+            keyIds.add( itemKeyIds );
+            values.add( itemValues );
+        }
+    }
+
+    private class PropertyEncoder<T> implements Callable<Batch<T>>
+    {
+        private final Batch<T> batch;
+        private final AtomicLong encodeNanos;
+
+        PropertyEncoder( Batch<T> batch, AtomicLong encodeNanos )
+        {
+            this.batch = batch;
+            this.encodeNanos = encodeNanos;
+        }
+
+        @Override
+        public Batch<T> call()
+        {
+            long start = System.nanoTime();
+            PropertyStore propertyStore = neoStore.getPropertyStore();
+            for ( int i = 0; i < batch.items.size(); i++ )
+            {
+                int[] keyIds = batch.keyIds.get( i );
+                Object[] values = batch.values.get( i );
+                List<PropertyBlock> blocks = new ArrayList<PropertyBlock>( keyIds.length );
+                for ( int j = 0; j < keyIds.length; j++ )
+                {
+                    PropertyBlock block = new PropertyBlock();
+                    propertyStore.encodeValue( block, keyIds[j], values[j] );
+                    blocks.add( block );
+                }
+                batch.encoded.add( blocks );
+            }
+            encodeNanos.addAndGet( System.nanoTime() - start );
+            return batch;
+        }
+    }
+
+    private abstract class EntityImporter<T>
+    {
+        final long firstId;
+        private final long maxId;
+
+        EntityImporter( long firstId, long maxId )
+        {
+            this.firstId = firstId;
+            this.maxId = maxId;
+        }
+
+        long idOf( long index )
+        {
+            long id = BatchImporterImpl.idOf( firstId, index );
+            if ( id > maxId )
+            {
+                throw new UnderlyingStorageException( "Id capacity exceeded" );
+            }
+            return id;
+        }
+
+        long indexOf( long id )
+        {
+            return BatchImporterImpl.indexOf( firstId, id );
+        }
+
+        abstract Map<String, Object> propertiesOf( T item );
+
+        /**
+         * Called for each item, in input order, before its properties are encoded.
+         */
+        void read( long index, T item )
+        {
+        }
+
+        /**
+         * Called for each item, in input order, after its properties have been
+         * written.
+         */
+        abstract void write( long index, T item, long firstProperty );
+
+        /**
+         * Makes room in the store for the records of the given number of items.
+         */
+        abstract void reserveIds( long count );
+    }
+
+    private class NodeImporter extends EntityImporter<InputNode>
+    {
+        private final NodeStore nodeStore;
+
+        NodeImporter()
+        {
+            super( neoStore.getNodeStore().getHighId(), IdType.NODE.getMaxValue() );
+            this.nodeStore = neoStore.getNodeStore();
+        }
+
+        @Override
+        Map<String, Object> propertiesOf( InputNode node )
+        {
+            return node.getProperties();
+        }
+
+        @Override
+        void write( long index, InputNode node, long firstProperty )
+        {
+            NodeRecord record = new NodeRecord( idOf( index ), Record.NO_NEXT_RELATIONSHIP.intValue(),
+                    firstProperty );
+            record.setInUse( true );
+            record.setCreated();
+            nodeStore.updateRecord( record );
+        }
+
+        @Override
+        void reserveIds( long count )
+        {
+            nodeStore.setHighId( idOf( count - 1 ) + 1 );
+        }
+    }
+
+    private class RelationshipImporter extends EntityImporter<InputRelationship>
+    {
+        private final RelationshipStore relationshipStore;
+        private final NodeImporter nodes;
+        private final long nodeCount;
+        final LongArray degrees;
+
+        RelationshipImporter( NodeImporter nodes, long nodeCount )
+        {
+            super( neoStore.getRelationshipStore().getHighId(), IdType.RELATIONSHIP.getMaxValue() );
+            this.relationshipStore = neoStore.getRelationshipStore();
+            this.nodes = nodes;
+            this.nodeCount = nodeCount;
+            this.degrees = new LongArray( nodeCount, 0 );
+        }
+
+        @Override
+        Map<String, Object> propertiesOf( InputRelationship relationship )
+        {
+            return relationship.getProperties();
+        }
+
+        @Override
+        void read( long index, InputRelationship relationship )
+        {
+            long startNode = relationship.getStartNode();
+            long endNode = relationship.getEndNode();
+            assertImportedNode( index, startNode );
+            assertImportedNode( index, endNode );
+            degrees.set( startNode, degrees.get( startNode ) + 1 );
+            if ( endNode != startNode )
+            {
+                degrees.set( endNode, degrees.get( endNode ) + 1 );
+            }
+        }
+
+        private void assertImportedNode( long index, long node )
+        {
+            if ( node < 0 || node >= nodeCount )
+            {
+                throw new IllegalArgumentException( "Relationship " + index + " refers to node " + node +
+                        ", but only " + nodeCount + " nodes were imported" );
+            }
+        }
+
+        @Override
+        void write( long index, InputRelationship relationship, long firstProperty )
+        {
+            int typeId = inserter.getOrCreateRelationshipTypeId( relationship.getType().name() );
+            RelationshipRecord record = new RelationshipRecord( idOf( index ),
+                    nodes.idOf( relationship.getStartNode() ), nodes.idOf( relationship.getEndNode() ), typeId );
+            record.setInUse( true );
+            record.setCreated();
+            record.setNextProp( firstProperty );
+            relationshipStore.updateRecord( record );
+        }
+
+        @Override
+        void reserveIds( long count )
+        {
+            relationshipStore.setHighId( idOf( count - 1 ) + 1 );
+        }
+    }
+
+    /**
+     * Links the imported relationships into the chains of their nodes. The
+     * chains are in descending id order, the same order the batch inserter
+     * creates them in, so the next relationship in a chain is the one of the
+     * same chain last seen when going through the relationships in ascending
+     * id order, and the previous one is the one last seen when going in
+     * descending order.
+     */
+    private class RelationshipLinker
+    {
+        private final NodeImporter nodes;
+        private final long nodeCount;
+        private final RelationshipImporter relationships;
+        private final long relationshipCount;
+        private final int denseNodeThreshold;
+        private final Map<Long, DenseNode> denseNodes = new HashMap<Long, DenseNode>();
+        // the last relationship seen in the chain of each sparse node
+        private final LongArray lastSeen;
+
+        RelationshipLinker( NodeImporter nodes, long nodeCount, RelationshipImporter relationships,
+                            long relationshipCount )
+        {
+            this.nodes = nodes;
+            this.nodeCount = nodeCount;
+            this.relationships = relationships;
+            this.relationshipCount = relationshipCount;
+            this.denseNodeThreshold = neoStore.getDenseNodeThreshold();
+            this.lastSeen = new LongArray( nodeCount, Record.NO_NEXT_RELATIONSHIP.intValue() );
+        }
+
+        void link( ImportStatistics statistics )
+        {
+            long startTime = System.currentTimeMillis();
+            linkNextRelationships();
+            statistics.add( new ImportStatistics.Stage( ImportStatistics.NEXT_RELATIONSHIPS, relationshipCount,
+                    System.currentTimeMillis() - startTime ) );
+
+            startTime = System.currentTimeMillis();
+            long nodesWithRelationships = writeChainHeads();
+            statistics.add( new ImportStatistics.Stage( ImportStatistics.CHAIN_HEADS, nodesWithRelationships,
+                    System.currentTimeMillis() - startTime ) );
+
+            startTime = System.currentTimeMillis();
+            linkPreviousRelationships();
+            statistics.add( new ImportStatistics.Stage( ImportStatistics.PREVIOUS_RELATIONSHIPS, relationshipCount,
+                    System.currentTimeMillis() - startTime ) );
+        }
+
+        private boolean isDense( long node )
+        {
+            return denseNodeThreshold != 0 && relationships.degrees.get( node ) > denseNodeThreshold;
+        }
+
+        private void linkNextRelationships()
+        {
+            RelationshipStore relationshipStore = neoStore.getRelationshipStore();
+            for ( long index = 0; index < relationshipCount; index++ )
+            {
+                RelationshipRecord record = relationshipStore.getRecord( relationships.idOf( index ) );
+                long firstNode = nodes.indexOf( record.getFirstNode() );
+                long secondNode = nodes.indexOf( record.getSecondNode() );
+                if ( firstNode == secondNode )
+                {
+                    long next = nextInChain( firstNode, record, DirectionWrapper.BOTH );
+                    record.setFirstNextRel( next );
+                    record.setSecondNextRel( next );
+                }
+                else
+                {
+                    record.setFirstNextRel( nextInChain( firstNode, record, DirectionWrapper.OUTGOING ) );
+                    record.setSecondNextRel( nextInChain( secondNode, record, DirectionWrapper.INCOMING ) );
+                }
+                relationshipStore.updateRecord( record );
+            }
+        }
+
+        private long nextInChain( long node, RelationshipRecord record, DirectionWrapper direction )
+        {
+            long next;
+            if ( isDense( node ) )
+            {
+                RelationshipGroupRecord group = denseNode( node ).group( record.getType() );
+                next = group.getFirst( direction );
+                group.setFirst( direction, record.getId() );
+                group.setCount( direction, group.getCount( direction ) + 1 );
+            }
+            else
+            {
+                next = lastSeen.get( node );
+                lastSeen.set( node, record.getId() );
+            }
+            return next;
+        }
+
+        private DenseNode denseNode( long node )
+        {
+            DenseNode denseNode = denseNodes.get( node );
+            if ( denseNode == null )
+            {
+                denseNode = new DenseNode( nodes.idOf( node ) );
+                denseNodes.put( node, denseNode );
+            }
+            return denseNode;
+        }
+
+        /*
+         * The last relationship seen in each chain is now the first one of it.
+         */
+        private long writeChainHeads()
+        {
+            NodeStore nodeStore = neoStore.getNodeStore();
+            RelationshipGroupStore groupStore = neoStore.getRelationshipGroupStore();
+            long nodesWithRelationships = 0;
+            for ( long node = 0; node < nodeCount; node++ )
+            {
+                if ( relationships.degrees.get( node ) == 0 )
+                {
+                    continue;
+                }
+                nodesWithRelationships++;
+                NodeRecord record = nodeStore.getRecord( nodes.idOf( node ) );
+                if ( isDense( node ) )
+                {
+                    record.setFirstGroup( denseNodes.get( node ).writeGroups( groupStore ) );
+                }
+                else
+                {
+                    record.setNextRel( lastSeen.get( node ) );
+                }
+                nodeStore.updateRecord( record );
+            }
+            return nodesWithRelationships;
+        }
+
+        private void linkPreviousRelationships()
+        {
+            lastSeen.fill( Record.NO_PREV_RELATIONSHIP.intValue() );
+            RelationshipStore relationshipStore = neoStore.getRelationshipStore();
+            for ( long index = relationshipCount - 1; index >= 0; index-- )
+            {
+                RelationshipRecord record = relationshipStore.getRecord( relationships.idOf( index ) );
+                long firstNode = nodes.indexOf( record.getFirstNode() );
+                long secondNode = nodes.indexOf( record.getSecondNode() );
+                if ( firstNode == secondNode )
+                {
+                    long previous = previousInChain( firstNode, record, DirectionWrapper.BOTH );
+                    record.setFirstPrevRel( previous );
+                    record.setSecondPrevRel( previous );
+                }
+                else
+                {
+                    record.setFirstPrevRel( previousInChain( firstNode, record, DirectionWrapper.OUTGOING ) );
+                    record.setSecondPrevRel( previousInChain( secondNode, record, DirectionWrapper.INCOMING ) );
+                }
+                relationshipStore.updateRecord( record );
+            }
+        }
+
+        private long previousInChain( long node, RelationshipRecord record, DirectionWrapper direction )
+        {
+            long previous;
+            if ( isDense( node ) )
+            {
+                long[] lastSeenInGroup = denseNodes.get( node ).lastSeen( record.getType() );
+                previous = lastSeenInGroup[direction.ordinal()];
+                lastSeenInGroup[direction.ordinal()] = record.getId();
+            }
+            else
+            {
+                previous = lastSeen.get( node );
+                lastSeen.set( node, record.getId() );
+            }
+            return previous;
+        }
+    }
+
+    private class DenseNode
+    {
+        private final long nodeId;
+        private final Map<Integer, RelationshipGroupRecord> groups = new TreeMap<Integer, RelationshipGroupRecord>();
+        // the last relationship seen in each chain of each group, when linking previous relationships
+        private final Map<Integer, long[]> lastSeen = new HashMap<Integer, long[]>();
+
+        DenseNode( long nodeId )
+        {
+            this.nodeId = nodeId;
+        }
+
+        RelationshipGroupRecord group( int type )
+        {
+            RelationshipGroupRecord group = groups.get( type );
+            if ( group == null )
+            {
+                group = new RelationshipGroupRecord( neoStore.getRelationshipGroupStore().nextId(), type, nodeId );
+                group.setInUse( true );
+                groups.put( type, group );
+            }
+            return group;
+        }
+
+        /**
+         * @return the id of the first group, for the node record to point to.
+         */
+        long writeGroups( RelationshipGroupStore groupStore )
+        {
+            RelationshipGroupRecord previous = null;
+            for ( RelationshipGroupRecord group : groups.values() )
+            {
+                if ( previous == null )
+                {
+                    group.setFirst( true );
+                }
+                else
+                {
+                    previous.setNext( group.getId() );
+                    groupStore.updateRecord( previous );
+                }
+                previous = group;
+            }
+            groupStore.updateRecord( previous );
+            return groups.values().iterator().next().getId();
+        }
+
+        long[] lastSeen( int type )
+        {
+            long[] chains = lastSeen.get( type );
+            if ( chains == null )
+            {
+                chains = new long[DirectionWrapper.values().length];
+                Arrays.fill( chains, Record.NO_PREV_RELATIONSHIP.intValue() );
+                lastSeen.put( type, chains );
+            }
+            return chains;
+        }
+    }
+
+    /**
+     * A long[] indexed by long, kept in chunks so that its length isn't
+     * limited by the maximum size of an array.
+     */
+    private static class LongArray
+    {
+        private static final int CHUNK_BITS = 20;
+        private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+        private final long[][] chunks;
+
+        LongArray( long length, long initialValue )
+        {
+            chunks = new long[(int) ((length + CHUNK_MASK) >>> CHUNK_BITS)][];
+            for ( int i = 0; i < chunks.length; i++ )
+            {
+                chunks[i] = new long[(int) Math.min( CHUNK_MASK + 1, length - ((long) i << CHUNK_BITS) )];
+            }
+            fill( initialValue );
+        }
+
+        long get( long index )
+        {
+            return chunks[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)];
+        }
+
+        void set( long index, long value )
+        {
+            chunks[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)] = value;
+        }
+
+        void fill( long value )
+        {
+            for ( long[] chunk : chunks )
+            {
+                Arrays.fill( chunk, value );
+            }
+        }
+    }
+}
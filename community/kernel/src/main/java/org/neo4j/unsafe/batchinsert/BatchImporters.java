@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.unsafe.batchinsert;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.neo4j.kernel.DefaultFileSystemAbstraction;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+
+/**
+ * Provides instances of {@link BatchImporter}.
+ */
+public final class BatchImporters
+{
+    /**
+     * Get a {@link BatchImporter} given a store directory.
+     *
+     * @param storeDir the store directory
+     * @return a new {@link BatchImporter}
+     */
+    public static BatchImporter importer( String storeDir )
+    {
+        return importer( storeDir, new HashMap<String, String>() );
+    }
+
+    /**
+     * Get a {@link BatchImporter} given a store directory.
+     *
+     * @param storeDir the store directory
+     * @param config configuration settings to use, those of the
+     * {@link BatchInserter} as well as <code>batch_import.processors</code>,
+     * the number of threads encoding properties, and
+     * <code>batch_import.batch_size</code>, the number of entities handed to
+     * such a thread at a time
+     * @return a new {@link BatchImporter}
+     */
+    public static BatchImporter importer( String storeDir, Map<String,String> config )
+    {
+        return importer( storeDir, new DefaultFileSystemAbstraction(), config );
+    }
+
+    /**
+     * Get a {@link BatchImporter} given a store directory.
+     *
+     * @param storeDir the store directory
+     * @param fileSystem the file system to use
+     * @param config configuration settings to use
+     * @return a new {@link BatchImporter}
+     */
+    public static BatchImporter importer( String storeDir, FileSystemAbstraction fileSystem,
+            Map<String,String> config )
+    {
+        return new BatchImporterImpl( storeDir, fileSystem, config );
+    }
+}
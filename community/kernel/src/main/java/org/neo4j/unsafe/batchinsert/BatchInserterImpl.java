@@ -64,6 +64,8 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
@@ -71,6 +73,7 @@ import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeStore;
 import org.neo4j.kernel.impl.nioneo.store.StoreFactory;
 import org.neo4j.kernel.impl.nioneo.store.UnderlyingStorageException;
 import org.neo4j.kernel.impl.util.FileUtils;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 import org.neo4j.kernel.impl.util.StringLogger;
 
 public class BatchInserterImpl implements BatchInserter
@@ -306,12 +309,7 @@ public class BatchInserterImpl implements BatchInserter
     {
         boolean result = false;
         long nextProp = primitive.getNextProp();
-        int index = indexHolder.getKeyId( name );
-
-        if ( index == -1 )
-        {
-            index = createNewPropertyIndex( name );
-        }
+        int index = getOrCreatePropertyKeyId( name );
         PropertyBlock block = new PropertyBlock();
         getPropertyStore().encodeValue( block, index, value );
         int size = block.getSize();
@@ -468,12 +466,8 @@ public class BatchInserterImpl implements BatchInserter
             type, Map<String, Object> properties )
     {
         NodeRecord firstNode = getNodeRecord( node1 );
-        NodeRecord secondNode = getNodeRecord( node2 );
-        int typeId = typeHolder.getTypeId( type.name() );
-        if ( typeId == -1 )
-        {
-            typeId = createNewRelationshipType( type.name() );
-        }
+        NodeRecord secondNode = node1 == node2 ? firstNode : getNodeRecord( node2 );
+        int typeId = getOrCreateRelationshipTypeId( type.name() );
         long id = getRelationshipStore().nextId();
         RelationshipRecord record = new RelationshipRecord( id, node1, node2, typeId );
         record.setInUse( true );
@@ -491,19 +485,157 @@ public class BatchInserterImpl implements BatchInserter
     {
         assert firstNode.getNextRel() != rel.getId();
         assert secondNode.getNextRel() != rel.getId();
-        rel.setFirstNextRel( firstNode.getNextRel() );
-        rel.setSecondNextRel( secondNode.getNextRel() );
-        connect( firstNode, rel );
-        connect( secondNode, rel );
-        firstNode.setNextRel( rel.getId() );
-        secondNode.setNextRel( rel.getId() );
+        boolean loop = firstNode == secondNode;
+        convertToDenseIfNeeded( firstNode );
+        if ( !loop )
+        {
+            convertToDenseIfNeeded( secondNode );
+        }
+        RelationshipGroupRecord firstGroup = firstNode.isDense() ?
+                getOrCreateRelationshipGroup( firstNode, rel.getType() ) : null;
+        RelationshipGroupRecord secondGroup = loop ? firstGroup : secondNode.isDense() ?
+                getOrCreateRelationshipGroup( secondNode, rel.getType() ) : null;
+        DirectionWrapper firstDirection = loop ? DirectionWrapper.BOTH : DirectionWrapper.OUTGOING;
+        DirectionWrapper secondDirection = loop ? DirectionWrapper.BOTH : DirectionWrapper.INCOMING;
+        long firstNext = firstGroup != null ? firstGroup.getFirst( firstDirection ) : firstNode.getNextRel();
+        long secondNext = secondGroup != null ? secondGroup.getFirst( secondDirection ) : secondNode.getNextRel();
+        rel.setFirstNextRel( firstNext );
+        rel.setSecondNextRel( secondNext );
+        connect( firstNode, firstNext, rel );
+        connect( secondNode, secondNext, rel );
+        if ( firstGroup != null )
+        {
+            firstGroup.setCount( firstDirection, firstGroup.getCount( firstDirection ) + 1 );
+        }
+        if ( secondGroup != null && !loop )
+        {
+            secondGroup.setCount( secondDirection, secondGroup.getCount( secondDirection ) + 1 );
+        }
+        setChainHead( firstNode, firstGroup, firstDirection, rel.getId() );
+        setChainHead( secondNode, secondGroup, secondDirection, rel.getId() );
+    }
+
+    private void setChainHead( NodeRecord node, RelationshipGroupRecord group, DirectionWrapper direction,
+                               long relId )
+    {
+        if ( group == null )
+        {
+            node.setNextRel( relId );
+        }
+        else
+        {
+            group.setFirst( direction, relId );
+            getRelationshipGroupStore().updateRecord( group );
+        }
+    }
+
+    /*
+     * The groups of a node are kept in type order, a new group is linked in
+     * after the last group of a lower type.
+     */
+    private RelationshipGroupRecord getOrCreateRelationshipGroup( NodeRecord node, int type )
+    {
+        RelationshipGroupStore groupStore = getRelationshipGroupStore();
+        RelationshipGroupRecord previous = null;
+        long groupId = node.getFirstGroup();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = groupStore.getRecord( groupId );
+            if ( group.getType() == type )
+            {
+                return group;
+            }
+            if ( group.getType() > type )
+            {
+                break;
+            }
+            previous = group;
+            groupId = group.getNext();
+        }
+        RelationshipGroupRecord group = new RelationshipGroupRecord( groupStore.nextId(), type, node.getId() );
+        group.setInUse( true );
+        group.setFirst( previous == null );
+        group.setNext( groupId );
+        groupStore.updateRecord( group );
+        if ( previous != null )
+        {
+            previous.setNext( group.getId() );
+            groupStore.updateRecord( previous );
+        }
+        else
+        {
+            if ( node.isDense() )
+            {
+                RelationshipGroupRecord previousFirst = groupStore.getRecord( node.getFirstGroup() );
+                previousFirst.setFirst( false );
+                groupStore.updateRecord( previousFirst );
+            }
+            node.setFirstGroup( group.getId() );
+        }
+        return group;
+    }
+
+    /*
+     * Moves the relationships of a node that has reached the dense node threshold
+     * from its single chain to one chain per type and direction. Degrees aren't
+     * kept anywhere, so they are counted, but never further than the threshold.
+     */
+    private void convertToDenseIfNeeded( NodeRecord node )
+    {
+        int threshold = neoStore.getDenseNodeThreshold();
+        if ( threshold == 0 || node.isDense() )
+        {
+            return;
+        }
+        List<RelationshipRecord> chain = new ArrayList<RelationshipRecord>();
+        long nextRel = node.getNextRel();
+        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            if ( chain.size() == threshold )
+            {
+                // the degree is only known to be at the threshold when the whole chain is read
+                chain.addAll( getRelationshipChain( node.getId(), nextRel ) );
+                break;
+            }
+            RelationshipRecord rel = getRelationshipRecord( nextRel );
+            chain.add( rel );
+            nextRel = rel.getFirstNode() == node.getId() ? rel.getFirstNextRel() : rel.getSecondNextRel();
+        }
+        if ( chain.size() < threshold )
+        {
+            return;
+        }
+        node.setNextRel( Record.NO_NEXT_RELATIONSHIP.intValue() );
+        // relationships are inserted first in their new chains, going backwards keeps them in order
+        for ( int i = chain.size() - 1; i >= 0; i-- )
+        {
+            RelationshipRecord rel = chain.get( i );
+            RelationshipGroupRecord group = getOrCreateRelationshipGroup( node, rel.getType() );
+            DirectionWrapper direction = rel.getFirstNode() == rel.getSecondNode() ? DirectionWrapper.BOTH :
+                    rel.getFirstNode() == node.getId() ? DirectionWrapper.OUTGOING : DirectionWrapper.INCOMING;
+            long first = group.getFirst( direction );
+            if ( rel.getFirstNode() == node.getId() )
+            {
+                rel.setFirstPrevRel( Record.NO_PREV_RELATIONSHIP.intValue() );
+                rel.setFirstNextRel( first );
+            }
+            if ( rel.getSecondNode() == node.getId() )
+            {
+                rel.setSecondPrevRel( Record.NO_PREV_RELATIONSHIP.intValue() );
+                rel.setSecondNextRel( first );
+            }
+            getRelationshipStore().updateRecord( rel );
+            connect( node, first, rel );
+            group.setCount( direction, group.getCount( direction ) + 1 );
+            setChainHead( node, group, direction, rel.getId() );
+        }
     }
 
-    private void connect( NodeRecord node, RelationshipRecord rel )
+    private void connect( NodeRecord node, long next, RelationshipRecord rel )
     {
-        if ( node.getNextRel() != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        if ( next != Record.NO_NEXT_RELATIONSHIP.intValue() )
         {
-            RelationshipRecord nextRel = getRelationshipStore().getRecord( node.getNextRel() );
+            RelationshipRecord nextRel = getRelationshipStore().getRecord( next );
             boolean changed = false;
             if ( nextRel.getFirstNode() == node.getId() )
             {
@@ -585,29 +717,10 @@ public class BatchInserterImpl implements BatchInserter
     @Override
     public Iterable<Long> getRelationshipIds( long nodeId )
     {
-        NodeRecord nodeRecord = getNodeRecord( nodeId );
-        long nextRel = nodeRecord.getNextRel();
         List<Long> ids = new ArrayList<Long>();
-        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        for ( RelationshipRecord relRecord : getRelationshipRecords( nodeId ) )
         {
-            RelationshipRecord relRecord = getRelationshipRecord( nextRel );
             ids.add( relRecord.getId() );
-            long firstNode = relRecord.getFirstNode();
-            long secondNode = relRecord.getSecondNode();
-            if ( firstNode == nodeId )
-            {
-                nextRel = relRecord.getFirstNextRel();
-            }
-            else if ( secondNode == nodeId )
-            {
-                nextRel = relRecord.getSecondNextRel();
-            }
-            else
-            {
-                throw new InvalidRecordException( "Node[" + nodeId +
-                        "] not part of firstNode[" + firstNode +
-                        "] or secondNode[" + secondNode + "]" );
-            }
         }
         return ids;
     }
@@ -615,48 +728,57 @@ public class BatchInserterImpl implements BatchInserter
     @Override
     public Iterable<BatchRelationship> getRelationships( long nodeId )
     {
-        NodeRecord nodeRecord = getNodeRecord( nodeId );
-        long nextRel = nodeRecord.getNextRel();
         List<BatchRelationship> rels = new ArrayList<BatchRelationship>();
-        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        for ( RelationshipRecord relRecord : getRelationshipRecords( nodeId ) )
         {
-            RelationshipRecord relRecord = getRelationshipRecord( nextRel );
             RelationshipType type = new RelationshipTypeImpl(
                     typeHolder.getName( relRecord.getType() ) );
             rels.add( new BatchRelationship( relRecord.getId(),
                     relRecord.getFirstNode(), relRecord.getSecondNode(), type ) );
-            long firstNode = relRecord.getFirstNode();
-            long secondNode = relRecord.getSecondNode();
-            if ( firstNode == nodeId )
-            {
-                nextRel = relRecord.getFirstNextRel();
-            }
-            else if ( secondNode == nodeId )
-            {
-                nextRel = relRecord.getSecondNextRel();
-            }
-            else
-            {
-                throw new InvalidRecordException( "Node[" + nodeId +
-                        "] not part of firstNode[" + firstNode +
-                        "] or secondNode[" + secondNode + "]" );
-            }
         }
         return rels;
     }
 
     public Iterable<SimpleRelationship> getSimpleRelationships( long nodeId )
     {
-        NodeRecord nodeRecord = getNodeRecord( nodeId );
-        long nextRel = nodeRecord.getNextRel();
         List<SimpleRelationship> rels = new ArrayList<SimpleRelationship>();
-        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        for ( RelationshipRecord relRecord : getRelationshipRecords( nodeId ) )
         {
-            RelationshipRecord relRecord = getRelationshipRecord( nextRel );
             RelationshipType type = new RelationshipTypeImpl(
                     typeHolder.getName( relRecord.getType() ) );
             rels.add( new SimpleRelationship( relRecord.getId(),
                     relRecord.getFirstNode(), relRecord.getSecondNode(), type ) );
+        }
+        return rels;
+    }
+
+    private List<RelationshipRecord> getRelationshipRecords( long nodeId )
+    {
+        NodeRecord nodeRecord = getNodeRecord( nodeId );
+        if ( !nodeRecord.isDense() )
+        {
+            return getRelationshipChain( nodeId, nodeRecord.getNextRel() );
+        }
+        List<RelationshipRecord> rels = new ArrayList<RelationshipRecord>();
+        long groupId = nodeRecord.getFirstGroup();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = getRelationshipGroupStore().getRecord( groupId );
+            rels.addAll( getRelationshipChain( nodeId, group.getFirstOut() ) );
+            rels.addAll( getRelationshipChain( nodeId, group.getFirstIn() ) );
+            rels.addAll( getRelationshipChain( nodeId, group.getFirstLoop() ) );
+            groupId = group.getNext();
+        }
+        return rels;
+    }
+
+    private List<RelationshipRecord> getRelationshipChain( long nodeId, long nextRel )
+    {
+        List<RelationshipRecord> rels = new ArrayList<RelationshipRecord>();
+        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipRecord relRecord = getRelationshipRecord( nextRel );
+            rels.add( relRecord );
             long firstNode = relRecord.getFirstNode();
             long secondNode = relRecord.getSecondNode();
             if ( firstNode == nodeId )
@@ -669,11 +791,9 @@ public class BatchInserterImpl implements BatchInserter
             }
             else
             {
-                throw new InvalidRecordException( "Node[" + nodeId
-                        + "] not part of firstNode["
-                        + firstNode
-                        + "] or secondNode["
-                        + secondNode + "]" );
+                throw new InvalidRecordException( "Node[" + nodeId +
+                        "] not part of firstNode[" + firstNode +
+                        "] or secondNode[" + secondNode + "]" );
             }
         }
         return rels;
@@ -746,21 +866,35 @@ public class BatchInserterImpl implements BatchInserter
             return Record.NO_NEXT_PROPERTY.intValue();
         }
         PropertyStore propStore = getPropertyStore();
+        List<PropertyBlock> blocks = new ArrayList<PropertyBlock>( properties.size() );
+        for ( Entry<String, Object> entry : properties.entrySet() )
+        {
+            PropertyBlock block = new PropertyBlock();
+            propStore.encodeValue( block, getOrCreatePropertyKeyId( entry.getKey() ), entry.getValue() );
+            blocks.add( block );
+        }
+        return createPropertyChain( blocks );
+    }
+
+    /**
+     * Writes already encoded property blocks as a new property chain.
+     *
+     * @return the id of the first property record in the chain.
+     */
+    long createPropertyChain( List<PropertyBlock> blocks )
+    {
+        if ( blocks.isEmpty() )
+        {
+            return Record.NO_NEXT_PROPERTY.intValue();
+        }
+        PropertyStore propStore = getPropertyStore();
         List<PropertyRecord> propRecords = new ArrayList<PropertyRecord>();
         PropertyRecord currentRecord = new PropertyRecord( propStore.nextId() );
         currentRecord.setInUse( true );
         currentRecord.setCreated();
         propRecords.add( currentRecord );
-        for ( Entry<String, Object> entry : properties.entrySet() )
+        for ( PropertyBlock block : blocks )
         {
-            int keyId = indexHolder.getKeyId( entry.getKey() );
-            if ( keyId == -1 )
-            {
-                keyId = createNewPropertyIndex( entry.getKey() );
-            }
-
-            PropertyBlock block = new PropertyBlock();
-            propStore.encodeValue( block, keyId, entry.getValue() );
             if ( currentRecord.size() + block.getSize() > PropertyType.getPayloadSize() )
             {
                 // Here it means the current block is done for
@@ -788,7 +922,7 @@ public class BatchInserterImpl implements BatchInserter
             propStore.updateRecord( propRecords.get( i ) );
         }
         /*
-         *  0 will always exist, if the map was empty we wouldn't be here
+         *  0 will always exist, if there were no blocks we wouldn't be here
          *  and even one property will create at least one record.
          */
         return propRecords.get( 0 ).getId();
@@ -846,6 +980,18 @@ public class BatchInserterImpl implements BatchInserter
         return properties;
     }
 
+    int getOrCreatePropertyKeyId( String stringKey )
+    {
+        int keyId = indexHolder.getKeyId( stringKey );
+        return keyId != -1 ? keyId : createNewPropertyIndex( stringKey );
+    }
+
+    int getOrCreateRelationshipTypeId( String name )
+    {
+        int typeId = typeHolder.getTypeId( name );
+        return typeId != -1 ? typeId : createNewRelationshipType( name );
+    }
+
     private int createNewPropertyIndex( String stringKey )
     {
         PropertyIndexStore idxStore = getPropertyIndexStore();
@@ -885,6 +1031,16 @@ public class BatchInserterImpl implements BatchInserter
         return id;
     }
 
+    NeoStore getNeoStore()
+    {
+        return neoStore;
+    }
+
+    StringLogger getMessageLog()
+    {
+        return msgLog;
+    }
+
     private NodeStore getNodeStore()
     {
         return neoStore.getNodeStore();
@@ -905,6 +1061,11 @@ public class BatchInserterImpl implements BatchInserter
         return neoStore.getRelationshipStore();
     }
 
+    private RelationshipGroupStore getRelationshipGroupStore()
+    {
+        return neoStore.getRelationshipGroupStore();
+    }
+
     private RelationshipTypeStore getRelationshipTypeStore()
     {
         return neoStore.getRelationshipTypeStore();
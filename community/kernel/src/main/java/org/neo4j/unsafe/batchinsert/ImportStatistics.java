@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.unsafe.batchinsert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The number of entities and the time spent in each of the stages of an
+ * import done by a {@link BatchImporter}.
+ */
+public final class ImportStatistics implements Iterable<ImportStatistics.Stage>
+{
+    /**
+     * Reads the nodes, encodes their properties and writes them to the store.
+     */
+    public static final String NODES = "Nodes";
+    /**
+     * Reads the relationships, encodes their properties and writes them to
+     * the store, counting the degree of each node.
+     */
+    public static final String RELATIONSHIPS = "Relationships";
+    /**
+     * Sets the next relationship in the chains of each relationship.
+     */
+    public static final String NEXT_RELATIONSHIPS = "Next relationships";
+    /**
+     * Writes the first relationship of the chains of each node that has
+     * relationships, in its node record or, for dense nodes, in its group
+     * records.
+     */
+    public static final String CHAIN_HEADS = "Chain heads";
+    /**
+     * Sets the previous relationship in the chains of each relationship.
+     */
+    public static final String PREVIOUS_RELATIONSHIPS = "Previous relationships";
+
+    private final List<Stage> stages = new ArrayList<Stage>();
+
+    ImportStatistics()
+    {
+    }
+
+    void add( Stage stage )
+    {
+        stages.add( stage );
+    }
+
+    /**
+     * @param name the name of the stage.
+     * @return the stage with the given name or <code>null</code> if there was
+     * no such stage.
+     */
+    public Stage getStage( String name )
+    {
+        for ( Stage stage : stages )
+        {
+            if ( stage.getName().equals( name ) )
+            {
+                return stage;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Iterator<Stage> iterator()
+    {
+        return Collections.unmodifiableList( stages ).iterator();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder result = new StringBuilder();
+        for ( Stage stage : stages )
+        {
+            result.append( stage ).append( '\n' );
+        }
+        return result.toString();
+    }
+
+    /**
+     * A stage of the import, going through all entities of one kind. Some
+     * stages are pipelines of steps running at the same time, the time spent
+     * in each of those steps is available from {@link #getStepMillis()}.
+     */
+    public static final class Stage
+    {
+        private final String name;
+        private final long count;
+        private final long elapsedMillis;
+        private final Map<String,Long> stepMillis = new LinkedHashMap<String,Long>();
+
+        Stage( String name, long count, long elapsedMillis )
+        {
+            this.name = name;
+            this.count = count;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        Stage withStep( String step, long millis )
+        {
+            stepMillis.put( step, millis );
+            return this;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return the number of entities that went through this stage.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        public long getElapsedMillis()
+        {
+            return elapsedMillis;
+        }
+
+        /**
+         * @return the number of entities per second that went through this
+         * stage.
+         */
+        public long getThroughput()
+        {
+            return count * 1000 / Math.max( 1, elapsedMillis );
+        }
+
+        /**
+         * @return the time spent in each step of this stage. For steps done by
+         * several threads it is the sum of the time spent by all of them.
+         */
+        public Map<String,Long> getStepMillis()
+        {
+            return Collections.unmodifiableMap( stepMillis );
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder result = new StringBuilder( name ).append( ": " ).append( count ).append( " in " )
+                    .append( elapsedMillis ).append( "ms (" ).append( getThroughput() ).append( "/s)" );
+            if ( !stepMillis.isEmpty() )
+            {
+                String separator = " [";
+                for ( Map.Entry<String,Long> step : stepMillis.entrySet() )
+                {
+                    result.append( separator ).append( step.getKey() ).append( ' ' ).append( step.getValue() )
+                            .append( "ms" );
+                    separator = ", ";
+                }
+                result.append( ']' );
+            }
+            return result.toString();
+        }
+    }
+}
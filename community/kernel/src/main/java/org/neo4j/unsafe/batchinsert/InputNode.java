@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.unsafe.batchinsert;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A node to be imported by a {@link BatchImporter}. Nodes don't have ids in
+ * the input, relationships refer to them by their position in the input.
+ */
+public final class InputNode
+{
+    private final Map<String,Object> properties;
+
+    /**
+     * @param properties the properties of the node or <code>null</code> if it
+     * has none.
+     */
+    public InputNode( Map<String,Object> properties )
+    {
+        this.properties = properties != null ? properties : Collections.<String,Object>emptyMap();
+    }
+
+    public Map<String,Object> getProperties()
+    {
+        return properties;
+    }
+}
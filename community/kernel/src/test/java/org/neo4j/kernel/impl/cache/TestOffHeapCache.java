@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+public class TestOffHeapCache
+{
+    @Test
+    public void shouldKeepRecentlyUsedEntitiesOnHeap()
+    {
+        OffHeapCache<Entity> cache = newCache( 10 * Entity.SIZE, 64 * 1024 );
+        Entity entity = new Entity( 1, "one" );
+        cache.put( entity );
+        assertSame( entity, cache.get( 1 ) );
+        assertEquals( Entity.SIZE, cache.heapSize() );
+        assertEquals( 0, cache.offHeapSize() );
+    }
+
+    @Test
+    public void shouldMoveEntitiesOffHeapWhenHeapIsFull()
+    {
+        OffHeapCache<Entity> cache = newCache( 10 * Entity.SIZE, 64 * 1024 );
+        for ( long id = 0; id < 100; id++ )
+        {
+            cache.put( new Entity( id, "entity " + id ) );
+        }
+        assertEquals( 100, cache.size() );
+        assertTrue( cache.heapSize() <= 10 * Entity.SIZE );
+        assertTrue( cache.offHeapSize() > 0 );
+        for ( long id = 0; id < 100; id++ )
+        {
+            Entity entity = cache.get( id );
+            assertNotNull( entity );
+            assertEquals( "entity " + id, entity.name );
+        }
+        assertEquals( 100, cache.hitCount() );
+        assertNull( cache.get( 100 ) );
+        assertEquals( 1, cache.missCount() );
+    }
+
+    @Test
+    public void shouldDropOldestEntitiesWhenOffHeapIsFull()
+    {
+        OffHeapCache<Entity> cache = newCache( Entity.SIZE, 2 * OffHeapCache.MIN_PAGE_SIZE );
+        for ( long id = 0; id < 10000; id++ )
+        {
+            cache.put( new Entity( id, "entity " + id ) );
+        }
+        assertTrue( cache.size() < 10000 );
+        assertTrue( cache.offHeapSize() <= 2 * OffHeapCache.MIN_PAGE_SIZE );
+        assertNull( cache.get( 0 ) );
+        assertEquals( "entity 9999", cache.get( 9999 ).name );
+    }
+
+    @Test
+    public void shouldDropStaleCopiesWhenAnEntityChanges()
+    {
+        OffHeapCache<Entity> cache = newCache( Entity.SIZE, 64 * 1024 );
+        Entity original = new Entity( 1, "one" );
+        cache.put( original );
+        cache.put( new Entity( 2, "two" ) );
+
+        // the original was moved off heap, a lookup materializes a copy
+        Entity copy = cache.get( 1 );
+        assertNotSame( original, copy );
+        assertEquals( "one", copy.name );
+
+        // a change to an instance that isn't the cached one invalidates the cached copy
+        original.name = "changed";
+        cache.updateSize( original, Entity.SIZE );
+        assertNull( cache.get( 1 ) );
+    }
+
+    @Test
+    public void shouldTrackSizeUpdatesOfCachedEntities()
+    {
+        OffHeapCache<Entity> cache = newCache( 10 * Entity.SIZE, 64 * 1024 );
+        Entity entity = new Entity( 1, "one" );
+        cache.put( entity );
+        cache.updateSize( entity, 3 * Entity.SIZE );
+        assertEquals( 3 * Entity.SIZE, cache.heapSize() );
+        assertSame( entity, cache.get( 1 ) );
+    }
+
+    @Test
+    public void shouldRemoveAndClear()
+    {
+        OffHeapCache<Entity> cache = newCache( Entity.SIZE, 64 * 1024 );
+        cache.put( new Entity( 1, "one" ) );
+        cache.put( new Entity( 2, "two" ) );
+        cache.remove( 1 );
+        assertNull( cache.get( 1 ) );
+        assertEquals( 0, cache.offHeapSize() );
+
+        cache.clear();
+        assertEquals( 0, cache.size() );
+        cache.put( new Entity( 3, "three" ) );
+        cache.put( new Entity( 4, "four" ) );
+        assertEquals( "three", cache.get( 3 ).name );
+    }
+
+    @Test
+    public void shouldNotCacheEntitiesLargerThanAPage()
+    {
+        OffHeapCache<Entity> cache = newCache( Entity.SIZE, 2 * OffHeapCache.MIN_PAGE_SIZE );
+        char[] name = new char[OffHeapCache.MIN_PAGE_SIZE];
+        Arrays.fill( name, 'x' );
+        cache.put( new Entity( 1, new String( name ) ) );
+        cache.put( new Entity( 2, "two" ) );
+        assertNull( cache.get( 1 ) );
+        assertEquals( "two", cache.get( 2 ).name );
+    }
+
+    @Test
+    public void idMapShouldSurviveRemovalsAndRehashing()
+    {
+        OffHeapCache.LongLongMap map = new OffHeapCache.LongLongMap();
+        for ( long key = 0; key < 1000; key++ )
+        {
+            map.put( key * 17, key );
+        }
+        for ( long key = 0; key < 1000; key += 2 )
+        {
+            assertEquals( key, map.remove( key * 17 ) );
+        }
+        assertEquals( 500, map.size() );
+        for ( long key = 0; key < 1000; key++ )
+        {
+            assertEquals( key % 2 == 0 ? OffHeapCache.LongLongMap.NO_VALUE : key, map.get( key * 17 ) );
+        }
+    }
+
+    private OffHeapCache<Entity> newCache( long heapSize, long offHeapSize )
+    {
+        return new OffHeapCache<Entity>( "TestCache", new EntityCodec(), heapSize, offHeapSize, 1,
+                StringLogger.DEV_NULL );
+    }
+
+    private static class Entity implements EntityWithSizeObject
+    {
+        static final int SIZE = 100;
+
+        private final long id;
+        private String name;
+        private int registeredSize;
+
+        Entity( long id, String name )
+        {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public long getId()
+        {
+            return id;
+        }
+
+        @Override
+        public int sizeOfObjectInBytesIncludingOverhead()
+        {
+            return SIZE;
+        }
+
+        @Override
+        public void setRegisteredSize( int size )
+        {
+            this.registeredSize = size;
+        }
+
+        @Override
+        public int getRegisteredSize()
+        {
+            return registeredSize;
+        }
+    }
+
+    private static class EntityCodec implements OffHeapCache.Codec<Entity>
+    {
+        @Override
+        public void encode( Entity entity, ByteBuffer target )
+        {
+            target.putInt( entity.name.length() );
+            for ( int i = 0; i < entity.name.length(); i++ )
+            {
+                target.putChar( entity.name.charAt( i ) );
+            }
+        }
+
+        @Override
+        public Entity decode( long id, ByteBuffer source )
+        {
+            char[] name = new char[source.getInt()];
+            for ( int i = 0; i < name.length; i++ )
+            {
+                name[i] = source.getChar();
+            }
+            return new Entity( id, new String( name ) );
+        }
+    }
+}
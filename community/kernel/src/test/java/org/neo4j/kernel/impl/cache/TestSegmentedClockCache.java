@@ -0,0 +1,269 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TestSegmentedClockCache
+{
+    @Test
+    public void shouldRejectIllegalSizes()
+    {
+        try
+        {
+            new SegmentedClockCache<Entity>( "TestCache", 0, 4 );
+            fail( "Illegal maxSize should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            new SegmentedClockCache<Entity>( "TestCache", 10, 4 ).resize( 0 );
+            fail( "Illegal maxSize should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+    }
+
+    @Test
+    public void shouldPutGetAndRemove()
+    {
+        SegmentedClockCache<Entity> cache = new SegmentedClockCache<Entity>( "TestCache", 10, 4 );
+        Entity entity = new Entity( 1 );
+        cache.put( entity );
+        assertSame( entity, cache.get( 1 ) );
+        assertNull( cache.get( 2 ) );
+        assertEquals( 1, cache.size() );
+
+        Entity replacement = new Entity( 1 );
+        cache.put( replacement );
+        assertSame( replacement, cache.get( 1 ) );
+        assertEquals( 1, cache.size() );
+
+        assertSame( replacement, cache.remove( 1 ) );
+        assertNull( cache.remove( 1 ) );
+        assertNull( cache.get( 1 ) );
+        assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void shouldCountHitsAndMisses()
+    {
+        SegmentedClockCache<Entity> cache = new SegmentedClockCache<Entity>( "TestCache", 10, 4 );
+        cache.putAll( asList( new Entity( 1 ), new Entity( 2 ) ) );
+        cache.get( 1 );
+        cache.get( 2 );
+        cache.get( 2 );
+        cache.get( 3 );
+        assertEquals( 3, cache.hitCount() );
+        assertEquals( 1, cache.missCount() );
+    }
+
+    @Test
+    public void shouldNeverHoldMoreThanMaxSize()
+    {
+        SegmentedClockCache<Entity> cache = new SegmentedClockCache<Entity>( "TestCache", 100, 8 );
+        for ( long id = 0; id < 10000; id++ )
+        {
+            cache.put( new Entity( id ) );
+            assertTrue( cache.size() <= 100 );
+        }
+        assertEquals( 100, cache.size() );
+    }
+
+    @Test
+    public void shouldKeepReferencedEntitiesOverUnreferencedOnes()
+    {
+        SegmentedClockCache<Entity> cache = new SegmentedClockCache<Entity>( "TestCache", 10, 1 );
+        for ( long id = 0; id < 10; id++ )
+        {
+            cache.put( new Entity( id ) );
+        }
+        cache.get( 0 );
+        cache.get( 5 );
+        for ( long id = 10; id < 18; id++ )
+        {
+            cache.put( new Entity( id ) );
+        }
+        assertNotNull( cache.get( 0 ) );
+        assertNotNull( cache.get( 5 ) );
+        assertEquals( 10, cache.size() );
+    }
+
+    @Test
+    public void shouldReuseSlotsOfRemovedEntities()
+    {
+        SegmentedClockCache<Entity> cache = new SegmentedClockCache<Entity>( "TestCache", 3, 1 );
+        cache.putAll( asList( new Entity( 1 ), new Entity( 2 ), new Entity( 3 ) ) );
+        cache.remove( 2 );
+        cache.put( new Entity( 4 ) );
+        assertNotNull( cache.get( 1 ) );
+        assertNotNull( cache.get( 3 ) );
+        assertNotNull( cache.get( 4 ) );
+    }
+
+    @Test
+    public void shouldEvictOnShrinkAndKeepReferencedEntities()
+    {
+        SegmentedClockCache<Entity> cache = new SegmentedClockCache<Entity>( "TestCache", 10, 1 );
+        for ( long id = 0; id < 10; id++ )
+        {
+            cache.put( new Entity( id ) );
+        }
+        cache.get( 3 );
+        cache.get( 7 );
+        cache.resize( 4 );
+        assertEquals( 4, cache.maxSize() );
+        assertEquals( 4, cache.size() );
+        assertNotNull( cache.get( 3 ) );
+        assertNotNull( cache.get( 7 ) );
+
+        cache.resize( 20 );
+        for ( long id = 100; id < 116; id++ )
+        {
+            cache.put( new Entity( id ) );
+        }
+        assertEquals( 20, cache.size() );
+    }
+
+    @Test
+    public void shouldClear()
+    {
+        SegmentedClockCache<Entity> cache = new SegmentedClockCache<Entity>( "TestCache", 10, 4 );
+        for ( long id = 0; id < 10; id++ )
+        {
+            cache.put( new Entity( id ) );
+        }
+        cache.clear();
+        assertEquals( 0, cache.size() );
+        for ( long id = 0; id < 10; id++ )
+        {
+            cache.put( new Entity( id ) );
+        }
+        assertEquals( 10, cache.size() );
+    }
+
+    @Test
+    public void shouldStayConsistentUnderConcurrentAccess() throws Exception
+    {
+        final SegmentedClockCache<Entity> cache = new SegmentedClockCache<Entity>( "TestCache", 500, 4 );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for ( int t = 0; t < 4; t++ )
+        {
+            final int seed = t;
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for ( int i = 0; i < 20000; i++ )
+                        {
+                            long id = (i * 31L + seed * 7) % 2000;
+                            Entity entity = cache.get( id );
+                            if ( entity == null )
+                            {
+                                cache.put( new Entity( id ) );
+                            }
+                            else if ( entity.getId() != id )
+                            {
+                                throw new AssertionError( "Got " + entity.getId() + " for " + id );
+                            }
+                            if ( i % 100 == 0 )
+                            {
+                                cache.remove( id );
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure.compareAndSet( null, e );
+                    }
+                }
+            };
+            thread.start();
+            threads.add( thread );
+        }
+        start.countDown();
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        if ( failure.get() != null )
+        {
+            throw new AssertionError( failure.get() );
+        }
+        assertTrue( cache.size() <= 500 );
+    }
+
+    private static class Entity implements EntityWithSizeObject
+    {
+        private final long id;
+        private int registeredSize;
+
+        Entity( long id )
+        {
+            this.id = id;
+        }
+
+        @Override
+        public long getId()
+        {
+            return id;
+        }
+
+        @Override
+        public int sizeOfObjectInBytesIncludingOverhead()
+        {
+            return 0;
+        }
+
+        @Override
+        public void setRegisteredSize( int size )
+        {
+            this.registeredSize = size;
+        }
+
+        @Override
+        public int getRegisteredSize()
+        {
+            return registeredSize;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.test.TargetDirectory;
+
+public class TestDenseNodes
+{
+    private static final int THRESHOLD = 5;
+    private static final RelationshipType A = DynamicRelationshipType.withName( "A" );
+    private static final RelationshipType B = DynamicRelationshipType.withName( "B" );
+    private static final RelationshipType C = DynamicRelationshipType.withName( "C" );
+
+    private final String storeDir = TargetDirectory.forTest( getClass() ).graphDbDir( true ).getAbsolutePath();
+    private GraphDatabaseAPI db;
+
+    @Before
+    public void startDb()
+    {
+        db = newDb();
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    private GraphDatabaseAPI newDb()
+    {
+        return (GraphDatabaseAPI) new GraphDatabaseFactory().newEmbeddedDatabaseBuilder( storeDir )
+                .setConfig( GraphDatabaseSettings.dense_node_threshold, String.valueOf( THRESHOLD ) )
+                .setConfig( GraphDatabaseSettings.relationship_grab_size, "3" )
+                .newGraphDatabase();
+    }
+
+    private void restartDb()
+    {
+        db.shutdown();
+        db = newDb();
+    }
+
+    private boolean isDense( Node node )
+    {
+        return db.getXaDataSourceManager().getNeoStoreDataSource().getNeoStore().getNodeStore()
+                .getRecord( node.getId() ).isDense();
+    }
+
+    @Test
+    public void nodeBecomesDenseWhenGoingAboveTheThreshold() throws Exception
+    {
+        Transaction tx = db.beginTx();
+        Node node = db.createNode();
+        for ( int i = 0; i < THRESHOLD; i++ )
+        {
+            node.createRelationshipTo( db.createNode(), A );
+        }
+        tx.success();
+        tx.finish();
+        assertFalse( isDense( node ) );
+
+        tx = db.beginTx();
+        node.createRelationshipTo( db.createNode(), A );
+        tx.success();
+        tx.finish();
+        assertTrue( isDense( node ) );
+        assertEquals( THRESHOLD + 1, count( node.getRelationships() ) );
+    }
+
+    @Test
+    public void relationshipsOfDenseNodeAreGroupedByTypeAndDirection() throws Exception
+    {
+        Node node = createDenseNode( 10, 7, 6, 2 );
+
+        assertRelationshipCounts( node, 10, 7, 6, 2 );
+        db.getNodeManager().clearCache();
+        assertRelationshipCounts( node, 10, 7, 6, 2 );
+        restartDb();
+        node = db.getNodeById( node.getId() );
+        assertTrue( isDense( node ) );
+        assertRelationshipCounts( node, 10, 7, 6, 2 );
+    }
+
+    @Test
+    public void groupsOfDenseNodeAreKeptInTypeOrder() throws Exception
+    {
+        Transaction tx = db.beginTx();
+        Node other = db.createNode();
+        for ( RelationshipType type : new RelationshipType[] {A, B, C} )
+        {
+            other.createRelationshipTo( db.createNode(), type );
+        }
+        Node node = db.createNode();
+        for ( int i = 0; i <= THRESHOLD; i++ )
+        {
+            node.createRelationshipTo( db.createNode(), C );
+        }
+        tx.success();
+        tx.finish();
+        for ( RelationshipType type : new RelationshipType[] {A, B} )
+        {
+            tx = db.beginTx();
+            node.createRelationshipTo( db.createNode(), type );
+            tx.success();
+            tx.finish();
+        }
+
+        NeoStore neoStore = db.getXaDataSourceManager().getNeoStoreDataSource().getNeoStore();
+        long groupId = neoStore.getNodeStore().getRecord( node.getId() ).getFirstGroup();
+        int groups = 0, previousType = -1;
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = neoStore.getRelationshipGroupStore().getRecord( groupId );
+            assertEquals( groups == 0, group.isFirst() );
+            assertTrue( group.getType() > previousType );
+            previousType = group.getType();
+            groupId = group.getNext();
+            groups++;
+        }
+        assertEquals( 3, groups );
+        assertEquals( THRESHOLD + 3, count( node.getRelationships() ) );
+    }
+
+    @Test
+    public void typedLoadingOfPartlyLoadedDenseNodeSeesAllRelationships() throws Exception
+    {
+        Node node = createDenseNode( 10, 7, 6, 2 );
+        db.getNodeManager().clearCache();
+
+        // loads one batch of relationships from the first chain only
+        node.getRelationships().iterator().next();
+        assertEquals( 6, count( node.getRelationships( B ) ) );
+        assertEquals( 19, count( node.getRelationships( A ) ) );
+        assertEquals( 25, count( node.getRelationships() ) );
+    }
+
+    @Test
+    public void typedLoadingWithinTransactionSeesItsOwnChanges() throws Exception
+    {
+        Node node = createDenseNode( 10, 7, 6, 2 );
+        db.getNodeManager().clearCache();
+
+        Transaction tx = db.beginTx();
+        node.getRelationships().iterator().next();
+        node.createRelationshipTo( db.createNode(), B );
+        node.getRelationships( B ).iterator().next().delete();
+        node.createRelationshipTo( db.createNode(), C );
+        assertEquals( 6, count( node.getRelationships( B, Direction.OUTGOING ) ) );
+        assertEquals( 1, count( node.getRelationships( C ) ) );
+        assertEquals( 26, count( node.getRelationships() ) );
+        tx.success();
+        tx.finish();
+
+        assertEquals( 6, count( node.getRelationships( B, Direction.OUTGOING ) ) );
+        assertEquals( 26, count( node.getRelationships() ) );
+    }
+
+    @Test
+    public void createAndDeleteRelationshipsOfDenseNode() throws Exception
+    {
+        Node node = createDenseNode( 10, 7, 6, 2 );
+        db.getNodeManager().clearCache();
+
+        Transaction tx = db.beginTx();
+        int deleted = 0;
+        for ( Relationship relationship : node.getRelationships( A, Direction.OUTGOING ) )
+        {
+            boolean loop = relationship.getEndNode().equals( node );
+            if ( !loop && deleted++ % 2 == 0 )
+            {
+                relationship.delete();
+            }
+        }
+        for ( Relationship relationship : node.getRelationships( B ) )
+        {
+            relationship.delete();
+        }
+        node.createRelationshipTo( db.createNode(), C );
+        node.createRelationshipTo( db.createNode(), B );
+        tx.success();
+        tx.finish();
+
+        assertRelationshipCounts( node, 5, 7, 1, 2 );
+        assertEquals( 1, count( node.getRelationships( C ) ) );
+        db.getNodeManager().clearCache();
+        assertRelationshipCounts( node, 5, 7, 1, 2 );
+        assertEquals( 1, count( node.getRelationships( C ) ) );
+        assertEquals( 16, count( node.getRelationships() ) );
+    }
+
+    @Test
+    public void canDeleteDenseNodeAfterDeletingAllItsRelationships() throws Exception
+    {
+        Node node = createDenseNode( 10, 7, 6, 2 );
+        db.getNodeManager().clearCache();
+
+        Transaction tx = db.beginTx();
+        for ( Relationship relationship : node.getRelationships() )
+        {
+            relationship.delete();
+        }
+        node.delete();
+        tx.success();
+        tx.finish();
+
+        restartDb();
+        tx = db.beginTx();
+        Node other = db.createNode();
+        for ( int i = 0; i < THRESHOLD * 2; i++ )
+        {
+            other.createRelationshipTo( db.createNode(), A );
+        }
+        tx.success();
+        tx.finish();
+        db.getNodeManager().clearCache();
+        assertEquals( THRESHOLD * 2, count( other.getRelationships( A, Direction.OUTGOING ) ) );
+    }
+
+    private Node createDenseNode( int outA, int inA, int outB, int loopsA )
+    {
+        Transaction tx = db.beginTx();
+        Node node = db.createNode();
+        for ( int i = 0; i < Math.max( outA, Math.max( inA, outB ) ); i++ )
+        {
+            if ( i < outA ) node.createRelationshipTo( db.createNode(), A );
+            if ( i < inA ) db.createNode().createRelationshipTo( node, A );
+            if ( i < outB ) node.createRelationshipTo( db.createNode(), B );
+            if ( i < loopsA ) node.createRelationshipTo( node, A );
+        }
+        tx.success();
+        tx.finish();
+        assertTrue( isDense( node ) );
+        return node;
+    }
+
+    private void assertRelationshipCounts( Node node, int outA, int inA, int outB, int loopsA )
+    {
+        assertEquals( outA + loopsA, count( node.getRelationships( A, Direction.OUTGOING ) ) );
+        assertEquals( inA + loopsA, count( node.getRelationships( A, Direction.INCOMING ) ) );
+        assertEquals( outA + inA + loopsA, count( node.getRelationships( A ) ) );
+        assertEquals( outB, count( node.getRelationships( B, Direction.OUTGOING ) ) );
+        assertEquals( 0, count( node.getRelationships( B, Direction.INCOMING ) ) );
+    }
+}
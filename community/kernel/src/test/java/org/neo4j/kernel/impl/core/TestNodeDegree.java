@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.test.TargetDirectory;
+
+public class TestNodeDegree
+{
+    private static final int THRESHOLD = 5;
+    private static final RelationshipType A = DynamicRelationshipType.withName( "A" );
+    private static final RelationshipType B = DynamicRelationshipType.withName( "B" );
+    private static final RelationshipType C = DynamicRelationshipType.withName( "C" );
+
+    private final String storeDir = TargetDirectory.forTest( getClass() ).graphDbDir( true ).getAbsolutePath();
+    private GraphDatabaseAPI db;
+
+    @Before
+    public void startDb()
+    {
+        db = newDb();
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    private GraphDatabaseAPI newDb()
+    {
+        return (GraphDatabaseAPI) new GraphDatabaseFactory().newEmbeddedDatabaseBuilder( storeDir )
+                .setConfig( GraphDatabaseSettings.dense_node_threshold, String.valueOf( THRESHOLD ) )
+                .setConfig( GraphDatabaseSettings.relationship_grab_size, "3" )
+                .newGraphDatabase();
+    }
+
+    private void restartDb()
+    {
+        db.shutdown();
+        db = newDb();
+    }
+
+    @Test
+    public void degreeOfSparseNode() throws Exception
+    {
+        Node node = createNode( 2, 1, 1, 1 );
+
+        assertDegrees( node, 2, 1, 1, 1 );
+        db.getNodeManager().clearCache();
+        assertDegrees( node, 2, 1, 1, 1 );
+        restartDb();
+        assertDegrees( db.getNodeById( node.getId() ), 2, 1, 1, 1 );
+    }
+
+    @Test
+    public void degreeOfDenseNode() throws Exception
+    {
+        Node node = createNode( 10, 7, 6, 2 );
+
+        assertDegrees( node, 10, 7, 6, 2 );
+        db.getNodeManager().clearCache();
+        assertDegrees( node, 10, 7, 6, 2 );
+        restartDb();
+        assertDegrees( db.getNodeById( node.getId() ), 10, 7, 6, 2 );
+    }
+
+    @Test
+    public void degreeOfNodeWithUnknownTypeIsZero() throws Exception
+    {
+        Node node = createNode( 10, 7, 6, 2 );
+        db.getNodeManager().clearCache();
+
+        assertEquals( 0, degrees( node ).getDegree( C, Direction.BOTH ) );
+    }
+
+    @Test
+    public void degreeIsKeptUpToDateWhenRelationshipsAreDeleted() throws Exception
+    {
+        Node node = createNode( 10, 7, 6, 2 );
+        db.getNodeManager().clearCache();
+
+        Transaction tx = db.beginTx();
+        int deleted = 0;
+        for ( Relationship relationship : node.getRelationships( A, Direction.OUTGOING ) )
+        {
+            boolean loop = relationship.getEndNode().equals( node );
+            if ( loop || deleted++ % 2 == 0 )
+            {
+                relationship.delete();
+            }
+        }
+        tx.success();
+        tx.finish();
+
+        assertDegrees( node, 5, 7, 6, 0 );
+        db.getNodeManager().clearCache();
+        assertDegrees( node, 5, 7, 6, 0 );
+        restartDb();
+        assertDegrees( db.getNodeById( node.getId() ), 5, 7, 6, 0 );
+    }
+
+    @Test
+    public void degreeWithinTransactionSeesItsOwnChanges() throws Exception
+    {
+        Node node = createNode( 10, 7, 6, 2 );
+        db.getNodeManager().clearCache();
+
+        Transaction tx = db.beginTx();
+        node.getRelationships( B ).iterator().next().delete();
+        node.createRelationshipTo( db.createNode(), C );
+        assertEquals( 5, degrees( node ).getDegree( B, Direction.OUTGOING ) );
+        assertEquals( 1, degrees( node ).getDegree( C, Direction.OUTGOING ) );
+        assertEquals( 25, degrees( node ).getDegree() );
+        tx.failure();
+        tx.finish();
+
+        assertDegrees( node, 10, 7, 6, 2 );
+        assertEquals( 0, degrees( node ).getDegree( C, Direction.BOTH ) );
+    }
+
+    @Test
+    public void degreeOfNodeThatBecameDenseCountsItsEarlierRelationships() throws Exception
+    {
+        Node node = createNode( 3, 2, 0, 0 );
+        Transaction tx = db.beginTx();
+        node.createRelationshipTo( db.createNode(), B );
+        node.createRelationshipTo( db.createNode(), B );
+        tx.success();
+        tx.finish();
+        db.getNodeManager().clearCache();
+
+        assertDegrees( node, 3, 2, 2, 0 );
+    }
+
+    private Node createNode( int outA, int inA, int outB, int loopsA )
+    {
+        Transaction tx = db.beginTx();
+        Node node = db.createNode();
+        for ( int i = 0; i < Math.max( outA, Math.max( inA, outB ) ); i++ )
+        {
+            if ( i < outA ) node.createRelationshipTo( db.createNode(), A );
+            if ( i < inA ) db.createNode().createRelationshipTo( node, A );
+            if ( i < outB ) node.createRelationshipTo( db.createNode(), B );
+            if ( i < loopsA ) node.createRelationshipTo( node, A );
+        }
+        tx.success();
+        tx.finish();
+        return node;
+    }
+
+    private static NodeDegrees degrees( Node node )
+    {
+        return (NodeDegrees) node;
+    }
+
+    private void assertDegrees( Node node, int outA, int inA, int outB, int loopsA )
+    {
+        assertEquals( outA + loopsA, degrees( node ).getDegree( A, Direction.OUTGOING ) );
+        assertEquals( inA + loopsA, degrees( node ).getDegree( A, Direction.INCOMING ) );
+        assertEquals( outA + inA + loopsA, degrees( node ).getDegree( A, Direction.BOTH ) );
+        assertEquals( outB, degrees( node ).getDegree( B, Direction.OUTGOING ) );
+        assertEquals( 0, degrees( node ).getDegree( B, Direction.INCOMING ) );
+        assertEquals( outA + outB + loopsA, degrees( node ).getDegree( Direction.OUTGOING ) );
+        assertEquals( outA + inA + outB + loopsA, degrees( node ).getDegree() );
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+import static org.neo4j.kernel.impl.MyRelTypes.TEST;
+import static org.neo4j.kernel.impl.MyRelTypes.TEST2;
+import static org.neo4j.kernel.impl.MyRelTypes.TEST_TRAVERSAL;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.kernel.impl.cache.OffHeapCacheProvider;
+import org.neo4j.kernel.impl.cache.OffHeapCacheSettings;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+/**
+ * Runs with a heap part of the cache small enough that entities are constantly
+ * moved off heap and materialized again, to verify that no stale state is read
+ * back from the serialized copies.
+ */
+public class TestOffHeapCaching
+{
+    private static final int NODES = 200;
+
+    private ImpermanentGraphDatabase db;
+
+    @Before
+    public void startDb()
+    {
+        db = new ImpermanentGraphDatabase( stringMap(
+                GraphDatabaseSettings.cache_type.name(), OffHeapCacheProvider.NAME,
+                OffHeapCacheSettings.node_cache_heap_size.name(), "16k",
+                OffHeapCacheSettings.relationship_cache_heap_size.name(), "16k",
+                OffHeapCacheSettings.node_cache_off_heap_size.name(), "1M",
+                OffHeapCacheSettings.relationship_cache_off_heap_size.name(), "1M" ) );
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    @Test
+    public void shouldReadBackPropertiesAndRelationshipsOfEntitiesMovedOffHeap()
+    {
+        long[] ids = createGraph();
+
+        for ( int round = 0; round < 3; round++ )
+        {
+            for ( int i = 0; i < NODES; i++ )
+            {
+                verifyNode( db.getNodeById( ids[i] ), i, 9 );
+            }
+        }
+    }
+
+    @Test
+    public void shouldSeeChangesToEntitiesMovedOffHeap()
+    {
+        long[] ids = createGraph();
+        for ( int i = 0; i < NODES; i++ )
+        {
+            verifyNode( db.getNodeById( ids[i] ), i, 9 );
+        }
+
+        Transaction tx = db.beginTx();
+        for ( int i = 0; i < NODES; i += 2 )
+        {
+            Node node = db.getNodeById( ids[i] );
+            node.setProperty( "name", "changed " + i );
+            node.removeProperty( "number" );
+            for ( Relationship relationship : node.getRelationships( TEST2, Direction.OUTGOING ) )
+            {
+                relationship.setProperty( "weight", -1.0 );
+            }
+            node.getSingleRelationship( TEST, Direction.OUTGOING ).delete();
+        }
+        tx.success();
+        tx.finish();
+
+        for ( int round = 0; round < 2; round++ )
+        {
+            for ( int i = 0; i < NODES; i += 2 )
+            {
+                Node node = db.getNodeById( ids[i] );
+                assertEquals( "changed " + i, node.getProperty( "name" ) );
+                assertFalse( node.hasProperty( "number" ) );
+                assertEquals( null, node.getSingleRelationship( TEST, Direction.OUTGOING ) );
+                for ( Relationship relationship : node.getRelationships( TEST2, Direction.OUTGOING ) )
+                {
+                    assertEquals( -1.0, relationship.getProperty( "weight" ) );
+                }
+            }
+            for ( int i = 1; i < NODES; i += 2 )
+            {
+                // lost the incoming relationship from the changed node before it
+                verifyNode( db.getNodeById( ids[i] ), i, 8 );
+            }
+        }
+    }
+
+    private long[] createGraph()
+    {
+        long[] ids = new long[NODES];
+        Transaction tx = db.beginTx();
+        Node[] nodes = new Node[NODES];
+        for ( int i = 0; i < NODES; i++ )
+        {
+            nodes[i] = db.createNode();
+            nodes[i].setProperty( "name", "node " + i );
+            nodes[i].setProperty( "number", i );
+            nodes[i].setProperty( "big", Long.MAX_VALUE - i );
+            nodes[i].setProperty( "flag", i % 2 == 0 );
+            nodes[i].setProperty( "array", new int[] { i, i + 1 } );
+            ids[i] = nodes[i].getId();
+        }
+        for ( int i = 0; i < NODES; i++ )
+        {
+            nodes[i].createRelationshipTo( nodes[(i + 1) % NODES], TEST );
+            nodes[i].createRelationshipTo( nodes[i], TEST_TRAVERSAL );
+            for ( int j = 2; j < 5; j++ )
+            {
+                nodes[i].createRelationshipTo( nodes[(i + j) % NODES], TEST2 ).setProperty( "weight", i * 0.5 );
+            }
+        }
+        tx.success();
+        tx.finish();
+        return ids;
+    }
+
+    private void verifyNode( Node node, int i, int relationshipCount )
+    {
+        assertEquals( "node " + i, node.getProperty( "name" ) );
+        assertEquals( i, node.getProperty( "number" ) );
+        assertEquals( Long.MAX_VALUE - i, node.getProperty( "big" ) );
+        assertEquals( i % 2 == 0, node.getProperty( "flag" ) );
+        assertEquals( i + 1, ((int[]) node.getProperty( "array" ))[1] );
+
+        assertEquals( node.getId(), node.getSingleRelationship( TEST, Direction.OUTGOING ).getStartNode().getId() );
+        Set<Long> neighbours = new HashSet<Long>();
+        for ( Relationship relationship : node.getRelationships( TEST2, Direction.OUTGOING ) )
+        {
+            assertEquals( i * 0.5, relationship.getProperty( "weight" ) );
+            neighbours.add( relationship.getEndNode().getId() );
+        }
+        assertEquals( 3, neighbours.size() );
+        int loops = 0;
+        int total = 0;
+        for ( Relationship relationship : node.getRelationships() )
+        {
+            total++;
+            if ( relationship.getStartNode().equals( relationship.getEndNode() ) )
+            {
+                loops++;
+            }
+        }
+        assertEquals( 1, loops );
+        assertEquals( relationshipCount, total );
+    }
+}
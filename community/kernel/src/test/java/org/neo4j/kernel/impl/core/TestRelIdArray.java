@@ -36,6 +36,7 @@ import java.util.List;
 import org.junit.Test;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+import org.neo4j.kernel.impl.util.RelIdArrayWithLoops;
 import org.neo4j.kernel.impl.util.RelIdIterator;
 
 // TODO Add some tests for loops, i.e. add with direction BOTH.
@@ -143,6 +144,139 @@ public class TestRelIdArray
                 0L, 1L, justOverIntMax, justOverIntMax+1 ) ), new HashSet<Long>( asList( all ) ) );
     }
     
+    @Test
+    public void shouldKeepIdsFarApartAndInAnyOrder() throws Exception
+    {
+        long[] ids = { 5, 0xFFFFFFFFL, 0, 1L << 31, 7, (1L << 31) - 1, 100000, 99999 };
+        RelIdArray array = new RelIdArray( 0 );
+        for ( long id : ids )
+        {
+            array.add( id, OUTGOING );
+        }
+        List<Long> expected = new ArrayList<Long>();
+        for ( long id : ids )
+        {
+            expected.add( id );
+        }
+        assertEquals( expected, asList( array ) );
+        assertEquals( expected, asList( array.shrink() ) );
+    }
+    
+    @Test
+    public void shouldSeeIdsAppendedWhileIterating() throws Exception
+    {
+        RelIdArray array = new RelIdArray( 0 );
+        array.add( 10, OUTGOING );
+        array.add( 8, OUTGOING );
+        RelIdIterator iterator = array.iterator( OUTGOING );
+        assertEquals( 10L, iterator.next() );
+        assertEquals( 8L, iterator.next() );
+        assertFalse( iterator.hasNext() );
+        
+        RelIdArray more = new RelIdArray( 0 );
+        more.add( 1000, OUTGOING );
+        more.add( 3, OUTGOING );
+        array.addAll( more );
+        iterator.updateSource( array, OUTGOING );
+        assertEquals( 1000L, iterator.next() );
+        assertEquals( 3L, iterator.next() );
+        assertFalse( iterator.hasNext() );
+    }
+    
+    @Test
+    public void shouldRemoveLoopsAsWellAsOtherDirections() throws Exception
+    {
+        RelIdArray source = new RelIdArrayWithLoops( 0 );
+        source.add( 1, OUTGOING );
+        source.add( 2, BOTH );
+        source.add( 3, INCOMING );
+        source.add( 4, BOTH );
+        RelIdArray result = RelIdArray.from( source, null, new HashSet<Long>( Arrays.asList( 2L, 3L ) ) );
+        assertEquals( Arrays.asList( 4L ), asList( result.exactIterator( BOTH ) ) );
+        assertEquals( Arrays.asList( 1L ), asList( result.exactIterator( OUTGOING ) ) );
+        assertFalse( result.exactIterator( INCOMING ).hasNext() );
+    }
+    
+    @Test
+    public void shouldTakeLessThanAnIntPerCloseId() throws Exception
+    {
+        RelIdArray array = new RelIdArray( 0 );
+        for ( long id = 10000; id > 0; id-- )
+        {
+            array.add( id, OUTGOING );
+        }
+        assertTrue( array.shrink().sizeOfObjectInBytesIncludingOverhead() < 10000 * 2 );
+    }
+    
+    @Test
+    public void shouldKeepIdsTooFarApartForTheEncodingInAnIntArray() throws Exception
+    {
+        RelIdArray array = new RelIdArray( 0 );
+        for ( long id = 0; id < 10000; id++ )
+        {
+            array.add( id * 100000, OUTGOING );
+        }
+        assertTrue( array.shrink().sizeOfObjectInBytesIncludingOverhead() > 10000 * 4 );
+        assertEquals( 10000, asList( array.iterator( OUTGOING ) ).size() );
+    }
+    
+    @Test
+    public void shouldEncodeMostlyCloseIdsWithOccasionalJumps() throws Exception
+    {
+        RelIdArray array = new RelIdArray( 0 );
+        List<Long> expected = new ArrayList<Long>();
+        long id = 1L << 31;
+        for ( int i = 0; i < 5000; i++ )
+        {
+            id += i % 10 == 0 ? (i % 20 == 0 ? 100000 : -200000) : -1 - i % 100;
+            array.add( id, OUTGOING );
+            expected.add( id );
+        }
+        assertTrue( array.shrink().sizeOfObjectInBytesIncludingOverhead() < 5000 * 2 );
+        assertEquals( expected, asList( array ) );
+        assertEquals( expected, asList( array.shrink() ) );
+    }
+    
+    @Test
+    public void shouldKeepIteratingWhenTheIdsGetEncodedByAppending() throws Exception
+    {
+        RelIdArray array = new RelIdArray( 0 );
+        List<Long> expected = new ArrayList<Long>();
+        for ( long id = 2000; id > 1200; id-- )
+        {
+            array.add( id, OUTGOING );
+            expected.add( id );
+        }
+        RelIdIterator iterator = array.iterator( OUTGOING );
+        List<Long> iterated = new ArrayList<Long>();
+        for ( int i = 0; i < 500; i++ )
+        {
+            iterated.add( iterator.next() );
+        }
+        
+        RelIdArray more = new RelIdArray( 0 );
+        for ( long id = 1200; id > 0; id-- )
+        {
+            more.add( id, OUTGOING );
+            expected.add( id );
+        }
+        array.addAll( more );
+        assertTrue( array.sizeOfObjectInBytesIncludingOverhead() < 2000 * 2 );
+        iterator.updateSource( array, OUTGOING );
+        iterated.addAll( asList( iterator ) );
+        assertEquals( expected, iterated );
+    }
+    
+    private List<Long> asList( RelIdIterator iterator )
+    {
+        List<Long> result = new ArrayList<Long>();
+        while ( iterator.hasNext() )
+        {
+            result.add( iterator.next() );
+        }
+        return result;
+    }
+    
     private List<Long> asList( RelIdArray ids )
     {
         List<Long> result = new ArrayList<Long>();
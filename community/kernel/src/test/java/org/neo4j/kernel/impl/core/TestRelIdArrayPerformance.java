@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper.INCOMING;
+import static org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper.OUTGOING;
+
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.neo4j.kernel.impl.util.RelIdArray;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+import org.neo4j.kernel.impl.util.RelIdIterator;
+
+public class TestRelIdArrayPerformance
+{
+    private static final int DEGREE = 1000000;
+    private static final int GRAB_SIZE = 100;
+
+    @Ignore( "Not a unit test, enable to measure memory and iteration of a supernode's relationship ids" )
+    @Test
+    public void measureSupernode() throws Exception
+    {
+        for ( int round = 0; round < 5; round++ )
+        {
+            System.out.println( "=== round " + round + " ===" );
+            // relationships created one after the other, a chain is loaded newest first
+            measure( "sequential", sequentialIds() );
+            // relationships created interleaved with other nodes' relationships
+            measure( "scattered", scatteredIds() );
+        }
+    }
+
+    private long[] sequentialIds()
+    {
+        long[] ids = new long[DEGREE];
+        for ( int i = 0; i < DEGREE; i++ )
+        {
+            ids[i] = DEGREE - i;
+        }
+        return ids;
+    }
+
+    private long[] scatteredIds()
+    {
+        Random random = new Random( 0 );
+        long[] ids = new long[DEGREE];
+        long id = 50L * DEGREE;
+        for ( int i = 0; i < DEGREE; i++ )
+        {
+            id -= 1 + random.nextInt( 50 );
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    private void measure( String name, long[] ids )
+    {
+        System.gc();
+        long heapBefore = usedHeap();
+        long time = System.nanoTime();
+        RelIdArray array = load( ids );
+        long loadTime = System.nanoTime() - time;
+        System.gc();
+        long heap = usedHeap() - heapBefore;
+
+        time = System.nanoTime();
+        long sum = 0;
+        for ( int i = 0; i < 10; i++ )
+        {
+            sum += iterate( array, OUTGOING ) + iterate( array, INCOMING );
+        }
+        long iterationTime = (System.nanoTime() - time) / 10;
+        System.out.println( String.format( "%s: load %d ms, iterate %d ms, heap %d bytes, reported %d bytes (%d)",
+                name, loadTime / 1000000, iterationTime / 1000000, heap,
+                array.sizeOfObjectInBytesIncludingOverhead(), sum ) );
+    }
+
+    /**
+     * Loads like {@link NodeImpl} does, in chunks of the grab size merged into what's already loaded.
+     */
+    private RelIdArray load( long[] ids )
+    {
+        RelIdArray loaded = new RelIdArray( 0 );
+        for ( int start = 0; start < ids.length; start += GRAB_SIZE )
+        {
+            RelIdArray chunk = new RelIdArray( 0 );
+            for ( int i = start; i < Math.min( ids.length, start + GRAB_SIZE ); i++ )
+            {
+                chunk.add( ids[i], i % 2 == 0 ? OUTGOING : INCOMING );
+            }
+            loaded = loaded.addAll( chunk );
+        }
+        return loaded.shrink();
+    }
+
+    private long iterate( RelIdArray array, DirectionWrapper direction )
+    {
+        long sum = 0;
+        for ( RelIdIterator iterator = array.exactIterator( direction ); iterator.hasNext(); )
+        {
+            sum += iterator.next();
+        }
+        return sum;
+    }
+
+    private long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
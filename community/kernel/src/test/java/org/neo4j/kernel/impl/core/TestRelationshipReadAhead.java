@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+import static org.neo4j.kernel.impl.MyRelTypes.TEST;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.nioneo.store.WindowPoolStats;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+public class TestRelationshipReadAhead
+{
+    private static final int GRAB_SIZE = 10;
+    private ImpermanentGraphDatabase db;
+
+    @Before
+    public void startDb()
+    {
+        db = new ImpermanentGraphDatabase( stringMap(
+                "relationship_grab_size", String.valueOf( GRAB_SIZE ),
+                "relationship_read_ahead_threads", "2" ) );
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    @Test
+    public void readsAllRelationshipsOfNodeWithManyRelationships() throws Exception
+    {
+        Node node = createNode( GRAB_SIZE * 10 + 5 );
+        db.getNodeManager().clearCache();
+
+        assertEquals( GRAB_SIZE * 10 + 5, count( node.getRelationships() ) );
+        assertTrue( relationshipStoreStats().getReadAheadHitCount() > 0 );
+    }
+
+    @Test
+    public void batchReadAheadIsThrownAwayWhenItsRelationshipsChange() throws Exception
+    {
+        List<Relationship> relationships = createRelationships( GRAB_SIZE * 3 + 5 );
+        Node node = relationships.get( 0 ).getStartNode();
+        db.getNodeManager().clearCache();
+
+        // loads the first batch and reads the second one ahead
+        node.getRelationships().iterator().next();
+        Thread.sleep( 100 );
+
+        // the chain is loaded from the most recently created relationship and on
+        Transaction tx = db.beginTx();
+        db.getRelationshipById( relationships.get( relationships.size() - GRAB_SIZE - 5 ).getId() ).delete();
+        tx.success();
+        tx.finish();
+
+        assertEquals( GRAB_SIZE * 3 + 4, count( node.getRelationships() ) );
+        assertTrue( relationshipStoreStats().getReadAheadWasteCount() > 0 );
+    }
+
+    private Node createNode( int relationshipCount )
+    {
+        return createRelationships( relationshipCount ).get( 0 ).getStartNode();
+    }
+
+    private List<Relationship> createRelationships( int count )
+    {
+        List<Relationship> relationships = new ArrayList<Relationship>();
+        Transaction tx = db.beginTx();
+        Node node = db.createNode();
+        for ( int i = 0; i < count; i++ )
+        {
+            relationships.add( node.createRelationshipTo( db.createNode(), TEST ) );
+        }
+        tx.success();
+        tx.finish();
+        return relationships;
+    }
+
+    private WindowPoolStats relationshipStoreStats()
+    {
+        return db.getXaDataSourceManager().getNeoStoreDataSource().getNeoStore().getRelationshipStore()
+                .getWindowPoolStats();
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.test.TargetDirectory;
+
+public class PageAccessStatisticsTest
+{
+    private static final TargetDirectory target = TargetDirectory.forTest( PageAccessStatisticsTest.class );
+
+    @Test
+    public void shouldCountAccessesPerRegion() throws Exception
+    {
+        // given
+        PageAccessStatistics statistics = new PageAccessStatistics( 100 );
+
+        // when
+        statistics.hit( 10 );
+        statistics.hit( 20 );
+        statistics.fault( 250, 50, statistics.startFault() );
+        statistics.written( 250, 50 );
+        statistics.evicted( 200 );
+
+        // then
+        assertEquals( 2, statistics.getHitCount() );
+        assertEquals( 1, statistics.getFaultCount() );
+        assertEquals( 1, statistics.getEvictionCount() );
+        assertEquals( 50, statistics.getBytesRead() );
+        assertEquals( 50, statistics.getBytesWritten() );
+        assertEquals( asList(
+                "offset\thits\tfaults\tevictions\tbytesRead\tbytesWritten",
+                "0\t2\t0\t0\t0\t0",
+                "100\t0\t0\t0\t0\t0",
+                "200\t0\t1\t1\t50\t50" ), heatmapRows( statistics ) );
+    }
+
+    @Test
+    public void shouldNotCountAnythingWhenDisabled() throws Exception
+    {
+        // when
+        PageAccessStatistics.NONE.hit( 0 );
+        PageAccessStatistics.NONE.fault( 0, 10, PageAccessStatistics.NONE.startFault() );
+
+        // then
+        assertFalse( PageAccessStatistics.NONE.isEnabled() );
+        assertEquals( 0, PageAccessStatistics.NONE.getHitCount() );
+        assertEquals( 0, PageAccessStatistics.NONE.getFaultCount() );
+        assertEquals( 0, PageAccessStatistics.NONE.getFaultLatencyPercentile( 99 ) );
+    }
+
+    @Test
+    public void shouldReportFaultLatencyPercentilesAsPowersOfTwo() throws Exception
+    {
+        // given
+        PageAccessStatistics statistics = new PageAccessStatistics( 100 );
+
+        // when
+        for ( int i = 0; i < 99; i++ )
+        {
+            statistics.fault( 0, 0, System.nanoTime() );
+        }
+        statistics.fault( 0, 0, System.nanoTime() - 5000000 );
+
+        // then
+        long median = statistics.getFaultLatencyPercentile( 50 );
+        assertEquals( 0, median & (median - 1) );
+        assertTrue( median < 5000 );
+        assertTrue( statistics.getFaultLatencyPercentile( 100 ) > 5000 );
+    }
+
+    @Test
+    public void shouldDumpHeatmapsOfStoreFilesWhenEnabled() throws Exception
+    {
+        // given
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( target.graphDbDir( true ).getAbsolutePath(),
+                stringMap( "mapped_memory_access_statistics", "true" ) );
+        try
+        {
+            Transaction tx = db.beginTx();
+            Node node = db.createNode();
+            node.setProperty( "name", "value" );
+            tx.success();
+            tx.finish();
+            db.getNodeManager().clearCache();
+            node.getProperty( "name" );
+            NeoStoreXaDataSource dataSource = db.getXaDataSourceManager().getNeoStoreDataSource();
+
+            // when
+            List<File> heatmaps = dataSource.dumpPageAccessHeatmaps();
+
+            // then
+            File nodeStoreHeatmap = new File( new File( dataSource.getStoreDir(),
+                    NeoStoreXaDataSource.HEATMAP_DIRECTORY_NAME ), "neostore.nodestore.db.heatmap" );
+            assertTrue( heatmaps.contains( nodeStoreHeatmap ) );
+            assertTrue( dataSource.getNeoStore().getNodeStore().getWindowPoolStats().getAccessStatistics()
+                    .getFaultCount() > 0 );
+            BufferedReader reader = new BufferedReader( new FileReader( nodeStoreHeatmap ) );
+            try
+            {
+                assertEquals( "# neostore.nodestore.db, regions of 1048576 bytes", reader.readLine() );
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    private List<String> heatmapRows( PageAccessStatistics statistics )
+    {
+        StringWriter heatmap = new StringWriter();
+        statistics.writeHeatmap( "store", new PrintWriter( heatmap ) );
+        List<String> lines = new ArrayList<String>( asList( heatmap.toString().split( "\r?\n" ) ) );
+        // the store name and fault latencies
+        lines.remove( 0 );
+        lines.remove( lines.size() - 1 );
+        return lines;
+    }
+
+    private static List<String> asList( String... lines )
+    {
+        return Arrays.asList( lines );
+    }
+}
@@ -32,11 +32,14 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -727,4 +730,131 @@ public class TestIdGenerator
                 assertTrue( file.delete() );
         }
     }
+
+    @Test
+    public void concurrentlyAllocatedIdsAreNeverHandedOutTwice() throws Exception
+    {
+        IdGenerator idGenerator = null;
+        try
+        {
+            IdGeneratorImpl.createGenerator( fs, idGeneratorFile() );
+            final IdGenerator generator = idGenerator =
+                    new IdGeneratorImpl( fs, idGeneratorFile(), 10, Long.MAX_VALUE, true, 0 );
+            final Map<Long, Boolean> idsInUse = new ConcurrentHashMap<Long, Boolean>();
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            Thread[] threads = new Thread[8];
+            for ( int t = 0; t < threads.length; t++ )
+            {
+                threads[t] = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            List<Long> held = new ArrayList<Long>();
+                            for ( int i = 0; i < 10000; i++ )
+                            {
+                                long id = generator.nextId();
+                                assertTrue( "Id " + id + " handed out twice", idsInUse.put( id, Boolean.TRUE ) == null );
+                                held.add( id );
+                                if ( held.size() == 7 )
+                                {
+                                    for ( Long heldId : held )
+                                    {
+                                        idsInUse.remove( heldId );
+                                        generator.freeId( heldId );
+                                    }
+                                    held.clear();
+                                }
+                            }
+                        }
+                        catch ( Throwable e )
+                        {
+                            failure.compareAndSet( null, e );
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for ( Thread thread : threads )
+                thread.join();
+            if ( failure.get() != null )
+                throw new AssertionError( failure.get() );
+            assertTrue( "Expected freed ids to be reused, high id was " + idGenerator.getHighId(),
+                    idGenerator.getHighId() < threads.length * 10000 );
+        }
+        finally
+        {
+            if ( idGenerator != null )
+                closeIdGenerator( idGenerator );
+            File file = idGeneratorFile();
+            if ( file.exists() )
+                assertTrue( file.delete() );
+        }
+    }
+
+    @Test
+    public void idsFreedWhileClosingAreEitherWrittenOrRejected() throws Exception
+    {
+        try
+        {
+            IdGeneratorImpl.createGenerator( fs, idGeneratorFile() );
+            final IdGenerator generator = new IdGeneratorImpl( fs, idGeneratorFile(), 10, Long.MAX_VALUE, false, 0 );
+            final int idsPerThread = 10000;
+            Thread[] threads = new Thread[4];
+            generator.setHighId( threads.length * idsPerThread );
+            final Set<Long> freed = Collections.newSetFromMap( new ConcurrentHashMap<Long, Boolean>() );
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            for ( int t = 0; t < threads.length; t++ )
+            {
+                final int firstId = t * idsPerThread;
+                threads[t] = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            for ( long id = firstId; id < firstId + idsPerThread; id++ )
+                            {
+                                generator.freeId( id );
+                                freed.add( id );
+                            }
+                        }
+                        catch ( IllegalStateException e )
+                        { // closed
+                        }
+                        catch ( Throwable e )
+                        {
+                            failure.compareAndSet( null, e );
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            Thread.sleep( 5 );
+            closeIdGenerator( generator );
+            for ( Thread thread : threads )
+                thread.join();
+            if ( failure.get() != null )
+                throw new AssertionError( failure.get() );
+
+            IdGenerator reopened = new IdGeneratorImpl( fs, idGeneratorFile(), 10, Long.MAX_VALUE, false, 0 );
+            Set<Long> reused = new HashSet<Long>();
+            for ( int i = 0; i < freed.size(); i++ )
+            {
+                reused.add( reopened.nextId() );
+            }
+            assertEquals( freed, reused );
+            assertEquals( threads.length * idsPerThread, reopened.nextId() );
+            closeIdGenerator( reopened );
+        }
+        finally
+        {
+            File file = idGeneratorFile();
+            if ( file.exists() )
+                assertTrue( file.delete() );
+        }
+    }
 }
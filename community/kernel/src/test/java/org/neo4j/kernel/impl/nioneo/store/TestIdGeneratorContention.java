@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.neo4j.kernel.DefaultFileSystemAbstraction;
+
+/**
+ * Measures how many ids per second an {@link IdGeneratorImpl} hands out to a growing number of
+ * threads creating records, where every tenth record gets deleted again.
+ */
+@Ignore( "Not a proper test really, merely a contention measurement" )
+public class TestIdGeneratorContention
+{
+    private static final long secondsPerRun = 5;
+
+    @Test
+    public void measureIdAllocationThroughput() throws Exception
+    {
+        for ( int threads = 1; threads <= 64; threads *= 2 )
+        {
+            System.out.println( threads + " threads: " + run( threads ) + " ids/s" );
+        }
+    }
+
+    private long run( int threads ) throws Exception
+    {
+        DefaultFileSystemAbstraction fs = new DefaultFileSystemAbstraction();
+        File file = new File( "target/contention.id" );
+        file.delete();
+        IdGeneratorImpl.createGenerator( fs, file );
+        final IdGeneratorImpl idGenerator = new IdGeneratorImpl( fs, file, 1000, Long.MAX_VALUE, true, 0 );
+        final long endTime = System.currentTimeMillis() + SECONDS.toMillis( secondsPerRun );
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for ( int i = 0; i < threads; i++ )
+        {
+            futures.add( executor.submit( new Callable<Long>()
+            {
+                @Override
+                public Long call() throws Exception
+                {
+                    long ids = 0;
+                    while ( System.currentTimeMillis() < endTime )
+                    {
+                        for ( int i = 0; i < 1000; i++, ids++ )
+                        {
+                            long id = idGenerator.nextId();
+                            if ( ids % 10 == 0 )
+                            {
+                                idGenerator.freeId( id );
+                            }
+                        }
+                    }
+                    return ids;
+                }
+            } ) );
+        }
+        long total = 0;
+        for ( Future<Long> future : futures )
+        {
+            total += future.get();
+        }
+        executor.shutdown();
+        idGenerator.close();
+        file.delete();
+        return total / secondsPerRun;
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store.windowpool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.kernel.impl.nioneo.store.Buffer;
+import org.neo4j.kernel.impl.nioneo.store.OperationType;
+import org.neo4j.kernel.impl.nioneo.store.PersistenceWindow;
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.test.ResourceCollection;
+import org.neo4j.test.TargetDirectory;
+
+public class PagedWindowPoolTest
+{
+    private static final int RECORD_SIZE = 8;
+    private static final int PAGE_SIZE = RECORD_SIZE * 8;
+
+    private static final TargetDirectory target = TargetDirectory.forTest( PagedWindowPoolTest.class );
+    @Rule
+    public final TargetDirectory.TestDirectory directory = target.testDirectory();
+    @Rule
+    public final ResourceCollection resources = new ResourceCollection();
+
+    private FileChannel channel;
+
+    @Before
+    public void openFile() throws Exception
+    {
+        File file = new File( directory.directory(), "paged.file" );
+        channel = resources.add( new RandomAccessFile( file, "rw" ) ).getChannel();
+    }
+
+    @Test
+    public void shouldWriteEvictedPagesToTheFile() throws Exception
+    {
+        // given a pool with room for fewer pages than are written to
+        PagedWindowPool pool = new PagedWindowPool( new File( "test.store" ), RECORD_SIZE, PAGE_SIZE, 0, channel,
+                false, StringLogger.DEV_NULL );
+        int records = 1000;
+
+        // when
+        for ( long id = 0; id < records; id++ )
+        {
+            write( pool, id, id );
+        }
+
+        // then
+        for ( long id = 0; id < records; id++ )
+        {
+            assertEquals( id, read( pool, id ) );
+        }
+        assertTrue( pool.getStats().getSwitchCount() > 0 );
+        pool.close();
+        ByteBuffer onDisk = ByteBuffer.allocate( records * RECORD_SIZE );
+        channel.read( onDisk, 0 );
+        onDisk.flip();
+        for ( long id = 0; id < records; id++ )
+        {
+            assertEquals( id, onDisk.getLong() );
+        }
+    }
+
+    @Test
+    public void shouldDiscardChangesToEvictedPagesWhenReadOnly() throws Exception
+    {
+        // given
+        PagedWindowPool pool = new PagedWindowPool( new File( "test.store" ), RECORD_SIZE, PAGE_SIZE, 0, channel,
+                true, StringLogger.DEV_NULL );
+        int records = 1000;
+        for ( long id = 0; id < records; id++ )
+        {
+            write( pool, id, id + 1 );
+        }
+
+        // when/then, nothing has been written back since the pool is read only
+        for ( long id = 0; id < records; id++ )
+        {
+            assertEquals( 0, read( pool, id ) );
+        }
+        pool.close();
+        assertEquals( 0, channel.size() );
+    }
+
+    @Test
+    public void shouldKeepConcurrentWritesToTheSamePages() throws Exception
+    {
+        // given
+        final PagedWindowPool pool = new PagedWindowPool( new File( "test.store" ), RECORD_SIZE, PAGE_SIZE,
+                PAGE_SIZE * 16, channel, false, StringLogger.DEV_NULL );
+        final int threads = 8;
+        final int records = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        // when every thread keeps incrementing its own records, spread over pages shared with the other threads
+        for ( int t = 0; t < threads; t++ )
+        {
+            final int thread = t;
+            futures.add( executor.submit( new Callable<Void>()
+            {
+                @Override
+                public Void call() throws Exception
+                {
+                    Random random = new Random( thread );
+                    for ( int i = 0; i < 20000; i++ )
+                    {
+                        long id = random.nextInt( records / threads ) * threads + thread;
+                        PersistenceWindow window = pool.acquire( id, OperationType.WRITE );
+                        try
+                        {
+                            Buffer buffer = window.getOffsettedBuffer( id );
+                            long value = buffer.getLong();
+                            window.getOffsettedBuffer( id ).putLong( value + 1 );
+                        }
+                        finally
+                        {
+                            pool.release( window );
+                        }
+                        read( pool, random.nextInt( records ) );
+                    }
+                    return null;
+                }
+            } ) );
+        }
+        for ( Future<Void> future : futures )
+        {
+            future.get();
+        }
+        executor.shutdown();
+
+        // then
+        long total = 0;
+        for ( long id = 0; id < records; id++ )
+        {
+            total += read( pool, id );
+        }
+        assertEquals( threads * 20000, total );
+        pool.close();
+    }
+
+    @Test( timeout = 10000 )
+    public void shouldLetAThreadAcquireAPageItHoldsWhileAnotherThreadWaitsForIt() throws Exception
+    {
+        // given a page held by this thread, and another thread waiting to write to it
+        final PagedWindowPool pool = new PagedWindowPool( new File( "test.store" ), RECORD_SIZE, PAGE_SIZE, 0,
+                channel, false, StringLogger.DEV_NULL );
+        PersistenceWindow held = pool.acquire( 0, OperationType.READ );
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                write( pool, 1, 42 );
+            }
+        };
+        writer.start();
+        while ( writer.getState() != Thread.State.WAITING )
+        {
+            Thread.sleep( 1 );
+        }
+
+        // when acquiring the page again, for reading and writing
+        PersistenceWindow again = pool.acquire( 0, OperationType.WRITE );
+        again.getOffsettedBuffer( 0 ).putLong( 7 );
+        assertEquals( 7, read( pool, 0 ) );
+        pool.release( again );
+        pool.release( held );
+
+        // then the waiting writer gets the page once this thread has released it
+        writer.join();
+        assertEquals( 42, read( pool, 1 ) );
+        pool.close();
+    }
+
+    @Test
+    public void shouldReuseTheWindowOfAPage() throws Exception
+    {
+        // given
+        PagedWindowPool pool = new PagedWindowPool( new File( "test.store" ), RECORD_SIZE, PAGE_SIZE, 0, channel,
+                false, StringLogger.DEV_NULL );
+        PersistenceWindow first = pool.acquire( 0, OperationType.READ );
+        pool.release( first );
+
+        // when
+        PersistenceWindow second = pool.acquire( 1, OperationType.WRITE );
+        pool.release( second );
+
+        // then
+        assertSame( first, second );
+        assertSame( first.getBuffer(), second.getBuffer() );
+        pool.close();
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void shouldNotAcceptRecordsLargerThanAPage() throws Exception
+    {
+        new PagedWindowPool( new File( "test.store" ), PAGE_SIZE + 1, PAGE_SIZE, 0, channel, false,
+                StringLogger.DEV_NULL );
+    }
+
+    private void write( WindowPool pool, long id, long value )
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.WRITE );
+        try
+        {
+            window.getOffsettedBuffer( id ).putLong( value );
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+
+    private long read( WindowPool pool, long id )
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.READ );
+        try
+        {
+            return window.getOffsettedBuffer( id ).getLong();
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+}
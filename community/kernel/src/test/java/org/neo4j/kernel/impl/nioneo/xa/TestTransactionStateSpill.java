@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.xa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.TransactionFailureException;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.test.TargetDirectory;
+
+public class TestTransactionStateSpill
+{
+    private static final int THRESHOLD = 20;
+    private static final int NODES = 300;
+    private static final RelationshipType KNOWS = DynamicRelationshipType.withName( "KNOWS" );
+    private static final RelationshipType OWNS = DynamicRelationshipType.withName( "OWNS" );
+
+    private final File storeDir = TargetDirectory.forTest( getClass() ).graphDbDir( true );
+    private GraphDatabaseAPI db;
+
+    @Before
+    public void startDb()
+    {
+        db = newDb();
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    private GraphDatabaseAPI newDb()
+    {
+        return (GraphDatabaseAPI) new GraphDatabaseFactory().newEmbeddedDatabaseBuilder( storeDir.getAbsolutePath() )
+                .setConfig( GraphDatabaseSettings.transaction_state_spill_threshold, String.valueOf( THRESHOLD ) )
+                .setConfig( GraphDatabaseSettings.dense_node_threshold, "10" )
+                .newGraphDatabase();
+    }
+
+    @Test
+    public void largeTransactionIsSpilledAndCommitted() throws Exception
+    {
+        Transaction tx = db.beginTx();
+        Node hub = db.createNode();
+        long[] ids = createChain( hub );
+        assertTrue( hasSpilledFiles() );
+        assertChain( hub, ids );
+        tx.success();
+        tx.finish();
+
+        assertFalse( hasSpilledFiles() );
+        assertChain( hub, ids );
+        db.getNodeManager().clearCache();
+        assertChain( hub, ids );
+        db.shutdown();
+        db = newDb();
+        assertChain( db.getNodeById( hub.getId() ), ids );
+    }
+
+    @Test
+    public void spilledRecordsCanBeChangedAgain() throws Exception
+    {
+        Transaction tx = db.beginTx();
+        Node hub = db.createNode();
+        long[] ids = createChain( hub );
+        // the first nodes and relationships are long gone from the heap by now
+        for ( int i = 0; i < NODES / 2; i++ )
+        {
+            Node node = db.getNodeById( ids[i] );
+            node.setProperty( "name", "changed " + i );
+            node.removeProperty( "numbers" );
+            node.getSingleRelationship( OWNS, Direction.INCOMING ).delete();
+        }
+        tx.success();
+        tx.finish();
+
+        db.getNodeManager().clearCache();
+        for ( int i = 0; i < NODES; i++ )
+        {
+            Node node = db.getNodeById( ids[i] );
+            boolean changed = i < NODES / 2;
+            assertEquals( changed ? "changed " + i : longName( i ), node.getProperty( "name" ) );
+            assertEquals( !changed, node.hasProperty( "numbers" ) );
+        }
+        assertEquals( NODES - NODES / 2, count( hub.getRelationships( OWNS ) ) );
+    }
+
+    @Test
+    public void rollbackOfSpilledTransactionLeavesNothingBehind() throws Exception
+    {
+        Transaction tx = db.beginTx();
+        Node hub = db.createNode();
+        long[] ids = createChain( hub );
+        assertTrue( hasSpilledFiles() );
+        tx.failure();
+        tx.finish();
+
+        assertFalse( hasSpilledFiles() );
+        for ( long id : ids )
+        {
+            try
+            {
+                db.getNodeById( id );
+                fail( "Node " + id + " should have been rolled back" );
+            }
+            catch ( NotFoundException e )
+            {   // good
+            }
+        }
+    }
+
+    @Test
+    public void deletingSpilledNodeWithRelationshipsFailsTheCommit() throws Exception
+    {
+        Transaction tx = db.beginTx();
+        Node node = db.createNode();
+        node.createRelationshipTo( db.createNode(), KNOWS );
+        tx.success();
+        tx.finish();
+
+        tx = db.beginTx();
+        node.delete();
+        createChain( db.createNode() );
+        tx.success();
+        try
+        {
+            tx.finish();
+            fail( "Should not be able to delete a node that still has relationships" );
+        }
+        catch ( TransactionFailureException e )
+        {   // good
+        }
+        db.getNodeManager().clearCache();
+        assertEquals( 1, count( db.getNodeById( node.getId() ).getRelationships() ) );
+    }
+
+    private long[] createChain( Node hub )
+    {
+        long[] ids = new long[NODES];
+        Node previous = null;
+        for ( int i = 0; i < NODES; i++ )
+        {
+            Node node = db.createNode();
+            node.setProperty( "name", longName( i ) );
+            node.setProperty( "numbers", new int[] { i, i + 1, i + 2 } );
+            hub.createRelationshipTo( node, OWNS );
+            if ( previous != null )
+            {
+                previous.createRelationshipTo( node, KNOWS ).setProperty( "since", i );
+            }
+            previous = node;
+            ids[i] = node.getId();
+        }
+        return ids;
+    }
+
+    private void assertChain( Node hub, long[] ids )
+    {
+        assertEquals( NODES, count( hub.getRelationships( OWNS ) ) );
+        for ( int i = 0; i < NODES; i++ )
+        {
+            Node node = db.getNodeById( ids[i] );
+            assertEquals( longName( i ), node.getProperty( "name" ) );
+            assertEquals( i + 2, ((int[]) node.getProperty( "numbers" ))[2] );
+            assertEquals( hub, node.getSingleRelationship( OWNS, Direction.INCOMING ).getStartNode() );
+            if ( i > 0 )
+            {
+                Relationship knows = node.getSingleRelationship( KNOWS, Direction.INCOMING );
+                assertEquals( ids[i - 1], knows.getStartNode().getId() );
+                assertEquals( i, knows.getProperty( "since" ) );
+            }
+        }
+    }
+
+    private static String longName( int i )
+    {
+        return "a name long enough to not fit in a property record, number " + i;
+    }
+
+    private boolean hasSpilledFiles()
+    {
+        for ( File file : storeDir.listFiles() )
+        {
+            if ( file.getName().startsWith( SpilledRecords.FILE_NAME_PREFIX ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.storemigration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+import static org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore.ALL_STORES_VERSION;
+import static org.neo4j.kernel.impl.storemigration.MigrationTestUtils.allStoreFilesHaveVersion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.helpers.UTF8;
+import org.neo4j.kernel.DefaultFileSystemAbstraction;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.test.TargetDirectory;
+
+public class DenseNodeUpgraderTest
+{
+    private static final RelationshipType A = DynamicRelationshipType.withName( "A" );
+    private static final RelationshipType B = DynamicRelationshipType.withName( "B" );
+
+    private final FileSystemAbstraction fileSystem = new DefaultFileSystemAbstraction();
+    private final File storeDir = TargetDirectory.forTest( getClass() ).graphDbDir( true );
+    private final File neoStore = new File( storeDir, NeoStore.DEFAULT_NAME );
+
+    @Test
+    public void shouldUpgradeDenseNodesOfThePreviousVersionWhenAllowed() throws Exception
+    {
+        long[] nodes = createNodes( 10 );
+        downgradeStore( true );
+        assertTrue( new DenseNodeUpgrader( fileSystem, StringLogger.DEV_NULL ).needsUpgrade( neoStore ) );
+
+        GraphDatabaseAPI db = newDb( true );
+        try
+        {
+            assertTrue( isDense( db, nodes[0] ) );
+            assertFalse( isDense( db, nodes[1] ) );
+            assertRelationships( db, nodes[0], 10 );
+            assertRelationships( db, nodes[1], 1 );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+        assertTrue( allStoreFilesHaveVersion( fileSystem, storeDir, ALL_STORES_VERSION ) );
+        assertFalse( new DenseNodeUpgrader( fileSystem, StringLogger.DEV_NULL ).needsUpgrade( neoStore ) );
+    }
+
+    @Test
+    public void shouldUpgradeStoresThatWerentCleanlyShutDown() throws Exception
+    {
+        long[] nodes = createNodes( 10 );
+        downgradeStore( false );
+
+        GraphDatabaseAPI db = newDb( true );
+        try
+        {
+            assertTrue( isDense( db, nodes[0] ) );
+            assertRelationships( db, nodes[0], 10 );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldNotUpgradeUnlessAllowed() throws Exception
+    {
+        createNodes( 10 );
+        downgradeStore( true );
+
+        try
+        {
+            newDb( false ).shutdown();
+            fail( "Should not have upgraded the store" );
+        }
+        catch ( RuntimeException e )
+        {
+            Throwable cause = e;
+            while ( cause.getCause() != null && !(cause instanceof UpgradeNotAllowedByConfigurationException) )
+            {
+                cause = cause.getCause();
+            }
+            assertTrue( cause instanceof UpgradeNotAllowedByConfigurationException );
+        }
+        assertTrue( new DenseNodeUpgrader( fileSystem, StringLogger.DEV_NULL ).needsUpgrade( neoStore ) );
+    }
+
+    private GraphDatabaseAPI newDb( boolean allowUpgrade )
+    {
+        return (GraphDatabaseAPI) new GraphDatabaseFactory().newEmbeddedDatabaseBuilder( storeDir.getPath() )
+                .setConfig( GraphDatabaseSettings.dense_node_threshold, "5" )
+                .setConfig( GraphDatabaseSettings.allow_store_upgrade, String.valueOf( allowUpgrade ) )
+                .newGraphDatabase();
+    }
+
+    /**
+     * @return a dense node with {@code denseRelationships} relationships, and a sparse one.
+     */
+    private long[] createNodes( int denseRelationships )
+    {
+        GraphDatabaseService db = newDb( false );
+        try
+        {
+            Transaction tx = db.beginTx();
+            Node dense = db.createNode();
+            Node sparse = db.createNode();
+            for ( int i = 0; i < denseRelationships; i++ )
+            {
+                dense.createRelationshipTo( db.createNode(), i % 2 == 0 ? A : B );
+            }
+            sparse.createRelationshipTo( dense, A );
+            tx.success();
+            tx.finish();
+            return new long[] { dense.getId(), sparse.getId() };
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    private boolean isDense( GraphDatabaseAPI db, long node )
+    {
+        return db.getXaDataSourceManager().getNeoStoreDataSource().getNeoStore().getNodeStore()
+                .getRecord( node ).isDense();
+    }
+
+    private void assertRelationships( GraphDatabaseAPI db, long node, int expected )
+    {
+        db.getNodeManager().clearCache();
+        assertEquals( expected, count( db.getNodeById( node ).getRelationships( Direction.OUTGOING ) ) );
+    }
+
+    /*
+     * Writes the node store the way the previous version did, and the version of that in
+     * every store. If not clean the trailers of the neo store and the node store are left out.
+     */
+    private void downgradeStore( boolean clean ) throws IOException
+    {
+        String from = DenseNodeUpgrader.FROM_VERSION;
+        for ( File file : storeDir.listFiles() )
+        {
+            String name = file.getName();
+            if ( file.isFile() && name.startsWith( NeoStore.DEFAULT_NAME ) && !name.endsWith( ".id" )
+                 && !name.endsWith( ".nodestore.db" ) )
+            {
+                RandomAccessFile store = new RandomAccessFile( file, "rw" );
+                try
+                {
+                    if ( !clean && name.equals( NeoStore.DEFAULT_NAME ) )
+                    {
+                        store.setLength( store.length() - trailer( NeoStore.TYPE_DESCRIPTOR ).length );
+                    }
+                    else
+                    {
+                        store.seek( store.length() - UTF8.encode( from ).length );
+                        store.write( UTF8.encode( from ) );
+                    }
+                }
+                finally
+                {
+                    store.close();
+                }
+            }
+        }
+        NeoStore.setStoreVersion( fileSystem, neoStore, NeoStore.versionStringToLong( from ) );
+
+        RandomAccessFile nodeStore = new RandomAccessFile( new File( neoStore.getPath() + ".nodestore.db" ), "rw" );
+        try
+        {
+            byte[] records = new byte[(int) nodeStore.length() - trailer( NodeStore.TYPE_DESCRIPTOR ).length];
+            nodeStore.readFully( records );
+            int count = records.length / NodeStore.RECORD_SIZE;
+            for ( int id = 0; id < count; id++ )
+            {
+                // the records of the previous version lack the last byte
+                System.arraycopy( records, id * NodeStore.RECORD_SIZE, records, id * 9, 9 );
+            }
+            nodeStore.setLength( 0 );
+            nodeStore.write( records, 0, count * 9 );
+            if ( clean )
+            {
+                nodeStore.write( UTF8.encode( NodeStore.TYPE_DESCRIPTOR + " " + from ) );
+            }
+        }
+        finally
+        {
+            nodeStore.close();
+        }
+    }
+
+    private static byte[] trailer( String typeDescriptor )
+    {
+        return UTF8.encode( typeDescriptor + " " + ALL_STORES_VERSION );
+    }
+}
@@ -28,6 +28,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
 import org.neo4j.kernel.impl.nioneo.store.ProduceUncleanStore;
 import org.neo4j.kernel.impl.util.FileUtils;
 import org.neo4j.test.TargetDirectory;
@@ -53,7 +54,8 @@ public class NeoStoreVersionRecordUpgradeIssueIT
 
     private void startAndShutdown( File storeDir )
     {
-        new GraphDatabaseFactory().newEmbeddedDatabase( storeDir.getAbsolutePath() ).shutdown();
+        new GraphDatabaseFactory().newEmbeddedDatabaseBuilder( storeDir.getAbsolutePath() )
+                .setConfig( GraphDatabaseSettings.allow_store_upgrade, "true" ).newGraphDatabase().shutdown();
     }
 
     private File copyResourceStore( String resource ) throws Exception
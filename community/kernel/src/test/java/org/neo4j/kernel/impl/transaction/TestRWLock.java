@@ -21,9 +21,11 @@ package org.neo4j.kernel.impl.transaction;
 
 import static java.lang.System.currentTimeMillis;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
 import static org.neo4j.kernel.impl.transaction.LockWorker.newResourceObject;
 
 import java.io.File;
@@ -31,6 +33,8 @@ import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 
+import javax.transaction.Transaction;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.neo4j.kernel.DeadlockDetectedException;
@@ -364,6 +368,42 @@ public class TestRWLock
                 throw stressThread.error;
     }
 
+    @Test
+    public void interruptedWaiterShouldNotLeaveItsWaitBehind() throws Exception
+    {
+        final RWLock lock = new RWLock( newResourceObject( "resource" ), new RagManager( new PlaceboTm( null, null ) ) );
+        Transaction holder = mock( Transaction.class );
+        final Transaction waiter = mock( Transaction.class );
+        lock.mark();
+        lock.acquireWriteLock( holder );
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                lock.mark();
+                lock.acquireWriteLock( waiter );
+            }
+        };
+        thread.start();
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            while ( lock.getWaitingThreadsCount() == 0 || thread.getState() != Thread.State.WAITING )
+            {
+                Thread.sleep( 1 );
+            }
+            thread.interrupt();
+            sleepALittle();
+        }
+        assertEquals( 1, lock.getWaitingThreadsCount() );
+
+        lock.releaseWriteLock( holder );
+        thread.join( SECONDS.toMillis( 10 ) );
+        assertFalse( thread.isAlive() );
+        assertEquals( 0, lock.getWaitingThreadsCount() );
+    }
+
     private void sleepALittle()
     {
         try
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import javax.transaction.Transaction;
+
+import org.junit.Test;
+import org.neo4j.kernel.DeadlockDetectedException;
+
+public class TestRagManager
+{
+    private final RagManager rag = new RagManager( new PlaceboTm( null, null ) );
+    private final Object r1 = new Object(), r2 = new Object();
+    private final Transaction t1 = mock( Transaction.class ), t2 = mock( Transaction.class );
+
+    @Test
+    public void shouldDetectDeadlockAndRemoveWaitOfDeadlockedTransaction() throws Exception
+    {
+        rag.lockAcquired( r1, t1 );
+        rag.lockAcquired( r2, t2 );
+        rag.checkWaitOn( r2, t1 );
+        try
+        {
+            rag.checkWaitOn( r1, t2 );
+            fail( "Should have detected deadlock" );
+        }
+        catch ( DeadlockDetectedException e )
+        {
+            // good
+        }
+        assertEquals( 1, rag.getDeadlockCount() );
+
+        // t1 gets r2 after t2 has rolled back
+        rag.lockReleased( r2, t2 );
+        rag.stopWaitOn( r2, t1 );
+        rag.lockAcquired( r2, t1 );
+
+        // t2 was never registered as waiting, so it can wait again
+        rag.checkWaitOn( r1, t2 );
+        rag.stopWaitOn( r1, t2 );
+        assertEquals( 1, rag.getDeadlockCount() );
+    }
+
+    @Test
+    public void shouldAllowTransactionToWaitOnResourceItSharesWithNoOtherWaiter() throws Exception
+    {
+        rag.lockAcquired( r1, t1 );
+        rag.lockAcquired( r1, t2 );
+        rag.checkWaitOn( r1, t1 );
+        try
+        {
+            rag.checkWaitOn( r1, t2 );
+            fail( "Should have detected deadlock" );
+        }
+        catch ( DeadlockDetectedException e )
+        {
+            // good
+        }
+        rag.stopWaitOn( r1, t1 );
+    }
+
+    @Test
+    public void shouldNotWakeUpTransactionsThatAreNotDeadlocked() throws Exception
+    {
+        rag.lockAcquired( r1, t1 );
+        rag.lockAcquired( r2, t2 );
+        rag.checkWaitOn( r2, t1 );
+
+        assertEquals( 0, rag.detectDeadlocks() );
+        rag.stopWaitOn( r2, t1 );
+    }
+
+    @Test
+    public void shouldCountDeadlockChecks() throws Exception
+    {
+        rag.lockAcquired( r1, t1 );
+        rag.checkWaitOn( r1, t2 );
+        rag.stopWaitOn( r1, t2 );
+        rag.checkWaitOn( r1, t2 );
+        rag.stopWaitOn( r1, t2 );
+
+        assertEquals( 2, rag.getDeadlockCheckCount() );
+        assertTrue( rag.getDeadlockCheckTimeNanos() >= rag.getMaxDeadlockCheckTimeNanos() );
+    }
+}
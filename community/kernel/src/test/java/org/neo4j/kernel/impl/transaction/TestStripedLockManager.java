@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TestStripedLockManager
+{
+    @Test
+    public void shouldRoundNumberOfStripesUpToPowerOfTwo() throws Exception
+    {
+        assertEquals( 1, newLockManager( 1 ).getNumberOfStripes() );
+        assertEquals( 4, newLockManager( 3 ).getNumberOfStripes() );
+        assertEquals( 16, newLockManager( 16 ).getNumberOfStripes() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void shouldNotAllowZeroStripes() throws Exception
+    {
+        newLockManager( 0 );
+    }
+
+    @Test
+    public void shouldRemoveReleasedLocksFromAllStripes() throws Exception
+    {
+        LockManagerImpl lm = newLockManager( 8 );
+        List<Object> resources = new ArrayList<Object>();
+        for ( int i = 0; i < 100; i++ )
+        {
+            resources.add( new LockWorker.ResourceObject( "resource" + i ) );
+        }
+
+        for ( Object resource : resources )
+        {
+            lm.getReadLock( resource );
+            lm.getWriteLock( resource );
+        }
+        assertEquals( resources.size(), lm.getAllLocks().size() );
+
+        for ( Object resource : resources )
+        {
+            lm.releaseWriteLock( resource, null );
+            lm.releaseReadLock( resource, null );
+        }
+        assertTrue( lm.getAllLocks().isEmpty() );
+    }
+
+    @Test
+    public void shouldKeepWriteLocksExclusiveUnderConcurrentAccess() throws Exception
+    {
+        final LockManagerImpl lm = newLockManager( 4 );
+        final Object[] resources = new Object[10];
+        final int[] counters = new int[resources.length];
+        for ( int i = 0; i < resources.length; i++ )
+        {
+            resources[i] = new LockWorker.ResourceObject( "resource" + i );
+        }
+        final int threadCount = 8, iterations = 2000;
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[threadCount];
+        for ( int t = 0; t < threadCount; t++ )
+        {
+            final int offset = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for ( int i = 0; i < iterations; i++ )
+                        {
+                            int index = (i + offset) % resources.length;
+                            lm.getWriteLock( resources[index] );
+                            try
+                            {
+                                int value = counters[index];
+                                Thread.yield();
+                                counters[index] = value + 1;
+                            }
+                            finally
+                            {
+                                lm.releaseWriteLock( resources[index], null );
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure.compareAndSet( null, e );
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        if ( failure.get() != null )
+        {
+            throw new AssertionError( failure.get() );
+        }
+        int total = 0;
+        for ( int counter : counters )
+        {
+            total += counter;
+        }
+        assertEquals( threadCount * iterations, total );
+        assertTrue( lm.getAllLocks().isEmpty() );
+    }
+
+    private LockManagerImpl newLockManager( int stripes )
+    {
+        PlaceboTm tm = new PlaceboTm( null, null );
+        LockManagerImpl lm = new LockManagerImpl( new RagManager( tm ), stripes );
+        tm.setLockManager( lm );
+        return lm;
+    }
+}
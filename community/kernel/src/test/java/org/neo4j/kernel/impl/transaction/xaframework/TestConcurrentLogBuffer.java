@@ -0,0 +1,292 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseSetting;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.test.TargetDirectory;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.neo4j.test.impl.EphemeralFileSystemAbstraction;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+public class TestConcurrentLogBuffer
+{
+    private final TargetDirectory target = TargetDirectory.forTest( getClass() );
+    private FileChannel channel;
+
+    @Before
+    public void openChannel() throws Exception
+    {
+        File file = new File( target.directory( "buffer", true ), "log" );
+        channel = new RandomAccessFile( file, "rw" ).getChannel();
+    }
+
+    @After
+    public void closeChannel() throws Exception
+    {
+        channel.close();
+    }
+
+    @Test
+    public void shouldWriteOutPutValuesInOrder() throws Exception
+    {
+        ConcurrentLogBuffer buffer = new ConcurrentLogBuffer( channel );
+        buffer.put( (byte) 1 ).putShort( (short) 2 ).putInt( 3 ).putLong( 4 ).putFloat( 5 ).putDouble( 6 )
+              .put( new byte[] { 7, 8 } ).put( new char[] { 'a', 'b' } );
+        assertEquals( 1 + 2 + 4 + 8 + 4 + 8 + 2 + 4, buffer.getFileChannelPosition() );
+
+        buffer.writeOut();
+
+        ByteBuffer content = read( 0, (int) channel.size() );
+        assertEquals( 1, content.get() );
+        assertEquals( 2, content.getShort() );
+        assertEquals( 3, content.getInt() );
+        assertEquals( 4, content.getLong() );
+        assertEquals( 5, content.getFloat(), 0 );
+        assertEquals( 6, content.getDouble(), 0 );
+        assertEquals( 7, content.get() );
+        assertEquals( 8, content.get() );
+        assertEquals( 'a', content.getChar() );
+        assertEquals( 'b', content.getChar() );
+        assertEquals( 0, content.remaining() );
+    }
+
+    @Test
+    public void shouldLayOutConcurrentlyFilledRegionsContiguouslyInReservationOrder() throws Exception
+    {
+        final ConcurrentLogBuffer buffer = new ConcurrentLogBuffer( channel );
+        final int threads = 8, entriesPerThread = 500;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> writers = new ArrayList<Thread>();
+        for ( int i = 0; i < threads; i++ )
+        {
+            final int thread = i;
+            Thread writer = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        Random random = new Random( thread );
+                        InMemoryLogBuffer entry = new InMemoryLogBuffer();
+                        for ( int sequence = 0; sequence < entriesPerThread; sequence++ )
+                        {
+                            entry.reset();
+                            int payload = random.nextInt( 4000 );
+                            entry.putInt( thread ).putInt( sequence ).putInt( payload );
+                            for ( int j = 0; j < payload; j++ )
+                            {
+                                entry.put( (byte) (thread + sequence + j) );
+                            }
+                            buffer.fill( buffer.reserve( entry.size() ), entry );
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure.set( e );
+                    }
+                }
+            };
+            writer.start();
+            writers.add( writer );
+        }
+        for ( Thread writer : writers )
+        {
+            writer.join();
+        }
+        assertNull( failure.get() );
+        buffer.force();
+
+        assertEquals( channel.size(), buffer.getFileChannelPosition() );
+        ByteBuffer content = read( 0, (int) channel.size() );
+        int[] nextSequence = new int[threads];
+        while ( content.hasRemaining() )
+        {
+            int thread = content.getInt();
+            int sequence = content.getInt();
+            int payload = content.getInt();
+            assertEquals( nextSequence[thread]++, sequence );
+            for ( int j = 0; j < payload; j++ )
+            {
+                assertEquals( (byte) (thread + sequence + j), content.get() );
+            }
+        }
+        for ( int thread = 0; thread < threads; thread++ )
+        {
+            assertEquals( entriesPerThread, nextSequence[thread] );
+        }
+    }
+
+    @Test( timeout = 10000 )
+    public void shouldParkWhileWritingOutUntilReservedRegionsAreFilled() throws Exception
+    {
+        final ConcurrentLogBuffer buffer = new ConcurrentLogBuffer( channel );
+        int offset = buffer.reserve( 4 );
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    buffer.writeOut();
+                }
+                catch ( Throwable e )
+                {
+                    failure.set( e );
+                }
+            }
+        };
+        writer.start();
+        while ( writer.getState() != Thread.State.WAITING )
+        {
+            Thread.sleep( 1 );
+        }
+        assertEquals( 0, channel.size() );
+
+        InMemoryLogBuffer region = new InMemoryLogBuffer();
+        region.putInt( 42 );
+        buffer.fill( offset, region );
+        writer.join();
+
+        assertNull( failure.get() );
+        assertEquals( 42, read( 0, 4 ).getInt() );
+    }
+
+    @Test
+    public void shouldWriteContentLargerThanTheBufferInChunks() throws Exception
+    {
+        ConcurrentLogBuffer buffer = new ConcurrentLogBuffer( channel );
+        buffer.putInt( 42 );
+        InMemoryLogBuffer large = new InMemoryLogBuffer();
+        int size = ConcurrentLogBuffer.BUFFER_SIZE * 2 + 10;
+        for ( int i = 0; i < size; i++ )
+        {
+            large.put( (byte) i );
+        }
+
+        assertEquals( -1, buffer.reserve( large.size() ) );
+        buffer.put( large );
+        buffer.writeOut();
+
+        ByteBuffer content = read( 0, (int) channel.size() );
+        assertEquals( 42, content.getInt() );
+        for ( int i = 0; i < size; i++ )
+        {
+            assertEquals( (byte) i, content.get() );
+        }
+        assertEquals( 0, content.remaining() );
+    }
+
+    @Test
+    public void shouldRecoverTransactionsCommittedWithConcurrentLogicalLogWrites() throws Exception
+    {
+        EphemeralFileSystemAbstraction fileSystem = new EphemeralFileSystemAbstraction();
+        final GraphDatabaseService db = new TestGraphDatabaseFactory().setFileSystem( fileSystem )
+                .newImpermanentDatabaseBuilder( "db" )
+                .setConfig( GraphDatabaseSettings.concurrent_logical_log_writes, GraphDatabaseSetting.TRUE )
+                .newGraphDatabase();
+        final int threads = 4, transactionsPerThread = 25;
+        List<Thread> committers = new ArrayList<Thread>();
+        for ( int i = 0; i < threads; i++ )
+        {
+            Thread committer = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int j = 0; j < transactionsPerThread; j++ )
+                    {
+                        Transaction tx = db.beginTx();
+                        try
+                        {
+                            Node node = db.createNode();
+                            node.setProperty( "name", "node-" + j );
+                            tx.success();
+                        }
+                        finally
+                        {
+                            tx.finish();
+                        }
+                    }
+                }
+            };
+            committer.start();
+            committers.add( committer );
+        }
+        for ( Thread committer : committers )
+        {
+            committer.join();
+        }
+        EphemeralFileSystemAbstraction crashed = fileSystem.snapshot();
+        db.shutdown();
+
+        GraphDatabaseService recovered = new TestGraphDatabaseFactory().setFileSystem( crashed )
+                .newImpermanentDatabase( "db" );
+        try
+        {
+            int nodes = 0;
+            for ( Node node : GlobalGraphOperations.at( recovered ).getAllNodes() )
+            {
+                if ( node.hasProperty( "name" ) )
+                {
+                    nodes++;
+                }
+            }
+            assertEquals( threads * transactionsPerThread, nodes );
+        }
+        finally
+        {
+            recovered.shutdown();
+        }
+    }
+
+    private ByteBuffer read( long position, int size ) throws IOException
+    {
+        ByteBuffer content = ByteBuffer.allocate( size );
+        while ( content.hasRemaining() )
+        {
+            channel.read( content, position + content.position() );
+        }
+        content.flip();
+        return content;
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseSetting;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.graphdb.mockfs.LimitedFileChannel;
+import org.neo4j.graphdb.mockfs.LimitedFilesystemAbstraction;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.neo4j.test.impl.EphemeralFileSystemAbstraction;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+public class TestGroupCommit
+{
+    private final GroupCommit groupCommit = new GroupCommit();
+
+    @After
+    public void stopGroupCommit() throws Throwable
+    {
+        groupCommit.stop();
+    }
+
+    @Test
+    public void shouldForceDirectlyWhenNotStarted() throws Exception
+    {
+        FileChannel channel = mock( FileChannel.class );
+
+        groupCommit.force( channel );
+
+        verify( channel ).force( false );
+        assertEquals( 1, groupCommit.getForceCount() );
+    }
+
+    @Test
+    public void shouldShareOneForceBetweenConcurrentCommittersOfARealDatabase() throws Exception
+    {
+        ForceBlockingFileSystem fs = new ForceBlockingFileSystem();
+        final GraphDatabaseAPI db = (GraphDatabaseAPI) new TestGraphDatabaseFactory().setFileSystem( fs )
+                .newImpermanentDatabaseBuilder()
+                .setConfig( GraphDatabaseSettings.group_commit, GraphDatabaseSetting.TRUE ).newGraphDatabase();
+        try
+        {
+            GroupCommit groupCommit = db.getDependencyResolver().resolveDependency( GroupCommit.class );
+            long commitsBefore = groupCommit.getCommitCount();
+            AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+            // The first committer gets stuck in its log force...
+            fs.blockNextForce();
+            List<Thread> committers = new ArrayList<Thread>();
+            committers.add( nodeCreator( db, failure ) );
+            fs.forceBlocked.await();
+            int forcesBefore = fs.forces.get();
+
+            // ...while the others write their commit entries and queue up behind it
+            int waitingCommitters = 4;
+            for ( int i = 0; i < waitingCommitters; i++ )
+            {
+                committers.add( nodeCreator( db, failure ) );
+            }
+            long deadline = System.currentTimeMillis() + SECONDS.toMillis( 30 );
+            while ( groupCommit.getCommitCount() < commitsBefore + 1 + waitingCommitters )
+            {
+                if ( System.currentTimeMillis() > deadline )
+                {
+                    fs.releaseForce.countDown();
+                    fail( "Committers didn't get to their log force while another force was in progress" );
+                }
+                Thread.sleep( 1 );
+            }
+            fs.releaseForce.countDown();
+            for ( Thread committer : committers )
+            {
+                committer.join();
+            }
+
+            assertSame( null, failure.get() );
+            assertEquals( "All committers that queued up during the blocked force should share one force",
+                    forcesBefore + 1, fs.forces.get() );
+            int nodes = 0;
+            for ( @SuppressWarnings( "unused" ) Object node : GlobalGraphOperations.at( db ).getAllNodes() )
+            {
+                nodes++;
+            }
+            // the reference node is there as well
+            assertEquals( committers.size() + 1, nodes );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldConsiderClosedChannelForced() throws Throwable
+    {
+        groupCommit.start();
+        FileChannel channel = mock( FileChannel.class );
+        doThrow( new ClosedChannelException() ).when( channel ).force( false );
+
+        groupCommit.force( channel );
+    }
+
+    @Test
+    public void shouldPropagateFailureToForceToCommitter() throws Throwable
+    {
+        groupCommit.start();
+        FileChannel channel = mock( FileChannel.class );
+        IOException failure = new IOException( "Disk full" );
+        doThrow( failure ).when( channel ).force( false );
+
+        try
+        {
+            groupCommit.force( channel );
+            fail( "Should have failed" );
+        }
+        catch ( IOException e )
+        {
+            assertSame( failure, e );
+        }
+    }
+
+    @Test
+    public void shouldCommitConcurrentTransactionsWithGroupCommitEnabled() throws Exception
+    {
+        final GraphDatabaseAPI db = (GraphDatabaseAPI) new TestGraphDatabaseFactory().newImpermanentDatabaseBuilder()
+                .setConfig( GraphDatabaseSettings.group_commit, GraphDatabaseSetting.TRUE ).newGraphDatabase();
+        try
+        {
+            final int threads = 8, transactionsPerThread = 20;
+            List<Thread> committers = new ArrayList<Thread>();
+            for ( int i = 0; i < threads; i++ )
+            {
+                Thread committer = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        for ( int j = 0; j < transactionsPerThread; j++ )
+                        {
+                            Transaction tx = db.beginTx();
+                            try
+                            {
+                                db.createNode();
+                                tx.success();
+                            }
+                            finally
+                            {
+                                tx.finish();
+                            }
+                        }
+                    }
+                };
+                committer.start();
+                committers.add( committer );
+            }
+            for ( Thread committer : committers )
+            {
+                committer.join();
+            }
+
+            int nodes = 0;
+            for ( @SuppressWarnings( "unused" ) Object node : GlobalGraphOperations.at( db ).getAllNodes() )
+            {
+                nodes++;
+            }
+            // the reference node is there as well
+            assertEquals( threads * transactionsPerThread + 1, nodes );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    private Thread nodeCreator( final GraphDatabaseAPI db, final AtomicReference<Throwable> failure )
+    {
+        Thread thread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Transaction tx = db.beginTx();
+                    try
+                    {
+                        db.createNode();
+                        tx.success();
+                    }
+                    finally
+                    {
+                        tx.finish();
+                    }
+                }
+                catch ( Throwable e )
+                {
+                    failure.set( e );
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private static class ForceBlockingFileSystem extends LimitedFilesystemAbstraction
+    {
+        final AtomicInteger forces = new AtomicInteger();
+        final CountDownLatch forceBlocked = new CountDownLatch( 1 );
+        final CountDownLatch releaseForce = new CountDownLatch( 1 );
+        private final AtomicBoolean blockNextForce = new AtomicBoolean();
+
+        ForceBlockingFileSystem()
+        {
+            super( new EphemeralFileSystemAbstraction() );
+        }
+
+        void blockNextForce()
+        {
+            blockNextForce.set( true );
+        }
+
+        @Override
+        public FileChannel open( File fileName, String mode ) throws IOException
+        {
+            return countForces( fileName, super.open( fileName, mode ) );
+        }
+
+        @Override
+        public FileChannel create( File fileName ) throws IOException
+        {
+            return countForces( fileName, super.create( fileName ) );
+        }
+
+        private FileChannel countForces( File fileName, FileChannel channel )
+        {
+            if ( !fileName.getName().startsWith( "nioneo_logical.log" ) )
+            {
+                return channel;
+            }
+            return new LimitedFileChannel( channel, this )
+            {
+                @Override
+                public void force( boolean metaData ) throws IOException
+                {
+                    forces.incrementAndGet();
+                    if ( blockNextForce.compareAndSet( true, false ) )
+                    {
+                        forceBlocked.countDown();
+                        try
+                        {
+                            releaseForce.await();
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    super.force( metaData );
+                }
+            };
+        }
+    }
+}
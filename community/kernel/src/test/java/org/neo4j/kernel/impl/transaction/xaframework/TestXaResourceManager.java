@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.neo4j.kernel.impl.core.TransactionState;
+import org.neo4j.kernel.impl.transaction.AbstractTransactionManager;
+import org.neo4j.kernel.impl.transaction.XidImpl;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+public class TestXaResourceManager
+{
+    private final XaLogicalLog log = mock( XaLogicalLog.class );
+    private final TransactionState state = mock( TransactionState.class );
+    private final CountDownLatch prepareStarted = new CountDownLatch( 1 );
+    private final CountDownLatch releasePrepare = new CountDownLatch( 1 );
+    private XaResourceManager resourceManager;
+    private int identifiers;
+
+    @Before
+    public void setUpResourceManager()
+    {
+        when( log.getStringLogger() ).thenReturn( StringLogger.DEV_NULL );
+        when( state.getTxIdGenerator() ).thenReturn( mock( TxIdGenerator.class ) );
+        AbstractTransactionManager transactionManager = mock( AbstractTransactionManager.class );
+        when( transactionManager.getTransactionState() ).thenReturn( state );
+        when( transactionManager.getForceMode() ).thenReturn( ForceMode.forced );
+        XaTransactionFactory transactionFactory = mock( XaTransactionFactory.class );
+        when( transactionFactory.create( anyInt(), any( TransactionState.class ) ) ).thenAnswer(
+                new Answer<XaTransaction>()
+                {
+                    @Override
+                    public XaTransaction answer( InvocationOnMock invocation )
+                    {
+                        // only the first transaction blocks in prepare
+                        return new BlockingPrepareTransaction( (Integer) invocation.getArguments()[0],
+                                identifiers++ == 0 );
+                    }
+                } );
+        resourceManager = new XaResourceManager( mock( XaDataSource.class ), transactionFactory,
+                TxIdGenerator.DEFAULT, transactionManager, null, "test" );
+        resourceManager.setLogicalLog( log );
+    }
+
+    @Test( timeout = 10000 )
+    public void shouldCommitWhileAnotherTransactionSerializesItsCommands() throws Exception
+    {
+        final Xid blocked = start( 1 );
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread committer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    resourceManager.commit( blocked, true );
+                }
+                catch ( Throwable e )
+                {
+                    failure.set( e );
+                }
+            }
+        };
+        committer.start();
+        assertTrue( prepareStarted.await( 10, SECONDS ) );
+
+        try
+        {
+            Xid other = start( 2 );
+            assertEquals( XAResource.XA_OK, resourceManager.prepare( other ) );
+            resourceManager.commit( other, false );
+            verify( log ).done( 2 );
+        }
+        finally
+        {
+            releasePrepare.countDown();
+            committer.join();
+        }
+        assertNull( failure.get() );
+        verify( log ).done( 1 );
+    }
+
+    @Test( timeout = 10000 )
+    public void shouldFailEveryCommitInFlightAndAfterWhenForcingTheLogFails() throws Exception
+    {
+        releasePrepare.countDown();
+        // group committed transactions get their ids from the resource manager
+        when( state.getTxIdGenerator() ).thenReturn( TxIdGenerator.DEFAULT );
+        when( log.groupsCommits( ForceMode.forced ) ).thenReturn( true );
+        final FileChannel failingChannel = mock( FileChannel.class );
+        final CountDownLatch firstWritten = new CountDownLatch( 1 );
+        when( log.writeCommit( false, 1, 1, ForceMode.forced ) ).thenAnswer( new Answer<FileChannel>()
+        {
+            @Override
+            public FileChannel answer( InvocationOnMock invocation )
+            {
+                firstWritten.countDown();
+                return failingChannel;
+            }
+        } );
+        when( log.writeCommit( false, 2, 2, ForceMode.forced ) ).thenReturn( mock( FileChannel.class ) );
+        final CountDownLatch secondWritten = new CountDownLatch( 1 );
+        doAnswer( new Answer<Void>()
+        {
+            @Override
+            public Void answer( InvocationOnMock invocation ) throws Throwable
+            {
+                if ( invocation.getArguments()[0] != failingChannel )
+                {
+                    secondWritten.countDown();
+                    return null;
+                }
+                // fail only once the next transaction has written its commit entry after this one
+                secondWritten.await();
+                throw new XAException( "force failed" );
+            }
+        } ).when( log ).forceCommit( any( FileChannel.class ) );
+
+        final Xid first = start( 1 );
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread committer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    resourceManager.commit( first, true );
+                }
+                catch ( Throwable e )
+                {
+                    failure.set( e );
+                }
+            }
+        };
+        committer.start();
+        // the second transaction gets the id after the first one, which is in flight
+        assertTrue( firstWritten.await( 10, SECONDS ) );
+        Xid second = start( 2 );
+        assertCommitFails( second );
+        committer.join();
+        assertEquals( XAException.XAER_RMERR, ((XAException) failure.get()).errorCode );
+
+        Xid third = start( 3 );
+        assertCommitFails( third );
+        verify( log, never() ).done( anyInt() );
+    }
+
+    private void assertCommitFails( Xid xid ) throws Exception
+    {
+        try
+        {
+            resourceManager.commit( xid, true );
+            fail( "should have failed, the log couldn't be forced" );
+        }
+        catch ( XAException e )
+        {
+            assertEquals( XAException.XAER_RMERR, e.errorCode );
+        }
+    }
+
+    private Xid start( int identifier ) throws Exception
+    {
+        when( log.start( any( Xid.class ), anyInt(), anyInt() ) ).thenReturn( identifier );
+        Xid xid = new XidImpl( new byte[] { (byte) identifier }, new byte[] { 0 } );
+        resourceManager.start( mock( XAResource.class ), xid );
+        return xid;
+    }
+
+    private class BlockingPrepareTransaction extends XaTransaction
+    {
+        private final boolean block;
+
+        BlockingPrepareTransaction( int identifier, boolean block )
+        {
+            super( identifier, log, state );
+            this.block = block;
+        }
+
+        @Override
+        public boolean isReadOnly()
+        {
+            return false;
+        }
+
+        @Override
+        protected void doAddCommand( XaCommand command )
+        {
+        }
+
+        @Override
+        protected void doRollback()
+        {
+        }
+
+        @Override
+        protected void doPrepare()
+        {
+            if ( block )
+            {
+                prepareStarted.countDown();
+                try
+                {
+                    releasePrepare.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        protected void doCommit()
+        {
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestPrimitiveLongCollections
+{
+    @Test
+    public void setShouldAddContainAndRemoveValues()
+    {
+        PrimitiveLongSet set = new PrimitiveLongSet();
+        assertTrue( set.isEmpty() );
+        assertTrue( set.add( 5 ) );
+        assertTrue( set.add( 0 ) );
+        assertTrue( set.add( -1 ) );
+        assertFalse( set.add( 5 ) );
+        assertFalse( set.add( 0 ) );
+
+        assertEquals( 3, set.size() );
+        assertTrue( set.contains( 0 ) );
+        assertTrue( set.contains( 5 ) );
+        assertTrue( set.contains( -1 ) );
+        assertFalse( set.contains( 6 ) );
+
+        assertTrue( set.remove( 0 ) );
+        assertFalse( set.remove( 0 ) );
+        assertFalse( set.contains( 0 ) );
+        assertEquals( 2, set.size() );
+        assertEquals( asSet( 5L, -1L ), toSet( set.iterator() ) );
+    }
+
+    @Test
+    public void setShouldIterateOverAllValuesIncludingZero()
+    {
+        PrimitiveLongSet set = new PrimitiveLongSet();
+        Set<Long> expected = new HashSet<Long>();
+        for ( long value = 0; value < 1000; value += 3 )
+        {
+            set.add( value );
+            expected.add( value );
+        }
+
+        assertEquals( expected, toSet( set.iterator() ) );
+        set.clear();
+        assertTrue( set.isEmpty() );
+        assertFalse( set.iterator().hasNext() );
+        assertFalse( set.contains( 0 ) );
+    }
+
+    @Test
+    public void setShouldBehaveLikeHashSetUnderRandomChanges()
+    {
+        Random random = new Random( 1234 );
+        PrimitiveLongSet set = new PrimitiveLongSet();
+        Set<Long> expected = new HashSet<Long>();
+        for ( int i = 0; i < 100000; i++ )
+        {
+            // a small range of values makes sure removals hit values in the set
+            long value = random.nextInt( 2000 ) - 100;
+            if ( random.nextBoolean() )
+            {
+                assertEquals( expected.add( value ), set.add( value ) );
+            }
+            else
+            {
+                assertEquals( expected.remove( value ), set.remove( value ) );
+            }
+            assertEquals( expected.size(), set.size() );
+        }
+        assertEquals( expected, toSet( set.iterator() ) );
+        for ( long value = -100; value < 1900; value++ )
+        {
+            assertEquals( expected.contains( value ), set.contains( value ) );
+        }
+    }
+
+    @Test
+    public void longLongMapShouldBehaveLikeHashMapUnderRandomChanges()
+    {
+        Random random = new Random( 4321 );
+        PrimitiveLongLongMap map = new PrimitiveLongLongMap();
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        for ( int i = 0; i < 100000; i++ )
+        {
+            long key = random.nextInt( 3000 );
+            if ( random.nextInt( 3 ) > 0 )
+            {
+                long value = random.nextInt( 1000 );
+                assertEquals( orNoValue( expected.put( key, value ) ), map.put( key, value ) );
+            }
+            else
+            {
+                assertEquals( orNoValue( expected.remove( key ) ), map.remove( key ) );
+            }
+        }
+        assertEquals( expected.size(), map.size() );
+        for ( long key = 0; key < 3000; key++ )
+        {
+            assertEquals( orNoValue( expected.get( key ) ), map.get( key ) );
+            assertEquals( expected.containsKey( key ), map.containsKey( key ) );
+        }
+        assertEquals( expected.keySet(), toSet( map.keyIterator() ) );
+    }
+
+    @Test
+    public void longObjectMapShouldKeepValuesWhenGrowing()
+    {
+        PrimitiveLongObjectMap<String> map = new PrimitiveLongObjectMap<String>();
+        for ( long key = 0; key < 10000; key++ )
+        {
+            assertNull( map.put( key * 7, "v" + key ) );
+        }
+
+        assertEquals( 10000, map.size() );
+        for ( long key = 0; key < 10000; key++ )
+        {
+            assertEquals( "v" + key, map.get( key * 7 ) );
+        }
+        assertNull( map.get( 1 ) );
+        assertEquals( "v0", map.put( 0, "zero" ) );
+        assertEquals( "zero", map.remove( 0 ) );
+        assertNull( map.get( 0 ) );
+        assertEquals( 9999, map.size() );
+    }
+
+    private static long orNoValue( Long value )
+    {
+        return value != null ? value : PrimitiveLongLongMap.NO_VALUE;
+    }
+
+    private static Set<Long> toSet( PrimitiveLongIterator iterator )
+    {
+        Set<Long> set = new HashSet<Long>();
+        while ( iterator.hasNext() )
+        {
+            assertTrue( "Iterated over the same value twice", set.add( iterator.next() ) );
+        }
+        return set;
+    }
+
+    private static Set<Long> asSet( Long... values )
+    {
+        Set<Long> set = new HashSet<Long>();
+        for ( Long value : values )
+        {
+            set.add( value );
+        }
+        return set;
+    }
+}
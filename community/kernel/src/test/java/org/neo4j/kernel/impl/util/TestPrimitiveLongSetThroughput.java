@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares a {@link PrimitiveLongSet} with a {@link HashSet} of {@link Long}
+ * doing what a globally unique traversal does with it, i.e. adding every id
+ * visited and checking whether it was there already. Reports the time and the
+ * bytes allocated by each.
+ */
+@Ignore( "Not a proper test really, merely a throughput and allocation measurement" )
+public class TestPrimitiveLongSetThroughput
+{
+    private static final int IDS = 1000000;
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void measureAddAndContains() throws Exception
+    {
+        for ( int warmup = 0; warmup < 3; warmup++ )
+        {
+            run( "HashSet<Long>", new BoxedSet() );
+            run( "PrimitiveLongSet", new PrimitiveSet() );
+        }
+    }
+
+    private void run( String name, Workload workload )
+    {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes( threadId );
+        long time = System.nanoTime();
+        long found = 0;
+        for ( int round = 0; round < ROUNDS; round++ )
+        {
+            found += workload.run();
+        }
+        time = System.nanoTime() - time;
+        long allocated = threads.getThreadAllocatedBytes( threadId ) - allocatedBefore;
+        System.out.println( name + ": " + (time / ROUNDS / 1000000) + " ms and " + (allocated / ROUNDS / 1024) +
+                " kB per " + IDS + " ids (" + found + " found)" );
+    }
+
+    private interface Workload
+    {
+        long run();
+    }
+
+    private static class BoxedSet implements Workload
+    {
+        @Override
+        public long run()
+        {
+            Set<Long> set = new HashSet<Long>();
+            long found = 0;
+            for ( long i = 0; i < IDS; i++ )
+            {
+                // every id gets visited twice, as neighbours of nodes reached before them tend to be
+                set.add( (i * 31) % IDS );
+                found += set.add( i ) ? 0 : 1;
+            }
+            return found;
+        }
+    }
+
+    private static class PrimitiveSet implements Workload
+    {
+        @Override
+        public long run()
+        {
+            PrimitiveLongSet set = new PrimitiveLongSet();
+            long found = 0;
+            for ( long i = 0; i < IDS; i++ )
+            {
+                set.add( (i * 31) % IDS );
+                found += set.add( i ) ? 0 : 1;
+            }
+            return found;
+        }
+    }
+}
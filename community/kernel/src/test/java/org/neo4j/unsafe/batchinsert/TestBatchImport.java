@@ -0,0 +1,249 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.unsafe.batchinsert;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.MapUtil.map;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.kernel.impl.core.NodeDegrees;
+import org.neo4j.test.EphemeralFileSystemRule;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+public class TestBatchImport
+{
+    private static final String STORE_DIR = "neo-batch-import-db";
+    private static final RelationshipType KNOWS = DynamicRelationshipType.withName( "KNOWS" );
+    private static final RelationshipType LIKES = DynamicRelationshipType.withName( "LIKES" );
+
+    @Rule public EphemeralFileSystemRule fs = new EphemeralFileSystemRule();
+
+    private ImportStatistics doImport( Map<String, String> config, List<InputNode> nodes,
+                                       List<InputRelationship> relationships )
+    {
+        BatchImporter importer = BatchImporters.importer( STORE_DIR, fs.get(), config );
+        try
+        {
+            return importer.doImport( nodes, relationships );
+        }
+        finally
+        {
+            importer.shutdown();
+        }
+    }
+
+    private GraphDatabaseService newDatabase()
+    {
+        return new TestGraphDatabaseFactory().setFileSystem( fs.get() ).newImpermanentDatabase( STORE_DIR );
+    }
+
+    private static List<InputNode> nodes( int count )
+    {
+        List<InputNode> nodes = new ArrayList<InputNode>();
+        for ( int i = 0; i < count; i++ )
+        {
+            nodes.add( new InputNode( map( "name", "node " + i, "index", i ) ) );
+        }
+        return nodes;
+    }
+
+    @Test
+    public void importedNodesAndRelationshipsKeepTheirProperties() throws Exception
+    {
+        List<InputNode> nodes = new ArrayList<InputNode>();
+        nodes.add( new InputNode( map( "short", "abc", "long", "a string too long to fit in a property block",
+                "number", 1L << 40, "array", new int[] { 1, 2, 3 },
+                "strings", new String[] { "a string array that needs", "to be kept in the array store" } ) ) );
+        nodes.add( new InputNode( null ) );
+        List<InputRelationship> relationships = new ArrayList<InputRelationship>();
+        relationships.add( new InputRelationship( 0, 1, KNOWS, map( "since", 2001, "weight", 0.5d ) ) );
+        relationships.add( new InputRelationship( 1, 0, LIKES, null ) );
+
+        doImport( stringMap( "batch_import.processors", "2" ), nodes, relationships );
+
+        BatchInserter inserter = BatchInserters.inserter( STORE_DIR, fs.get() );
+        Map<String, Object> properties = inserter.getNodeProperties( 1 );
+        assertEquals( "abc", properties.get( "short" ) );
+        assertEquals( "a string too long to fit in a property block", properties.get( "long" ) );
+        assertEquals( 1L << 40, properties.get( "number" ) );
+        assertArrayEquals( new int[] { 1, 2, 3 }, (int[]) properties.get( "array" ) );
+        assertArrayEquals( new String[] { "a string array that needs", "to be kept in the array store" },
+                (String[]) properties.get( "strings" ) );
+        assertEquals( 0, inserter.getNodeProperties( 2 ).size() );
+        BatchRelationship knows = inserter.getRelationshipById( 0 );
+        assertEquals( 1, knows.getStartNode() );
+        assertEquals( 2, knows.getEndNode() );
+        assertEquals( KNOWS.name(), knows.getType().name() );
+        assertEquals( map( "since", 2001, "weight", 0.5d ), inserter.getRelationshipProperties( 0 ) );
+        assertEquals( LIKES.name(), inserter.getRelationshipById( 1 ).getType().name() );
+        assertEquals( 0, inserter.getRelationshipProperties( 1 ).size() );
+        inserter.shutdown();
+    }
+
+    @Test
+    public void relationshipsAreLinkedIntoTheChainsOfTheirNodes() throws Exception
+    {
+        List<InputRelationship> relationships = new ArrayList<InputRelationship>();
+        for ( int i = 0; i < 10; i++ )
+        {
+            relationships.add( new InputRelationship( i, (i + 1) % 10, KNOWS, map( "index", i ) ) );
+            relationships.add( new InputRelationship( i, (i + 3) % 10, LIKES, null ) );
+        }
+        relationships.add( new InputRelationship( 4, 4, LIKES, null ) );
+
+        doImport( stringMap( "batch_import.processors", "3", "batch_import.batch_size", "2" ), nodes( 10 ),
+                relationships );
+
+        GraphDatabaseService db = newDatabase();
+        for ( int i = 0; i < 10; i++ )
+        {
+            Node node = db.getNodeById( i + 1 );
+            assertEquals( "node " + i, node.getProperty( "name" ) );
+            assertEquals( i == 4 ? 5 : 4, IteratorUtil.count( node.getRelationships() ) );
+            Relationship knows = node.getSingleRelationship( KNOWS, Direction.OUTGOING );
+            assertEquals( i, knows.getProperty( "index" ) );
+            assertEquals( (i + 1) % 10 + 1, knows.getEndNode().getId() );
+        }
+
+        // deleting relationships relinks the chains, which needs the previous relationship of each one
+        Transaction tx = db.beginTx();
+        for ( Relationship relationship : db.getNodeById( 5 ).getRelationships( KNOWS ) )
+        {
+            relationship.delete();
+        }
+        tx.success();
+        tx.finish();
+        assertEquals( 3, IteratorUtil.count( db.getNodeById( 5 ).getRelationships() ) );
+        assertEquals( 3, IteratorUtil.count( db.getNodeById( 6 ).getRelationships() ) );
+        assertEquals( 3, IteratorUtil.count( db.getNodeById( 4 ).getRelationships() ) );
+        db.shutdown();
+    }
+
+    @Test
+    public void relationshipsOfDenseNodesAreGroupedByType() throws Exception
+    {
+        List<InputRelationship> relationships = new ArrayList<InputRelationship>();
+        for ( int i = 0; i < 10; i++ )
+        {
+            relationships.add( new InputRelationship( 0, 1 + i * 3, KNOWS, null ) );
+            relationships.add( new InputRelationship( 2 + i * 3, 0, KNOWS, null ) );
+            relationships.add( new InputRelationship( 0, 3 + i * 3, LIKES, null ) );
+        }
+        relationships.add( new InputRelationship( 0, 0, LIKES, null ) );
+
+        doImport( stringMap( "dense_node_threshold", "5" ), nodes( 31 ), relationships );
+
+        GraphDatabaseService db = newDatabase();
+        Node node = db.getNodeById( 1 );
+        assertEquals( 10, IteratorUtil.count( node.getRelationships( KNOWS, Direction.OUTGOING ) ) );
+        assertEquals( 10, IteratorUtil.count( node.getRelationships( KNOWS, Direction.INCOMING ) ) );
+        assertEquals( 11, IteratorUtil.count( node.getRelationships( LIKES, Direction.OUTGOING ) ) );
+        assertEquals( 1, IteratorUtil.count( node.getRelationships( LIKES, Direction.INCOMING ) ) );
+        assertEquals( 31, IteratorUtil.count( node.getRelationships() ) );
+        assertEquals( 31, ((NodeDegrees) node).getDegree() );
+        assertEquals( 11, ((NodeDegrees) node).getDegree( LIKES, Direction.OUTGOING ) );
+
+        Transaction tx = db.beginTx();
+        for ( Relationship relationship : node.getRelationships( KNOWS, Direction.INCOMING ) )
+        {
+            relationship.delete();
+        }
+        tx.success();
+        tx.finish();
+        assertEquals( 21, IteratorUtil.count( node.getRelationships() ) );
+        db.shutdown();
+    }
+
+    @Test
+    public void importsAfterTheEntitiesAlreadyInTheStore() throws Exception
+    {
+        BatchInserter inserter = BatchInserters.inserter( STORE_DIR, fs.get() );
+        long existingNode = inserter.createNode( null );
+        inserter.createRelationship( existingNode, existingNode, KNOWS, null );
+        inserter.shutdown();
+
+        List<InputRelationship> relationships = new ArrayList<InputRelationship>();
+        relationships.add( new InputRelationship( 0, 1, LIKES, null ) );
+        doImport( stringMap(), nodes( 2 ), relationships );
+
+        GraphDatabaseService db = newDatabase();
+        Set<Long> nodeIds = new HashSet<Long>();
+        for ( Relationship relationship : db.getNodeById( existingNode + 1 ).getRelationships() )
+        {
+            assertEquals( LIKES.name(), relationship.getType().name() );
+            assertEquals( 1, relationship.getId() );
+            nodeIds.add( relationship.getEndNode().getId() );
+        }
+        assertEquals( IteratorUtil.asSet( existingNode + 2 ), nodeIds );
+        assertEquals( 1, IteratorUtil.count( db.getNodeById( existingNode ).getRelationships() ) );
+        db.shutdown();
+    }
+
+    @Test
+    public void reportsEachStage() throws Exception
+    {
+        List<InputRelationship> relationships = new ArrayList<InputRelationship>();
+        relationships.add( new InputRelationship( 0, 1, KNOWS, null ) );
+        relationships.add( new InputRelationship( 1, 2, KNOWS, null ) );
+
+        ImportStatistics statistics = doImport( stringMap(), nodes( 4 ), relationships );
+
+        assertEquals( 4, statistics.getStage( ImportStatistics.NODES ).getCount() );
+        assertEquals( 2, statistics.getStage( ImportStatistics.RELATIONSHIPS ).getCount() );
+        assertEquals( 2, statistics.getStage( ImportStatistics.NEXT_RELATIONSHIPS ).getCount() );
+        assertEquals( 3, statistics.getStage( ImportStatistics.CHAIN_HEADS ).getCount() );
+        assertEquals( 2, statistics.getStage( ImportStatistics.PREVIOUS_RELATIONSHIPS ).getCount() );
+        assertEquals( IteratorUtil.asSet( "read", "encode", "write" ),
+                statistics.getStage( ImportStatistics.NODES ).getStepMillis().keySet() );
+    }
+
+    @Test
+    public void relationshipsCanOnlyConnectImportedNodes() throws Exception
+    {
+        List<InputRelationship> relationships = new ArrayList<InputRelationship>();
+        relationships.add( new InputRelationship( 0, 2, KNOWS, null ) );
+        try
+        {
+            doImport( stringMap(), nodes( 2 ), relationships );
+            fail( "Shouldn't be able to import a relationship to a node that wasn't imported" );
+        }
+        catch ( IllegalArgumentException e )
+        {   // good
+        }
+    }
+}
@@ -645,6 +645,31 @@ public class TestBatchInsert
         db.shutdown();
     }
 
+    @Test
+    public void relationshipsOfDenseNodesAreGroupedByType() throws Exception
+    {
+        BatchInserter inserter = BatchInserters.inserter( "neo-batch-db", fs.get(),
+                stringMap( "dense_node_threshold", "5" ) );
+        long nodeId = inserter.createNode( null );
+        for ( int i = 0; i < 10; i++ )
+        {
+            inserter.createRelationship( nodeId, inserter.createNode( null ), RelTypes.REL_TYPE1, null );
+            inserter.createRelationship( inserter.createNode( null ), nodeId, RelTypes.REL_TYPE1, null );
+            inserter.createRelationship( nodeId, inserter.createNode( null ), RelTypes.REL_TYPE2, null );
+        }
+        inserter.createRelationship( nodeId, nodeId, RelTypes.REL_TYPE2, null );
+        assertEquals( 31, IteratorUtil.count( inserter.getRelationships( nodeId ) ) );
+
+        GraphDatabaseService db = switchToEmbeddedGraphDatabaseService( inserter );
+        Node node = db.getNodeById( nodeId );
+        assertEquals( 10, IteratorUtil.count( node.getRelationships( RelTypes.REL_TYPE1, Direction.OUTGOING ) ) );
+        assertEquals( 10, IteratorUtil.count( node.getRelationships( RelTypes.REL_TYPE1, Direction.INCOMING ) ) );
+        assertEquals( 11, IteratorUtil.count( node.getRelationships( RelTypes.REL_TYPE2, Direction.OUTGOING ) ) );
+        assertEquals( 1, IteratorUtil.count( node.getRelationships( RelTypes.REL_TYPE2, Direction.INCOMING ) ) );
+        assertEquals( 31, IteratorUtil.count( node.getRelationships() ) );
+        db.shutdown();
+    }
+
     @Test
     public void messagesLogGetsClosed() throws Exception
     {
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.util.Arrays;
+
+import org.apache.lucene.document.Document;
+import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.index.impl.lucene.QueryResultCache.CachedHits;
+import org.neo4j.index.impl.lucene.QueryResultCache.Stamp;
+
+/**
+ * Passes on the hits of a query and remembers their entity ids and scores, which are put in the
+ * {@link QueryResultCache} when all hits have been read, unless there were too many of them.
+ */
+class CachingHits extends AbstractIndexHits<Document>
+{
+    private final IndexHits<Document> source;
+    private final QueryResultCache cache;
+    private final Stamp stamp;
+    private long[] ids = new long[8];
+    private float[] scores = new float[8];
+    private int count;
+    private boolean caching = true;
+
+    CachingHits( IndexHits<Document> source, QueryResultCache cache, Stamp stamp )
+    {
+        this.source = source;
+        this.cache = cache;
+        this.stamp = stamp;
+        if ( source.size() == 0 )
+        {
+            cache();
+        }
+    }
+
+    @Override
+    protected Document fetchNextOrNull()
+    {
+        if ( !source.hasNext() )
+        {
+            cache();
+            return null;
+        }
+        Document document = source.next();
+        if ( caching )
+        {
+            if ( count == QueryResultCache.MAX_CACHED_HITS )
+            {
+                caching = false;
+                ids = null;
+                scores = null;
+            }
+            else
+            {
+                if ( count == ids.length )
+                {
+                    ids = Arrays.copyOf( ids, Math.min( count * 2, QueryResultCache.MAX_CACHED_HITS ) );
+                    scores = Arrays.copyOf( scores, ids.length );
+                }
+                ids[count] = Long.parseLong( document.get( LuceneIndex.KEY_DOC_ID ) );
+                scores[count++] = source.currentScore();
+            }
+        }
+        return document;
+    }
+
+    private void cache()
+    {
+        if ( caching )
+        {
+            caching = false;
+            cache.put( stamp, new CachedHits( Arrays.copyOf( ids, count ), Arrays.copyOf( scores, count ) ) );
+            ids = null;
+            scores = null;
+        }
+    }
+
+    public float currentScore()
+    {
+        return source.currentScore();
+    }
+
+    public int size()
+    {
+        return source.size();
+    }
+
+    @Override
+    public void close()
+    {
+        source.close();
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.document.Document;
+import org.neo4j.index.impl.lucene.CommitContext.DocumentContext;
+
+/**
+ * The documents of an index written by a batch of applied transactions, i.e. transactions replayed by
+ * recovery or pulled from an HA master. While the batch lasts, documents are looked up here first and
+ * then in a searcher opened when the batch started, so that the searcher of the index doesn't have to
+ * be reopened for every applied transaction. Each transaction still writes its documents to the index
+ * writer when it is applied.
+ */
+class CommitBatch
+{
+    private final LuceneDataSource dataSource;
+    private final IndexIdentifier identifier;
+    // Documents deleted by the batch are mapped to null, since the searcher still sees them
+    private final Map<Long, Document> documents = new HashMap<Long, Document>();
+    private IndexReference searcher;
+    private int transactions;
+
+    CommitBatch( LuceneDataSource dataSource, IndexIdentifier identifier )
+    {
+        this.dataSource = dataSource;
+        this.identifier = identifier;
+    }
+
+    IndexReference getSearcher()
+    {
+        if ( searcher == null )
+        {
+            searcher = dataSource.getFreshIndexSearcher( identifier );
+        }
+        return searcher;
+    }
+
+    /**
+     * @return whether the searcher of this batch, and with it its writer, has been closed, for example
+     *         because the index was evicted from the searcher cache.
+     */
+    boolean isClosed()
+    {
+        return searcher != null && searcher.isClosed();
+    }
+
+    boolean contains( long entityId )
+    {
+        return documents.containsKey( entityId );
+    }
+
+    /**
+     * @return the document of {@code entityId} as written by this batch, or {@code null} if this batch
+     *         deleted it.
+     */
+    Document get( long entityId )
+    {
+        return documents.get( entityId );
+    }
+
+    void applied( Map<Long, DocumentContext> written )
+    {
+        for ( DocumentContext context : written.values() )
+        {
+            documents.put( context.entityId,
+                    LuceneDataSource.documentIsEmpty( context.document ) ? null : context.document );
+        }
+        transactions++;
+    }
+
+    int transactionCount()
+    {
+        return transactions;
+    }
+
+    void close()
+    {
+        if ( searcher != null )
+        {
+            searcher.close();
+        }
+    }
+}
@@ -38,24 +38,32 @@ class CommitContext
     final Map<Long, DocumentContext> documents = new HashMap<Long, DocumentContext>();
     final CommandList commandList;
     final boolean recovery;
+    final CommitBatch batch;
 
     IndexReference searcher;
     IndexWriter writer;
 
     CommitContext( LuceneDataSource dataSource, IndexIdentifier identifier, IndexType indexType, CommandList commandList )
+    {
+        this( dataSource, identifier, indexType, commandList, null );
+    }
+
+    CommitContext( LuceneDataSource dataSource, IndexIdentifier identifier, IndexType indexType,
+            CommandList commandList, CommitBatch batchOrNull )
     {
         this.dataSource = dataSource;
         this.identifier = identifier;
         this.indexType = indexType;
         this.commandList = commandList;
         this.recovery = commandList.isRecovery();
+        this.batch = batchOrNull;
     }
 
     void ensureWriterInstantiated()
     {
         if ( searcher == null )
         {
-            searcher = dataSource.getIndexSearcher( identifier );
+            searcher = batch != null ? batch.getSearcher() : dataSource.getFreshIndexSearcher( identifier );
             writer = searcher.getWriter();
         }
     }
@@ -69,7 +77,8 @@ class CommitContext
             return context;
         }
 
-        Document document = LuceneDataSource.findDocument( indexType, searcher.getSearcher(), id );
+        Document document = batch != null && batch.contains( id ) ? batch.get( id ) :
+                LuceneDataSource.findDocument( indexType, searcher.getSearcher(), id );
         if ( document != null )
         {
             context = new DocumentContext( document, true, id );
@@ -85,7 +94,7 @@ class CommitContext
 
     public void close()
     {
-        if ( searcher != null )
+        if ( searcher != null && batch == null )
             searcher.close();
     }
 
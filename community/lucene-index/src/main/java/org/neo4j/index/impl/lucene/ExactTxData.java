@@ -23,19 +23,48 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.search.WildcardTermEnum;
 import org.neo4j.index.lucene.QueryContext;
 import org.neo4j.index.lucene.ValueContext;
+import org.neo4j.kernel.impl.util.PrimitiveLongIterator;
+import org.neo4j.kernel.impl.util.PrimitiveLongLongMap;
+import org.neo4j.kernel.impl.util.PrimitiveLongObjectMap;
+import org.neo4j.kernel.impl.util.PrimitiveLongSet;
 
+/**
+ * The changes of a transaction to an index, kept as postings: for each key and value the ids of the entities
+ * having it, with the string values sorted. Lookups, and for indexes storing values as they are also term, prefix,
+ * wildcard and range queries and boolean combinations of them, are answered from the postings. Only queries which
+ * need analyzed values, sorting or scores turn this into a {@link FullTxData}, which builds a lucene index of the
+ * changes in memory.
+ */
 public class ExactTxData extends TxData
 {
-    private Map<String, Map<Object, Set<Object>>> data;
-    private boolean hasOrphans;
+    private Map<String, Postings> data;
+    private PrimitiveLongSet orphans;
+
+    /**
+     * The number of postings of each entity, so that we know when an entity isn't in the data anymore.
+     */
+    private final PrimitiveLongLongMap postingCounts = new PrimitiveLongLongMap();
+    private PrimitiveLongObjectMap<RelationshipId> relationships;
+    private Postings startNodes;
+    private Postings endNodes;
 
     ExactTxData( LuceneIndex index )
     {
@@ -45,55 +74,100 @@ public class ExactTxData extends TxData
     @Override
     void add( TxDataHolder holder, Object entityId, String key, Object value )
     {
-        idCollection( key, value, true ).add( entityId );
-    }
-
-    private Set<Object> idCollection( String key, Object value, boolean create )
-    {
-        Map<Object, Set<Object>> keyMap = keyMap( key, create );
-        if ( keyMap == null )
+        long id = idOf( entityId );
+        boolean added;
+        if ( key == null )
         {
-            return null;
-        }
-
-        Set<Object> ids = keyMap.get( value );
-        if ( ids == null && create )
-        {
-            ids = new HashSet<Object>();
-            keyMap.put( value, ids );
-            if ( value == null )
+            if ( orphans == null )
             {
-                hasOrphans = true;
+                orphans = new PrimitiveLongSet();
             }
+            added = orphans.add( id );
+        }
+        else
+        {
+            added = postings( key, true ).add( id, value );
+        }
+        if ( added )
+        {
+            postingAdded( id, entityId );
         }
-        return ids;
     }
 
-    private Map<Object, Set<Object>> keyMap( String key, boolean create )
+    private static long idOf( Object entityId )
+    {
+        return entityId instanceof Long ? (Long) entityId : ((RelationshipId) entityId).id;
+    }
+
+    private Object entityId( long id )
+    {
+        RelationshipId relationship = relationships != null ? relationships.get( id ) : null;
+        return relationship != null ? relationship : (Object) id;
+    }
+
+    private Postings postings( String key, boolean create )
     {
         if ( data == null )
         {
-            if ( create )
-            {
-                data = new HashMap<String, Map<Object,Set<Object>>>();
-            }
-            else
+            if ( !create )
             {
                 return null;
             }
+            data = new HashMap<String, Postings>();
+        }
+
+        Postings postings = data.get( key );
+        if ( postings == null && create )
+        {
+            postings = new Postings();
+            data.put( key, postings );
         }
+        return postings;
+    }
 
-        Map<Object, Set<Object>> inner = data.get( key );
-        if ( inner == null && create )
+    private void postingAdded( long id, Object entityId )
+    {
+        long count = postingCounts.get( id );
+        if ( count == PrimitiveLongLongMap.NO_VALUE )
         {
-            inner = new HashMap<Object, Set<Object>>();
-            data.put( key, inner );
-            if ( key == null )
+            count = 0;
+            if ( entityId instanceof RelationshipId )
             {
-                hasOrphans = true;
+                RelationshipId relationship = (RelationshipId) entityId;
+                if ( relationships == null )
+                {
+                    relationships = new PrimitiveLongObjectMap<RelationshipId>();
+                    startNodes = new Postings();
+                    endNodes = new Postings();
+                }
+                relationships.put( id, relationship );
+                startNodes.add( id, "" + relationship.startNode );
+                endNodes.add( id, "" + relationship.endNode );
             }
         }
-        return inner;
+        postingCounts.put( id, count + 1 );
+    }
+
+    private void postingsRemoved( long id, int removed )
+    {
+        if ( removed == 0 )
+        {
+            return;
+        }
+        long count = postingCounts.get( id ) - removed;
+        if ( count > 0 )
+        {
+            postingCounts.put( id, count );
+            return;
+        }
+
+        postingCounts.remove( id );
+        RelationshipId relationship = relationships != null ? relationships.remove( id ) : null;
+        if ( relationship != null )
+        {
+            startNodes.remove( id, "" + relationship.startNode );
+            endNodes.remove( id, "" + relationship.endNode );
+        }
     }
 
     private TxData toFullTxData()
@@ -101,22 +175,42 @@ public class ExactTxData extends TxData
         FullTxData data = new FullTxData( index );
         if ( this.data != null )
         {
-            for ( Map.Entry<String, Map<Object, Set<Object>>> entry : this.data.entrySet() )
+            for ( Map.Entry<String, Postings> entry : this.data.entrySet() )
             {
                 String key = entry.getKey();
-                for ( Map.Entry<Object, Set<Object>> valueEntry : entry.getValue().entrySet() )
+                Postings postings = entry.getValue();
+                for ( Map.Entry<String, PrimitiveLongSet> value : postings.strings.entrySet() )
+                {
+                    addAll( data, value.getValue(), key, value.getKey() );
+                }
+                if ( postings.numbers != null )
                 {
-                    Object value = valueEntry.getKey();
-                    for ( Object id : valueEntry.getValue() )
+                    for ( Map.Entry<Number, PrimitiveLongSet> value : postings.numbers.entrySet() )
                     {
-                        data.add( null, id, key, value );
+                        addAll( data, value.getValue(), key, value.getKey() );
                     }
                 }
+                if ( postings.orphans != null )
+                {
+                    addAll( data, postings.orphans, key, null );
+                }
             }
         }
+        if ( orphans != null )
+        {
+            addAll( data, orphans, null, null );
+        }
         return data;
     }
 
+    private void addAll( TxData data, PrimitiveLongSet ids, String key, Object value )
+    {
+        for ( PrimitiveLongIterator iterator = ids.iterator(); iterator.hasNext(); )
+        {
+            data.add( null, entityId( iterator.next() ), key, value );
+        }
+    }
+
     @Override
     void close()
     {
@@ -130,31 +224,227 @@ public class ExactTxData extends TxData
             return Collections.<Long>emptyList();
         }
 
+        Collection<Long> ids = evaluate( query, contextOrNull );
+        if ( ids != null )
+        {
+            return ids;
+        }
         TxData fullTxData = toFullTxData();
         holder.set( fullTxData );
         return fullTxData.query( holder, query, contextOrNull );
     }
 
+    @Override
+    Collection<Long> evaluate( Query query, QueryContext contextOrNull )
+    {
+        if ( contextOrNull != null && contextOrNull.getTradeCorrectnessForSpeed() )
+        {
+            return Collections.<Long>emptyList();
+        }
+        if ( !index.type.indexesValuesAsTerms() || (contextOrNull != null &&
+                (contextOrNull.getSorting() != null || contextOrNull.getTop() > 0)) )
+        {
+            return null;
+        }
+
+        PrimitiveLongSet ids = matching( query );
+        if ( ids == null )
+        {
+            return null;
+        }
+        if ( orphans != null )
+        {
+            addAll( ids, orphans );
+        }
+        return toLongs( ids );
+    }
+
+    /**
+     * @return the ids of the entities matching {@code query}, or {@code null} if it can't be answered from the
+     *         postings.
+     */
+    private PrimitiveLongSet matching( Query query )
+    {
+        if ( query instanceof BooleanQuery )
+        {
+            return matching( (BooleanQuery) query );
+        }
+        if ( query instanceof MatchAllDocsQuery )
+        {
+            PrimitiveLongSet ids = new PrimitiveLongSet( postingCounts.size() );
+            addAll( ids, postingCounts.keyIterator() );
+            return ids;
+        }
+
+        String field = fieldOf( query );
+        if ( field == null || field.equals( LuceneIndex.KEY_DOC_ID ) )
+        {
+            return null;
+        }
+        PrimitiveLongSet ids = new PrimitiveLongSet();
+        Postings postings = field.equals( LuceneIndex.KEY_START_NODE_ID ) ? startNodes :
+                field.equals( LuceneIndex.KEY_END_NODE_ID ) ? endNodes : postings( field, false );
+        if ( postings == null )
+        {
+            return ids;
+        }
+
+        if ( query instanceof TermQuery )
+        {
+            postings.term( ((TermQuery) query).getTerm().text(), ids );
+        }
+        else if ( query instanceof PrefixQuery )
+        {
+            postings.prefix( ((PrefixQuery) query).getPrefix().text(), ids );
+        }
+        else if ( query instanceof WildcardQuery )
+        {
+            postings.wildcard( ((WildcardQuery) query).getTerm().text(), ids );
+        }
+        else if ( query instanceof TermRangeQuery )
+        {
+            TermRangeQuery range = (TermRangeQuery) query;
+            postings.range( range.getLowerTerm(), range.includesLower(), range.getUpperTerm(),
+                    range.includesUpper(), ids );
+        }
+        else
+        {
+            NumericRangeQuery<?> range = (NumericRangeQuery<?>) query;
+            postings.numericRange( range.getMin(), range.includesMin(), range.getMax(), range.includesMax(), ids );
+        }
+        // Entities with all values of the key removed match any query on it, see FullTxData#injectOrphans
+        if ( postings.orphans != null )
+        {
+            addAll( ids, postings.orphans );
+        }
+        return ids;
+    }
+
+    private PrimitiveLongSet matching( BooleanQuery query )
+    {
+        if ( query.getMinimumNumberShouldMatch() > 0 )
+        {
+            return null;
+        }
+
+        PrimitiveLongSet required = null;
+        PrimitiveLongSet optional = null;
+        PrimitiveLongSet prohibited = null;
+        for ( BooleanClause clause : query.clauses() )
+        {
+            PrimitiveLongSet ids = matching( clause.getQuery() );
+            if ( ids == null )
+            {
+                return null;
+            }
+            switch ( clause.getOccur() )
+            {
+            case MUST:
+                required = required == null ? ids : retainAll( required, ids );
+                break;
+            case SHOULD:
+                optional = optional == null ? ids : addAll( optional, ids );
+                break;
+            default:
+                prohibited = prohibited == null ? ids : addAll( prohibited, ids );
+            }
+        }
+
+        PrimitiveLongSet ids = required != null ? required : optional != null ? optional : new PrimitiveLongSet();
+        if ( prohibited != null )
+        {
+            for ( PrimitiveLongIterator iterator = prohibited.iterator(); iterator.hasNext(); )
+            {
+                ids.remove( iterator.next() );
+            }
+        }
+        return ids;
+    }
+
+    private static String fieldOf( Query query )
+    {
+        if ( query instanceof TermQuery )
+        {
+            return ((TermQuery) query).getTerm().field();
+        }
+        else if ( query instanceof PrefixQuery )
+        {
+            return ((PrefixQuery) query).getPrefix().field();
+        }
+        else if ( query instanceof WildcardQuery )
+        {
+            return ((WildcardQuery) query).getTerm().field();
+        }
+        else if ( query instanceof TermRangeQuery && ((TermRangeQuery) query).getCollator() == null )
+        {
+            return ((TermRangeQuery) query).getField();
+        }
+        else if ( query instanceof NumericRangeQuery &&
+                (((NumericRangeQuery<?>) query).getMin() != null || ((NumericRangeQuery<?>) query).getMax() != null) )
+        {
+            return ((NumericRangeQuery<?>) query).getField();
+        }
+        return null;
+    }
+
+    private static PrimitiveLongSet addAll( PrimitiveLongSet target, PrimitiveLongSet ids )
+    {
+        return addAll( target, ids.iterator() );
+    }
+
+    private static PrimitiveLongSet addAll( PrimitiveLongSet target, PrimitiveLongIterator ids )
+    {
+        while ( ids.hasNext() )
+        {
+            target.add( ids.next() );
+        }
+        return target;
+    }
+
+    private static PrimitiveLongSet retainAll( PrimitiveLongSet first, PrimitiveLongSet second )
+    {
+        PrimitiveLongSet smaller = first.size() <= second.size() ? first : second;
+        PrimitiveLongSet larger = smaller == first ? second : first;
+        PrimitiveLongSet result = new PrimitiveLongSet( smaller.size() );
+        for ( PrimitiveLongIterator iterator = smaller.iterator(); iterator.hasNext(); )
+        {
+            long id = iterator.next();
+            if ( larger.contains( id ) )
+            {
+                result.add( id );
+            }
+        }
+        return result;
+    }
+
     @Override
     void remove( TxDataHolder holder, Object entityId, String key, Object value )
     {
-        if ( data == null )
+        if ( postingCounts.isEmpty() )
         {
             return;
         }
-        
-        if ( key == null || value == null )
+
+        long id = idOf( entityId );
+        if ( key == null )
         {
-            TxData fullData = toFullTxData();
-            fullData.remove( holder, entityId, key, value );
-            holder.set( fullData );
+            int removed = orphans != null && orphans.remove( id ) ? 1 : 0;
+            if ( data != null )
+            {
+                for ( Postings postings : data.values() )
+                {
+                    removed += postings.removeAll( id, true );
+                }
+            }
+            postingsRemoved( id, removed );
         }
         else
         {
-            Collection<Object> ids = idCollection( key, value, false );
-            if ( ids != null )
+            Postings postings = postings( key, false );
+            if ( postings != null )
             {
-                ids.remove( entityId );
+                postingsRemoved( id, value == null ? postings.removeAll( id, false ) :
+                        postings.remove( id, value ) ? 1 : 0 );
             }
         }
     }
@@ -163,7 +453,8 @@ public class ExactTxData extends TxData
     Collection<Long> get( TxDataHolder holder, String key, Object value )
     {
         value = value instanceof ValueContext ? ((ValueContext) value).getCorrectValue() : value.toString();
-        Set<Object> ids = idCollection( key, value, false );
+        Postings postings = postings( key, false );
+        PrimitiveLongSet ids = postings != null ? postings.get( value ) : null;
         if ( ids == null || ids.isEmpty() )
         {
             return Collections.<Long>emptySet();
@@ -174,36 +465,31 @@ public class ExactTxData extends TxData
     @Override
     Collection<Long> getOrphans( String key )
     {
-        if ( !hasOrphans )
+        Postings postings = postings( key, false );
+        PrimitiveLongSet keyOrphans = postings != null ? postings.orphans : null;
+        if ( orphans == null && keyOrphans == null )
         {
             return null;
         }
         
-        Set<Object> orphans = idCollection( null, null, false );
-        Set<Object> keyOrphans = idCollection( key, null, false );
         Collection<Long> orphanLongs = orphans != null ? toLongs( orphans ) : null;
         Collection<Long> keyOrphanLongs = keyOrphans != null ? toLongs( keyOrphans ) : null;
         return LuceneTransaction.merge( orphanLongs, keyOrphanLongs );
     }
 
-    @SuppressWarnings( { "unchecked", "rawtypes" } )
-    private Collection<Long> toLongs( Set<Object> ids )
+    private static Collection<Long> toLongs( PrimitiveLongSet ids )
     {
-        if (ids.isEmpty()) return Collections.emptySet();
-
-        if ( ids.iterator().next() instanceof Long )
+        if ( ids.isEmpty() )
         {
-            return (Collection) ids;
+            return Collections.emptySet();
         }
-        else
+
+        Collection<Long> longs = new ArrayList<Long>( ids.size() );
+        for ( PrimitiveLongIterator iterator = ids.iterator(); iterator.hasNext(); )
         {
-            Collection<Long> longs = new ArrayList<Long>(ids.size());
-            for ( Object id : ids )
-            {
-                longs.add( ((RelationshipId) id).id );
-            }
-            return longs;
+            longs.add( iterator.next() );
         }
+        return longs;
     }
     
     @Override
@@ -217,4 +503,207 @@ public class ExactTxData extends TxData
         holder.set( fullTxData );
         return fullTxData.asSearcher( holder, context );
     }
+
+    /**
+     * The ids of the entities having each value of a key, and of those which had all their values of the key
+     * removed.
+     */
+    private static class Postings
+    {
+        private final TreeMap<String, PrimitiveLongSet> strings = new TreeMap<String, PrimitiveLongSet>();
+        private Map<Number, PrimitiveLongSet> numbers;
+        private PrimitiveLongSet orphans;
+
+        boolean add( long id, Object value )
+        {
+            PrimitiveLongSet ids;
+            if ( value == null )
+            {
+                ids = orphans = orphans == null ? new PrimitiveLongSet() : orphans;
+            }
+            else if ( value instanceof Number )
+            {
+                if ( numbers == null )
+                {
+                    numbers = new HashMap<Number, PrimitiveLongSet>();
+                }
+                ids = idsOf( numbers, (Number) value );
+            }
+            else
+            {
+                ids = idsOf( strings, value.toString() );
+            }
+            return ids.add( id );
+        }
+
+        private static <V> PrimitiveLongSet idsOf( Map<V, PrimitiveLongSet> values, V value )
+        {
+            PrimitiveLongSet ids = values.get( value );
+            if ( ids == null )
+            {
+                ids = new PrimitiveLongSet();
+                values.put( value, ids );
+            }
+            return ids;
+        }
+
+        PrimitiveLongSet get( Object value )
+        {
+            if ( value instanceof Number )
+            {
+                return numbers != null ? numbers.get( value ) : null;
+            }
+            return strings.get( value );
+        }
+
+        boolean remove( long id, Object value )
+        {
+            Map<?, PrimitiveLongSet> values = value instanceof Number ? numbers : strings;
+            PrimitiveLongSet ids = values != null ? values.get( value ) : null;
+            if ( ids == null || !ids.remove( id ) )
+            {
+                return false;
+            }
+            if ( ids.isEmpty() )
+            {
+                values.remove( value );
+            }
+            return true;
+        }
+
+        /**
+         * @return the number of postings of {@code id} which were removed.
+         */
+        int removeAll( long id, boolean orphansToo )
+        {
+            int removed = removeAll( id, strings );
+            if ( numbers != null )
+            {
+                removed += removeAll( id, numbers );
+            }
+            if ( orphansToo && orphans != null && orphans.remove( id ) )
+            {
+                removed++;
+            }
+            return removed;
+        }
+
+        private static int removeAll( long id, Map<?, PrimitiveLongSet> values )
+        {
+            int removed = 0;
+            for ( Iterator<PrimitiveLongSet> iterator = values.values().iterator(); iterator.hasNext(); )
+            {
+                PrimitiveLongSet ids = iterator.next();
+                if ( ids.remove( id ) )
+                {
+                    removed++;
+                    if ( ids.isEmpty() )
+                    {
+                        iterator.remove();
+                    }
+                }
+            }
+            return removed;
+        }
+
+        void term( String text, PrimitiveLongSet into )
+        {
+            PrimitiveLongSet ids = strings.get( text );
+            if ( ids != null )
+            {
+                addAll( into, ids );
+            }
+        }
+
+        void prefix( String prefix, PrimitiveLongSet into )
+        {
+            for ( Map.Entry<String, PrimitiveLongSet> entry : strings.tailMap( prefix, true ).entrySet() )
+            {
+                if ( !entry.getKey().startsWith( prefix ) )
+                {
+                    break;
+                }
+                addAll( into, entry.getValue() );
+            }
+        }
+
+        void wildcard( String pattern, PrimitiveLongSet into )
+        {
+            int prefixLength = 0;
+            while ( prefixLength < pattern.length() && pattern.charAt( prefixLength ) != WildcardTermEnum.WILDCARD_STRING
+                    && pattern.charAt( prefixLength ) != WildcardTermEnum.WILDCARD_CHAR )
+            {
+                prefixLength++;
+            }
+            String prefix = pattern.substring( 0, prefixLength );
+            for ( Map.Entry<String, PrimitiveLongSet> entry : strings.tailMap( prefix, true ).entrySet() )
+            {
+                String value = entry.getKey();
+                if ( !value.startsWith( prefix ) )
+                {
+                    break;
+                }
+                if ( WildcardTermEnum.wildcardEquals( pattern, prefixLength, value, prefixLength ) )
+                {
+                    addAll( into, entry.getValue() );
+                }
+            }
+        }
+
+        void range( String lower, boolean includeLower, String upper, boolean includeUpper, PrimitiveLongSet into )
+        {
+            NavigableMap<String, PrimitiveLongSet> values = strings;
+            if ( lower != null )
+            {
+                values = values.tailMap( lower, includeLower );
+            }
+            if ( upper != null )
+            {
+                values = values.headMap( upper, includeUpper );
+            }
+            for ( PrimitiveLongSet ids : values.values() )
+            {
+                addAll( into, ids );
+            }
+        }
+
+        /**
+         * Numbers are matched the way lucene matches them, i.e. only by ranges of the same numeric type as they
+         * were indexed with, see {@link IndexType#instantiateField(String, Object, org.apache.lucene.document.Field.Index)}.
+         */
+        void numericRange( Number min, boolean includeMin, Number max, boolean includeMax, PrimitiveLongSet into )
+        {
+            if ( numbers == null )
+            {
+                return;
+            }
+            Class<?> type = numericType( min != null ? min : max );
+            for ( Map.Entry<Number, PrimitiveLongSet> entry : numbers.entrySet() )
+            {
+                Number value = entry.getKey();
+                if ( numericType( value ) == type && (min == null || compare( min, value ) < (includeMin ? 1 : 0))
+                        && (max == null || compare( value, max ) < (includeMax ? 1 : 0)) )
+                {
+                    addAll( into, entry.getValue() );
+                }
+            }
+        }
+
+        private static Class<?> numericType( Number number )
+        {
+            return number instanceof Long || number instanceof Float || number instanceof Double ?
+                    number.getClass() : Integer.class;
+        }
+
+        private static int compare( Number first, Number second )
+        {
+            if ( first instanceof Float || first instanceof Double )
+            {
+                return Double.compare( first.doubleValue(), second.doubleValue() );
+            }
+            long firstValue = first.longValue();
+            long secondValue = second.longValue();
+            return firstValue < secondValue ? -1 : firstValue > secondValue ? 1 : 0;
+        }
+    }
 }
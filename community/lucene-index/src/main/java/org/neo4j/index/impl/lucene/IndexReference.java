@@ -22,34 +22,64 @@ package org.neo4j.index.impl.lucene;
 import java.io.IOException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.search.IndexSearcher;
 
+/**
+ * A searcher of an index, together with the writer of that index. References are handed out by
+ * {@link LuceneDataSource#getIndexSearcher(IndexIdentifier)} without locking, and are reference counted: the data
+ * source holds one reference for as long as this is the current searcher of the index, and each user holds one
+ * until it calls {@link #close()}. The searcher is closed when the last reference is released.
+ */
 class IndexReference
 {
     private final IndexIdentifier identifier;
     private final IndexWriter writer;
     private final IndexSearcher searcher;
-    private final AtomicInteger refCount = new AtomicInteger( 0 );
-    private boolean searcherIsClosed;
+    private final AtomicInteger refCount = new AtomicInteger( 1 );
+    private volatile boolean searcherIsClosed;
     private boolean writerIsClosed;
 
     /**
-     * We need this because we only want to close the reader/searcher if
-     * it has been detached... i.e. the {@link LuceneDataSource} no longer
-     * has any reference to it, only an iterator out in the client has a ref.
-     * And when that client calls close() it should be closed.
+     * We need this because we only want to release the reference of the
+     * {@link LuceneDataSource} once, when it no longer has any reference to
+     * this searcher, i.e. it has been replaced by a refreshed one. After that
+     * only iterators out in the clients may have refs, and when the last of
+     * them calls close() it should be closed.
      */
-    private volatile boolean detached;
+    private final AtomicBoolean detached = new AtomicBoolean();
 
-    private final AtomicBoolean stale = new AtomicBoolean();
+    /**
+     * The number of commits to the index so far, shared by all searchers of the index, and the number of them
+     * this searcher sees. A searcher is stale when it doesn't see all commits.
+     */
+    private final AtomicLong modifications;
+    private volatile long generation;
 
     public IndexReference( IndexIdentifier identifier, IndexSearcher searcher, IndexWriter writer )
+    {
+        this( identifier, searcher, writer, new AtomicLong(), 0 );
+    }
+
+    private IndexReference( IndexIdentifier identifier, IndexSearcher searcher, IndexWriter writer,
+            AtomicLong modifications, long generation )
     {
         this.identifier = identifier;
         this.searcher = searcher;
         this.writer = writer;
+        this.modifications = modifications;
+        this.generation = generation;
+    }
+
+    /**
+     * @return a reference to {@code searcher} which sees the same commits as this reference, up to
+     * {@code generation}, and which replaces this reference as the current one of the index.
+     */
+    IndexReference refreshed( IndexSearcher searcher, long generation )
+    {
+        return new IndexReference( identifier, searcher, writer, modifications, generation );
     }
 
     public IndexSearcher getSearcher()
@@ -67,15 +97,28 @@ class IndexReference
         return identifier;
     }
 
-    void incRef()
+    /**
+     * Acquires a reference, unless the searcher has already been closed.
+     *
+     * @return whether a reference was acquired, which must then be released with {@link #close()}.
+     */
+    boolean tryIncRef()
     {
-        this.refCount.incrementAndGet();
+        for ( int count = refCount.get(); count > 0; count = refCount.get() )
+        {
+            if ( refCount.compareAndSet( count, count + 1 ) )
+            {
+                return true;
+            }
+        }
+        return false;
     }
     
     public synchronized void dispose( boolean writerAlso ) throws IOException
     {
         if ( !searcherIsClosed )
         {
+            refCount.set( 0 );
             searcher.close();
             searcher.getIndexReader().close();
             searcherIsClosed = true;
@@ -88,34 +131,37 @@ class IndexReference
         }
     }
 
-    public /*synchronized externally*/ void detachOrClose() throws IOException
+    /**
+     * Releases the reference of the {@link LuceneDataSource}, after this searcher has been replaced.
+     */
+    void detach() throws IOException
     {
-        if ( this.refCount.get() == 0 )
+        if ( detached.compareAndSet( false, true ) && refCount.decrementAndGet() == 0 )
         {
             dispose( false );
         }
-        else
-        {
-            this.detached = true;
-        }
     }
 
-    synchronized boolean close()
+    /**
+     * Releases a reference acquired with {@link #tryIncRef()}.
+     *
+     * @return whether the searcher was closed as a result.
+     */
+    boolean close()
     {
         try
         {
-            if ( this.searcherIsClosed || this.refCount.get() == 0 )
+            if ( this.searcherIsClosed )
             {
                 return true;
             }
 
-            boolean reallyClosed = false;
-            if ( this.refCount.decrementAndGet() <= 0 && this.detached )
+            if ( this.refCount.decrementAndGet() == 0 )
             {
                 dispose( false );
-                reallyClosed = true;
+                return true;
             }
-            return reallyClosed;
+            return false;
         }
         catch ( IOException e )
         {
@@ -123,18 +169,37 @@ class IndexReference
         }
     }
 
-    /*synchronized externally*/ boolean isClosed()
+    boolean isClosed()
     {
         return searcherIsClosed;
     }
 
-    /*synchronized externally*/ boolean checkAndClearStale()
+    /**
+     * @return whether this searcher misses commits to the index.
+     */
+    boolean isStale()
+    {
+        return modifications.get() != generation;
+    }
+
+    /**
+     * @return the number of commits to the index so far, which a searcher opened after this call sees.
+     */
+    long modificationCount()
+    {
+        return modifications.get();
+    }
+
+    /**
+     * Nothing has been written to the index since {@code generation} commits, so this searcher sees them all.
+     */
+    /*synchronized externally*/ void upToDate( long generation )
     {
-        return stale.compareAndSet( true, false );
+        this.generation = generation;
     }
 
-    public synchronized void setStale()
+    void setStale()
     {
-        stale.set( true );
+        modifications.incrementAndGet();
     }
 }
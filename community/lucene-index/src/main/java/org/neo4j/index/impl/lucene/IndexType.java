@@ -72,6 +72,12 @@ abstract class IndexType
             document.add( instantiateField( key, value, Index.NOT_ANALYZED ) );
         }
 
+        @Override
+        boolean indexesValuesAsTerms()
+        {
+            return true;
+        }
+
         void removeFieldsFromDocument( Document document, String key, Object value )
         {
             Set<String> values = null;
@@ -140,6 +146,12 @@ abstract class IndexType
             return key + "_e";
         }
 
+        @Override
+        String[] fieldsOf( String key )
+        {
+            return new String[] { key, exactKey( key ) };
+        }
+
         @Override
         public void addToDocument( Document document, String key, Object value )
         {
@@ -280,6 +292,23 @@ abstract class IndexType
     {
         return new ExactTxData( index );
     }
+
+    /**
+     * @return whether values are indexed as they are, each as a single term of its key, so that queries can be
+     *         answered from the values themselves, see {@link ExactTxData}.
+     */
+    boolean indexesValuesAsTerms()
+    {
+        return false;
+    }
+
+    /**
+     * @return the fields of documents the values of {@code key} are indexed in.
+     */
+    String[] fieldsOf( String key )
+    {
+        return new String[] { key };
+    }
     
     Query query( String keyOrNull, Object value, QueryContext contextOrNull )
     {
@@ -35,6 +35,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.lucene.analysis.Analyzer;
@@ -72,6 +74,7 @@ import org.neo4j.graphdb.factory.GraphDatabaseSettings;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexManager;
 import org.neo4j.graphdb.index.RelationshipIndex;
+import org.neo4j.helpers.DaemonThreadFactory;
 import org.neo4j.helpers.UTF8;
 import org.neo4j.helpers.collection.ClosableIterable;
 import org.neo4j.kernel.InternalAbstractGraphDatabase;
@@ -80,6 +83,7 @@ import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.core.TransactionState;
 import org.neo4j.kernel.impl.index.IndexProviderStore;
+import org.neo4j.kernel.impl.index.IndexSearcherStatistics;
 import org.neo4j.kernel.impl.index.IndexStore;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
@@ -96,6 +100,7 @@ import org.neo4j.kernel.impl.transaction.xaframework.XaFactory;
 import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
 import org.neo4j.kernel.impl.transaction.xaframework.XaTransaction;
 import org.neo4j.kernel.impl.transaction.xaframework.XaTransactionFactory;
+import org.neo4j.kernel.impl.util.StringLogger;
 import org.neo4j.kernel.logging.Logging;
 
 /**
@@ -112,6 +117,11 @@ public class LuceneDataSource extends LogBackedXaDataSource
     {
         public static final Setting<Integer> lucene_searcher_cache_size = GraphDatabaseSettings
                 .lucene_searcher_cache_size;
+        public static final Setting<Long> lucene_searcher_refresh_interval = GraphDatabaseSettings
+                .lucene_searcher_refresh_interval;
+        public static final Setting<Integer> lucene_query_cache_size = GraphDatabaseSettings.lucene_query_cache_size;
+        public static final Setting<Integer> lucene_commit_threads = GraphDatabaseSettings.lucene_commit_threads;
+        public static final Setting<Integer> lucene_apply_batch_size = GraphDatabaseSettings.lucene_apply_batch_size;
 
         public static final Setting<Boolean> read_only = GraphDatabaseSettings.read_only;
         public static final Setting<Boolean> allow_store_upgrade = GraphDatabaseSettings.allow_store_upgrade;
@@ -183,6 +193,15 @@ public class LuceneDataSource extends LogBackedXaDataSource
     // Used for assertion after recovery has been completed.
     private final Set<IndexIdentifier> expectedFutureRecoveryDeletions = new HashSet<IndexIdentifier>();
     private final TxIdGenerator txIdGenerator;
+    private final IndexSearcherStatistics searcherStatistics;
+    private final StringLogger logger;
+    private long searcherRefreshInterval;
+    private SearcherRefresher searcherRefresher;
+    private ExecutorService commitExecutor;
+    private QueryResultCache queryResultCache;
+    private int applyBatchSize;
+    // Guarded by the write lock
+    private final Map<IndexIdentifier, CommitBatch> commitBatches = new HashMap<IndexIdentifier, CommitBatch>();
 
     /**
      * Constructs this data source.
@@ -193,6 +212,14 @@ public class LuceneDataSource extends LogBackedXaDataSource
      */
     public LuceneDataSource( Config config, IndexStore indexStore, FileSystemAbstraction fileSystemAbstraction,
                              XaFactory xaFactory, TxIdGenerator txIdGenerator, Logging logging )
+    {
+        this( config, indexStore, fileSystemAbstraction, xaFactory, txIdGenerator, logging,
+                new IndexSearcherStatistics() );
+    }
+
+    public LuceneDataSource( Config config, IndexStore indexStore, FileSystemAbstraction fileSystemAbstraction,
+                             XaFactory xaFactory, TxIdGenerator txIdGenerator, Logging logging,
+                             IndexSearcherStatistics searcherStatistics )
     {
         super( DEFAULT_BRANCH_ID, DEFAULT_NAME );
         this.config = config;
@@ -201,6 +228,8 @@ public class LuceneDataSource extends LogBackedXaDataSource
         this.txIdGenerator = txIdGenerator;
         this.typeCache = new IndexTypeCache( indexStore );
         this.fileSystemAbstraction = fileSystemAbstraction;
+        this.searcherStatistics = searcherStatistics;
+        this.logger = logging.getMessagesLog( getClass() );
     }
 
     @Override
@@ -214,7 +243,14 @@ public class LuceneDataSource extends LogBackedXaDataSource
         this.filesystemFacade = config.get( Configuration.ephemeral ) ? LuceneFilesystemFacade.MEMORY :
                 LuceneFilesystemFacade.FS;
         indexSearchers = new IndexClockCache( config.get( Configuration.lucene_searcher_cache_size ) );
+        searcherRefreshInterval = config.get( Configuration.lucene_searcher_refresh_interval );
+        applyBatchSize = config.get( Configuration.lucene_apply_batch_size );
+        int commitThreads = config.get( Configuration.lucene_commit_threads );
+        commitExecutor = commitThreads > 1 ? Executors.newFixedThreadPool( commitThreads,
+                new DaemonThreadFactory( "Lucene commit" ) ) : null;
         caching = new Cache();
+        int queryCacheSize = config.get( Configuration.lucene_query_cache_size );
+        queryResultCache = queryCacheSize > 0 ? new QueryResultCache( queryCacheSize, searcherStatistics ) : null;
         File storeDir = config.get( Configuration.store_dir );
         this.baseStorePath =
                 this.filesystemFacade.ensureDirectoryExists( fileSystemAbstraction, new File( storeDir, "index" ));
@@ -285,6 +321,11 @@ public class LuceneDataSource extends LogBackedXaDataSource
 
             setLogicalLogAtCreationTime( xaContainer.getLogicalLog() );
         }
+        if ( searcherRefreshInterval > 0 )
+        {
+            searcherRefresher = new SearcherRefresher();
+            searcherRefresher.start();
+        }
     }
 
     IndexType getType( IndexIdentifier identifier, boolean recovery )
@@ -302,6 +343,17 @@ public class LuceneDataSource extends LogBackedXaDataSource
     @Override
     public void stop()
     {
+        if ( searcherRefresher != null )
+        {
+            searcherRefresher.stopRefreshing();
+            searcherRefresher = null;
+        }
+        endCommitBatches();
+        if ( commitExecutor != null )
+        {
+            commitExecutor.shutdown();
+            commitExecutor = null;
+        }
         synchronized ( this )
         {
             super.stop();
@@ -422,6 +474,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
         @Override
         public void recoveryComplete()
         {
+            endCommitBatches();
             if ( !expectedFutureRecoveryDeletions.isEmpty() )
             {
                 throw new TransactionFailureException( "Recovery discovered transactions which couldn't " +
@@ -482,39 +535,6 @@ public class LuceneDataSource extends LogBackedXaDataSource
         lock.writeLock().unlock();
     }
 
-    /**
-     * If nothing has changed underneath (since the searcher was last created
-     * or refreshed) {@code searcher} is returned. But if something has changed a
-     * refreshed searcher is returned. It makes use if the
-     * {@link IndexReader#openIfChanged(IndexReader, IndexWriter, boolean)} which faster than opening an index from
-     * scratch.
-     *
-     * @param searcher the {@link IndexSearcher} to refresh.
-     * @return a refreshed version of the searcher or, if nothing has changed,
-     *         {@code null}.
-     * @throws IOException if there's a problem with the index.
-     */
-    private IndexReference refreshSearcher( IndexReference searcher )
-    {
-        try
-        {
-            IndexReader reader = searcher.getSearcher().getIndexReader();
-            IndexWriter writer = searcher.getWriter();
-            IndexReader reopened = IndexReader.openIfChanged( reader, writer, true );
-            if ( reopened != null )
-            {
-                IndexSearcher newSearcher = newIndexSearcher( searcher.getIdentifier(), reopened );
-                searcher.detachOrClose();
-                return new IndexReference( searcher.getIdentifier(), newSearcher, writer );
-            }
-            return searcher;
-        }
-        catch ( IOException e )
-        {
-            throw new RuntimeException( e );
-        }
-    }
-
     static File getFileDirectory( File storeDir, byte entityType )
     {
         File path = new File( storeDir, "lucene" );
@@ -551,30 +571,46 @@ public class LuceneDataSource extends LogBackedXaDataSource
         return TopFieldCollector.create( sorting, n, false, true, false, true );
     }
 
+    /**
+     * Returns a reference to the current searcher of the index, which must be released with
+     * {@link IndexReference#close()}. Without a {@link Configuration#lucene_searcher_refresh_interval} a stale
+     * searcher is refreshed first, so that it sees all committed changes, otherwise it is left to the
+     * {@link SearcherRefresher}. Only creating and refreshing searchers is synchronized.
+     */
     IndexReference getIndexSearcher( IndexIdentifier identifier )
     {
-        assertNotClosed();
-        IndexReference searcher = indexSearchers.get( identifier );
-        if ( searcher == null )
-        {
-            return syncGetIndexSearcher( identifier );
-        }
+        return getIndexSearcher( identifier, searcherRefreshInterval == 0 );
+    }
 
-        synchronized ( searcher )
+    /**
+     * Like {@link #getIndexSearcher(IndexIdentifier)}, but always returns a searcher which sees all committed
+     * changes, regardless of the refresh interval. Committing transactions need that, to update the existing
+     * documents of the entities they change.
+     */
+    IndexReference getFreshIndexSearcher( IndexIdentifier identifier )
+    {
+        return getIndexSearcher( identifier, true );
+    }
+
+    private IndexReference getIndexSearcher( IndexIdentifier identifier, boolean refreshIfStale )
+    {
+        assertNotClosed();
+        while ( true )
         {
-            /*
-             * We need to get again a reference to the searcher because it might be so that
-             * it was refreshed while we waited. Once in here though no one will mess with
-             * our searcher
-             */
-            searcher = indexSearchers.get( identifier );
-            if ( searcher == null || searcher.isClosed() )
+            IndexReference searcher = indexSearchers.get( identifier );
+            if ( searcher == null )
             {
-                return syncGetIndexSearcher( identifier );
+                searcher = syncGetIndexSearcher( identifier );
             }
-            searcher = refreshSearcherIfNeeded( searcher );
-            searcher.incRef();
-            return searcher;
+            else if ( refreshIfStale && searcher.isStale() )
+            {
+                searcher = refreshSearcherIfNeeded( searcher, false );
+            }
+            if ( searcher != null && searcher.tryIncRef() )
+            {
+                return searcher;
+            }
+            // It was replaced or closed after we got hold of it, try again with the current one
         }
     }
 
@@ -599,14 +635,6 @@ public class LuceneDataSource extends LogBackedXaDataSource
                 searcher = new IndexReference( identifier, indexSearcher, writer );
                 indexSearchers.put( identifier, searcher );
             }
-            else
-            {
-                synchronized ( searcher )
-                {
-                    searcher = refreshSearcherIfNeeded( searcher );
-                }
-            }
-            searcher.incRef();
             return searcher;
         }
         catch ( IOException e )
@@ -624,17 +652,62 @@ public class LuceneDataSource extends LogBackedXaDataSource
         return searcher;
     }
 
-    private IndexReference refreshSearcherIfNeeded( IndexReference searcher )
+    /**
+     * If nothing has been committed to the index since {@code searcher} was
+     * created or refreshed, {@code searcher} is returned. Otherwise it is replaced
+     * by a refreshed searcher, which is returned. It makes use of
+     * {@link IndexReader#openIfChanged(IndexReader, IndexWriter, boolean)} which is faster than opening an index
+     * from scratch.
+     *
+     * @param searcher the searcher to refresh.
+     * @param inBackground whether this is the {@link SearcherRefresher} refreshing the searcher.
+     * @return the current searcher of the index, which may have been replaced or closed by another thread while
+     *         we waited, or {@code null} if the index has been closed.
+     */
+    private IndexReference refreshSearcherIfNeeded( IndexReference searcher, boolean inBackground )
     {
-        if ( searcher.checkAndClearStale() )
+        synchronized ( searcher )
         {
-            searcher = refreshSearcher( searcher );
-            if ( searcher != null )
+            IndexIdentifier identifier = searcher.getIdentifier();
+            IndexReference current = indexSearchers.get( identifier );
+            if ( current != searcher || !searcher.isStale() )
+            {
+                return current;
+            }
+
+            try
+            {
+                long start = System.nanoTime();
+                long generation = searcher.modificationCount();
+                IndexReader reopened = IndexReader.openIfChanged( searcher.getSearcher().getIndexReader(),
+                        searcher.getWriter(), true );
+                if ( reopened == null )
+                {
+                    searcher.upToDate( generation );
+                    return searcher;
+                }
+                IndexReference refreshed = searcher.refreshed( newIndexSearcher( identifier, reopened ), generation );
+                indexSearchers.put( identifier, refreshed );
+                searcher.detach();
+                searcherStatistics.reopened( System.nanoTime() - start, inBackground );
+                return refreshed;
+            }
+            catch ( IOException e )
             {
-                indexSearchers.put( searcher.getIdentifier(), searcher );
+                throw new RuntimeException( e );
+            }
+        }
+    }
+
+    private void refreshStaleSearchers()
+    {
+        for ( IndexReference searcher : getAllIndexes() )
+        {
+            if ( searcher.isStale() )
+            {
+                refreshSearcherIfNeeded( searcher, true );
             }
         }
-        return searcher;
     }
 
     XaTransaction createTransaction( int identifier, XaLogicalLog logicalLog, TransactionState state )
@@ -642,6 +715,79 @@ public class LuceneDataSource extends LogBackedXaDataSource
         return new LuceneTransaction( identifier, logicalLog, state, this );
     }
 
+    /**
+     * @return the executor applying the changes of a transaction to different indexes in parallel, or
+     *         {@code null} if they are to be applied by the committing thread.
+     */
+    ExecutorService getCommitExecutor()
+    {
+        return commitExecutor;
+    }
+
+    /**
+     * Called with the write lock held by applied transactions, see {@link CommitBatch}.
+     *
+     * @return the batch of {@code identifier} which isn't full, or {@code null} if applied transactions
+     *         aren't batched.
+     */
+    CommitBatch getCommitBatch( IndexIdentifier identifier )
+    {
+        if ( applyBatchSize <= 1 )
+        {
+            return null;
+        }
+        CommitBatch batch = commitBatches.get( identifier );
+        if ( batch != null && ( batch.isClosed() || batch.transactionCount() >= applyBatchSize ) )
+        {
+            endCommitBatch( identifier );
+            batch = null;
+        }
+        if ( batch == null )
+        {
+            batch = new CommitBatch( this, identifier );
+            commitBatches.put( identifier, batch );
+        }
+        return batch;
+    }
+
+    void endCommitBatch( IndexIdentifier identifier )
+    {
+        getWriteLock();
+        try
+        {
+            CommitBatch batch = commitBatches.remove( identifier );
+            if ( batch != null )
+            {
+                batch.close();
+            }
+        }
+        finally
+        {
+            releaseWriteLock();
+        }
+    }
+
+    /**
+     * Ends all batches of applied transactions, which must be done before a transaction which isn't
+     * applied commits, since such transactions don't write to the batches.
+     */
+    void endCommitBatches()
+    {
+        getWriteLock();
+        try
+        {
+            for ( CommitBatch batch : commitBatches.values() )
+            {
+                batch.close();
+            }
+            commitBatches.clear();
+        }
+        finally
+        {
+            releaseWriteLock();
+        }
+    }
+
     void invalidateIndexSearcher( IndexIdentifier identifier )
     {
         IndexReference searcher = indexSearchers.get( identifier );
@@ -653,9 +799,11 @@ public class LuceneDataSource extends LogBackedXaDataSource
 
     void deleteIndex( IndexIdentifier identifier, boolean recovery )
     {
+        endCommitBatch( identifier );
         closeIndex( identifier );
         deleteFileOrDirectory( getFileDirectory( baseStorePath, identifier ) );
         invalidateCache( identifier );
+        forgetQueryResults( identifier );
         boolean removeFromIndexStore = !recovery || (recovery &&
                 indexStore.has( identifier.entityType.getType(), identifier.indexName ));
         if ( removeFromIndexStore )
@@ -819,6 +967,35 @@ public class LuceneDataSource extends LogBackedXaDataSource
     void invalidateCache( IndexIdentifier identifier )
     {
         this.caching.disable( identifier );
+        invalidateQueryResults( identifier, null );
+    }
+
+    private void forgetQueryResults( IndexIdentifier identifier )
+    {
+        if ( queryResultCache != null )
+        {
+            queryResultCache.remove( identifier );
+        }
+    }
+
+    /**
+     * @return the cache of query results, or {@code null} if query results aren't cached.
+     */
+    QueryResultCache getQueryResultCache()
+    {
+        return queryResultCache;
+    }
+
+    /**
+     * Called after a transaction has written changes to {@code field} of an index, or removed whole entities
+     * from it if {@code field} is {@code null}, see {@link QueryResultCache}.
+     */
+    void invalidateQueryResults( IndexIdentifier identifier, String fieldOrNull )
+    {
+        if ( queryResultCache != null )
+        {
+            queryResultCache.invalidate( identifier, fieldOrNull );
+        }
     }
 
     @Override
@@ -925,7 +1102,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
             if ( config.get( IndexManager.PROVIDER ).equals( LuceneIndexImplementation.SERVICE_NAME ) )
             {
                 IndexIdentifier identifier = new IndexIdentifier( LuceneCommand.NODE, nodeEntityType, name );
-                getIndexSearcher( identifier );
+                getIndexSearcher( identifier ).close();
             }
         }
         for ( String name : indexStore.getNames( Relationship.class ) )
@@ -935,9 +1112,58 @@ public class LuceneDataSource extends LogBackedXaDataSource
             {
                 IndexIdentifier identifier = new IndexIdentifier( LuceneCommand.RELATIONSHIP, relationshipEntityType,
                         name );
-                getIndexSearcher( identifier );
+                getIndexSearcher( identifier ).close();
+            }
+        }
+    }
+
+    /**
+     * Refreshes stale searchers every {@link Configuration#lucene_searcher_refresh_interval}, so that queries
+     * don't have to, see {@link #getIndexSearcher(IndexIdentifier)}.
+     */
+    private class SearcherRefresher extends Thread
+    {
+        private volatile boolean refresh = true;
+
+        SearcherRefresher()
+        {
+            super( "Lucene searcher refresher" );
+            setDaemon( true );
+        }
+
+        @Override
+        public synchronized void run()
+        {
+            while ( refresh )
+            {
+                try
+                {
+                    this.wait( searcherRefreshInterval );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.interrupted();
+                }
+                if ( !refresh )
+                {
+                    break;
+                }
+                try
+                {
+                    refreshStaleSearchers();
+                }
+                catch ( RuntimeException e )
+                {
+                    logger.logMessage( "Refreshing lucene searchers failed", e );
+                }
             }
         }
+
+        synchronized void stopRefreshing()
+        {
+            refresh = false;
+            this.notifyAll();
+        }
     }
 
     private static enum LuceneFilesystemFacade
@@ -44,6 +44,7 @@ import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
+import org.neo4j.index.impl.lucene.QueryResultCache.CachedHits;
 import org.neo4j.index.lucene.QueryContext;
 import org.neo4j.kernel.GraphDatabaseAPI;
 import org.neo4j.kernel.impl.cache.LruCache;
@@ -254,13 +255,36 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
             }
             else
             {
-                additionsSearcher = luceneTx.getAdditionsAsSearcher( this, additionalParametersOrNull );
+                Collection<Long> addedIds = luceneTx.evaluateAdditions( this, query, additionalParametersOrNull );
+                if ( addedIds != null )
+                {
+                    ids.addAll( addedIds );
+                }
+                else
+                {
+                    additionsSearcher = luceneTx.getAdditionsAsSearcher( this, additionalParametersOrNull );
+                }
             }
             removedIds = keyForDirectLookup != null ?
                     luceneTx.getRemovedIds( this, keyForDirectLookup, valueForDirectLookup ) :
                     luceneTx.getRemovedIds( this, query );
         }
         IndexHits<Long> idIterator = null;
+        QueryResultCache resultCache = additionsSearcher == null && isCacheable( additionalParametersOrNull ) ?
+                service.dataSource().getQueryResultCache() : null;
+        QueryResultCache.Stamp stamp = null;
+        if ( resultCache != null )
+        {
+            boolean scored = additionalParametersOrNull == null ||
+                    !additionalParametersOrNull.getTradeCorrectnessForSpeed();
+            CachedHits cachedHits = resultCache.get( identifier, query, scored );
+            if ( cachedHits != null )
+            {
+                return newEntityIterator( withAddedIds( cachedHits.iterator( removedIds ), ids ) );
+            }
+            stamp = resultCache.stamp( identifier, query, scored );
+        }
+
         IndexReference searcher = null;
         service.dataSource().getReadLock();
         try
@@ -286,19 +310,13 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
 
             if ( !foundInCache )
             {
-                DocToIdIterator searchedIds = new DocToIdIterator( search( searcher,
-                        query, additionalParametersOrNull, additionsSearcher, removedIds ), removedIds, searcher );
-                if ( ids.isEmpty() )
+                IndexHits<Document> hits = search( searcher, query, additionalParametersOrNull, additionsSearcher,
+                        removedIds );
+                if ( stamp != null && !searcher.isStale() )
                 {
-                    idIterator = searchedIds;
-                }
-                else
-                {
-                    Collection<IndexHits<Long>> iterators = new ArrayList<IndexHits<Long>>();
-                    iterators.add( searchedIds );
-                    iterators.add( new ConstantScoreIterator<Long>( ids, Float.NaN ) );
-                    idIterator = new CombinedIndexHits<Long>( iterators );
+                    hits = new CachingHits( hits, resultCache, stamp );
                 }
+                idIterator = withAddedIds( new DocToIdIterator( hits, removedIds, searcher ), ids );
             }
         }
 
@@ -306,6 +324,27 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
         return newEntityIterator( idIterator );
     }
 
+    private IndexHits<Long> withAddedIds( IndexHits<Long> committedIds, List<Long> addedIds )
+    {
+        if ( addedIds.isEmpty() )
+        {
+            return committedIds;
+        }
+        Collection<IndexHits<Long>> iterators = new ArrayList<IndexHits<Long>>();
+        iterators.add( committedIds );
+        iterators.add( new ConstantScoreIterator<Long>( addedIds, Float.NaN ) );
+        return new CombinedIndexHits<Long>( iterators );
+    }
+
+    /**
+     * Sorted and top hits depend on more than the keys a query mentions, and aren't cached by the
+     * {@link QueryResultCache}.
+     */
+    private static boolean isCacheable( QueryContext contextOrNull )
+    {
+        return contextOrNull == null || (contextOrNull.getSorting() == null && contextOrNull.getTop() <= 0);
+    }
+
     @Override
     public boolean isWriteable()
     {
@@ -27,6 +27,10 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.search.IndexSearcher;
@@ -204,6 +208,22 @@ class LuceneTransaction extends XaTransaction
         return ids != null ? ids : Collections.<Long>emptySet();
     }
 
+    /**
+     * @return the ids of the entities added to {@code index} in this transaction which match {@code query}, or
+     *         {@code null} if they can only be found by searching the additions, see
+     *         {@link #getAdditionsAsSearcher(LuceneIndex, QueryContext)}.
+     */
+    <T extends PropertyContainer> Collection<Long> evaluateAdditions( LuceneIndex<T> index,
+            Query query, QueryContext contextOrNull )
+    {
+        TxDataHolder added = addedTxDataOrNull( index );
+        if ( added == null )
+        {
+            return Collections.emptySet();
+        }
+        return added.evaluate( query, contextOrNull );
+    }
+
     <T extends PropertyContainer> Collection<Long> getAddedIds( LuceneIndex<T> index,
             String key, Object value )
     {
@@ -245,57 +265,78 @@ class LuceneTransaction extends XaTransaction
         dataSource.getWriteLock();
         try
         {
-            for ( Map.Entry<IndexIdentifier, CommandList> entry :
-                this.commandMap.entrySet() )
+            if ( !isRecovered() )
             {
-                if ( entry.getValue().isEmpty() )
-                {
-                    continue;
-                }
-
-                IndexIdentifier identifier = entry.getKey();
-                CommandList commandList = entry.getValue();
-                IndexType type = identifier == LuceneCommand.CreateIndexCommand.FAKE_IDENTIFIER
-                                 || !commandList.containsWrites() ? null : dataSource.getType( identifier, isRecovered() );
-                
-                // This is for an issue where there are changes to and index which in a later
-                // transaction becomes deleted and crashes before the next rotation.
-                // The next recovery process will then recover that log and do those changes
-                // to the index, which at this point doesn't exist. So just don't do those
-                // changes as it will be deleted "later" anyway.
-                if ( type == null && isRecovered() )
+                dataSource.endCommitBatches();
+            }
+            List<CommitContext> writes = new ArrayList<CommitContext>();
+            boolean success = false;
+            try
+            {
+                for ( Map.Entry<IndexIdentifier, CommandList> entry :
+                    this.commandMap.entrySet() )
                 {
-                    if ( commandList.isDeletion() )
+                    if ( entry.getValue().isEmpty() )
                     {
-                        dataSource.removeExpectedFutureDeletion( identifier );
                         continue;
                     }
-                    else if ( commandList.containsWrites() )
+
+                    IndexIdentifier identifier = entry.getKey();
+                    CommandList commandList = entry.getValue();
+                    IndexType type = identifier == LuceneCommand.CreateIndexCommand.FAKE_IDENTIFIER
+                                     || !commandList.containsWrites() ? null : dataSource.getType( identifier, isRecovered() );
+
+                    // This is for an issue where there are changes to and index which in a later
+                    // transaction becomes deleted and crashes before the next rotation.
+                    // The next recovery process will then recover that log and do those changes
+                    // to the index, which at this point doesn't exist. So just don't do those
+                    // changes as it will be deleted "later" anyway.
+                    if ( type == null && isRecovered() )
                     {
-                        dataSource.addExpectedFutureDeletion( identifier );
-                        continue;
+                        if ( commandList.isDeletion() )
+                        {
+                            dataSource.removeExpectedFutureDeletion( identifier );
+                            continue;
+                        }
+                        else if ( commandList.containsWrites() )
+                        {
+                            dataSource.addExpectedFutureDeletion( identifier );
+                            continue;
+                        }
                     }
-                }
-                
-                CommitContext context = null;
-                try
-                {
-                    context = new CommitContext( dataSource, identifier, type, commandList );
-                    for ( LuceneCommand command : commandList.commands )
+
+                    if ( type == null )
                     {
-                        command.perform( context );
+                        // Creations and deletions of indexes are done right away, by this thread
+                        CommitContext context = new CommitContext( dataSource, identifier, type, commandList );
+                        try
+                        {
+                            apply( context );
+                        }
+                        finally
+                        {
+                            context.close();
+                        }
                     }
-
-                    applyDocuments( context.writer, type, context.documents );
-                    if ( context.writer != null )
+                    else
                     {
-                        dataSource.invalidateIndexSearcher( identifier );
+                        writes.add( new CommitContext( dataSource, identifier, type, commandList,
+                                isRecovered() ? dataSource.getCommitBatch( identifier ) : null ) );
                     }
                 }
-                finally
+                apply( writes );
+                success = true;
+            }
+            finally
+            {
+                for ( CommitContext context : writes )
                 {
-                    if ( context != null )
-                        context.close();
+                    context.close();
+                }
+                if ( !success )
+                {
+                    // The batches may have documents with only some of the changes of this transaction
+                    dataSource.endCommitBatches();
                 }
             }
 
@@ -312,6 +353,96 @@ class LuceneTransaction extends XaTransaction
         }
     }
 
+    /**
+     * Applies the writes to different indexes in parallel if the data source has a
+     * {@link LuceneDataSource#getCommitExecutor() commit executor}. Returns when all of them have been applied.
+     */
+    private void apply( List<CommitContext> writes ) throws IOException
+    {
+        ExecutorService executor = dataSource.getCommitExecutor();
+        if ( executor == null || writes.size() < 2 )
+        {
+            for ( CommitContext context : writes )
+            {
+                apply( context );
+            }
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>( writes.size() );
+        for ( final CommitContext context : writes )
+        {
+            tasks.add( new Callable<Void>()
+            {
+                @Override
+                public Void call() throws IOException
+                {
+                    apply( context );
+                    return null;
+                }
+            } );
+        }
+        try
+        {
+            for ( Future<Void> future : executor.invokeAll( tasks ) )
+            {
+                future.get();
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new RuntimeException( cause );
+        }
+    }
+
+    private void apply( CommitContext context ) throws IOException
+    {
+        for ( LuceneCommand command : context.commandList.commands )
+        {
+            command.perform( context );
+        }
+
+        applyDocuments( context.writer, context.indexType, context.documents );
+        if ( context.writer != null )
+        {
+            dataSource.invalidateIndexSearcher( context.identifier );
+            for ( LuceneCommand command : context.commandList.commands )
+            {
+                if ( command.key == null )
+                {
+                    dataSource.invalidateQueryResults( context.identifier, null );
+                    continue;
+                }
+                for ( String field : context.indexType.fieldsOf( command.key ) )
+                {
+                    dataSource.invalidateQueryResults( context.identifier, field );
+                }
+            }
+        }
+        if ( context.batch != null )
+        {
+            context.batch.applied( context.documents );
+        }
+    }
+
     private void applyDocuments( IndexWriter writer, IndexType type,
             Map<Long, DocumentContext> documents ) throws IOException
     {
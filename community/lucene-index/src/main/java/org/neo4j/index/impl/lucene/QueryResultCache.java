@@ -0,0 +1,387 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FuzzyQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.neo4j.kernel.impl.cache.LruCache;
+import org.neo4j.kernel.impl.index.IndexSearcherStatistics;
+
+/**
+ * Caches the committed hits of index queries and exact lookups, as compact arrays of entity ids and scores.
+ * <p>
+ * Rather than finding and dropping the cached results a committed change affects, each index keeps version
+ * counters: one per field, bumped when a committed transaction changes values indexed in that field, see
+ * {@link IndexType#fieldsOf(String)}, one bumped when whole entities are removed from the index and one bumped by
+ * every change. A cached result remembers the versions of the fields its query mentions, or only the last one if
+ * the fields of the query can't be told, and is only used while they are unchanged. Versions are read before the
+ * searcher a result comes from is acquired, and bumped after a transaction has written its changes, so a result
+ * which may miss a concurrent commit is never used. The versions of a deleted index are dropped, and results cached
+ * for it are never used again, not even for an index later created with the same name.
+ */
+class QueryResultCache
+{
+    /**
+     * Results with more hits than this aren't cached.
+     */
+    static final int MAX_CACHED_HITS = 10000;
+
+    private final LruCache<Key, Entry> entries;
+    private final ConcurrentMap<IndexIdentifier, Versions> versions =
+            new ConcurrentHashMap<IndexIdentifier, Versions>();
+    private final IndexSearcherStatistics statistics;
+
+    QueryResultCache( int size, IndexSearcherStatistics statistics )
+    {
+        this.entries = new LruCache<Key, Entry>( "Lucene query results", size );
+        this.statistics = statistics;
+    }
+
+    /**
+     * @param scored whether the hits are scored, which they aren't if correctness is traded for speed.
+     * @return the cached hits of {@code query}, or {@code null} if there are none or they may be out of date.
+     */
+    CachedHits get( IndexIdentifier identifier, Query query, boolean scored )
+    {
+        Entry entry = entries.get( new Key( identifier, query, scored ) );
+        if ( entry != null && entry.stamp.isCurrent( versions( identifier ) ) )
+        {
+            statistics.queryCacheHit();
+            return entry.hits;
+        }
+        statistics.queryCacheMiss();
+        return null;
+    }
+
+    /**
+     * Must be called before the searcher the hits of {@code query} are to be read from is acquired.
+     *
+     * @return a stamp with which the hits can be {@link #put(Stamp, CachedHits) cached} once all have been read.
+     */
+    Stamp stamp( IndexIdentifier identifier, Query query, boolean scored )
+    {
+        Set<String> fields = fieldsOf( query );
+        return new Stamp( new Key( identifier, (Query) query.clone(), scored ),
+                fields != null ? fields.toArray( new String[fields.size()] ) : null, versions( identifier ) );
+    }
+
+    void put( Stamp stamp, CachedHits hits )
+    {
+        entries.put( stamp.key, new Entry( stamp, hits ) );
+    }
+
+    /**
+     * Called after a committed transaction has written changes to {@code field} of an index, or removed whole
+     * entities from it if {@code field} is {@code null}.
+     */
+    void invalidate( IndexIdentifier identifier, String fieldOrNull )
+    {
+        versions( identifier ).invalidate( fieldOrNull );
+    }
+
+    /**
+     * Called when an index is deleted. Results cached for it are left for the LRU to evict, they were stamped
+     * with the versions dropped here and so are never current again.
+     */
+    void remove( IndexIdentifier identifier )
+    {
+        versions.remove( identifier );
+    }
+
+    private Versions versions( IndexIdentifier identifier )
+    {
+        Versions result = versions.get( identifier );
+        if ( result == null )
+        {
+            Versions created = new Versions();
+            result = versions.putIfAbsent( identifier, created );
+            if ( result == null )
+            {
+                result = created;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the fields {@code query} mentions, or {@code null} if they can't be told, or if it mentions fields
+     *         every document has, like the id of the entity.
+     */
+    static Set<String> fieldsOf( Query query )
+    {
+        Set<String> fields = new HashSet<String>();
+        return addFields( query, fields ) ? fields : null;
+    }
+
+    private static boolean addFields( Query query, Set<String> fields )
+    {
+        if ( query instanceof BooleanQuery )
+        {
+            for ( BooleanClause clause : ((BooleanQuery) query).getClauses() )
+            {
+                if ( !addFields( clause.getQuery(), fields ) )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        else if ( query instanceof TermQuery )
+        {
+            return addField( ((TermQuery) query).getTerm().field(), fields );
+        }
+        else if ( query instanceof PrefixQuery )
+        {
+            return addField( ((PrefixQuery) query).getPrefix().field(), fields );
+        }
+        else if ( query instanceof WildcardQuery )
+        {
+            return addField( ((WildcardQuery) query).getTerm().field(), fields );
+        }
+        else if ( query instanceof FuzzyQuery )
+        {
+            return addField( ((FuzzyQuery) query).getTerm().field(), fields );
+        }
+        else if ( query instanceof TermRangeQuery )
+        {
+            return addField( ((TermRangeQuery) query).getField(), fields );
+        }
+        else if ( query instanceof NumericRangeQuery )
+        {
+            return addField( ((NumericRangeQuery<?>) query).getField(), fields );
+        }
+        else if ( query instanceof PhraseQuery )
+        {
+            Term[] terms = ((PhraseQuery) query).getTerms();
+            for ( Term term : terms )
+            {
+                if ( !addField( term.field(), fields ) )
+                {
+                    return false;
+                }
+            }
+            return terms.length > 0;
+        }
+        return false;
+    }
+
+    private static boolean addField( String field, Set<String> fields )
+    {
+        if ( field.equals( LuceneIndex.KEY_DOC_ID ) || field.equals( LuceneIndex.KEY_START_NODE_ID )
+             || field.equals( LuceneIndex.KEY_END_NODE_ID ) )
+        {
+            return false;
+        }
+        fields.add( field );
+        return true;
+    }
+
+    /**
+     * The hits of a query, in the order they were found.
+     */
+    static class CachedHits
+    {
+        private final long[] ids;
+        private final float[] scores;
+
+        CachedHits( long[] ids, float[] scores )
+        {
+            this.ids = ids;
+            this.scores = scores;
+        }
+
+        AbstractIndexHits<Long> iterator( final Collection<Long> exclude )
+        {
+            return new AbstractIndexHits<Long>()
+            {
+                private int index;
+
+                @Override
+                protected Long fetchNextOrNull()
+                {
+                    while ( index < ids.length )
+                    {
+                        Long id = ids[index++];
+                        if ( !exclude.contains( id ) )
+                        {
+                            return id;
+                        }
+                    }
+                    return null;
+                }
+
+                public float currentScore()
+                {
+                    return index > 0 ? scores[index - 1] : -1;
+                }
+
+                public int size()
+                {
+                    // see DocToIdIterator#size()
+                    return Math.max( 0, ids.length - exclude.size() );
+                }
+            };
+        }
+    }
+
+    static class Stamp
+    {
+        private final Key key;
+        private final Versions versions;
+        private final String[] fieldsOrNull;
+        private final long[] fieldVersions;
+        private final long entityVersion;
+        private final long version;
+
+        Stamp( Key key, String[] fieldsOrNull, Versions versions )
+        {
+            this.key = key;
+            this.versions = versions;
+            this.fieldsOrNull = fieldsOrNull;
+            this.version = versions.all.get();
+            this.entityVersion = versions.entities.get();
+            this.fieldVersions = fieldsOrNull != null ? new long[fieldsOrNull.length] : null;
+            for ( int i = 0; fieldsOrNull != null && i < fieldsOrNull.length; i++ )
+            {
+                fieldVersions[i] = versions.of( fieldsOrNull[i] );
+            }
+        }
+
+        boolean isCurrent( Versions versions )
+        {
+            if ( versions != this.versions )
+            {
+                // the index was deleted since, and maybe created again
+                return false;
+            }
+            if ( fieldsOrNull == null )
+            {
+                return versions.all.get() == version;
+            }
+            if ( versions.entities.get() != entityVersion )
+            {
+                return false;
+            }
+            for ( int i = 0; i < fieldsOrNull.length; i++ )
+            {
+                if ( versions.of( fieldsOrNull[i] ) != fieldVersions[i] )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Versions
+    {
+        private final AtomicLong all = new AtomicLong();
+        private final AtomicLong entities = new AtomicLong();
+        private final ConcurrentMap<String, AtomicLong> fields = new ConcurrentHashMap<String, AtomicLong>();
+
+        long of( String field )
+        {
+            AtomicLong version = fields.get( field );
+            return version != null ? version.get() : 0;
+        }
+
+        void invalidate( String fieldOrNull )
+        {
+            if ( fieldOrNull == null )
+            {
+                entities.incrementAndGet();
+            }
+            else
+            {
+                AtomicLong version = fields.get( fieldOrNull );
+                if ( version == null )
+                {
+                    AtomicLong created = new AtomicLong();
+                    version = fields.putIfAbsent( fieldOrNull, created );
+                    if ( version == null )
+                    {
+                        version = created;
+                    }
+                }
+                version.incrementAndGet();
+            }
+            all.incrementAndGet();
+        }
+    }
+
+    private static class Key
+    {
+        private final IndexIdentifier identifier;
+        private final Query query;
+        private final boolean scored;
+
+        Key( IndexIdentifier identifier, Query query, boolean scored )
+        {
+            this.identifier = identifier;
+            this.query = query;
+            this.scored = scored;
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( !(obj instanceof Key) )
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return scored == other.scored && identifier.equals( other.identifier ) && query.equals( other.query );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (31 * identifier.hashCode() + query.hashCode()) + (scored ? 1 : 0);
+        }
+    }
+
+    private static class Entry
+    {
+        private final Stamp stamp;
+        private final CachedHits hits;
+
+        Entry( Stamp stamp, CachedHits hits )
+        {
+            this.stamp = stamp;
+            this.hits = hits;
+        }
+    }
+}
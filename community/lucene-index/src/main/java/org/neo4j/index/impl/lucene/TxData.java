@@ -41,6 +41,15 @@ abstract class TxData
     abstract Collection<Long> query( TxDataHolder holder, Query query, QueryContext contextOrNull );
 
     abstract Collection<Long> get( TxDataHolder holder, String key, Object value );
+
+    /**
+     * @return the ids of the entities matching {@code query} if they can be found without searching a lucene
+     *         index of the data, otherwise {@code null}.
+     */
+    Collection<Long> evaluate( Query query, QueryContext contextOrNull )
+    {
+        return null;
+    }
     
     abstract Collection<Long> getOrphans( String key );
     
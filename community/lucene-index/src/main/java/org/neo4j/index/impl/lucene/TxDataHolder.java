@@ -51,6 +51,11 @@ class TxDataHolder
         return this.data.query( this, query, contextOrNull );
     }
 
+    Collection<Long> evaluate( Query query, QueryContext contextOrNull )
+    {
+        return this.data.evaluate( query, contextOrNull );
+    }
+
     Collection<Long> get( String key, Object value )
     {
         return this.data.get( this, key, value );
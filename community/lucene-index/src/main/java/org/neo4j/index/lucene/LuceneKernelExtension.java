@@ -31,6 +31,7 @@ import org.neo4j.index.impl.lucene.LuceneIndexImplementation;
 import org.neo4j.index.impl.lucene.LuceneXaConnection;
 import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.impl.index.IndexConnectionBroker;
+import org.neo4j.kernel.impl.index.IndexSearcherStatistics;
 import org.neo4j.kernel.impl.index.IndexStore;
 import org.neo4j.kernel.impl.index.ReadOnlyIndexConnectionBroker;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
@@ -52,6 +53,7 @@ public class LuceneKernelExtension extends LifecycleAdapter
     private final IndexProviders indexProviders;
     private final Logging logging;
     private final TxIdGenerator txIdGenerator;
+    private final IndexSearcherStatistics searcherStatistics;
 
 
     public static abstract class Configuration
@@ -63,7 +65,8 @@ public class LuceneKernelExtension extends LifecycleAdapter
                                   IndexStore indexStore, XaFactory xaFactory,
                                   FileSystemAbstraction fileSystemAbstraction,
                                   XaDataSourceManager xaDataSourceManager, IndexProviders indexProviders,
-                                  TxIdGenerator txIdGenerator, Logging logging )
+                                  TxIdGenerator txIdGenerator, Logging logging,
+                                  IndexSearcherStatistics searcherStatistics )
     {
         this.config = config;
         this.gdb = gdb;
@@ -75,13 +78,14 @@ public class LuceneKernelExtension extends LifecycleAdapter
         this.indexProviders = indexProviders;
         this.txIdGenerator = txIdGenerator;
         this.logging = logging;
+        this.searcherStatistics = searcherStatistics;
     }
 
     @Override
     public void start() throws Throwable
     {
         LuceneDataSource luceneDataSource = new LuceneDataSource( config, indexStore, fileSystemAbstraction,
-                xaFactory, txIdGenerator, logging );
+                xaFactory, txIdGenerator, logging, searcherStatistics );
 
         xaDataSourceManager.registerDataSource( luceneDataSource );
 
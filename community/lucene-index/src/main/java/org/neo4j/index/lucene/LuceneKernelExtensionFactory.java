@@ -26,6 +26,7 @@ import org.neo4j.graphdb.index.IndexProviders;
 import org.neo4j.index.impl.lucene.LuceneIndexImplementation;
 import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.extension.KernelExtensionFactory;
+import org.neo4j.kernel.impl.index.IndexSearcherStatistics;
 import org.neo4j.kernel.impl.index.IndexStore;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.transaction.XaDataSourceManager;
@@ -57,6 +58,8 @@ public class LuceneKernelExtensionFactory extends KernelExtensionFactory<LuceneK
         Logging getLogging();
         
         TxIdGenerator getTxIdGenerator();
+
+        IndexSearcherStatistics getIndexSearcherStatistics();
     }
 
     public LuceneKernelExtensionFactory()
@@ -70,6 +73,7 @@ public class LuceneKernelExtensionFactory extends KernelExtensionFactory<LuceneK
         return new LuceneKernelExtension( dependencies.getConfig(), dependencies.getDatabase(),
                 dependencies.getTxManager(), dependencies.getIndexStore(), dependencies.getXaFactory(),
                 dependencies.getFileSystem(),
-                dependencies.getXaDataSourceManager(), dependencies.getIndexProviders(), dependencies.getTxIdGenerator(), dependencies.getLogging() );
+                dependencies.getXaDataSourceManager(), dependencies.getIndexProviders(), dependencies.getTxIdGenerator(), dependencies.getLogging(),
+                dependencies.getIndexSearcherStatistics() );
     }
 }
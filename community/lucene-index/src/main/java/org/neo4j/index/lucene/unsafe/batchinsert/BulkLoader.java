@@ -0,0 +1,607 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.lucene.unsafe.batchinsert;
+
+import static org.neo4j.helpers.Exceptions.launderedException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.helpers.Args;
+import org.neo4j.helpers.NamedThreadFactory;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.helpers.progress.ProgressListener;
+import org.neo4j.helpers.progress.ProgressMonitorFactory;
+import org.neo4j.index.impl.lucene.LuceneIndexImplementation;
+import org.neo4j.index.lucene.unsafe.batchinsert.FileHeader.ColumnKind;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndex;
+import org.neo4j.unsafe.batchinsert.BatchInserterIndexProvider;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+
+/**
+ * Loads nodes and relationships from CSV or TSV files into a store through a
+ * {@link BatchInserter}, see {@link FileHeader} for the format of the files.
+ * Relationships refer to their nodes by the ids given to them in the node
+ * files, which are mapped to the ids of the nodes in the store.
+ * <p>
+ * Each file is read by the loading thread, lines are parsed by a pool of
+ * threads in batches and the parsed nodes and relationships are handed to the
+ * batch inserter, and to the legacy indexes they are configured to go into, in
+ * the order of the file. Quoted fields can't span more than one line.
+ * <p>
+ * From the command line:
+ * <pre>
+ * BulkLoader &lt;store dir&gt; -nodes=&lt;file&gt;[,&lt;file&gt;...]
+ *   [-relationships=&lt;file&gt;[,&lt;file&gt;...]]
+ *   [-delimiter=&lt;character&gt;|TAB] [-processors=&lt;threads parsing&gt;]
+ *   [-node_index=&lt;index&gt;:&lt;key&gt;[,&lt;key&gt;...][;&lt;index&gt;:...]]
+ *   [-relationship_index=&lt;index&gt;:&lt;key&gt;[,&lt;key&gt;...][;&lt;index&gt;:...]]
+ *   [-config=&lt;neo4j.properties&gt;]
+ * </pre>
+ * Files ending in <code>.tsv</code> are tab separated, others comma separated,
+ * unless a delimiter is given. The indexes are exact Lucene indexes, into
+ * which each entity is added with its values of the given keys.
+ */
+public class BulkLoader
+{
+    static final String NODES = "nodes";
+    static final String RELATIONSHIPS = "relationships";
+    static final String DELIMITER = "delimiter";
+    static final String PROCESSORS = "processors";
+    static final String NODE_INDEX = "node_index";
+    static final String RELATIONSHIP_INDEX = "relationship_index";
+    static final String CONFIG = "config";
+
+    private static final int LINES_PER_BATCH = 10000;
+
+    public static void main( String[] args )
+    {
+        Args arguments = new Args( args );
+        if ( arguments.orphans().size() != 1 || !arguments.has( NODES ) )
+        {
+            System.err.println( usage() );
+            System.exit( 1 );
+        }
+        try
+        {
+            load( arguments.orphans().get( 0 ), arguments, ProgressMonitorFactory.textual( System.out ) );
+        }
+        catch ( IOException e )
+        {
+            System.err.println( e.getMessage() );
+            System.exit( 1 );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            System.err.println( e.getMessage() );
+            System.exit( 1 );
+        }
+    }
+
+    private static String usage()
+    {
+        return Args.jarUsage( BulkLoader.class, "<store dir>", "-" + NODES + "=<file>[,<file>...]",
+                "[-" + RELATIONSHIPS + "=<file>[,<file>...]]", "[-" + DELIMITER + "=<character>|TAB]",
+                "[-" + PROCESSORS + "=<threads parsing>]",
+                "[-" + NODE_INDEX + "=<index>:<key>[,<key>...][;<index>:...]]",
+                "[-" + RELATIONSHIP_INDEX + "=<index>:<key>[,<key>...][;<index>:...]]",
+                "[-" + CONFIG + "=<neo4j.properties>]" );
+    }
+
+    static void load( String storeDir, Args arguments, ProgressMonitorFactory progress ) throws IOException
+    {
+        Map<String, String> config = arguments.has( CONFIG ) ?
+                MapUtil.load( new File( arguments.get( CONFIG, null ) ) ) : new HashMap<String, String>();
+        BatchInserter inserter = BatchInserters.inserter( storeDir, config );
+        BatchInserterIndexProvider indexProvider = new LuceneBatchInserterIndexProvider( inserter );
+        try
+        {
+            BulkLoader loader = new BulkLoader( inserter, indexProvider, delimiter( arguments ),
+                    arguments.getNumber( PROCESSORS, Runtime.getRuntime().availableProcessors() ).intValue(),
+                    progress );
+            for ( Map.Entry<String, List<String>> index : indexes( arguments.get( NODE_INDEX, "" ) ).entrySet() )
+            {
+                loader.indexNodes( index.getKey(), index.getValue() );
+            }
+            for ( Map.Entry<String, List<String>> index :
+                    indexes( arguments.get( RELATIONSHIP_INDEX, "" ) ).entrySet() )
+            {
+                loader.indexRelationships( index.getKey(), index.getValue() );
+            }
+            loader.load( files( arguments.get( NODES, "" ) ), files( arguments.get( RELATIONSHIPS, "" ) ) );
+        }
+        finally
+        {
+            indexProvider.shutdown();
+            inserter.shutdown();
+        }
+    }
+
+    private static Character delimiter( Args arguments )
+    {
+        String delimiter = arguments.get( DELIMITER, null );
+        if ( delimiter == null )
+        {
+            return null;
+        }
+        if ( delimiter.equalsIgnoreCase( "TAB" ) || delimiter.equals( "\\t" ) )
+        {
+            return '\t';
+        }
+        if ( delimiter.length() != 1 )
+        {
+            throw new IllegalArgumentException( "Delimiter '" + delimiter + "' is not a single character" );
+        }
+        return delimiter.charAt( 0 );
+    }
+
+    private static List<File> files( String names )
+    {
+        List<File> files = new ArrayList<File>();
+        for ( String name : names.split( "," ) )
+        {
+            if ( name.trim().length() > 0 )
+            {
+                files.add( new File( name.trim() ) );
+            }
+        }
+        return files;
+    }
+
+    private static Map<String, List<String>> indexes( String specification )
+    {
+        Map<String, List<String>> indexes = new HashMap<String, List<String>>();
+        for ( String index : specification.split( ";" ) )
+        {
+            if ( index.trim().length() == 0 )
+            {
+                continue;
+            }
+            int colon = index.indexOf( ':' );
+            if ( colon == -1 )
+            {
+                throw new IllegalArgumentException( "Index '" + index + "' should be given as <index>:<key>,..." );
+            }
+            indexes.put( index.substring( 0, colon ).trim(),
+                    Arrays.asList( index.substring( colon + 1 ).trim().split( "\\s*,\\s*" ) ) );
+        }
+        return indexes;
+    }
+
+    private final BatchInserter inserter;
+    private final BatchInserterIndexProvider indexProvider;
+    private final Character delimiter;
+    private final int processors;
+    private final ProgressMonitorFactory progress;
+    private final Map<BatchInserterIndex, List<String>> nodeIndexes = new HashMap<BatchInserterIndex, List<String>>();
+    private final Map<BatchInserterIndex, List<String>> relationshipIndexes =
+            new HashMap<BatchInserterIndex, List<String>>();
+    private final ExternalIdMap nodeIds = new ExternalIdMap();
+    private final Map<String, RelationshipType> relationshipTypes = new HashMap<String, RelationshipType>();
+
+    /**
+     * @param delimiter the delimiter of the fields in the files, or
+     * <code>null</code> to go by the extension of each file.
+     */
+    public BulkLoader( BatchInserter inserter, BatchInserterIndexProvider indexProvider, Character delimiter,
+                       int processors, ProgressMonitorFactory progress )
+    {
+        this.inserter = inserter;
+        this.indexProvider = indexProvider;
+        this.delimiter = delimiter;
+        this.processors = processors;
+        this.progress = progress;
+    }
+
+    /**
+     * Adds the loaded nodes to an exact index, with their values of the given
+     * keys.
+     */
+    public void indexNodes( String indexName, List<String> keys )
+    {
+        nodeIndexes.put( indexProvider.nodeIndex( indexName, LuceneIndexImplementation.EXACT_CONFIG ), keys );
+    }
+
+    /**
+     * Adds the loaded relationships to an exact index, with their values of
+     * the given keys.
+     */
+    public void indexRelationships( String indexName, List<String> keys )
+    {
+        relationshipIndexes.put( indexProvider.relationshipIndex( indexName, LuceneIndexImplementation.EXACT_CONFIG ),
+                keys );
+    }
+
+    /**
+     * Loads all the node files, then all the relationship files.
+     */
+    public void load( List<File> nodeFiles, List<File> relationshipFiles ) throws IOException
+    {
+        ProgressMonitorFactory.MultiPartBuilder builder = progress.multipleParts( "Bulk load" );
+        ProgressListener nodeProgress = builder.progressForPart( "Nodes", totalLength( nodeFiles ) );
+        ProgressListener relationshipProgress = relationshipFiles.isEmpty() ? ProgressListener.NONE :
+                builder.progressForPart( "Relationships", totalLength( relationshipFiles ) );
+        builder.build();
+        ExecutorService parsers = Executors.newFixedThreadPool( processors,
+                new NamedThreadFactory( "Bulk load parser" ) );
+        try
+        {
+            for ( File file : nodeFiles )
+            {
+                loadFile( new NodeFile( file ), parsers, nodeProgress );
+            }
+            nodeProgress.done();
+            for ( File file : relationshipFiles )
+            {
+                loadFile( new RelationshipFile( file ), parsers, relationshipProgress );
+            }
+            relationshipProgress.done();
+        }
+        catch ( RuntimeException e )
+        {
+            nodeProgress.failed( e );
+            throw e;
+        }
+        finally
+        {
+            parsers.shutdownNow();
+        }
+    }
+
+    private static long totalLength( List<File> files )
+    {
+        long length = 0;
+        for ( File file : files )
+        {
+            length += file.length();
+        }
+        return length;
+    }
+
+    private <T> void loadFile( InputFile<T> input, ExecutorService parsers, ProgressListener progress )
+            throws IOException
+    {
+        FileInputStream stream = new FileInputStream( input.file );
+        try
+        {
+            BufferedReader reader = new BufferedReader( new InputStreamReader( stream, "UTF-8" ) );
+            String headerLine = reader.readLine();
+            if ( headerLine == null )
+            {
+                return;
+            }
+            input.header( FileHeader.parse( FileHeader.split( headerLine, input.delimiter ) ) );
+            Deque<Future<Batch<T>>> parsing = new ArrayDeque<Future<Batch<T>>>();
+            long lineNumber = 1, bytesRead = 0;
+            Batch<T> batch = new Batch<T>();
+            for ( String line = reader.readLine(); line != null; line = reader.readLine() )
+            {
+                lineNumber++;
+                if ( line.length() > 0 )
+                {
+                    batch.add( lineNumber, line );
+                }
+                if ( batch.lines.size() == LINES_PER_BATCH )
+                {
+                    parsing.addLast( parsers.submit( new Parser<T>( input, batch ) ) );
+                    batch = new Batch<T>();
+                    // keep the parsers busy with the following batches while the oldest one is written
+                    if ( parsing.size() > processors * 2 )
+                    {
+                        write( input, parsing.removeFirst() );
+                        long position = stream.getChannel().position();
+                        progress.add( position - bytesRead );
+                        bytesRead = position;
+                    }
+                }
+            }
+            parsing.addLast( parsers.submit( new Parser<T>( input, batch ) ) );
+            while ( !parsing.isEmpty() )
+            {
+                write( input, parsing.removeFirst() );
+            }
+            progress.add( input.file.length() - bytesRead );
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    private <T> void write( InputFile<T> input, Future<Batch<T>> parsed )
+    {
+        Batch<T> batch;
+        try
+        {
+            batch = parsed.get();
+        }
+        catch ( InterruptedException e )
+        {
+            throw new RuntimeException( e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw launderedException( e.getCause() );
+        }
+        for ( int i = 0; i < batch.entities.size(); i++ )
+        {
+            try
+            {
+                input.write( batch.entities.get( i ) );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                throw input.failure( batch.lineNumbers.get( i ), e );
+            }
+        }
+    }
+
+    private static void index( Map<BatchInserterIndex, List<String>> indexes, long id, Map<String, Object> properties )
+    {
+        for ( Map.Entry<BatchInserterIndex, List<String>> index : indexes.entrySet() )
+        {
+            Map<String, Object> values = new HashMap<String, Object>();
+            for ( String key : index.getValue() )
+            {
+                Object value = properties.get( key );
+                if ( value != null )
+                {
+                    values.put( key, value );
+                }
+            }
+            if ( !values.isEmpty() )
+            {
+                index.getKey().add( id, values );
+            }
+        }
+    }
+
+    private static class Batch<T>
+    {
+        final List<Long> lineNumbers = new ArrayList<Long>();
+        final List<String> lines = new ArrayList<String>();
+        final List<T> entities = new ArrayList<T>();
+
+        void add( long lineNumber, String line )
+        {
+            lineNumbers.add( lineNumber );
+            lines.add( line );
+        }
+    }
+
+    private static class Parser<T> implements Callable<Batch<T>>
+    {
+        private final InputFile<T> input;
+        private final Batch<T> batch;
+
+        Parser( InputFile<T> input, Batch<T> batch )
+        {
+            this.input = input;
+            this.batch = batch;
+        }
+
+        @Override
+        public Batch<T> call()
+        {
+            for ( int i = 0; i < batch.lines.size(); i++ )
+            {
+                try
+                {
+                    batch.entities.add( input.parse( FileHeader.split( batch.lines.get( i ), input.delimiter ) ) );
+                }
+                catch ( IllegalArgumentException e )
+                {
+                    throw input.failure( batch.lineNumbers.get( i ), e );
+                }
+            }
+            batch.lines.clear();
+            return batch;
+        }
+    }
+
+    private abstract class InputFile<T>
+    {
+        final File file;
+        final char delimiter;
+        FileHeader header;
+
+        InputFile( File file )
+        {
+            this.file = file;
+            this.delimiter = BulkLoader.this.delimiter != null ? BulkLoader.this.delimiter :
+                    file.getName().toLowerCase().endsWith( ".tsv" ) ? '\t' : ',';
+        }
+
+        void header( FileHeader header )
+        {
+            this.header = header;
+        }
+
+        int requiredColumn( ColumnKind kind )
+        {
+            int column = header.column( kind );
+            if ( column == -1 )
+            {
+                throw new IllegalArgumentException( file + " has no :" + kind + " column" );
+            }
+            return column;
+        }
+
+        /**
+         * Called by the parsing threads.
+         */
+        abstract T parse( List<String> fields );
+
+        /**
+         * Called by the loading thread, in the order of the file.
+         */
+        abstract void write( T entity );
+
+        IllegalArgumentException failure( long lineNumber, IllegalArgumentException cause )
+        {
+            return new IllegalArgumentException( file + ":" + lineNumber + ": " + cause.getMessage(), cause );
+        }
+    }
+
+    private static class ParsedNode
+    {
+        final String id;
+        final Map<String, Object> properties;
+
+        ParsedNode( String id, Map<String, Object> properties )
+        {
+            this.id = id;
+            this.properties = properties;
+        }
+    }
+
+    private class NodeFile extends InputFile<ParsedNode>
+    {
+        private int idColumn;
+
+        NodeFile( File file )
+        {
+            super( file );
+        }
+
+        @Override
+        void header( FileHeader header )
+        {
+            super.header( header );
+            idColumn = header.column( ColumnKind.ID );
+        }
+
+        @Override
+        ParsedNode parse( List<String> fields )
+        {
+            String id = idColumn != -1 && idColumn < fields.size() ? fields.get( idColumn ) : "";
+            return new ParsedNode( id.length() > 0 ? id : null, header.properties( fields ) );
+        }
+
+        @Override
+        void write( ParsedNode node )
+        {
+            long nodeId = inserter.createNode( node.properties );
+            if ( node.id != null )
+            {
+                nodeIds.put( node.id, nodeId );
+            }
+            index( nodeIndexes, nodeId, node.properties );
+        }
+    }
+
+    private static class ParsedRelationship
+    {
+        final long startNode;
+        final long endNode;
+        final String type;
+        final Map<String, Object> properties;
+
+        ParsedRelationship( long startNode, long endNode, String type, Map<String, Object> properties )
+        {
+            this.startNode = startNode;
+            this.endNode = endNode;
+            this.type = type;
+            this.properties = properties;
+        }
+    }
+
+    private class RelationshipFile extends InputFile<ParsedRelationship>
+    {
+        private int startColumn;
+        private int endColumn;
+        private int typeColumn;
+
+        RelationshipFile( File file )
+        {
+            super( file );
+        }
+
+        @Override
+        void header( FileHeader header )
+        {
+            super.header( header );
+            startColumn = requiredColumn( ColumnKind.START_ID );
+            endColumn = requiredColumn( ColumnKind.END_ID );
+            typeColumn = requiredColumn( ColumnKind.TYPE );
+        }
+
+        @Override
+        ParsedRelationship parse( List<String> fields )
+        {
+            if ( fields.size() <= Collections.max( Arrays.asList( startColumn, endColumn, typeColumn ) ) )
+            {
+                throw new IllegalArgumentException( "Expected at least " + (Collections.max(
+                        Arrays.asList( startColumn, endColumn, typeColumn ) ) + 1) + " fields" );
+            }
+            String type = fields.get( typeColumn ).trim();
+            if ( type.length() == 0 )
+            {
+                throw new IllegalArgumentException( "No relationship type" );
+            }
+            return new ParsedRelationship( node( fields.get( startColumn ) ), node( fields.get( endColumn ) ), type,
+                    header.properties( fields ) );
+        }
+
+        private long node( String id )
+        {
+            // all nodes have been loaded, so the ids are only read from now on
+            long nodeId = nodeIds.get( id );
+            if ( nodeId == -1 )
+            {
+                throw new IllegalArgumentException( "No node has id '" + id + "'" );
+            }
+            return nodeId;
+        }
+
+        @Override
+        void write( ParsedRelationship relationship )
+        {
+            RelationshipType type = relationshipTypes.get( relationship.type );
+            if ( type == null )
+            {
+                type = DynamicRelationshipType.withName( relationship.type );
+                relationshipTypes.put( relationship.type, type );
+            }
+            long relationshipId = inserter.createRelationship( relationship.startNode, relationship.endNode, type,
+                    relationship.properties );
+            index( relationshipIndexes, relationshipId, relationship.properties );
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.lucene.unsafe.batchinsert;
+
+import java.nio.ByteBuffer;
+
+import org.neo4j.helpers.UTF8;
+
+/**
+ * Maps the ids nodes have in the files given to the {@link BulkLoader} to the
+ * ids they got in the store. It is an open addressing hash table, where both
+ * the table and the external ids, as UTF-8, are kept in direct buffers. That
+ * keeps hundreds of millions of ids out of the heap, which is better spent on
+ * the store windows of the batch inserter, and out of the way of the garbage
+ * collector.
+ * <p>
+ * Ids are added by a single thread. Once that is done any number of threads
+ * may look them up.
+ */
+class ExternalIdMap
+{
+    // [hash bits (24),key offset + 1 (40)][node id (64)], a zero first long is an empty entry
+    private static final int ENTRY_SIZE = 16;
+    private static final int HASH_SHIFT = 40;
+    private static final long OFFSET_MASK = (1L << HASH_SHIFT) - 1;
+    private static final int TABLE_CHUNK_BITS = 26;
+    private static final int KEY_CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int MAX_KEY_LENGTH = 0xFFFF;
+
+    private ByteBuffer[] table;
+    private long capacity;
+    private long size;
+    private ByteBuffer[] keys = new ByteBuffer[0];
+    private long keysEnd;
+
+    ExternalIdMap()
+    {
+        this( 1 << 16 );
+    }
+
+    ExternalIdMap( long initialCapacity )
+    {
+        long capacity = 16;
+        while ( capacity < initialCapacity )
+        {
+            capacity <<= 1;
+        }
+        this.table = newTable( capacity );
+        this.capacity = capacity;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the external id has already been
+     * added.
+     */
+    void put( String externalId, long nodeId )
+    {
+        byte[] key = UTF8.encode( externalId );
+        if ( key.length > MAX_KEY_LENGTH )
+        {
+            throw new IllegalArgumentException( "Id '" + externalId + "' is longer than " + MAX_KEY_LENGTH +
+                    " bytes" );
+        }
+        long hash = hash( key );
+        long slot = find( table, capacity, key, hash );
+        if ( entryKey( table, slot ) != 0 )
+        {
+            throw new IllegalArgumentException( "Id '" + externalId + "' is used by more than one node" );
+        }
+        if ( (size + 1) * 2 > capacity )
+        {
+            grow();
+            slot = find( table, capacity, key, hash );
+        }
+        setEntry( table, slot, ((hash >>> HASH_SHIFT) << HASH_SHIFT) | (addKey( key ) + 1), nodeId );
+        size++;
+    }
+
+    /**
+     * @return the node id of the external id, or -1 if it hasn't been added.
+     */
+    long get( String externalId )
+    {
+        byte[] key = UTF8.encode( externalId );
+        long slot = find( table, capacity, key, hash( key ) );
+        return entryKey( table, slot ) != 0 ? entryNodeId( table, slot ) : -1;
+    }
+
+    long size()
+    {
+        return size;
+    }
+
+    /*
+     * Linear probing, stops at the entry of the key or at the first empty one.
+     */
+    private long find( ByteBuffer[] table, long capacity, byte[] key, long hash )
+    {
+        long hashBits = hash >>> HASH_SHIFT;
+        long mask = capacity - 1;
+        for ( long slot = hash & mask; ; slot = (slot + 1) & mask )
+        {
+            long entry = entryKey( table, slot );
+            if ( entry == 0 || ((entry >>> HASH_SHIFT) == hashBits && keyEquals( (entry & OFFSET_MASK) - 1, key )) )
+            {
+                return slot;
+            }
+        }
+    }
+
+    private void grow()
+    {
+        long newCapacity = capacity * 2;
+        ByteBuffer[] newTable = newTable( newCapacity );
+        for ( long slot = 0; slot < capacity; slot++ )
+        {
+            long entry = entryKey( table, slot );
+            if ( entry != 0 )
+            {
+                byte[] key = key( (entry & OFFSET_MASK) - 1 );
+                setEntry( newTable, find( newTable, newCapacity, key, hash( key ) ), entry, entryNodeId( table, slot ) );
+            }
+        }
+        table = newTable;
+        capacity = newCapacity;
+    }
+
+    private static ByteBuffer[] newTable( long capacity )
+    {
+        int chunkSize = (int) Math.min( capacity, 1 << TABLE_CHUNK_BITS );
+        ByteBuffer[] chunks = new ByteBuffer[(int) (capacity / chunkSize)];
+        for ( int i = 0; i < chunks.length; i++ )
+        {
+            // direct buffers are zeroed, which makes every entry empty
+            chunks[i] = ByteBuffer.allocateDirect( chunkSize * ENTRY_SIZE );
+        }
+        return chunks;
+    }
+
+    private static long entryKey( ByteBuffer[] table, long slot )
+    {
+        return table[(int) (slot >>> TABLE_CHUNK_BITS)].getLong( entryPosition( slot ) );
+    }
+
+    private static long entryNodeId( ByteBuffer[] table, long slot )
+    {
+        return table[(int) (slot >>> TABLE_CHUNK_BITS)].getLong( entryPosition( slot ) + 8 );
+    }
+
+    private static void setEntry( ByteBuffer[] table, long slot, long key, long nodeId )
+    {
+        ByteBuffer chunk = table[(int) (slot >>> TABLE_CHUNK_BITS)];
+        chunk.putLong( entryPosition( slot ), key );
+        chunk.putLong( entryPosition( slot ) + 8, nodeId );
+    }
+
+    private static int entryPosition( long slot )
+    {
+        return (int) (slot & ((1 << TABLE_CHUNK_BITS) - 1)) * ENTRY_SIZE;
+    }
+
+    /*
+     * Keys are stored as [length (2)][UTF-8 bytes], never across the end of a
+     * chunk, so the offset of a key is chunk * KEY_CHUNK_SIZE + position.
+     */
+    private long addKey( byte[] key )
+    {
+        int position = (int) (keysEnd % KEY_CHUNK_SIZE);
+        if ( keysEnd == (long) keys.length * KEY_CHUNK_SIZE || position + 2 + key.length > KEY_CHUNK_SIZE )
+        {
+            ByteBuffer[] newKeys = new ByteBuffer[keys.length + 1];
+            System.arraycopy( keys, 0, newKeys, 0, keys.length );
+            newKeys[keys.length] = ByteBuffer.allocateDirect( KEY_CHUNK_SIZE );
+            keys = newKeys;
+            keysEnd = (long) (keys.length - 1) * KEY_CHUNK_SIZE;
+            position = 0;
+        }
+        long offset = keysEnd;
+        ByteBuffer chunk = keys[keys.length - 1];
+        chunk.putShort( position, (short) key.length );
+        for ( int i = 0; i < key.length; i++ )
+        {
+            chunk.put( position + 2 + i, key[i] );
+        }
+        keysEnd += 2 + key.length;
+        return offset;
+    }
+
+    private boolean keyEquals( long offset, byte[] key )
+    {
+        ByteBuffer chunk = keys[(int) (offset / KEY_CHUNK_SIZE)];
+        int position = (int) (offset % KEY_CHUNK_SIZE);
+        if ( (chunk.getShort( position ) & 0xFFFF) != key.length )
+        {
+            return false;
+        }
+        for ( int i = 0; i < key.length; i++ )
+        {
+            if ( chunk.get( position + 2 + i ) != key[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] key( long offset )
+    {
+        ByteBuffer chunk = keys[(int) (offset / KEY_CHUNK_SIZE)];
+        int position = (int) (offset % KEY_CHUNK_SIZE);
+        byte[] key = new byte[chunk.getShort( position ) & 0xFFFF];
+        for ( int i = 0; i < key.length; i++ )
+        {
+            key[i] = chunk.get( position + 2 + i );
+        }
+        return key;
+    }
+
+    /*
+     * 64 bit FNV-1a, with a final mix since the low bits pick the slot and the
+     * high ones are kept in the entry.
+     */
+    private static long hash( byte[] key )
+    {
+        long hash = 0xcbf29ce484222325L;
+        for ( byte b : key )
+        {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.lucene.unsafe.batchinsert;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The first line of a file given to the {@link BulkLoader}, naming its columns.
+ * A column is either a property, named <code>key</code> or
+ * <code>key:type</code>, or one of the special columns <code>:ID</code>,
+ * <code>:START_ID</code>, <code>:END_ID</code> and <code>:TYPE</code>. The id
+ * of a node is also stored as a property if its column is named
+ * <code>key:ID</code>. A column named <code>:IGNORE</code> is skipped.
+ * <p>
+ * The type of a property is one of <code>string</code>, which is the default,
+ * <code>int</code>, <code>long</code>, <code>short</code>, <code>byte</code>,
+ * <code>float</code>, <code>double</code>, <code>boolean</code> and
+ * <code>char</code>, optionally followed by <code>[]</code> for an array. The
+ * items of an array are separated by <code>;</code>. Empty fields are left
+ * out of the properties.
+ */
+class FileHeader
+{
+    static final char ARRAY_DELIMITER = ';';
+
+    enum ColumnKind
+    {
+        ID, START_ID, END_ID, TYPE, PROPERTY, IGNORE
+    }
+
+    enum ValueType
+    {
+        STRING( String.class )
+        {
+            @Override
+            Object parse( String value )
+            {
+                return value;
+            }
+        },
+        INT( int.class )
+        {
+            @Override
+            Object parse( String value )
+            {
+                return Integer.valueOf( value.trim() );
+            }
+        },
+        LONG( long.class )
+        {
+            @Override
+            Object parse( String value )
+            {
+                return Long.valueOf( value.trim() );
+            }
+        },
+        SHORT( short.class )
+        {
+            @Override
+            Object parse( String value )
+            {
+                return Short.valueOf( value.trim() );
+            }
+        },
+        BYTE( byte.class )
+        {
+            @Override
+            Object parse( String value )
+            {
+                return Byte.valueOf( value.trim() );
+            }
+        },
+        FLOAT( float.class )
+        {
+            @Override
+            Object parse( String value )
+            {
+                return Float.valueOf( value.trim() );
+            }
+        },
+        DOUBLE( double.class )
+        {
+            @Override
+            Object parse( String value )
+            {
+                return Double.valueOf( value.trim() );
+            }
+        },
+        BOOLEAN( boolean.class )
+        {
+            @Override
+            Object parse( String value )
+            {
+                return Boolean.valueOf( value.trim() );
+            }
+        },
+        CHAR( char.class )
+        {
+            @Override
+            Object parse( String value )
+            {
+                if ( value.length() != 1 )
+                {
+                    throw new IllegalArgumentException( "'" + value + "' is not a single character" );
+                }
+                return value.charAt( 0 );
+            }
+        };
+
+        private final Class<?> javaType;
+
+        private ValueType( Class<?> javaType )
+        {
+            this.javaType = javaType;
+        }
+
+        abstract Object parse( String value );
+
+        Object parseArray( String value )
+        {
+            List<String> items = split( value, ARRAY_DELIMITER );
+            Object array = Array.newInstance( javaType, items.size() );
+            for ( int i = 0; i < items.size(); i++ )
+            {
+                Array.set( array, i, parse( items.get( i ) ) );
+            }
+            return array;
+        }
+    }
+
+    private final String[] names;
+    private final ColumnKind[] kinds;
+    private final ValueType[] types;
+    private final boolean[] arrays;
+
+    private FileHeader( String[] names, ColumnKind[] kinds, ValueType[] types, boolean[] arrays )
+    {
+        this.names = names;
+        this.kinds = kinds;
+        this.types = types;
+        this.arrays = arrays;
+    }
+
+    static FileHeader parse( List<String> fields )
+    {
+        int count = fields.size();
+        String[] names = new String[count];
+        ColumnKind[] kinds = new ColumnKind[count];
+        ValueType[] types = new ValueType[count];
+        boolean[] arrays = new boolean[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            String field = fields.get( i ).trim();
+            int colon = field.lastIndexOf( ':' );
+            names[i] = colon == -1 ? field : field.substring( 0, colon );
+            String type = colon == -1 ? "" : field.substring( colon + 1 ).trim();
+            kinds[i] = ColumnKind.PROPERTY;
+            types[i] = ValueType.STRING;
+            if ( type.endsWith( "[]" ) )
+            {
+                arrays[i] = true;
+                type = type.substring( 0, type.length() - 2 );
+            }
+            if ( type.length() == 0 )
+            {
+                continue;
+            }
+            ColumnKind kind = kindOf( type );
+            if ( kind != null )
+            {
+                if ( arrays[i] )
+                {
+                    throw new IllegalArgumentException( "Column '" + field + "' can't be an array" );
+                }
+                kinds[i] = kind;
+                continue;
+            }
+            try
+            {
+                types[i] = ValueType.valueOf( type.toUpperCase() );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                throw new IllegalArgumentException( "Unknown type '" + type + "' of column '" + field + "'" );
+            }
+        }
+        return new FileHeader( names, kinds, types, arrays );
+    }
+
+    private static ColumnKind kindOf( String type )
+    {
+        for ( ColumnKind kind : ColumnKind.values() )
+        {
+            if ( kind != ColumnKind.PROPERTY && kind.name().equals( type ) )
+            {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the index of the column of the given kind or -1 if there is none.
+     */
+    int column( ColumnKind kind )
+    {
+        int found = -1;
+        for ( int i = 0; i < kinds.length; i++ )
+        {
+            if ( kinds[i] == kind )
+            {
+                if ( found != -1 )
+                {
+                    throw new IllegalArgumentException( "More than one :" + kind + " column" );
+                }
+                found = i;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the properties of the line with the given fields.
+     */
+    Map<String, Object> properties( List<String> fields )
+    {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        for ( int i = 0; i < kinds.length && i < fields.size(); i++ )
+        {
+            String value = fields.get( i );
+            boolean isProperty = kinds[i] == ColumnKind.PROPERTY || (kinds[i] == ColumnKind.ID && names[i].length() > 0);
+            if ( !isProperty || value.length() == 0 )
+            {
+                continue;
+            }
+            try
+            {
+                properties.put( names[i], arrays[i] ? types[i].parseArray( value ) : types[i].parse( value ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                throw new IllegalArgumentException( "'" + value + "' of column '" + names[i] + "' is not " +
+                        types[i].name().toLowerCase() + (arrays[i] ? "[]" : "") );
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Splits a line on the delimiter. A field may be quoted with
+     * <code>"</code>, which makes delimiters inside it part of the value, and
+     * a quote inside a quoted field is written as two quotes.
+     */
+    static List<String> split( String line, char delimiter )
+    {
+        List<String> fields = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for ( int i = 0; i < line.length(); i++ )
+        {
+            char c = line.charAt( i );
+            if ( quoted )
+            {
+                if ( c != '"' )
+                {
+                    field.append( c );
+                }
+                else if ( i + 1 < line.length() && line.charAt( i + 1 ) == '"' )
+                {
+                    field.append( '"' );
+                    i++;
+                }
+                else
+                {
+                    quoted = false;
+                }
+            }
+            else if ( c == delimiter )
+            {
+                fields.add( field.toString() );
+                field.setLength( 0 );
+            }
+            else if ( c == '"' )
+            {
+                quoted = true;
+            }
+            else
+            {
+                field.append( c );
+            }
+        }
+        fields.add( field.toString() );
+        return fields;
+    }
+}
@@ -36,6 +36,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FuzzyQuery;
 import org.apache.lucene.search.TermQuery;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -122,6 +123,51 @@ public class PerformanceAndSanityIT extends AbstractLuceneIndexTest
         out.println( "get(" + resultCount + "):" + (double)( currentTimeMillis() - t ) / (double)count );
     }
 
+    @Ignore
+    @Test
+    public void testMixedAdditionsAndQueriesInTransactions()
+    {
+        for ( int round = 0; round < 3; round++ )
+        {
+            out.println( "postings:" + mixedAdditionsAndQueries( nodeIndex( "postings-" + round,
+                    LuceneIndexImplementation.EXACT_CONFIG ), false ) );
+            out.println( "lucene:" + mixedAdditionsAndQueries( nodeIndex( "lucene-" + round,
+                    LuceneIndexImplementation.EXACT_CONFIG ), true ) );
+        }
+    }
+
+    /**
+     * Runs transactions which each alternate between adding to and querying the index. The transaction state
+     * of the index is either kept as postings, or made into a lucene index by a fuzzy query, which is what
+     * all queries made it into before.
+     */
+    private long mixedAdditionsAndQueries( Index<Node> index, boolean forceLuceneTxState )
+    {
+        finishTx( true );
+        long t = currentTimeMillis();
+        int transactions = 200;
+        int operations = 100;
+        for ( int i = 0; i < transactions; i++ )
+        {
+            beginTx();
+            for ( int ii = 0; ii < operations; ii++ )
+            {
+                Node node = graphDb.createNode();
+                index.add( node, "name", "name" + i + "-" + ii );
+                index.add( node, "group", "" + ii % 10 );
+                if ( forceLuceneTxState && ii == 0 )
+                {
+                    count( (Iterator<Node>) index.query( new FuzzyQuery( new Term( "name", "name" ) ) ) );
+                }
+                count( (Iterator<Node>) index.query( "name", "name" + i + "-*" ) );
+                count( (Iterator<Node>) index.query( "group:" + ii % 10 + " AND name:name" + i + "-*" ) );
+            }
+            finishTx( true );
+        }
+        beginTx();
+        return currentTimeMillis() - t;
+    }
+
     /**
      * Starts multiple threads which updates and queries an index concurrently
      * during a long period of time just to make sure that number of file handles doesn't grow.
@@ -19,15 +19,19 @@
  */
 package org.neo4j.index.impl.lucene;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterAccessor;
 import org.junit.After;
@@ -38,8 +42,10 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.factory.GraphDatabaseSettings;
 import org.neo4j.graphdb.index.IndexManager;
 import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.index.impl.lucene.CommitContext.DocumentContext;
 import org.neo4j.kernel.DefaultFileSystemAbstraction;
 import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.impl.index.IndexSearcherStatistics;
 import org.neo4j.kernel.impl.index.IndexStore;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.transaction.PlaceboTm;
@@ -239,6 +245,121 @@ public class TestLuceneDataSource
         newSearcher.close();
     }
 
+    @Test
+    public void refreshedSearcherIsClosedWhenTheLastReferenceIsReleased() throws IOException
+    {
+        IndexSearcherStatistics statistics = new IndexSearcherStatistics();
+        startDataSource( config(), statistics );
+        IndexIdentifier identifier = identifier( "foo" );
+        IndexReference oldSearcher = dataSource.getIndexSearcher( identifier );
+        commitDocument( oldSearcher, identifier );
+        IndexReference newSearcher = dataSource.getIndexSearcher( identifier );
+        assertNotSame( oldSearcher, newSearcher );
+        assertEquals( 1, statistics.getReopenCount() );
+        assertFalse( oldSearcher.isClosed() );
+        oldSearcher.close();
+        assertTrue( oldSearcher.isClosed() );
+        assertFalse( newSearcher.isClosed() );
+        assertEquals( 1, newSearcher.getSearcher().maxDoc() );
+        newSearcher.close();
+    }
+
+    @Test
+    public void onlyFreshSearchersAreRefreshedWhenQueriedWithARefreshInterval() throws IOException
+    {
+        IndexSearcherStatistics statistics = new IndexSearcherStatistics();
+        startDataSource( MapUtil.stringMap( "store_dir", dbPath.getPath(),
+                GraphDatabaseSettings.lucene_searcher_refresh_interval.name(), "3600s" ), statistics );
+        IndexIdentifier identifier = identifier( "foo" );
+        IndexReference oldSearcher = dataSource.getIndexSearcher( identifier );
+        commitDocument( oldSearcher, identifier );
+        assertSame( oldSearcher, dataSource.getIndexSearcher( identifier ) );
+        IndexReference freshSearcher = dataSource.getFreshIndexSearcher( identifier );
+        assertNotSame( oldSearcher, freshSearcher );
+        assertSame( freshSearcher, dataSource.getIndexSearcher( identifier ) );
+        assertEquals( 1, statistics.getReopenCount() );
+        assertEquals( 0, statistics.getBackgroundReopenCount() );
+    }
+
+    @Test
+    public void staleSearchersAreRefreshedInTheBackgroundWithARefreshInterval() throws Exception
+    {
+        IndexSearcherStatistics statistics = new IndexSearcherStatistics();
+        startDataSource( MapUtil.stringMap( "store_dir", dbPath.getPath(),
+                GraphDatabaseSettings.lucene_searcher_refresh_interval.name(), "10ms" ), statistics );
+        IndexIdentifier identifier = identifier( "foo" );
+        IndexReference oldSearcher = dataSource.getIndexSearcher( identifier );
+        commitDocument( oldSearcher, identifier );
+        oldSearcher.close();
+        long end = System.currentTimeMillis() + 10000;
+        while ( !oldSearcher.isClosed() && System.currentTimeMillis() < end )
+        {
+            Thread.sleep( 10 );
+        }
+        assertTrue( oldSearcher.isClosed() );
+        assertEquals( 1, statistics.getBackgroundReopenCount() );
+        IndexReference newSearcher = dataSource.getIndexSearcher( identifier );
+        assertEquals( 1, newSearcher.getSearcher().maxDoc() );
+        newSearcher.close();
+    }
+
+    @Test
+    public void commitBatchesLookUpDocumentsWrittenByEarlierTransactionsWithoutReopeningTheSearcher()
+            throws IOException
+    {
+        IndexSearcherStatistics statistics = new IndexSearcherStatistics();
+        startDataSource( MapUtil.stringMap( "store_dir", dbPath.getPath(),
+                GraphDatabaseSettings.lucene_apply_batch_size.name(), "2" ), statistics );
+        IndexIdentifier identifier = identifier( "foo" );
+        CommitBatch batch = dataSource.getCommitBatch( identifier );
+        IndexReference searcher = batch.getSearcher();
+        commitDocument( searcher, identifier );
+        batch.applied( documents( new DocumentContext( IndexType.newBaseDocument( 1 ), false, 1 ) ) );
+        assertSame( batch, dataSource.getCommitBatch( identifier ) );
+        assertTrue( batch.contains( 1 ) );
+        assertEquals( 0, searcher.getSearcher().maxDoc() );
+
+        batch.applied( documents( new DocumentContext( new Document(), true, 1 ) ) );
+        assertTrue( batch.contains( 1 ) );
+        assertNull( batch.get( 1 ) );
+        assertEquals( 0, statistics.getReopenCount() );
+        CommitBatch nextBatch = dataSource.getCommitBatch( identifier );
+        assertNotSame( batch, nextBatch );
+        assertEquals( 1, nextBatch.getSearcher().getSearcher().maxDoc() );
+        assertEquals( 1, statistics.getReopenCount() );
+    }
+
+    @Test
+    public void transactionsAreNotBatchedWithABatchSizeOfOne()
+    {
+        startDataSource( MapUtil.stringMap( "store_dir", dbPath.getPath(),
+                GraphDatabaseSettings.lucene_apply_batch_size.name(), "1" ), new IndexSearcherStatistics() );
+        assertNull( dataSource.getCommitBatch( identifier( "foo" ) ) );
+    }
+
+    private void startDataSource( Map<String, String> params, IndexSearcherStatistics statistics )
+    {
+        Config config = new Config( params, GraphDatabaseSettings.class );
+        dataSource = new LuceneDataSource( config, indexStore, new DefaultFileSystemAbstraction(),
+                new XaFactory( config, TxIdGenerator.DEFAULT, new PlaceboTm( null, null ), new DefaultLogBufferFactory(),
+                        new DefaultFileSystemAbstraction(), new DevNullLoggingService(), RecoveryVerifier.ALWAYS_VALID,
+                        LogPruneStrategies.NO_PRUNING ), null, new DevNullLoggingService(), statistics );
+        dataSource.start();
+    }
+
+    private void commitDocument( IndexReference searcher, IndexIdentifier identifier ) throws IOException
+    {
+        searcher.getWriter().addDocument( IndexType.newBaseDocument( 1 ) );
+        dataSource.invalidateIndexSearcher( identifier );
+    }
+
+    private Map<Long, DocumentContext> documents( DocumentContext document )
+    {
+        Map<Long, DocumentContext> documents = new HashMap<Long, DocumentContext>();
+        documents.put( document.entityId, document );
+        return documents;
+    }
+
     private Map<String, String> config()
     {
         return MapUtil.stringMap("store_dir", getDbPath().getPath() );
@@ -44,6 +44,7 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexManager;
 import org.neo4j.helpers.collection.MapUtil;
@@ -175,7 +176,8 @@ public class TestMigration
             bos.flush();
             bos.close();
         }
-        return new GraphDatabaseFactory().newEmbeddedDatabase( path.getAbsolutePath() );
+        return new GraphDatabaseFactory().newEmbeddedDatabaseBuilder( path.getAbsolutePath() )
+                .setConfig( GraphDatabaseSettings.allow_store_upgrade, "true" ).newGraphDatabase();
     }
 
     private void verifyConfiguration( GraphDatabaseService db, Index<? extends PropertyContainer> index, Map<String, String> config )
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.neo4j.helpers.collection.IteratorUtil.asSet;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.index.lucene.QueryContext;
+import org.neo4j.index.lucene.ValueContext;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.impl.index.IndexSearcherStatistics;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+public class TestQueryResultCache
+{
+    private GraphDatabaseAPI db;
+    private IndexSearcherStatistics statistics;
+    private Index<Node> index;
+
+    @Before
+    public void startDb()
+    {
+        db = new ImpermanentGraphDatabase( stringMap( GraphDatabaseSettings.lucene_query_cache_size.name(), "100" ) );
+        statistics = db.getDependencyResolver().resolveDependency( IndexSearcherStatistics.class );
+        Transaction tx = db.beginTx();
+        try
+        {
+            index = db.index().forNodes( "index" );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    @Test
+    public void repeatedQueriesAreAnsweredFromTheCache() throws Exception
+    {
+        Node first = add( "name", "Mattias" );
+        Node second = add( "name", "Matilda" );
+
+        assertEquals( asSet( first, second ), asSet( index.query( "name", "Mat*" ) ) );
+        assertEquals( asSet( first, second ), asSet( index.query( "name", "Mat*" ) ) );
+        assertEquals( first, index.get( "name", "Mattias" ).getSingle() );
+        assertEquals( first, index.get( "name", "Mattias" ).getSingle() );
+        assertEquals( 2, statistics.getQueryCacheHits() );
+        assertEquals( 2, statistics.getQueryCacheMisses() );
+    }
+
+    @Test
+    public void committedChangesInvalidateTheResultsOfQueriesMentioningTheirKey() throws Exception
+    {
+        Node first = add( "name", "Mattias" );
+        Node other = add( "title", "Engineer" );
+        asSet( index.query( "name:Mat* OR title:Sales" ) );
+        asSet( index.query( "title", "Engineer" ) );
+
+        Node second = add( "name", "Matilda" );
+        assertEquals( asSet( first, second ), asSet( index.query( "name:Mat* OR title:Sales" ) ) );
+        assertEquals( asSet( other ), asSet( index.query( "title", "Engineer" ) ) );
+        assertEquals( 1, statistics.getQueryCacheHits() );
+    }
+
+    @Test
+    public void removedEntitiesInvalidateAllResultsOfTheIndex() throws Exception
+    {
+        Node first = add( "name", "Mattias" );
+        Node other = add( "title", "Engineer" );
+        asSet( index.query( "name", "Mat*" ) );
+        asSet( index.query( "*:*" ) );
+
+        Transaction tx = db.beginTx();
+        try
+        {
+            index.remove( first );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        assertEquals( asSet(), asSet( index.query( "name", "Mat*" ) ) );
+        assertEquals( asSet( other ), asSet( index.query( "*:*" ) ) );
+        assertEquals( 0, statistics.getQueryCacheHits() );
+    }
+
+    @Test
+    public void cachedResultsIncludeTheChangesOfTheTransaction() throws Exception
+    {
+        Node first = add( "name", "Mattias" );
+        Node second = add( "name", "Matilda" );
+        asSet( index.query( "name", "Mat*" ) );
+
+        Transaction tx = db.beginTx();
+        try
+        {
+            Node third = db.createNode();
+            index.add( third, "name", "Mats" );
+            index.remove( first, "name", "Mattias" );
+            assertEquals( asSet( second, third ), asSet( index.query( "name", "Mat*" ) ) );
+            assertEquals( 1, statistics.getQueryCacheHits() );
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    @Test
+    public void resultsOfADeletedIndexAreNotUsedForAnIndexRecreatedWithTheSameName() throws Exception
+    {
+        add( "name", "Mattias" );
+        asSet( index.query( "name", "Mat*" ) );
+
+        Transaction tx = db.beginTx();
+        try
+        {
+            index.delete();
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        tx = db.beginTx();
+        try
+        {
+            index = db.index().forNodes( "index" );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+
+        Node second = add( "name", "Matilda" );
+        assertEquals( asSet( second ), asSet( index.query( "name", "Mat*" ) ) );
+        assertEquals( 0, statistics.getQueryCacheHits() );
+    }
+
+    @Test
+    public void numericRangesAreCachedButSortedResultsAreNot() throws Exception
+    {
+        Node first = add( "age", ValueContext.numeric( 30 ) );
+        add( "age", ValueContext.numeric( 50 ) );
+        for ( int i = 0; i < 2; i++ )
+        {
+            assertEquals( asSet( first ), asSet( index.query( QueryContext.numericRange( "age", 20, 40 ) ) ) );
+            asSet( index.query( QueryContext.numericRange( "age", 20, 40 ).sortNumeric( "age", false ) ) );
+        }
+        assertEquals( 1, statistics.getQueryCacheHits() );
+        assertEquals( 1, statistics.getQueryCacheMisses() );
+    }
+
+    private Node add( String key, Object value )
+    {
+        Transaction tx = db.beginTx();
+        try
+        {
+            Node node = db.createNode();
+            index.add( node, key, value );
+            tx.success();
+            return node;
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+}
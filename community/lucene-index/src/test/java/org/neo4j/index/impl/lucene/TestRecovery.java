@@ -22,6 +22,7 @@ package org.neo4j.index.impl.lucene;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import java.io.File;
 import java.util.Map;
@@ -169,4 +170,40 @@ public class TestRecovery
         assertNotNull( db.index().forNodes( "index2" ).get( "key", "value" ).getSingle() );
         db.shutdown();
     }
+
+    @Test
+    public void recoveryOfManyTransactionsInBatchesAndInParallel() throws Exception
+    {
+        GraphDatabaseService db = newGraphDbService();
+        db.shutdown();
+
+        Process process = Runtime.getRuntime().exec( new String[]{
+                "java", "-cp", System.getProperty( "java.class.path" ),
+                UpdateInManyTxsAndQuit.class.getName(), getDbPath().getPath()
+        } );
+        assertEquals( 0, new ProcessStreamHandler( process, true ).waitForResult() );
+
+        db = new GraphDatabaseFactory().newEmbeddedDatabaseBuilder( getDbPath().getPath() )
+                .setConfig( GraphDatabaseSettings.lucene_apply_batch_size, "15" )
+                .setConfig( GraphDatabaseSettings.lucene_commit_threads, "2" )
+                .newGraphDatabase();
+        for ( String indexName : new String[] { "index", "index2" } )
+        {
+            Index<Node> index = db.index().forNodes( indexName );
+            for ( int i = 0; i < 30; i++ )
+            {
+                Node node = index.get( "key", "value" + i ).getSingle();
+                if ( i >= 20 && i != 25 )
+                {
+                    assertNotNull( indexName + ":value" + i, node );
+                }
+                else
+                {
+                    assertNull( indexName + ":value" + i, node );
+                }
+            }
+            assertNotNull( index.get( "key", "value30" ).getSingle() );
+        }
+        db.shutdown();
+    }
 }
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.neo4j.helpers.collection.IteratorUtil.asSet;
+import static org.neo4j.index.lucene.ValueContext.numeric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FuzzyQuery;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.RelationshipIndex;
+import org.neo4j.index.lucene.QueryContext;
+
+/**
+ * Makes sure the transaction state of exact indexes, see {@link ExactTxData}, answers queries the same way the
+ * lucene index of the transaction state it replaces, see {@link FullTxData}, did.
+ */
+public class TestTransactionIndexState extends AbstractLuceneIndexTest
+{
+    private static final Object[] QUERIES = {
+            "name:name1", "name:name1*", "name:*5", "name:n?me1?", "name:[name10 TO name15]",
+            "name:{name10 TO name15}", "name:name1* AND even:yes", "name:name1* OR name:name2",
+            "name:name1* -even:yes", "even:yes", "name:other",
+            QueryContext.numericRange( "number", 5, 10 ), QueryContext.numericRange( "number", 5, 10, false, false ),
+            QueryContext.numericRange( "number", null, 3 ), QueryContext.numericRange( "number", 5L, 10L ) };
+
+    private static final RelationshipType TYPE = DynamicRelationshipType.withName( "TYPE" );
+
+    @Test
+    public void queriesSeeTheAdditionsOfTheTransaction() throws Exception
+    {
+        Index<Node> postings = nodeIndex( "postings", LuceneIndexImplementation.EXACT_CONFIG );
+        Index<Node> lucene = nodeIndex( "lucene", LuceneIndexImplementation.EXACT_CONFIG );
+        List<Node> nodes = createNodes( 20 );
+        add( postings, nodes );
+        add( lucene, nodes );
+        forceIntoLuceneIndex( lucene );
+
+        List<Set<Node>> inTransaction = queryAll( postings );
+        assertEquals( queryAll( lucene ), inTransaction );
+        assertEquals( asSet( lucene.query( "*:*" ) ), asSet( postings.query( "*:*" ) ) );
+        restartTx();
+        assertEquals( queryAll( postings ), inTransaction );
+    }
+
+    @Test
+    public void queriesExcludeTheRemovalsOfTheTransaction() throws Exception
+    {
+        Index<Node> postings = nodeIndex( "postings", LuceneIndexImplementation.EXACT_CONFIG );
+        Index<Node> lucene = nodeIndex( "lucene", LuceneIndexImplementation.EXACT_CONFIG );
+        List<Node> nodes = createNodes( 20 );
+        add( postings, nodes );
+        add( lucene, nodes );
+        restartTx();
+
+        remove( postings, nodes );
+        remove( lucene, nodes );
+        forceIntoLuceneIndex( lucene );
+        assertEquals( queryAll( lucene ), queryAll( postings ) );
+    }
+
+    @Test
+    public void relationshipsCanBeQueriedByTheirNodes() throws Exception
+    {
+        RelationshipIndex index = relationshipIndex( LuceneIndexImplementation.EXACT_CONFIG );
+        Node node = graphDb.createNode();
+        Node otherNode = graphDb.createNode();
+        Relationship outgoing = node.createRelationshipTo( otherNode, TYPE );
+        Relationship incoming = otherNode.createRelationshipTo( node, TYPE );
+        index.add( outgoing, "name", "name1" );
+        index.add( incoming, "name", "name1" );
+        index.add( incoming, "name", "name2" );
+
+        assertEquals( asSet( outgoing ), asSet( index.query( "name", "name*", node, null ) ) );
+        assertEquals( asSet( incoming ), asSet( index.get( "name", "name1", null, node ) ) );
+        assertEquals( asSet( incoming ), asSet( index.query( "name:name2", otherNode, node ) ) );
+        index.remove( incoming );
+        assertEquals( asSet(), asSet( index.query( "name", "name*", otherNode, null ) ) );
+    }
+
+    private List<Node> createNodes( int count )
+    {
+        List<Node> nodes = new ArrayList<Node>();
+        for ( int i = 0; i < count; i++ )
+        {
+            nodes.add( graphDb.createNode() );
+        }
+        return nodes;
+    }
+
+    private void add( Index<Node> index, List<Node> nodes )
+    {
+        for ( int i = 0; i < nodes.size(); i++ )
+        {
+            Node node = nodes.get( i );
+            index.add( node, "name", "name" + i );
+            index.add( node, "number", numeric( i ) );
+            if ( i % 2 == 0 )
+            {
+                index.add( node, "even", "yes" );
+            }
+        }
+    }
+
+    private void remove( Index<Node> index, List<Node> nodes )
+    {
+        index.remove( nodes.get( 3 ) );
+        index.add( nodes.get( 3 ), "name", "other" );
+        index.remove( nodes.get( 4 ), "name" );
+        index.remove( nodes.get( 5 ), "name", "name5" );
+        index.remove( nodes.get( 6 ), "number", numeric( 6 ) );
+        index.remove( nodes.get( 12 ), "even", "yes" );
+        index.add( nodes.get( 12 ), "even", "yes" );
+    }
+
+    /**
+     * The postings can't answer fuzzy queries, so the transaction state of the index becomes a lucene index.
+     */
+    private void forceIntoLuceneIndex( Index<Node> index )
+    {
+        asSet( index.query( new FuzzyQuery( new Term( "name", "name1" ) ) ) );
+    }
+
+    private List<Set<Node>> queryAll( Index<Node> index )
+    {
+        List<Set<Node>> results = new ArrayList<Set<Node>>();
+        for ( Object query : QUERIES )
+        {
+            results.add( asSet( index.query( query ) ) );
+        }
+        return results;
+    }
+}
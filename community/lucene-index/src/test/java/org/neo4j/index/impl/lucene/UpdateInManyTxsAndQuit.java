@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.index.Index;
+
+/**
+ * This class is used by {@link TestRecovery} so that a graph database can
+ * be shut down in a non-clean way after many transactions updating the same
+ * entities in two indexes.
+ */
+public class UpdateInManyTxsAndQuit
+{
+    public static void main( String[] args )
+    {
+        GraphDatabaseService db = new GraphDatabaseFactory().newEmbeddedDatabase( args[0] );
+        Index<Node> index = db.index().forNodes( "index" );
+        Index<Node> index2 = db.index().forNodes( "index2" );
+        Node[] nodes = new Node[10];
+        Transaction tx = db.beginTx();
+        try
+        {
+            for ( int i = 0; i < nodes.length; i++ )
+            {
+                nodes[i] = db.createNode();
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+
+        for ( int i = 0; i < 30; i++ )
+        {
+            tx = db.beginTx();
+            try
+            {
+                update( index, nodes[i % 10], i );
+                update( index2, nodes[i % 10], i );
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+        }
+
+        tx = db.beginTx();
+        try
+        {
+            index.add( nodes[5], "key", "value30" );
+            index2.add( nodes[5], "key", "value30" );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+
+        System.exit( 0 );
+    }
+
+    private static void update( Index<Node> index, Node node, int i )
+    {
+        if ( i == 25 )
+        {
+            index.remove( node );
+            return;
+        }
+        index.add( node, "key", "value" + i );
+        if ( i >= 10 )
+        {
+            index.remove( node, "key", "value" + (i - 10) );
+        }
+    }
+}
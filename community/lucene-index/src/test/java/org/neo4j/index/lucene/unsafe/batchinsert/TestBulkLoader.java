@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.lucene.unsafe.batchinsert;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.helpers.Args;
+import org.neo4j.helpers.progress.ProgressMonitorFactory;
+import org.neo4j.index.Neo4jTestCase;
+
+public class TestBulkLoader
+{
+    private static final String PATH = "target/var/bulk-load";
+    private static final String STORE = PATH + "/graph.db";
+
+    @Before
+    public void cleanDirectory()
+    {
+        Neo4jTestCase.deleteFileOrDirectory( new File( PATH ) );
+        new File( PATH ).mkdirs();
+    }
+
+    @Test
+    public void shouldLoadNodesAndRelationshipsIntoStoreAndIndexes() throws Exception
+    {
+        File nodes = file( "people.csv",
+                "personId:ID,name,age:int,tags:string[]",
+                "p1,Alice,30,a;b",
+                "p2,\"Smith, Bob\",,",
+                "",
+                "p3,\"Carl \"\"the\"\" third\",41,c" );
+        File relationships = file( "knows.tsv",
+                ":START_ID\t:END_ID\t:TYPE\tsince:long",
+                "p1\tp2\tKNOWS\t1999",
+                "p2\tp3\tKNOWS\t",
+                "p3\tp1\tLIKES\t2010" );
+
+        load( "-nodes=" + nodes.getPath(), "-relationships=" + relationships.getPath(),
+                "-node_index=people:name,personId", "-relationship_index=knows:since" );
+
+        GraphDatabaseService db = new GraphDatabaseFactory().newEmbeddedDatabase( STORE );
+        try
+        {
+            Node alice = db.index().forNodes( "people" ).get( "name", "Alice" ).getSingle();
+            assertEquals( "p1", alice.getProperty( "personId" ) );
+            assertEquals( 30, alice.getProperty( "age" ) );
+            assertArrayEquals( new String[] {"a", "b"}, (String[]) alice.getProperty( "tags" ) );
+
+            Node bob = db.index().forNodes( "people" ).get( "personId", "p2" ).getSingle();
+            assertEquals( "Smith, Bob", bob.getProperty( "name" ) );
+            assertFalse( bob.hasProperty( "age" ) );
+            assertFalse( bob.hasProperty( "tags" ) );
+
+            Relationship knows = alice.getSingleRelationship( DynamicRelationshipType.withName( "KNOWS" ),
+                    Direction.OUTGOING );
+            assertEquals( bob, knows.getEndNode() );
+            assertEquals( 1999L, knows.getProperty( "since" ) );
+            assertEquals( knows, db.index().forRelationships( "knows" ).get( "since", 1999L ).getSingle() );
+
+            Node carl = bob.getSingleRelationship( DynamicRelationshipType.withName( "KNOWS" ),
+                    Direction.OUTGOING ).getEndNode();
+            assertEquals( "Carl \"the\" third", carl.getProperty( "name" ) );
+            assertEquals( alice, carl.getSingleRelationship( DynamicRelationshipType.withName( "LIKES" ),
+                    Direction.OUTGOING ).getEndNode() );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldKeepTheOrderOfTheLinesOverManyBatches() throws Exception
+    {
+        int count = 25123;
+        String[] nodeLines = new String[count + 1];
+        String[] relationshipLines = new String[count];
+        nodeLines[0] = ":ID|number:int";
+        relationshipLines[0] = ":START_ID|:END_ID|:TYPE";
+        for ( int i = 0; i < count; i++ )
+        {
+            nodeLines[i + 1] = "n" + i + "|" + i;
+            if ( i > 0 )
+            {
+                relationshipLines[i] = "n" + (i - 1) + "|n" + i + "|NEXT";
+            }
+        }
+        File nodes = file( "numbers", nodeLines );
+        File relationships = file( "next", relationshipLines );
+
+        load( "-nodes=" + nodes.getPath(), "-relationships=" + relationships.getPath(), "-delimiter=|",
+                "-processors=3", "-node_index=numbers:number" );
+
+        GraphDatabaseService db = new GraphDatabaseFactory().newEmbeddedDatabase( STORE );
+        try
+        {
+            Node node = db.index().forNodes( "numbers" ).get( "number", 0 ).getSingle();
+            for ( int i = 1; i < count; i++ )
+            {
+                node = node.getSingleRelationship( DynamicRelationshipType.withName( "NEXT" ),
+                        Direction.OUTGOING ).getEndNode();
+                assertEquals( i, node.getProperty( "number" ) );
+            }
+            assertFalse( node.hasRelationship( Direction.OUTGOING ) );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldReportTheLineOfAnUnknownNodeId() throws Exception
+    {
+        File nodes = file( "nodes.csv", ":ID", "a", "b" );
+        File relationships = file( "relationships.csv", ":START_ID,:END_ID,:TYPE", "a,b,X", "b,c,X" );
+
+        try
+        {
+            load( "-nodes=" + nodes.getPath(), "-relationships=" + relationships.getPath() );
+            fail( "Should have failed on the unknown node id" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().startsWith( relationships + ":3: " ) );
+            assertTrue( e.getMessage(), e.getMessage().contains( "'c'" ) );
+        }
+    }
+
+    @Test
+    public void shouldReportTheLineOfAValueNotOfTheColumnType() throws Exception
+    {
+        File nodes = file( "nodes.csv", ":ID,age:int", "a,1", "b,old" );
+
+        try
+        {
+            load( "-nodes=" + nodes.getPath() );
+            fail( "Should have failed on the value not being an int" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().startsWith( nodes + ":3: " ) );
+        }
+    }
+
+    @Test
+    public void shouldNotAllowTheSameIdForTwoNodes() throws Exception
+    {
+        File nodes = file( "nodes.csv", ":ID,name", "a,first", "a,second" );
+
+        try
+        {
+            load( "-nodes=" + nodes.getPath() );
+            fail( "Should have failed on the same id being used twice" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().startsWith( nodes + ":3: " ) );
+        }
+    }
+
+    @Test
+    public void shouldRequireTheRelationshipColumns() throws Exception
+    {
+        File nodes = file( "nodes.csv", ":ID", "a" );
+        File relationships = file( "relationships.csv", ":START_ID,:END_ID", "a,a" );
+
+        try
+        {
+            load( "-nodes=" + nodes.getPath(), "-relationships=" + relationships.getPath() );
+            fail( "Should have failed on the missing :TYPE column" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().contains( ":TYPE" ) );
+        }
+    }
+
+    @Test
+    public void shouldSplitQuotedFields()
+    {
+        assertEquals( asList( "a", "b,c", "", "d\"e" ), FileHeader.split( "a,\"b,c\",,\"d\"\"e\"", ',' ) );
+        assertEquals( asList( "a b", "" ), FileHeader.split( "a b\t", '\t' ) );
+        assertEquals( Collections.singletonList( "" ), FileHeader.split( "", ',' ) );
+    }
+
+    private void load( String... arguments ) throws IOException
+    {
+        BulkLoader.load( STORE, new Args( arguments ), ProgressMonitorFactory.NONE );
+    }
+
+    private File file( String name, String... lines ) throws IOException
+    {
+        File file = new File( PATH, name );
+        Writer writer = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try
+        {
+            for ( String line : lines )
+            {
+                writer.write( line );
+                writer.write( '\n' );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.lucene.unsafe.batchinsert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class TestExternalIdMap
+{
+    @Test
+    public void shouldGetTheNodeIdsOfAddedIds()
+    {
+        ExternalIdMap ids = new ExternalIdMap();
+        ids.put( "one", 1 );
+        ids.put( "två", 2 );
+        ids.put( "", 3 );
+
+        assertEquals( 1, ids.get( "one" ) );
+        assertEquals( 2, ids.get( "två" ) );
+        assertEquals( 3, ids.get( "" ) );
+        assertEquals( -1, ids.get( "three" ) );
+        assertEquals( 3, ids.size() );
+    }
+
+    @Test
+    public void shouldGrowPastItsInitialCapacity()
+    {
+        ExternalIdMap ids = new ExternalIdMap( 16 );
+        int count = 100000;
+        for ( int i = 0; i < count; i++ )
+        {
+            ids.put( "id-" + i, i * 3L );
+        }
+
+        for ( int i = 0; i < count; i++ )
+        {
+            assertEquals( i * 3L, ids.get( "id-" + i ) );
+        }
+        assertEquals( -1, ids.get( "id-" + count ) );
+        assertEquals( count, ids.size() );
+    }
+
+    @Test
+    public void shouldNotAddTheSameIdTwice()
+    {
+        ExternalIdMap ids = new ExternalIdMap();
+        ids.put( "a", 0 );
+
+        try
+        {
+            ids.put( "a", 1 );
+            fail( "Should not be able to add the same id twice" );
+        }
+        catch ( IllegalArgumentException e )
+        {   // Good
+        }
+        assertEquals( 0, ids.get( "a" ) );
+    }
+
+    @Test
+    public void shouldKeepLongIdsAcrossKeyChunks()
+    {
+        ExternalIdMap ids = new ExternalIdMap();
+        StringBuilder prefix = new StringBuilder();
+        for ( int i = 0; i < 60000; i++ )
+        {
+            prefix.append( 'x' );
+        }
+        // 300 keys of 60000 bytes fill more than one 16MB chunk of keys
+        for ( int i = 0; i < 300; i++ )
+        {
+            ids.put( prefix.toString() + i, i );
+        }
+
+        for ( int i = 0; i < 300; i++ )
+        {
+            assertEquals( i, ids.get( prefix.toString() + i ) );
+        }
+    }
+}
@@ -36,6 +36,7 @@ import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.RecordStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
@@ -336,6 +337,12 @@ class VerifyingTransactionInterceptor implements TransactionInterceptor
         diffs.visitRelationship( record );
     }
 
+    @Override
+    public void visitRelationshipGroup( RelationshipGroupRecord record )
+    {
+        diffs.visitRelationshipGroup( record );
+    }
+
     @Override
     public void visitProperty( PropertyRecord record )
     {
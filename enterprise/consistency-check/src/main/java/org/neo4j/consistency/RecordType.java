@@ -21,7 +21,7 @@ package org.neo4j.consistency;
 
 public enum RecordType
 {
-    NEO_STORE, NODE, RELATIONSHIP, PROPERTY,
+    NEO_STORE, NODE, RELATIONSHIP, RELATIONSHIP_GROUP, PROPERTY,
     PROPERTY_KEY, RELATIONSHIP_LABEL,
     STRING_PROPERTY, ARRAY_PROPERTY,
     RELATIONSHIP_LABEL_NAME, PROPERTY_KEY_NAME,
@@ -31,6 +31,7 @@ import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.RecordStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 
@@ -39,6 +40,7 @@ public abstract class AbstractStoreProcessor extends RecordStore.Processor
     private final RecordCheck<NeoStoreRecord, ConsistencyReport.NeoStoreConsistencyReport> neoStoreChecker;
     private final RecordCheck<NodeRecord, ConsistencyReport.NodeConsistencyReport> nodeChecker;
     private final RecordCheck<RelationshipRecord, ConsistencyReport.RelationshipConsistencyReport> relationshipChecker;
+    private final RecordCheck<RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport> relationshipGroupChecker;
     private final RecordCheck<PropertyRecord, ConsistencyReport.PropertyConsistencyReport> propertyChecker;
     private final RecordCheck<PropertyIndexRecord, ConsistencyReport.PropertyKeyConsistencyReport> propertyKeyChecker;
     private final RecordCheck<RelationshipTypeRecord, ConsistencyReport.LabelConsistencyReport> relationshipLabelChecker;
@@ -53,6 +55,7 @@ public abstract class AbstractStoreProcessor extends RecordStore.Processor
         this.neoStoreChecker = decorator.decorateNeoStoreChecker( new NeoStoreCheck() );
         this.nodeChecker = decorator.decorateNodeChecker( new NodeRecordCheck() );
         this.relationshipChecker = decorator.decorateRelationshipChecker( new RelationshipRecordCheck() );
+        this.relationshipGroupChecker = new RelationshipGroupRecordCheck();
         this.propertyChecker = decorator.decoratePropertyChecker( new PropertyRecordCheck() );
         this.propertyKeyChecker = decorator.decoratePropertyKeyChecker( new PropertyKeyRecordCheck() );
         this.relationshipLabelChecker = decorator.decorateLabelChecker( new RelationshipLabelRecordCheck() );
@@ -64,6 +67,9 @@ public abstract class AbstractStoreProcessor extends RecordStore.Processor
     protected abstract void checkRelationship( RecordStore<RelationshipRecord> store, RelationshipRecord rel,
                                                RecordCheck<RelationshipRecord, ConsistencyReport.RelationshipConsistencyReport> checker );
 
+    protected abstract void checkRelationshipGroup( RecordStore<RelationshipGroupRecord> store, RelationshipGroupRecord group,
+                                                    RecordCheck<RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport> checker );
+
     protected abstract void checkProperty( RecordStore<PropertyRecord> store, PropertyRecord property,
                                            RecordCheck<PropertyRecord, ConsistencyReport.PropertyConsistencyReport> checker );
 
@@ -89,6 +95,12 @@ public abstract class AbstractStoreProcessor extends RecordStore.Processor
         checkRelationship( store, rel, relationshipChecker );
     }
 
+    @Override
+    public final void processRelationshipGroup( RecordStore<RelationshipGroupRecord> store, RelationshipGroupRecord group )
+    {
+        checkRelationshipGroup( store, group, relationshipGroupChecker );
+    }
+
     @Override
     public final void processProperty( RecordStore<PropertyRecord> store, PropertyRecord property )
     {
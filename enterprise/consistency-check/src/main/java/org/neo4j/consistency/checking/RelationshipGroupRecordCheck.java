@@ -0,0 +1,403 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.consistency.checking;
+
+import org.neo4j.consistency.report.ConsistencyReport;
+import org.neo4j.consistency.store.DiffRecordAccess;
+import org.neo4j.consistency.store.RecordAccess;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
+
+class RelationshipGroupRecordCheck
+        implements RecordCheck<RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport>
+{
+    private static final RecordField<RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport>[]
+            FIELDS = fields( Label.LABEL, Owner.OWNER, Next.NEXT,
+                             FirstRelationship.OUT, FirstRelationship.IN, FirstRelationship.LOOP );
+
+    private static RecordField<RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport>[] fields(
+            RecordField<RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport>... fields )
+    {
+        return fields;
+    }
+
+    @Override
+    public void check( RelationshipGroupRecord record, ConsistencyReport.RelationshipGroupConsistencyReport report,
+                       RecordAccess records )
+    {
+        if ( !record.inUse() )
+        {
+            return;
+        }
+        for ( RecordField<RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport> field : FIELDS )
+        {
+            field.checkConsistency( record, report, records );
+        }
+    }
+
+    @Override
+    public void checkChange( RelationshipGroupRecord oldRecord, RelationshipGroupRecord newRecord,
+                             ConsistencyReport.RelationshipGroupConsistencyReport report, DiffRecordAccess records )
+    {
+        check( newRecord, report, records );
+    }
+
+    private enum Label implements
+            RecordField<RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport>,
+            ComparativeRecordChecker<RelationshipGroupRecord, RelationshipTypeRecord, ConsistencyReport.RelationshipGroupConsistencyReport>
+    {
+        LABEL;
+
+        @Override
+        public void checkConsistency( RelationshipGroupRecord record,
+                                      ConsistencyReport.RelationshipGroupConsistencyReport report, RecordAccess records )
+        {
+            if ( record.getType() < 0 )
+            {
+                report.illegalLabel();
+            }
+            else
+            {
+                report.forReference( records.relationshipLabel( record.getType() ), this );
+            }
+        }
+
+        @Override
+        public long valueFrom( RelationshipGroupRecord record )
+        {
+            return record.getType();
+        }
+
+        @Override
+        public void checkChange( RelationshipGroupRecord oldRecord, RelationshipGroupRecord newRecord,
+                                 ConsistencyReport.RelationshipGroupConsistencyReport report, DiffRecordAccess records )
+        {
+            // nothing to check
+        }
+
+        @Override
+        public void checkReference( RelationshipGroupRecord record, RelationshipTypeRecord referred,
+                                    ConsistencyReport.RelationshipGroupConsistencyReport report, RecordAccess records )
+        {
+            if ( !referred.inUse() )
+            {
+                report.labelNotInUse( referred );
+            }
+        }
+    }
+
+    private enum Owner implements
+            RecordField<RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport>,
+            ComparativeRecordChecker<RelationshipGroupRecord, NodeRecord, ConsistencyReport.RelationshipGroupConsistencyReport>
+    {
+        OWNER;
+
+        @Override
+        public void checkConsistency( RelationshipGroupRecord record,
+                                      ConsistencyReport.RelationshipGroupConsistencyReport report, RecordAccess records )
+        {
+            if ( record.getOwningNode() < 0 )
+            {
+                report.illegalOwner();
+            }
+            else
+            {
+                report.forReference( records.node( record.getOwningNode() ), this );
+            }
+        }
+
+        @Override
+        public long valueFrom( RelationshipGroupRecord record )
+        {
+            return record.getOwningNode();
+        }
+
+        @Override
+        public void checkChange( RelationshipGroupRecord oldRecord, RelationshipGroupRecord newRecord,
+                                 ConsistencyReport.RelationshipGroupConsistencyReport report, DiffRecordAccess records )
+        {
+            // nothing to check
+        }
+
+        @Override
+        public void checkReference( RelationshipGroupRecord record, NodeRecord node,
+                                    ConsistencyReport.RelationshipGroupConsistencyReport report, RecordAccess records )
+        {
+            if ( !node.inUse() )
+            {
+                report.ownerNotInUse( node );
+            }
+            else if ( record.isFirst() && node.getFirstGroup() != record.getId() )
+            {
+                report.ownerDoesNotReferenceBack( node );
+            }
+        }
+    }
+
+    private enum Next implements
+            RecordField<RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport>,
+            ComparativeRecordChecker<RelationshipGroupRecord, RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport>
+    {
+        NEXT;
+
+        @Override
+        public void checkConsistency( RelationshipGroupRecord record,
+                                      ConsistencyReport.RelationshipGroupConsistencyReport report, RecordAccess records )
+        {
+            if ( !Record.NO_NEXT_RELATIONSHIP.is( record.getNext() ) )
+            {
+                report.forReference( records.relationshipGroup( record.getNext() ), this );
+            }
+        }
+
+        @Override
+        public long valueFrom( RelationshipGroupRecord record )
+        {
+            return record.getNext();
+        }
+
+        @Override
+        public void checkChange( RelationshipGroupRecord oldRecord, RelationshipGroupRecord newRecord,
+                                 ConsistencyReport.RelationshipGroupConsistencyReport report, DiffRecordAccess records )
+        {
+            // nothing to check
+        }
+
+        @Override
+        public void checkReference( RelationshipGroupRecord record, RelationshipGroupRecord next,
+                                    ConsistencyReport.RelationshipGroupConsistencyReport report, RecordAccess records )
+        {
+            if ( !next.inUse() )
+            {
+                report.nextGroupNotInUse( next );
+            }
+            else if ( next.getOwningNode() != record.getOwningNode() )
+            {
+                report.nextHasOtherOwner( next );
+            }
+            else if ( next.getType() <= record.getType() )
+            {
+                report.invalidTypeSortOrder( next );
+            }
+        }
+    }
+
+    private enum FirstRelationship implements
+            RecordField<RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport>,
+            ComparativeRecordChecker<RelationshipGroupRecord, RelationshipRecord, ConsistencyReport.RelationshipGroupConsistencyReport>
+    {
+        OUT
+        {
+            @Override
+            public long valueFrom( RelationshipGroupRecord group )
+            {
+                return group.getFirstOut();
+            }
+
+            @Override
+            boolean forOwner( RelationshipGroupRecord group, RelationshipRecord relationship )
+            {
+                return relationship.getFirstNode() == group.getOwningNode()
+                       && relationship.getSecondNode() != group.getOwningNode();
+            }
+
+            @Override
+            long prev( RelationshipRecord relationship )
+            {
+                return relationship.getFirstPrevRel();
+            }
+
+            @Override
+            void notInUse( ConsistencyReport.RelationshipGroupConsistencyReport report, RelationshipRecord relationship )
+            {
+                report.firstOutgoingRelationshipNotInUse( relationship );
+            }
+
+            @Override
+            void otherType( ConsistencyReport.RelationshipGroupConsistencyReport report, RelationshipRecord relationship )
+            {
+                report.firstOutgoingRelationshipOfOtherType( relationship );
+            }
+
+            @Override
+            void otherNode( ConsistencyReport.RelationshipGroupConsistencyReport report, RelationshipRecord relationship )
+            {
+                report.firstOutgoingRelationshipForOtherNode( relationship );
+            }
+
+            @Override
+            void notFirstInChain( ConsistencyReport.RelationshipGroupConsistencyReport report,
+                                  RelationshipRecord relationship )
+            {
+                report.firstOutgoingRelationshipNotFirstInChain( relationship );
+            }
+        },
+        IN
+        {
+            @Override
+            public long valueFrom( RelationshipGroupRecord group )
+            {
+                return group.getFirstIn();
+            }
+
+            @Override
+            boolean forOwner( RelationshipGroupRecord group, RelationshipRecord relationship )
+            {
+                return relationship.getSecondNode() == group.getOwningNode()
+                       && relationship.getFirstNode() != group.getOwningNode();
+            }
+
+            @Override
+            long prev( RelationshipRecord relationship )
+            {
+                return relationship.getSecondPrevRel();
+            }
+
+            @Override
+            void notInUse( ConsistencyReport.RelationshipGroupConsistencyReport report, RelationshipRecord relationship )
+            {
+                report.firstIncomingRelationshipNotInUse( relationship );
+            }
+
+            @Override
+            void otherType( ConsistencyReport.RelationshipGroupConsistencyReport report, RelationshipRecord relationship )
+            {
+                report.firstIncomingRelationshipOfOtherType( relationship );
+            }
+
+            @Override
+            void otherNode( ConsistencyReport.RelationshipGroupConsistencyReport report, RelationshipRecord relationship )
+            {
+                report.firstIncomingRelationshipForOtherNode( relationship );
+            }
+
+            @Override
+            void notFirstInChain( ConsistencyReport.RelationshipGroupConsistencyReport report,
+                                  RelationshipRecord relationship )
+            {
+                report.firstIncomingRelationshipNotFirstInChain( relationship );
+            }
+        },
+        LOOP
+        {
+            @Override
+            public long valueFrom( RelationshipGroupRecord group )
+            {
+                return group.getFirstLoop();
+            }
+
+            @Override
+            boolean forOwner( RelationshipGroupRecord group, RelationshipRecord relationship )
+            {
+                return relationship.getFirstNode() == group.getOwningNode()
+                       && relationship.getSecondNode() == group.getOwningNode();
+            }
+
+            @Override
+            long prev( RelationshipRecord relationship )
+            {
+                return relationship.getFirstPrevRel();
+            }
+
+            @Override
+            void notInUse( ConsistencyReport.RelationshipGroupConsistencyReport report, RelationshipRecord relationship )
+            {
+                report.firstLoopRelationshipNotInUse( relationship );
+            }
+
+            @Override
+            void otherType( ConsistencyReport.RelationshipGroupConsistencyReport report, RelationshipRecord relationship )
+            {
+                report.firstLoopRelationshipOfOtherType( relationship );
+            }
+
+            @Override
+            void otherNode( ConsistencyReport.RelationshipGroupConsistencyReport report, RelationshipRecord relationship )
+            {
+                report.firstLoopRelationshipForOtherNode( relationship );
+            }
+
+            @Override
+            void notFirstInChain( ConsistencyReport.RelationshipGroupConsistencyReport report,
+                                  RelationshipRecord relationship )
+            {
+                report.firstLoopRelationshipNotFirstInChain( relationship );
+            }
+        };
+
+        @Override
+        public void checkConsistency( RelationshipGroupRecord group,
+                                      ConsistencyReport.RelationshipGroupConsistencyReport report, RecordAccess records )
+        {
+            if ( !Record.NO_NEXT_RELATIONSHIP.is( valueFrom( group ) ) )
+            {
+                report.forReference( records.relationship( valueFrom( group ) ), this );
+            }
+        }
+
+        @Override
+        public void checkChange( RelationshipGroupRecord oldRecord, RelationshipGroupRecord newRecord,
+                                 ConsistencyReport.RelationshipGroupConsistencyReport report, DiffRecordAccess records )
+        {
+            // nothing to check
+        }
+
+        @Override
+        public void checkReference( RelationshipGroupRecord group, RelationshipRecord relationship,
+                                    ConsistencyReport.RelationshipGroupConsistencyReport report, RecordAccess records )
+        {
+            if ( !relationship.inUse() )
+            {
+                notInUse( report, relationship );
+            }
+            else if ( relationship.getType() != group.getType() )
+            {
+                otherType( report, relationship );
+            }
+            else if ( !forOwner( group, relationship ) )
+            {
+                otherNode( report, relationship );
+            }
+            else if ( !Record.NO_PREV_RELATIONSHIP.is( prev( relationship ) ) )
+            {
+                notFirstInChain( report, relationship );
+            }
+        }
+
+        abstract boolean forOwner( RelationshipGroupRecord group, RelationshipRecord relationship );
+
+        abstract long prev( RelationshipRecord relationship );
+
+        abstract void notInUse( ConsistencyReport.RelationshipGroupConsistencyReport report,
+                                RelationshipRecord relationship );
+
+        abstract void otherType( ConsistencyReport.RelationshipGroupConsistencyReport report,
+                                 RelationshipRecord relationship );
+
+        abstract void otherNode( ConsistencyReport.RelationshipGroupConsistencyReport report,
+                                 RelationshipRecord relationship );
+
+        abstract void notFirstInChain( ConsistencyReport.RelationshipGroupConsistencyReport report,
+                                       RelationshipRecord relationship );
+    }
+}
@@ -194,7 +194,9 @@ enum RelationshipNodeField implements
         {
             nodeNotInUse( report, node );
         }
-        else
+        // the chains of dense nodes start in their relationship groups,
+        // RelationshipGroupRecordCheck verifies that the first of each chain belongs to the node
+        else if ( !node.isDense() )
         {
             if ( Record.NO_PREV_RELATIONSHIP.is( prev( relationship ) ) )
             {
@@ -20,6 +20,7 @@
 package org.neo4j.consistency.checking.full;
 
 import static org.neo4j.consistency.checking.full.MultiPassStore.ARRAYS;
+import static org.neo4j.consistency.checking.full.MultiPassStore.GROUPS;
 import static org.neo4j.consistency.checking.full.MultiPassStore.NODES;
 import static org.neo4j.consistency.checking.full.MultiPassStore.PROPERTIES;
 import static org.neo4j.consistency.checking.full.MultiPassStore.RELATIONSHIPS;
@@ -47,6 +48,7 @@ import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.RecordStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.nioneo.store.StoreAccess;
@@ -92,7 +94,7 @@ public class FullCheck
                 new ConsistencyReporter( recordAccess, report ) );
 
         ProgressMonitorFactory.MultiPartBuilder progress = progressFactory.multipleParts( "Full consistency check" );
-        List<StoreProcessorTask> tasks = new ArrayList<StoreProcessorTask>( 9 );
+        List<StoreProcessorTask> tasks = new ArrayList<StoreProcessorTask>( 10 );
 
         MultiPassStore.Factory processorFactory = new MultiPassStore.Factory(
                 decorator, totalMappedMemory, store, recordAccess, report );
@@ -103,6 +105,12 @@ public class FullCheck
         tasks.add( new StoreProcessorTask<RelationshipRecord>(
                 store.getRelationshipStore(), progress, order,
                 processEverything, processorFactory.createAll( NODES, PROPERTIES, RELATIONSHIPS ) ) );
+        if ( store.getRelationshipGroupStore() != null )
+        {
+            tasks.add( new StoreProcessorTask<RelationshipGroupRecord>(
+                    store.getRelationshipGroupStore(), progress, order,
+                    processEverything, processorFactory.createAll( NODES, RELATIONSHIPS, GROUPS ) ) );
+        }
         tasks.add( new StoreProcessorTask<PropertyRecord>(
                 store.getPropertyStore(), progress, order,
                 processEverything, processorFactory.createAll( PROPERTIES, STRINGS, ARRAYS ) ) );
@@ -33,6 +33,7 @@ import org.neo4j.kernel.impl.nioneo.store.DynamicRecord;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.RecordStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.StoreAccess;
 
@@ -90,6 +91,32 @@ enum MultiPassStore
                     };
                 }
             },
+    GROUPS()
+            {
+                @Override
+                RecordStore getRecordStore( StoreAccess storeAccess )
+                {
+                    return storeAccess.getRelationshipGroupStore();
+                }
+
+                @Override
+                DiffRecordAccess filter( final DiffRecordAccess recordAccess, final int iPass,
+                                         final long recordsPerPass )
+                {
+                    return new SkipAllButCached( recordAccess )
+                    {
+                        @Override
+                        public RecordReference<RelationshipGroupRecord> relationshipGroup( long id )
+                        {
+                            if ( recordInCurrentPass( id, iPass, recordsPerPass ) )
+                            {
+                                return recordAccess.relationshipGroup( id );
+                            }
+                            return skipReference();
+                        }
+                    };
+                }
+            },
     PROPERTIES()
             {
                 @Override
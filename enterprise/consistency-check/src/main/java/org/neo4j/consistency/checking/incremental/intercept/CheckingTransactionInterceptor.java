@@ -30,6 +30,7 @@ import org.neo4j.kernel.impl.nioneo.store.NeoStoreRecord;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
@@ -111,6 +112,16 @@ class CheckingTransactionInterceptor implements TransactionInterceptor
         }
     }
 
+    @Override
+    public void visitRelationshipGroup( RelationshipGroupRecord record )
+    {
+        diffs.visitRelationshipGroup( record );
+        if ( next != null )
+        {
+            next.visitRelationshipGroup( record );
+        }
+    }
+
     @Override
     public void visitProperty( PropertyRecord record )
     {
@@ -32,9 +32,17 @@ import static org.neo4j.consistency.checking.old.InconsistencyType.PropertyOwner
 import static org.neo4j.consistency.checking.old.InconsistencyType.PropertyOwnerInconsistency.OwnerInconsistencyType
         .PROPERTY_CHANGED_FOR_WRONG_OWNER;
 import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.DYNAMIC_LENGTH_TOO_LARGE;
+import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.GROUP_OWNER_INVALID;
+import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.GROUP_RELATIONSHIP_NOT_IN_USE;
+import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.GROUP_RELATIONSHIP_NO_BACKREF;
+import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency
+        .GROUP_RELATIONSHIP_OF_OTHER_TYPE;
 import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.INVALID_TYPE_ID;
 import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.NEXT_DYNAMIC_NOT_IN_USE;
 import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.NEXT_DYNAMIC_NOT_REMOVED;
+import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.NEXT_GROUP_FOR_OTHER_NODE;
+import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.NEXT_GROUP_NOT_IN_USE;
+import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.NEXT_GROUP_TYPE_NOT_HIGHER;
 import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.NEXT_PROPERTY_NOT_IN_USE;
 import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.NON_FULL_DYNAMIC_WITH_NEXT;
 import static org.neo4j.consistency.checking.old.InconsistencyType.ReferenceInconsistency.ORPHANED_PROPERTY;
@@ -84,15 +92,18 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
 import org.neo4j.kernel.impl.nioneo.store.RecordStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.nioneo.store.StoreAccess;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 
 @Deprecated
 public class ConsistencyRecordProcessor extends RecordStore.Processor implements Runnable
 {
     private final RecordStore<NodeRecord> nodes;
     private final RecordStore<RelationshipRecord> rels;
+    private final RecordStore<RelationshipGroupRecord> groups;
     private final RecordStore<PropertyRecord> props;
     private final RecordStore<DynamicRecord> strings, arrays;
     private final RecordStore<PropertyIndexRecord>  propIndexes;
@@ -101,7 +112,7 @@ public class ConsistencyRecordProcessor extends RecordStore.Processor implements
     private final RecordStore<DynamicRecord> typeNames;
 
     private final HashMap<Long/*property record id*/, PropertyOwner> propertyOwners;
-    private long brokenNodes, brokenRels, brokenProps, brokenStrings, brokenArrays, brokenTypes, brokenKeys;
+    private long brokenNodes, brokenRels, brokenGroups, brokenProps, brokenStrings, brokenArrays, brokenTypes, brokenKeys;
     private final InconsistencyReport report;
 
     private final static RelationshipNodeField[] nodeFields = RelationshipNodeField.values();
@@ -137,6 +148,7 @@ public class ConsistencyRecordProcessor extends RecordStore.Processor implements
     {
         this.nodes = stores.getNodeStore();
         this.rels = stores.getRelationshipStore();
+        this.groups = stores.getRelationshipGroupStore();
         this.props = stores.getPropertyStore();
         this.strings = stores.getStringStore();
         this.arrays = stores.getArrayStore();
@@ -161,6 +173,12 @@ public class ConsistencyRecordProcessor extends RecordStore.Processor implements
         if ( checkRelationship( rel ) ) brokenRels++;
     }
 
+    @Override
+    public void processRelationshipGroup( RecordStore<RelationshipGroupRecord> store, RelationshipGroupRecord group )
+    {
+        if ( checkGroup( group ) ) brokenGroups++;
+    }
+
     @Override
     public void processProperty( RecordStore<PropertyRecord> store, PropertyRecord property )
     {
@@ -313,7 +331,8 @@ public class ConsistencyRecordProcessor extends RecordStore.Processor implements
                 if ( nodeId != null )
                 {
                     NodeRecord node = nodes.forceGetRecord( nodeId );
-                    if ( !node.inUse() || node.getNextRel() != rel.getId() )
+                    if ( !node.inUse() ||
+                         ( node.isDense() ? !isFirstInGroupOf( node, rel ) : node.getNextRel() != rel.getId() ) )
                         fail |= report.inconsistent( rels, rel, nodes, node, field.noBackReference );
                 }
             }
@@ -342,6 +361,87 @@ public class ConsistencyRecordProcessor extends RecordStore.Processor implements
         return fail;
     }
 
+    /**
+     * The relationship chains of a dense node start in the group of their type,
+     * one chain for each direction, so the node itself doesn't reference them.
+     */
+    private boolean isFirstInGroupOf( NodeRecord node, RelationshipRecord rel )
+    {
+        if ( groups == null ) return false;
+        DirectionWrapper direction = directionOf( rel, node.getId() );
+        int previousType = -1;
+        for ( long groupId = node.getFirstGroup(); !Record.NO_NEXT_RELATIONSHIP.is( groupId ); )
+        {
+            RelationshipGroupRecord group = groups.forceGetRecord( groupId );
+            // groups are kept in type order, which also stops the walk on a cycle
+            if ( !group.inUse() || group.getType() <= previousType || group.getType() > rel.getType() ) return false;
+            if ( group.getType() == rel.getType() ) return group.getFirst( direction ) == rel.getId();
+            previousType = group.getType();
+            groupId = group.getNext();
+        }
+        return false;
+    }
+
+    private static DirectionWrapper directionOf( RelationshipRecord rel, long nodeId )
+    {
+        if ( rel.getFirstNode() == rel.getSecondNode() ) return DirectionWrapper.BOTH;
+        return rel.getFirstNode() == nodeId ? DirectionWrapper.OUTGOING : DirectionWrapper.INCOMING;
+    }
+
+    private boolean checkGroup( RelationshipGroupRecord group )
+    {
+        if ( !group.inUse() ) return false; // no check for unused records
+        boolean fail = false;
+        if ( group.getType() < 0 ) fail |= report.inconsistent( groups, group, INVALID_TYPE_ID );
+        else
+        {
+            RelationshipTypeRecord type = relTypes.forceGetRecord( group.getType() );
+            if ( !type.inUse() ) fail |= report.inconsistent( groups, group, relTypes, type, TYPE_NOT_IN_USE );
+        }
+        if ( group.getOwningNode() < 0 ) fail |= report.inconsistent( groups, group, GROUP_OWNER_INVALID );
+        else
+        {
+            NodeRecord owner = nodes.forceGetRecord( group.getOwningNode() );
+            if ( !owner.inUse() )
+                fail |= report.inconsistent( groups, group, nodes, owner, OWNER_NOT_IN_USE );
+            else if ( group.isFirst() && owner.getFirstGroup() != group.getId() )
+                fail |= report.inconsistent( groups, group, nodes, owner, OWNER_DOES_NOT_REFERENCE_BACK );
+        }
+        if ( !Record.NO_NEXT_RELATIONSHIP.is( group.getNext() ) )
+        {
+            RelationshipGroupRecord next = groups.forceGetRecord( group.getNext() );
+            if ( !next.inUse() )
+                fail |= report.inconsistent( groups, group, next, NEXT_GROUP_NOT_IN_USE );
+            else if ( next.getOwningNode() != group.getOwningNode() )
+                fail |= report.inconsistent( groups, group, next, NEXT_GROUP_FOR_OTHER_NODE );
+            else if ( next.getType() <= group.getType() )
+                fail |= report.inconsistent( groups, group, next, NEXT_GROUP_TYPE_NOT_HIGHER );
+        }
+        for ( DirectionWrapper direction : DirectionWrapper.values() )
+        {
+            long relId = group.getFirst( direction );
+            if ( Record.NO_NEXT_RELATIONSHIP.is( relId ) ) continue;
+            RelationshipRecord rel = rels.forceGetRecord( relId );
+            if ( !rel.inUse() )
+                fail |= report.inconsistent( groups, group, rels, rel, GROUP_RELATIONSHIP_NOT_IN_USE );
+            else if ( rel.getType() != group.getType() )
+                fail |= report.inconsistent( groups, group, rels, rel, GROUP_RELATIONSHIP_OF_OTHER_TYPE );
+            else if ( !isFirstOf( rel, group.getOwningNode(), direction ) )
+                fail |= report.inconsistent( groups, group, rels, rel, GROUP_RELATIONSHIP_NO_BACKREF );
+        }
+        return fail;
+    }
+
+    private static boolean isFirstOf( RelationshipRecord rel, long nodeId, DirectionWrapper direction )
+    {
+        if ( ( rel.getFirstNode() == nodeId || rel.getSecondNode() == nodeId ) && directionOf( rel, nodeId ) == direction )
+        {
+            long prev = rel.getFirstNode() == nodeId ? rel.getFirstPrevRel() : rel.getSecondPrevRel();
+            return Record.NO_PREV_RELATIONSHIP.is( prev );
+        }
+        return false;
+    }
+
     private boolean checkPropertyOwner( PropertyRecord prop, PropertyOwner newOwner )
     {
         if (propertyOwners == null) return false;
@@ -611,10 +711,11 @@ public class ConsistencyRecordProcessor extends RecordStore.Processor implements
     {
         ProgressMonitorFactory.MultiPartBuilder builder = progressFactory.multipleParts( "ConsistencyCheck" );
 
-        List<Runnable> tasks = new ArrayList<Runnable>( 9 );
+        List<Runnable> tasks = new ArrayList<Runnable>( 10 );
 
         tasks.add( storeProcessor( nodes, builder ) );
         tasks.add( storeProcessor( rels, builder ) );
+        if ( groups != null ) tasks.add( storeProcessor( groups, builder ) );
         // free up some heap space that isn't needed anymore
         if ( propertyOwners != null ) propertyOwners.clear(); // TODO: invoke in proper order
         tasks.add( storeProcessor( props, builder ) );
@@ -73,7 +73,14 @@ public interface InconsistencyType
         PROPERTY_NOT_REMOVED_FOR_DELETED_RELATIONSHIP( "relationship was deleted but property was not removed" ),
         REMOVED_RELATIONSHIP_STILL_REFERENCED( "removed relationship record still referenced" ),
         REMOVED_PROPERTY_STILL_REFERENCED( "removed property record still referenced" ),
-        NEXT_DYNAMIC_NOT_REMOVED( "dynamic record removed, but next referenced in chain still in use" );
+        NEXT_DYNAMIC_NOT_REMOVED( "dynamic record removed, but next referenced in chain still in use" ),
+        GROUP_OWNER_INVALID( "invalid owning node reference" ),
+        NEXT_GROUP_NOT_IN_USE( "next relationship group not in use" ),
+        NEXT_GROUP_FOR_OTHER_NODE( "next relationship group owned by other node" ),
+        NEXT_GROUP_TYPE_NOT_HIGHER( "next relationship group does not have a higher relationship type" ),
+        GROUP_RELATIONSHIP_NOT_IN_USE( "first relationship of group not in use" ),
+        GROUP_RELATIONSHIP_OF_OTHER_TYPE( "first relationship of group has other relationship type" ),
+        GROUP_RELATIONSHIP_NO_BACKREF( "first relationship of group is not first in the chain of the owning node" );
         private final String message;
         private final boolean warning;
 
@@ -38,6 +38,7 @@ import org.neo4j.kernel.impl.nioneo.store.PrimitiveRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyBlock;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 
@@ -69,6 +70,12 @@ public interface ConsistencyReport<RECORD extends AbstractBaseRecord, REPORT ext
         void forRelationshipChange( RelationshipRecord oldRelationship, RelationshipRecord newRelationship,
                                     RecordCheck<RelationshipRecord, RelationshipConsistencyReport> checker );
 
+        void forRelationshipGroup( RelationshipGroupRecord group,
+                                   RecordCheck<RelationshipGroupRecord, RelationshipGroupConsistencyReport> checker );
+
+        void forRelationshipGroupChange( RelationshipGroupRecord oldGroup, RelationshipGroupRecord newGroup,
+                                         RecordCheck<RelationshipGroupRecord, RelationshipGroupConsistencyReport> checker );
+
         void forProperty( PropertyRecord property,
                           RecordCheck<PropertyRecord, PropertyConsistencyReport> checker );
 
@@ -266,6 +273,90 @@ public interface ConsistencyReport<RECORD extends AbstractBaseRecord, REPORT ext
         void targetNodeNotUpdated();
     }
 
+    interface RelationshipGroupConsistencyReport
+            extends ConsistencyReport<RelationshipGroupRecord, RelationshipGroupConsistencyReport>
+    {
+        /** The label field has an illegal value. */
+        @Documented
+        void illegalLabel();
+
+        /** The label record is not in use. */
+        @Documented
+        void labelNotInUse( RelationshipTypeRecord label );
+
+        /** The owning node field has an illegal value. */
+        @Documented
+        void illegalOwner();
+
+        /** The owning node is not in use. */
+        @Documented
+        void ownerNotInUse( NodeRecord owner );
+
+        /** This record is the first group of its node, but the owning node does not reference this record. */
+        @Documented
+        void ownerDoesNotReferenceBack( NodeRecord owner );
+
+        /** The next group record is not in use. */
+        @Documented
+        void nextGroupNotInUse( RelationshipGroupRecord next );
+
+        /** The next group record is owned by another node. */
+        @Documented
+        void nextHasOtherOwner( RelationshipGroupRecord next );
+
+        /** The label of the next group record is not higher than the label of this record. */
+        @Documented
+        void invalidTypeSortOrder( RelationshipGroupRecord next );
+
+        /** The first outgoing relationship record is not in use. */
+        @Documented
+        void firstOutgoingRelationshipNotInUse( RelationshipRecord relationship );
+
+        /** The first incoming relationship record is not in use. */
+        @Documented
+        void firstIncomingRelationshipNotInUse( RelationshipRecord relationship );
+
+        /** The first loop relationship record is not in use. */
+        @Documented
+        void firstLoopRelationshipNotInUse( RelationshipRecord relationship );
+
+        /** The first outgoing relationship record has another label than this group. */
+        @Documented
+        void firstOutgoingRelationshipOfOtherType( RelationshipRecord relationship );
+
+        /** The first incoming relationship record has another label than this group. */
+        @Documented
+        void firstIncomingRelationshipOfOtherType( RelationshipRecord relationship );
+
+        /** The first loop relationship record has another label than this group. */
+        @Documented
+        void firstLoopRelationshipOfOtherType( RelationshipRecord relationship );
+
+        /** The first outgoing relationship record does not have the owning node as its source node. */
+        @Documented
+        void firstOutgoingRelationshipForOtherNode( RelationshipRecord relationship );
+
+        /** The first incoming relationship record does not have the owning node as its target node. */
+        @Documented
+        void firstIncomingRelationshipForOtherNode( RelationshipRecord relationship );
+
+        /** The first loop relationship record does not have the owning node as both source and target node. */
+        @Documented
+        void firstLoopRelationshipForOtherNode( RelationshipRecord relationship );
+
+        /** The first outgoing relationship record is not the first in the source chain of the owning node. */
+        @Documented
+        void firstOutgoingRelationshipNotFirstInChain( RelationshipRecord relationship );
+
+        /** The first incoming relationship record is not the first in the target chain of the owning node. */
+        @Documented
+        void firstIncomingRelationshipNotFirstInChain( RelationshipRecord relationship );
+
+        /** The first loop relationship record is not the first in the relationship chain of the owning node. */
+        @Documented
+        void firstLoopRelationshipNotFirstInChain( RelationshipRecord relationship );
+    }
+
     interface PropertyConsistencyReport extends ConsistencyReport<PropertyRecord, PropertyConsistencyReport>
     {
         /** The property key as an invalid value. */
@@ -32,6 +32,7 @@ import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.RecordStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.nioneo.store.WindowPoolStats;
@@ -201,6 +202,13 @@ public class DiffRecordStore<R extends AbstractBaseRecord> implements RecordStor
             processor.processRelationship( (RecordStore<RelationshipRecord>) diffStore, rel );
         }
 
+        @Override
+        public void processRelationshipGroup( RecordStore<RelationshipGroupRecord> store,
+                                              RelationshipGroupRecord group )
+        {
+            processor.processRelationshipGroup( (RecordStore<RelationshipGroupRecord>) diffStore, group );
+        }
+
         @Override
         public void processProperty( RecordStore<PropertyRecord> store, PropertyRecord property )
         {
@@ -33,6 +33,7 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
 import org.neo4j.kernel.impl.nioneo.store.RecordStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.nioneo.store.StoreAccess;
@@ -102,6 +103,27 @@ public class DiffStore extends StoreAccess implements CommandRecordVisitor
         }
     }
 
+    @Override
+    public void visitRelationshipGroup( RelationshipGroupRecord record )
+    {
+        RecordStore<RelationshipGroupRecord> groupStore = getRelationshipGroupStore();
+        if ( groupStore != null )
+        {
+            groupStore.forceUpdateRecord( record );
+        }
+        if ( record.getOwningNode() < 0 )
+        {
+            return;
+        }
+        getNodeStore().markDirty( record.getOwningNode() );
+        if ( record.inUse() )
+        {
+            markRelationship( record.getFirstOut() );
+            markRelationship( record.getFirstIn() );
+            markRelationship( record.getFirstLoop() );
+        }
+    }
+
     private void markRelationship( long rel )
     {
         if ( !Record.NO_NEXT_RELATIONSHIP.is( rel ) ) getRelationshipStore().markDirty( rel );
@@ -24,6 +24,7 @@ import org.neo4j.kernel.impl.nioneo.store.NeoStoreRecord;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.nioneo.store.StoreAccess;
@@ -50,6 +51,13 @@ public class DirectRecordAccess implements DiffRecordAccess
                                                               this );
     }
 
+    @Override
+    public RecordReference<RelationshipGroupRecord> relationshipGroup( long id )
+    {
+        return new DirectRecordReference<RelationshipGroupRecord>(
+                access.getRelationshipGroupStore().forceGetRecord( id ), this );
+    }
+
     @Override
     public RecordReference<PropertyRecord> property( long id )
     {
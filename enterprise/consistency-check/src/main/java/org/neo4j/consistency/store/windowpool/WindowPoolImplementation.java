@@ -21,6 +21,7 @@ package org.neo4j.consistency.store.windowpool;
 
 import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.impl.nioneo.store.DefaultWindowPoolFactory;
+import org.neo4j.kernel.impl.nioneo.store.windowpool.PagedWindowPoolFactory;
 import org.neo4j.kernel.impl.nioneo.store.windowpool.WindowPoolFactory;
 import org.neo4j.kernel.impl.util.StringLogger;
 
@@ -41,6 +42,14 @@ public enum WindowPoolImplementation
         {
             return new ScanResistantWindowPoolFactory( config, logger );
         }
+    },
+    PAGED
+    {
+        @Override
+        public WindowPoolFactory windowPoolFactory( Config config, StringLogger logger )
+        {
+            return new PagedWindowPoolFactory();
+        }
     };
 
     public abstract WindowPoolFactory windowPoolFactory( Config config, StringLogger logger );
@@ -0,0 +1,324 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.consistency.checking;
+
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.neo4j.consistency.report.ConsistencyReport;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
+
+public class RelationshipGroupRecordCheckTest extends
+        RecordCheckTestBase<RelationshipGroupRecord, ConsistencyReport.RelationshipGroupConsistencyReport, RelationshipGroupRecordCheck>
+{
+    public RelationshipGroupRecordCheckTest()
+    {
+        super( new RelationshipGroupRecordCheck(), ConsistencyReport.RelationshipGroupConsistencyReport.class );
+    }
+
+    @Test
+    public void shouldNotReportAnythingForRecordNotInUse() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = notInUse( new RelationshipGroupRecord( 10, 4, 1 ) );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    @Test
+    public void shouldNotReportAnythingForGroupWithConsistentReferences() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = inUse( firstGroup( new RelationshipGroupRecord( 10, 4, 1 ) ) );
+        add( inUse( new RelationshipTypeRecord( 4 ) ) );
+        add( inUse( new RelationshipTypeRecord( 5 ) ) );
+        add( denseNode( 1, group ) );
+        RelationshipGroupRecord next = add( inUse( new RelationshipGroupRecord( 11, 5, 1 ) ) );
+        group.setNext( next.getId() );
+        RelationshipRecord out = add( inUse( new RelationshipRecord( 20, 1, 2, 4 ) ) );
+        RelationshipRecord in = add( inUse( new RelationshipRecord( 21, 2, 1, 4 ) ) );
+        RelationshipRecord loop = add( inUse( new RelationshipRecord( 22, 1, 1, 4 ) ) );
+        group.setFirstOut( out.getId() );
+        group.setFirstIn( in.getId() );
+        group.setFirstLoop( loop.getId() );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    @Test
+    public void shouldReportLabelNotInUse() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = inUse( new RelationshipGroupRecord( 10, 4, 1 ) );
+        RelationshipTypeRecord label = add( notInUse( new RelationshipTypeRecord( 4 ) ) );
+        add( inUse( new NodeRecord( 1, NONE, NONE ) ) );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verify( report ).labelNotInUse( label );
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    @Test
+    public void shouldReportIllegalOwner() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = inUse( new RelationshipGroupRecord( 10, 4, NONE ) );
+        add( inUse( new RelationshipTypeRecord( 4 ) ) );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verify( report ).illegalOwner();
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    @Test
+    public void shouldReportOwnerNotInUse() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = inUse( new RelationshipGroupRecord( 10, 4, 1 ) );
+        add( inUse( new RelationshipTypeRecord( 4 ) ) );
+        NodeRecord node = add( notInUse( new NodeRecord( 1, NONE, NONE ) ) );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verify( report ).ownerNotInUse( node );
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    @Test
+    public void shouldReportOwnerNotReferencingBackToFirstGroup() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = inUse( firstGroup( new RelationshipGroupRecord( 10, 4, 1 ) ) );
+        add( inUse( new RelationshipTypeRecord( 4 ) ) );
+        NodeRecord node = add( inUse( new NodeRecord( 1, NONE, NONE ) ) );
+        node.setFirstGroup( 11 );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verify( report ).ownerDoesNotReferenceBack( node );
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    @Test
+    public void shouldReportNextGroupNotInUse() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = inUse( new RelationshipGroupRecord( 10, 4, 1 ) );
+        add( inUse( new RelationshipTypeRecord( 4 ) ) );
+        add( inUse( new NodeRecord( 1, NONE, NONE ) ) );
+        RelationshipGroupRecord next = add( notInUse( new RelationshipGroupRecord( 11, 5, 1 ) ) );
+        group.setNext( next.getId() );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verify( report ).nextGroupNotInUse( next );
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    @Test
+    public void shouldReportNextGroupOfOtherNode() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = inUse( new RelationshipGroupRecord( 10, 4, 1 ) );
+        add( inUse( new RelationshipTypeRecord( 4 ) ) );
+        add( inUse( new NodeRecord( 1, NONE, NONE ) ) );
+        RelationshipGroupRecord next = add( inUse( new RelationshipGroupRecord( 11, 5, 2 ) ) );
+        group.setNext( next.getId() );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verify( report ).nextHasOtherOwner( next );
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    @Test
+    public void shouldReportNextGroupOfLowerType() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = inUse( new RelationshipGroupRecord( 10, 4, 1 ) );
+        add( inUse( new RelationshipTypeRecord( 4 ) ) );
+        add( inUse( new NodeRecord( 1, NONE, NONE ) ) );
+        RelationshipGroupRecord next = add( inUse( new RelationshipGroupRecord( 11, 3, 1 ) ) );
+        group.setNext( next.getId() );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verify( report ).invalidTypeSortOrder( next );
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    @Test
+    public void shouldReportFirstRelationshipsNotInUse() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = inUse( new RelationshipGroupRecord( 10, 4, 1 ) );
+        add( inUse( new RelationshipTypeRecord( 4 ) ) );
+        add( inUse( new NodeRecord( 1, NONE, NONE ) ) );
+        RelationshipRecord out = add( notInUse( new RelationshipRecord( 20, 1, 2, 4 ) ) );
+        RelationshipRecord in = add( notInUse( new RelationshipRecord( 21, 2, 1, 4 ) ) );
+        RelationshipRecord loop = add( notInUse( new RelationshipRecord( 22, 1, 1, 4 ) ) );
+        group.setFirstOut( out.getId() );
+        group.setFirstIn( in.getId() );
+        group.setFirstLoop( loop.getId() );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verify( report ).firstOutgoingRelationshipNotInUse( out );
+        verify( report ).firstIncomingRelationshipNotInUse( in );
+        verify( report ).firstLoopRelationshipNotInUse( loop );
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    @Test
+    public void shouldReportFirstRelationshipsOfOtherType() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = inUse( new RelationshipGroupRecord( 10, 4, 1 ) );
+        add( inUse( new RelationshipTypeRecord( 4 ) ) );
+        add( inUse( new NodeRecord( 1, NONE, NONE ) ) );
+        RelationshipRecord out = add( inUse( new RelationshipRecord( 20, 1, 2, 5 ) ) );
+        RelationshipRecord in = add( inUse( new RelationshipRecord( 21, 2, 1, 5 ) ) );
+        RelationshipRecord loop = add( inUse( new RelationshipRecord( 22, 1, 1, 5 ) ) );
+        group.setFirstOut( out.getId() );
+        group.setFirstIn( in.getId() );
+        group.setFirstLoop( loop.getId() );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verify( report ).firstOutgoingRelationshipOfOtherType( out );
+        verify( report ).firstIncomingRelationshipOfOtherType( in );
+        verify( report ).firstLoopRelationshipOfOtherType( loop );
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    @Test
+    public void shouldReportFirstRelationshipsNotConnectedToOwnerInTheirDirection() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = inUse( new RelationshipGroupRecord( 10, 4, 1 ) );
+        add( inUse( new RelationshipTypeRecord( 4 ) ) );
+        add( inUse( new NodeRecord( 1, NONE, NONE ) ) );
+        RelationshipRecord out = add( inUse( new RelationshipRecord( 20, 2, 1, 4 ) ) );
+        RelationshipRecord in = add( inUse( new RelationshipRecord( 21, 2, 3, 4 ) ) );
+        RelationshipRecord loop = add( inUse( new RelationshipRecord( 22, 1, 2, 4 ) ) );
+        group.setFirstOut( out.getId() );
+        group.setFirstIn( in.getId() );
+        group.setFirstLoop( loop.getId() );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verify( report ).firstOutgoingRelationshipForOtherNode( out );
+        verify( report ).firstIncomingRelationshipForOtherNode( in );
+        verify( report ).firstLoopRelationshipForOtherNode( loop );
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    @Test
+    public void shouldReportFirstRelationshipsNotFirstInTheChainsOfOwner() throws Exception
+    {
+        // given
+        RelationshipGroupRecord group = inUse( new RelationshipGroupRecord( 10, 4, 1 ) );
+        add( inUse( new RelationshipTypeRecord( 4 ) ) );
+        add( inUse( new NodeRecord( 1, NONE, NONE ) ) );
+        RelationshipRecord out = add( inUse( new RelationshipRecord( 20, 1, 2, 4 ) ) );
+        out.setFirstPrevRel( 30 );
+        RelationshipRecord in = add( inUse( new RelationshipRecord( 21, 2, 1, 4 ) ) );
+        in.setSecondPrevRel( 31 );
+        RelationshipRecord loop = add( inUse( new RelationshipRecord( 22, 1, 1, 4 ) ) );
+        loop.setFirstPrevRel( 32 );
+        group.setFirstOut( out.getId() );
+        group.setFirstIn( in.getId() );
+        group.setFirstLoop( loop.getId() );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = check( group );
+
+        // then
+        verify( report ).firstOutgoingRelationshipNotFirstInChain( out );
+        verify( report ).firstIncomingRelationshipNotFirstInChain( in );
+        verify( report ).firstLoopRelationshipNotFirstInChain( loop );
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    // change checking
+
+    @Test
+    public void shouldReportProblemsWithTheNewStateWhenCheckingChanges() throws Exception
+    {
+        // given
+        RelationshipGroupRecord oldRecord = notInUse( new RelationshipGroupRecord( 10, 4, 1 ) );
+        RelationshipGroupRecord newRecord = inUse( new RelationshipGroupRecord( 10, 4, 1 ) );
+        add( inUse( new RelationshipTypeRecord( 4 ) ) );
+        NodeRecord node = add( notInUse( new NodeRecord( 1, NONE, NONE ) ) );
+
+        // when
+        ConsistencyReport.RelationshipGroupConsistencyReport report = checkChange( oldRecord, newRecord );
+
+        // then
+        verify( report ).ownerNotInUse( node );
+        verifyOnlyReferenceDispatch( report );
+    }
+
+    private static RelationshipGroupRecord firstGroup( RelationshipGroupRecord group )
+    {
+        group.setFirst( true );
+        return group;
+    }
+
+    private static NodeRecord denseNode( long id, RelationshipGroupRecord firstGroup )
+    {
+        NodeRecord node = inUse( new NodeRecord( id, NONE, NONE ) );
+        node.setFirstGroup( firstGroup.getId() );
+        return node;
+    }
+}
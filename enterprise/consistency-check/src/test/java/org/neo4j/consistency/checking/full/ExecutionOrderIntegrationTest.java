@@ -61,6 +61,7 @@ import org.neo4j.kernel.impl.nioneo.store.NeoStoreRecord;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.nioneo.store.StoreAccess;
@@ -418,6 +419,12 @@ public class ExecutionOrderIntegrationTest
             return logging( access.relationship( id ) );
         }
 
+        @Override
+        public RecordReference<RelationshipGroupRecord> relationshipGroup( long id )
+        {
+            return logging( access.relationshipGroup( id ) );
+        }
+
         @Override
         public RecordReference<PropertyRecord> property( long id )
         {
@@ -40,6 +40,7 @@ import org.neo4j.kernel.impl.nioneo.store.DynamicRecord;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.RecordStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.StoreAccess;
 
@@ -47,6 +48,7 @@ import org.neo4j.kernel.impl.nioneo.store.StoreAccess;
 @Suite.SuiteClasses({
         MultiPassStoreTest.Nodes.class,
         MultiPassStoreTest.Relationships.class,
+        MultiPassStoreTest.Groups.class,
         MultiPassStoreTest.Properties.class,
         MultiPassStoreTest.Strings.class,
         MultiPassStoreTest.Arrays.class
@@ -157,6 +159,7 @@ public abstract class MultiPassStoreTest
             filter.property( id );
             filter.string( id );
             filter.array( id );
+            filter.relationshipGroup( id );
         }
     }
 
@@ -181,6 +184,32 @@ public abstract class MultiPassStoreTest
             filter.property( id );
             filter.string( id );
             filter.array( id );
+            filter.relationshipGroup( id );
+        }
+    }
+
+    @RunWith(JUnit4.class)
+    public static class Groups extends MultiPassStoreTest
+    {
+        @Override
+        protected MultiPassStore multiPassStore()
+        {
+            return MultiPassStore.GROUPS;
+        }
+
+        @Override
+        protected RecordReference<RelationshipGroupRecord> record( DiffRecordAccess filter, long id )
+        {
+            return filter.relationshipGroup( id );
+        }
+
+        protected void otherRecords( DiffRecordAccess filter, long id )
+        {
+            filter.node( id );
+            filter.relationship( id );
+            filter.property( id );
+            filter.string( id );
+            filter.array( id );
         }
     }
 
@@ -205,6 +234,7 @@ public abstract class MultiPassStoreTest
             filter.relationship( id );
             filter.string( id );
             filter.array( id );
+            filter.relationshipGroup( id );
         }
     }
 
@@ -229,6 +259,7 @@ public abstract class MultiPassStoreTest
             filter.relationship( id );
             filter.property( id );
             filter.array( id );
+            filter.relationshipGroup( id );
         }
     }
 
@@ -253,6 +284,7 @@ public abstract class MultiPassStoreTest
             filter.relationship( id );
             filter.property( id );
             filter.string( id );
+            filter.relationshipGroup( id );
         }
     }
 }
@@ -41,6 +41,7 @@ import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 
@@ -172,6 +173,7 @@ public class RecordAccessStub implements RecordAccess, DiffRecordAccess
 
     private final Map<Long, Delta<NodeRecord>> nodes = new HashMap<Long, Delta<NodeRecord>>();
     private final Map<Long, Delta<RelationshipRecord>> relationships = new HashMap<Long, Delta<RelationshipRecord>>();
+    private final Map<Long, Delta<RelationshipGroupRecord>> groups = new HashMap<Long, Delta<RelationshipGroupRecord>>();
     private final Map<Long, Delta<PropertyRecord>> properties = new HashMap<Long, Delta<PropertyRecord>>();
     private final Map<Long, Delta<DynamicRecord>> strings = new HashMap<Long, Delta<DynamicRecord>>();
     private final Map<Long, Delta<DynamicRecord>> arrays = new HashMap<Long, Delta<DynamicRecord>>();
@@ -269,6 +271,10 @@ public class RecordAccessStub implements RecordAccess, DiffRecordAccess
         {
             add( relationships, (RelationshipRecord) oldRecord, (RelationshipRecord) newRecord );
         }
+        else if ( newRecord instanceof RelationshipGroupRecord )
+        {
+            add( groups, (RelationshipGroupRecord) oldRecord, (RelationshipGroupRecord) newRecord );
+        }
         else if ( newRecord instanceof PropertyRecord )
         {
             add( properties, (PropertyRecord) oldRecord, (PropertyRecord) newRecord );
@@ -318,6 +324,10 @@ public class RecordAccessStub implements RecordAccess, DiffRecordAccess
         {
             add( relationships, (RelationshipRecord) record );
         }
+        else if ( record instanceof RelationshipGroupRecord )
+        {
+            add( groups, (RelationshipGroupRecord) record );
+        }
         else if ( record instanceof PropertyRecord )
         {
             add( properties, (PropertyRecord) record );
@@ -390,6 +400,12 @@ public class RecordAccessStub implements RecordAccess, DiffRecordAccess
         return reference( relationships, id, Version.LATEST );
     }
 
+    @Override
+    public RecordReference<RelationshipGroupRecord> relationshipGroup( long id )
+    {
+        return reference( groups, id, Version.LATEST );
+    }
+
     @Override
     public RecordReference<PropertyRecord> property( long id )
     {
@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.consistency.store.windowpool;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.neo4j.consistency.store.paging.Cart;
+import org.neo4j.kernel.impl.nioneo.store.OperationType;
+import org.neo4j.kernel.impl.nioneo.store.PersistenceWindow;
+import org.neo4j.kernel.impl.nioneo.store.PersistenceWindowPool;
+import org.neo4j.kernel.impl.nioneo.store.WindowPoolStats;
+import org.neo4j.kernel.impl.nioneo.store.windowpool.PagedWindowPool;
+import org.neo4j.kernel.impl.nioneo.store.windowpool.WindowPool;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Measures how many random record reads per second the different {@link WindowPool window pools} manage
+ * when the store file is larger than the memory they are given.
+ */
+@Ignore( "Not a proper test really, merely a throughput measurement" )
+public class WindowPoolComparisonBenchmark
+{
+    private static final int recordSize = 33;
+    private static final int pageSize = 1024 * 8;
+    private static final int scanResistantPageSize = 1024 * 1024;
+    private static final long fileSize = 1024 * 1024 * 256;
+    private static final int threads = 8;
+    private static final long secondsPerRun = 20;
+
+    private File file;
+    private RandomAccessFile randomAccessFile;
+
+    @Before
+    public void createFile() throws Exception
+    {
+        file = new File( "target/window-pool-benchmark" );
+        file.delete();
+        randomAccessFile = new RandomAccessFile( file, "rw" );
+        FileChannel channel = randomAccessFile.getChannel();
+        channel.write( ByteBuffer.wrap( new byte[1] ), fileSize - 1 );
+        channel.force( true );
+    }
+
+    @After
+    public void deleteFile() throws Exception
+    {
+        randomAccessFile.close();
+        file.delete();
+    }
+
+    @Test
+    public void compareRandomReadsWithAQuarterOfTheFileInMemory() throws Exception
+    {
+        compareRandomReads( fileSize / 4 );
+    }
+
+    @Test
+    public void compareRandomReadsWithAllOfTheFileInMemory() throws Exception
+    {
+        compareRandomReads( fileSize );
+    }
+
+    private void compareRandomReads( long memory ) throws Exception
+    {
+        FileChannel channel = randomAccessFile.getChannel();
+        run( "bricks", new PersistenceWindowPool( file, recordSize, channel, memory, true, true,
+                StringLogger.DEV_NULL ) );
+        run( "paged", new PagedWindowPool( file, recordSize, pageSize, memory, channel, true,
+                StringLogger.DEV_NULL ) );
+        // the scan resistant pool is only used by the single threaded consistency checker, so it gets serialized
+        run( "scan resistant", new SynchronizedWindowPool( new ScanResistantWindowPool( file, recordSize,
+                scanResistantPageSize, new FileMapper( channel ), new Cart( (int) (memory / scanResistantPageSize) ), Integer.MAX_VALUE,
+                new MappingStatisticsListener()
+                {
+                    @Override
+                    public void onStatistics( File storeFileName, int acquiredPages, int mappedPages,
+                                              long samplePeriod )
+                    {
+                    }
+                } ) ) );
+    }
+
+    private void run( String name, final WindowPool pool ) throws Exception
+    {
+        final long records = fileSize / recordSize;
+        final long endTime = System.currentTimeMillis() + SECONDS.toMillis( secondsPerRun );
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for ( int i = 0; i < threads; i++ )
+        {
+            final int seed = i;
+            futures.add( executor.submit( new Callable<Long>()
+            {
+                @Override
+                public Long call() throws Exception
+                {
+                    Random random = new Random( seed );
+                    long reads = 0;
+                    while ( System.currentTimeMillis() < endTime )
+                    {
+                        long id = (long) (random.nextDouble() * records);
+                        PersistenceWindow window = pool.acquire( id, OperationType.READ );
+                        try
+                        {
+                            window.getOffsettedBuffer( id ).getLong();
+                        }
+                        finally
+                        {
+                            pool.release( window );
+                        }
+                        reads++;
+                    }
+                    return reads;
+                }
+            } ) );
+        }
+        long total = 0;
+        for ( Future<Long> future : futures )
+        {
+            total += future.get();
+        }
+        executor.shutdown();
+        System.out.println( name + ": " + total / secondsPerRun + " reads/s, " + pool.getStats() );
+        pool.close();
+    }
+
+    private static class SynchronizedWindowPool implements WindowPool
+    {
+        private final WindowPool delegate;
+
+        SynchronizedWindowPool( WindowPool delegate )
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized PersistenceWindow acquire( long position, OperationType operationType )
+        {
+            return delegate.acquire( position, operationType );
+        }
+
+        @Override
+        public synchronized void release( PersistenceWindow window )
+        {
+            delegate.release( window );
+        }
+
+        @Override
+        public synchronized void flushAll()
+        {
+            delegate.flushAll();
+        }
+
+        @Override
+        public synchronized void close()
+        {
+            delegate.close();
+        }
+
+        @Override
+        public synchronized WindowPoolStats getStats()
+        {
+            return delegate.getStats();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.perftest.enterprise.cache;
+
+import static java.util.Arrays.asList;
+import static org.neo4j.perftest.enterprise.util.Configuration.SYSTEM_PROPERTIES;
+import static org.neo4j.perftest.enterprise.util.Configuration.settingsOf;
+import static org.neo4j.perftest.enterprise.util.Predicate.integerRange;
+import static org.neo4j.perftest.enterprise.util.Setting.adaptSetting;
+import static org.neo4j.perftest.enterprise.util.Setting.enumSetting;
+import static org.neo4j.perftest.enterprise.util.Setting.integerSetting;
+import static org.neo4j.perftest.enterprise.util.Setting.listSetting;
+import static org.neo4j.perftest.enterprise.util.Setting.restrictSetting;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.neo4j.kernel.impl.cache.ClockCache;
+import org.neo4j.kernel.impl.cache.EntityWithSizeObject;
+import org.neo4j.kernel.impl.cache.GCResistantCache;
+import org.neo4j.kernel.impl.cache.LruCache;
+import org.neo4j.kernel.impl.cache.SegmentedClockCache;
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.perftest.enterprise.util.ConcurrentThroughput;
+import org.neo4j.perftest.enterprise.util.Configuration;
+import org.neo4j.perftest.enterprise.util.Conversion;
+import org.neo4j.perftest.enterprise.util.Parameters;
+import org.neo4j.perftest.enterprise.util.Setting;
+
+/**
+ * Measures read mostly throughput of the entity caches from a growing number
+ * of threads. Every operation looks an entity up and puts it in the cache on a
+ * miss, so the key space relative to the cache size decides the hit ratio.
+ */
+public class CacheBenchmark
+{
+    enum CacheType
+    {
+        lru
+        {
+            @Override
+            BenchmarkedCache create( int maxEntities )
+            {
+                final LruCache<Long, Entity> cache = new LruCache<Long, Entity>( "lru", maxEntities );
+                return new BenchmarkedCache()
+                {
+                    @Override
+                    Entity get( long id )
+                    {
+                        return cache.get( id );
+                    }
+
+                    @Override
+                    void put( Entity entity )
+                    {
+                        cache.put( entity.getId(), entity );
+                    }
+                };
+            }
+        },
+        clock
+        {
+            @Override
+            BenchmarkedCache create( int maxEntities )
+            {
+                final ClockCache<Long, Entity> cache = new ClockCache<Long, Entity>( "clock", maxEntities );
+                return new BenchmarkedCache()
+                {
+                    @Override
+                    Entity get( long id )
+                    {
+                        return cache.get( id );
+                    }
+
+                    @Override
+                    void put( Entity entity )
+                    {
+                        cache.put( entity.getId(), entity );
+                    }
+                };
+            }
+        },
+        gcr
+        {
+            @Override
+            BenchmarkedCache create( int maxEntities )
+            {
+                final GCResistantCache<Entity> cache = new GCResistantCache<Entity>(
+                        (long) maxEntities * Entity.SIZE, 1.0f, Long.MAX_VALUE, "gcr", StringLogger.DEV_NULL );
+                return new BenchmarkedCache()
+                {
+                    @Override
+                    Entity get( long id )
+                    {
+                        return cache.get( id );
+                    }
+
+                    @Override
+                    void put( Entity entity )
+                    {
+                        cache.put( entity );
+                    }
+                };
+            }
+        },
+        segmented_clock
+        {
+            @Override
+            BenchmarkedCache create( int maxEntities )
+            {
+                final SegmentedClockCache<Entity> cache = new SegmentedClockCache<Entity>(
+                        "segmented_clock", maxEntities, 64 );
+                return new BenchmarkedCache()
+                {
+                    @Override
+                    Entity get( long id )
+                    {
+                        return cache.get( id );
+                    }
+
+                    @Override
+                    void put( Entity entity )
+                    {
+                        cache.put( entity );
+                    }
+                };
+            }
+        };
+
+        abstract BenchmarkedCache create( int maxEntities );
+    }
+
+    static final Setting<List<CacheType>> cache_types =
+            listSetting( enumSetting( CacheType.class, "cache_types" ), asList( CacheType.values() ) );
+    static final Setting<List<Long>> thread_counts =
+            listSetting( integerSetting( "thread_counts", 1 ), asList( 1L, 2L, 4L, 8L, 16L, 32L ) );
+    static final Setting<Integer> cache_size = adaptSetting(
+            restrictSetting( integerSetting( "cache_size", 100000 ), integerRange( 1, Integer.MAX_VALUE ) ),
+            Conversion.TO_INTEGER );
+    static final Setting<Integer> key_space = adaptSetting(
+            restrictSetting( integerSetting( "key_space", 125000 ), integerRange( 1, Integer.MAX_VALUE ) ),
+            Conversion.TO_INTEGER );
+    static final Setting<Long> operations_per_thread = integerSetting( "operations_per_thread", 1000000 );
+    static final Setting<Long> warmup_operations = integerSetting( "warmup_operations", 500000 );
+
+    /**
+     * Sample execution:
+     * java -cp ... org.neo4j.perftest.enterprise.cache.CacheBenchmark
+     * -cache_types lru,segmented_clock
+     * -thread_counts 1,8,32
+     * -cache_size 100000
+     * -key_space 125000
+     */
+    public static void main( String... args ) throws Exception
+    {
+        run( Parameters.configuration( SYSTEM_PROPERTIES, settingsOf( CacheBenchmark.class ) )
+                .convert( args ) );
+    }
+
+    private static void run( Configuration configuration ) throws Exception
+    {
+        final int keys = configuration.get( key_space );
+        final Entity[] entities = new Entity[keys];
+        for ( int i = 0; i < keys; i++ )
+        {
+            entities[i] = new Entity( i );
+        }
+        long operations = configuration.get( operations_per_thread );
+
+        System.out.println( "cache\tthreads\tlookups/s\thit ratio" );
+        for ( CacheType type : configuration.get( cache_types ) )
+        {
+            for ( long threads : configuration.get( thread_counts ) )
+            {
+                final BenchmarkedCache cache = type.create( configuration.get( cache_size ) );
+                final Random[] randoms = new Random[(int) threads];
+                final long[] hits = new long[(int) threads];
+                for ( int i = 0; i < randoms.length; i++ )
+                {
+                    randoms[i] = new Random( i );
+                }
+                ConcurrentThroughput.Operation lookup = new ConcurrentThroughput.Operation()
+                {
+                    @Override
+                    public void perform( int thread, long iteration ) throws Exception
+                    {
+                        Entity entity = entities[randoms[thread].nextInt( keys )];
+                        if ( cache.get( entity.getId() ) == null )
+                        {
+                            cache.put( entity );
+                        }
+                        else
+                        {
+                            hits[thread]++;
+                        }
+                    }
+                };
+                ConcurrentThroughput.measure( (int) threads, configuration.get( warmup_operations ), lookup );
+                Arrays.fill( hits, 0 );
+                double throughput = ConcurrentThroughput.measure( (int) threads, operations, lookup );
+                long totalHits = 0;
+                for ( long hit : hits )
+                {
+                    totalHits += hit;
+                }
+                System.out.println( String.format( "%s\t%d\t%.0f\t%.2f", type, threads, throughput,
+                        totalHits / (double) (threads * operations) ) );
+            }
+        }
+    }
+
+    private static abstract class BenchmarkedCache
+    {
+        abstract Entity get( long id );
+
+        abstract void put( Entity entity );
+    }
+
+    private static class Entity implements EntityWithSizeObject
+    {
+        static final int SIZE = 64;
+
+        private final long id;
+        private volatile int registeredSize;
+
+        Entity( long id )
+        {
+            this.id = id;
+        }
+
+        @Override
+        public long getId()
+        {
+            return id;
+        }
+
+        @Override
+        public int sizeOfObjectInBytesIncludingOverhead()
+        {
+            return SIZE;
+        }
+
+        @Override
+        public void setRegisteredSize( int size )
+        {
+            this.registeredSize = size;
+        }
+
+        @Override
+        public int getRegisteredSize()
+        {
+            return registeredSize;
+        }
+    }
+}
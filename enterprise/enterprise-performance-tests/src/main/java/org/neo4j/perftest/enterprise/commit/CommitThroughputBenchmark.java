@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.perftest.enterprise.commit;
+
+import static java.util.Arrays.asList;
+import static org.neo4j.perftest.enterprise.util.Configuration.SYSTEM_PROPERTIES;
+import static org.neo4j.perftest.enterprise.util.Configuration.settingsOf;
+import static org.neo4j.perftest.enterprise.util.Setting.integerSetting;
+import static org.neo4j.perftest.enterprise.util.Setting.listSetting;
+import static org.neo4j.perftest.enterprise.util.Setting.stringSetting;
+
+import java.io.File;
+import java.util.List;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+import org.neo4j.graphdb.factory.GraphDatabaseSetting;
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
+import org.neo4j.kernel.impl.util.FileUtils;
+import org.neo4j.perftest.enterprise.util.ConcurrentThroughput;
+import org.neo4j.perftest.enterprise.util.Configuration;
+import org.neo4j.perftest.enterprise.util.Parameters;
+import org.neo4j.perftest.enterprise.util.Setting;
+
+/**
+ * Measures how many small, forced transactions per second concurrent writers
+ * can commit, with and without {@link GraphDatabaseSettings#group_commit}.
+ */
+public class CommitThroughputBenchmark
+{
+    static final Setting<String> store_dir = stringSetting( "store_dir", "target/commit-throughput" );
+    static final Setting<List<Long>> thread_counts =
+            listSetting( integerSetting( "thread_counts", 1 ), asList( 1L, 2L, 4L, 8L, 16L, 32L, 64L ) );
+    static final Setting<Long> transactions_per_thread = integerSetting( "transactions_per_thread", 200 );
+    static final Setting<Long> warmup_transactions = integerSetting( "warmup_transactions", 50 );
+
+    /**
+     * Sample execution:
+     * java -cp ... org.neo4j.perftest.enterprise.commit.CommitThroughputBenchmark
+     * -store_dir /tmp/commit-throughput
+     * -thread_counts 1,4,16,64
+     * -transactions_per_thread 500
+     */
+    public static void main( String... args ) throws Exception
+    {
+        run( Parameters.configuration( SYSTEM_PROPERTIES, settingsOf( CommitThroughputBenchmark.class ) )
+                .convert( args ) );
+    }
+
+    private static void run( Configuration configuration ) throws Exception
+    {
+        File storeDir = new File( configuration.get( store_dir ) );
+
+        System.out.println( "group_commit\tthreads\tcommits/s" );
+        for ( String groupCommit : asList( GraphDatabaseSetting.FALSE, GraphDatabaseSetting.TRUE ) )
+        {
+            for ( long threads : configuration.get( thread_counts ) )
+            {
+                FileUtils.deleteRecursively( storeDir );
+                final GraphDatabaseService db = new GraphDatabaseFactory()
+                        .newEmbeddedDatabaseBuilder( storeDir.getAbsolutePath() )
+                        .setConfig( GraphDatabaseSettings.group_commit, groupCommit )
+                        .newGraphDatabase();
+                try
+                {
+                    ConcurrentThroughput.Operation commit = new ConcurrentThroughput.Operation()
+                    {
+                        @Override
+                        public void perform( int thread, long iteration ) throws Exception
+                        {
+                            Transaction tx = db.beginTx();
+                            try
+                            {
+                                Node node = db.createNode();
+                                node.setProperty( "thread", thread );
+                                tx.success();
+                            }
+                            finally
+                            {
+                                tx.finish();
+                            }
+                        }
+                    };
+                    ConcurrentThroughput.measure( (int) threads, configuration.get( warmup_transactions ), commit );
+                    double throughput = ConcurrentThroughput.measure( (int) threads,
+                            configuration.get( transactions_per_thread ), commit );
+                    System.out.println( String.format( "%s\t%d\t%.0f", groupCommit, threads, throughput ) );
+                }
+                finally
+                {
+                    db.shutdown();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.perftest.enterprise.lock;
+
+import static java.util.Arrays.asList;
+import static org.neo4j.perftest.enterprise.util.Configuration.SYSTEM_PROPERTIES;
+import static org.neo4j.perftest.enterprise.util.Configuration.settingsOf;
+import static org.neo4j.perftest.enterprise.util.Predicate.integerRange;
+import static org.neo4j.perftest.enterprise.util.Setting.adaptSetting;
+import static org.neo4j.perftest.enterprise.util.Setting.integerSetting;
+import static org.neo4j.perftest.enterprise.util.Setting.listSetting;
+import static org.neo4j.perftest.enterprise.util.Setting.restrictSetting;
+
+import java.util.List;
+import java.util.Random;
+
+import org.neo4j.kernel.impl.transaction.LockManager;
+import org.neo4j.kernel.impl.transaction.LockManagerImpl;
+import org.neo4j.kernel.impl.transaction.RagManager;
+import org.neo4j.perftest.enterprise.util.ConcurrentThroughput;
+import org.neo4j.perftest.enterprise.util.Configuration;
+import org.neo4j.perftest.enterprise.util.Conversion;
+import org.neo4j.perftest.enterprise.util.NullTransactionManager;
+import org.neo4j.perftest.enterprise.util.Parameters;
+import org.neo4j.perftest.enterprise.util.Setting;
+
+/**
+ * Measures contended acquire/release throughput of {@link LockManagerImpl} for
+ * different numbers of lock table stripes, where a single stripe is the
+ * globally synchronized lock table.
+ */
+public class LockManagerBenchmark
+{
+    static final Setting<List<Long>> thread_counts =
+            listSetting( integerSetting( "thread_counts", 1 ), asList( 1L, 2L, 4L, 8L, 16L, 32L ) );
+    static final Setting<List<Long>> lock_table_stripes =
+            listSetting( integerSetting( "lock_table_stripes", 1 ), asList( 1L, 64L, 1024L ) );
+    static final Setting<Integer> resource_count = adaptSetting(
+            restrictSetting( integerSetting( "resource_count", 100000 ), integerRange( 1, Integer.MAX_VALUE ) ),
+            Conversion.TO_INTEGER );
+    static final Setting<Long> operations_per_thread = integerSetting( "operations_per_thread", 500000 );
+    static final Setting<Long> write_percentage =
+            restrictSetting( integerSetting( "write_percentage", 50 ), integerRange( 0, 100 ) );
+    static final Setting<Long> warmup_operations = integerSetting( "warmup_operations", 200000 );
+
+    /**
+     * Sample execution:
+     * java -cp ... org.neo4j.perftest.enterprise.lock.LockManagerBenchmark
+     * -thread_counts 1,8,32
+     * -lock_table_stripes 1,256
+     * -resource_count 100000
+     * -write_percentage 50
+     */
+    public static void main( String... args ) throws Exception
+    {
+        run( Parameters.configuration( SYSTEM_PROPERTIES, settingsOf( LockManagerBenchmark.class ) )
+                .convert( args ) );
+    }
+
+    private static void run( Configuration configuration ) throws Exception
+    {
+        final Long[] resources = new Long[configuration.get( resource_count )];
+        for ( int i = 0; i < resources.length; i++ )
+        {
+            resources[i] = (long) i;
+        }
+        final int writePercentage = configuration.get( write_percentage ).intValue();
+        long operations = configuration.get( operations_per_thread );
+
+        System.out.println( "stripes\tthreads\tacquire+release/s" );
+        for ( long stripes : configuration.get( lock_table_stripes ) )
+        {
+            for ( long threads : configuration.get( thread_counts ) )
+            {
+                final LockManager lockManager =
+                        new LockManagerImpl( new RagManager( new NullTransactionManager() ), (int) stripes );
+                final Random[] randoms = new Random[(int) threads];
+                for ( int i = 0; i < randoms.length; i++ )
+                {
+                    randoms[i] = new Random( i );
+                }
+                ConcurrentThroughput.Operation lockAndRelease = new ConcurrentThroughput.Operation()
+                {
+                    @Override
+                    public void perform( int thread, long iteration ) throws Exception
+                    {
+                        Random random = randoms[thread];
+                        Long resource = resources[random.nextInt( resources.length )];
+                        if ( random.nextInt( 100 ) < writePercentage )
+                        {
+                            lockManager.getWriteLock( resource, null );
+                            lockManager.releaseWriteLock( resource, null );
+                        }
+                        else
+                        {
+                            lockManager.getReadLock( resource, null );
+                            lockManager.releaseReadLock( resource, null );
+                        }
+                    }
+                };
+                ConcurrentThroughput.measure( (int) threads, configuration.get( warmup_operations ), lockAndRelease );
+                double throughput = ConcurrentThroughput.measure( (int) threads, operations, lockAndRelease );
+                System.out.println( String.format( "%d\t%d\t%.0f", stripes, threads, throughput ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.perftest.enterprise.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs an operation from a number of threads at once and measures the combined
+ * throughput. All threads are released at the same time, and the measurement
+ * ends when the last thread has completed its operations.
+ */
+public class ConcurrentThroughput
+{
+    public interface Operation
+    {
+        void perform( int thread, long iteration ) throws Exception;
+    }
+
+    /**
+     * @return the number of operations per second over all threads.
+     */
+    public static double measure( int threads, final long operationsPerThread, final Operation operation )
+            throws Exception
+    {
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] workers = new Thread[threads];
+        for ( int i = 0; i < threads; i++ )
+        {
+            final int thread = i;
+            workers[i] = new Thread( "throughput-worker-" + i )
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for ( long iteration = 0; iteration < operationsPerThread; iteration++ )
+                        {
+                            operation.perform( thread, iteration );
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure.compareAndSet( null, e );
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        for ( Thread worker : workers )
+        {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - startTime;
+        if ( failure.get() != null )
+        {
+            throw new RuntimeException( "Benchmark operation failed", failure.get() );
+        }
+        return (threads * operationsPerThread) / (elapsed / 1000000000.0);
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.perftest.enterprise.util;
+
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+
+/**
+ * A transaction manager without transactions, for benchmarking kernel components
+ * that need a {@link TransactionManager} outside of a running database. Locks
+ * taken through it are owned by the thread taking them.
+ */
+public class NullTransactionManager implements TransactionManager
+{
+    @Override
+    public void begin()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void commit()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getStatus()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Transaction getTransaction()
+    {
+        return null;
+    }
+
+    @Override
+    public void resume( Transaction tx )
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void rollback()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setRollbackOnly()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setTransactionTimeout( int seconds )
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Transaction suspend()
+    {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -21,6 +21,7 @@ package org.neo4j.kernel.ha.lock;
 
 import java.net.URI;
 
+import org.neo4j.graphdb.factory.GraphDatabaseSettings;
 import org.neo4j.kernel.configuration.Config;
 import org.neo4j.kernel.ha.DelegateInvocationHandler;
 import org.neo4j.kernel.ha.HaSettings;
@@ -45,13 +46,14 @@ public class LockManagerModeSwitcher extends AbstractModeSwitcher<LockManager>
     private final RequestContextFactory requestContextFactory;
     private final InstanceAccessGuard switchBlock;
     private final Config config;
+    private final SlaveLockStatistics statistics;
 
     public LockManagerModeSwitcher( HighAvailabilityMemberStateMachine stateMachine,
                                     DelegateInvocationHandler<LockManager> delegate,
                                     AbstractTransactionManager txManager,
                                     TxHook txHook, HaXaDataSourceManager xaDsm, Master master,
                                     RequestContextFactory requestContextFactory, InstanceAccessGuard switchBlock,
-                                    Config config )
+                                    Config config, SlaveLockStatistics statistics )
     {
         super( stateMachine, delegate );
         this.txManager = txManager;
@@ -61,12 +63,14 @@ public class LockManagerModeSwitcher extends AbstractModeSwitcher<LockManager>
         this.requestContextFactory = requestContextFactory;
         this.switchBlock = switchBlock;
         this.config = config;
+        this.statistics = statistics;
     }
 
     @Override
     protected LockManager getMasterImpl()
     {
-        return new LockManagerImpl( new RagManager( txManager ) );
+        return new LockManagerImpl( new RagManager( txManager ),
+                config.get( GraphDatabaseSettings.lock_table_stripes ) );
     }
 
     @Override
@@ -79,9 +83,15 @@ public class LockManagerModeSwitcher extends AbstractModeSwitcher<LockManager>
             {
                 return config.get( HaSettings.state_switch_timeout );
             }
+
+            @Override
+            public int getLockTableStripes()
+            {
+                return config.get( GraphDatabaseSettings.lock_table_stripes );
+            }
         };
 
         return new SlaveLockManager(txManager, txHook, switchBlock, slaveConfig, new RagManager( txManager ),
-                requestContextFactory, master, xaDsm );
+                requestContextFactory, master, xaDsm, statistics );
     }
 }
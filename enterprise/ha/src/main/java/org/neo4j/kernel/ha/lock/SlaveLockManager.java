@@ -19,13 +19,20 @@
  */
 package org.neo4j.kernel.ha.lock;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
 import javax.transaction.Transaction;
 
 import org.neo4j.com.Response;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.TransactionFailureException;
 import org.neo4j.kernel.DeadlockDetectedException;
 import org.neo4j.kernel.ha.HaXaDataSourceManager;
 import org.neo4j.kernel.ha.InstanceAccessGuard;
@@ -43,8 +50,17 @@ import org.neo4j.kernel.impl.transaction.TxHook;
 import org.neo4j.kernel.info.LockInfo;
 import org.neo4j.kernel.logging.Logging;
 
+/**
+ * Takes locks on the master before taking them locally. The master holds the locks it grants a transaction until
+ * that transaction finishes, so the locks granted to each ongoing transaction are remembered here and asking for
+ * one of them again doesn't need another request to the master.
+ * <p>
+ * Every other lock still costs one request to the master, locks aren't batched.
+ */
 public class SlaveLockManager implements LockManager
 {
+    private static final Object GRAPH_LOCK = new Object();
+
     private final AbstractTransactionManager txManager;
     private final TxHook txHook;
     private final InstanceAccessGuard switchBlock;
@@ -53,16 +69,21 @@ public class SlaveLockManager implements LockManager
     private final LockManagerImpl local;
     private final Master master;
     private final HaXaDataSourceManager xaDsm;
+    private final SlaveLockStatistics statistics;
+    private final ConcurrentMap<Transaction, GrantedLocks> grantedLocks =
+            new ConcurrentHashMap<Transaction, GrantedLocks>();
 
     public static interface Configuration
     {
         long getStateSwitchTimeout();
+
+        int getLockTableStripes();
     }
 
     public SlaveLockManager( AbstractTransactionManager txManager, TxHook txHook,
                              InstanceAccessGuard switchBlock, Configuration config,
                              RagManager ragManager, RequestContextFactory requestContextFactory, Master master,
-                             HaXaDataSourceManager xaDsm )
+                             HaXaDataSourceManager xaDsm, SlaveLockStatistics statistics )
     {
         this.txManager = txManager;
         this.txHook = txHook;
@@ -70,8 +91,9 @@ public class SlaveLockManager implements LockManager
         this.config = config;
         this.requestContextFactory = requestContextFactory;
         this.xaDsm = xaDsm;
-        this.local = new LockManagerImpl( ragManager );
+        this.local = new LockManagerImpl( ragManager, config.getLockTableStripes() );
         this.master = master;
+        this.statistics = statistics;
     }
 
     @Override
@@ -80,10 +102,28 @@ public class SlaveLockManager implements LockManager
         return local.getDetectedDeadlockCount();
     }
 
+    @Override
+    public long getDeadlockCheckCount()
+    {
+        return local.getDeadlockCheckCount();
+    }
+
+    @Override
+    public long getDeadlockCheckTimeNanos()
+    {
+        return local.getDeadlockCheckTimeNanos();
+    }
+
+    @Override
+    public long getMaxDeadlockCheckTimeNanos()
+    {
+        return local.getMaxDeadlockCheckTimeNanos();
+    }
+
     @Override
     public void getReadLock( Object resource ) throws DeadlockDetectedException, IllegalResourceException
     {
-        if ( getReadLockOnMaster( resource ) )
+        if ( getReadLockOnMaster( resource, null ) )
         {
             local.getReadLock( resource );
         }
@@ -92,45 +132,56 @@ public class SlaveLockManager implements LockManager
     @Override
     public void getReadLock( Object resource, Transaction tx ) throws DeadlockDetectedException, IllegalResourceException
     {
-        if ( getReadLockOnMaster( resource ) )
+        if ( getReadLockOnMaster( resource, tx ) )
         {
             local.getReadLock( resource, tx );
         }
     }
 
-    private boolean getReadLockOnMaster( Object resource )
+    private boolean getReadLockOnMaster( Object resource, Transaction tx )
     {
+        Object lock = lockOnMaster( resource );
+        if ( lock == null )
+        {
+            return true;
+        }
+        GrantedLocks granted = grantedLocks( tx );
+        if ( granted != null && granted.hasReadLock( lock ) )
+        {
+            statistics.lockServedLocally();
+            return true;
+        }
+
         Response<LockResult> response = null;
+        makeSureTxHasBeenInitialized();
         if ( resource instanceof Node )
         {
-            makeSureTxHasBeenInitialized();
             response = master.acquireNodeReadLock( requestContextFactory.newRequestContext(), ((Node)resource).getId() );
         }
         else if ( resource instanceof Relationship )
         {
-            makeSureTxHasBeenInitialized();
             response = master.acquireRelationshipReadLock( requestContextFactory.newRequestContext(), ((Relationship)resource).getId() );
         }
         else if ( resource instanceof GraphProperties )
         {
-            makeSureTxHasBeenInitialized();
             response = master.acquireGraphReadLock( requestContextFactory.newRequestContext() );
         }
-        else if ( resource instanceof IndexLock )
+        else
         {
-            makeSureTxHasBeenInitialized();
             IndexLock indexLock = (IndexLock) resource;
             response = master.acquireIndexReadLock( requestContextFactory.newRequestContext(), indexLock.getIndex(), indexLock.getKey() );
         }
-        else
+        receiveLockResponse( response );
+        if ( granted != null )
         {
-            return true;
+            granted.readLocks.add( lock );
         }
-        return receiveLockResponse( response );
+        return true;
     }
 
     private boolean receiveLockResponse( Response<LockResult> response )
     {
+        statistics.roundTrip();
         LockResult result = xaDsm.applyTransactions( response );
         switch ( result.getStatus() )
         {
@@ -150,7 +201,7 @@ public class SlaveLockManager implements LockManager
     @Override
     public void getWriteLock( Object resource ) throws DeadlockDetectedException, IllegalResourceException
     {
-        if ( getWriteLockOnMaster( resource ) )
+        if ( getWriteLockOnMaster( resource, null ) )
         {
             local.getWriteLock( resource );
         }
@@ -159,44 +210,125 @@ public class SlaveLockManager implements LockManager
     @Override
     public void getWriteLock( Object resource, Transaction tx ) throws DeadlockDetectedException, IllegalResourceException
     {
-        if ( getWriteLockOnMaster( resource ) )
+        if ( getWriteLockOnMaster( resource, tx ) )
         {
             local.getWriteLock( resource, tx );
         }
     }
 
-    private boolean getWriteLockOnMaster( Object resource )
+    private boolean getWriteLockOnMaster( Object resource, Transaction tx )
     {
+        Object lock = lockOnMaster( resource );
+        if ( lock == null )
+        {
+            return true;
+        }
+        GrantedLocks granted = grantedLocks( tx );
+        if ( granted != null && granted.writeLocks.contains( lock ) )
+        {
+            statistics.lockServedLocally();
+            return true;
+        }
+
         Response<LockResult> response = null;
+        makeSureTxHasBeenInitialized();
         if ( resource instanceof Node )
         {
-            makeSureTxHasBeenInitialized();
             response = master.acquireNodeWriteLock( requestContextFactory.newRequestContext(), ((Node)resource).getId() );
         }
         else if ( resource instanceof Relationship )
         {
-            makeSureTxHasBeenInitialized();
             response = master.acquireRelationshipWriteLock( requestContextFactory.newRequestContext(), ((Relationship)resource).getId() );
         }
         else if ( resource instanceof GraphProperties )
         {
-            makeSureTxHasBeenInitialized();
             response = master.acquireGraphWriteLock( requestContextFactory.newRequestContext() );
         }
-        else if ( resource instanceof IndexLock )
+        else
         {
-            makeSureTxHasBeenInitialized();
             IndexLock indexLock = (IndexLock) resource;
             response = master.acquireIndexWriteLock( requestContextFactory.newRequestContext(), indexLock.getIndex(), indexLock.getKey() );
         }
-        else
+        receiveLockResponse( response );
+        if ( granted != null )
         {
-            return true;
+            granted.writeLocks.add( lock );
+        }
+        return true;
+    }
+
+    /**
+     * @return the lock {@code resource} is known by among the locks granted by the master, or {@code null} if it
+     *         isn't locked on the master.
+     */
+    private static Object lockOnMaster( Object resource )
+    {
+        if ( resource instanceof Node )
+        {
+            return new LockableNode( ((Node) resource).getId() );
+        }
+        else if ( resource instanceof Relationship )
+        {
+            return new LockableRelationship( ((Relationship) resource).getId() );
+        }
+        else if ( resource instanceof GraphProperties )
+        {
+            return GRAPH_LOCK;
+        }
+        else if ( resource instanceof IndexLock )
+        {
+            return resource;
+        }
+        return null;
+    }
+
+    /**
+     * @param tx the transaction to get the granted locks of, or {@code null} for the one associated with the current
+     *            thread.
+     * @return the locks the master has granted {@code tx}, or {@code null} if they can't be kept track of.
+     */
+    private GrantedLocks grantedLocks( Transaction tx )
+    {
+        try
+        {
+            final Transaction transaction = tx != null ? tx : txManager.getTransaction();
+            if ( transaction == null )
+            {
+                return null;
+            }
+            GrantedLocks result = grantedLocks.get( transaction );
+            if ( result == null )
+            {
+                result = new GrantedLocks();
+                transaction.registerSynchronization( new Synchronization()
+                {
+                    @Override
+                    public void beforeCompletion()
+                    {
+                    }
+
+                    @Override
+                    public void afterCompletion( int status )
+                    {
+                        grantedLocks.remove( transaction );
+                    }
+                } );
+                grantedLocks.put( transaction, result );
+                statistics.transactionLockedOnMaster();
+            }
+            return result;
+        }
+        catch ( SystemException e )
+        {
+            throw new TransactionFailureException( "Unable to get the current transaction", e );
+        }
+        catch ( Exception e )
+        {
+            // The transaction is completing or marked for rollback, ask the master every time
+            return null;
         }
-        
-        return receiveLockResponse( response );
     }
-    
+
     @Override
     public void releaseReadLock( Object resource, Transaction tx ) throws LockNotFoundException,
             IllegalResourceException
@@ -255,4 +387,15 @@ public class SlaveLockManager implements LockManager
             txHook.initializeTransaction( eventIdentifier );
         }
     }
+
+    private static class GrantedLocks
+    {
+        private final Set<Object> readLocks = new HashSet<Object>();
+        private final Set<Object> writeLocks = new HashSet<Object>();
+
+        boolean hasReadLock( Object lock )
+        {
+            return readLocks.contains( lock ) || writeLocks.contains( lock );
+        }
+    }
 }
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha.lock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the lock requests a slave sends to the master, and the locks its transactions ask for again and
+ * which are served locally because the master has already granted them to the transaction.
+ */
+public class SlaveLockStatistics
+{
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicLong locksServedLocally = new AtomicLong();
+
+    void transactionLockedOnMaster()
+    {
+        transactions.incrementAndGet();
+    }
+
+    void roundTrip()
+    {
+        roundTrips.incrementAndGet();
+    }
+
+    void lockServedLocally()
+    {
+        locksServedLocally.incrementAndGet();
+    }
+
+    /**
+     * @return the number of transactions which have taken locks on the master.
+     */
+    public long getTransactions()
+    {
+        return transactions.get();
+    }
+
+    /**
+     * @return the number of lock requests sent to the master.
+     */
+    public long getRoundTrips()
+    {
+        return roundTrips.get();
+    }
+
+    public long getLocksServedLocally()
+    {
+        return locksServedLocally.get();
+    }
+
+    /**
+     * @return the average number of lock requests a transaction taking locks on the master has sent to it.
+     */
+    public double getRoundTripsPerTransaction()
+    {
+        long count = transactions.get();
+        return count == 0 ? 0 : (double) roundTrips.get() / count;
+    }
+}
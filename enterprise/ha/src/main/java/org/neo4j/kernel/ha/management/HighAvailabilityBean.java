@@ -28,6 +28,7 @@ import org.neo4j.jmx.impl.ManagementData;
 import org.neo4j.jmx.impl.Neo4jMBean;
 import org.neo4j.kernel.ha.HighlyAvailableGraphDatabase;
 import org.neo4j.kernel.ha.UpdatePuller;
+import org.neo4j.kernel.ha.lock.SlaveLockStatistics;
 import org.neo4j.management.ClusterMemberInfo;
 import org.neo4j.management.HighAvailability;
 
@@ -124,6 +125,29 @@ public final class HighAvailabilityBean extends ManagementBeanProvider
             return kernelData.getMemberInfo().getLastCommittedTxId();
         }
 
+        @Override
+        public long getMasterLockRoundTrips()
+        {
+            return lockStatistics().getRoundTrips();
+        }
+
+        @Override
+        public double getMasterLockRoundTripsPerTransaction()
+        {
+            return lockStatistics().getRoundTripsPerTransaction();
+        }
+
+        @Override
+        public long getMasterLocksServedLocally()
+        {
+            return lockStatistics().getLocksServedLocally();
+        }
+
+        private SlaveLockStatistics lockStatistics()
+        {
+            return kernelData.graphDatabase().getDependencyResolver().resolveDependency( SlaveLockStatistics.class );
+        }
+
         @Override
         public String update()
         {
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2002-2013 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.ha.lock;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import javax.transaction.Transaction;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.com.RequestContext;
+import org.neo4j.com.Response;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.kernel.ha.HaXaDataSourceManager;
+import org.neo4j.kernel.ha.InstanceAccessGuard;
+import org.neo4j.kernel.ha.com.RequestContextFactory;
+import org.neo4j.kernel.ha.com.master.Master;
+import org.neo4j.kernel.impl.core.TransactionState;
+import org.neo4j.kernel.impl.transaction.AbstractTransactionManager;
+import org.neo4j.kernel.impl.transaction.RagManager;
+import org.neo4j.kernel.impl.transaction.TxHook;
+
+public class SlaveLockManagerTest
+{
+    private final Master master = mock( Master.class );
+    private final RequestContext context = RequestContext.EMPTY;
+    private final SlaveLockStatistics statistics = new SlaveLockStatistics();
+    private SlaveLockManager lockManager;
+
+    @Before
+    public void setUpLockManager() throws Exception
+    {
+        AbstractTransactionManager txManager = mock( AbstractTransactionManager.class );
+        when( txManager.getTransaction() ).thenReturn( mock( Transaction.class ) );
+        TransactionState state = mock( TransactionState.class );
+        when( state.hasLocks() ).thenReturn( true );
+        when( txManager.getTransactionState() ).thenReturn( state );
+        RequestContextFactory requestContextFactory = mock( RequestContextFactory.class );
+        when( requestContextFactory.newRequestContext() ).thenReturn( context );
+        HaXaDataSourceManager xaDsm = mock( HaXaDataSourceManager.class );
+        doReturn( new LockResult( LockStatus.OK_LOCKED ) ).when( xaDsm ).applyTransactions( any( Response.class ) );
+        SlaveLockManager.Configuration config = mock( SlaveLockManager.Configuration.class );
+        when( config.getLockTableStripes() ).thenReturn( 1 );
+
+        lockManager = new SlaveLockManager( txManager, mock( TxHook.class ), mock( InstanceAccessGuard.class ),
+                config, new RagManager( txManager ), requestContextFactory, master, xaDsm, statistics );
+    }
+
+    @Test
+    public void shouldAskMasterOnceForALockTheTransactionAsksForAgain() throws Exception
+    {
+        Node node = node( 1 );
+
+        lockManager.getWriteLock( node );
+        lockManager.getWriteLock( node );
+        lockManager.getReadLock( node );
+
+        verify( master ).acquireNodeWriteLock( context, 1 );
+        verifyNoMoreInteractions( master );
+        assertEquals( 1, statistics.getRoundTrips() );
+        assertEquals( 2, statistics.getLocksServedLocally() );
+    }
+
+    @Test
+    public void shouldAskMasterForAWriteLockOnAnEntityTheTransactionHasReadLocked() throws Exception
+    {
+        Relationship relationship = relationship( 10 );
+
+        lockManager.getReadLock( relationship );
+        lockManager.getWriteLock( relationship );
+        lockManager.getReadLock( relationship );
+
+        verify( master ).acquireRelationshipReadLock( context, 10 );
+        verify( master ).acquireRelationshipWriteLock( context, 10 );
+        verifyNoMoreInteractions( master );
+        assertEquals( 2, statistics.getRoundTrips() );
+        assertEquals( 1, statistics.getLocksServedLocally() );
+    }
+
+    private static Node node( long id )
+    {
+        Node node = mock( Node.class );
+        when( node.getId() ).thenReturn( id );
+        return node;
+    }
+
+    private static Relationship relationship( long id )
+    {
+        Relationship relationship = mock( Relationship.class );
+        when( relationship.getId() ).thenReturn( id );
+        return relationship;
+    }
+}